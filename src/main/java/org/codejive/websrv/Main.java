@@ -22,11 +22,16 @@
 
 package org.codejive.websrv;
 
+import java.io.File;
 import java.io.IOException;
+import org.codejive.websrv.config.ConfigLoader;
+import org.codejive.websrv.config.ConfigWatcher;
+import org.codejive.websrv.config.ConfigurationException;
 import org.codejive.websrv.mimetype.MimeType;
 import org.codejive.websrv.config.HttpListenerConfig;
 import org.codejive.websrv.config.ServerConfig;
 import org.codejive.websrv.config.WelcomeFiles;
+import org.codejive.websrv.listener.DrainReport;
 import org.codejive.websrv.mimetype.DefaultMimeTypeHandler;
 import org.codejive.websrv.mimetype.MimeTypeHandler;
 import org.codejive.websrv.util.SimplePathMatcher;
@@ -44,6 +49,12 @@ import org.codejive.websrv.servlet.RequestMatch;
  */
 public class Main {
 
+	/**
+	 * The time in milliseconds that requests are given to finish when
+	 * the server is being stopped
+	 */
+	private static final long SHUTDOWN_TIMEOUT = 30000;
+
 	/**
 	 * Main entry point for the application
 	 * @param args
@@ -75,6 +86,7 @@ public class Main {
 			serverConfig.setWelcomeFiles(welcomeFiles);
 			
 			String browserUrl = null;
+			ConfigWatcher watcher = null;
 			if (args.length == 0) {
 				System.out.println("Starting demonstration, use 'java -jar websrv.jar help' for other options");
 				setupDemo(serverConfig);
@@ -85,6 +97,23 @@ public class Main {
 				if (args.length == 2 && "browser".equalsIgnoreCase(args[1])) {
 					browserUrl = "http://localhost:8090/index.html";
 				}
+			} else if (args.length >= 2 && "config".equalsIgnoreCase(args[0])) {
+				System.out.println("Starting...");
+				ConfigLoader loader = new ConfigLoader(new File(args[1]));
+				try {
+					serverConfig = loader.load();
+				} catch (ConfigurationException ex) {
+					System.err.println(ex.getMessage());
+					System.exit(1);
+				}
+				pageHandler = loader.getPageHandler();
+				watcher = new ConfigWatcher(loader);
+				if (args.length >= 3 && "browser".equalsIgnoreCase(args[2])) {
+					browserUrl = "http://localhost:" + serverConfig.getListeners().get(0).getPort();
+					if (args.length == 4) {
+						browserUrl += "/" + args[3];
+					}
+				}
 			} else if (args.length >= 3 && "server".equalsIgnoreCase(args[0])) {
 				int port = Integer.parseInt(args[1]);
 				System.out.println("Starting...");
@@ -100,12 +129,29 @@ public class Main {
 				System.exit(0);
 			}
 			
-			Server server = serverConfig.buildServer();
+			Server server = (watcher != null) ? watcher.buildServer() : serverConfig.buildServer();
 			
 			// Bit of a hack this
             pageHandler.getVariables().put("server", server);
 
 			server.startAll();
+			if (watcher != null) {
+				watcher.start();
+			}
+
+			// Let requests finish when the process gets stopped
+			final Server srv = server;
+			final ConfigWatcher w = watcher;
+			Runtime.getRuntime().addShutdownHook(new Thread("websrv-shutdown") {
+				@Override
+				public void run() {
+					if (w != null) {
+						w.close();
+					}
+					DrainReport report = srv.shutdown(SHUTDOWN_TIMEOUT);
+					System.out.println("Stopped, " + report);
+				}
+			});
 			
 			if (browserUrl != null) {
 				showDocument(browserUrl);
@@ -183,6 +229,12 @@ public class Main {
 		System.out.println("      is present a browser will be opened showing http://localhost:<port>");
 		System.out.println("      or http://localhost:<port>/<url> if the <url> argument exists");
 		System.out.println();
+		System.out.println("   config <config-file> [browser [<url>]]");
+		System.out.println("      Starts a webserver using the listeners, routes, mime types and caches");
+		System.out.println("      from the given configuration file. If the browser keyword is present a");
+		System.out.println("      browser will be opened showing the site of the first listener. Changes");
+		System.out.println("      to the file are applied while the server keeps running");
+		System.out.println();
 		System.out.println("   help");
 		System.out.println("      The information you are currently reading");
 	}
@@ -25,10 +25,14 @@ package org.codejive.websrv;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import org.codejive.websrv.listener.DrainReport;
 import org.codejive.websrv.listener.Listener;
 
 /**
@@ -46,7 +50,12 @@ public class Server {
 	/**
 	 * A thread pool, holding one thread for each active listener
 	 */
-	private ExecutorService executorPool;
+	private ThreadPoolExecutor executorPool;
+
+	/**
+	 * The tasks running the listeners that were started
+	 */
+	private HashMap<Listener, Future<?>> tasks;
 
 	/**
 	 * The private logger for this class
@@ -58,7 +67,8 @@ public class Server {
 	 */
 	public Server() {
 		listeners = new ArrayList<Listener>();
-		executorPool = Executors.newCachedThreadPool();
+		tasks = new HashMap<Listener, Future<?>>();
+		executorPool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
 	}
 
 	/**
@@ -113,18 +123,88 @@ public class Server {
 	/**
 	 * Activates all the configured listeners
 	 */
-	public void startAll() {
+	public synchronized void startAll() {
+		// Make sure there's exactly one thread for each listener
+		resizePool(Math.max(1, listeners.size()));
         for (Listener listener : listeners) {
-            executorPool.execute(listener);
+            tasks.put(listener, executorPool.submit(listener));
         }
 	}
+
+	/**
+	 * Adds the given listener to this Server and activates it right away.
+	 * This can be used to add listeners while the server is running. The
+	 * listener has started once its <code>isRunning()</code> returns
+	 * <code>true</code>, if it fails to start the returned future will
+	 * be done before that ever happens
+	 * @param listener The listener to start
+	 * @return The future that is done when the listener has stopped
+	 */
+	public synchronized Future<?> startListener(Listener listener) {
+		listeners.add(listener);
+		// Listeners that were stopped may still be finishing up, so only
+		// threads that are idle can be counted on
+		int needed = executorPool.getActiveCount() + 1;
+		if (needed > executorPool.getCorePoolSize()) {
+			resizePool(needed);
+		}
+		Future<?> task = executorPool.submit(listener);
+		tasks.put(listener, task);
+		return task;
+	}
+
+	/**
+	 * Deactivates the given listener and removes it from this Server.
+	 * This can be used to remove listeners while the server is running
+	 * @param listener The listener to stop
+	 * @return The future that is done once the listener has closed its
+	 * socket or null if the listener was never started
+	 */
+	public synchronized Future<?> stopListener(Listener listener) {
+		listeners.remove(listener);
+		listener.stop();
+		return tasks.remove(listener);
+	}
+
+	/**
+	 * Sets the number of threads in the pool that runs the listeners
+	 * @param size The number of threads
+	 */
+	private void resizePool(int size) {
+		if (size > executorPool.getMaximumPoolSize()) {
+			executorPool.setMaximumPoolSize(size);
+			executorPool.setCorePoolSize(size);
+		} else {
+			executorPool.setCorePoolSize(size);
+			executorPool.setMaximumPoolSize(size);
+		}
+	}
 	
 	/**
-	 * Waits until all listeners have stopped
+	 * Waits until all listeners have stopped, including any listeners
+	 * that get started while waiting
 	 */
 	public void waitAll() {
 		try {
-			executorPool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			for (;;) {
+				Future<?> running = null;
+				synchronized (this) {
+					for (Future<?> task : tasks.values()) {
+						if (!task.isDone()) {
+							running = task;
+							break;
+						}
+					}
+				}
+				if (running == null) {
+					break;
+				}
+				try {
+					running.get();
+				} catch (ExecutionException ex) {
+					// The listener logged it already
+				}
+			}
 		} catch (InterruptedException ex) {
 			logger.info("Main server thread interrupted");
 		}
@@ -134,16 +214,41 @@ public class Server {
 	/**
 	 * Deactivates all the configured listeners
 	 */
-	public void stopAll() {
+	public synchronized void stopAll() {
 		for (Listener listener : listeners) {
             listener.stop();
 		}
 	}
 	
 	/**
-	 * Shuts down the server
+	 * Shuts down the server gracefully. All listeners stop accepting
+	 * connections first, after which the connections that are waiting for
+	 * a request are closed and those that are handling one are given until
+	 * the time-out to finish it. Whatever is still open after that is
+	 * closed by force
+	 * @param timeout The maximum time in milliseconds to wait
+	 * @return The number of connections that ended by themselves and the
+	 * number that had to be closed
+	 */
+	public synchronized DrainReport shutdown(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		for (Listener listener : listeners) {
+			listener.drain();
+		}
+		DrainReport report = new DrainReport(0, 0);
+		for (Listener listener : listeners) {
+			report = report.add(listener.shutdown(Math.max(0, deadline - System.currentTimeMillis())));
+		}
+		executorPool.shutdownNow();
+		logger.info("Server shut down, " + report);
+		return report;
+	}
+
+	/**
+	 * Shuts down the server right away, any requests that are being
+	 * handled are broken off
 	 */
-	public void shutdown() {
+	public synchronized void shutdown() {
 		for (Listener listener : listeners) {
             listener.shutdown();
 		}
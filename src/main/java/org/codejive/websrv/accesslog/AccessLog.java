@@ -0,0 +1,686 @@
+/*
+ * AccessLog.java
+ *
+ * Created on Oct 19, 2026, 9:24:51 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.accesslog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.protocol.http.HttpRequest;
+
+/**
+ * The access log writes a record for each handled request to a file using
+ * either the Common or the Combined Log Format. Request threads only copy
+ * a couple of references into a preallocated slot of a lock-free ring buffer,
+ * a single background thread takes care of formatting the records and writes
+ * them in batches to the log file. The log file can be rotated automatically
+ * when it reaches a certain size and/or after a certain amount of time.
+ * If the writer thread can't keep up the records that don't fit in the
+ * buffer anymore are dropped (and counted) instead of slowing down the
+ * server.
+ * @see org.codejive.websrv.accesslog.AccessLogFormat
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class AccessLog {
+
+	/**
+	 * The file to write the log records to
+	 */
+	private File file;
+	/**
+	 * The format to write the log records in
+	 */
+	private AccessLogFormat format;
+	/**
+	 * The size in bytes after which the log file will be rotated.
+	 * -1 means never (default = -1)
+	 */
+	private long maxFileSize;
+	/**
+	 * The time in milliseconds after which the log file will be rotated.
+	 * -1 means never (default = -1)
+	 */
+	private long rotationInterval;
+	/**
+	 * The number of records that can be waiting to be written (default = 8192)
+	 */
+	private int bufferCapacity;
+	/**
+	 * The maximum number of records that will be written in one go (default = 512)
+	 */
+	private int batchSize;
+	/**
+	 * The time in milliseconds the writer thread will wait before checking
+	 * for new records when there was nothing to do (default = 100)
+	 */
+	private long flushInterval;
+	/**
+	 * The buffer holding the records waiting to be written
+	 */
+	private volatile AccessLogBuffer buffer;
+	/**
+	 * The background thread that writes the records to the log file
+	 */
+	private Thread writerThread;
+	/**
+	 * Indicator if the log is still accepting new records
+	 */
+	private volatile boolean running;
+	/**
+	 * The number of records that were dropped because the buffer was full
+	 */
+	private final AtomicLong droppedCount;
+	/**
+	 * The number of calls to <code>log()</code> that are busy adding a
+	 * record, the writer thread waits for them before it stops
+	 */
+	private final AtomicInteger pendingCount;
+
+	/**
+	 * The channel of the currently open log file or null when the file
+	 * could not be reopened after a rotation
+	 */
+	private FileChannel channel;
+	/**
+	 * Indicates that reopening the log file failed and was reported
+	 */
+	private boolean reopenFailed;
+	/**
+	 * The size in bytes of the currently open log file
+	 */
+	private long fileSize;
+	/**
+	 * The time at which the log file should be rotated next
+	 */
+	private long nextRotation;
+	/**
+	 * The buffer that the writer thread formats its records into
+	 */
+	private ByteBuffer out;
+	/**
+	 * Formatter for the record time stamps (only used by the writer thread)
+	 */
+	private SimpleDateFormat dateFormat;
+	/**
+	 * The second for which the time stamp was last formatted
+	 */
+	private long cachedSecond;
+	/**
+	 * The last formatted time stamp
+	 */
+	private String cachedDate;
+
+	/**
+	 * The private logger for this class
+	 */
+	private static final Logger logger = Logger.getLogger(AccessLog.class.getName());
+
+	/**
+	 * Creates a new access log writing to the given file in the Common Log Format
+	 * @param file The file to write the log records to
+	 */
+	public AccessLog(File file) {
+		this(file, AccessLogFormat.COMMON);
+	}
+
+	/**
+	 * Creates a new access log writing to the given file in the given format
+	 * @param file The file to write the log records to
+	 * @param format The format to write the log records in
+	 */
+	public AccessLog(File file, AccessLogFormat format) {
+		this.file = file;
+		this.format = format;
+		maxFileSize = -1;
+		rotationInterval = -1;
+		bufferCapacity = 8192;
+		batchSize = 512;
+		flushInterval = 100;
+		droppedCount = new AtomicLong();
+		pendingCount = new AtomicInteger();
+	}
+
+	/**
+	 * Creates a new access log with the same file, format and settings as
+	 * the given one. The new log has to be started separately
+	 * @param copy The access log to copy the settings of
+	 */
+	public AccessLog(AccessLog copy) {
+		this(copy.getFile(), copy.getFormat());
+		maxFileSize = copy.getMaxFileSize();
+		rotationInterval = copy.getRotationInterval();
+		bufferCapacity = copy.getBufferCapacity();
+		batchSize = copy.getBatchSize();
+		flushInterval = copy.getFlushInterval();
+	}
+
+	/**
+	 * Returns the file that the log records are written to
+	 * @return The log file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the format that the log records are written in
+	 * @return The log format
+	 */
+	public AccessLogFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Sets the format that the log records will be written in
+	 * @param format The log format
+	 */
+	public void setFormat(AccessLogFormat format) {
+		this.format = format;
+	}
+
+	/**
+	 * Returns the size in bytes after which the log file will be rotated.
+	 * -1 means never
+	 * @return The maximum size of the log file
+	 */
+	public long getMaxFileSize() {
+		return maxFileSize;
+	}
+
+	/**
+	 * Sets the size in bytes after which the log file will be rotated.
+	 * -1 means never
+	 * @param maxFileSize The maximum size of the log file
+	 */
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	/**
+	 * Returns the time in milliseconds after which the log file will be
+	 * rotated. -1 means never
+	 * @return The rotation interval in milliseconds
+	 */
+	public long getRotationInterval() {
+		return rotationInterval;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which the log file will be
+	 * rotated. -1 means never
+	 * @param rotationInterval The rotation interval in milliseconds
+	 */
+	public void setRotationInterval(long rotationInterval) {
+		this.rotationInterval = rotationInterval;
+	}
+
+	/**
+	 * Returns the number of records that can be waiting to be written
+	 * @return The capacity of the record buffer
+	 */
+	public int getBufferCapacity() {
+		return bufferCapacity;
+	}
+
+	/**
+	 * Sets the number of records that can be waiting to be written.
+	 * This can only be changed before the log is started
+	 * @param bufferCapacity The capacity of the record buffer
+	 */
+	public void setBufferCapacity(int bufferCapacity) {
+		assert !running : "Access log must not be active!";
+		this.bufferCapacity = bufferCapacity;
+	}
+
+	/**
+	 * Returns the maximum number of records that will be written in one go
+	 * @return The batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the maximum number of records that will be written in one go
+	 * @param batchSize The batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns the time in milliseconds the writer thread will wait before
+	 * checking for new records when there was nothing to do
+	 * @return The flush interval in milliseconds
+	 */
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Sets the time in milliseconds the writer thread will wait before
+	 * checking for new records when there was nothing to do
+	 * @param flushInterval The flush interval in milliseconds
+	 */
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Returns the number of records that were dropped so far because
+	 * the writer thread couldn't keep up
+	 * @return The number of dropped records
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Returns if the log is currently accepting records
+	 * @return The current active state
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Opens the log file and starts the writer thread. Calling this method
+	 * on a log that is already running has no effect
+	 * @throws java.io.IOException If the log file could not be opened
+	 */
+	public synchronized void start() throws IOException {
+		if (running) {
+			return;
+		}
+		openFile();
+		out = ByteBuffer.allocate(64 * 1024);
+		dateFormat = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.US);
+		cachedSecond = -1;
+		buffer = new AccessLogBuffer(bufferCapacity);
+		running = true;
+		writerThread = new Thread(new Writer(), "websrv-accesslog-" + file.getName());
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Stops accepting new records, writes out all the records still
+	 * waiting in the buffer and closes the log file. Calling this method
+	 * on a log that is not running has no effect
+	 */
+	public synchronized void close() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(writerThread);
+		try {
+			writerThread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		writerThread = null;
+	}
+
+	/**
+	 * Adds a record for a handled request to the log. This method never
+	 * blocks, if there is no room left in the buffer the record is dropped.
+	 * @param time The time in milliseconds at which the request was received
+	 * @param remoteAddress The address of the client
+	 * @param request The request or null if it could not be parsed
+	 * @param status The HTTP response code sent to the client
+	 * @param bytes The number of content bytes sent to the client
+	 */
+	public void log(long time, InetAddress remoteAddress, HttpRequest request, int status, long bytes) {
+		AccessLogBuffer buf = buffer;
+		if (!running || buf == null) {
+			return;
+		}
+		pendingCount.incrementAndGet();
+		try {
+			// Check again now that the writer thread knows about us, if
+			// the log is still running it will wait for our record
+			if (!running) {
+				return;
+			}
+			long pos = buf.claim();
+			if (pos < 0) {
+				droppedCount.incrementAndGet();
+				return;
+			}
+			AccessLogEntry entry = buf.get(pos);
+			entry.time = time;
+			entry.remoteAddress = remoteAddress;
+			entry.status = status;
+			entry.bytes = bytes;
+			if (request != null) {
+				entry.method = request.getRequestMethod();
+				entry.url = request.getUrl();
+				entry.protocol = request.getRequestProtocol();
+				if (format == AccessLogFormat.COMBINED) {
+					entry.referer = request.getHeader("Referer");
+					entry.userAgent = request.getHeader("User-Agent");
+				}
+			}
+			buf.publish(pos);
+		} finally {
+			pendingCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * The writer thread's main loop. After the log was closed it keeps
+	 * going until the records of all the calls to <code>log()</code> that
+	 * were still busy have been written. When the log file couldn't be
+	 * reopened after a rotation it is tried again before each batch, the
+	 * records wait in the buffer in the meantime
+	 */
+	private class Writer implements Runnable {
+		public void run() {
+			long idleNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+			while (running || pendingCount.get() > 0 || buffer.peek() != null) {
+				int count = 0;
+				if (channel != null || reopenFile()) {
+					try {
+						count = writeBatch();
+						checkRotation(0);
+					} catch (IOException ex) {
+						logger.log(Level.SEVERE, "Could not write to access log " + file, ex);
+						out.clear();
+					}
+				} else if (!running) {
+					// There's no time left to try again
+					break;
+				}
+				if (count == 0) {
+					if (running) {
+						LockSupport.parkNanos(idleNanos);
+					} else {
+						// A record was claimed but not yet published
+						Thread.yield();
+					}
+				}
+			}
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException ex) {
+					logger.log(Level.WARNING, "Could not properly close access log " + file, ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Formats and writes at most <code>batchSize</code> records
+	 * @return The number of records written
+	 * @throws java.io.IOException If the records could not be written
+	 */
+	private int writeBatch() throws IOException {
+		int count = 0;
+		AccessLogEntry entry;
+		while (count < batchSize && (entry = buffer.peek()) != null) {
+			try {
+				formatEntry(entry);
+			} finally {
+				buffer.release();
+			}
+			count++;
+		}
+		if (count > 0) {
+			flushOutput();
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the contents of the output buffer to the log file
+	 * @throws java.io.IOException If the data could not be written
+	 */
+	private void flushOutput() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			fileSize += channel.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Formats the given record into the output buffer
+	 * @param entry The record to format
+	 * @throws java.io.IOException If part of the buffer needed to be
+	 * flushed but couldn't be written
+	 */
+	private void formatEntry(AccessLogEntry entry) throws IOException {
+		putString(entry.remoteAddress != null ? entry.remoteAddress.getHostAddress() : null, false);
+		putAscii(" - - [");
+		putAscii(formatDate(entry.time));
+		putAscii("] \"");
+		if (entry.method != null) {
+			putString(entry.method, true);
+			putByte(' ');
+			putString(entry.url, true);
+			putByte(' ');
+			putString(entry.protocol, true);
+		} else {
+			putByte('-');
+		}
+		putAscii("\" ");
+		putLong(entry.status);
+		putByte(' ');
+		if (entry.bytes > 0) {
+			putLong(entry.bytes);
+		} else {
+			putByte('-');
+		}
+		if (format == AccessLogFormat.COMBINED) {
+			putAscii(" \"");
+			putString(entry.referer, true);
+			putAscii("\" \"");
+			putString(entry.userAgent, true);
+			putByte('"');
+		}
+		putByte('\n');
+	}
+
+	/**
+	 * Returns the given time formatted for use in a log record
+	 * @param time A time in milliseconds
+	 * @return A formatted time stamp
+	 */
+	private String formatDate(long time) {
+		long second = time / 1000;
+		if (second != cachedSecond) {
+			cachedDate = dateFormat.format(new Date(time));
+			cachedSecond = second;
+		}
+		return cachedDate;
+	}
+
+	/**
+	 * Writes a byte to the output buffer, flushing it if it's full
+	 * @param b The byte to write
+	 * @throws java.io.IOException If the buffer could not be flushed
+	 */
+	private void putByte(int b) throws IOException {
+		if (!out.hasRemaining()) {
+			flushOutput();
+		}
+		out.put((byte) b);
+	}
+
+	/**
+	 * Writes a string that is known to be plain ASCII to the output buffer
+	 * @param s The string to write
+	 * @throws java.io.IOException If the buffer could not be flushed
+	 */
+	private void putAscii(String s) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			putByte(s.charAt(i));
+		}
+	}
+
+	/**
+	 * Writes a number to the output buffer
+	 * @param value The number to write
+	 * @throws java.io.IOException If the buffer could not be flushed
+	 */
+	private void putLong(long value) throws IOException {
+		if (value < 0) {
+			putByte('-');
+			value = -value;
+		}
+		long div = 1;
+		while (value / div >= 10) {
+			div *= 10;
+		}
+		while (div > 0) {
+			putByte('0' + (int) ((value / div) % 10));
+			div /= 10;
+		}
+	}
+
+	/**
+	 * Writes a value to the output buffer, writing a dash if the value is
+	 * null or empty. Characters that are not printable ASCII, and optionally
+	 * quotes and backslashes, are escaped as <code>\xhh</code> so a client
+	 * can never mess up the structure of the log file
+	 * @param s The value to write
+	 * @param quoted Indicates that the value will appear between quotes
+	 * @throws java.io.IOException If the buffer could not be flushed
+	 */
+	private void putString(String s, boolean quoted) throws IOException {
+		if (s == null || s.length() == 0) {
+			putByte('-');
+			return;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 0x20 && c < 0x7f && !(quoted && (c == '"' || c == '\\'))) {
+				putByte(c);
+			} else if (c < 0x80) {
+				putEscape(c);
+			} else {
+				// Escape each of the character's UTF-8 bytes
+				byte[] bytes = String.valueOf(c).getBytes("UTF-8");
+				for (byte b : bytes) {
+					putEscape(b & 0xff);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the escaped form of the given byte to the output buffer
+	 * @param b The byte to escape
+	 * @throws java.io.IOException If the buffer could not be flushed
+	 */
+	private void putEscape(int b) throws IOException {
+		putByte('\\');
+		putByte('x');
+		putByte(Character.forDigit((b >> 4) & 0x0f, 16));
+		putByte(Character.forDigit(b & 0x0f, 16));
+	}
+
+	/**
+	 * Opens the log file for appending
+	 * @throws java.io.IOException If the file could not be opened
+	 */
+	private void openFile() throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		channel = new FileOutputStream(file, true).getChannel();
+		fileSize = channel.size();
+		if (rotationInterval > 0) {
+			nextRotation = System.currentTimeMillis() + rotationInterval;
+		}
+	}
+
+	/**
+	 * Tries to open the log file again after it was rotated. Only the
+	 * first failure is reported, the writer thread keeps trying quietly
+	 * until it succeeds
+	 * @return <code>true</code> if the log file is open
+	 */
+	private boolean reopenFile() {
+		try {
+			openFile();
+			if (reopenFailed) {
+				logger.info("Access log " + file + " was reopened");
+				reopenFailed = false;
+			}
+			return true;
+		} catch (IOException ex) {
+			if (!reopenFailed) {
+				logger.log(Level.SEVERE, "Could not reopen access log " + file, ex);
+				reopenFailed = true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Rotates the log file if it has grown too large or too old
+	 * @param now The current time or 0 to have it determined
+	 * @throws java.io.IOException If the old log file could not be closed
+	 */
+	private void checkRotation(long now) throws IOException {
+		boolean rotate = (maxFileSize > 0 && fileSize >= maxFileSize);
+		if (!rotate && rotationInterval > 0) {
+			if (now == 0) {
+				now = System.currentTimeMillis();
+			}
+			rotate = (now >= nextRotation);
+		}
+		if (rotate && fileSize > 0) {
+			FileChannel old = channel;
+			channel = null;
+			old.close();
+			String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+			File rotated = new File(file.getPath() + "." + stamp);
+			for (int i = 1; rotated.exists(); i++) {
+				rotated = new File(file.getPath() + "." + stamp + "." + i);
+			}
+			if (!file.renameTo(rotated)) {
+				logger.warning("Could not rotate access log " + file + " to " + rotated);
+			}
+			reopenFile();
+		} else if (rotate) {
+			// Nothing was written, just restart the interval
+			nextRotation = System.currentTimeMillis() + rotationInterval;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * AccessLogBuffer.java
+ *
+ * Created on Oct 19, 2026, 9:16:30 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.accesslog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free ring buffer of access log entries that can be filled
+ * by any number of request threads and that is emptied by exactly one
+ * writer thread. Each slot has a sequence number that tells producers and
+ * the consumer whose turn it is to use the slot, so no locks are needed.
+ * When the buffer is full new entries are simply dropped instead of making
+ * the request threads wait.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class AccessLogBuffer {
+
+	/**
+	 * The preallocated slots
+	 */
+	private final AccessLogEntry[] entries;
+	/**
+	 * The sequence numbers for each of the slots
+	 */
+	private final AtomicLongArray sequences;
+	/**
+	 * The mask used to turn a position into a slot index
+	 */
+	private final int mask;
+	/**
+	 * The next position to be claimed by a producer
+	 */
+	private final AtomicLong tail;
+	/**
+	 * The next position to be read by the consumer (only ever touched
+	 * by the writer thread)
+	 */
+	private long head;
+
+	/**
+	 * Creates a new buffer with room for at least the given number of entries.
+	 * The actual capacity will be rounded up to the next power of two
+	 * @param capacity The minimum number of entries the buffer can hold
+	 */
+	public AccessLogBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity <= 0");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		entries = new AccessLogEntry[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			entries[i] = new AccessLogEntry();
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+		tail = new AtomicLong();
+	}
+
+	/**
+	 * Returns the number of entries the buffer can hold
+	 * @return The capacity of the buffer
+	 */
+	public int getCapacity() {
+		return entries.length;
+	}
+
+	/**
+	 * Claims a slot for a new entry. The returned position must be passed to
+	 * <code>get()</code> to obtain the entry to fill and to <code>publish()</code>
+	 * once it has been filled.
+	 * @return The position of the claimed slot or -1 if the buffer is full
+	 */
+	public long claim() {
+		for (;;) {
+			long pos = tail.get();
+			long seq = sequences.get((int) pos & mask);
+			if (seq == pos) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					return pos;
+				}
+			} else if (seq < pos) {
+				// The consumer hasn't released this slot yet
+				return -1;
+			}
+			// Some other producer got there first, try again
+		}
+	}
+
+	/**
+	 * Returns the entry for the given claimed position
+	 * @param pos A position returned by <code>claim()</code>
+	 * @return The entry to fill
+	 */
+	public AccessLogEntry get(long pos) {
+		return entries[(int) pos & mask];
+	}
+
+	/**
+	 * Makes the entry at the given position available to the consumer
+	 * @param pos A position returned by <code>claim()</code>
+	 */
+	public void publish(long pos) {
+		sequences.lazySet((int) pos & mask, pos + 1);
+	}
+
+	/**
+	 * Returns the oldest published entry without removing it from the buffer.
+	 * May only be called by the consumer thread
+	 * @return The oldest entry or null if no entry is available
+	 */
+	public AccessLogEntry peek() {
+		int idx = (int) head & mask;
+		if (sequences.get(idx) == head + 1) {
+			return entries[idx];
+		}
+		return null;
+	}
+
+	/**
+	 * Releases the oldest entry (the one returned by <code>peek()</code>)
+	 * making its slot available to producers again. May only be called
+	 * by the consumer thread
+	 */
+	public void release() {
+		int idx = (int) head & mask;
+		entries[idx].clear();
+		sequences.lazySet(idx, head + entries.length);
+		head++;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * AccessLogEntry.java
+ *
+ * Created on Oct 19, 2026, 9:11:02 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.accesslog;
+
+import java.net.InetAddress;
+
+/**
+ * A single slot of the access log's ring buffer. The slots are allocated
+ * once and then reused over and over again, the request threads only copy
+ * references to the values they already have while all the formatting is
+ * done later by the access log's own writer thread.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class AccessLogEntry {
+
+	/**
+	 * The time in milliseconds at which the request was received
+	 */
+	long time;
+	/**
+	 * The address of the client that made the request
+	 */
+	InetAddress remoteAddress;
+	/**
+	 * The HTTP request method or null if the request could not be parsed
+	 */
+	String method;
+	/**
+	 * The request URL as sent by the client
+	 */
+	String url;
+	/**
+	 * The HTTP protocol version of the request
+	 */
+	String protocol;
+	/**
+	 * The HTTP response code that was sent to the client
+	 */
+	int status;
+	/**
+	 * The number of content bytes that were sent to the client
+	 */
+	long bytes;
+	/**
+	 * The value of the Referer request header
+	 */
+	String referer;
+	/**
+	 * The value of the User-Agent request header
+	 */
+	String userAgent;
+
+	/**
+	 * Drops all references so the slot doesn't keep any request data alive
+	 */
+	void clear() {
+		remoteAddress = null;
+		method = null;
+		url = null;
+		protocol = null;
+		referer = null;
+		userAgent = null;
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * AccessLogFormat.java
+ *
+ * Created on Oct 19, 2026, 9:07:45 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.accesslog;
+
+/**
+ * The formats that the access log can write its records in
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public enum AccessLogFormat {
+	/**
+	 * The Common Log Format:
+	 * <pre>
+	 * host ident authuser [date] "request" status bytes
+	 * </pre>
+	 */
+	COMMON,
+	/**
+	 * The Combined Log Format, which is the Common Log Format followed by
+	 * the quoted values of the Referer and User-Agent request headers
+	 */
+	COMBINED
+}
@@ -0,0 +1,29 @@
+/*
+ * package-info.java
+ *
+ * Created on Oct 19, 2026, 9:05:12 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * This package holds the access log which records every handled request
+ * in the Common or Combined Log Format without slowing down the threads
+ * that are actually serving those requests
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+package org.codejive.websrv.accesslog;
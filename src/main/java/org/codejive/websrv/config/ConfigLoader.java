@@ -0,0 +1,841 @@
+/*
+ * ConfigLoader.java
+ *
+ * Created on Oct 19, 2026, 9:24:16 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.codejive.websrv.accesslog.AccessLog;
+import org.codejive.websrv.accesslog.AccessLogFormat;
+import org.codejive.websrv.filter.RateLimitFilter;
+import org.codejive.websrv.listener.OverloadPolicy;
+import org.codejive.websrv.mimetype.DefaultMimeTypeHandler;
+import org.codejive.websrv.mimetype.MimeType;
+import org.codejive.websrv.mimetype.MimeTypeHandler;
+import org.codejive.websrv.mimetype.MimeTypes;
+import org.codejive.websrv.mimetype.PageMimeTypeHandler;
+import org.codejive.websrv.protocol.cache.CacheSettings;
+import org.codejive.websrv.protocol.cache.Eviction;
+import org.codejive.websrv.protocol.cache.ResponseCache;
+import org.codejive.websrv.protocol.proxy.Balancing;
+import org.codejive.websrv.protocol.proxy.ProxySettings;
+import org.codejive.websrv.protocol.proxy.Upstream;
+import org.codejive.websrv.servlet.CachingServlet;
+import org.codejive.websrv.servlet.FileServlet;
+import org.codejive.websrv.servlet.FilterServlet;
+import org.codejive.websrv.servlet.ProxyServlet;
+import org.codejive.websrv.servlet.RequestMatch;
+import org.codejive.websrv.servlet.RequestMatcherServlet;
+import org.codejive.websrv.servlet.Servlet;
+import org.codejive.websrv.util.SimplePathMatcher;
+
+/**
+ * Reads a server configuration from a file. The file consists of lines
+ * of the form <code>name = value</code>, empty lines and lines starting
+ * with <code>#</code> are ignored and a line ending in a backslash
+ * continues on the next line. Lists can be separated by commas or spaces,
+ * sizes can end in <code>k</code>, <code>m</code> or <code>g</code> and
+ * all times are in milliseconds. For example:
+ * <pre>
+ * welcome = index.page index.html
+ * mime.html = text/html
+ * mime.page = x-application/x-websrv-page
+ *
+ * cache.pages.ttl = 2000
+ * cache.pages.maxSize = 32m
+ *
+ * listener.main.port = 8090
+ * listener.main.maxThreads = 64
+ * listener.main.rateLimit = 50
+ * listener.main.route.api.path = /api/**
+ * listener.main.route.api.proxy = 127.0.0.1:9000, 127.0.0.1:9001
+ * listener.main.route.site.path = **
+ * listener.main.route.site.files = www
+ * listener.main.route.site.cache = pages
+ * </pre>
+ * Listeners, and the routes of each listener, are used in the order they
+ * first appear in the file. A listener with a <code>keyStore</code> uses
+ * HTTPS. When no mime types or welcome files are given the same defaults
+ * as the demonstration are used.
+ * <p>
+ * The same loader can be used to load the file again after it changed,
+ * see <code>ConfigWatcher</code>. Each time a complete new set of servlets
+ * and caches is made, only the page handler is kept
+ * <p>
+ * Every setting is checked as it is read and all problems are collected,
+ * including settings that aren't known at all, so a single run shows
+ * everything that is wrong with the file. Binding is done by plain code
+ * for each setting so reading a configuration costs next to nothing
+ * compared to starting the listeners
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class ConfigLoader {
+
+	/**
+	 * The configuration file
+	 */
+	private final File file;
+
+	/**
+	 * The settings read from the file by name, in the order they appear
+	 */
+	private LinkedHashMap<String, Setting> settings;
+
+	/**
+	 * The problems found so far
+	 */
+	private ArrayList<String> errors;
+
+	/**
+	 * The caches that were configured by name
+	 */
+	private HashMap<String, ResponseCache> caches;
+
+	/**
+	 * The listener builders by name, in the order they appear
+	 */
+	private LinkedHashMap<String, HttpListenerConfig> listeners;
+
+	/**
+	 * The proxy servlets that were made
+	 */
+	private ArrayList<ProxyServlet> proxies;
+
+	/**
+	 * The handler for the page mime type
+	 */
+	private PageMimeTypeHandler pageHandler;
+
+	/**
+	 * The mime type of pages, files with this type are rendered by the
+	 * page handler instead of being sent as is
+	 */
+	public static final String PAGE_MIME_TYPE = "x-application/x-websrv-page";
+
+	/**
+	 * Creates a new loader for the given file
+	 * @param file The configuration file
+	 */
+	public ConfigLoader(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Returns the configuration file
+	 * @return The configuration file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the handler used for pages, so variables can be added to it.
+	 * The same handler is used each time the file is loaded
+	 * @return The page handler or null if nothing was loaded yet
+	 */
+	public PageMimeTypeHandler getPageHandler() {
+		return pageHandler;
+	}
+
+	/**
+	 * Reads the file and turns it into a server configuration
+	 * @return The server configuration
+	 * @throws org.codejive.websrv.config.ConfigurationException If the file
+	 * could not be read or if it contains errors, in which case the
+	 * exception holds all of them
+	 */
+	public ServerConfig load() throws ConfigurationException {
+		try {
+			Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+			try {
+				read(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (IOException ex) {
+			throw new ConfigurationException("Could not read " + file, ex);
+		}
+
+		caches = new HashMap<String, ResponseCache>();
+		listeners = new LinkedHashMap<String, HttpListenerConfig>();
+		proxies = new ArrayList<ProxyServlet>();
+		if (pageHandler == null) {
+			pageHandler = new PageMimeTypeHandler();
+		}
+		ServerConfig config = new ServerConfig();
+		config.setWelcomeFiles(loadWelcomeFiles());
+		config.setMimeTypes(loadMimeTypes());
+		for (String name : names("cache.")) {
+			caches.put(name, loadCache(name));
+		}
+		for (String name : names("listener.")) {
+			HttpListenerConfig lc = loadListener(name, config);
+			listeners.put(name, lc);
+			config.getListeners().add(lc);
+		}
+		if (config.getListeners().isEmpty()) {
+			errors.add(file.getName() + ": no listeners configured");
+		}
+		for (Map.Entry<String, Setting> entry : settings.entrySet()) {
+			if (!entry.getValue().used) {
+				error(entry.getKey(), "unknown setting");
+			}
+		}
+		if (!errors.isEmpty()) {
+			StringBuilder msg = new StringBuilder();
+			msg.append(errors.size()).append((errors.size() == 1) ? " error" : " errors").append(" in ").append(file);
+			for (String error : errors) {
+				msg.append("\n    ").append(error);
+			}
+			throw new ConfigurationException(msg.toString(), errors);
+		}
+		return config;
+	}
+
+	/**
+	 * Returns the builders of the listeners that were loaded last by name,
+	 * in the same order as they appear in the server configuration
+	 * @return The listener builders
+	 */
+	public LinkedHashMap<String, HttpListenerConfig> getListenerConfigs() {
+		return listeners;
+	}
+
+	/**
+	 * Returns the settings of a listener that was loaded last, leaving
+	 * out those of its routes and its rate limit. When these are the same
+	 * for two versions of the file the existing listener can be kept and
+	 * only its default servlet needs to be replaced
+	 * @param name The name of the listener
+	 * @return The settings as text, sorted by name
+	 */
+	String getListenerSettings(String name) {
+		String p = "listener." + name + ".";
+		TreeMap<String, String> values = new TreeMap<String, String>();
+		for (Map.Entry<String, Setting> entry : settings.entrySet()) {
+			String key = entry.getKey();
+			if (key.startsWith(p) && !key.startsWith(p + "route.") && !key.startsWith(p + "rateLimit")) {
+				values.put(key, entry.getValue().value);
+			}
+		}
+		return values.toString();
+	}
+
+	/**
+	 * Returns the proxy servlets that were made by the last load, their
+	 * connections must be closed once they aren't used anymore
+	 * @return The proxy servlets
+	 */
+	List<ProxyServlet> getProxyServlets() {
+		return proxies;
+	}
+
+	/**
+	 * Reads all the settings
+	 * @param reader The contents of the configuration file
+	 * @throws java.io.IOException If the file could not be read
+	 */
+	private void read(Reader reader) throws IOException {
+		settings = new LinkedHashMap<String, Setting>();
+		errors = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(reader);
+		StringBuilder text = new StringBuilder();
+		int lineNr = 0;
+		int startLine = 0;
+		String line;
+		while ((line = in.readLine()) != null) {
+			lineNr++;
+			String trimmed = line.trim();
+			if (text.length() == 0) {
+				if (trimmed.length() == 0 || trimmed.charAt(0) == '#') {
+					continue;
+				}
+				startLine = lineNr;
+			}
+			if (trimmed.endsWith("\\")) {
+				text.append(trimmed, 0, trimmed.length() - 1).append(' ');
+				continue;
+			}
+			text.append(trimmed);
+			add(text.toString(), startLine);
+			text.setLength(0);
+		}
+		if (text.length() > 0) {
+			add(text.toString(), startLine);
+		}
+		for (Map.Entry<String, Setting> entry : settings.entrySet()) {
+			if (entry.getValue().value == null) {
+				errors.add(file.getName() + ":" + entry.getValue().line + ": " + entry.getKey() + ": missing '='");
+				entry.getValue().used = true;
+			}
+		}
+	}
+
+	/**
+	 * Adds a setting read from the file
+	 * @param text The text of the setting
+	 * @param line The number of the line the setting starts on
+	 */
+	private void add(String text, int line) {
+		int eq = text.indexOf('=');
+		String name = (eq < 0) ? text.trim() : text.substring(0, eq).trim();
+		String value = (eq < 0) ? null : text.substring(eq + 1).trim();
+		Setting previous = settings.get(name);
+		if (previous != null) {
+			errors.add(file.getName() + ":" + line + ": " + name + ": already set on line " + previous.line);
+		} else {
+			settings.put(name, new Setting(value, line));
+		}
+	}
+
+	/**
+	 * Returns the welcome files
+	 * @return The welcome files
+	 */
+	private WelcomeFiles loadWelcomeFiles() {
+		WelcomeFiles welcomeFiles = new WelcomeFiles();
+		String[] names = list("welcome");
+		if (names == null) {
+			names = new String[] { "index.page", "index.html", "index.htm" };
+		}
+		for (String name : names) {
+			welcomeFiles.getFileNames().add(name);
+		}
+		return welcomeFiles;
+	}
+
+	/**
+	 * Returns the mime types, grouping the extensions by type
+	 * @return The mime types
+	 */
+	private MimeTypes loadMimeTypes() {
+		LinkedHashMap<String, List<String>> types = new LinkedHashMap<String, List<String>>();
+		for (String name : settings.keySet()) {
+			if (!name.startsWith("mime.")) {
+				continue;
+			}
+			String ext = name.substring(5);
+			String type = string(name, "");
+			if (ext.length() == 0 || type.indexOf('/') <= 0) {
+				error(name, "not an extension and a mime type: '" + type + "'");
+				continue;
+			}
+			List<String> exts = types.get(type);
+			if (exts == null) {
+				exts = new ArrayList<String>();
+				types.put(type, exts);
+			}
+			exts.add(ext);
+		}
+		if (types.isEmpty()) {
+			types.put("text/plain", Arrays.asList("txt"));
+			types.put("text/html", Arrays.asList("html", "htm"));
+			types.put("text/xml", Arrays.asList("xml"));
+			types.put("image/gif", Arrays.asList("gif"));
+			types.put("image/jpg", Arrays.asList("jpg"));
+			types.put("image/png", Arrays.asList("png"));
+			types.put("image/x-icon", Arrays.asList("ico"));
+			types.put(PAGE_MIME_TYPE, Arrays.asList("page"));
+		}
+		MimeTypeHandler defaultHandler = new DefaultMimeTypeHandler();
+		MimeTypes mimeTypes = new MimeTypes();
+		for (Map.Entry<String, List<String>> type : types.entrySet()) {
+			MimeTypeHandler handler = type.getKey().equals(PAGE_MIME_TYPE) ? pageHandler : defaultHandler;
+			String[] exts = type.getValue().toArray(new String[type.getValue().size()]);
+			mimeTypes.getMimeTypes().add(new MimeType(type.getKey(), handler, exts));
+		}
+		return mimeTypes;
+	}
+
+	/**
+	 * Returns a response cache
+	 * @param name The name of the cache
+	 * @return The response cache
+	 */
+	private ResponseCache loadCache(String name) {
+		String p = "cache." + name + ".";
+		CacheSettings cs = new CacheSettings();
+		cs.setDefaultTtl(integer(p + "ttl", cs.getDefaultTtl(), 0));
+		cs.setStaleTime(integer(p + "staleTime", cs.getStaleTime(), 0));
+		cs.setMaxSize(size(p + "maxSize", cs.getMaxSize(), 1, Long.MAX_VALUE));
+		cs.setMaxEntrySize((int) size(p + "maxEntrySize", cs.getMaxEntrySize(), 1, Integer.MAX_VALUE));
+		cs.setCoalesceTimeout(integer(p + "coalesceTimeout", cs.getCoalesceTimeout(), 0));
+		cs.setMaxRevalidations(integer(p + "maxRevalidations", cs.getMaxRevalidations(), 1));
+		cs.setEviction(enumeration(p + "eviction", Eviction.class, cs.getEviction()));
+		String[] vary = list(p + "vary");
+		if (vary != null) {
+			cs.getVaryHeaders().clear();
+			for (String header : vary) {
+				cs.getVaryHeaders().add(header);
+			}
+		}
+		return new ResponseCache(cs);
+	}
+
+	/**
+	 * Returns the builder for a listener and all its routes
+	 * @param name The name of the listener
+	 * @param config The server configuration, its mime types and welcome
+	 * files must already be set
+	 * @return The listener builder
+	 */
+	private HttpListenerConfig loadListener(String name, ServerConfig config) {
+		String p = "listener." + name + ".";
+		HttpListenerConfig lc;
+		String keyStore = string(p + "keyStore", null);
+		if (keyStore != null) {
+			HttpsListenerConfig hc = new HttpsListenerConfig();
+			if (!new File(keyStore).isFile()) {
+				error(p + "keyStore", "file not found: '" + keyStore + "'");
+			}
+			hc.setKeyStore(keyStore);
+			hc.setKeyStoreType(string(p + "keyStoreType", hc.getKeyStoreType()));
+			hc.setKeyStorePassword(string(p + "keyStorePassword", null));
+			hc.setKeyPassword(string(p + "keyPassword", null));
+			hc.setEnabledProtocols(list(p + "protocols"));
+			hc.setEnabledCipherSuites(list(p + "cipherSuites"));
+			hc.setSessionCacheSize(integer(p + "sessionCacheSize", hc.getSessionCacheSize(), 0));
+			hc.setSessionTimeout(integer(p + "sessionTimeout", hc.getSessionTimeout(), 0));
+			hc.setSessionTickets(bool(p + "sessionTickets", hc.isSessionTickets()));
+			hc.setKeyStoreReloadInterval(integer(p + "keyStoreReloadInterval", (int) hc.getKeyStoreReloadInterval(), 0));
+			lc = hc;
+		} else {
+			lc = new HttpListenerConfig();
+		}
+
+		lc.setAddress(string(p + "address", lc.getAddress()));
+		if (!settings.containsKey(p + "port")) {
+			error(p + "port", "no port given");
+		}
+		lc.setPort(integer(p + "port", 0, 0, 65535));
+		lc.setAcceptBacklog(integer(p + "acceptBacklog", lc.getAcceptBacklog(), 0));
+		lc.setAcceptBatchSize(integer(p + "acceptBatchSize", lc.getAcceptBatchSize(), -1));
+		lc.setAcceptorCount(integer(p + "acceptorCount", lc.getAcceptorCount(), 1));
+		lc.setReusePort(bool(p + "reusePort", lc.isReusePort()));
+		lc.setKeepAliveTimeout(integer(p + "keepAliveTimeout", lc.getKeepAliveTimeout(), 0));
+		lc.setKeepAliveMaxRequests(integer(p + "keepAliveMaxRequests", lc.getKeepAliveMaxRequests(), -1));
+		lc.setTcpNoDelay(bool(p + "tcpNoDelay", lc.isTcpNoDelay()));
+		lc.setParkIdleConnections(bool(p + "parkIdleConnections", lc.isParkIdleConnections()));
+		lc.setAdaptiveKeepAlive(bool(p + "adaptiveKeepAlive", lc.isAdaptiveKeepAlive()));
+		lc.setMaxThreads(integer(p + "maxThreads", lc.getMaxThreads(), 1));
+		lc.setQueueSize(integer(p + "queueSize", lc.getQueueSize(), 0));
+		lc.setMaxConnections(integer(p + "maxConnections", lc.getMaxConnections(), -1));
+		lc.setOverloadPolicy(enumeration(p + "overloadPolicy", OverloadPolicy.class, lc.getOverloadPolicy()));
+		lc.setRetryAfter(integer(p + "retryAfter", lc.getRetryAfter(), 0));
+		lc.setRequestHeadTimeout(integer(p + "requestHeadTimeout", lc.getRequestHeadTimeout(), 0));
+		lc.setMinRequestDataRate(integer(p + "minRequestDataRate", lc.getMinRequestDataRate(), 0));
+		lc.setMaxRequestLineLength((int) size(p + "maxRequestLineLength", lc.getMaxRequestLineLength(), 0, Integer.MAX_VALUE));
+		lc.setMaxHeaderCount(integer(p + "maxHeaderCount", lc.getMaxHeaderCount(), 0));
+		lc.setMaxHeaderSize((int) size(p + "maxHeaderSize", lc.getMaxHeaderSize(), 0, Integer.MAX_VALUE));
+		lc.setMaxRequestHeadSize((int) size(p + "maxRequestHeadSize", lc.getMaxRequestHeadSize(), 0, Integer.MAX_VALUE));
+		lc.setMaxRequestBodySize(size(p + "maxRequestBodySize", lc.getMaxRequestBodySize(), 0, Long.MAX_VALUE));
+		lc.setMaxFormParts(integer(p + "maxFormParts", lc.getMaxFormParts(), 0));
+		lc.setMaxFormFieldSize((int) size(p + "maxFormFieldSize", lc.getMaxFormFieldSize(), 0, Integer.MAX_VALUE));
+		lc.setMaxFormPartSize(size(p + "maxFormPartSize", lc.getMaxFormPartSize(), 0, Long.MAX_VALUE));
+		lc.setFormFileSizeThreshold((int) size(p + "formFileSizeThreshold", lc.getFormFileSizeThreshold(), 0, Integer.MAX_VALUE));
+		lc.setFormTempDirectory(string(p + "formTempDirectory", lc.getFormTempDirectory()));
+		lc.setHttp2Enabled(bool(p + "http2", lc.isHttp2Enabled()));
+		lc.setHttp2MaxConcurrentStreams(integer(p + "http2MaxConcurrentStreams", lc.getHttp2MaxConcurrentStreams(), 1));
+		lc.setHttp2InitialWindowSize((int) size(p + "http2InitialWindowSize", lc.getHttp2InitialWindowSize(), 1, Integer.MAX_VALUE));
+		lc.setHttp2MaxThreads(integer(p + "http2MaxThreads", lc.getHttp2MaxThreads(), 1));
+		lc.setHttp2QueueSize(integer(p + "http2QueueSize", lc.getHttp2QueueSize(), 0));
+
+		String accessLog = string(p + "accessLog", null);
+		if (accessLog != null) {
+			AccessLog log = new AccessLog(new File(accessLog), enumeration(p + "accessLog.format", AccessLogFormat.class, AccessLogFormat.COMBINED));
+			log.setMaxFileSize(size(p + "accessLog.maxFileSize", log.getMaxFileSize(), 0, Long.MAX_VALUE));
+			log.setRotationInterval(integer(p + "accessLog.rotationInterval", (int) log.getRotationInterval(), 0));
+			lc.setAccessLog(log);
+		}
+
+		RateLimitFilter rateLimit = loadRateLimit(p + "rateLimit");
+
+		RequestMatcherServlet routes = new RequestMatcherServlet();
+		for (String route : names(p + "route.")) {
+			RequestMatch match = loadRoute(p + "route." + route + ".", config);
+			if (match != null) {
+				routes.getRequestMatchers().add(match);
+			}
+		}
+		if (routes.getRequestMatchers().isEmpty()) {
+			error(p + "port", "listener '" + name + "' has no routes");
+		}
+		// The rate limit wraps the routes instead of being one of the
+		// listener's filters so it can be changed together with them
+		lc.setDefaultServlet((rateLimit != null) ? new FilterServlet(routes, rateLimit) : routes);
+		return lc;
+	}
+
+	/**
+	 * Returns a route of a listener
+	 * @param p The prefix of the settings of the route
+	 * @param config The server configuration
+	 * @return The route or null if it has errors
+	 */
+	private RequestMatch loadRoute(String p, ServerConfig config) {
+		String path = string(p + "path", null);
+		String files = string(p + "files", null);
+		String[] proxy = list(p + "proxy");
+		String host = string(p + "host", "*");
+		String methods = string(p + "methods", (proxy != null) ? "*" : "head,get,post");
+		String cacheName = string(p + "cache", null);
+		RateLimitFilter rateLimit = loadRateLimit(p + "rateLimit");
+
+		Servlet servlet = null;
+		if (files != null && proxy != null) {
+			error(p + "files", "a route can't have both files and proxy");
+		} else if (files != null) {
+			if (!new File(files).isDirectory()) {
+				error(p + "files", "directory not found: '" + files + "'");
+			}
+			servlet = new FileServlet(files, config.getMimeTypes(), config.getWelcomeFiles());
+		} else if (proxy != null) {
+			servlet = loadProxy(p + "proxy", proxy);
+		} else {
+			error(p + "path", "route has neither files nor proxy");
+		}
+		if (path == null) {
+			error(p + "files", "route has no path");
+		}
+		if (cacheName != null) {
+			ResponseCache cache = caches.get(cacheName);
+			if (cache == null) {
+				error(p + "cache", "unknown cache '" + cacheName + "'");
+			} else if (servlet != null) {
+				servlet = new CachingServlet(servlet, cache);
+			}
+		}
+		if (rateLimit != null && servlet != null) {
+			servlet = new FilterServlet(servlet, rateLimit);
+		}
+		if (servlet == null || path == null) {
+			return null;
+		}
+		return new RequestMatch(methods, host, new SimplePathMatcher(path), servlet);
+	}
+
+	/**
+	 * Returns a reverse proxy servlet
+	 * @param p The name of the setting holding the upstream servers,
+	 * which is also the prefix of its other settings
+	 * @param upstreams The upstream servers as "host:port"
+	 * @return The servlet
+	 */
+	private Servlet loadProxy(String p, String[] upstreams) {
+		ProxySettings ps = new ProxySettings();
+		ps.setConnectTimeout(integer(p + ".connectTimeout", ps.getConnectTimeout(), 1));
+		ps.setReadTimeout(integer(p + ".readTimeout", ps.getReadTimeout(), 1));
+		ps.setMaxIdleConnections(integer(p + ".maxIdleConnections", ps.getMaxIdleConnections(), 0));
+		ps.setIdleTimeout(integer(p + ".idleTimeout", ps.getIdleTimeout(), 0));
+		ps.setBalancing(enumeration(p + ".balancing", Balancing.class, ps.getBalancing()));
+		ps.setRetryPutDelete(bool(p + ".retryPutDelete", ps.isRetryPutDelete()));
+		Upstream[] servers = new Upstream[upstreams.length];
+		for (int i = 0; i < upstreams.length; i++) {
+			String upstream = upstreams[i];
+			int colon = upstream.lastIndexOf(':');
+			int port = -1;
+			if (colon > 0) {
+				try {
+					port = Integer.parseInt(upstream.substring(colon + 1));
+				} catch (NumberFormatException ex) {
+					// Reported below
+				}
+			}
+			if (port <= 0 || port > 65535) {
+				error(p, "not a host:port: '" + upstream + "'");
+				return null;
+			}
+			servers[i] = new Upstream(upstream.substring(0, colon), port);
+		}
+		ProxyServlet proxy = new ProxyServlet(ps, servers);
+		proxies.add(proxy);
+		return proxy;
+	}
+
+	/**
+	 * Returns a rate limiting filter
+	 * @param p The name of the setting holding the rate, which is also the
+	 * prefix of its other settings
+	 * @return The filter or null if no rate limit is configured
+	 */
+	private RateLimitFilter loadRateLimit(String p) {
+		Setting rate = settings.get(p);
+		if (rate == null) {
+			return null;
+		}
+		rate.used = true;
+		double perSecond;
+		try {
+			perSecond = Double.parseDouble(rate.value);
+		} catch (NumberFormatException ex) {
+			perSecond = -1;
+		}
+		if (!(perSecond > 0) || Double.isInfinite(perSecond)) {
+			error(p, "not a positive number: '" + rate.value + "'");
+			return null;
+		}
+		int burst = integer(p + ".burst", (int) Math.max(1, Math.ceil(perSecond)), 1);
+		int maxClients = integer(p + ".maxClients", RateLimitFilter.DEFAULT_MAX_CLIENTS, 1);
+		RateLimitFilter filter = new RateLimitFilter(perSecond, burst, maxClients);
+		filter.setKeyHeader(string(p + ".keyHeader", null));
+		return filter;
+	}
+
+	/**
+	 * Returns the distinct names that follow the given prefix, in the
+	 * order they first appear. For "listener." and "listener.main.port"
+	 * the name would be "main"
+	 * @param prefix The prefix
+	 * @return The names
+	 */
+	private Set<String> names(String prefix) {
+		LinkedHashSet<String> names = new LinkedHashSet<String>();
+		for (String key : settings.keySet()) {
+			if (key.startsWith(prefix) && key.length() > prefix.length()) {
+				int dot = key.indexOf('.', prefix.length());
+				names.add((dot < 0) ? key.substring(prefix.length()) : key.substring(prefix.length(), dot));
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the value of a setting
+	 * @param name The name of the setting
+	 * @param def The value to use if the setting doesn't exist
+	 * @return The value
+	 */
+	private String string(String name, String def) {
+		Setting setting = settings.get(name);
+		if (setting == null) {
+			return def;
+		}
+		setting.used = true;
+		return setting.value;
+	}
+
+	/**
+	 * Returns the value of a setting as a list
+	 * @param name The name of the setting
+	 * @return The items of the list or null if the setting doesn't exist
+	 */
+	private String[] list(String name) {
+		String value = string(name, null);
+		if (value == null) {
+			return null;
+		}
+		value = value.trim();
+		return (value.length() == 0) ? new String[0] : value.split("[\\s,]+");
+	}
+
+	/**
+	 * Returns the value of a setting as a number
+	 * @param name The name of the setting
+	 * @param def The value to use if the setting doesn't exist
+	 * @param min The lowest value allowed
+	 * @return The number
+	 */
+	private int integer(String name, int def, int min) {
+		return integer(name, def, min, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the value of a setting as a number
+	 * @param name The name of the setting
+	 * @param def The value to use if the setting doesn't exist
+	 * @param min The lowest value allowed
+	 * @param max The highest value allowed
+	 * @return The number
+	 */
+	private int integer(String name, int def, int min, int max) {
+		String value = string(name, null);
+		if (value == null) {
+			return def;
+		}
+		try {
+			int result = Integer.parseInt(value);
+			if (result >= min && result <= max) {
+				return result;
+			}
+		} catch (NumberFormatException ex) {
+			// Reported below
+		}
+		error(name, "not a number between " + min + " and " + max + ": '" + value + "'");
+		return def;
+	}
+
+	/**
+	 * Returns the value of a setting as a size in bytes. The number can
+	 * end in "k", "m" or "g"
+	 * @param name The name of the setting
+	 * @param def The value to use if the setting doesn't exist
+	 * @param min The lowest value allowed
+	 * @param max The highest value allowed
+	 * @return The size
+	 */
+	private long size(String name, long def, long min, long max) {
+		String value = string(name, null);
+		if (value == null) {
+			return def;
+		}
+		String number = value.toLowerCase();
+		long unit = 1;
+		if (number.endsWith("k")) {
+			unit = 1024L;
+		} else if (number.endsWith("m")) {
+			unit = 1024L * 1024;
+		} else if (number.endsWith("g")) {
+			unit = 1024L * 1024 * 1024;
+		}
+		if (unit > 1) {
+			number = number.substring(0, number.length() - 1).trim();
+		}
+		try {
+			long result = Long.parseLong(number);
+			if (result <= Long.MAX_VALUE / unit) {
+				result *= unit;
+				if (result >= min && result <= max) {
+					return result;
+				}
+			}
+		} catch (NumberFormatException ex) {
+			// Reported below
+		}
+		error(name, "not a size between " + min + " and " + max + ": '" + value + "'");
+		return def;
+	}
+
+	/**
+	 * Returns the value of a setting as a boolean, accepting "true",
+	 * "yes" and "on" or "false", "no" and "off"
+	 * @param name The name of the setting
+	 * @param def The value to use if the setting doesn't exist
+	 * @return The boolean
+	 */
+	private boolean bool(String name, boolean def) {
+		String value = string(name, null);
+		if (value == null) {
+			return def;
+		}
+		String v = value.toLowerCase();
+		if (v.equals("true") || v.equals("yes") || v.equals("on")) {
+			return true;
+		} else if (v.equals("false") || v.equals("no") || v.equals("off")) {
+			return false;
+		}
+		error(name, "not true or false: '" + value + "'");
+		return def;
+	}
+
+	/**
+	 * Returns the value of a setting as one of the constants of an enum,
+	 * ignoring case
+	 * @param name The name of the setting
+	 * @param type The enum
+	 * @param def The value to use if the setting doesn't exist
+	 * @return The constant
+	 */
+	private <E extends Enum<E>> E enumeration(String name, Class<E> type, E def) {
+		String value = string(name, null);
+		if (value == null) {
+			return def;
+		}
+		StringBuilder allowed = new StringBuilder();
+		for (E constant : type.getEnumConstants()) {
+			if (constant.name().equalsIgnoreCase(value)) {
+				return constant;
+			}
+			if (allowed.length() > 0) {
+				allowed.append(", ");
+			}
+			allowed.append(constant.name().toLowerCase());
+		}
+		error(name, "not one of " + allowed + ": '" + value + "'");
+		return def;
+	}
+
+	/**
+	 * Records a problem with a setting
+	 * @param name The name of the setting
+	 * @param message The description of the problem
+	 */
+	private void error(String name, String message) {
+		Setting setting = settings.get(name);
+		if (setting == null) {
+			// Point to the first setting that shares the prefix
+			String prefix = name.substring(0, name.lastIndexOf('.', name.length() - 1) + 1);
+			for (Map.Entry<String, Setting> entry : settings.entrySet()) {
+				if (prefix.length() > 0 && entry.getKey().startsWith(prefix)) {
+					setting = entry.getValue();
+					break;
+				}
+			}
+		}
+		String where = (setting != null) ? file.getName() + ":" + setting.line : file.getName();
+		errors.add(where + ": " + name + ": " + message);
+	}
+
+	/**
+	 * A setting read from the configuration file
+	 */
+	private static class Setting {
+
+		/**
+		 * The value of the setting, null if the line had no '='
+		 */
+		private final String value;
+
+		/**
+		 * The number of the line the setting starts on
+		 */
+		private final int line;
+
+		/**
+		 * Indicates that the setting was used
+		 */
+		private boolean used;
+
+		/**
+		 * Creates a new setting
+		 * @param value The value of the setting
+		 * @param line The number of the line the setting starts on
+		 */
+		public Setting(String value, int line) {
+			this.value = value;
+			this.line = line;
+		}
+	}
+}
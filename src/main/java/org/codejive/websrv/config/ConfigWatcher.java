@@ -0,0 +1,668 @@
+/*
+ * ConfigWatcher.java
+ *
+ * Created on Oct 19, 2026, 11:06:37 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.Server;
+import org.codejive.websrv.accesslog.AccessLog;
+import org.codejive.websrv.listener.Listener;
+import org.codejive.websrv.servlet.ProxyServlet;
+import org.codejive.websrv.servlet.Servlet;
+import org.codejive.websrv.servlet.SwappableServlet;
+
+/**
+ * Keeps a running server in line with its configuration file. The file is
+ * checked for changes every now and then and when it was changed it is
+ * loaded again in the background, while the server goes on handling
+ * requests as before. If the new version contains errors they are logged
+ * and nothing changes.
+ * <p>
+ * The default servlet of every listener is a <code>SwappableServlet</code>.
+ * When only the routes, mime types, caches or rate limits changed, which
+ * is what happens most of the time, the new servlets simply take the place
+ * of the old ones: requests that are being handled finish with the old
+ * servlets, all the requests after that use the new ones and no connection
+ * gets closed. Listeners whose own settings changed are replaced by new
+ * ones, the new listener is started before the old one is stopped so there
+ * is always something accepting connections. Only when the new listener
+ * uses the same address and port as the old one does the old one have to
+ * be stopped first, if the new one then fails to start a listener with
+ * the old settings takes its place again. The connections of a listener that was stopped are
+ * drained: they are closed as soon as they're done with the request they
+ * are handling, those that are still open after some time are closed by
+ * force.
+ * <p>
+ * All caches and rate limits start out empty after a reload
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class ConfigWatcher {
+
+	/**
+	 * The loader used to read the configuration file
+	 */
+	private final ConfigLoader loader;
+
+	/**
+	 * The running listeners by name
+	 */
+	private final LinkedHashMap<String, Binding> bindings;
+
+	/**
+	 * The proxy servlets used by the current configuration
+	 */
+	private List<ProxyServlet> proxies;
+
+	/**
+	 * The server that is kept up-to-date
+	 */
+	private Server server;
+
+	/**
+	 * The time in milliseconds between checks for changes of the
+	 * configuration file (default = 2000)
+	 */
+	private long interval;
+
+	/**
+	 * The time in milliseconds that connections of a listener that was
+	 * stopped, and requests using servlets that were replaced, are given to
+	 * finish before their resources are released (default = 30000)
+	 */
+	private long drainTime;
+
+	/**
+	 * The time the configuration file was last modified when it was loaded
+	 */
+	private long lastModified;
+
+	/**
+	 * The size of the configuration file when it was loaded
+	 */
+	private long lastLength;
+
+	/**
+	 * The number of times the configuration was reloaded successfully
+	 */
+	private int reloadCount;
+
+	/**
+	 * The timer that checks for changes and releases old resources, it is
+	 * created when needed
+	 */
+	private Timer timer;
+
+	/**
+	 * The resources that are waiting to be released
+	 */
+	private final ArrayList<Retirement> retirements;
+
+	/**
+	 * Makes sure only one reload runs at a time
+	 */
+	private final Object reloadLock;
+
+	/**
+	 * The time in milliseconds a new listener gets to start
+	 */
+	private static final long START_TIMEOUT = 10000;
+
+	/**
+	 * Class private logger
+	 */
+	private static final Logger logger = Logger.getLogger(ConfigWatcher.class.getName());
+
+	/**
+	 * Creates a new watcher for the configuration that was just loaded
+	 * by the given loader
+	 * @param loader The loader, its <code>load()</code> must have been
+	 * called successfully
+	 */
+	public ConfigWatcher(ConfigLoader loader) {
+		this.loader = loader;
+		bindings = new LinkedHashMap<String, Binding>();
+		retirements = new ArrayList<Retirement>();
+		reloadLock = new Object();
+		proxies = loader.getProxyServlets();
+		interval = 2000;
+		drainTime = 30000;
+		File file = loader.getFile();
+		lastModified = file.lastModified();
+		lastLength = file.length();
+	}
+
+	/**
+	 * Returns the time between checks for changes of the configuration file
+	 * @return The time in milliseconds
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Sets the time between checks for changes of the configuration file.
+	 * Must be set before calling <code>start()</code>
+	 * @param interval The time in milliseconds
+	 */
+	public void setInterval(long interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		this.interval = interval;
+	}
+
+	/**
+	 * Returns the time that connections of a listener that was stopped, and
+	 * requests using servlets that were replaced, are given to finish
+	 * @return The time in milliseconds
+	 */
+	public long getDrainTime() {
+		return drainTime;
+	}
+
+	/**
+	 * Sets the time that connections of a listener that was stopped, and
+	 * requests using servlets that were replaced, are given to finish
+	 * @param drainTime The time in milliseconds
+	 */
+	public void setDrainTime(long drainTime) {
+		if (drainTime < 0) {
+			throw new IllegalArgumentException("drainTime must not be negative");
+		}
+		this.drainTime = drainTime;
+	}
+
+	/**
+	 * Returns the number of times the configuration was reloaded successfully
+	 * @return The number of reloads
+	 */
+	public synchronized int getReloadCount() {
+		return reloadCount;
+	}
+
+	/**
+	 * Constructs the server for the configuration, the same way
+	 * <code>ServerConfig.buildServer()</code> does but with a
+	 * <code>SwappableServlet</code> as the default servlet of
+	 * each listener
+	 * @return A properly configured Server object
+	 * @throws org.codejive.websrv.config.ConfigurationException If the object
+	 * could not be created
+	 */
+	public synchronized Server buildServer() throws ConfigurationException {
+		Server srv = new Server();
+		for (Map.Entry<String, HttpListenerConfig> entry : loader.getListenerConfigs().entrySet()) {
+			Binding binding = bind(entry.getKey(), entry.getValue());
+			srv.addListener(binding.listener);
+			bindings.put(binding.name, binding);
+		}
+		server = srv;
+		return srv;
+	}
+
+	/**
+	 * Starts checking the configuration file for changes. The server
+	 * must have been built by calling <code>buildServer()</code>
+	 */
+	public synchronized void start() {
+		timer().schedule(new TimerTask() {
+			@Override
+			public void run() {
+				check();
+			}
+		}, interval, interval);
+	}
+
+	/**
+	 * Stops checking the configuration file for changes. Resources that
+	 * were waiting to be released are released right away
+	 */
+	public void close() {
+		Timer t;
+		synchronized (this) {
+			t = timer;
+			timer = null;
+		}
+		if (t != null) {
+			t.cancel();
+		}
+		for (Retirement retirement : pendingRetirements()) {
+			retirement.release();
+		}
+	}
+
+	/**
+	 * Loads the configuration file again and applies it to the running
+	 * server. This is done automatically when the file changes, but it can
+	 * also be called directly, for example from an administration page.
+	 * Only one reload runs at a time. The watcher isn't locked while the
+	 * new listeners are starting up, only while its state is changed
+	 * @return <code>true</code> if the new configuration is being used,
+	 * <code>false</code> if it contained errors and nothing was changed
+	 */
+	public boolean reload() {
+		synchronized (reloadLock) {
+			File file;
+			Server srv;
+			List<ProxyServlet> newProxies;
+			LinkedHashMap<String, Binding> current;
+			LinkedHashMap<String, Servlet> swaps = new LinkedHashMap<String, Servlet>();
+			ArrayList<Binding> added = new ArrayList<Binding>();
+
+			// Work out what has to change, making new listeners where needed
+			synchronized (this) {
+				if (server == null) {
+					throw new IllegalStateException("The server was not built yet");
+				}
+				srv = server;
+				file = loader.getFile();
+				lastModified = file.lastModified();
+				lastLength = file.length();
+				try {
+					loader.load();
+				} catch (ConfigurationException ex) {
+					logger.warning("Configuration not reloaded: " + ex.getMessage());
+					return false;
+				}
+				newProxies = loader.getProxyServlets();
+				try {
+					for (Map.Entry<String, HttpListenerConfig> entry : loader.getListenerConfigs().entrySet()) {
+						Binding binding = bindings.get(entry.getKey());
+						if (binding != null && binding.settings.equals(loader.getListenerSettings(entry.getKey()))) {
+							swaps.put(entry.getKey(), entry.getValue().getDefaultServlet());
+						} else {
+							added.add(bind(entry.getKey(), entry.getValue()));
+						}
+					}
+				} catch (ConfigurationException ex) {
+					logger.log(Level.WARNING, "Configuration not reloaded", ex);
+					closeProxies(newProxies);
+					return false;
+				}
+				current = new LinkedHashMap<String, Binding>(bindings);
+			}
+
+			// Start the new listeners before anything else changes, that way
+			// nothing has happened yet when one of them fails to start
+			ArrayList<Binding> started = new ArrayList<Binding>();
+			for (Binding binding : added) {
+				Binding old = current.get(binding.name);
+				if (old == null || !old.sameSocket(binding)) {
+					if (!start(srv, binding)) {
+						for (Binding b : added) {
+							if (started.contains(b)) {
+								srv.stopListener(b.listener);
+							}
+							b.listener.shutdown();
+						}
+						closeProxies(newProxies);
+						logger.warning("Configuration not reloaded, listener '" + binding.name + "' could not be started");
+						return false;
+					}
+					started.add(binding);
+				}
+			}
+
+			// From here on the new configuration is used
+			Retirement retirement;
+			synchronized (this) {
+				for (Map.Entry<String, Servlet> swap : swaps.entrySet()) {
+					current.get(swap.getKey()).servlet.setServlet(swap.getValue());
+				}
+				retirement = new Retirement(proxies);
+			}
+			LinkedHashMap<String, Binding> newBindings = new LinkedHashMap<String, Binding>();
+			for (Map.Entry<String, Binding> entry : current.entrySet()) {
+				if (swaps.containsKey(entry.getKey())) {
+					newBindings.put(entry.getKey(), entry.getValue());
+				}
+			}
+			int replaced = 0;
+			for (Binding binding : added) {
+				Binding old = current.remove(binding.name);
+				if (old != null) {
+					Future<?> task = srv.stopListener(old.listener);
+					old.listener.drain();
+					retirement.listeners.add(old.listener);
+					replaced++;
+					if (old.sameSocket(binding)) {
+						// The old listener must let go of the socket first
+						awaitStopped(task);
+						if (!start(srv, binding)) {
+							binding.listener.shutdown();
+							Binding restored = restore(srv, old, binding);
+							if (restored != null) {
+								newBindings.put(restored.name, restored);
+							}
+							continue;
+						}
+					}
+				}
+				newBindings.put(binding.name, binding);
+			}
+			int removed = 0;
+			for (Binding binding : current.values()) {
+				if (!swaps.containsKey(binding.name)) {
+					srv.stopListener(binding.listener);
+					binding.listener.drain();
+					retirement.listeners.add(binding.listener);
+					removed++;
+				}
+			}
+			synchronized (this) {
+				bindings.clear();
+				bindings.putAll(newBindings);
+				proxies = newProxies;
+				reloadCount++;
+			}
+			retire(retirement);
+			logger.info("Configuration reloaded from " + file + ": " + swaps.size() + " listener(s) updated, "
+					+ replaced + " replaced, " + (added.size() - replaced) + " added, " + removed + " removed");
+			return true;
+		}
+	}
+
+	/**
+	 * Checks if the configuration file was changed and if so reloads it
+	 */
+	private void check() {
+		try {
+			boolean changed;
+			synchronized (this) {
+				File file = loader.getFile();
+				changed = file.lastModified() != lastModified || file.length() != lastLength;
+			}
+			if (changed) {
+				reload();
+			}
+		} catch (RuntimeException ex) {
+			logger.log(Level.SEVERE, "Could not reload configuration", ex);
+		}
+	}
+
+	/**
+	 * Makes a listener for the given builder with a <code>SwappableServlet</code>
+	 * as its default servlet
+	 * @param name The name of the listener
+	 * @param config The listener builder, its default servlet gets replaced
+	 * @return The binding for the new listener
+	 * @throws org.codejive.websrv.config.ConfigurationException If the
+	 * listener could not be created
+	 */
+	private Binding bind(String name, HttpListenerConfig config) throws ConfigurationException {
+		SwappableServlet servlet = new SwappableServlet(config.getDefaultServlet());
+		config.setDefaultServlet(servlet);
+		Listener listener = config.buildListener();
+		return new Binding(name, config, loader.getListenerSettings(name), listener, servlet);
+	}
+
+	/**
+	 * Starts a listener like the one that was stopped to make way for a
+	 * replacement that then failed to start. It gets the old settings but
+	 * the new routes, because the resources of the old routes are going
+	 * to be released. The next reload will try to apply the new settings
+	 * again
+	 * @param srv The server
+	 * @param old The binding of the listener that was stopped
+	 * @param failed The binding of the replacement that failed to start
+	 * @return The binding of the restored listener or null if that failed
+	 * to start as well
+	 */
+	private Binding restore(Server srv, Binding old, Binding failed) {
+		old.servlet.setServlet(failed.servlet.getServlet());
+		HttpListenerConfig config = old.config;
+		if (config.getAccessLog() != null) {
+			// The old listener closes its access log when it's released
+			config.setAccessLog(new AccessLog(config.getAccessLog()));
+		}
+		Binding restored;
+		try {
+			restored = new Binding(old.name, config, old.settings, config.buildListener(), old.servlet);
+		} catch (ConfigurationException ex) {
+			logger.log(Level.SEVERE, "Listener '" + old.name + "' could not be restarted", ex);
+			return null;
+		}
+		if (!start(srv, restored)) {
+			restored.listener.shutdown();
+			logger.severe("Listener '" + old.name + "' could not be restarted");
+			return null;
+		}
+		logger.severe("Listener '" + old.name + "' could not be restarted with its new settings, the previous settings are used instead");
+		return restored;
+	}
+
+	/**
+	 * Starts a new listener and waits until it accepts connections. If it
+	 * doesn't the caller must shut it down
+	 * @param srv The server to start the listener on
+	 * @param binding The binding of the listener
+	 * @return <code>true</code> if the listener was started
+	 */
+	private static boolean start(Server srv, Binding binding) {
+		Future<?> task = srv.startListener(binding.listener);
+		long deadline = System.currentTimeMillis() + START_TIMEOUT;
+		boolean interrupted = false;
+		while (!binding.listener.isRunning() && !task.isDone() && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (!binding.listener.isRunning()) {
+			srv.stopListener(binding.listener);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Waits for a listener that was stopped to close its socket
+	 * @param task The task running the listener, may be null
+	 */
+	private static void awaitStopped(Future<?> task) {
+		if (task != null) {
+			try {
+				task.get(START_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} catch (Exception ex) {
+				// Starting the new listener will tell if it worked
+			}
+		}
+	}
+
+	/**
+	 * Closes the connections of the given proxy servlets
+	 * @param servlets The proxy servlets
+	 */
+	private static void closeProxies(List<ProxyServlet> servlets) {
+		for (ProxyServlet servlet : servlets) {
+			servlet.close();
+		}
+	}
+
+	/**
+	 * Releases the resources of the given retirement once the drain time
+	 * is over
+	 * @param retirement The resources to release
+	 */
+	private void retire(Retirement retirement) {
+		synchronized (retirements) {
+			retirements.add(retirement);
+		}
+		timer().schedule(retirement, drainTime);
+	}
+
+	/**
+	 * Returns and forgets the resources that are waiting to be released
+	 * @return The resources
+	 */
+	private List<Retirement> pendingRetirements() {
+		synchronized (retirements) {
+			ArrayList<Retirement> result = new ArrayList<Retirement>(retirements);
+			retirements.clear();
+			return result;
+		}
+	}
+
+	/**
+	 * Returns the timer, creating it if necessary
+	 * @return The timer
+	 */
+	private synchronized Timer timer() {
+		if (timer == null) {
+			timer = new Timer("websrv-config-watcher", true);
+		}
+		return timer;
+	}
+
+	/**
+	 * A listener that was built from the configuration
+	 */
+	private static class Binding {
+
+		/**
+		 * The name of the listener
+		 */
+		private final String name;
+
+		/**
+		 * The builder the listener was made with
+		 */
+		private final HttpListenerConfig config;
+
+		/**
+		 * The address the listener is bound to, null meaning the local host
+		 */
+		private final String address;
+
+		/**
+		 * The port the listener is bound to, 0 meaning any free port
+		 */
+		private final int port;
+
+		/**
+		 * The settings of the listener, leaving out those of its routes
+		 */
+		private final String settings;
+
+		/**
+		 * The listener
+		 */
+		private final Listener listener;
+
+		/**
+		 * The default servlet of the listener
+		 */
+		private final SwappableServlet servlet;
+
+		/**
+		 * Creates a new binding
+		 * @param name The name of the listener
+		 * @param config The builder the listener was made with
+		 * @param settings The settings of the listener
+		 * @param listener The listener
+		 * @param servlet The default servlet of the listener
+		 */
+		public Binding(String name, HttpListenerConfig config, String settings, Listener listener, SwappableServlet servlet) {
+			this.name = name;
+			this.config = config;
+			this.address = config.getAddress();
+			this.port = config.getPort();
+			this.settings = settings;
+			this.listener = listener;
+			this.servlet = servlet;
+		}
+
+		/**
+		 * Determines if two listeners would try to bind the same socket
+		 * @param other The other listener
+		 * @return <code>true</code> if the sockets are the same
+		 */
+		public boolean sameSocket(Binding other) {
+			return port != 0 && port == other.port
+					&& ((address == null) ? other.address == null : address.equals(other.address));
+		}
+	}
+
+	/**
+	 * The resources that were replaced by a reload. They are released
+	 * once they had enough time to finish what they were doing
+	 */
+	private class Retirement extends TimerTask {
+
+		/**
+		 * The listeners that were stopped
+		 */
+		private final ArrayList<Listener> listeners;
+
+		/**
+		 * The proxy servlets that were replaced
+		 */
+		private final List<ProxyServlet> proxies;
+
+		/**
+		 * Creates a new retirement
+		 * @param proxies The proxy servlets that were replaced
+		 */
+		public Retirement(List<ProxyServlet> proxies) {
+			this.listeners = new ArrayList<Listener>();
+			this.proxies = proxies;
+		}
+
+		@Override
+		public void run() {
+			boolean pending;
+			synchronized (retirements) {
+				pending = retirements.remove(this);
+			}
+			if (pending) {
+				release();
+			}
+		}
+
+		/**
+		 * Shuts down the listeners and closes the proxy servlets
+		 */
+		public void release() {
+			for (Listener listener : listeners) {
+				listener.shutdown(0);
+			}
+			closeProxies(proxies);
+		}
+	}
+}
@@ -22,6 +22,10 @@
 
 package org.codejive.websrv.config;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * The exception that will be thrown when errors occur during
  * the reading, writing or application of configuration information
@@ -29,10 +33,16 @@ package org.codejive.websrv.config;
  */
 public class ConfigurationException extends Exception {
 
+	/**
+	 * The individual problems that were found, if there were several
+	 */
+	private final List<String> errors;
+
 	/**
 	 * Constructs a new instance
 	 */
 	public ConfigurationException() {
+		errors = Collections.emptyList();
 	}
 
 	/**
@@ -41,6 +51,7 @@ public class ConfigurationException extends Exception {
 	 */
 	public ConfigurationException(String message) {
 		super(message);
+		errors = Collections.emptyList();
 	}
 
 	/**
@@ -50,6 +61,7 @@ public class ConfigurationException extends Exception {
 	 */
 	public ConfigurationException(String message, Throwable cause) {
 		super(message, cause);
+		errors = Collections.emptyList();
 	}
 
 	/**
@@ -58,6 +70,26 @@ public class ConfigurationException extends Exception {
 	 */
 	public ConfigurationException(Throwable cause) {
 		super(cause);
+		errors = Collections.emptyList();
+	}
+
+	/**
+	 * Constructs a new instance for a list of problems, for example all
+	 * the errors found in a configuration file
+	 * @param message The message to use for this exception
+	 * @param errors The descriptions of the individual problems
+	 */
+	public ConfigurationException(String message, List<String> errors) {
+		super(message);
+		this.errors = Collections.unmodifiableList(new ArrayList<String>(errors));
+	}
+
+	/**
+	 * Returns the individual problems that were found
+	 * @return A list of descriptions, empty if there was only one problem
+	 */
+	public List<String> getErrors() {
+		return errors;
 	}
 
 }
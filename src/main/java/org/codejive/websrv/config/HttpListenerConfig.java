@@ -22,10 +22,18 @@
 
 package org.codejive.websrv.config;
 
+import org.codejive.websrv.accesslog.AccessLog;
+import org.codejive.websrv.filter.Filter;
 import org.codejive.websrv.listener.HttpListener;
+import org.codejive.websrv.listener.OverloadPolicy;
+import org.codejive.websrv.protocol.http.HttpRequestLimits;
+import org.codejive.websrv.protocol.http.form.FormLimits;
+import org.codejive.websrv.protocol.http2.Http2Settings;
 import org.codejive.websrv.servlet.Servlet;
+import java.io.File;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 
 /**
  * Builder class for HttpListener objects
@@ -43,6 +51,28 @@ public class HttpListenerConfig {
 	 */
 	private int port;
 	
+	/**
+	 * The maximum number of pending connections the operating system
+	 * will queue. 0 means the system default (default = 0)
+	 */
+	private int acceptBacklog;
+	
+	/**
+	 * The maximum number of connections accepted in one go. Setting it
+	 * to -1 will accept until no more connections are pending (default = -1)
+	 */
+	private int acceptBatchSize;
+	
+	/**
+	 * The number of threads accepting connections (default = 1)
+	 */
+	private int acceptorCount;
+	
+	/**
+	 * Use SO_REUSEPORT to give each acceptor its own socket (default = false)
+	 */
+	private boolean reusePort;
+	
 	/**
 	 * The timeout in milliseconds after which inactive connections
 	 * will be closed (default = 10 seconds)
@@ -56,10 +86,164 @@ public class HttpListenerConfig {
 	 */
 	private int keepAliveMaxRequests;
 	
+	/**
+	 * Disable Nagle's algorithm on client connections so responses are
+	 * sent immediately instead of being held back (default = true)
+	 */
+	private boolean tcpNoDelay;
+	
+	/**
+	 * Let idle keep-alive connections give up their thread while waiting
+	 * for their next request (default = true)
+	 */
+	private boolean parkIdleConnections;
+	
+	/**
+	 * Shorten the keep-alive time-out as the number of connections
+	 * approaches the maximum (default = true)
+	 */
+	private boolean adaptiveKeepAlive;
+	
+	/**
+	 * The maximum number of threads the listener will use to handle
+	 * connections (default = 256)
+	 */
+	private int maxThreads;
+	
+	/**
+	 * The number of connections that may wait for a thread to become
+	 * available (default = 128)
+	 */
+	private int queueSize;
+	
+	/**
+	 * The maximum number of connections that will be handled at the same
+	 * time. Setting it to -1 will make it depend only on the number of
+	 * threads and the queue size (default = -1)
+	 */
+	private int maxConnections;
+	
+	/**
+	 * What to do with new connections when the listener is already
+	 * handling as many as it can (default = REJECT)
+	 */
+	private OverloadPolicy overloadPolicy;
+	
+	/**
+	 * The number of seconds rejected clients are told to wait before
+	 * trying again (default = 5)
+	 */
+	private int retryAfter;
+	
+	/**
+	 * The maximum time in milliseconds a client can take to send a
+	 * complete request head. 0 means no limit (default = 20 seconds)
+	 */
+	private int requestHeadTimeout;
+	
+	/**
+	 * The minimum number of bytes per second a client must send while
+	 * sending a request head. 0 means no limit (default = 128)
+	 */
+	private int minRequestDataRate;
+	
+	/**
+	 * The maximum length of the request line (default = 8192)
+	 */
+	private int maxRequestLineLength;
+	
+	/**
+	 * The maximum number of request headers (default = 100)
+	 */
+	private int maxHeaderCount;
+	
+	/**
+	 * The maximum length of a single request header (default = 8192)
+	 */
+	private int maxHeaderSize;
+	
+	/**
+	 * The maximum size of a complete request head (default = 65536)
+	 */
+	private int maxRequestHeadSize;
+	
+	/**
+	 * The maximum size of a request body (default = 10MB)
+	 */
+	private long maxRequestBodySize;
+	
+	/**
+	 * The maximum number of fields and files in a form submission (default = 1000)
+	 */
+	private int maxFormParts;
+	
+	/**
+	 * The maximum size of a simple form field (default = 64KB)
+	 */
+	private int maxFormFieldSize;
+	
+	/**
+	 * The maximum size of an uploaded file, 0 means no limit
+	 * other than the maximum request body size (default = 0)
+	 */
+	private long maxFormPartSize;
+	
+	/**
+	 * The size above which uploaded files are written to temporary
+	 * files instead of being kept in memory (default = 16KB)
+	 */
+	private int formFileSizeThreshold;
+	
+	/**
+	 * The directory for temporary files holding uploaded files or null
+	 * to use the system's default (default = null)
+	 */
+	private String formTempDirectory;
+	
+	/**
+	 * Let clients use HTTP/2, either by upgrading a plain connection,
+	 * by starting with HTTP/2 right away or by negotiating it during the
+	 * TLS handshake (default = true)
+	 */
+	private boolean http2Enabled;
+	
+	/**
+	 * The maximum number of HTTP/2 streams a client can have open on a
+	 * single connection (default = 100)
+	 */
+	private int http2MaxConcurrentStreams;
+	
+	/**
+	 * The number of bytes of request body a client can send on each
+	 * HTTP/2 stream before it has to wait for the server (default = 65535)
+	 */
+	private int http2InitialWindowSize;
+	
+	/**
+	 * The maximum number of threads running HTTP/2 streams (default = 64)
+	 */
+	private int http2MaxThreads;
+	
+	/**
+	 * The maximum number of HTTP/2 streams that can wait for a thread
+	 * (default = 128)
+	 */
+	private int http2QueueSize;
+	
 	/**
 	 * The servlet that will handle client requests
 	 */
 	private Servlet defaultServlet;
+	
+	/**
+	 * The filters requests must pass before they get to the servlet
+	 */
+	private final ArrayList<Filter> filters;
+	
+	/**
+	 * The access log that handled requests will be recorded in (optional)
+	 */
+	private AccessLog accessLog;
 
 	/**
 	 * Constructs a new instance using "localhost" as the address
@@ -86,8 +270,37 @@ public class HttpListenerConfig {
 	public HttpListenerConfig(String address, int port) {
 		this.address = address;
 		this.port = port;
+		filters = new ArrayList<Filter>();
+		acceptBacklog = 0;
+		acceptBatchSize = -1;
+		acceptorCount = 1;
+		reusePort = false;
 		keepAliveTimeout = 10000;
 		keepAliveMaxRequests = -1;
+		tcpNoDelay = true;
+		parkIdleConnections = true;
+		adaptiveKeepAlive = true;
+		maxThreads = 256;
+		queueSize = 128;
+		maxConnections = -1;
+		overloadPolicy = OverloadPolicy.REJECT;
+		retryAfter = 5;
+		requestHeadTimeout = 20000;
+		minRequestDataRate = 128;
+		maxRequestLineLength = 8192;
+		maxHeaderCount = 100;
+		maxHeaderSize = 8192;
+		maxRequestHeadSize = 65536;
+		maxRequestBodySize = 10 * 1024 * 1024;
+		maxFormParts = 1000;
+		maxFormFieldSize = 65536;
+		maxFormPartSize = 0;
+		formFileSizeThreshold = 16384;
+		http2Enabled = true;
+		http2MaxConcurrentStreams = 100;
+		http2InitialWindowSize = Http2Settings.DEFAULT_WINDOW_SIZE;
+		http2MaxThreads = 64;
+		http2QueueSize = 128;
 	}
 
 	/**
@@ -132,6 +345,70 @@ public class HttpListenerConfig {
 		this.port = port;
 	}
 
+	/**
+	 * Returns the accept backlog that will be used to construct the listener
+	 * @return The accept backlog to use for the listener
+	 */
+	public int getAcceptBacklog() {
+		return acceptBacklog;
+	}
+
+	/**
+	 * Sets the accept backlog that will be used to construct the listener
+	 * @param acceptBacklog The accept backlog to use for the listener
+	 */
+	public void setAcceptBacklog(int acceptBacklog) {
+		this.acceptBacklog = acceptBacklog;
+	}
+
+	/**
+	 * Returns the accept batch size that will be used to construct the listener
+	 * @return The accept batch size to use for the listener
+	 */
+	public int getAcceptBatchSize() {
+		return acceptBatchSize;
+	}
+
+	/**
+	 * Sets the accept batch size that will be used to construct the listener
+	 * @param acceptBatchSize The accept batch size to use for the listener
+	 */
+	public void setAcceptBatchSize(int acceptBatchSize) {
+		this.acceptBatchSize = acceptBatchSize;
+	}
+
+	/**
+	 * Returns the number of acceptor threads that will be used to construct the listener
+	 * @return The number of acceptor threads to use for the listener
+	 */
+	public int getAcceptorCount() {
+		return acceptorCount;
+	}
+
+	/**
+	 * Sets the number of acceptor threads that will be used to construct the listener
+	 * @param acceptorCount The number of acceptor threads to use for the listener
+	 */
+	public void setAcceptorCount(int acceptorCount) {
+		this.acceptorCount = acceptorCount;
+	}
+
+	/**
+	 * Returns if SO_REUSEPORT will be used to construct the listener
+	 * @return <code>true</code> if the listener should use SO_REUSEPORT
+	 */
+	public boolean isReusePort() {
+		return reusePort;
+	}
+
+	/**
+	 * Sets if SO_REUSEPORT will be used to construct the listener
+	 * @param reusePort <code>true</code> if the listener should use SO_REUSEPORT
+	 */
+	public void setReusePort(boolean reusePort) {
+		this.reusePort = reusePort;
+	}
+
 	/**
 	 * Returns the default servlet that will be used to construct the listener
 	 * @return The default servlet to use for the listener
@@ -148,6 +425,15 @@ public class HttpListenerConfig {
 		this.defaultServlet = servlet;
 	}
 
+	/**
+	 * Returns the list of filters that will be used to construct the
+	 * listener, in the order they will be called
+	 * @return A list of filters
+	 */
+	public ArrayList<Filter> getFilters() {
+		return filters;
+	}
+
 	/**
 	 * Returns the Keep-Alive time-out that will be used to construct the listener
 	 * @return The Keep-Alive time-out to use for the listener
@@ -180,6 +466,434 @@ public class HttpListenerConfig {
 		this.keepAliveMaxRequests = keepAliveMaxRequests;
 	}
 	
+	/**
+	 * Returns if Nagle's algorithm will be disabled on client connections
+	 * @return <code>true</code> if the listener should set TCP_NODELAY
+	 */
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	/**
+	 * Sets if Nagle's algorithm will be disabled on client connections
+	 * @param tcpNoDelay <code>true</code> if the listener should set TCP_NODELAY
+	 */
+	public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+	
+	/**
+	 * Returns if idle connections will be parked by the listener
+	 * @return <code>true</code> if the listener should park idle connections
+	 */
+	public boolean isParkIdleConnections() {
+		return parkIdleConnections;
+	}
+
+	/**
+	 * Sets if idle connections will be parked by the listener
+	 * @param parkIdleConnections <code>true</code> if the listener should park idle connections
+	 */
+	public void setParkIdleConnections(boolean parkIdleConnections) {
+		this.parkIdleConnections = parkIdleConnections;
+	}
+
+	/**
+	 * Returns if the listener will use an adaptive keep-alive time-out
+	 * @return <code>true</code> if the listener should use an adaptive time-out
+	 */
+	public boolean isAdaptiveKeepAlive() {
+		return adaptiveKeepAlive;
+	}
+
+	/**
+	 * Sets if the listener will use an adaptive keep-alive time-out. This
+	 * only has effect when the maximum number of connections has been set
+	 * @param adaptiveKeepAlive <code>true</code> if the listener should use an adaptive time-out
+	 */
+	public void setAdaptiveKeepAlive(boolean adaptiveKeepAlive) {
+		this.adaptiveKeepAlive = adaptiveKeepAlive;
+	}
+
+	/**
+	 * Returns the maximum number of threads that will be used to construct the listener
+	 * @return The maximum number of threads to use for the listener
+	 */
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * Sets the maximum number of threads that will be used to construct the listener
+	 * @param maxThreads The maximum number of threads to use for the listener
+	 */
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * Returns the queue size that will be used to construct the listener
+	 * @return The queue size to use for the listener
+	 */
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * Sets the queue size that will be used to construct the listener
+	 * @param queueSize The queue size to use for the listener
+	 */
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Returns the maximum number of connections that will be used to construct the listener
+	 * @return The maximum number of connections to use for the listener
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Sets the maximum number of connections that will be used to construct the listener
+	 * @param maxConnections The maximum number of connections to use for the listener
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Returns the overload policy that will be used to construct the listener
+	 * @return The overload policy to use for the listener
+	 */
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	/**
+	 * Sets the overload policy that will be used to construct the listener
+	 * @param overloadPolicy The overload policy to use for the listener
+	 */
+	public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+		this.overloadPolicy = overloadPolicy;
+	}
+
+	/**
+	 * Returns the Retry-After value that will be used to construct the listener
+	 * @return The number of seconds rejected clients should wait
+	 */
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * Sets the Retry-After value that will be used to construct the listener
+	 * @param retryAfter The number of seconds rejected clients should wait
+	 */
+	public void setRetryAfter(int retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+	
+	/**
+	 * Returns the request head time-out that will be used to construct the listener
+	 * @return The time-out in milliseconds
+	 */
+	public int getRequestHeadTimeout() {
+		return requestHeadTimeout;
+	}
+
+	/**
+	 * Sets the request head time-out that will be used to construct the listener
+	 * @param requestHeadTimeout The time-out in milliseconds
+	 */
+	public void setRequestHeadTimeout(int requestHeadTimeout) {
+		this.requestHeadTimeout = requestHeadTimeout;
+	}
+	
+	/**
+	 * Returns the minimum request data rate that will be used to construct the listener
+	 * @return The minimum rate in bytes per second
+	 */
+	public int getMinRequestDataRate() {
+		return minRequestDataRate;
+	}
+
+	/**
+	 * Sets the minimum request data rate that will be used to construct the listener
+	 * @param minRequestDataRate The minimum rate in bytes per second
+	 */
+	public void setMinRequestDataRate(int minRequestDataRate) {
+		this.minRequestDataRate = minRequestDataRate;
+	}
+	
+	/**
+	 * Returns the maximum request line length that will be used to construct the listener
+	 * @return The maximum length in bytes
+	 */
+	public int getMaxRequestLineLength() {
+		return maxRequestLineLength;
+	}
+
+	/**
+	 * Sets the maximum request line length that will be used to construct the listener
+	 * @param maxRequestLineLength The maximum length in bytes
+	 */
+	public void setMaxRequestLineLength(int maxRequestLineLength) {
+		this.maxRequestLineLength = maxRequestLineLength;
+	}
+	
+	/**
+	 * Returns the maximum number of request headers that will be used to construct the listener
+	 * @return The maximum number of headers
+	 */
+	public int getMaxHeaderCount() {
+		return maxHeaderCount;
+	}
+
+	/**
+	 * Sets the maximum number of request headers that will be used to construct the listener
+	 * @param maxHeaderCount The maximum number of headers
+	 */
+	public void setMaxHeaderCount(int maxHeaderCount) {
+		this.maxHeaderCount = maxHeaderCount;
+	}
+	
+	/**
+	 * Returns the maximum request header length that will be used to construct the listener
+	 * @return The maximum length in bytes
+	 */
+	public int getMaxHeaderSize() {
+		return maxHeaderSize;
+	}
+
+	/**
+	 * Sets the maximum request header length that will be used to construct the listener
+	 * @param maxHeaderSize The maximum length in bytes
+	 */
+	public void setMaxHeaderSize(int maxHeaderSize) {
+		this.maxHeaderSize = maxHeaderSize;
+	}
+	
+	/**
+	 * Returns the maximum request head size that will be used to construct the listener
+	 * @return The maximum size in bytes
+	 */
+	public int getMaxRequestHeadSize() {
+		return maxRequestHeadSize;
+	}
+
+	/**
+	 * Sets the maximum request head size that will be used to construct the listener
+	 * @param maxRequestHeadSize The maximum size in bytes
+	 */
+	public void setMaxRequestHeadSize(int maxRequestHeadSize) {
+		this.maxRequestHeadSize = maxRequestHeadSize;
+	}
+	
+	/**
+	 * Returns the maximum request body size that will be used to construct the listener
+	 * @return The maximum size in bytes
+	 */
+	public long getMaxRequestBodySize() {
+		return maxRequestBodySize;
+	}
+
+	/**
+	 * Sets the maximum request body size that will be used to construct the listener
+	 * @param maxRequestBodySize The maximum size in bytes
+	 */
+	public void setMaxRequestBodySize(long maxRequestBodySize) {
+		this.maxRequestBodySize = maxRequestBodySize;
+	}
+	
+	/**
+	 * Returns the maximum number of form parts that will be used to construct the listener
+	 * @return The maximum number of parts
+	 */
+	public int getMaxFormParts() {
+		return maxFormParts;
+	}
+
+	/**
+	 * Sets the maximum number of form parts that will be used to construct the listener
+	 * @param maxFormParts The maximum number of parts
+	 */
+	public void setMaxFormParts(int maxFormParts) {
+		this.maxFormParts = maxFormParts;
+	}
+	
+	/**
+	 * Returns the maximum form field size that will be used to construct the listener
+	 * @return The maximum size in bytes
+	 */
+	public int getMaxFormFieldSize() {
+		return maxFormFieldSize;
+	}
+
+	/**
+	 * Sets the maximum form field size that will be used to construct the listener
+	 * @param maxFormFieldSize The maximum size in bytes
+	 */
+	public void setMaxFormFieldSize(int maxFormFieldSize) {
+		this.maxFormFieldSize = maxFormFieldSize;
+	}
+	
+	/**
+	 * Returns the maximum uploaded file size that will be used to construct the listener
+	 * @return The maximum size in bytes
+	 */
+	public long getMaxFormPartSize() {
+		return maxFormPartSize;
+	}
+
+	/**
+	 * Sets the maximum uploaded file size that will be used to construct the listener
+	 * @param maxFormPartSize The maximum size in bytes
+	 */
+	public void setMaxFormPartSize(long maxFormPartSize) {
+		this.maxFormPartSize = maxFormPartSize;
+	}
+	
+	/**
+	 * Returns the uploaded file size threshold that will be used to construct the listener
+	 * @return The threshold in bytes
+	 */
+	public int getFormFileSizeThreshold() {
+		return formFileSizeThreshold;
+	}
+
+	/**
+	 * Sets the uploaded file size threshold that will be used to construct the listener
+	 * @param formFileSizeThreshold The threshold in bytes
+	 */
+	public void setFormFileSizeThreshold(int formFileSizeThreshold) {
+		this.formFileSizeThreshold = formFileSizeThreshold;
+	}
+	
+	/**
+	 * Returns the directory for uploaded files that will be used to construct the listener
+	 * @return The directory or null to use the system's default
+	 */
+	public String getFormTempDirectory() {
+		return formTempDirectory;
+	}
+
+	/**
+	 * Sets the directory for uploaded files that will be used to construct the listener
+	 * @param formTempDirectory The directory or null to use the system's default
+	 */
+	public void setFormTempDirectory(String formTempDirectory) {
+		this.formTempDirectory = formTempDirectory;
+	}
+	
+	/**
+	 * Returns if HTTP/2 will be enabled for the listener
+	 * @return <code>true</code> if clients can use HTTP/2
+	 */
+	public boolean isHttp2Enabled() {
+		return http2Enabled;
+	}
+
+	/**
+	 * Sets if HTTP/2 will be enabled for the listener
+	 * @param http2Enabled <code>true</code> if clients can use HTTP/2
+	 */
+	public void setHttp2Enabled(boolean http2Enabled) {
+		this.http2Enabled = http2Enabled;
+	}
+	
+	/**
+	 * Returns the maximum number of concurrent HTTP/2 streams that will be used to construct the listener
+	 * @return The maximum number of streams per connection
+	 */
+	public int getHttp2MaxConcurrentStreams() {
+		return http2MaxConcurrentStreams;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent HTTP/2 streams that will be used to construct the listener
+	 * @param http2MaxConcurrentStreams The maximum number of streams per connection
+	 */
+	public void setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+		this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+	}
+	
+	/**
+	 * Returns the initial HTTP/2 window size that will be used to construct the listener
+	 * @return The window size in bytes
+	 */
+	public int getHttp2InitialWindowSize() {
+		return http2InitialWindowSize;
+	}
+
+	/**
+	 * Sets the initial HTTP/2 window size that will be used to construct the listener
+	 * @param http2InitialWindowSize The window size in bytes
+	 */
+	public void setHttp2InitialWindowSize(int http2InitialWindowSize) {
+		this.http2InitialWindowSize = http2InitialWindowSize;
+	}
+	
+	/**
+	 * Returns the maximum number of threads running HTTP/2 streams that will be used to construct the listener
+	 * @return The maximum number of threads
+	 */
+	public int getHttp2MaxThreads() {
+		return http2MaxThreads;
+	}
+
+	/**
+	 * Sets the maximum number of threads running HTTP/2 streams that will be used to construct the listener
+	 * @param http2MaxThreads The maximum number of threads
+	 */
+	public void setHttp2MaxThreads(int http2MaxThreads) {
+		this.http2MaxThreads = http2MaxThreads;
+	}
+	
+	/**
+	 * Returns the size of the queue for HTTP/2 streams that will be used to construct the listener
+	 * @return The maximum number of streams waiting for a thread
+	 */
+	public int getHttp2QueueSize() {
+		return http2QueueSize;
+	}
+
+	/**
+	 * Sets the size of the queue for HTTP/2 streams that will be used to construct the listener
+	 * @param http2QueueSize The maximum number of streams waiting for a thread
+	 */
+	public void setHttp2QueueSize(int http2QueueSize) {
+		this.http2QueueSize = http2QueueSize;
+	}
+	
+	/**
+	 * Returns the access log that will be used to construct the listener
+	 * @return The access log to use for the listener or null
+	 */
+	public AccessLog getAccessLog() {
+		return accessLog;
+	}
+
+	/**
+	 * Sets the access log that will be used to construct the listener
+	 * @param accessLog The access log to use for the listener or null
+	 */
+	public void setAccessLog(AccessLog accessLog) {
+		this.accessLog = accessLog;
+	}
+	
+	/**
+	 * Creates the listener that <code>buildListener()</code> will configure.
+	 * Subclasses can override this to create a different kind of listener
+	 * @return A new, unconfigured, listener
+	 * @throws org.codejive.websrv.config.ConfigurationException If the object
+	 * could not be created
+	 */
+	protected HttpListener createListener() throws ConfigurationException {
+		return new HttpListener();
+	}
+	
 	/**
 	 * Constructs an HttpListener using the information previously stored
 	 * in the object's attributes
@@ -193,14 +907,94 @@ public class HttpListenerConfig {
 		}
 		if (defaultServlet == null) {
             throw new ConfigurationException("A default servlet must be specified");
+		}
+		if (acceptBacklog < 0) {
+            throw new ConfigurationException("The accept backlog must not be negative");
+		}
+		if (acceptBatchSize == 0) {
+            throw new ConfigurationException("The accept batch size must not be 0");
+		}
+		if (acceptorCount <= 0) {
+            throw new ConfigurationException("The number of acceptors must be larger than 0");
+		}
+		if (maxThreads <= 0) {
+            throw new ConfigurationException("The maximum number of threads must be larger than 0");
+		}
+		if (queueSize < 0) {
+            throw new ConfigurationException("The queue size must not be negative");
+		}
+		if (overloadPolicy == null) {
+            throw new ConfigurationException("An overload policy must be specified");
+		}
+		if (retryAfter < 0) {
+            throw new ConfigurationException("The Retry-After value must not be negative");
+		}
+		if (requestHeadTimeout < 0 || minRequestDataRate < 0 || maxRequestLineLength < 0
+				|| maxHeaderCount < 0 || maxHeaderSize < 0 || maxRequestHeadSize < 0
+				|| maxRequestBodySize < 0) {
+            throw new ConfigurationException("The request limits must not be negative");
+		}
+		if (maxFormParts < 0 || maxFormFieldSize < 0 || maxFormPartSize < 0 || formFileSizeThreshold < 0) {
+            throw new ConfigurationException("The form limits must not be negative");
+		}
+		if (http2MaxConcurrentStreams <= 0 || http2InitialWindowSize <= 0) {
+            throw new ConfigurationException("The HTTP/2 settings must be larger than 0");
+		}
+		if (http2MaxThreads <= 0) {
+            throw new ConfigurationException("The maximum number of HTTP/2 threads must be larger than 0");
+		}
+		if (http2QueueSize < 0) {
+            throw new ConfigurationException("The HTTP/2 queue size must not be negative");
 		}
 		try {
-			HttpListener listener = new HttpListener();
+			HttpRequestLimits limits = new HttpRequestLimits();
+			limits.setRequestHeadTimeout(requestHeadTimeout);
+			limits.setMinDataRate(minRequestDataRate);
+			limits.setMaxRequestLineLength(maxRequestLineLength);
+			limits.setMaxHeaderCount(maxHeaderCount);
+			limits.setMaxHeaderSize(maxHeaderSize);
+			limits.setMaxRequestHeadSize(maxRequestHeadSize);
+			limits.setMaxRequestBodySize(maxRequestBodySize);
+			
+			FormLimits formLimits = new FormLimits();
+			formLimits.setMaxParts(maxFormParts);
+			formLimits.setMaxFieldSize(maxFormFieldSize);
+			formLimits.setMaxPartSize(maxFormPartSize);
+			formLimits.setFileSizeThreshold(formFileSizeThreshold);
+			if (formTempDirectory != null) {
+				formLimits.setTempDirectory(new File(formTempDirectory));
+			}
+			
+			Http2Settings http2Settings = new Http2Settings();
+			http2Settings.setMaxConcurrentStreams(http2MaxConcurrentStreams);
+			http2Settings.setInitialWindowSize(http2InitialWindowSize);
+			
+			HttpListener listener = createListener();
 			listener.setAddress(getInetAddress());
 			listener.setPort(port);
+			listener.setAcceptBacklog(acceptBacklog);
+			listener.setAcceptBatchSize(acceptBatchSize);
+			listener.setAcceptorCount(acceptorCount);
+			listener.setReusePort(reusePort);
 			listener.setDefaultServlet(defaultServlet);
+			listener.getFilters().addAll(filters);
 			listener.setKeepAliveTimeout(keepAliveTimeout);
 			listener.setKeepAliveMaxRequests(keepAliveMaxRequests);
+			listener.setTcpNoDelay(tcpNoDelay);
+			listener.setParkIdleConnections(parkIdleConnections);
+			listener.setAdaptiveKeepAlive(adaptiveKeepAlive);
+			listener.setMaxThreads(maxThreads);
+			listener.setQueueSize(queueSize);
+			listener.setMaxConnections(maxConnections);
+			listener.setOverloadPolicy(overloadPolicy);
+			listener.setRetryAfter(retryAfter);
+			listener.setRequestLimits(limits);
+			listener.setFormLimits(formLimits);
+			listener.setAccessLog(accessLog);
+			listener.setHttp2Enabled(http2Enabled);
+			listener.setHttp2Settings(http2Settings);
+			listener.setHttp2MaxThreads(http2MaxThreads);
+			listener.setHttp2QueueSize(http2QueueSize);
 			return listener;
 		} catch (UnknownHostException ex) {
             throw new ConfigurationException(ex);
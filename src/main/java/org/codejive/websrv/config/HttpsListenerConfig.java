@@ -0,0 +1,311 @@
+/*
+ * HttpsListenerConfig.java
+ *
+ * Created on Oct 19, 2026, 2:21:14 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.config;
+
+import java.io.File;
+import org.codejive.websrv.listener.HttpListener;
+import org.codejive.websrv.listener.HttpsListener;
+import org.codejive.websrv.tls.SSLContextManager;
+
+/**
+ * Builder class for HttpsListener objects
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class HttpsListenerConfig extends HttpListenerConfig {
+
+	/**
+	 * The path of the file containing the server's key and certificate(s)
+	 */
+	private String keyStore;
+	
+	/**
+	 * The type of the key store (default = the JVM's default type)
+	 */
+	private String keyStoreType;
+	
+	/**
+	 * The password for the key store
+	 */
+	private String keyStorePassword;
+	
+	/**
+	 * The password for the key, if not set the key store password is used
+	 */
+	private String keyPassword;
+	
+	/**
+	 * The protocol versions to enable, if not set the JVM's defaults are used
+	 */
+	private String[] enabledProtocols;
+	
+	/**
+	 * The cipher suites to enable, if not set the JVM's defaults are used
+	 */
+	private String[] enabledCipherSuites;
+	
+	/**
+	 * The maximum number of sessions kept in the server's session cache,
+	 * 0 meaning unlimited (default = 20000)
+	 */
+	private int sessionCacheSize;
+	
+	/**
+	 * The time in seconds that a session can be resumed after it was
+	 * created, 0 meaning forever (default = 3600)
+	 */
+	private int sessionTimeout;
+	
+	/**
+	 * Let clients resume their sessions using session tickets (default = true)
+	 */
+	private boolean sessionTickets;
+	
+	/**
+	 * The time in milliseconds between checks for changes of the key
+	 * store file, 0 meaning never (default = 5000)
+	 */
+	private long keyStoreReloadInterval;
+
+	/**
+	 * Constructs a new instance using "localhost" as the address
+	 * and "0" as the port
+	 */
+	public HttpsListenerConfig() {
+		this("localhost", 0);
+	}
+
+	/**
+	 * Constructs a new instance using "localhost" as the address
+	 * and the given port
+	 * @param port The port to use for this instance
+     */
+	public HttpsListenerConfig(int port) {
+		this("localhost", port);
+	}
+
+	/**
+	 * Constructs a new instance using the given address and port
+	 * @param address The address to use for this instance
+	 * @param port The port to use for this instance
+     */
+	public HttpsListenerConfig(String address, int port) {
+		super(address, port);
+		sessionCacheSize = 20000;
+		sessionTimeout = 3600;
+		sessionTickets = true;
+		keyStoreReloadInterval = 5000;
+	}
+
+	/**
+	 * Returns the path of the key store that will be used to construct the listener
+	 * @return The path of the key store file
+	 */
+	public String getKeyStore() {
+		return keyStore;
+	}
+
+	/**
+	 * Sets the path of the key store that will be used to construct the listener
+	 * @param keyStore The path of the key store file
+	 */
+	public void setKeyStore(String keyStore) {
+		this.keyStore = keyStore;
+	}
+
+	/**
+	 * Returns the key store type that will be used to construct the listener
+	 * @return The key store type or null for the JVM's default type
+	 */
+	public String getKeyStoreType() {
+		return keyStoreType;
+	}
+
+	/**
+	 * Sets the key store type that will be used to construct the listener
+	 * @param keyStoreType The key store type (eg "JKS" or "PKCS12") or
+	 * null for the JVM's default type
+	 */
+	public void setKeyStoreType(String keyStoreType) {
+		this.keyStoreType = keyStoreType;
+	}
+
+	/**
+	 * Sets the key store password that will be used to construct the listener
+	 * @param keyStorePassword The password for the key store
+	 */
+	public void setKeyStorePassword(String keyStorePassword) {
+		this.keyStorePassword = keyStorePassword;
+	}
+
+	/**
+	 * Sets the key password that will be used to construct the listener
+	 * @param keyPassword The password for the key or null to use the
+	 * key store password
+	 */
+	public void setKeyPassword(String keyPassword) {
+		this.keyPassword = keyPassword;
+	}
+
+	/**
+	 * Returns the protocol versions that will be used to construct the listener
+	 * @return The protocol versions or null for the JVM's defaults
+	 */
+	public String[] getEnabledProtocols() {
+		return enabledProtocols;
+	}
+
+	/**
+	 * Sets the protocol versions that will be used to construct the listener
+	 * @param enabledProtocols The protocol versions (eg "TLSv1.2", "TLSv1.3")
+	 * or null for the JVM's defaults
+	 */
+	public void setEnabledProtocols(String... enabledProtocols) {
+		this.enabledProtocols = enabledProtocols;
+	}
+
+	/**
+	 * Returns the cipher suites that will be used to construct the listener
+	 * @return The cipher suites or null for the JVM's defaults
+	 */
+	public String[] getEnabledCipherSuites() {
+		return enabledCipherSuites;
+	}
+
+	/**
+	 * Sets the cipher suites that will be used to construct the listener
+	 * @param enabledCipherSuites The cipher suites or null for the JVM's defaults
+	 */
+	public void setEnabledCipherSuites(String... enabledCipherSuites) {
+		this.enabledCipherSuites = enabledCipherSuites;
+	}
+
+	/**
+	 * Returns the session cache size that will be used to construct the listener
+	 * @return The maximum number of cached sessions, 0 meaning unlimited
+	 */
+	public int getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	/**
+	 * Sets the session cache size that will be used to construct the listener
+	 * @param sessionCacheSize The maximum number of cached sessions, 0 meaning unlimited
+	 */
+	public void setSessionCacheSize(int sessionCacheSize) {
+		this.sessionCacheSize = sessionCacheSize;
+	}
+
+	/**
+	 * Returns the session time-out that will be used to construct the listener
+	 * @return The time in seconds a session can be resumed, 0 meaning forever
+	 */
+	public int getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	/**
+	 * Sets the session time-out that will be used to construct the listener
+	 * @param sessionTimeout The time in seconds a session can be resumed, 0 meaning forever
+	 */
+	public void setSessionTimeout(int sessionTimeout) {
+		this.sessionTimeout = sessionTimeout;
+	}
+
+	/**
+	 * Returns if session tickets will be enabled for the listener
+	 * @return <code>true</code> if session tickets should be enabled
+	 * @see org.codejive.websrv.tls.SSLContextManager#setSessionTickets(boolean)
+	 */
+	public boolean isSessionTickets() {
+		return sessionTickets;
+	}
+
+	/**
+	 * Sets if session tickets will be enabled for the listener
+	 * @param sessionTickets <code>true</code> if session tickets should be enabled
+	 * @see org.codejive.websrv.tls.SSLContextManager#setSessionTickets(boolean)
+	 */
+	public void setSessionTickets(boolean sessionTickets) {
+		this.sessionTickets = sessionTickets;
+	}
+
+	/**
+	 * Returns the interval between checks for changes of the key store
+	 * that will be used to construct the listener
+	 * @return The time in milliseconds, 0 meaning never
+	 */
+	public long getKeyStoreReloadInterval() {
+		return keyStoreReloadInterval;
+	}
+
+	/**
+	 * Sets the interval between checks for changes of the key store
+	 * that will be used to construct the listener
+	 * @param keyStoreReloadInterval The time in milliseconds, 0 meaning never
+	 */
+	public void setKeyStoreReloadInterval(long keyStoreReloadInterval) {
+		this.keyStoreReloadInterval = keyStoreReloadInterval;
+	}
+
+	/**
+	 * Creates an HttpsListener and loads its key store, so any problems
+	 * with the key store are reported while building the listener
+	 * @return A new HttpsListener
+	 * @throws org.codejive.websrv.config.ConfigurationException If the key
+	 * store could not be used
+	 */
+	@Override
+	protected HttpListener createListener() throws ConfigurationException {
+		if (keyStore == null || keyStore.length() == 0) {
+            throw new ConfigurationException("A key store must be specified");
+		}
+		if (sessionCacheSize < 0) {
+            throw new ConfigurationException("The session cache size must not be negative");
+		}
+		if (sessionTimeout < 0) {
+            throw new ConfigurationException("The session time-out must not be negative");
+		}
+		if (keyStoreReloadInterval < 0) {
+            throw new ConfigurationException("The key store reload interval must not be negative");
+		}
+		SSLContextManager manager = new SSLContextManager(new File(keyStore), keyStorePassword);
+		if (keyStoreType != null) {
+			manager.setKeyStoreType(keyStoreType);
+		}
+		manager.setKeyPassword(keyPassword);
+		manager.setEnabledProtocols(enabledProtocols);
+		manager.setEnabledCipherSuites(enabledCipherSuites);
+		manager.setSessionCacheSize(sessionCacheSize);
+		manager.setSessionTimeout(sessionTimeout);
+		manager.setSessionTickets(sessionTickets);
+		manager.setReloadInterval(keyStoreReloadInterval);
+		try {
+			manager.load();
+		} catch (Exception ex) {
+            throw new ConfigurationException("Could not load key store " + keyStore, ex);
+		}
+		HttpsListener listener = new HttpsListener();
+		listener.setSSLContextManager(manager);
+		return listener;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Filter.java
+ *
+ * Created on Oct 19, 2026, 8:42:37 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.filter;
+
+import java.io.IOException;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpResponse;
+
+/**
+ * Classes that implement this interface can inspect, change or answer
+ * client requests before they get to the servlet
+ * @see org.codejive.websrv.filter.FilterChain
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public interface Filter {
+
+	/**
+	 * Filters a client request. To let the request through the filter must
+	 * call <code>chain.proceed()</code>, possibly passing along a changed
+	 * or wrapped request or response. If it doesn't the filter is
+	 * responsible for generating the response itself
+	 * @param requestPath The path part of the originating request
+	 * @param request The originating HTTP request
+	 * @param response The HTTP response to send the result to
+	 * @param chain The chain of the remaining filters and the servlet
+	 * @throws java.io.IOException will be thrown when data cannot be sent to the client
+	 */
+	void filter(String requestPath, HttpRequest request, HttpResponse response, FilterChain chain) throws IOException;
+}
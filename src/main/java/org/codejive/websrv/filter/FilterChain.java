@@ -0,0 +1,83 @@
+/*
+ * FilterChain.java
+ *
+ * Created on Oct 19, 2026, 8:45:02 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.filter;
+
+import java.io.IOException;
+import java.util.List;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.servlet.Servlet;
+
+/**
+ * Passes a request through a list of filters and finally to a servlet.
+ * A new chain is used for each request, it keeps track of how far the
+ * request got
+ * @see org.codejive.websrv.filter.Filter
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public final class FilterChain {
+
+	/**
+	 * The filters the request must pass
+	 */
+	private final List<Filter> filters;
+
+	/**
+	 * The servlet that handles the request after the filters
+	 */
+	private final Servlet servlet;
+
+	/**
+	 * The index of the next filter to call
+	 */
+	private int index;
+
+	/**
+	 * Creates a new chain
+	 * @param filters The filters the request must pass, the list must not
+	 * be changed while the request is being handled
+	 * @param servlet The servlet that handles the request after the filters
+	 */
+	public FilterChain(List<Filter> filters, Servlet servlet) {
+		this.filters = filters;
+		this.servlet = servlet;
+	}
+
+	/**
+	 * Passes the request on to the next filter or, if there are no more
+	 * filters, to the servlet
+	 * @param requestPath The path part of the originating request
+	 * @param request The originating HTTP request
+	 * @param response The HTTP response to send the result to
+	 * @throws java.io.IOException will be thrown when data cannot be sent to the client
+	 */
+	public void proceed(String requestPath, HttpRequest request, HttpResponse response) throws IOException {
+		if (index < filters.size()) {
+			Filter filter = filters.get(index++);
+			filter.filter(requestPath, request, response, this);
+		} else {
+			servlet.process(requestPath, request, response);
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * RateLimitFilter.java
+ *
+ * Created on Oct 19, 2026, 9:03:18 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.filter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.HttpResponseImpl;
+
+/**
+ * This filter limits the number of requests each client can make. Clients
+ * are recognized by their IP address or by the value of a request header,
+ * like an API key. Clients that go over their limit get a "429 Too Many
+ * Requests" response telling them how long to wait before trying again
+ * @see org.codejive.websrv.filter.RateLimiter
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class RateLimitFilter implements Filter {
+
+	/**
+	 * The token buckets of the clients
+	 */
+	private final RateLimiter limiter;
+
+	/**
+	 * The request header used to recognize clients or null to use
+	 * their IP address
+	 */
+	private String keyHeader;
+
+	/**
+	 * The number of requests that were turned down
+	 */
+	private final AtomicLong rejectedCount;
+
+	/**
+	 * The default number of clients to keep a bucket for
+	 */
+	public static final int DEFAULT_MAX_CLIENTS = 65536;
+
+	/**
+	 * The body of the response sent to clients that went over their limit
+	 */
+	private static final byte[] REJECT_BODY;
+
+	static {
+		try {
+			REJECT_BODY = HttpResponseImpl.createErrorBody(HttpResponseCode.CODE_TOO_MANY_REQUESTS).getBytes("US-ASCII");
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Creates a new filter that keeps a bucket for up to
+	 * <code>DEFAULT_MAX_CLIENTS</code> clients
+	 * @param rate The number of requests per second each client can make
+	 * @param burst The number of requests a client can make at once
+	 */
+	public RateLimitFilter(double rate, int burst) {
+		this(rate, burst, DEFAULT_MAX_CLIENTS);
+	}
+
+	/**
+	 * Creates a new filter
+	 * @param rate The number of requests per second each client can make
+	 * @param burst The number of requests a client can make at once
+	 * @param maxClients The number of clients to keep a bucket for. This
+	 * determines the amount of memory used, between 32 and 64 bytes per
+	 * client, which is allocated right away. When there are more clients
+	 * than this the buckets of those that were idle the longest get reused
+	 */
+	public RateLimitFilter(double rate, int burst, int maxClients) {
+		limiter = new RateLimiter(rate, burst, maxClients);
+		rejectedCount = new AtomicLong();
+	}
+
+	/**
+	 * Returns the request header used to recognize clients
+	 * @return The name of the header or null if the IP address is used
+	 */
+	public String getKeyHeader() {
+		return keyHeader;
+	}
+
+	/**
+	 * Sets the request header used to recognize clients. Requests that
+	 * don't have the header are recognized by their IP address
+	 * @param keyHeader The name of the header or null to use the
+	 * IP address
+	 */
+	public void setKeyHeader(String keyHeader) {
+		this.keyHeader = keyHeader;
+	}
+
+	/**
+	 * Returns the token buckets of the clients
+	 * @return The rate limiter
+	 */
+	public RateLimiter getLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * Returns the number of requests that were turned down
+	 * @return The number of requests
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public void filter(String requestPath, HttpRequest request, HttpResponse response, FilterChain chain) throws IOException {
+		long wait = limiter.acquire(clientKey(request), System.nanoTime());
+		if (wait == 0) {
+			chain.proceed(requestPath, request, response);
+		} else {
+			rejectedCount.incrementAndGet();
+			reject(response, wait);
+		}
+	}
+
+	/**
+	 * Returns the hashed key that recognizes the client of a request
+	 * @param request The request
+	 * @return The hashed key
+	 */
+	private long clientKey(HttpRequest request) {
+		if (keyHeader != null) {
+			String value = request.getHeader(keyHeader);
+			if (value != null) {
+				return limiter.hash(value.trim());
+			}
+		}
+		InetAddress address = request.getRemoteAddress();
+		return (address != null) ? limiter.hash(address.getAddress()) : 0;
+	}
+
+	/**
+	 * Sends a "429 Too Many Requests" response
+	 * @param response The HTTP response to send the result to
+	 * @param wait The time in nanoseconds the client has to wait
+	 * @throws java.io.IOException If the response could not be sent
+	 */
+	private void reject(HttpResponse response, long wait) throws IOException {
+		long seconds = (wait + 999999999L) / 1000000000L;
+		response.setResponseCode(HttpResponseCode.CODE_TOO_MANY_REQUESTS);
+		response.setContentType("text/plain");
+		response.setHeader("Retry-After", String.valueOf(seconds));
+		response.setHeader("Content-Length", String.valueOf(REJECT_BODY.length));
+		OutputStream out = response.getOutputStream();
+		out.write(REJECT_BODY);
+		out.flush();
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * RateLimiter.java
+ *
+ * Created on Oct 19, 2026, 8:52:44 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.filter;
+
+import java.util.Random;
+
+/**
+ * Keeps a token bucket for each client. Every client can make a burst of
+ * requests right away, after that it gets new tokens at a fixed rate.
+ * <p>
+ * A bucket is stored as a single time: the moment it will be completely
+ * full again. Together with the hash of the client's key that takes up 16
+ * bytes, all buckets live in two arrays that are allocated up front so
+ * the memory used never changes no matter how many clients there are.
+ * The arrays are divided in sets of a few slots, each key can only use the
+ * slots of one set. Buckets that are full again don't hold any
+ * information so their slots are free to be reused; when all the slots of
+ * a set are in use the bucket that will be full the soonest is dropped.
+ * Each set is protected by one of a fixed number of locks so clients only
+ * ever wait for other clients that happen to share the same lock
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class RateLimiter {
+
+	/**
+	 * The time in nanoseconds it takes to get a new token
+	 */
+	private final long interval;
+
+	/**
+	 * The time in nanoseconds it takes to fill an empty bucket
+	 */
+	private final long tolerance;
+
+	/**
+	 * The hashed keys of the clients, 0 means the slot was never used
+	 */
+	private final long[] keys;
+
+	/**
+	 * The times at which the buckets will be full again
+	 */
+	private final long[] times;
+
+	/**
+	 * The mask used to turn a hashed key into a set number
+	 */
+	private final int setMask;
+
+	/**
+	 * The locks protecting the sets
+	 */
+	private final Object[] locks;
+
+	/**
+	 * The mask used to turn a set number into a lock number
+	 */
+	private final int lockMask;
+
+	/**
+	 * The random value the keys are hashed with, so clients can't pick
+	 * keys that end up in the same set on purpose. An ordinary Random is
+	 * good enough for that and, unlike SecureRandom, doesn't hold up
+	 * server startup
+	 */
+	private final long seed;
+
+	/**
+	 * The number of slots in each set
+	 */
+	private static final int WAYS = 8;
+
+	/**
+	 * The maximum number of locks
+	 */
+	private static final int MAX_LOCKS = 1024;
+
+	/**
+	 * The maximum number of slots
+	 */
+	private static final int MAX_CAPACITY = 1 << 28;
+
+	/**
+	 * Creates a new rate limiter
+	 * @param rate The number of requests per second each client can make
+	 * @param burst The number of requests a client can make at once
+	 * @param maxClients The number of clients to keep a bucket for. Twice
+	 * as many slots are allocated, rounded up to the next power of two,
+	 * so that few clients lose their bucket because their set is full
+	 */
+	public RateLimiter(double rate, int burst, int maxClients) {
+		if (!(rate > 0)) {
+			throw new IllegalArgumentException("rate must be larger than 0");
+		}
+		if (burst <= 0) {
+			throw new IllegalArgumentException("burst must be larger than 0");
+		}
+		if (maxClients <= 0) {
+			throw new IllegalArgumentException("maxClients must be larger than 0");
+		}
+		interval = Math.max(1, (long) Math.ceil(1000000000.0 / rate));
+		tolerance = interval * burst;
+		int capacity = WAYS;
+		while (capacity / 2 < maxClients && capacity < MAX_CAPACITY) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		times = new long[capacity];
+		int sets = capacity / WAYS;
+		setMask = sets - 1;
+		locks = new Object[Math.min(sets, MAX_LOCKS)];
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+		lockMask = locks.length - 1;
+		seed = new Random().nextLong();
+	}
+
+	/**
+	 * Returns the number of slots buckets can be kept in
+	 * @return The number of slots
+	 */
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Takes a token from the bucket of the client with the given key
+	 * @param key The hashed key of the client
+	 * @param now The current time as returned by <code>System.nanoTime()</code>
+	 * @return 0 if the client can go ahead or the time in nanoseconds
+	 * it has to wait for its next token
+	 * @see #hash(java.lang.String)
+	 * @see #hash(byte[])
+	 */
+	public long acquire(long key, long now) {
+		if (key == 0) {
+			key = 1;
+		}
+		int set = (int) key & setMask;
+		int first = set * WAYS;
+		synchronized (locks[set & lockMask]) {
+			int slot = -1;
+			int victim = first;
+			long victimLeft = Long.MAX_VALUE;
+			for (int i = first; i < first + WAYS; i++) {
+				if (keys[i] == key) {
+					slot = i;
+					break;
+				}
+				long left = (keys[i] == 0) ? Long.MIN_VALUE : times[i] - now;
+				if (left < victimLeft) {
+					victim = i;
+					victimLeft = left;
+				}
+			}
+			long full;
+			if (slot < 0) {
+				// Our bucket was either never used, already full again
+				// or dropped, either way it's full now
+				slot = victim;
+				keys[slot] = key;
+				full = now;
+			} else {
+				full = times[slot];
+				if (full - now < 0) {
+					full = now;
+				}
+			}
+			long next = full + interval;
+			if (next - now > tolerance) {
+				return next - now - tolerance;
+			}
+			times[slot] = next;
+			return 0;
+		}
+	}
+
+	/**
+	 * Turns a textual key into a hashed key
+	 * @param key The key
+	 * @return The hashed key
+	 */
+	public long hash(String key) {
+		long h = seed;
+		for (int i = 0; i < key.length(); i++) {
+			h = (h ^ key.charAt(i)) * 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Turns a binary key, like an IP address, into a hashed key
+	 * @param key The key
+	 * @return The hashed key
+	 */
+	public long hash(byte[] key) {
+		long h = seed;
+		for (int i = 0; i < key.length; i++) {
+			h = (h ^ (key[i] & 0xff)) * 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Spreads the bits of a hash so the lower ones, that select the set,
+	 * depend on all of them
+	 * @param h The hash
+	 * @return The mixed hash
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * package-info.java
+ *
+ * Created on Oct 19, 2026, 8:41:10 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * Contains the filters that can be put in front of the servlets. Filters
+ * see every request before the servlet does and can let it through,
+ * change it or answer it themselves. They are chained together by a
+ * FilterChain, either for all requests of a listener or, using a
+ * FilterServlet, only for some of them. The RateLimitFilter uses this to
+ * limit the number of requests each client can make
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+package org.codejive.websrv.filter;
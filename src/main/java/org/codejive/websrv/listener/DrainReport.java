@@ -0,0 +1,86 @@
+/*
+ * DrainReport.java
+ *
+ * Created on Oct 19, 2026, 11:48:20 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.listener;
+
+/**
+ * Tells how the connections of one or more listeners ended when they were
+ * shut down gracefully: either they finished what they were doing before
+ * the deadline or they were closed by force
+ * @see org.codejive.websrv.listener.Listener#shutdown(long)
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public final class DrainReport {
+
+	/**
+	 * The number of connections that ended by themselves
+	 */
+	private final int drainedCount;
+
+	/**
+	 * The number of connections that had to be closed by force
+	 */
+	private final int killedCount;
+
+	/**
+	 * Creates a new report
+	 * @param drainedCount The number of connections that ended by themselves
+	 * @param killedCount The number of connections that had to be closed by force
+	 */
+	public DrainReport(int drainedCount, int killedCount) {
+		this.drainedCount = drainedCount;
+		this.killedCount = killedCount;
+	}
+
+	/**
+	 * Returns the number of connections that ended by themselves
+	 * before the deadline
+	 * @return The number of connections
+	 */
+	public int getDrainedCount() {
+		return drainedCount;
+	}
+
+	/**
+	 * Returns the number of connections that were still busy at the
+	 * deadline and had to be closed by force
+	 * @return The number of connections
+	 */
+	public int getKilledCount() {
+		return killedCount;
+	}
+
+	/**
+	 * Returns a report holding the totals of this report and another one
+	 * @param other The other report
+	 * @return The combined report
+	 */
+	public DrainReport add(DrainReport other) {
+		return new DrainReport(drainedCount + other.drainedCount, killedCount + other.killedCount);
+	}
+
+	@Override
+	public String toString() {
+		return drainedCount + " connection(s) drained, " + killedCount + " killed";
+	}
+}
@@ -25,12 +25,25 @@ package org.codejive.websrv.listener;
 import org.codejive.websrv.servlet.Servlet;
 import org.codejive.websrv.servlet.UnsupportedServlet;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import org.codejive.websrv.accesslog.AccessLog;
+import org.codejive.websrv.filter.Filter;
+import org.codejive.websrv.filter.FilterChain;
 import org.codejive.websrv.protocol.http.HttpProtocolHandler;
 import org.codejive.websrv.protocol.ProtocolHandler;
 import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpRequestLimits;
 import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.HttpResponseImpl;
 import org.codejive.websrv.protocol.http.ResponseHandler;
+import org.codejive.websrv.protocol.http.form.FormLimits;
+import org.codejive.websrv.protocol.http.form.FormParser;
+import org.codejive.websrv.protocol.http2.Http2Settings;
 
 /**
  * This class extends the ThreadedProtocolListener implementing
@@ -46,6 +59,11 @@ public class HttpListener extends ThreadedProtocolListener implements ResponseHa
 	 */
 	private Servlet defaultServlet;
 	
+	/**
+	 * The filters that requests must pass before they get to the servlet
+	 */
+	private final ArrayList<Filter> filters;
+	
 	/**
 	 * The time-out in milliseconds after which an idle connection
 	 * will be closed. 0 means never (default = 10 seconds)
@@ -58,6 +76,69 @@ public class HttpListener extends ThreadedProtocolListener implements ResponseHa
 	 */
 	private int keepAliveMaxRequests;
 	
+	/**
+	 * Disable Nagle's algorithm on client connections so responses are
+	 * sent as soon as they are written (default = true)
+	 */
+	private boolean tcpNoDelay;
+	
+	/**
+	 * The access log that handled requests will be recorded in (optional)
+	 */
+	private AccessLog accessLog;
+	
+	/**
+	 * The limits that incoming requests must stay within
+	 */
+	private HttpRequestLimits requestLimits;
+	
+	/**
+	 * The parser used for form submissions
+	 */
+	private FormParser formParser;
+	
+	/**
+	 * Let clients use HTTP/2 (default = true)
+	 */
+	private boolean http2Enabled;
+	
+	/**
+	 * The settings announced to HTTP/2 clients
+	 */
+	private Http2Settings http2Settings;
+	
+	/**
+	 * The maximum number of threads running HTTP/2 streams (default = 64)
+	 */
+	private int http2MaxThreads;
+	
+	/**
+	 * The maximum number of HTTP/2 streams that can wait for a thread
+	 * (default = 128)
+	 */
+	private int http2QueueSize;
+	
+	/**
+	 * The thread pool that runs the HTTP/2 streams. It's separate from
+	 * the one running the connections because each HTTP/2 connection
+	 * keeps a thread busy reading frames, with a shared pool those
+	 * threads could leave none for the streams
+	 */
+	private ExecutorService streamExecutor;
+	
+	/**
+	 * The number of seconds clients are told to wait before trying
+	 * again when their connection is rejected because the listener
+	 * is overloaded (default = 5)
+	 */
+	private int retryAfter;
+	
+	/**
+	 * The complete pre-encoded response that will be sent to clients
+	 * whose connection is rejected because the listener is overloaded
+	 */
+	private byte[] overloadResponse;
+	
 	/**
 	 * The total number of requests that have been handled
 	 */
@@ -85,9 +166,18 @@ public class HttpListener extends ThreadedProtocolListener implements ResponseHa
 	 */
 	public HttpListener(InetAddress address, int port) {
 		super(address, port);
+		filters = new ArrayList<Filter>();
 		keepAliveTimeout = 10000;
 		keepAliveMaxRequests = -1;
+		tcpNoDelay = true;
 		requestCount = 0;
+		requestLimits = new HttpRequestLimits();
+		formParser = new FormParser();
+		http2Enabled = true;
+		http2Settings = new Http2Settings();
+		http2MaxThreads = 64;
+		http2QueueSize = 128;
+		setRetryAfter(5);
 	}
 
 	/**
@@ -110,6 +200,17 @@ public class HttpListener extends ThreadedProtocolListener implements ResponseHa
 		this.defaultServlet = responseHandler;
 	}
 
+	/**
+	 * Returns the list of filters that requests must pass before they get
+	 * to the servlet, in the order they are called. The list must not be
+	 * changed while the listener is running
+	 * @see org.codejive.websrv.filter.Filter
+	 * @return A list of filters
+	 */
+	public ArrayList<Filter> getFilters() {
+		return filters;
+	}
+
 	/**
 	 * Returns the time-out in milliseconds after which an idle connection
 	 * will be closed. 0 means never
@@ -146,6 +247,187 @@ public class HttpListener extends ThreadedProtocolListener implements ResponseHa
 		this.keepAliveMaxRequests = keepAliveMaxRequests;
 	}
 
+	/**
+	 * Returns if Nagle's algorithm will be disabled on client connections
+	 * @return <code>true</code> if TCP_NODELAY will be set
+	 */
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	/**
+	 * Sets if Nagle's algorithm will be disabled on client connections.
+	 * Because each response is written using as few writes as possible
+	 * there is little to be gained by letting the system delay them
+	 * @param tcpNoDelay <code>true</code> if TCP_NODELAY should be set
+	 */
+	public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+
+	/**
+	 * Returns the limits that incoming requests must stay within
+	 * @return The request limits
+	 */
+	public HttpRequestLimits getRequestLimits() {
+		return requestLimits;
+	}
+
+	/**
+	 * Sets the limits that incoming requests must stay within
+	 * @param requestLimits The request limits
+	 */
+	public void setRequestLimits(HttpRequestLimits requestLimits) {
+		if (requestLimits == null) {
+			throw new IllegalArgumentException("requestLimits must not be null");
+		}
+		this.requestLimits = requestLimits;
+	}
+
+	/**
+	 * Returns the limits and settings used for parsing form submissions
+	 * @return The form limits
+	 */
+	public FormLimits getFormLimits() {
+		return formParser.getLimits();
+	}
+
+	/**
+	 * Sets the limits and settings used for parsing form submissions
+	 * @param formLimits The form limits
+	 */
+	public void setFormLimits(FormLimits formLimits) {
+		if (formLimits == null) {
+			throw new IllegalArgumentException("formLimits must not be null");
+		}
+		formParser = new FormParser(formLimits);
+	}
+
+	/**
+	 * Returns if clients can use HTTP/2
+	 * @return <code>true</code> if HTTP/2 is enabled
+	 */
+	public boolean isHttp2Enabled() {
+		return http2Enabled;
+	}
+
+	/**
+	 * Sets if clients can use HTTP/2. Clients can upgrade a plain
+	 * connection ("h2c"), start with HTTP/2 right away if they know the
+	 * server supports it or, on secure connections, negotiate it during
+	 * the TLS handshake ("h2")
+	 * @param http2Enabled <code>true</code> to enable HTTP/2
+	 */
+	public void setHttp2Enabled(boolean http2Enabled) {
+		this.http2Enabled = http2Enabled;
+	}
+
+	/**
+	 * Returns the settings announced to HTTP/2 clients
+	 * @return The HTTP/2 settings
+	 */
+	public Http2Settings getHttp2Settings() {
+		return http2Settings;
+	}
+
+	/**
+	 * Sets the settings announced to HTTP/2 clients
+	 * @param http2Settings The HTTP/2 settings
+	 */
+	public void setHttp2Settings(Http2Settings http2Settings) {
+		if (http2Settings == null) {
+			throw new IllegalArgumentException("http2Settings must not be null");
+		}
+		this.http2Settings = http2Settings;
+	}
+
+	/**
+	 * Returns the maximum number of threads running HTTP/2 streams
+	 * @return The maximum number of threads
+	 */
+	public int getHttp2MaxThreads() {
+		return http2MaxThreads;
+	}
+
+	/**
+	 * Sets the maximum number of threads running HTTP/2 streams. They
+	 * have a thread pool of their own, the threads of the listener's
+	 * pool are only used to read the frames of the connections.
+	 * Changing this has no effect while the listener is running
+	 * @param http2MaxThreads The maximum number of threads
+	 */
+	public void setHttp2MaxThreads(int http2MaxThreads) {
+		if (http2MaxThreads <= 0) {
+			throw new IllegalArgumentException("http2MaxThreads must be larger than 0");
+		}
+		this.http2MaxThreads = http2MaxThreads;
+	}
+
+	/**
+	 * Returns the maximum number of HTTP/2 streams that can wait for a thread
+	 * @return The size of the queue
+	 */
+	public int getHttp2QueueSize() {
+		return http2QueueSize;
+	}
+
+	/**
+	 * Sets the maximum number of HTTP/2 streams that can wait for a
+	 * thread. Streams that arrive when the queue is full are refused,
+	 * telling the client it can safely send them again.
+	 * Changing this has no effect while the listener is running
+	 * @param http2QueueSize The size of the queue
+	 */
+	public void setHttp2QueueSize(int http2QueueSize) {
+		if (http2QueueSize < 0) {
+			throw new IllegalArgumentException("http2QueueSize must not be negative");
+		}
+		this.http2QueueSize = http2QueueSize;
+	}
+
+	/**
+	 * Returns the access log that handled requests will be recorded in
+	 * @return The access log or null if requests are not being logged
+	 */
+	public AccessLog getAccessLog() {
+		return accessLog;
+	}
+
+	/**
+	 * Sets the access log that handled requests will be recorded in.
+	 * The log will be started when the listener starts and closed when
+	 * the listener is shut down
+	 * @param accessLog The access log or null to disable logging
+	 */
+	public void setAccessLog(AccessLog accessLog) {
+		assert !isRunning() : "Listener must not be active!";
+		this.accessLog = accessLog;
+	}
+
+	/**
+	 * Returns the number of seconds clients are told to wait before
+	 * trying again when their connection is rejected because the
+	 * listener is overloaded
+	 * @return The number of seconds to wait
+	 */
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * Sets the number of seconds clients are told to wait before
+	 * trying again when their connection is rejected because the
+	 * listener is overloaded
+	 * @param retryAfter The number of seconds to wait
+	 */
+	public void setRetryAfter(int retryAfter) {
+		if (retryAfter < 0) {
+			throw new IllegalArgumentException("retryAfter must not be negative");
+		}
+		this.retryAfter = retryAfter;
+		overloadResponse = createOverloadResponse(retryAfter);
+	}
+
 	/**
 	 * Returns the total number of requests that have been served by
 	 * this listener so far
@@ -169,9 +451,75 @@ public class HttpListener extends ThreadedProtocolListener implements ResponseHa
 		HttpProtocolHandler handler = new HttpProtocolHandler(this);
 		handler.setKeepAliveTimeout(keepAliveTimeout);
 		handler.setKeepAliveMaxRequests(keepAliveMaxRequests);
+		handler.setTcpNoDelay(tcpNoDelay);
+		handler.setAccessLog(accessLog);
+		handler.setRequestLimits(requestLimits);
+		handler.setFormParser(formParser);
+		if (http2Enabled) {
+			handler.setHttp2(http2Settings, streamExecutor);
+		}
 		return handler;
 	}
 
+	/**
+	 * Sends a "503 Service Unavailable" response. The response is
+	 * prepared beforehand so rejecting a connection costs as little
+	 * as possible
+	 * @param socket The connection that is being rejected
+	 * @throws java.io.IOException If writing to the socket failed
+	 */
+	@Override
+	protected void onRejectedConnection(Socket socket) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		out.write(overloadResponse);
+		out.flush();
+		socket.shutdownOutput();
+	}
+
+	/**
+	 * Creates the response that will be sent to clients whose connection
+	 * is rejected because the listener is overloaded
+	 * @param retryAfter The number of seconds the client should wait
+	 * @return The bytes of the complete response
+	 */
+	private static byte[] createOverloadResponse(int retryAfter) {
+		return HttpResponseImpl.createErrorResponse(HttpResponseCode.CODE_SERVICE_UNAVAILABLE, "Retry-After: " + retryAfter);
+	}
+
+	/**
+	 * Opens the access log, if one was configured, and creates the thread
+	 * pool for HTTP/2 streams, if HTTP/2 is enabled, before starting to
+	 * listen for connections
+	 * @throws java.lang.Exception Gets throws when the socket or the
+	 * access log could not be set up properly
+	 */
+	@Override
+	public void start() throws Exception {
+		if (accessLog != null) {
+			accessLog.start();
+		}
+		if (http2Enabled && (streamExecutor == null || streamExecutor.isShutdown())) {
+			streamExecutor = createBoundedExecutor(http2MaxThreads, http2QueueSize);
+		}
+		super.start();
+	}
+
+	/**
+	 * Shuts down the listener and the thread pool for HTTP/2 streams and
+	 * closes the access log, if one was configured, after writing all
+	 * its pending records
+	 */
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		if (streamExecutor != null) {
+			streamExecutor.shutdownNow();
+		}
+		if (accessLog != null) {
+			accessLog.close();
+		}
+	}
+
 	public void handleResponse(HttpRequest request, HttpResponse response) throws IOException {
 		incRequestCount();
 		
@@ -184,6 +532,10 @@ public class HttpListener extends ThreadedProtocolListener implements ResponseHa
 			servlet = new UnsupportedServlet();
 		}
 		
-		servlet.process(request.getPath(), request, response);
+		if (filters.isEmpty()) {
+			servlet.process(request.getPath(), request, response);
+		} else {
+			new FilterChain(filters, servlet).proceed(request.getPath(), request, response);
+		}
 	}
 }
@@ -0,0 +1,159 @@
+/*
+ * HttpsListener.java
+ *
+ * Created on Oct 19, 2026, 2:05:51 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.listener;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.tls.ApplicationProtocols;
+import org.codejive.websrv.tls.SSLContextManager;
+import org.codejive.websrv.tls.SSLEngineSocket;
+
+/**
+ * This class extends the HttpListener to accept HTTPS connections.
+ * Each accepted connection is wrapped in an SSL socket that uses an
+ * <code>SSLEngine</code> to do the actual work, after which it is handled
+ * exactly like a plain HTTP connection. This means HTTPS connections have
+ * the same limits and settings as plain ones and that idle connections
+ * can be parked just the same. The handshake is done by the thread
+ * handling the connection, never by the thread accepting connections
+ * @see org.codejive.websrv.tls.SSLEngineSocket
+ * @see org.codejive.websrv.tls.SSLContextManager
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class HttpsListener extends HttpListener {
+
+	/**
+	 * The manager providing the SSL context for new connections
+	 */
+	private SSLContextManager sslContextManager;
+
+	/**
+	 * The private logger for this class
+	 */
+	private static final Logger logger = Logger.getLogger(HttpsListener.class.getName());
+
+	/**
+	 * The protocols offered to clients during the handshake when HTTP/2
+	 * is enabled, in order of preference
+	 */
+	private static final String[] HTTP2_PROTOCOLS = { "h2", "http/1.1" };
+
+	/**
+	 * Creates a listener on the default address using port 443
+	 */
+	public HttpsListener() {
+		this(null, 443);
+	}
+
+	/**
+	 * Creates a listener on the default address using the specified port
+	 * @param port The port to listen on
+	 */
+	public HttpsListener(int port) {
+		this(null, port);
+	}
+
+	/**
+	 * Creates a listener on the specified address and port
+	 * @param address The local address to bind to
+	 * @param port The port to listen on
+	 */
+	public HttpsListener(InetAddress address, int port) {
+		super(address, port);
+	}
+
+	/**
+	 * Returns the manager providing the SSL context for new connections
+	 * @return The SSL context manager
+	 */
+	public SSLContextManager getSSLContextManager() {
+		return sslContextManager;
+	}
+
+	/**
+	 * Sets the manager providing the SSL context for new connections.
+	 * This can only be changed when the listener is not currently active
+	 * (<code>isRunning()</code> returns <code>false</code>)
+	 * @param sslContextManager The SSL context manager
+	 */
+	public void setSSLContextManager(SSLContextManager sslContextManager) {
+		assert !isRunning() : "Listener must not be active!";
+		this.sslContextManager = sslContextManager;
+	}
+
+	/**
+	 * Loads the SSL context, if that wasn't done already, before starting
+	 * to listen for connections
+	 * @throws java.lang.Exception Gets throws when the socket or the
+	 * SSL context could not be set up properly
+	 */
+	@Override
+	public void start() throws Exception {
+		if (sslContextManager == null) {
+			throw new IllegalStateException("No SSL context manager was set");
+		}
+		if (!sslContextManager.isLoaded()) {
+			sslContextManager.load();
+		}
+		super.start();
+	}
+
+	/**
+	 * Wraps the new connection in an SSL socket before handing it to
+	 * the HTTP protocol handler. When HTTP/2 is enabled it will be offered
+	 * to the client during the handshake, if the Java runtime supports it
+	 * @param socket The newly accepted connection
+	 */
+	@Override
+	protected void onNewConnection(Socket socket) {
+		SSLEngineSocket sslSocket;
+		try {
+			sslSocket = sslContextManager.createSocket(socket);
+			if (isHttp2Enabled()) {
+				ApplicationProtocols.set(sslSocket.getEngine(), HTTP2_PROTOCOLS);
+			}
+		} catch (IOException ex) {
+			logger.log(Level.FINE, "Could not set up secure connection", ex);
+			try {
+				socket.close();
+			} catch (IOException ex2) {
+				// Ignore
+			}
+			return;
+		}
+		super.onNewConnection(sslSocket);
+	}
+
+	/**
+	 * Nothing can be sent to the client before doing a handshake, which
+	 * is too expensive for a connection we don't want, so rejected
+	 * connections are simply closed
+	 * @param socket The connection that is being rejected
+	 */
+	@Override
+	protected void onRejectedConnection(Socket socket) {
+	}
+}
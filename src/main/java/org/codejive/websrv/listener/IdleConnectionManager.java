@@ -0,0 +1,403 @@
+/*
+ * IdleConnectionManager.java
+ *
+ * Created on Oct 19, 2026, 1:52:31 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.listener;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.util.TimerWheel;
+
+/**
+ * Watches idle connections, like keep-alive connections waiting for their
+ * next request, so they don't each need a thread of their own. Idle
+ * connections are parked on a single selector and as soon as one of them
+ * becomes readable it is handed back by calling its <code>resume()</code>
+ * method. Connections that stay idle for longer than their time-out are
+ * closed, unless they want to be handed back to send a keep-alive message,
+ * and connections can ask to be handed back early when they have something
+ * to send. The time-outs are kept in a timer wheel so even many thousands
+ * of parked connections cost very little to keep track of
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class IdleConnectionManager implements Runnable {
+
+	/**
+	 * A connection that can be parked with the manager
+	 */
+	public interface IdleConnection {
+
+		/**
+		 * Returns the socket of the connection. It must have been obtained
+		 * from a <code>SocketChannel</code>
+		 * @return The connection's socket
+		 */
+		public Socket getSocket();
+
+		/**
+		 * Called when data has arrived for the parked connection. At that
+		 * point the socket will have been switched back to blocking mode.
+		 * This method is called by the manager's thread so it should
+		 * return as quickly as possible
+		 */
+		public void resume();
+
+		/**
+		 * Called when the connection stayed idle for longer than its
+		 * time-out. This method is called by the manager's thread so it
+		 * should return as quickly as possible
+		 * @return <code>true</code> if the connection should be handed back
+		 * by calling <code>resume()</code>, <code>false</code> if it should
+		 * be closed
+		 */
+		public boolean timedOut();
+
+		/**
+		 * Called when the connection stayed idle for too long and doesn't
+		 * want to be handed back or when the manager is shutting down.
+		 * It must close the connection
+		 */
+		public void close();
+	}
+
+	/**
+	 * The name of this manager, used to name its thread
+	 */
+	private final String name;
+	
+	/**
+	 * The selector that all parked connections are registered with
+	 */
+	private Selector selector;
+	
+	/**
+	 * The time-outs of all parked connections
+	 */
+	private TimerWheel<Entry> timeouts;
+	
+	/**
+	 * Connections waiting to be registered with the selector
+	 */
+	private final ConcurrentLinkedQueue<Entry> pending;
+	
+	/**
+	 * Connections that asked to be handed back
+	 */
+	private final ConcurrentLinkedQueue<IdleConnection> wakeups;
+	
+	/**
+	 * The number of connections that are currently parked
+	 */
+	private volatile int parkedCount;
+	
+	/**
+	 * The thread that watches the connections
+	 */
+	private Thread thread;
+	
+	/**
+	 * Indicator if the manager has been closed or not
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * The duration of a tick of the timer wheel in milliseconds
+	 */
+	private static final long TICK_DURATION = 100;
+	
+	/**
+	 * The number of slots in the timer wheel
+	 */
+	private static final int WHEEL_SIZE = 512;
+	
+	/**
+	 * The private logger for this class
+	 */
+	private static final Logger logger = Logger.getLogger(IdleConnectionManager.class.getName());
+
+	/**
+	 * Creates a new manager
+	 * @param name The name of the manager
+	 */
+	public IdleConnectionManager(String name) {
+		this.name = name;
+		this.pending = new ConcurrentLinkedQueue<Entry>();
+		this.wakeups = new ConcurrentLinkedQueue<IdleConnection>();
+		this.closed = true;
+	}
+
+	/**
+	 * Returns the number of connections that are currently parked
+	 * @return The number of parked connections
+	 */
+	public int getParkedCount() {
+		return parkedCount;
+	}
+
+	/**
+	 * Starts the thread that watches the parked connections
+	 * @throws java.io.IOException If the selector could not be opened
+	 */
+	public synchronized void start() throws IOException {
+		if (!closed) {
+			return;
+		}
+		selector = Selector.open();
+		timeouts = new TimerWheel<Entry>(TICK_DURATION, WHEEL_SIZE, System.currentTimeMillis());
+		closed = false;
+		thread = new Thread(this, "websrv-idle-" + name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Parks the given connection until new data arrives or until it has been
+	 * idle for the given amount of time. The connection's socket will be
+	 * switched to non-blocking mode while it's parked
+	 * @param connection The connection to park
+	 * @param timeout The maximum time in milliseconds that the connection
+	 * may remain idle, 0 meaning forever
+	 * @return <code>true</code> if the connection was parked, <code>false</code>
+	 * if it can't be parked, in which case nothing was changed
+	 */
+	public boolean park(IdleConnection connection, int timeout) {
+		SocketChannel channel = connection.getSocket().getChannel();
+		if (closed || channel == null) {
+			return false;
+		}
+		try {
+			channel.configureBlocking(false);
+		} catch (IOException ex) {
+			return false;
+		}
+		Entry entry = new Entry(connection, channel, timeout);
+		pending.add(entry);
+		if (closed && pending.remove(entry)) {
+			// We were closed in the mean time so nobody would ever look at it
+			try {
+				channel.configureBlocking(true);
+			} catch (IOException ex) {
+				// Ignore
+			}
+			return false;
+		}
+		selector.wakeup();
+		return true;
+	}
+
+	/**
+	 * Hands the given connection back as soon as possible, even though
+	 * no new data has arrived. If the connection is in the process of
+	 * being parked it will be handed back right after. This method can
+	 * be called from any thread
+	 * @param connection The connection to hand back
+	 */
+	public void wake(IdleConnection connection) {
+		if (!closed) {
+			wakeups.add(connection);
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * Closes the manager and all connections that are still parked
+	 */
+	public void close() {
+		Thread t;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			t = thread;
+			thread = null;
+		}
+		selector.wakeup();
+		boolean interrupted = false;
+		while (t.isAlive()) {
+			try {
+				t.join();
+			} catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The manager's main loop, do not call directly
+	 */
+	public void run() {
+		ArrayList<Entry> ready = new ArrayList<Entry>();
+		ArrayList<Entry> expired = new ArrayList<Entry>();
+		ArrayList<IdleConnection> unmatched = new ArrayList<IdleConnection>();
+		try {
+			while (!closed) {
+				selector.select((timeouts.isEmpty() && wakeups.isEmpty()) ? 0 : TICK_DURATION);
+				long now = System.currentTimeMillis();
+				register(now);
+
+				// Collect the connections with new data
+				Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+				while (i.hasNext()) {
+					SelectionKey key = i.next();
+					i.remove();
+					unpark((Entry) key.attachment(), ready);
+				}
+
+				// Collect the connections that asked to be handed back,
+				// those that aren't parked yet will be tried again later
+				IdleConnection connection;
+				while ((connection = wakeups.poll()) != null) {
+					Socket socket = connection.getSocket();
+					SocketChannel channel = socket.getChannel();
+					SelectionKey key = (channel != null) ? channel.keyFor(selector) : null;
+					if (key != null) {
+						// An invalid key means it's already being handed back
+						unpark((Entry) key.attachment(), ready);
+					} else if (channel != null && !socket.isClosed()) {
+						unmatched.add(connection);
+					}
+				}
+				wakeups.addAll(unmatched);
+				unmatched.clear();
+
+				// Connections that stayed idle too long get closed unless
+				// they want to be handed back
+				timeouts.expire(now, expired);
+				Iterator<Entry> j = expired.iterator();
+				while (j.hasNext()) {
+					Entry entry = j.next();
+					entry.timeout = null;
+					if (entry.connection.timedOut()) {
+						unpark(entry, ready);
+						j.remove();
+					} else {
+						parkedCount--;
+					}
+				}
+
+				if (!ready.isEmpty()) {
+					// Make the selector forget the cancelled keys or we
+					// won't be able to switch the sockets back to blocking
+					selector.selectNow();
+					for (Entry entry : ready) {
+						try {
+							entry.channel.configureBlocking(true);
+						} catch (IOException ex) {
+							entry.connection.close();
+							continue;
+						}
+						entry.connection.resume();
+					}
+					ready.clear();
+				}
+				for (Entry entry : expired) {
+					if (logger.isLoggable(Level.FINE)) {
+						logger.fine("Closing idle connection " + entry.connection.getSocket());
+					}
+					entry.connection.close();
+				}
+				expired.clear();
+			}
+		} catch (Throwable th) {
+			logger.log(Level.SEVERE, "Idle connection manager aborted", th);
+			closed = true;
+		} finally {
+			// Close everything that's still parked
+			register(System.currentTimeMillis());
+			for (SelectionKey key : selector.keys()) {
+				((Entry) key.attachment()).connection.close();
+			}
+			try {
+				selector.close();
+			} catch (IOException ex) {
+				// Ignore
+			}
+			parkedCount = 0;
+		}
+	}
+
+	/**
+	 * Takes a connection off the selector so it can be handed back
+	 * @param entry The parked connection
+	 * @param ready The list of connections to hand back
+	 */
+	private void unpark(Entry entry, ArrayList<Entry> ready) {
+		if (!entry.key.isValid()) {
+			// Already taken off for another reason
+			return;
+		}
+		entry.key.cancel();
+		if (entry.timeout != null) {
+			entry.timeout.cancel();
+		}
+		parkedCount--;
+		ready.add(entry);
+	}
+
+	/**
+	 * Registers all pending connections with the selector
+	 * @param now The current time in milliseconds
+	 */
+	private void register(long now) {
+		Entry entry;
+		while ((entry = pending.poll()) != null) {
+			try {
+				entry.key = entry.channel.register(selector, SelectionKey.OP_READ, entry);
+			} catch (IOException ex) {
+				entry.connection.close();
+				continue;
+			}
+			if (entry.idleTimeout > 0) {
+				entry.timeout = timeouts.schedule(entry, now + entry.idleTimeout);
+			}
+			parkedCount++;
+		}
+	}
+
+	/**
+	 * Holds the information about a single parked connection
+	 */
+	private static class Entry {
+		final IdleConnection connection;
+		final SocketChannel channel;
+		final int idleTimeout;
+		SelectionKey key;
+		TimerWheel.Timeout<Entry> timeout;
+
+		Entry(IdleConnection connection, SocketChannel channel, int idleTimeout) {
+			this.connection = connection;
+			this.channel = channel;
+			this.idleTimeout = idleTimeout;
+		}
+	}
+}
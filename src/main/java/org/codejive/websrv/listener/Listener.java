@@ -28,6 +28,8 @@ import java.nio.channels.*;
 import java.nio.channels.spi.*;
 import java.net.*;
 import java.util.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,21 +53,58 @@ public abstract class Listener implements Runnable {
 	 */
 	private int port;
 	
+	/**
+	 * The maximum number of pending connections the operating system
+	 * will queue for us. 0 means the system default (default = 0)
+	 */
+	private int acceptBacklog;
+	
+	/**
+	 * The maximum number of connections that will be accepted in one go
+	 * before checking the selector again. -1 means to keep accepting
+	 * until no more connections are pending (default = -1)
+	 */
+	private int acceptBatchSize;
+	
+	/**
+	 * The number of threads accepting connections (default = 1)
+	 */
+	private int acceptorCount;
+	
+	/**
+	 * Indicates if each acceptor thread should get its own socket bound
+	 * to the same port using SO_REUSEPORT, when the platform supports it,
+	 * letting the operating system distribute new connections between
+	 * them. Otherwise all acceptors share the same socket (default = false)
+	 */
+	private boolean reusePort;
+	
 	/**
 	 * The socket to use for communications
 	 */
 	private ServerSocketChannel channel;
 	
 	/**
-	 * The selector used for accepting connections
+	 * The acceptors that are currently active
 	 */
-	private Selector acceptSelector;
+	private volatile Acceptor[] acceptors;
 	
 	/**
 	 * Indicator if the listener has stopped listening or not
 	 */
 	private volatile boolean stopped;
 	
+	/**
+	 * The SO_REUSEPORT socket option or null if it's not available
+	 */
+	private static final Object SO_REUSEPORT = getReusePortOption();
+	
+	/**
+	 * The time in milliseconds after which a listener that isn't
+	 * accepting connections will check again if it can
+	 */
+	private static final long PAUSE_CHECK_INTERVAL = 1000;
+
 	/**
 	 * The private logger for this class
 	 */
@@ -94,6 +133,10 @@ public abstract class Listener implements Runnable {
 	public Listener(InetAddress address, int port) {
 		this.address = address;
 		this.port = port;
+		this.acceptBacklog = 0;
+		this.acceptBatchSize = -1;
+		this.acceptorCount = 1;
+		this.reusePort = false;
 		this.stopped = true;
 	}
 
@@ -135,6 +178,94 @@ public abstract class Listener implements Runnable {
 		this.port = port;
 	}
 
+	/**
+	 * Returns the maximum number of pending connections the operating
+	 * system will queue for this listener. 0 means the system default
+	 * @return The length of the accept queue
+	 */
+	public int getAcceptBacklog() {
+		return acceptBacklog;
+	}
+
+	/**
+	 * Sets the maximum number of pending connections the operating
+	 * system will queue for this listener. 0 means the system default.
+	 * This can only be changed when the listener is not currently active
+	 * (<code>isRunning()</code> returns <code>false</code>)
+	 * @param acceptBacklog The length of the accept queue
+	 */
+	public void setAcceptBacklog(int acceptBacklog) {
+		assert stopped : "Listener must not be active!";
+		this.acceptBacklog = acceptBacklog;
+	}
+
+	/**
+	 * Returns the maximum number of connections that will be accepted
+	 * in one go. -1 means to keep accepting until no more connections
+	 * are pending
+	 * @return The maximum number of connections to accept at a time
+	 */
+	public int getAcceptBatchSize() {
+		return acceptBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of connections that will be accepted
+	 * in one go. -1 means to keep accepting until no more connections
+	 * are pending
+	 * @param acceptBatchSize The maximum number of connections to accept at a time
+	 */
+	public void setAcceptBatchSize(int acceptBatchSize) {
+		if (acceptBatchSize == 0) {
+			throw new IllegalArgumentException("acceptBatchSize must not be 0");
+		}
+		this.acceptBatchSize = acceptBatchSize;
+	}
+
+	/**
+	 * Returns the number of threads that will accept connections
+	 * @return The number of acceptor threads
+	 */
+	public int getAcceptorCount() {
+		return acceptorCount;
+	}
+
+	/**
+	 * Sets the number of threads that will accept connections.
+	 * This can only be changed when the listener is not currently active
+	 * (<code>isRunning()</code> returns <code>false</code>)
+	 * @param acceptorCount The number of acceptor threads
+	 */
+	public void setAcceptorCount(int acceptorCount) {
+		assert stopped : "Listener must not be active!";
+		if (acceptorCount <= 0) {
+			throw new IllegalArgumentException("acceptorCount must be larger than 0");
+		}
+		this.acceptorCount = acceptorCount;
+	}
+
+	/**
+	 * Indicates if each acceptor thread will get its own socket bound to
+	 * the same port using SO_REUSEPORT
+	 * @return <code>true</code> if SO_REUSEPORT will be used
+	 */
+	public boolean isReusePort() {
+		return reusePort;
+	}
+
+	/**
+	 * Determines if each acceptor thread will get its own socket bound to
+	 * the same port using SO_REUSEPORT. When the platform doesn't support
+	 * it all acceptors will share a single socket instead.
+	 * This can only be changed when the listener is not currently active
+	 * (<code>isRunning()</code> returns <code>false</code>)
+	 * @param reusePort <code>true</code> if SO_REUSEPORT should be used
+	 */
+	public void setReusePort(boolean reusePort) {
+		assert stopped : "Listener must not be active!";
+		this.reusePort = reusePort;
+	}
+
 	/**
 	 * Returns the current active state for this listener. <code>true</code>
 	 * is active/running while <code>false</code> is inactive/stopped.
@@ -150,42 +281,45 @@ public abstract class Listener implements Runnable {
 	 * Starts listening for connections on the specified address and port.
 	 * For each new connection that gets accepted the method
 	 * <code>onNewConnection()</code> will be called with the newly created
-	 * socket as its parameter
+	 * socket as its parameter. When more than one acceptor was configured
+	 * the extra ones will get their own threads, in which case
+	 * <code>onNewConnection()</code> can be called by several threads
+	 * at the same time
 	 * @throws java.lang.Exception Gets throws when the socket could not be
 	 * set up properly
 	 */
 	public void start() throws Exception {
+		Acceptor[] accs = new Acceptor[acceptorCount];
+		Thread[] threads = new Thread[acceptorCount];
 		try {
-            // Create a new server socket and set to non blocking mode
-            channel = ServerSocketChannel.open();
-            channel.configureBlocking(false);
-
             // Bind the server socket to the local host and port
             if (address == null) {
                 address = InetAddress.getLocalHost();
             }
-            InetSocketAddress isa = new InetSocketAddress(address, port);
-            channel.socket().bind(isa);
+            boolean reuse = reusePort && acceptorCount > 1 && SO_REUSEPORT != null;
+            if (reusePort && acceptorCount > 1 && !reuse) {
+                logger.warning("SO_REUSEPORT is not supported, all acceptors will share the same socket");
+            }
+            channel = openChannel(new InetSocketAddress(address, port), reuse);
 
-            // Register accepts on the server socket
-            acceptSelector = SelectorProvider.provider().openSelector();
-            channel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+            // When the port was chosen by the system the other sockets need to use the same one
+            InetSocketAddress isa = new InetSocketAddress(address, channel.socket().getLocalPort());
+            for (int i = 0; i < accs.length; i++) {
+                ServerSocketChannel ch = (i == 0 || !reuse) ? channel : openChannel(isa, true);
+                accs[i] = new Acceptor(ch);
+            }
+            acceptors = accs;
+            onStartListening();
 
             // Start listening
-            logger.info("Started listening for connections on " + getAddress() + ":" + getPort());
+            logger.info("Started listening for connections on " + getAddress() + ":" + getPort()
+                    + ((accs.length > 1) ? " using " + accs.length + " acceptors" : ""));
             stopped = false;
-            while (!stopped && acceptSelector.select() > 0) {
-                Set<SelectionKey> selectedKeys = acceptSelector.selectedKeys();
-                for (SelectionKey sk : selectedKeys) {
-                    // Get the socket that connects us to the client
-                    ServerSocketChannel clientChannel = (ServerSocketChannel) sk.channel();
-                    Socket s = clientChannel.accept().socket();
-                    // Create and execute the protocol handler that will manage the connection
-                    onNewConnection(s);
-                }
-
-                selectedKeys.clear();
+            for (int i = 1; i < accs.length; i++) {
+                threads[i] = new Thread(accs[i], "websrv-acceptor-" + getPort() + "-" + i);
+                threads[i].start();
             }
+            accs[0].accept();
             logger.info("Stopped listening for connections on " + getAddress() + ":" + getPort());
 		} catch (Exception ex) {
 			if (stopped) {
@@ -195,8 +329,105 @@ public abstract class Listener implements Runnable {
 			}
 			throw ex;
 		} finally {
-			stopped = true;
-			channel.close();
+			stop();
+			join(threads);
+			for (Acceptor acc : accs) {
+				if (acc != null) {
+					acc.close();
+				}
+			}
+			acceptors = null;
+			if (channel != null) {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the given acceptor threads to end. Being interrupted won't
+	 * stop us from waiting, the acceptors will end soon enough anyway
+	 * @param threads The threads to wait for, may contain nulls
+	 */
+	private static void join(Thread[] threads) {
+		boolean interrupted = false;
+		for (Thread thread : threads) {
+			while (thread != null && thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Opens a non-blocking server socket bound to the given address
+	 * @param isa The address to bind to
+	 * @param reuse Set SO_REUSEPORT on the socket before binding it or not
+	 * @return The bound server socket
+	 * @throws java.io.IOException If the socket could not be opened or bound
+	 */
+	private ServerSocketChannel openChannel(InetSocketAddress isa, boolean reuse) throws IOException {
+		ServerSocketChannel ch = ServerSocketChannel.open();
+		try {
+            ch.configureBlocking(false);
+            if (reuse) {
+                setReusePort(ch);
+            }
+            ch.socket().bind(isa, acceptBacklog);
+            return ch;
+		} catch (IOException ex) {
+			ch.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns the SO_REUSEPORT socket option, which only exists in more
+	 * recent versions of Java, by using reflection
+	 * @return The socket option or null if it isn't available
+	 */
+	private static Object getReusePortOption() {
+		try {
+			Class<?> options = Class.forName("java.net.StandardSocketOptions");
+			return options.getField("SO_REUSEPORT").get(null);
+		} catch (Exception ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Enables SO_REUSEPORT on the given socket by using reflection
+	 * @param ch The socket to enable it for
+	 * @throws java.io.IOException If the option could not be set
+	 */
+	private static void setReusePort(ServerSocketChannel ch) throws IOException {
+		try {
+			Class<?> option = Class.forName("java.net.SocketOption");
+			Method setOption = ServerSocketChannel.class.getMethod("setOption", option, Object.class);
+			setOption.invoke(ch, SO_REUSEPORT, Boolean.TRUE);
+		} catch (InvocationTargetException ex) {
+			throw new IOException("Could not enable SO_REUSEPORT: " + ex.getCause());
+		} catch (Exception ex) {
+			throw new IOException("Could not enable SO_REUSEPORT: " + ex);
+		}
+	}
+
+	/**
+	 * Wakes up the listener threads so they will call <code>isAccepting()</code>
+	 * again. Sub classes should call this whenever the result of that method
+	 * might have changed from <code>false</code> to <code>true</code>
+	 */
+	protected void acceptingChanged() {
+		Acceptor[] accs = acceptors;
+		if (accs != null) {
+			for (Acceptor acc : accs) {
+				acc.wakeup();
+			}
 		}
 	}
 
@@ -206,7 +437,7 @@ public abstract class Listener implements Runnable {
 	 */
 	public void stop() {
 		stopped = true;
-		acceptSelector.wakeup();
+		acceptingChanged();
 	}
 
 	/**
@@ -217,6 +448,34 @@ public abstract class Listener implements Runnable {
 		stop();
 	}
 
+	/**
+	 * Signal the listener to stop accepting connections and to end the
+	 * connections it already has as soon as they're done with the request
+	 * they're handling. This returns right away, use <code>shutdown(long)</code>
+	 * to wait for the connections to end. The default implementation only
+	 * stops the listener
+	 */
+	public void drain() {
+		stop();
+	}
+
+	/**
+	 * Shuts down the listener gracefully. It stops accepting connections
+	 * and waits for the connections it already has to finish the request
+	 * they are handling, connections that are still open when the time is
+	 * up are closed by force. Afterwards the listener is shut down the same
+	 * way as <code>shutdown()</code> does. The default implementation
+	 * doesn't keep track of any connections so it shuts down right away
+	 * @param timeout The maximum time in milliseconds to wait
+	 * @return The number of connections that ended by themselves and the
+	 * number that had to be closed
+	 */
+	public DrainReport shutdown(long timeout) {
+		drain();
+		shutdown();
+		return new DrainReport(0, 0);
+	}
+
 	/**
 	 * This utility method exists to make it easy to use the listener
 	 * directly as the target of a Thread or Executor service and it simply
@@ -230,6 +489,27 @@ public abstract class Listener implements Runnable {
 		}
 	}
 	
+	/**
+	 * This method will be called once the listener's socket has been bound,
+	 * right before it starts accepting connections. The default
+	 * implementation does nothing
+	 * @throws java.lang.Exception If the listener can't be started
+	 */
+	protected void onStartListening() throws Exception {
+	}
+
+	/**
+	 * Determines if the listener should accept new connections right now.
+	 * When this returns <code>false</code> the listener stops accepting
+	 * until either <code>acceptingChanged()</code> gets called or a short
+	 * time has passed, whichever comes first. The default implementation
+	 * always returns <code>true</code>
+	 * @return <code>true</code> if new connections should be accepted
+	 */
+	protected boolean isAccepting() {
+		return true;
+	}
+
 	/**
 	 * This abstract method will be called for each connection that gets
 	 * accepted by this listener. It gets passed the socket that can be
@@ -237,4 +517,105 @@ public abstract class Listener implements Runnable {
 	 * @param socket The accepted client connection
 	 */
 	protected abstract void onNewConnection(Socket socket);
+
+	/**
+	 * Accepts connections from a server socket on its own selector. All
+	 * acceptors either share the same server socket or each has its own,
+	 * bound to the same port using SO_REUSEPORT
+	 */
+	private class Acceptor implements Runnable {
+
+		/**
+		 * The selector used for accepting connections
+		 */
+		private final Selector selector;
+		
+		/**
+		 * The registration of the server socket with the selector
+		 */
+		private final SelectionKey acceptKey;
+
+		/**
+		 * Creates a new acceptor for the given server socket
+		 * @param ch The server socket to accept connections from
+		 * @throws java.io.IOException If the selector could not be opened
+		 */
+		public Acceptor(ServerSocketChannel ch) throws IOException {
+			selector = SelectorProvider.provider().openSelector();
+			acceptKey = ch.register(selector, SelectionKey.OP_ACCEPT);
+		}
+
+		/**
+		 * Runs the accept loop in a thread of its own, on failure
+		 * the entire listener will be stopped
+		 */
+		public void run() {
+			try {
+				accept();
+			} catch (Exception ex) {
+				if (!stopped) {
+					logger.log(Level.SEVERE, "Listener process aborted", ex);
+					stop();
+				}
+			}
+		}
+
+		/**
+		 * Accepts connections until the listener gets stopped
+		 * @throws java.io.IOException If accepting connections failed
+		 */
+		public void accept() throws IOException {
+			ServerSocketChannel serverChannel = (ServerSocketChannel) acceptKey.channel();
+            while (!stopped) {
+                // While we're not accepting any new connections they will
+                // simply have to wait in the socket's backlog
+                boolean accepting = isAccepting();
+                acceptKey.interestOps(accepting ? SelectionKey.OP_ACCEPT : 0);
+                selector.select(accepting ? 0 : PAUSE_CHECK_INTERVAL);
+                if (selector.selectedKeys().isEmpty()) {
+                    continue;
+                }
+                selector.selectedKeys().clear();
+
+                // Accept as many of the pending connections as we're allowed to
+                // (when several acceptors share a socket the others might
+                // beat us to it, in which case accept() just returns null)
+                int count = 0;
+                while (!stopped && (acceptBatchSize < 0 || count < acceptBatchSize)) {
+                    SocketChannel sc = serverChannel.accept();
+                    if (sc == null) {
+                        break;
+                    }
+                    count++;
+                    // Create and execute the protocol handler that will manage the connection
+                    onNewConnection(sc.socket());
+                    if (!isAccepting()) {
+                        break;
+                    }
+                }
+            }
+		}
+
+		/**
+		 * Wakes up the acceptor if it's waiting in its selector
+		 */
+		public void wakeup() {
+			selector.wakeup();
+		}
+
+		/**
+		 * Releases the acceptor's selector and, if it's not the listener's
+		 * main server socket, its server socket as well
+		 */
+		public void close() {
+			try {
+				selector.close();
+				if (acceptKey.channel() != channel) {
+					acceptKey.channel().close();
+				}
+			} catch (IOException ex) {
+				// Ignore
+			}
+		}
+	}
 }
@@ -0,0 +1,45 @@
+/*
+ * OverloadPolicy.java
+ *
+ * Created on Oct 19, 2026, 12:31:04 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.listener;
+
+/**
+ * Determines what a listener does with new connections when it is already
+ * handling as many connections as it is allowed to
+ * @see org.codejive.websrv.listener.ThreadedProtocolListener
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public enum OverloadPolicy {
+	/**
+	 * Accept the connection and immediately reject it again. What this
+	 * means exactly depends on the protocol, an HTTP listener for example
+	 * will send a "503 Service Unavailable" response before closing it
+	 */
+	REJECT,
+	/**
+	 * Stop accepting new connections until the listener is able to handle
+	 * them again. In the mean time clients will have to wait in the
+	 * socket's backlog or will have their connection refused when that
+	 * is full as well
+	 */
+	PAUSE
+}
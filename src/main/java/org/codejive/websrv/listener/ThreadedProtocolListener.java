@@ -22,19 +22,48 @@
 
 package org.codejive.websrv.listener;
 
+import org.codejive.websrv.protocol.DrainableProtocolHandler;
+import org.codejive.websrv.protocol.ParkableProtocolHandler;
 import org.codejive.websrv.protocol.ProtocolHandler;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This class is an implementation of a Listener which starts a thread
  * for each incoming connection and hands the communication socket of
  * to a protocol handler. The class itself is abstract and a sub class
  * will need to implement <code>getProtocolHandler()</code> which will
- * be used to obtain the protocol handler for each incoming conenction
+ * be used to obtain the protocol handler for each incoming conenction.
+ * The number of threads is limited, as is the number of connections
+ * that can wait for a thread to become available. Connections that
+ * arrive while the listener is already at its limit are dealt with
+ * according to its overload policy.
+ * Protocol handlers that implement <code>ParkableProtocolHandler</code>
+ * can give up their thread while their connection is idle, the connection
+ * will then be watched by an <code>IdleConnectionManager</code> until
+ * new data arrives or until it times out.
+ * When the listener is shut down gracefully the connections that are
+ * waiting for a request are closed right away while those that are
+ * handling one get some time to finish it, as long as their protocol
+ * handler implements <code>DrainableProtocolHandler</code>
  * @see org.codejive.websrv.protocol.ProtocolHandler
+ * @see org.codejive.websrv.listener.OverloadPolicy
+ * @see org.codejive.websrv.listener.IdleConnectionManager
  * @author Tako Schotanus &lt;tako AT codejive.org&gt;
  */
 public abstract class ThreadedProtocolListener extends Listener {
@@ -45,15 +74,95 @@ public abstract class ThreadedProtocolListener extends Listener {
 	 */
 	private ExecutorService executor;
 	
+	/**
+	 * The maximum number of threads the default thread pool will
+	 * create (default = 256)
+	 */
+	private int maxThreads;
+	
+	/**
+	 * The number of connections the default thread pool will let wait
+	 * for a thread to become available (default = 128)
+	 */
+	private int queueSize;
+	
+	/**
+	 * The maximum number of connections that will be handled at the same
+	 * time, including the ones waiting for a thread. -1 means it's only
+	 * limited by the thread pool (default = -1)
+	 */
+	private int maxConnections;
+	
+	/**
+	 * What to do with new connections when the limit has been reached
+	 * (default = REJECT)
+	 */
+	private OverloadPolicy overloadPolicy;
+	
+	/**
+	 * Let idle connections give up their thread or not (default = true)
+	 */
+	private boolean parkIdleConnections;
+	
+	/**
+	 * Shorten the idle time-out when the number of connections approaches
+	 * the maximum or not (default = true)
+	 */
+	private boolean adaptiveKeepAlive;
+	
+	/**
+	 * The manager that watches idle connections when they are parked
+	 */
+	private IdleConnectionManager idleManager;
+	
     /**
      * The number of connected clients
      */
-    private int connectedCount;
+    private final AtomicInteger connectedCount;
 	
     /**
      * The total number of handled connections
      */
-    private int connectionCount;
+    private final AtomicInteger connectionCount;
+	
+    /**
+     * The total number of connections that were rejected because
+     * the listener was overloaded
+     */
+    private final AtomicInteger rejectedCount;
+	
+	/**
+	 * The connections that are currently open, it is also used to signal
+	 * the end of a connection while draining
+	 */
+	private final Set<ProtocolHandlerWrapper> connections;
+	
+	/**
+	 * Indicates that the connections are being drained
+	 */
+	private volatile boolean draining;
+	
+	/**
+	 * The number of connections that ended while draining
+	 */
+	private final AtomicInteger drainedCount;
+	
+	/**
+	 * The fraction of the maximum number of connections above which
+	 * the adaptive idle time-out starts getting shorter
+	 */
+	private static final double ADAPTIVE_THRESHOLD = 0.5;
+	
+	/**
+	 * The shortest idle time-out in milliseconds the adaptive idle
+	 * time-out will ever use
+	 */
+	private static final int ADAPTIVE_MIN_TIMEOUT = 500;
+	
+	/**
+	 * The private logger for this class
+	 */
+	private static final Logger logger = Logger.getLogger(ThreadedProtocolListener.class.getName());
 	
 	/**
 	 * Creates a listener on the default address using any free port
@@ -77,16 +186,26 @@ public abstract class ThreadedProtocolListener extends Listener {
 	 */
 	public ThreadedProtocolListener(InetAddress address, int port) {
 		super(address, port);
-		executor = Executors.newCachedThreadPool();
-		connectedCount = 0;
-		connectionCount = 0;
+		maxThreads = 256;
+		queueSize = 128;
+		maxConnections = -1;
+		overloadPolicy = OverloadPolicy.REJECT;
+		parkIdleConnections = true;
+		adaptiveKeepAlive = true;
+		connectedCount = new AtomicInteger();
+		connectionCount = new AtomicInteger();
+		rejectedCount = new AtomicInteger();
+		connections = Collections.newSetFromMap(new ConcurrentHashMap<ProtocolHandlerWrapper, Boolean>());
+		drainedCount = new AtomicInteger();
 	}
 
 	/**
 	 * Returns the executor service that is/will be used to handle
-	 * the threads for each of the protocol handlers
+	 * the threads for each of the protocol handlers. If none was set
+	 * explicitly a bounded thread pool will be created when the
+	 * listener starts
 	 * @see java.util.concurrent.ExecutorService
-	 * @return The executor service
+	 * @return The executor service or null if none was created yet
 	 */
 	public ExecutorService getExecutor() {
 		return executor;
@@ -94,7 +213,8 @@ public abstract class ThreadedProtocolListener extends Listener {
 
 	/**
 	 * Returns the executor service that will be used to handle
-	 * the threads for each of the protocol handlers.
+	 * the threads for each of the protocol handlers. When it rejects
+	 * a connection it will be handled according to the overload policy.
 	 * This can only be changed when the listener is not currently active
 	 * (<code>isRunning()</code> returns <code>false</code>)
 	 * @param executorPool The executor service to use
@@ -105,13 +225,158 @@ public abstract class ThreadedProtocolListener extends Listener {
 		this.executor = executorPool;
 	}
 
+	/**
+	 * Returns the maximum number of threads the default thread pool
+	 * will create
+	 * @return The maximum number of threads
+	 */
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * Sets the maximum number of threads the default thread pool
+	 * will create. This has no effect when an executor was set explicitly.
+	 * This can only be changed when the listener is not currently active
+	 * (<code>isRunning()</code> returns <code>false</code>)
+	 * @param maxThreads The maximum number of threads
+	 */
+	public void setMaxThreads(int maxThreads) {
+		assert !isRunning() : "Listener must not be active!";
+		if (maxThreads <= 0) {
+			throw new IllegalArgumentException("maxThreads must be larger than 0");
+		}
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * Returns the number of connections the default thread pool will let
+	 * wait for a thread to become available
+	 * @return The size of the queue
+	 */
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * Sets the number of connections the default thread pool will let
+	 * wait for a thread to become available. 0 means connections will
+	 * never wait. This has no effect when an executor was set explicitly.
+	 * This can only be changed when the listener is not currently active
+	 * (<code>isRunning()</code> returns <code>false</code>)
+	 * @param queueSize The size of the queue
+	 */
+	public void setQueueSize(int queueSize) {
+		assert !isRunning() : "Listener must not be active!";
+		if (queueSize < 0) {
+			throw new IllegalArgumentException("queueSize must not be negative");
+		}
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Returns the maximum number of connections that will be handled at
+	 * the same time, including the ones waiting for a thread.
+	 * -1 means it's only limited by the thread pool
+	 * @return The maximum number of connections
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Sets the maximum number of connections that will be handled at
+	 * the same time, including the ones waiting for a thread.
+	 * -1 means it's only limited by the thread pool
+	 * @param maxConnections The maximum number of connections
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+		acceptingChanged();
+	}
+
+	/**
+	 * Returns what will be done with new connections when the listener
+	 * is already handling as many connections as it can
+	 * @return The overload policy
+	 */
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	/**
+	 * Sets what will be done with new connections when the listener
+	 * is already handling as many connections as it can
+	 * @param overloadPolicy The overload policy
+	 */
+	public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+		if (overloadPolicy == null) {
+			throw new IllegalArgumentException("overloadPolicy must not be null");
+		}
+		this.overloadPolicy = overloadPolicy;
+		acceptingChanged();
+	}
+
+	/**
+	 * Indicates if idle connections will give up their thread while
+	 * waiting for new data
+	 * @return <code>true</code> if idle connections will be parked
+	 */
+	public boolean isParkIdleConnections() {
+		return parkIdleConnections;
+	}
+
+	/**
+	 * Determines if idle connections will give up their thread while
+	 * waiting for new data. This only works for protocol handlers that
+	 * implement <code>ParkableProtocolHandler</code>.
+	 * This can only be changed when the listener is not currently active
+	 * (<code>isRunning()</code> returns <code>false</code>)
+	 * @param parkIdleConnections <code>true</code> if idle connections
+	 * should be parked
+	 */
+	public void setParkIdleConnections(boolean parkIdleConnections) {
+		assert !isRunning() : "Listener must not be active!";
+		this.parkIdleConnections = parkIdleConnections;
+	}
+
+	/**
+	 * Indicates if the idle time-out of parked connections will be
+	 * shortened as the number of connections approaches the maximum
+	 * @return <code>true</code> if the idle time-out is adaptive
+	 */
+	public boolean isAdaptiveKeepAlive() {
+		return adaptiveKeepAlive;
+	}
+
+	/**
+	 * Determines if the idle time-out of parked connections will be
+	 * shortened as the number of connections approaches the maximum.
+	 * This only has effect when a maximum number of connections was set
+	 * @param adaptiveKeepAlive <code>true</code> if the idle time-out
+	 * should be adaptive
+	 */
+	public void setAdaptiveKeepAlive(boolean adaptiveKeepAlive) {
+		this.adaptiveKeepAlive = adaptiveKeepAlive;
+	}
+
+	/**
+	 * Returns the number of connections that are currently parked,
+	 * meaning they are idle and not using a thread
+	 * @return The number of parked connections
+	 */
+	public int getParkedCount() {
+		IdleConnectionManager manager = idleManager;
+		return (manager != null) ? manager.getParkedCount() : 0;
+	}
+
 	/**
      * Returns the number of connected clients (although literally it's
 	 * the number of protocol handlers that are still active)
 	 * @return The number of connected clients
 	 */
 	public int getConnectionCount() {
-		return connectionCount;
+		return connectionCount.get();
 	}
 
 	/**
@@ -119,13 +384,184 @@ public abstract class ThreadedProtocolListener extends Listener {
 	 * @return The total number of handled connections
 	 */
 	public int getConnectedCount() {
-		return connectedCount;
+		return connectedCount.get();
+	}
+
+	/**
+	 * Returns the total number of connections that have been rejected
+	 * so far because the listener was overloaded
+	 * @return The total number of rejected connections
+	 */
+	public int getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Returns the number of connections that can be handled at the same
+	 * time taking into account both the configured maximum number of
+	 * connections and the limits of the default thread pool. When idle
+	 * connections get parked they don't use threads, in which case the
+	 * thread pool doesn't limit the number of connections
+	 * @return The connection limit or -1 if there is none
+	 */
+	protected int getConnectionLimit() {
+		int limit = maxConnections;
+		if (executor instanceof BoundedExecutor && !parkIdleConnections) {
+			int poolLimit = maxThreads + queueSize;
+			if (limit <= 0 || poolLimit < limit) {
+				limit = poolLimit;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Creates the executor service that will be used when none was set
+	 * explicitly. It will never create more than <code>maxThreads</code>
+	 * threads and will let at most <code>queueSize</code> connections wait
+	 * @return A new executor service
+	 */
+	protected ExecutorService createExecutor() {
+		return createBoundedExecutor(maxThreads, queueSize);
+	}
+
+	/**
+	 * Creates a thread pool like the default one, for subclasses that
+	 * need another pool next to it
+	 * @param maxThreads The maximum number of threads
+	 * @param queueSize The maximum number of tasks waiting for a thread,
+	 * 0 meaning none can wait
+	 * @return A new executor service
+	 */
+	protected static ExecutorService createBoundedExecutor(int maxThreads, int queueSize) {
+		BlockingQueue<Runnable> queue;
+		if (queueSize > 0) {
+			queue = new ArrayBlockingQueue<Runnable>(queueSize);
+		} else {
+			queue = new SynchronousQueue<Runnable>();
+		}
+		return new BoundedExecutor(maxThreads, queue);
+	}
+
+	/**
+	 * Creates the default thread pool, if no executor was set, before
+	 * starting to listen for connections
+	 * @throws java.lang.Exception Gets throws when the socket could not be
+	 * set up properly
+	 */
+	@Override
+	public void start() throws Exception {
+		if (executor == null || executor.isShutdown()) {
+			executor = createExecutor();
+		}
+		super.start();
+	}
+
+	/**
+	 * Starts the idle connection manager, if idle connections should be
+	 * parked, once the listener's socket has been bound
+	 * @throws java.lang.Exception If the manager could not be started
+	 */
+	@Override
+	protected void onStartListening() throws Exception {
+		if (parkIdleConnections) {
+			idleManager = new IdleConnectionManager(String.valueOf(getPort()));
+			idleManager.start();
+		}
+	}
+
+	/**
+	 * Returns the time-out to use for a connection that gets parked.
+	 * When the adaptive time-out is enabled and the number of connections
+	 * gets above half of the maximum the time-out will get shorter and
+	 * shorter the closer the number gets to the maximum
+	 * @param timeout The time-out the protocol handler asked for
+	 * @return The time-out to use in milliseconds, 0 meaning forever
+	 */
+	protected int getIdleTimeout(int timeout) {
+		int limit = getConnectionLimit();
+		if (!adaptiveKeepAlive || timeout <= 0 || limit <= 0) {
+			return timeout;
+		}
+		double load = (double) connectedCount.get() / limit;
+		if (load <= ADAPTIVE_THRESHOLD) {
+			return timeout;
+		}
+		double factor = Math.max(0.0, (1.0 - load) / (1.0 - ADAPTIVE_THRESHOLD));
+		return Math.max(Math.min(timeout, ADAPTIVE_MIN_TIMEOUT), (int) (timeout * factor));
+	}
+
+	@Override
+	protected boolean isAccepting() {
+		if (overloadPolicy == OverloadPolicy.PAUSE) {
+			int limit = getConnectionLimit();
+			return limit <= 0 || connectedCount.get() < limit;
+		}
+		return true;
 	}
 
 	protected void onNewConnection(Socket socket) {
-		ProtocolHandler handler = new ProtocolHandlerWrapper(getProtocolHandler());
+		// Several acceptor threads might be calling us at the same time so
+		// we make sure never to overshoot the limit between check and update
+		int limit = getConnectionLimit();
+		int count;
+		do {
+			count = connectedCount.get();
+			if (limit > 0 && count >= limit) {
+				reject(socket);
+				return;
+			}
+		} while (!connectedCount.compareAndSet(count, count + 1));
+		connectionCount.incrementAndGet();
+		ProtocolHandlerWrapper handler = new ProtocolHandlerWrapper(getProtocolHandler());
 		handler.setSocket(socket);
-		executor.execute(handler);
+		connections.add(handler);
+		if (draining) {
+			// Accepted just before the listener stopped
+			handler.drain();
+		}
+		try {
+			executor.execute(handler);
+		} catch (RejectedExecutionException ex) {
+			connections.remove(handler);
+			connectedCount.decrementAndGet();
+			connectionCount.decrementAndGet();
+			reject(socket);
+		}
+	}
+
+	/**
+	 * Counts and rejects a connection
+	 * @param socket The connection to reject
+	 */
+	private void reject(Socket socket) {
+		rejectedCount.incrementAndGet();
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Overloaded, rejecting connection from " + socket.getInetAddress());
+		}
+		try {
+			onRejectedConnection(socket);
+		} catch (IOException ex) {
+			logger.log(Level.FINE, "Could not reject connection", ex);
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException ex) {
+				// Ignore
+			}
+		}
+	}
+
+	/**
+	 * This method will be called on an acceptor thread for each connection
+	 * that gets rejected because the listener is overloaded. It can be used
+	 * to send a short message to the client, but it must never block.
+	 * The socket will be closed afterwards. The default implementation
+	 * does nothing
+	 * @param socket The connection that is being rejected
+	 * @throws java.io.IOException If writing to the socket failed
+	 */
+	protected void onRejectedConnection(Socket socket) throws IOException {
 	}
 
 	/**
@@ -135,10 +571,69 @@ public abstract class ThreadedProtocolListener extends Listener {
 	 */
 	@Override
 	public void shutdown() {
-		executor.shutdownNow();
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		if (idleManager != null) {
+			idleManager.close();
+			idleManager = null;
+		}
 		super.stop();
 	}
 
+	/**
+	 * Stops accepting connections and asks the protocol handlers to end
+	 * their connections as soon as they're done with the current request
+	 */
+	@Override
+	public void drain() {
+		draining = true;
+		stop();
+		for (ProtocolHandlerWrapper connection : connections) {
+			connection.drain();
+		}
+	}
+
+	/**
+	 * Shuts down the listener gracefully. It stops accepting connections,
+	 * closes the connections that are waiting for a request and gives the
+	 * others until the time-out to finish the request they are handling.
+	 * Those that are still open after that are closed by force, after
+	 * which the listener is shut down the same way as <code>shutdown()</code>
+	 * does
+	 * @param timeout The maximum time in milliseconds to wait
+	 * @return The number of connections that ended by themselves and the
+	 * number that had to be closed
+	 */
+	@Override
+	public DrainReport shutdown(long timeout) {
+		drain();
+		long deadline = System.currentTimeMillis() + timeout;
+		boolean interrupted = false;
+		synchronized (connections) {
+			long remaining;
+			while (!connections.isEmpty() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+				try {
+					connections.wait(remaining);
+				} catch (InterruptedException ex) {
+					interrupted = true;
+					break;
+				}
+			}
+		}
+		ArrayList<ProtocolHandlerWrapper> remaining = new ArrayList<ProtocolHandlerWrapper>(connections);
+		DrainReport report = new DrainReport(drainedCount.get(), remaining.size());
+		for (ProtocolHandlerWrapper connection : remaining) {
+			connection.kill();
+		}
+		shutdown();
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		logger.info("Shut down listener on " + getAddress() + ":" + getPort() + ", " + report);
+		return report;
+	}
+
 	/**
 	 * This abstract method will be called for each connection that gets
 	 * accepted by this listener. It must return the protocol handler that
@@ -148,23 +643,76 @@ public abstract class ThreadedProtocolListener extends Listener {
 	 */
 	protected abstract ProtocolHandler getProtocolHandler();
 	
+	/**
+	 * The default thread pool. Idle threads will disappear after a while
+	 * so a listener that isn't busy doesn't hold on to any threads
+	 */
+	private static class BoundedExecutor extends ThreadPoolExecutor {
+
+		/**
+		 * Creates a new thread pool
+		 * @param maxThreads The maximum number of threads
+		 * @param queue The queue for tasks waiting for a thread
+		 */
+		public BoundedExecutor(int maxThreads, BlockingQueue<Runnable> queue) {
+			super(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, queue);
+			allowCoreThreadTimeOut(true);
+		}
+	}
+	
+	/**
+	 * Decrements the number of connected clients and wakes up the listener
+	 * if it had stopped accepting connections. While draining it wakes up
+	 * the thread that's waiting for the connections to end
+	 * @param connection The connection that ended
+	 */
+	private void connectionEnded(ProtocolHandlerWrapper connection) {
+		int count = connectedCount.decrementAndGet();
+		if (overloadPolicy == OverloadPolicy.PAUSE && count == getConnectionLimit() - 1) {
+			acceptingChanged();
+		}
+		if (connections.remove(connection) && draining) {
+			drainedCount.incrementAndGet();
+			synchronized (connections) {
+				connections.notifyAll();
+			}
+		}
+	}
+	
 	/**
 	 * Wrapper for any protocol handlers that makes sure that the listener's
-	 * <code>connectedCount</code> attribute is correct and up-to-date
+	 * <code>connectedCount</code> attribute is correct and up-to-date and
+	 * that parks the connection when the handler leaves it idle
 	 */
-	private class ProtocolHandlerWrapper implements ProtocolHandler {
+	private class ProtocolHandlerWrapper implements ProtocolHandler, IdleConnectionManager.IdleConnection {
 
 		/**
 		 * The wrapped protocol handler
 		 */
 		private ProtocolHandler handler;
 
+		/**
+		 * The socket of the connection
+		 */
+		private Socket socket;
+
 		/**
 		 * Creates a new wraper for the given handler
 		 * @param handler The protocol handler to wrap
 		 */
 		public ProtocolHandlerWrapper(ProtocolHandler handler) {
 			this.handler = handler;
+			if (handler instanceof ParkableProtocolHandler) {
+				((ParkableProtocolHandler) handler).setParkable(idleManager != null);
+				((ParkableProtocolHandler) handler).setResumeTrigger(new Runnable() {
+					public void run() {
+						IdleConnectionManager manager = idleManager;
+						if (manager != null) {
+							manager.wake(ProtocolHandlerWrapper.this);
+						}
+					}
+				});
+			}
 		}
 		
 		/**
@@ -172,27 +720,107 @@ public abstract class ThreadedProtocolListener extends Listener {
 		 * @param socket The socket to pass to the wrapepd handler
 		 */
 		public void setSocket(Socket socket) {
+			this.socket = socket;
 			handler.setSocket(socket);
 		}
 
+		public Socket getSocket() {
+			return socket;
+		}
+
 		/**
-		 * Besides calling <code>run()</code> on the wrapped handler
-		 * it makes sure to update the listener's <code>connectedCount</code>
-		 * and <code>connectionCount</code> attributes
+		 * Besides calling <code>run()</code> on the wrapped handler it makes
+		 * sure to update the listener's <code>connectedCount</code> attribute
+		 * and to wake up the listener if it had stopped accepting connections.
+		 * If the handler left the connection open it will be parked
 		 */
 		public void run() {
-			synchronized (executor) {
-    			connectionCount++;
-    			connectedCount++;
-			}
+			boolean parked = false;
 			try {
-                handler.run();
+				for (;;) {
+	                handler.run();
+					if (!(handler instanceof ParkableProtocolHandler)) {
+						break;
+					}
+					int timeout = ((ParkableProtocolHandler) handler).getIdleTimeout();
+					if (timeout < 0 || socket.isClosed()) {
+						break;
+					}
+					IdleConnectionManager manager = idleManager;
+					if (manager != null && manager.park(this, getIdleTimeout(timeout))) {
+						parked = true;
+						break;
+					}
+					// The connection couldn't be parked so we'll just
+					// let the handler wait for new data itself
+					((ParkableProtocolHandler) handler).setParkable(false);
+				}
 			} finally {
-                synchronized (executor) {
-                    connectedCount--;
-                }
+				if (!parked) {
+					closeSocket();
+					connectionEnded(this);
+				}
+			}
+		}
+
+		/**
+		 * Hands the connection back to the thread pool now that new
+		 * data has arrived. If the pool is full the connection will
+		 * be rejected just like a new connection would be
+		 */
+		public void resume() {
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException ex) {
+				reject(socket);
+				connectionEnded(this);
+			}
+		}
+
+		/**
+		 * Asks the handler if the connection should be handed back now
+		 * that it has been idle for too long
+		 * @return <code>true</code> if the connection should be handed back
+		 */
+		public boolean timedOut() {
+			return ((ParkableProtocolHandler) handler).idleTimeoutReached();
+		}
+
+		/**
+		 * Asks the handler to end the connection once it's done with the
+		 * current request, if it knows how
+		 */
+		public void drain() {
+			if (handler instanceof DrainableProtocolHandler) {
+				((DrainableProtocolHandler) handler).drain();
+			}
+		}
+
+		/**
+		 * Closes the connection by force, the thread handling it, or the
+		 * idle connection manager if it's parked, will notice soon enough
+		 */
+		public void kill() {
+			closeSocket();
+		}
+
+		/**
+		 * Closes the parked connection
+		 */
+		public void close() {
+			closeSocket();
+			connectionEnded(this);
+		}
+
+		/**
+		 * Closes the socket if that wasn't done already
+		 */
+		private void closeSocket() {
+			try {
+				socket.close();
+			} catch (IOException ex) {
+				// Ignore
 			}
 		}
-		
 	}
 }
@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.codejive.websrv.protocol.http.HttpRequest;
 import org.codejive.websrv.protocol.http.HttpResponse;
@@ -46,7 +47,9 @@ public class DefaultMimeTypeHandler implements MimeTypeHandler {
 	public void process(File resourceFile, HttpRequest request, HttpResponse response) throws IOException {
 		// Set the content length of the file we're about to send
         long fileSize = resourceFile.length();
-        logger.info("Content length " + fileSize + " bytes");
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Content length " + fileSize + " bytes");
+        }
         response.setHeader("Content-Length", String.valueOf(fileSize));
 		
         if (!"head".equalsIgnoreCase(request.getRequestMethod())) {
@@ -58,10 +61,12 @@ public class DefaultMimeTypeHandler implements MimeTypeHandler {
 		// Set the content length of the resource we're about to send
         int resourceSize = resourceUrl.openConnection().getContentLength();
 		if (resourceSize >= 0) {
-			logger.info("Content length " + resourceSize + " bytes");
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Content length " + resourceSize + " bytes");
+			}
 			response.setHeader("Content-Length", String.valueOf(resourceSize));
 		} else {
-			logger.info("Content length could not be determined");
+			logger.fine("Content length could not be determined");
 		}
 		
         if (!"head".equalsIgnoreCase(request.getRequestMethod())) {
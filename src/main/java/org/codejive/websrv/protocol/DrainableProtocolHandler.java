@@ -0,0 +1,44 @@
+/*
+ * DrainableProtocolHandler.java
+ *
+ * Created on Oct 19, 2026, 11:51:02 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol;
+
+/**
+ * Protocol handlers that implement this interface can be asked to end
+ * their connection as soon as that can be done without breaking off a
+ * request, which is used when a listener is being shut down gracefully.
+ * A handler that's handling a request finishes it, telling the client the
+ * connection will be closed if the protocol has a way of doing that, and
+ * then closes the connection. A handler that's waiting for the next request
+ * on a connection it already used closes it right away
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public interface DrainableProtocolHandler extends ProtocolHandler {
+
+	/**
+	 * Asks the handler to end its connection as soon as it isn't in the
+	 * middle of a request anymore. This method is called by another thread
+	 * than the one running the handler and must return right away
+	 */
+	public void drain();
+}
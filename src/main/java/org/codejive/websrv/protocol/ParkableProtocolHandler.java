@@ -0,0 +1,74 @@
+/*
+ * ParkableProtocolHandler.java
+ *
+ * Created on Oct 19, 2026, 1:40:15 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol;
+
+/**
+ * Protocol handlers that implement this interface can give up their thread
+ * while the connection is idle, for example while waiting for the next
+ * request on a keep-alive connection. Instead of waiting themselves they
+ * return from <code>run()</code> leaving the connection open, after which
+ * the listener will watch the connection and call <code>run()</code>
+ * again, possibly on another thread, as soon as new data arrives
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public interface ParkableProtocolHandler extends ProtocolHandler {
+
+	/**
+	 * Tells the handler if it is allowed to return from <code>run()</code>
+	 * while leaving an idle connection open. If not the handler must
+	 * wait for new data itself
+	 * @param parkable <code>true</code> if the handler can leave the
+	 * connection open
+	 */
+	public void setParkable(boolean parkable);
+
+	/**
+	 * Returns the state in which the last call to <code>run()</code> left
+	 * the connection
+	 * @return The time in milliseconds that the connection can remain idle
+	 * before it should be closed, 0 meaning forever, or -1 if the
+	 * connection was closed
+	 */
+	public int getIdleTimeout();
+
+	/**
+	 * Gives the handler the means to get its parked connection handed back
+	 * before new data arrives, for example because it has something to
+	 * send. Running the trigger makes the listener call <code>run()</code>
+	 * again as soon as possible. When the handler is about to be parked
+	 * it will be handed back right after
+	 * @param trigger The trigger, it can be run from any thread
+	 */
+	public void setResumeTrigger(Runnable trigger);
+
+	/**
+	 * Called when the connection has been parked for longer than the
+	 * time-out returned by <code>getIdleTimeout()</code>. This method is
+	 * called by the thread watching the parked connections so it should
+	 * return as quickly as possible
+	 * @return <code>true</code> if <code>run()</code> should be called again,
+	 * for example to send a keep-alive message, or <code>false</code> if
+	 * the connection should be closed
+	 */
+	public boolean idleTimeoutReached();
+}
@@ -0,0 +1,268 @@
+/*
+ * CacheSettings.java
+ *
+ * Created on Oct 19, 2026, 8:06:21 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the settings for a response cache. They determine how long
+ * responses are kept when they don't say so themselves, how much memory
+ * the cache may use and which request headers are taken into account
+ * when looking up a response
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class CacheSettings {
+
+	/**
+	 * The time in milliseconds a response stays fresh when it has no
+	 * "max-age" of its own, 0 means such responses aren't cached
+	 * (default = 1000)
+	 */
+	private int defaultTtl;
+
+	/**
+	 * The time in milliseconds a response can still be used after it
+	 * stopped being fresh while a new one is being generated, when it
+	 * has no "stale-while-revalidate" of its own (default = 10000)
+	 */
+	private int staleTime;
+
+	/**
+	 * The maximum number of bytes all cached responses together may
+	 * take up (default = 67108864)
+	 */
+	private long maxSize;
+
+	/**
+	 * The maximum size in bytes of the body of a single response, larger
+	 * ones are sent to the client directly and aren't cached
+	 * (default = 1048576)
+	 */
+	private int maxEntrySize;
+
+	/**
+	 * The time in milliseconds a request waits for another request that
+	 * is already generating the same response (default = 5000)
+	 */
+	private int coalesceTimeout;
+
+	/**
+	 * The maximum number of stale responses that are being generated
+	 * anew at the same time (default = 4)
+	 */
+	private int maxRevalidations;
+
+	/**
+	 * The way entries are selected for removal when the cache is full
+	 * (default = LRU)
+	 */
+	private Eviction eviction;
+
+	/**
+	 * The request headers responses may vary on
+	 * (default = Accept-Encoding)
+	 */
+	private final List<String> varyHeaders;
+
+	/**
+	 * Creates a new instance using the default settings
+	 */
+	public CacheSettings() {
+		defaultTtl = 1000;
+		staleTime = 10000;
+		maxSize = 64L * 1024 * 1024;
+		maxEntrySize = 1024 * 1024;
+		coalesceTimeout = 5000;
+		maxRevalidations = 4;
+		eviction = Eviction.LRU;
+		varyHeaders = new ArrayList<String>();
+		varyHeaders.add("Accept-Encoding");
+	}
+
+	/**
+	 * Returns the time a response stays fresh when it has no "max-age"
+	 * of its own
+	 * @return The time in milliseconds, 0 meaning such responses
+	 * aren't cached
+	 */
+	public int getDefaultTtl() {
+		return defaultTtl;
+	}
+
+	/**
+	 * Sets the time a response stays fresh when it has no "max-age" of
+	 * its own. Even a very short time, like the default of one second,
+	 * means a page that's getting hammered only gets generated once
+	 * every so often
+	 * @param defaultTtl The time in milliseconds, 0 meaning such
+	 * responses aren't cached
+	 */
+	public void setDefaultTtl(int defaultTtl) {
+		if (defaultTtl < 0) {
+			throw new IllegalArgumentException("defaultTtl must not be negative");
+		}
+		this.defaultTtl = defaultTtl;
+	}
+
+	/**
+	 * Returns the time a response can still be used after it stopped
+	 * being fresh, when it has no "stale-while-revalidate" of its own
+	 * @return The time in milliseconds
+	 */
+	public int getStaleTime() {
+		return staleTime;
+	}
+
+	/**
+	 * Sets the time a response can still be used after it stopped being
+	 * fresh. During that time clients get the old response right away
+	 * while one of them generates a new one, 0 means stale responses are
+	 * never used
+	 * @param staleTime The time in milliseconds
+	 */
+	public void setStaleTime(int staleTime) {
+		if (staleTime < 0) {
+			throw new IllegalArgumentException("staleTime must not be negative");
+		}
+		this.staleTime = staleTime;
+	}
+
+	/**
+	 * Returns the maximum number of bytes all cached responses together
+	 * may take up
+	 * @return The size in bytes
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Sets the maximum number of bytes all cached responses together may
+	 * take up. When adding a response would go over this limit other
+	 * responses are removed first
+	 * @param maxSize The size in bytes
+	 */
+	public void setMaxSize(long maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be larger than 0");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the maximum size of the body of a single response
+	 * @return The size in bytes
+	 */
+	public int getMaxEntrySize() {
+		return maxEntrySize;
+	}
+
+	/**
+	 * Sets the maximum size of the body of a single response. Responses
+	 * are held in memory until they are complete, as soon as one turns out
+	 * to be larger it is sent on to the client directly and isn't cached
+	 * @param maxEntrySize The size in bytes
+	 */
+	public void setMaxEntrySize(int maxEntrySize) {
+		if (maxEntrySize <= 0) {
+			throw new IllegalArgumentException("maxEntrySize must be larger than 0");
+		}
+		this.maxEntrySize = maxEntrySize;
+	}
+
+	/**
+	 * Returns the time a request waits for another request that is
+	 * already generating the same response
+	 * @return The time in milliseconds
+	 */
+	public int getCoalesceTimeout() {
+		return coalesceTimeout;
+	}
+
+	/**
+	 * Sets the time a request waits for another request that is already
+	 * generating the same response. When it runs out, or when the response
+	 * turns out not to be cacheable, the request generates its own
+	 * @param coalesceTimeout The time in milliseconds
+	 */
+	public void setCoalesceTimeout(int coalesceTimeout) {
+		if (coalesceTimeout < 0) {
+			throw new IllegalArgumentException("coalesceTimeout must not be negative");
+		}
+		this.coalesceTimeout = coalesceTimeout;
+	}
+
+	/**
+	 * Returns the maximum number of stale responses that are being
+	 * generated anew at the same time
+	 * @return The maximum number of revalidations
+	 */
+	public int getMaxRevalidations() {
+		return maxRevalidations;
+	}
+
+	/**
+	 * Sets the maximum number of stale responses that are being generated
+	 * anew at the same time. Stale responses that are found while that
+	 * many are already being generated are simply used as they are, a
+	 * later request will generate them instead
+	 * @param maxRevalidations The maximum number of revalidations
+	 */
+	public void setMaxRevalidations(int maxRevalidations) {
+		if (maxRevalidations <= 0) {
+			throw new IllegalArgumentException("maxRevalidations must be positive");
+		}
+		this.maxRevalidations = maxRevalidations;
+	}
+
+	/**
+	 * Returns the way entries are selected for removal when the cache is full
+	 * @return The eviction method
+	 */
+	public Eviction getEviction() {
+		return eviction;
+	}
+
+	/**
+	 * Sets the way entries are selected for removal when the cache is full
+	 * @param eviction The eviction method
+	 */
+	public void setEviction(Eviction eviction) {
+		if (eviction == null) {
+			throw new IllegalArgumentException("eviction must not be null");
+		}
+		this.eviction = eviction;
+	}
+
+	/**
+	 * Returns the request headers responses may vary on. Their values
+	 * are part of the key a response is cached under, responses with a
+	 * "Vary" header that names any other header aren't cached
+	 * @return The list of header names
+	 */
+	public List<String> getVaryHeaders() {
+		return varyHeaders;
+	}
+}
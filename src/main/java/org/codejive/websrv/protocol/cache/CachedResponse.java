@@ -0,0 +1,203 @@
+/*
+ * CachedResponse.java
+ *
+ * Created on Oct 19, 2026, 8:09:47 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.cache;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+
+/**
+ * A complete response kept in a cache. Apart from the number of times it
+ * was used its contents never change, so it can be sent to any number of
+ * clients at the same time
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public final class CachedResponse {
+
+	/**
+	 * The response code
+	 */
+	private final HttpResponseCode responseCode;
+
+	/**
+	 * The response headers
+	 */
+	private final HttpHeaders headers;
+
+	/**
+	 * The response body
+	 */
+	private final byte[] body;
+
+	/**
+	 * The time the response was generated
+	 */
+	private final long created;
+
+	/**
+	 * The time until which the response is fresh
+	 */
+	private final long freshUntil;
+
+	/**
+	 * The time until which the response can be used while a new one is
+	 * being generated
+	 */
+	private final long staleUntil;
+
+	/**
+	 * Indicates that a new version of the response is being generated
+	 */
+	private final AtomicBoolean revalidating;
+
+	/**
+	 * The number of times the response was taken from the cache
+	 */
+	private int hits;
+
+	/**
+	 * The rough number of bytes of overhead per entry, on top of the
+	 * headers and the body
+	 */
+	private static final int ENTRY_OVERHEAD = 256;
+
+	/**
+	 * Creates a new cached response
+	 * @param responseCode The response code
+	 * @param headers The response headers, they must not be changed afterwards
+	 * @param body The response body, it must not be changed afterwards
+	 * @param created The time the response was generated
+	 * @param ttl The time in milliseconds the response stays fresh
+	 * @param staleTime The time in milliseconds the response can still
+	 * be used after it stopped being fresh
+	 */
+	public CachedResponse(HttpResponseCode responseCode, HttpHeaders headers, byte[] body, long created, long ttl, long staleTime) {
+		this.responseCode = responseCode;
+		this.headers = headers;
+		this.body = body;
+		this.created = created;
+		freshUntil = created + ttl;
+		staleUntil = freshUntil + staleTime;
+		revalidating = new AtomicBoolean();
+	}
+
+	/**
+	 * Returns the response code
+	 * @return The response code
+	 */
+	public HttpResponseCode getResponseCode() {
+		return responseCode;
+	}
+
+	/**
+	 * Returns the response headers, they must not be changed
+	 * @return The response headers
+	 */
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Returns the response body, it must not be changed
+	 * @return The response body
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * Returns the time the response was generated
+	 * @return The time in milliseconds
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Determines if the response is still fresh
+	 * @param now The current time
+	 * @return <code>true</code> if the response can be used as is
+	 */
+	public boolean isFresh(long now) {
+		return now < freshUntil;
+	}
+
+	/**
+	 * Determines if the response can still be used, either because it's
+	 * fresh or because it's stale but a new one can be generated meanwhile
+	 * @param now The current time
+	 * @return <code>true</code> if the response can be used
+	 */
+	public boolean isUsable(long now) {
+		return now < staleUntil;
+	}
+
+	/**
+	 * Marks the start of the generation of a new version of the response.
+	 * Only the first caller gets to do that
+	 * @return <code>true</code> if the caller should generate the new version
+	 */
+	public boolean startRevalidation() {
+		return revalidating.compareAndSet(false, true);
+	}
+
+	/**
+	 * Marks the end of a failed attempt to generate a new version of the
+	 * response, so somebody else can try
+	 */
+	public void cancelRevalidation() {
+		revalidating.set(false);
+	}
+
+	/**
+	 * Returns the approximate number of bytes of memory the response uses
+	 * @return The size in bytes
+	 */
+	public long getSize() {
+		long size = ENTRY_OVERHEAD + body.length;
+		for (int i = 0; i < headers.size(); i++) {
+			size += 2 * (headers.getName(i).length() + headers.getValue(i).length());
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the number of times the response was taken from the cache.
+	 * Must only be called while holding the lock of the cache
+	 * @return The number of hits
+	 */
+	int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Counts another time the response was taken from the cache.
+	 * Must only be called while holding the lock of the cache
+	 */
+	void hit() {
+		if (hits < Integer.MAX_VALUE) {
+			hits++;
+		}
+	}
+}
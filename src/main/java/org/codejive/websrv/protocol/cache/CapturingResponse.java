@@ -0,0 +1,487 @@
+/*
+ * CapturingResponse.java
+ *
+ * Created on Oct 19, 2026, 8:21:33 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.codejive.websrv.protocol.http.ConnectionUpgrade;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.PrematureEOFException;
+
+/**
+ * A response that keeps everything that gets written to it in memory so
+ * it can be cached. Nothing is sent to the client until the response is
+ * complete, unless it turns out to be too large or to want to take over
+ * the connection. In that case everything is passed on to the actual
+ * response (this is called "spilling") and the response can't be cached
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class CapturingResponse implements HttpResponse {
+
+	/**
+	 * The actual response or null if there is none
+	 */
+	private final HttpResponse target;
+
+	/**
+	 * The maximum size of the body that will be kept in memory
+	 */
+	private final int maxSize;
+
+	/**
+	 * The response code
+	 */
+	private HttpResponseCode responseCode;
+
+	/**
+	 * The response headers
+	 */
+	private final HttpHeaders headers;
+
+	/**
+	 * The size of the buffer as requested by the user of this object
+	 */
+	private int bufferSize;
+
+	/**
+	 * The stream that captures the body
+	 */
+	private CaptureOutputStream output;
+
+	/**
+	 * The print writer (wrapper) that users of this object can use to write data to
+	 */
+	private PrintWriter writer;
+
+	/**
+	 * Indicates that everything is being passed on to the actual response
+	 */
+	private boolean spilled;
+
+	/**
+	 * Indicates that the body got too large and there was no actual
+	 * response to pass it on to
+	 */
+	private boolean overflowed;
+
+	/**
+	 * The headers of the actual response that aren't taken over
+	 */
+	private static final Set<String> SKIPPED_HEADERS = new HashSet<String>(Arrays.asList("connection"));
+
+	/**
+	 * Creates a new instance that starts out with the response code and
+	 * the headers of the actual response
+	 * @param target The actual response or null if there is none, in which
+	 * case bodies that are too large are simply cut off
+	 * @param maxSize The maximum size of the body that will be kept in memory
+	 */
+	public CapturingResponse(HttpResponse target, int maxSize) {
+		this.target = target;
+		this.maxSize = maxSize;
+		responseCode = HttpResponseCode.CODE_OK;
+		headers = new HttpHeaders();
+		bufferSize = 8192;
+		if (target != null) {
+			responseCode = target.getResponseCode();
+			for (String name : target.getHeaderNames()) {
+				if (!SKIPPED_HEADERS.contains(name.toLowerCase())) {
+					headers.set(name, target.getHeader(name));
+				}
+			}
+		} else {
+			headers.set("Content-Type", "text/plain; charset=UTF-8");
+		}
+	}
+
+	/**
+	 * Determines if the response was passed on to the actual response
+	 * @return <code>true</code> if the response was spilled
+	 */
+	public synchronized boolean isSpilled() {
+		return spilled;
+	}
+
+	/**
+	 * Determines if the captured response is complete. This is the case
+	 * unless it was spilled or if it got too large
+	 * @return <code>true</code> if the response was captured completely
+	 */
+	public synchronized boolean isComplete() {
+		return !spilled && !overflowed;
+	}
+
+	/**
+	 * Returns the captured headers, they are only valid if the response
+	 * wasn't spilled
+	 * @return The response headers
+	 */
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Must be called when the response is complete. Writes whatever the
+	 * writer was still holding on to, which might still cause the
+	 * response to spill
+	 * @throws java.io.IOException If the data could not be written
+	 */
+	public void finish() throws IOException {
+		PrintWriter w;
+		synchronized (this) {
+			w = writer;
+		}
+		if (w != null) {
+			w.flush();
+		}
+		getOutputStream().flush();
+	}
+
+	/**
+	 * Returns the captured body, which is only valid if the response is
+	 * complete
+	 * @return The body
+	 */
+	public synchronized byte[] getBody() {
+		return (output != null) ? Arrays.copyOf(output.buf, output.count) : new byte[0];
+	}
+
+	/**
+	 * Passes everything that was captured so far on to the actual response,
+	 * everything that comes after is passed on directly
+	 * @throws java.io.IOException If the captured body could not be written
+	 */
+	private synchronized void spill() throws IOException {
+		if (spilled) {
+			return;
+		}
+		spilled = true;
+		target.setResponseCode(responseCode);
+		Set<String> done = new HashSet<String>();
+		for (int i = 0; i < headers.size(); i++) {
+			String name = headers.getName(i);
+			if (done.add(name.toLowerCase())) {
+				target.setHeader(name, headers.getValue(i));
+			} else {
+				target.addHeader(name, headers.getValue(i));
+			}
+		}
+		if (output != null && output.count > 0) {
+			target.getOutputStream().write(output.buf, 0, output.count);
+		}
+		if (output != null) {
+			output.buf = null;
+			output.count = 0;
+		}
+	}
+
+	public synchronized HttpResponseCode getResponseCode() {
+		return spilled ? target.getResponseCode() : responseCode;
+	}
+
+	public synchronized void setResponseCode(HttpResponseCode responseCode) {
+		if (spilled) {
+			target.setResponseCode(responseCode);
+		} else {
+			this.responseCode = responseCode;
+		}
+	}
+
+	public synchronized String getContentType() {
+		return spilled ? target.getContentType() : getContentTypePart(false);
+	}
+
+	public synchronized void setContentType(String contentType) {
+		if (spilled) {
+			target.setContentType(contentType);
+		} else {
+			updateContentType(contentType, getCharacterEncoding());
+		}
+	}
+
+	public synchronized String getCharacterEncoding() {
+		return spilled ? target.getCharacterEncoding() : getContentTypePart(true);
+	}
+
+	public synchronized void setCharacterEncoding(String characterEncoding) {
+		if (spilled) {
+			target.setCharacterEncoding(characterEncoding);
+		} else {
+			updateContentType(getContentType(), characterEncoding);
+		}
+	}
+
+	public synchronized String getHeader(String key) {
+		return spilled ? target.getHeader(key) : headers.get(key);
+	}
+
+	public synchronized void setHeader(String key, String value) {
+		if (spilled) {
+			target.setHeader(key, value);
+		} else {
+			headers.set(key, value);
+		}
+	}
+
+	public synchronized void addHeader(String key, String value) {
+		if (spilled) {
+			target.addHeader(key, value);
+		} else {
+			headers.add(key, value);
+		}
+	}
+
+	public synchronized void removeHeader(String key) {
+		if (spilled) {
+			target.removeHeader(key);
+		} else {
+			headers.remove(key);
+		}
+	}
+
+	public synchronized Set<String> getHeaderNames() {
+		return spilled ? target.getHeaderNames() : headers.getNames();
+	}
+
+	public synchronized int getBufferSize() {
+		return spilled ? target.getBufferSize() : bufferSize;
+	}
+
+	public synchronized void setBufferSize(int bufferSize) {
+		if (spilled) {
+			target.setBufferSize(bufferSize);
+		} else {
+			this.bufferSize = bufferSize;
+		}
+	}
+
+	public synchronized OutputStream getOutputStream() {
+		if (output == null) {
+			output = new CaptureOutputStream();
+		}
+		return output;
+	}
+
+	public synchronized PrintWriter getWriter() {
+		if (writer == null) {
+			try {
+				writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+			} catch (UnsupportedEncodingException ex) {
+				writer = new PrintWriter(new OutputStreamWriter(getOutputStream()));
+			}
+		}
+		return writer;
+	}
+
+	/**
+	 * Nothing is committed until the response gets spilled, up to that
+	 * moment everything can still be changed
+	 * @return <code>true</code> if the actual response was committed
+	 */
+	public synchronized boolean isCommitted() {
+		return spilled && target.isCommitted();
+	}
+
+	public synchronized void reset() {
+		if (spilled) {
+			target.reset();
+		} else if (output != null) {
+			output.count = 0;
+			overflowed = false;
+		}
+	}
+
+	public void sendError(HttpResponseCode resultCode, String message) throws IOException {
+		synchronized (this) {
+			if (spilled) {
+				target.sendError(resultCode, message);
+			}
+			reset();
+			responseCode = resultCode;
+			updateContentType("text/plain", "UTF-8");
+		}
+		PrintWriter out = getWriter();
+		out.print(resultCode.getCode() + " " + resultCode.getMessage() + "\n\n" + message);
+		out.flush();
+
+		// Ugly way to interrupt to normal program flow but it works
+		throw new PrematureEOFException();
+	}
+
+	public void sendRedirect(String url) throws IOException {
+		synchronized (this) {
+			if (spilled) {
+				target.sendRedirect(url);
+			}
+			reset();
+			responseCode = HttpResponseCode.CODE_TEMPORARY_REDIRECT;
+			updateContentType(getContentType(), "UTF-8");
+			headers.set("Location", url);
+		}
+		PrintWriter out = getWriter();
+		out.print("\r\n");
+		out.flush();
+
+		// Ugly way to interrupt to normal program flow but it works
+		throw new PrematureEOFException();
+	}
+
+	public synchronized ConnectionUpgrade getUpgrade() {
+		return spilled ? target.getUpgrade() : null;
+	}
+
+	/**
+	 * Responses that take over the connection can't be cached, so the
+	 * response is spilled before the upgrade is passed on
+	 * @param upgrade The upgrade to pass on
+	 */
+	public synchronized void setUpgrade(ConnectionUpgrade upgrade) {
+		if (target == null) {
+			throw new IllegalStateException("A response that's being cached can't switch protocols");
+		}
+		try {
+			spill();
+		} catch (IOException ex) {
+			throw new IllegalStateException("Could not pass on the response", ex);
+		}
+		target.setUpgrade(upgrade);
+	}
+
+	/**
+	 * Returns the mime type or the character encoding from the
+	 * "Content-Type" header
+	 * @param encoding <code>true</code> to return the character encoding
+	 * @return The requested part of the header or an empty string
+	 */
+	private String getContentTypePart(boolean encoding) {
+		String typeAndEncodingText = headers.get("Content-Type");
+		if (typeAndEncodingText == null || typeAndEncodingText.length() == 0) {
+			return "";
+		}
+		int semi = typeAndEncodingText.indexOf(';');
+		if (!encoding) {
+			return ((semi < 0) ? typeAndEncodingText : typeAndEncodingText.substring(0, semi)).trim();
+		}
+		if (semi >= 0) {
+			String charset = typeAndEncodingText.substring(semi + 1);
+			int eq = charset.indexOf('=');
+			if (eq > 0 && charset.substring(0, eq).trim().equalsIgnoreCase("charset")) {
+				return charset.substring(eq + 1).trim();
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Update the value of the response header "Content-Type"
+	 * @param contentType The mime type
+	 * @param characterEncoding The character encoding or an empty string
+	 */
+	private void updateContentType(String contentType, String characterEncoding) {
+		String typeAndEncoding = contentType;
+		if (characterEncoding.length() > 0) {
+			typeAndEncoding += "; charset=" + characterEncoding;
+		}
+		headers.set("Content-Type", typeAndEncoding);
+	}
+
+	/**
+	 * Keeps the body in a growing buffer until it gets too large, after
+	 * that it either passes everything on to the actual response or, if
+	 * there is none, throws it away
+	 */
+	private class CaptureOutputStream extends OutputStream {
+
+		/**
+		 * The captured data
+		 */
+		private byte[] buf;
+
+		/**
+		 * The number of bytes captured
+		 */
+		private int count;
+
+		/**
+		 * Creates a new stream
+		 */
+		public CaptureOutputStream() {
+			buf = new byte[Math.min(bufferSize, maxSize)];
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			synchronized (CapturingResponse.this) {
+				if (!spilled && !overflowed && count + len > maxSize) {
+					if (target != null) {
+						spill();
+					} else {
+						overflowed = true;
+					}
+				}
+				if (spilled) {
+					target.getOutputStream().write(b, off, len);
+				} else if (!overflowed) {
+					if (count + len > buf.length) {
+						buf = Arrays.copyOf(buf, Math.min(maxSize, Math.max(count + len, buf.length * 2)));
+					}
+					System.arraycopy(b, off, buf, count, len);
+					count += len;
+				}
+			}
+		}
+
+		/**
+		 * Only has effect once the response was spilled, before that
+		 * everything is kept until the response is complete
+		 * @throws java.io.IOException If the data could not be written
+		 */
+		@Override
+		public void flush() throws IOException {
+			synchronized (CapturingResponse.this) {
+				if (spilled) {
+					target.getOutputStream().flush();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
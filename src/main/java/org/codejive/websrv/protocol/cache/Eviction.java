@@ -0,0 +1,41 @@
+/*
+ * Eviction.java
+ *
+ * Created on Oct 19, 2026, 8:04:40 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.cache;
+
+/**
+ * The ways a cache can decide which entries to throw out when it's full
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public enum Eviction {
+	/**
+	 * The entry that was used least recently goes first
+	 */
+	LRU,
+	/**
+	 * Of the entries that were used least recently the one that was used
+	 * least often goes first, so popular entries survive a burst of
+	 * requests for pages that are only asked for once
+	 */
+	LFU
+}
@@ -0,0 +1,252 @@
+/*
+ * ResponseCache.java
+ *
+ * Created on Oct 19, 2026, 8:14:05 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the cached responses. The cache has a fixed memory budget, when
+ * adding a response would take it over the budget other responses are
+ * thrown out first. Responses that can't be used anymore are removed as
+ * soon as somebody asks for them. The cache can be shared by any number
+ * of servlets
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class ResponseCache {
+
+	/**
+	 * The settings of the cache
+	 */
+	private final CacheSettings settings;
+
+	/**
+	 * The cached responses in order of use, the least recently used first
+	 */
+	private final LinkedHashMap<String, CachedResponse> entries;
+
+	/**
+	 * The number of bytes taken up by the cached responses
+	 */
+	private long size;
+
+	/**
+	 * The number of requests answered with a fresh response
+	 */
+	private long hitCount;
+
+	/**
+	 * The number of requests answered with a stale response
+	 */
+	private long staleCount;
+
+	/**
+	 * The number of requests for which no usable response was found
+	 */
+	private long missCount;
+
+	/**
+	 * The number of responses thrown out to make room for others
+	 */
+	private long evictedCount;
+
+	/**
+	 * The number of least recently used entries that are compared
+	 * when looking for the least frequently used one
+	 */
+	private static final int LFU_SAMPLE_SIZE = 8;
+
+	/**
+	 * Creates a new cache using the default settings
+	 */
+	public ResponseCache() {
+		this(new CacheSettings());
+	}
+
+	/**
+	 * Creates a new cache using the given settings
+	 * @param settings The settings of the cache
+	 */
+	public ResponseCache(CacheSettings settings) {
+		this.settings = settings;
+		entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns the settings of the cache
+	 * @return The cache settings
+	 */
+	public CacheSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Returns the response cached under the given key if it can still be
+	 * used. The caller should check if the response is fresh or stale
+	 * @param key The key of the response
+	 * @param now The current time
+	 * @return The response or null if there is no usable one
+	 */
+	public synchronized CachedResponse get(String key, long now) {
+		CachedResponse entry = entries.get(key);
+		if (entry != null && !entry.isUsable(now)) {
+			remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			missCount++;
+		} else {
+			entry.hit();
+			if (entry.isFresh(now)) {
+				hitCount++;
+			} else {
+				staleCount++;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Stores a response in the cache, replacing the one that was there
+	 * before. Other responses are thrown out if there isn't enough room
+	 * @param key The key of the response
+	 * @param entry The response
+	 */
+	public synchronized void put(String key, CachedResponse entry) {
+		long entrySize = entry.getSize();
+		if (entrySize > settings.getMaxSize()) {
+			remove(key);
+			return;
+		}
+		CachedResponse old = entries.put(key, entry);
+		if (old != null) {
+			size -= old.getSize();
+		}
+		size += entrySize;
+		while (size > settings.getMaxSize()) {
+			String victim = selectVictim(key);
+			if (victim == null) {
+				break;
+			}
+			remove(victim);
+			evictedCount++;
+		}
+	}
+
+	/**
+	 * Removes the response cached under the given key, if any
+	 * @param key The key of the response
+	 */
+	public synchronized void remove(String key) {
+		CachedResponse old = entries.remove(key);
+		if (old != null) {
+			size -= old.getSize();
+		}
+	}
+
+	/**
+	 * Removes all responses
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Returns the key of the entry to throw out next according to the
+	 * eviction method. For LFU only a handful of the least recently used
+	 * entries are considered, that way popular entries stay while those
+	 * that were popular a long time ago eventually go
+	 * @param keep The key of the entry that must not be selected
+	 * @return The key of the entry to throw out or null if there is none
+	 */
+	private String selectVictim(String keep) {
+		String victim = null;
+		int victimHits = Integer.MAX_VALUE;
+		int sampled = 0;
+		int sampleSize = (settings.getEviction() == Eviction.LFU) ? LFU_SAMPLE_SIZE : 1;
+		Iterator<Map.Entry<String, CachedResponse>> iter = entries.entrySet().iterator();
+		while (iter.hasNext() && sampled < sampleSize) {
+			Map.Entry<String, CachedResponse> entry = iter.next();
+			if (!entry.getKey().equals(keep)) {
+				sampled++;
+				if (entry.getValue().getHits() < victimHits) {
+					victim = entry.getKey();
+					victimHits = entry.getValue().getHits();
+				}
+			}
+		}
+		return victim;
+	}
+
+	/**
+	 * Returns the number of cached responses
+	 * @return The number of responses
+	 */
+	public synchronized int getCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of bytes taken up by the cached responses
+	 * @return The size in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of requests answered with a fresh response
+	 * @return The number of requests
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of requests answered with a stale response
+	 * while a new one was being generated
+	 * @return The number of requests
+	 */
+	public synchronized long getStaleCount() {
+		return staleCount;
+	}
+
+	/**
+	 * Returns the number of requests for which no usable response was found
+	 * @return The number of requests
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the number of responses thrown out to make room for others
+	 * @return The number of responses
+	 */
+	public synchronized long getEvictedCount() {
+		return evictedCount;
+	}
+}
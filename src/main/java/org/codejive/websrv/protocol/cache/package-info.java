@@ -0,0 +1,33 @@
+/*
+ * package-info.java
+ *
+ * Created on Oct 19, 2026, 8:03:12 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * Contains the response cache. A CachingServlet wraps another servlet and
+ * keeps complete copies of its responses in a ResponseCache, so a page
+ * that gets requested many times in a short period only has to be
+ * generated once. Stale copies can be served while a fresh one is being
+ * generated, and clients asking for the same missing page at the same time
+ * all wait for a single copy to be generated
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+package org.codejive.websrv.protocol.cache;
@@ -0,0 +1,189 @@
+/*
+ * Event.java
+ *
+ * Created on Oct 19, 2026, 6:09:51 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.eventstream;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A single event in an event stream. The event is encoded as soon as it's
+ * created, in a form that can be sent as is as a chunk of a chunked
+ * response body, so broadcasting it to any number of subscribers doesn't
+ * require any further work. Instances are immutable
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public final class Event {
+
+	/**
+	 * The charset event streams are always encoded in
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The encoded event surrounded by the chunk framing
+	 */
+	private final byte[] chunk;
+
+	/**
+	 * The offset of the encoded event within the chunk
+	 */
+	private final int offset;
+
+	/**
+	 * The length of the encoded event
+	 */
+	private final int length;
+
+	/**
+	 * Creates a new unnamed event without an id
+	 * @param data The data of the event, it can contain multiple lines
+	 */
+	public Event(String data) {
+		this(null, null, data);
+	}
+
+	/**
+	 * Creates a new event
+	 * @param name The name of the event or null for a "message" event
+	 * @param id The id of the event or null if it has none. Clients send
+	 * the id of the last event they received when they reconnect
+	 * @param data The data of the event, it can contain multiple lines
+	 */
+	public Event(String name, String id, String data) {
+		this(encode(name, id, data).getBytes(UTF8));
+	}
+
+	/**
+	 * Creates a new event from its encoded form
+	 * @param bytes The encoded event including the empty line that ends it
+	 */
+	private Event(byte[] bytes) {
+		String size = Integer.toHexString(bytes.length);
+		offset = size.length() + 2;
+		length = bytes.length;
+		chunk = new byte[offset + length + 2];
+		for (int i = 0; i < size.length(); i++) {
+			chunk[i] = (byte) size.charAt(i);
+		}
+		chunk[offset - 2] = '\r';
+		chunk[offset - 1] = '\n';
+		System.arraycopy(bytes, 0, chunk, offset, length);
+		chunk[offset + length] = '\r';
+		chunk[offset + length + 1] = '\n';
+	}
+
+	/**
+	 * Creates a comment, which clients ignore. Sending one now and then
+	 * keeps connections from being closed by proxies for being idle
+	 * @param text The text of the comment, it must fit on a single line
+	 * @return The comment
+	 */
+	public static Event comment(String text) {
+		checkLine("comment", text);
+		return new Event((":" + text + "\n\n").getBytes(UTF8));
+	}
+
+	/**
+	 * Creates an event that tells clients how long to wait before trying
+	 * to reconnect when they lose the connection
+	 * @param delay The time in milliseconds
+	 * @return The event
+	 */
+	public static Event retry(long delay) {
+		if (delay < 0) {
+			throw new IllegalArgumentException("delay must not be negative");
+		}
+		return new Event(("retry:" + delay + "\n\n").getBytes(UTF8));
+	}
+
+	/**
+	 * Encodes an event
+	 * @param name The name of the event or null
+	 * @param id The id of the event or null
+	 * @param data The data of the event
+	 * @return The encoded event
+	 */
+	private static String encode(String name, String id, String data) {
+		StringBuilder text = new StringBuilder(data.length() + 32);
+		if (name != null) {
+			checkLine("name", name);
+			text.append("event:").append(name).append('\n');
+		}
+		if (id != null) {
+			checkLine("id", id);
+			if (id.indexOf('\0') >= 0) {
+				throw new IllegalArgumentException("id must not contain NUL characters");
+			}
+			text.append("id:").append(id).append('\n');
+		}
+		// Each line of the data gets its own field, whatever the line ending
+		int start = 0;
+		int len = data.length();
+		for (int i = 0; i <= len; i++) {
+			char c = (i < len) ? data.charAt(i) : '\n';
+			if (c == '\r' || c == '\n') {
+				text.append("data:").append(data, start, i).append('\n');
+				if (c == '\r' && i + 1 < len && data.charAt(i + 1) == '\n') {
+					i++;
+				}
+				start = i + 1;
+			}
+		}
+		text.append('\n');
+		return text.toString();
+	}
+
+	/**
+	 * Makes sure a field value doesn't contain any line breaks
+	 * @param field The name of the field, used in the exception message
+	 * @param value The value to check
+	 */
+	private static void checkLine(String field, String value) {
+		if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException(field + " must not contain line breaks");
+		}
+	}
+
+	/**
+	 * Returns the size of the encoded event
+	 * @return The size in bytes
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns a new buffer holding the encoded event. The buffers share
+	 * the event's data so they must never be written to
+	 * @param chunked Indicates if the event should be framed as a chunk
+	 * @return The buffer
+	 */
+	ByteBuffer getBuffer(boolean chunked) {
+		if (chunked) {
+			return ByteBuffer.wrap(chunk);
+		} else {
+			return ByteBuffer.wrap(chunk, offset, length);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * EventBroadcaster.java
+ *
+ * Created on Oct 19, 2026, 6:18:44 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.eventstream;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.codejive.websrv.protocol.http.HttpRequest;
+
+/**
+ * Sends events to all clients subscribed to an event stream. Each event
+ * is encoded once and the same immutable data is passed on to all the
+ * subscribers. Subscribers that don't keep up with the events get
+ * evicted once too much is waiting to be sent to them. A single thread
+ * sends heartbeats to subscribers that haven't been sent anything for a
+ * while, so their connections don't get closed by proxies and clients
+ * that went away get noticed
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class EventBroadcaster {
+
+	/**
+	 * The event sent as heartbeat
+	 */
+	private static final Event HEARTBEAT = Event.comment("");
+
+	/**
+	 * The current subscribers
+	 */
+	private final Set<EventStreamConnection> subscribers;
+
+	/**
+	 * The maximum number of bytes that can be waiting to be sent to a
+	 * single subscriber (default = 262144)
+	 */
+	private int maxQueuedBytes;
+
+	/**
+	 * The time in milliseconds after which a subscriber that wasn't sent
+	 * anything gets a heartbeat, 0 means never (default = 15000)
+	 */
+	private int heartbeatInterval;
+
+	/**
+	 * The total number of subscribers that were evicted for being too slow
+	 */
+	private final AtomicInteger evictedCount;
+
+	/**
+	 * The thread sending the heartbeats or null if it's not running
+	 */
+	private Thread heartbeatThread;
+
+	/**
+	 * Creates a new broadcaster using the default settings
+	 */
+	public EventBroadcaster() {
+		subscribers = Collections.newSetFromMap(new ConcurrentHashMap<EventStreamConnection, Boolean>());
+		maxQueuedBytes = 256 * 1024;
+		heartbeatInterval = 15000;
+		evictedCount = new AtomicInteger();
+	}
+
+	/**
+	 * Returns the maximum number of bytes that can be waiting to be sent
+	 * to a single subscriber
+	 * @return The number of bytes
+	 */
+	public int getMaxQueuedBytes() {
+		return maxQueuedBytes;
+	}
+
+	/**
+	 * Sets the maximum number of bytes that can be waiting to be sent to
+	 * a single subscriber. A subscriber that would go over the limit is
+	 * considered too slow, it gets evicted and its connection is closed
+	 * @param maxQueuedBytes The number of bytes
+	 */
+	public void setMaxQueuedBytes(int maxQueuedBytes) {
+		if (maxQueuedBytes <= 0) {
+			throw new IllegalArgumentException("maxQueuedBytes must be larger than 0");
+		}
+		this.maxQueuedBytes = maxQueuedBytes;
+	}
+
+	/**
+	 * Returns the time after which a subscriber that wasn't sent anything
+	 * gets a heartbeat
+	 * @return The interval in milliseconds, 0 meaning never
+	 */
+	public int getHeartbeatInterval() {
+		return heartbeatInterval;
+	}
+
+	/**
+	 * Sets the time after which a subscriber that wasn't sent anything
+	 * gets a heartbeat. This can only be changed before the first client
+	 * subscribes
+	 * @param heartbeatInterval The interval in milliseconds, 0 meaning never
+	 */
+	public void setHeartbeatInterval(int heartbeatInterval) {
+		if (heartbeatInterval < 0) {
+			throw new IllegalArgumentException("heartbeatInterval must not be negative");
+		}
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	/**
+	 * Returns the number of clients currently subscribed
+	 * @return The number of subscribers
+	 */
+	public int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	/**
+	 * Returns the total number of subscribers that were evicted for
+	 * being too slow
+	 * @return The number of evicted subscribers
+	 */
+	public int getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	/**
+	 * Sends an event to all subscribers. This never blocks, for each
+	 * subscriber the event is either written right away or queued
+	 * @param event The event to send
+	 */
+	public void broadcast(Event event) {
+		for (EventStreamConnection subscriber : subscribers) {
+			subscriber.send(event);
+		}
+	}
+
+	/**
+	 * Subscribes a new client. Events will be queued for it until its
+	 * connection gets taken over
+	 * @param request The request the client subscribed with
+	 * @param chunked Indicates if the response uses chunked transfers
+	 * @return The new subscriber
+	 */
+	public EventStreamConnection subscribe(HttpRequest request, boolean chunked) {
+		EventStreamConnection subscriber = new EventStreamConnection(this, request, chunked);
+		subscribers.add(subscriber);
+		startHeartbeat();
+		return subscriber;
+	}
+
+	/**
+	 * Ends all event streams and stops sending heartbeats. Clients can
+	 * still subscribe afterwards
+	 */
+	public void close() {
+		Thread t;
+		synchronized (this) {
+			t = heartbeatThread;
+			heartbeatThread = null;
+			notifyAll();
+		}
+		for (EventStreamConnection subscriber : subscribers) {
+			subscriber.close();
+		}
+		if (t != null) {
+			boolean interrupted = false;
+			while (t.isAlive()) {
+				try {
+					t.join();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Removes a subscriber whose stream has ended
+	 * @param subscriber The subscriber to remove
+	 * @param evicted Indicates if it was evicted for being too slow
+	 */
+	void remove(EventStreamConnection subscriber, boolean evicted) {
+		if (subscribers.remove(subscriber) && evicted) {
+			evictedCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Starts the heartbeat thread if it's needed and not running yet
+	 */
+	private synchronized void startHeartbeat() {
+		if (heartbeatThread == null && heartbeatInterval > 0) {
+			heartbeatThread = new Thread(new Heartbeat(), "websrv-events-heartbeat");
+			heartbeatThread.setDaemon(true);
+			heartbeatThread.start();
+		}
+	}
+
+	/**
+	 * Periodically sends heartbeats to the subscribers that weren't sent
+	 * anything for a while, so no subscriber goes without anything for
+	 * more than one and a half interval
+	 */
+	private class Heartbeat implements Runnable {
+
+		public void run() {
+			Thread self = Thread.currentThread();
+			int interval = heartbeatInterval;
+			for (;;) {
+				synchronized (EventBroadcaster.this) {
+					if (heartbeatThread != self) {
+						break;
+					}
+					try {
+						EventBroadcaster.this.wait(interval);
+					} catch (InterruptedException ex) {
+						break;
+					}
+					if (heartbeatThread != self) {
+						break;
+					}
+				}
+				// Anything sent during the second half of the interval
+				// will still be recent enough at the next tick
+				long idleSince = System.currentTimeMillis() - interval / 2;
+				for (EventStreamConnection subscriber : subscribers) {
+					if (subscriber.getLastSent() <= idleSince) {
+						subscriber.send(HEARTBEAT);
+					}
+				}
+			}
+		}
+	}
+}
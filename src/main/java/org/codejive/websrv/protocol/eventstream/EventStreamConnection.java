@@ -0,0 +1,423 @@
+/*
+ * EventStreamConnection.java
+ *
+ * Created on Oct 19, 2026, 6:31:05 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.eventstream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLSocket;
+import org.codejive.websrv.protocol.http.ConnectionUpgrade;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpRequestImpl;
+import org.codejive.websrv.protocol.http.UpgradedConnection;
+
+/**
+ * The connection of a single event stream subscriber. On HTTP/1.x
+ * connections it takes over once the response head has been sent and it
+ * gets parked while there's nothing to send. Events sent to a parked
+ * subscriber are written right away by the sending thread using a non
+ * blocking write, only what doesn't fit gets queued, after which the
+ * connection asks to be served again to write out the rest. On HTTP/2
+ * connections the events are written by the thread handling the stream
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class EventStreamConnection implements EventSubscriber, ConnectionUpgrade, UpgradedConnection {
+
+	/**
+	 * The time in milliseconds we wait for data when we get served
+	 * because the client seemed to have sent something
+	 */
+	private static final int PROBE_TIMEOUT = 100;
+
+	/**
+	 * The broadcaster the client is subscribed to
+	 */
+	private final EventBroadcaster broadcaster;
+
+	/**
+	 * The request the client subscribed with
+	 */
+	private final HttpRequest request;
+
+	/**
+	 * Indicates if the events are sent as chunks
+	 */
+	private final boolean chunked;
+
+	/**
+	 * The socket used for client-server communication or null when the
+	 * connection wasn't taken over
+	 */
+	private Socket socket;
+
+	/**
+	 * The stream to read from, only used to notice the client going away
+	 */
+	private InputStream input;
+
+	/**
+	 * The stream to write the events to
+	 */
+	private OutputStream output;
+
+	/**
+	 * The channel events can be written to directly while we're parked
+	 * or null if that's not possible
+	 */
+	private SocketChannel channel;
+
+	/**
+	 * Makes the connection get served again when it's parked
+	 */
+	private Runnable resumeTrigger;
+
+	/**
+	 * The events waiting to be written
+	 */
+	private final ArrayDeque<ByteBuffer> queue;
+
+	/**
+	 * The number of bytes waiting to be written
+	 */
+	private int queuedBytes;
+
+	/**
+	 * Indicates if the connection has been served at least once
+	 */
+	private boolean started;
+
+	/**
+	 * Indicates if the connection is parked
+	 */
+	private boolean parked;
+
+	/**
+	 * Indicates if we asked to be served again
+	 */
+	private boolean resumeRequested;
+
+	/**
+	 * Indicates if the stream must end once the queued events are written
+	 */
+	private boolean draining;
+
+	/**
+	 * Indicates if the stream has ended
+	 */
+	private boolean closed;
+
+	/**
+	 * The time the last event was sent
+	 */
+	private volatile long lastSent;
+
+	/**
+	 * The chunk that ends a chunked response
+	 */
+	private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+	/**
+	 * Class private logger
+	 */
+	private static final Logger logger = Logger.getLogger(EventStreamConnection.class.getName());
+
+	/**
+	 * Creates a new subscriber, events will be queued until it's given a
+	 * connection to write them to
+	 * @param broadcaster The broadcaster the client subscribed to
+	 * @param request The request the client subscribed with, it will be
+	 * copied so the original can be reused
+	 * @param chunked Indicates if the events are sent as chunks
+	 */
+	EventStreamConnection(EventBroadcaster broadcaster, HttpRequest request, boolean chunked) {
+		this.broadcaster = broadcaster;
+		this.request = new HttpRequestImpl(request);
+		this.chunked = chunked;
+		queue = new ArrayDeque<ByteBuffer>();
+		lastSent = System.currentTimeMillis();
+	}
+
+	public HttpRequest getRequest() {
+		return request;
+	}
+
+	public synchronized boolean isOpen() {
+		return !closed;
+	}
+
+	/**
+	 * Returns the time the last event was sent to the client
+	 * @return The time in milliseconds
+	 */
+	long getLastSent() {
+		return lastSent;
+	}
+
+	public boolean send(Event event) {
+		ByteBuffer buffer = event.getBuffer(chunked);
+		boolean failed = false;
+		boolean evict = false;
+		boolean resume = false;
+		synchronized (this) {
+			if (closed) {
+				return false;
+			}
+			lastSent = System.currentTimeMillis();
+			if (parked && queue.isEmpty() && channel != null) {
+				try {
+					writeNonBlocking(buffer);
+				} catch (IOException ex) {
+					logger.fine("Event stream failed: " + ex.getMessage());
+					failed = true;
+				}
+			}
+			if (failed || !buffer.hasRemaining()) {
+				// Nothing left to do
+			} else if (queuedBytes + buffer.remaining() > broadcaster.getMaxQueuedBytes()) {
+				logger.fine("Evicting slow event stream subscriber");
+				evict = true;
+			} else {
+				queue.add(buffer);
+				queuedBytes += buffer.remaining();
+				if (parked) {
+					resume = !resumeRequested;
+					resumeRequested = true;
+				} else {
+					notifyAll();
+				}
+			}
+		}
+		// Closing the connection might block so we don't hold the lock
+		if (failed || evict) {
+			end(evict);
+			return false;
+		}
+		if (resume) {
+			resumeTrigger.run();
+		}
+		return true;
+	}
+
+	public void close() {
+		end(false);
+	}
+
+	public UpgradedConnection upgrade(Socket socket, InputStream input, Runnable resumeTrigger) throws IOException {
+		synchronized (this) {
+			this.socket = socket;
+			this.input = input;
+			this.output = socket.getOutputStream();
+			this.resumeTrigger = resumeTrigger;
+			// The channel of a secure socket carries encrypted data
+			if (!(socket instanceof SSLSocket)) {
+				channel = socket.getChannel();
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the events to the given stream using the current thread,
+	 * for connections that can't be taken over. Returns once the stream
+	 * has ended
+	 * @param out The stream to write to
+	 */
+	public void stream(OutputStream out) {
+		synchronized (this) {
+			output = out;
+		}
+		serve(false);
+	}
+
+	public int getIdleTimeout() {
+		// Heartbeats take care of clients that went away
+		return 0;
+	}
+
+	public boolean idleTimeoutReached() {
+		return false;
+	}
+
+	/**
+	 * Ends the stream once the events that are queued have been written,
+	 * with the last chunk when the events are sent as chunks, so the
+	 * client can tell the server ended it on purpose
+	 */
+	public void drain() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			draining = true;
+			if (parked) {
+				// We'll be served again by whoever is draining us
+				resumeRequested = true;
+			} else {
+				notifyAll();
+			}
+		}
+		broadcaster.remove(this, false);
+	}
+
+	/**
+	 * Writes the queued events to the client. When the connection is
+	 * parkable this method will return as soon as the queue is empty,
+	 * leaving the connection open, otherwise it waits for new events
+	 * until the stream ends
+	 * @param parkable Indicates if the connection can be parked
+	 * @return <code>true</code> if the connection was left open
+	 */
+	public boolean serve(boolean parkable) {
+		boolean selected;
+		synchronized (this) {
+			// When we didn't ask for it we're probably being served
+			// because the client sent something or went away
+			selected = started && !resumeRequested;
+			started = true;
+			parked = false;
+			resumeRequested = false;
+		}
+		try {
+			if (selected && !readInput()) {
+				logger.fine("End of input was reached");
+				end(false);
+				return false;
+			}
+			for (;;) {
+				ByteBuffer buffer;
+				synchronized (this) {
+					if (closed) {
+						return false;
+					}
+					buffer = queue.poll();
+					if (buffer == null && draining) {
+						break;
+					}
+					if (buffer == null) {
+						if (parkable) {
+							parked = true;
+							return true;
+						}
+						wait();
+						continue;
+					}
+					queuedBytes -= buffer.remaining();
+				}
+				output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+				output.flush();
+			}
+			if (chunked) {
+				output.write(LAST_CHUNK);
+				output.flush();
+			}
+			logger.fine("Event stream has been drained");
+			end(false);
+		} catch (InterruptedException ex) {
+			end(false);
+		} catch (IOException ex) {
+			logger.fine("Event stream failed: " + ex.getMessage());
+			end(false);
+		}
+		return false;
+	}
+
+	/**
+	 * Reads and ignores whatever the client sent
+	 * @return <code>false</code> if the end of the input was reached
+	 * @throws java.io.IOException If reading failed
+	 */
+	private boolean readInput() throws IOException {
+		byte[] skip = new byte[256];
+		socket.setSoTimeout(PROBE_TIMEOUT);
+		try {
+			do {
+				if (input.read(skip) < 0) {
+					return false;
+				}
+			} while (input.available() > 0);
+		} catch (SocketTimeoutException ex) {
+			// Nothing there after all
+		}
+		return true;
+	}
+
+	/**
+	 * Writes as much of the buffer as possible without blocking.
+	 * Must be called while holding the lock
+	 * @param buffer The data to write
+	 * @throws java.io.IOException If the data could not be written
+	 */
+	private void writeNonBlocking(ByteBuffer buffer) throws IOException {
+		// The channel must not switch to blocking mode while we're at it
+		synchronized (channel.blockingLock()) {
+			if (!channel.isBlocking()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Ends the stream, the connection will be closed. Events still
+	 * waiting to be sent are dropped.
+	 * @param evicted Indicates if the subscriber is evicted for being too slow
+	 */
+	private void end(boolean evicted) {
+		boolean resume = false;
+		Socket closeSocket = null;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			queue.clear();
+			queuedBytes = 0;
+			if (parked) {
+				// Get served so the connection gets closed properly
+				resume = !resumeRequested;
+				resumeRequested = true;
+			} else if (evicted) {
+				// The thread serving us might be stuck writing
+				closeSocket = socket;
+			}
+			notifyAll();
+		}
+		broadcaster.remove(this, evicted);
+		if (resume) {
+			resumeTrigger.run();
+		}
+		if (closeSocket != null) {
+			try {
+				closeSocket.close();
+			} catch (IOException ex) {
+				// Ignore
+			}
+		}
+	}
+}
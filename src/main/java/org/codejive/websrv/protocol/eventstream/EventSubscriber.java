@@ -0,0 +1,64 @@
+/*
+ * EventSubscriber.java
+ *
+ * Created on Oct 19, 2026, 6:12:30 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.eventstream;
+
+import org.codejive.websrv.protocol.http.HttpRequest;
+
+/**
+ * A client subscribed to an event stream. Besides receiving everything
+ * that gets broadcast it can be sent events of its own, for example to
+ * catch up on the events it missed while it was disconnected
+ * @see org.codejive.websrv.protocol.eventstream.EventBroadcaster
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public interface EventSubscriber {
+
+	/**
+	 * Returns the request the client subscribed with
+	 * @return The request
+	 */
+	public HttpRequest getRequest();
+
+	/**
+	 * Determines if the client is still subscribed
+	 * @return <code>true</code> if events can still be sent
+	 */
+	public boolean isOpen();
+
+	/**
+	 * Sends an event to the client. This never blocks, the event is
+	 * either written right away or queued. A client that has too much
+	 * queued already is considered too slow and gets unsubscribed
+	 * @param event The event to send
+	 * @return <code>true</code> if the event was sent or queued,
+	 * <code>false</code> if the client isn't subscribed anymore
+	 */
+	public boolean send(Event event);
+
+	/**
+	 * Ends the event stream and closes the connection, any events still
+	 * waiting to be sent are dropped
+	 */
+	public void close();
+}
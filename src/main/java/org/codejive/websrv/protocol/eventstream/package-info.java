@@ -0,0 +1,34 @@
+/*
+ * package-info.java
+ *
+ * Created on Oct 19, 2026, 6:04:27 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * Contains the implementation of Server-Sent Events, event streams that
+ * browsers subscribe to using the EventSource API. An EventStreamServlet
+ * subscribes clients to an EventBroadcaster, which sends each event it
+ * gets to all of them. Events are encoded only once, no matter how many
+ * subscribers there are. Subscribers don't hold on to a thread while
+ * they're waiting for the next event, whenever possible events are even
+ * written to them directly by the thread doing the broadcasting
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+package org.codejive.websrv.protocol.eventstream;
@@ -0,0 +1,53 @@
+/*
+ * ConnectionUpgrade.java
+ *
+ * Created on Oct 19, 2026, 5:23:02 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+/**
+ * Switches a HTTP/1.1 connection to another protocol. A response handler
+ * that accepts a client's request to upgrade sets one of these on its
+ * "101 Switching Protocols" response, once the response has been sent
+ * the protocol handler calls it to take over the connection. A handler
+ * can also set one on a successful response whose body it will keep on
+ * streaming, only the response head will have been sent in that case
+ * @see org.codejive.websrv.protocol.http.HttpResponse#setUpgrade
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public interface ConnectionUpgrade {
+
+	/**
+	 * Takes over the connection
+	 * @param socket The socket of the connection
+	 * @param input The stream to read from, it might already hold data
+	 * the client sent right after its request
+	 * @param resumeTrigger Running it makes the connection get served
+	 * again as soon as possible if it was parked, it can be run from
+	 * any thread
+	 * @return The connection that will handle all further communication
+	 * @throws java.io.IOException If the connection could not be taken over
+	 */
+	public UpgradedConnection upgrade(Socket socket, InputStream input, Runnable resumeTrigger) throws IOException;
+}
@@ -0,0 +1,478 @@
+/*
+ * HttpClientConnection.java
+ *
+ * Created on Oct 19, 2026, 7:02:14 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.http;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * The client side of a HTTP/1.1 connection to another server. It sends
+ * requests and reads the responses using the same buffered input and body
+ * decoding that is used for incoming requests, so neither request nor
+ * response bodies are ever kept in memory as a whole. A connection can be
+ * used for one request after another as long as each response body is read
+ * completely and the server agreed to keep the connection alive
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class HttpClientConnection {
+
+	/**
+	 * The socket connected to the server
+	 */
+	private final Socket socket;
+
+	/**
+	 * The buffered input of the connection
+	 */
+	private final HttpConnectionInput input;
+
+	/**
+	 * The buffered output of the connection
+	 */
+	private final OutputStream output;
+
+	/**
+	 * The status code of the last response
+	 */
+	private int responseCode;
+
+	/**
+	 * The reason phrase of the last response
+	 */
+	private String responseMessage;
+
+	/**
+	 * The headers of the last response
+	 */
+	private final HttpHeaders responseHeaders;
+
+	/**
+	 * The body of the last response or null if it is delimited by the
+	 * server closing the connection
+	 */
+	private HttpRequestBody responseBody;
+
+	/**
+	 * Indicates if the length of the last response body was known up front
+	 */
+	private boolean knownLength;
+
+	/**
+	 * Indicates if the server agreed to keep the connection open
+	 */
+	private boolean keepAlive;
+
+	/**
+	 * The number of requests sent over this connection
+	 */
+	private int requestCount;
+
+	/**
+	 * Indicates if any part of the response to the last request was received
+	 */
+	private boolean responseStarted;
+
+	/**
+	 * The time the connection was last used
+	 */
+	private long lastUsed;
+
+	/**
+	 * The size of the output buffer
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Creates a new connection using the given socket
+	 * @param socket The socket connected to the server
+	 * @param limits The limits the response heads must stay within
+	 * @throws java.io.IOException If the socket's streams could not be obtained
+	 */
+	public HttpClientConnection(Socket socket, HttpRequestLimits limits) throws IOException {
+		this.socket = socket;
+		input = new HttpConnectionInput(socket, limits);
+		output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+		responseHeaders = new HttpHeaders();
+		lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the socket connected to the server
+	 * @return The socket
+	 */
+	public Socket getSocket() {
+		return socket;
+	}
+
+	/**
+	 * Returns the number of requests that were sent over this connection
+	 * @return The number of requests
+	 */
+	public int getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 * Indicates if any part of the response to the last request was
+	 * received. When it wasn't and reading the response failed the server
+	 * might never have seen the request
+	 * @return True if part of the response was received
+	 */
+	public boolean hasResponseStarted() {
+		return responseStarted || input.hasBuffered();
+	}
+
+	/**
+	 * Returns the time the connection was last used
+	 * @return The time in milliseconds
+	 */
+	public long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * Writes the head of a new request. The head isn't flushed, that
+	 * happens when the request body gets closed or when the response
+	 * head is read
+	 * @param method The request method
+	 * @param target The request target, normally a path and a query
+	 * @param headers The request headers
+	 * @throws java.io.IOException If the head could not be written
+	 */
+	public void writeRequestHead(String method, String target, HttpHeaders headers) throws IOException {
+		StringBuilder head = new StringBuilder(256);
+		head.append(method).append(' ').append(target).append(" HTTP/1.1\r\n");
+		for (int i = 0; i < headers.size(); i++) {
+			head.append(headers.getName(i)).append(": ").append(headers.getValue(i)).append("\r\n");
+		}
+		head.append("\r\n");
+		int len = head.length();
+		byte[] bytes = new byte[len];
+		for (int i = 0; i < len; i++) {
+			char c = head.charAt(i);
+			bytes[i] = (byte) ((c < 256) ? c : '?');
+		}
+		output.write(bytes);
+		requestCount++;
+		responseStarted = false;
+		lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the stream to write the request body to. Closing the stream
+	 * ends the body and flushes the request but leaves the connection open
+	 * @param chunked Indicates if the body must be sent using the chunked
+	 * transfer coding, in which case the request head must have said so
+	 * @return The body stream
+	 */
+	public OutputStream getRequestBody(boolean chunked) {
+		return new RequestBody(chunked);
+	}
+
+	/**
+	 * Reads the head of the response to the last request. Interim responses
+	 * (1xx) are skipped. Afterwards the status, the headers and the body of
+	 * the response are available
+	 * @param headRequest Indicates if the request was a HEAD request, whose
+	 * responses never have a body
+	 * @throws java.io.IOException If the head could not be read, if it
+	 * was malformed or if it exceeded the limits
+	 */
+	public void readResponseHead(boolean headRequest) throws IOException {
+		output.flush();
+		String protocol;
+		do {
+			protocol = readStatusLine();
+			readHeaders();
+		} while (responseCode >= 100 && responseCode < 200);
+
+		String connection = responseHeaders.get("Connection");
+		if ("HTTP/1.1".equals(protocol)) {
+			keepAlive = !hasToken(connection, "close");
+		} else {
+			keepAlive = hasToken(connection, "Keep-Alive");
+		}
+
+		String transferEncoding = responseHeaders.get("Transfer-Encoding");
+		String contentLength = responseHeaders.get("Content-Length");
+		knownLength = true;
+		if (headRequest || responseCode == 204 || responseCode == 304) {
+			responseBody = new HttpRequestBody(input, 0, false, 0);
+		} else if (transferEncoding != null) {
+			knownLength = false;
+			if ("chunked".equalsIgnoreCase(transferEncoding.trim())) {
+				responseBody = new HttpRequestBody(input, 0, true, 0);
+			} else {
+				// Other codings can only be delimited by closing the connection
+				responseBody = null;
+			}
+		} else if (contentLength != null) {
+			long length;
+			try {
+				length = Long.parseLong(contentLength.trim());
+			} catch (NumberFormatException ex) {
+				length = -1;
+			}
+			if (length < 0) {
+				throw new MalformedRequestException("Malformed response Content-Length: " + contentLength);
+			}
+			responseBody = new HttpRequestBody(input, length, false, 0);
+		} else {
+			knownLength = false;
+			responseBody = null;
+		}
+		lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Reads the status line of a response
+	 * @return The protocol of the response
+	 * @throws java.io.IOException If the line could not be read or was malformed
+	 */
+	private String readStatusLine() throws IOException {
+		HttpRequestLimits limits = input.getLimits();
+		String line;
+		input.startHead();
+		try {
+			line = input.readHeadLine(limits.getMaxRequestLineLength(), HttpResponseCode.CODE_BAD_GATEWAY);
+		} finally {
+			input.endHead();
+		}
+		if (line == null) {
+			throw new EOFException("Connection closed before the response was received");
+		}
+		responseStarted = true;
+		int sp1 = line.indexOf(' ');
+		int sp2 = (sp1 > 0) ? line.indexOf(' ', sp1 + 1) : -1;
+		if (sp2 < 0) {
+			sp2 = line.length();
+		}
+		if (sp1 < 0 || sp2 - sp1 != 4 || !line.startsWith("HTTP/1.")) {
+			throw new MalformedRequestException("Malformed response status line: " + line);
+		}
+		try {
+			responseCode = Integer.parseInt(line.substring(sp1 + 1, sp2));
+		} catch (NumberFormatException ex) {
+			throw new MalformedRequestException("Malformed response status line: " + line);
+		}
+		responseMessage = (sp2 < line.length()) ? line.substring(sp2 + 1) : "";
+		return line.substring(0, sp1);
+	}
+
+	/**
+	 * Reads the headers of a response
+	 * @throws java.io.IOException If the headers could not be read, if they
+	 * were malformed or if there were too many of them
+	 */
+	private void readHeaders() throws IOException {
+		HttpRequestLimits limits = input.getLimits();
+		int maxSize = limits.getMaxHeaderSize();
+		int maxCount = limits.getMaxHeaderCount();
+		int count = 0;
+		responseHeaders.clear();
+		input.startHead();
+		try {
+			String line;
+			while (((line = input.readHeadLine(maxSize, HttpResponseCode.CODE_BAD_GATEWAY)) != null) && (line.length() > 0)) {
+				if (maxCount > 0 && ++count > maxCount) {
+					throw new RequestLimitException(HttpResponseCode.CODE_BAD_GATEWAY, "Too many response headers");
+				}
+				int colon = line.indexOf(':');
+				if (colon < 0) {
+					throw new MalformedRequestException("Malformed response header: " + line);
+				}
+				responseHeaders.addLine(line, colon);
+			}
+			if (line == null) {
+				throw new EOFException("Connection closed in the middle of the response head");
+			}
+		} finally {
+			input.endHead();
+		}
+	}
+
+	/**
+	 * Returns the status code of the last response
+	 * @return The status code
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	/**
+	 * Returns the reason phrase of the last response
+	 * @return The reason phrase
+	 */
+	public String getResponseMessage() {
+		return responseMessage;
+	}
+
+	/**
+	 * Returns the headers of the last response
+	 * @return The response headers
+	 */
+	public HttpHeaders getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	/**
+	 * Determines if the length of the last response body is known up front,
+	 * either because it has none or because it was given by Content-Length
+	 * @return <code>true</code> if the length of the body is known
+	 */
+	public boolean hasKnownLength() {
+		return knownLength;
+	}
+
+	/**
+	 * Returns the stream to read the body of the last response from. The
+	 * stream reaches its end where the body ends
+	 * @return The body stream
+	 */
+	public InputStream getResponseBody() {
+		return (responseBody != null) ? responseBody : input;
+	}
+
+	/**
+	 * Determines if the connection can be used for another request. This is
+	 * only the case if the body of the last response was read completely
+	 * and the server didn't ask for the connection to be closed
+	 * @return <code>true</code> if the connection can be reused
+	 */
+	public boolean isReusable() {
+		return keepAlive && responseBody != null && responseBody.isFinished() && !input.hasBuffered() && !socket.isClosed();
+	}
+
+	/**
+	 * Closes the connection
+	 */
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException ex) {
+			// Ignore
+		}
+	}
+
+	/**
+	 * Determines if a comma separated header value contains the given token
+	 * @param value The header value, can be null
+	 * @param token The token to look for, case is ignored
+	 * @return <code>true</code> if the token was found
+	 */
+	private static boolean hasToken(String value, String token) {
+		if (value != null) {
+			for (String part : value.split(",")) {
+				if (part.trim().equalsIgnoreCase(token)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The stream the request body gets written to. When chunked it writes
+	 * each block of data as a separate chunk
+	 */
+	private class RequestBody extends OutputStream {
+
+		/**
+		 * Indicates if the chunked transfer coding is used
+		 */
+		private final boolean chunked;
+
+		/**
+		 * Indicates if the stream was closed
+		 */
+		private boolean closed;
+
+		/**
+		 * Creates a new body stream
+		 * @param chunked Indicates if the chunked transfer coding is used
+		 */
+		public RequestBody(boolean chunked) {
+			this.chunked = chunked;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("Request body already closed");
+			}
+			if (len == 0) {
+				return;
+			}
+			if (chunked) {
+				writeAscii(Integer.toHexString(len) + "\r\n");
+				output.write(b, off, len);
+				writeAscii("\r\n");
+			} else {
+				output.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			output.flush();
+		}
+
+		/**
+		 * Ends the body, writing the last chunk if necessary, and
+		 * flushes the request. The connection itself stays open
+		 * @throws java.io.IOException If the data could not be written
+		 */
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				if (chunked) {
+					writeAscii("0\r\n\r\n");
+				}
+				output.flush();
+			}
+		}
+
+		/**
+		 * Writes a string of ASCII characters
+		 * @param text The text to write
+		 * @throws java.io.IOException If the text could not be written
+		 */
+		private void writeAscii(String text) throws IOException {
+			int len = text.length();
+			for (int i = 0; i < len; i++) {
+				output.write(text.charAt(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,373 @@
+/*
+ * HttpConnectionInput.java
+ *
+ * Created on Oct 19, 2026, 3:02:44 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+
+/**
+ * The buffered input side of a single HTTP connection. The same instance
+ * is used for all requests on a connection so any bytes the client sent
+ * ahead (pipelined requests) are never lost. While a request head is being
+ * read the configured request limits are enforced: the size of the lines,
+ * the total size of the head, the time the client takes to send it and
+ * the rate at which it does so
+ * @see org.codejive.websrv.protocol.http.HttpRequestLimits
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class HttpConnectionInput extends InputStream {
+
+	/**
+	 * The socket the data is read from, can be null
+	 */
+	private final Socket socket;
+	
+	/**
+	 * The stream the data is read from
+	 */
+	private final InputStream in;
+	
+	/**
+	 * The limits to enforce while reading a request head
+	 */
+	private final HttpRequestLimits limits;
+	
+	/**
+	 * The internal buffer
+	 */
+	private byte[] buf;
+	
+	/**
+	 * The position of the next byte to read from the buffer
+	 */
+	private int pos;
+	
+	/**
+	 * The position just after the last valid byte in the buffer
+	 */
+	private int limit;
+	
+	/**
+	 * Indicates if we're busy reading a request head
+	 */
+	private boolean inHead;
+	
+	/**
+	 * The time the first byte of the current request head arrived
+	 * or 0 if we're still waiting for it
+	 */
+	private long headStart;
+	
+	/**
+	 * The number of bytes received since the current request head started
+	 */
+	private long headReceived;
+	
+	/**
+	 * The number of bytes of the current request head consumed so far
+	 */
+	private long headSize;
+	
+	/**
+	 * The socket time-out to restore when the request head is complete
+	 */
+	private int idleTimeout;
+
+	/**
+	 * The initial size of the internal buffer
+	 */
+	private static final int BUFFER_SIZE = 16384;
+	
+	/**
+	 * The maximum time in milliseconds we'll block in a single read
+	 * while reading a request head before checking the limits again
+	 */
+	private static final int CHECK_INTERVAL = 1000;
+	
+	/**
+	 * The character set used for decoding request heads
+	 */
+	private static final Charset HEAD_CHARSET = Charset.forName("ISO-8859-1");
+
+	/**
+	 * Creates a new instance reading from the given socket
+	 * @param socket The socket to read from
+	 * @param limits The limits to enforce while reading request heads
+	 * @throws java.io.IOException If the socket's input stream could not
+	 * be obtained
+	 */
+	public HttpConnectionInput(Socket socket, HttpRequestLimits limits) throws IOException {
+		this(socket, socket.getInputStream(), limits);
+	}
+
+	/**
+	 * Creates a new instance reading from the given stream. If the socket
+	 * is null no time or rate limits can be enforced
+	 * @param socket The socket the stream belongs to or null
+	 * @param in The stream to read from
+	 * @param limits The limits to enforce while reading request heads
+	 */
+	public HttpConnectionInput(Socket socket, InputStream in, HttpRequestLimits limits) {
+		this.socket = socket;
+		this.in = in;
+		this.limits = limits;
+		buf = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Returns the limits that are enforced while reading request heads
+	 * @return The request limits
+	 */
+	public HttpRequestLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * Determines if there are bytes left in the internal buffer
+	 * @return <code>true</code> if data can be read without blocking
+	 */
+	public boolean hasBuffered() {
+		return pos < limit;
+	}
+
+	/**
+	 * Must be called before starting to read a new request head. The time
+	 * limits start counting as soon as the first byte of the head arrives,
+	 * until then we wait using the socket's current time-out
+	 * @throws java.io.IOException If the socket could not be queried
+	 */
+	public void startHead() throws IOException {
+		inHead = true;
+		headSize = 0;
+		headReceived = limit - pos;
+		headStart = hasBuffered() ? System.currentTimeMillis() : 0;
+		if (socket != null) {
+			idleTimeout = socket.getSoTimeout();
+		}
+	}
+
+	/**
+	 * Must be called when the request head has been read completely.
+	 * Restores the socket's original time-out
+	 * @throws java.io.IOException If the socket time-out could not be set
+	 */
+	public void endHead() throws IOException {
+		if (inHead) {
+			inHead = false;
+			if (socket != null && headStart != 0) {
+				socket.setSoTimeout(idleTimeout);
+			}
+		}
+	}
+
+	/**
+	 * Reads a single line of the request head. The line terminator is
+	 * not included in the result, lines are decoded as ISO-8859-1
+	 * @param maxLength The maximum allowed length of the line
+	 * @param codeIfTooLong The response code to use if the line is too long
+	 * @return The line or null if the end of the input was reached
+	 * @throws java.io.IOException If reading failed or one of the limits
+	 * was exceeded
+	 */
+	public String readHeadLine(int maxLength, HttpResponseCode codeIfTooLong) throws IOException {
+		int scan = pos;
+		for (;;) {
+			for (int i = scan; i < limit; i++) {
+				if (buf[i] == '\n') {
+					int end = i;
+					if (end > pos && buf[end - 1] == '\r') {
+						end--;
+					}
+					if (maxLength > 0 && end - pos > maxLength) {
+						throw new RequestLimitException(codeIfTooLong, "Request line too long");
+					}
+					String line = new String(buf, pos, end - pos, HEAD_CHARSET);
+					consumeHead(i + 1 - pos);
+					pos = i + 1;
+					return line;
+				}
+			}
+			if (maxLength > 0 && limit - pos > maxLength + 1) {
+				throw new RequestLimitException(codeIfTooLong, "Request line too long");
+			}
+			int maxHead = limits.getMaxRequestHeadSize();
+			if (inHead && maxHead > 0 && headSize + (limit - pos) > maxHead) {
+				throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_HEADER_FIELDS_TOO_LARGE, "Request head too large");
+			}
+			// Remember how far we got because fill() may move the data
+			int scanned = limit - pos;
+			if (fill() < 0) {
+				if (hasBuffered()) {
+					throw new EOFException("End of input reached in the middle of a line");
+				}
+				return null;
+			}
+			scan = pos + scanned;
+		}
+	}
+
+	/**
+	 * Counts the given number of bytes as part of the current request head
+	 * @param count The number of bytes consumed
+	 * @throws org.codejive.websrv.protocol.http.RequestLimitException If the
+	 * head became too large
+	 */
+	private void consumeHead(int count) throws RequestLimitException {
+		headSize += count;
+		int max = limits.getMaxRequestHeadSize();
+		if (inHead && max > 0 && headSize > max) {
+			throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_HEADER_FIELDS_TOO_LARGE, "Request head too large");
+		}
+	}
+
+	/**
+	 * Reads more data into the internal buffer, first making room for it
+	 * if necessary. While a request head is being read the time limits
+	 * are checked regularly
+	 * @return The number of bytes read or -1 if the end of the input was reached
+	 * @throws java.io.IOException If reading failed or one of the limits
+	 * was exceeded
+	 */
+	private int fill() throws IOException {
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		if (limit == buf.length) {
+			byte[] newbuf = new byte[buf.length * 2];
+			System.arraycopy(buf, 0, newbuf, 0, limit);
+			buf = newbuf;
+		}
+		for (;;) {
+			boolean timed = inHead && headStart != 0 && socket != null;
+			if (timed) {
+				socket.setSoTimeout(nextReadTimeout(System.currentTimeMillis()));
+			}
+			try {
+				int n = in.read(buf, limit, buf.length - limit);
+				if (n > 0) {
+					limit += n;
+					if (inHead) {
+						long now = System.currentTimeMillis();
+						if (headStart == 0) {
+							headStart = now;
+						}
+						headReceived += n;
+						checkHeadTime(now);
+					}
+				}
+				return n;
+			} catch (SocketTimeoutException ex) {
+				if (!timed) {
+					throw ex;
+				}
+				checkHeadTime(System.currentTimeMillis());
+			}
+		}
+	}
+
+	/**
+	 * Returns the socket time-out to use for the next read of the request head
+	 * @param now The current time
+	 * @return The time-out in milliseconds
+	 * @throws org.codejive.websrv.protocol.http.RequestLimitException If the
+	 * client ran out of time
+	 */
+	private int nextReadTimeout(long now) throws RequestLimitException {
+		checkHeadTime(now);
+		int timeout = CHECK_INTERVAL;
+		int headTimeout = limits.getRequestHeadTimeout();
+		if (headTimeout > 0) {
+			long remaining = headStart + headTimeout - now;
+			timeout = (int) Math.max(1, Math.min(timeout, remaining));
+		}
+		return timeout;
+	}
+
+	/**
+	 * Checks if the client is still within the time limits for sending
+	 * the request head
+	 * @param now The current time
+	 * @throws org.codejive.websrv.protocol.http.RequestLimitException If the
+	 * client took too long or is sending its data too slowly
+	 */
+	private void checkHeadTime(long now) throws RequestLimitException {
+		if (headStart == 0) {
+			return;
+		}
+		long elapsed = now - headStart;
+		int headTimeout = limits.getRequestHeadTimeout();
+		if (headTimeout > 0 && elapsed >= headTimeout) {
+			throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_TIMEOUT, "Request head not received in time");
+		}
+		int minRate = limits.getMinDataRate();
+		if (minRate > 0 && elapsed > HttpRequestLimits.DATA_RATE_GRACE_PERIOD) {
+			if (headReceived * 1000 / elapsed < minRate) {
+				throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_TIMEOUT, "Request head received too slowly");
+			}
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!hasBuffered() && fill() < 0) {
+			return -1;
+		}
+		return buf[pos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!hasBuffered()) {
+			if (len >= buf.length && !inHead) {
+				// No need to copy large reads through our buffer
+				return in.read(b, off, len);
+			}
+			if (fill() < 0) {
+				return -1;
+			}
+		}
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(buf, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (limit - pos) + in.available();
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
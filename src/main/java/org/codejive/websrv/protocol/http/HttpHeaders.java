@@ -0,0 +1,504 @@
+/*
+ * HttpHeaders.java
+ *
+ * Created on Oct 19, 2026, 2:05:10 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A compact container for HTTP headers. Names and values are kept in flat
+ * arrays in the order they were added and are looked up with a simple
+ * linear scan using a case-insensitive ASCII comparison, for the dozen or
+ * so headers of a typical request this is faster than hashing and it
+ * doesn't need any lower case copies of the names. The original case of
+ * the names is preserved and a name may occur more than once.
+ * Headers read from the network can be added as a complete line, in that
+ * case the most common names are replaced by shared constants and the
+ * value is only cut out of the line when it is actually asked for.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class HttpHeaders {
+
+	/**
+	 * The header names
+	 */
+	private String[] names;
+	/**
+	 * The header values, an entry is null when the value still has to
+	 * be taken from its line
+	 */
+	private String[] values;
+	/**
+	 * The header lines the values should be taken from
+	 * (only for headers that were added using <code>addLine()</code>)
+	 */
+	private String[] lines;
+	/**
+	 * The start and end offsets of the values within their lines
+	 */
+	private int[] bounds;
+	/**
+	 * The number of headers
+	 */
+	private int size;
+
+	/**
+	 * The names of the most common request and response headers
+	 */
+	private static final String[] COMMON_NAMES = {
+		"Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language",
+		"Authorization", "Cache-Control", "Connection", "Content-Encoding",
+		"Content-Length", "Content-Type", "Cookie", "Date", "ETag", "Expect",
+		"Host", "If-Modified-Since", "If-None-Match", "Keep-Alive",
+		"Last-Modified", "Location", "Origin", "Pragma", "Range", "Referer",
+		"Server", "Set-Cookie", "Transfer-Encoding", "Upgrade", "User-Agent"
+	};
+	
+	/**
+	 * The common names grouped by their length for quick lookup
+	 */
+	private static final String[][] COMMON_NAMES_BY_LENGTH;
+
+	static {
+		int maxLength = 0;
+		for (String name : COMMON_NAMES) {
+			maxLength = Math.max(maxLength, name.length());
+		}
+		COMMON_NAMES_BY_LENGTH = new String[maxLength + 1][];
+		for (int len = 0; len <= maxLength; len++) {
+			List<String> group = new ArrayList<String>();
+			for (String name : COMMON_NAMES) {
+				if (name.length() == len) {
+					group.add(name);
+				}
+			}
+			COMMON_NAMES_BY_LENGTH[len] = group.toArray(new String[group.size()]);
+		}
+	}
+
+	/**
+	 * Creates a new empty instance
+	 */
+	public HttpHeaders() {
+		this(16);
+	}
+
+	/**
+	 * Creates a new empty instance with room for the given number of
+	 * headers before it has to grow
+	 * @param capacity The initial capacity
+	 */
+	public HttpHeaders(int capacity) {
+		capacity = Math.max(capacity, 1);
+		names = new String[capacity];
+		values = new String[capacity];
+	}
+
+	/**
+	 * Creates a new instance holding the same headers as the given one
+	 * @param copy The headers to copy
+	 */
+	public HttpHeaders(HttpHeaders copy) {
+		this(copy.size);
+		for (int i = 0; i < copy.size; i++) {
+			add(copy.getName(i), copy.getValue(i));
+		}
+	}
+
+	/**
+	 * Returns the number of headers, repeated names are counted separately
+	 * @return The number of headers
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the name of the header at the given position
+	 * @param index The position of the header
+	 * @return The name of the header
+	 */
+	public String getName(int index) {
+		checkIndex(index);
+		return names[index];
+	}
+
+	/**
+	 * Returns the value of the header at the given position
+	 * @param index The position of the header
+	 * @return The value of the header
+	 */
+	public String getValue(int index) {
+		checkIndex(index);
+		return value(index);
+	}
+
+	/**
+	 * Returns the value of the first header with the given name
+	 * @param name The name of the header, case is ignored
+	 * @return The header's value or null if there is no such header
+	 */
+	public String get(String name) {
+		int idx = indexOf(name, 0);
+		return (idx >= 0) ? value(idx) : null;
+	}
+
+	/**
+	 * Returns the values of all the headers with the given name in
+	 * the order they were added
+	 * @param name The name of the headers, case is ignored
+	 * @return A list of values, empty if there are no such headers
+	 */
+	public List<String> getAll(String name) {
+		int idx = indexOf(name, 0);
+		if (idx < 0) {
+			return Collections.emptyList();
+		}
+		int next = indexOf(name, idx + 1);
+		if (next < 0) {
+			return Collections.singletonList(value(idx));
+		}
+		List<String> result = new ArrayList<String>(4);
+		result.add(value(idx));
+		do {
+			result.add(value(next));
+			next = indexOf(name, next + 1);
+		} while (next >= 0);
+		return result;
+	}
+
+	/**
+	 * Determines if there is at least one header with the given name
+	 * @param name The name of the header, case is ignored
+	 * @return True if the header exists
+	 */
+	public boolean contains(String name) {
+		return indexOf(name, 0) >= 0;
+	}
+
+	/**
+	 * Returns the distinct header names in the order they were first added
+	 * @return A set of header names using their original case
+	 */
+	public Set<String> getNames() {
+		Set<String> result = new LinkedHashSet<String>();
+		for (int i = 0; i < size; i++) {
+			if (indexOf(names[i], 0) == i) {
+				result.add(names[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the value of the header with the given name, replacing any
+	 * existing headers with the same name
+	 * @param name The name of the header
+	 * @param value The value of the header
+	 */
+	public void set(String name, String value) {
+		checkValue(value);
+		int idx = indexOf(name, 0);
+		if (idx >= 0) {
+			names[idx] = name;
+			setValue(idx, value);
+			removeFrom(name, idx + 1);
+		} else {
+			add(name, value);
+		}
+	}
+
+	/**
+	 * Adds a header, keeping any existing headers with the same name
+	 * @param name The name of the header
+	 * @param value The value of the header
+	 */
+	public void add(String name, String value) {
+		checkValue(value);
+		ensureCapacity(size + 1);
+		names[size] = name;
+		values[size] = value;
+		if (lines != null) {
+			lines[size] = null;
+		}
+		size++;
+	}
+
+	/**
+	 * Adds a header by parsing a raw header line of the form
+	 * <code>name: value</code>. Any whitespace around the name and
+	 * value is ignored
+	 * @param line The header line
+	 * @param colon The position of the colon separating name and value
+	 */
+	void addLine(String line, int colon) {
+		int nameStart = skipSpace(line, 0, colon);
+		int nameEnd = trimSpace(line, nameStart, colon);
+		int valueStart = skipSpace(line, colon + 1, line.length());
+		int valueEnd = trimSpace(line, valueStart, line.length());
+		ensureCapacity(size + 1);
+		if (lines == null) {
+			lines = new String[names.length];
+			bounds = new int[names.length * 2];
+		}
+		names[size] = commonName(line, nameStart, nameEnd);
+		values[size] = null;
+		lines[size] = line;
+		bounds[size * 2] = valueStart;
+		bounds[size * 2 + 1] = valueEnd;
+		size++;
+	}
+
+	/**
+	 * Removes all headers with the given name
+	 * @param name The name of the header, case is ignored
+	 */
+	public void remove(String name) {
+		removeFrom(name, 0);
+	}
+
+	/**
+	 * Removes all headers
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			names[i] = null;
+			values[i] = null;
+			if (lines != null) {
+				lines[i] = null;
+			}
+		}
+		size = 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			result.append(names[i]).append(": ").append(value(i)).append("\r\n");
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Compares two header names ignoring the case of any ASCII letters,
+	 * which is all that is allowed in header names anyway
+	 * @param a A header name
+	 * @param b Another header name
+	 * @return True if both names are considered equal
+	 */
+	public static boolean equalsName(String a, String b) {
+		if (a == b) {
+			return true;
+		}
+		int len = a.length();
+		if (len != b.length()) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			char ca = a.charAt(i);
+			char cb = b.charAt(i);
+			if (ca != cb && toLower(ca) != toLower(cb)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the position of the first header with the given name at
+	 * or after the given position
+	 * @param name The name to look for
+	 * @param from The position to start looking
+	 * @return The position of the header or -1 if it wasn't found
+	 */
+	private int indexOf(String name, int from) {
+		for (int i = from; i < size; i++) {
+			if (equalsName(names[i], name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value at the given position, cutting it from its
+	 * header line if that hasn't happened yet
+	 * @param index The position of the header
+	 * @return The value of the header
+	 */
+	private String value(int index) {
+		String value = values[index];
+		if (value == null) {
+			value = lines[index].substring(bounds[index * 2], bounds[index * 2 + 1]);
+			values[index] = value;
+			lines[index] = null;
+		}
+		return value;
+	}
+
+	/**
+	 * Replaces the value at the given position
+	 * @param index The position of the header
+	 * @param value The new value
+	 */
+	private void setValue(int index, String value) {
+		values[index] = value;
+		if (lines != null) {
+			lines[index] = null;
+		}
+	}
+
+	/**
+	 * Removes all headers with the given name at or after the given position
+	 * @param name The name of the headers, case is ignored
+	 * @param from The position to start at
+	 */
+	private void removeFrom(String name, int from) {
+		int dst = from;
+		for (int src = from; src < size; src++) {
+			if (!equalsName(names[src], name)) {
+				if (dst != src) {
+					names[dst] = names[src];
+					values[dst] = values[src];
+					if (lines != null) {
+						lines[dst] = lines[src];
+						bounds[dst * 2] = bounds[src * 2];
+						bounds[dst * 2 + 1] = bounds[src * 2 + 1];
+					}
+				}
+				dst++;
+			}
+		}
+		for (int i = dst; i < size; i++) {
+			names[i] = null;
+			values[i] = null;
+			if (lines != null) {
+				lines[i] = null;
+			}
+		}
+		size = dst;
+	}
+
+	/**
+	 * Makes sure the arrays can hold at least the given number of headers
+	 * @param capacity The required capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > names.length) {
+			int newLength = Math.max(capacity, names.length * 2);
+			String[] newNames = new String[newLength];
+			System.arraycopy(names, 0, newNames, 0, size);
+			names = newNames;
+			String[] newValues = new String[newLength];
+			System.arraycopy(values, 0, newValues, 0, size);
+			values = newValues;
+			if (lines != null) {
+				String[] newLines = new String[newLength];
+				System.arraycopy(lines, 0, newLines, 0, size);
+				lines = newLines;
+				int[] newBounds = new int[newLength * 2];
+				System.arraycopy(bounds, 0, newBounds, 0, size * 2);
+				bounds = newBounds;
+			}
+		}
+	}
+
+	/**
+	 * Throws an exception if the given position doesn't hold a header
+	 * @param index The position to check
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	/**
+	 * Throws an exception if the given value is null
+	 * @param value The value to check
+	 */
+	private static void checkValue(String value) {
+		if (value == null) {
+			throw new NullPointerException("Header values can't be null");
+		}
+	}
+
+	/**
+	 * Returns the name found in the given part of a header line, using
+	 * one of the shared constants if the name is a common one written
+	 * in its usual case
+	 * @param line The header line
+	 * @param start The start of the name
+	 * @param end The end of the name
+	 * @return The header name
+	 */
+	private static String commonName(String line, int start, int end) {
+		int len = end - start;
+		if (len < COMMON_NAMES_BY_LENGTH.length) {
+			for (String name : COMMON_NAMES_BY_LENGTH[len]) {
+				if (line.startsWith(name, start)) {
+					return name;
+				}
+			}
+		}
+		return line.substring(start, end);
+	}
+
+	/**
+	 * Returns the position of the first non-whitespace character
+	 */
+	private static int skipSpace(String s, int start, int end) {
+		while (start < end && isSpace(s.charAt(start))) {
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the position just after the last non-whitespace character
+	 */
+	private static int trimSpace(String s, int start, int end) {
+		while (end > start && isSpace(s.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * Determines if the given character counts as whitespace
+	 */
+	private static boolean isSpace(char c) {
+		return c <= ' ';
+	}
+
+	/**
+	 * Turns an ASCII upper case letter into lower case
+	 */
+	private static char toLower(char c) {
+		return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+	}
+}
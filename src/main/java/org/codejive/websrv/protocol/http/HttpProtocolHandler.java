@@ -24,23 +24,38 @@ package org.codejive.websrv.protocol.http;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocket;
+import org.codejive.websrv.accesslog.AccessLog;
 import org.codejive.websrv.protocol.*;
+import org.codejive.websrv.protocol.http.form.FormDataException;
+import org.codejive.websrv.protocol.http.form.FormParser;
+import org.codejive.websrv.protocol.http2.Http2Connection;
+import org.codejive.websrv.protocol.http2.Http2Settings;
+import org.codejive.websrv.tls.SSLEngineSocket;
 
 /**
  * This is a handler that implements the HTTP protocol. While it handles all
  * communication and parsing of client requests it leaves the actual generation
- * of responses to a ResponseHandler
+ * of responses to a ResponseHandler. Connections that switch to another
+ * protocol, either HTTP/2 when it's enabled or one that a response handler
+ * agreed to by setting a ConnectionUpgrade on its response, are handed
+ * over to an UpgradedConnection. When the handler is asked to drain its
+ * connection the response to the request it's handling gets a
+ * "Connection: close" header, a connection that's waiting for its
+ * next request gets closed and an upgraded connection is asked to
+ * end itself
  * @author Tako Schotanus &lt;tako AT codejive.org&gt;
  */
-public class HttpProtocolHandler implements ProtocolHandler {
+public class HttpProtocolHandler implements ParkableProtocolHandler, DrainableProtocolHandler {
 
 	/**
 	 * The reponse handler used to generate output
@@ -64,7 +79,114 @@ public class HttpProtocolHandler implements ProtocolHandler {
 	 */
 	private int keepAliveMaxRequests;
 	
-	private static final String CRLF = "\r\n";
+	/**
+	 * Disable Nagle's algorithm on the connection (default = true)
+	 */
+	private boolean tcpNoDelay;
+	
+	/**
+	 * The access log to record the handled requests in or null
+	 */
+	private AccessLog accessLog;
+	
+	/**
+	 * The limits that incoming requests must stay within
+	 */
+	private HttpRequestLimits requestLimits;
+	
+	/**
+	 * The parser used for form submissions or null
+	 */
+	private FormParser formParser;
+	
+	/**
+	 * The buffered input of the connection, it is kept for as long as
+	 * the connection stays open
+	 */
+	private HttpConnectionInput input;
+	
+	/**
+	 * The request object, it is reused for all requests on the connection
+	 */
+	private HttpRequestImpl request;
+	
+	/**
+	 * The response object, it is reused for all responses on the connection
+	 */
+	private HttpResponseImpl response;
+	
+	/**
+	 * Indicates if we can return from <code>run()</code> while leaving
+	 * an idle keep-alive connection open
+	 */
+	private boolean parkable;
+	
+	/**
+	 * The number of requests handled on this connection so far
+	 */
+	private int requestCount;
+	
+	/**
+	 * Indicates if the last call to <code>run()</code> left the
+	 * connection open
+	 */
+	private boolean idle;
+	
+	/**
+	 * Indicates that the connection must be closed once the current
+	 * request, if any, has been handled. Guarded by <code>this</code>
+	 */
+	private boolean draining;
+	
+	/**
+	 * Indicates that the connection is waiting for its next request,
+	 * in which case it can be closed without losing anything.
+	 * Guarded by <code>this</code>
+	 */
+	private boolean waiting;
+	
+	/**
+	 * The settings announced to HTTP/2 clients or null if HTTP/2 is disabled
+	 */
+	private Http2Settings http2Settings;
+	
+	/**
+	 * The executor that will run the streams of HTTP/2 connections
+	 */
+	private Executor executor;
+	
+	/**
+	 * The connection that took over once the client switched protocols.
+	 * It's set while holding the lock of <code>this</code> so that
+	 * <code>drain()</code> will see it
+	 */
+	private UpgradedConnection upgraded;
+	
+	/**
+	 * Makes the connection get served again when it's parked
+	 */
+	private Runnable resumeTrigger;
+	
+	/**
+	 * The maximum number of unread request body bytes we're willing to
+	 * skip to be able to keep a connection alive
+	 */
+	private static final long MAX_DRAIN_SIZE = 1024 * 1024;
+	
+	
+	/**
+	 * The pre-encoded responses sent to clients that exceed one
+	 * of the request limits
+	 */
+	private static final byte[] REQUEST_TIMEOUT_RESPONSE = HttpResponseImpl.createErrorResponse(HttpResponseCode.CODE_REQUEST_TIMEOUT);
+	private static final byte[] REQUEST_ENTITY_TOO_LARGE_RESPONSE = HttpResponseImpl.createErrorResponse(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE);
+	private static final byte[] REQUEST_URI_TOO_LARGE_RESPONSE = HttpResponseImpl.createErrorResponse(HttpResponseCode.CODE_REQUEST_URI_TOO_LARGE);
+	private static final byte[] HEADER_FIELDS_TOO_LARGE_RESPONSE = HttpResponseImpl.createErrorResponse(HttpResponseCode.CODE_REQUEST_HEADER_FIELDS_TOO_LARGE);
+	
+	/**
+	 * The response accepting a client's request to upgrade to HTTP/2
+	 */
+	private static final byte[] SWITCHING_PROTOCOLS_RESPONSE = "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes();
 	
 	/**
 	 * Class private logger
@@ -79,6 +201,8 @@ public class HttpProtocolHandler implements ProtocolHandler {
 		this.responseHandler = responseHandler;
 		keepAliveTimeout = 10000;
 		keepAliveMaxRequests = -1;
+		tcpNoDelay = true;
+		requestLimits = new HttpRequestLimits();
 	}
 
 	public void setSocket(Socket socket) {
@@ -121,138 +245,594 @@ public class HttpProtocolHandler implements ProtocolHandler {
 		this.keepAliveMaxRequests = keepAliveMaxRequests;
 	}
 
+	/**
+	 * Returns if Nagle's algorithm will be disabled on the connection
+	 * @return <code>true</code> if TCP_NODELAY will be set
+	 */
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	/**
+	 * Sets if Nagle's algorithm will be disabled on the connection
+	 * @param tcpNoDelay <code>true</code> if TCP_NODELAY should be set
+	 */
+	public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+
+	/**
+	 * Returns the access log that handled requests will be recorded in
+	 * @return The access log or null if requests are not being logged
+	 */
+	public AccessLog getAccessLog() {
+		return accessLog;
+	}
+
+	/**
+	 * Sets the access log that handled requests will be recorded in
+	 * @param accessLog The access log or null to disable logging
+	 */
+	public void setAccessLog(AccessLog accessLog) {
+		this.accessLog = accessLog;
+	}
+
+	/**
+	 * Returns the limits that incoming requests must stay within
+	 * @return The request limits
+	 */
+	public HttpRequestLimits getRequestLimits() {
+		return requestLimits;
+	}
+
+	/**
+	 * Sets the limits that incoming requests must stay within
+	 * @param requestLimits The request limits
+	 */
+	public void setRequestLimits(HttpRequestLimits requestLimits) {
+		this.requestLimits = requestLimits;
+	}
+
+	/**
+	 * Returns the parser that will be used for form submissions
+	 * @return The form parser or null
+	 */
+	public FormParser getFormParser() {
+		return formParser;
+	}
+
+	/**
+	 * Sets the parser that will be used for form submissions. Without
+	 * a parser only query string parameters will be available
+	 * @param formParser The form parser or null
+	 */
+	public void setFormParser(FormParser formParser) {
+		this.formParser = formParser;
+	}
+
+	/**
+	 * Enables HTTP/2 for the connection
+	 * @param http2Settings The settings to announce to HTTP/2 clients
+	 * or null to disable HTTP/2
+	 * @param executor The executor that will run the HTTP/2 streams
+	 */
+	public void setHttp2(Http2Settings http2Settings, Executor executor) {
+		this.http2Settings = http2Settings;
+		this.executor = executor;
+	}
+
+	public void setParkable(boolean parkable) {
+		this.parkable = parkable;
+	}
+
+	public void setResumeTrigger(Runnable trigger) {
+		this.resumeTrigger = trigger;
+	}
+
+	public int getIdleTimeout() {
+		if (!idle) {
+			return -1;
+		}
+		return (upgraded != null) ? upgraded.getIdleTimeout() : keepAliveTimeout;
+	}
+
+	public boolean idleTimeoutReached() {
+		return (upgraded != null) && upgraded.idleTimeoutReached();
+	}
+
+	public void drain() {
+		UpgradedConnection connection;
+		synchronized (this) {
+			draining = true;
+			connection = upgraded;
+			if (connection == null) {
+				if (waiting) {
+					// Makes the handler see the end of the input, whether it's
+					// waiting for data itself or the connection is parked
+					try {
+						socket.shutdownInput();
+					} catch (IOException ex) {
+						// The connection is going away anyway
+					}
+				} else if (response != null) {
+					response.closeConnection();
+				}
+				return;
+			}
+		}
+		connection.drain();
+		// A parked connection must be served to be able to end itself
+		if (resumeTrigger != null) {
+			resumeTrigger.run();
+		}
+	}
+
+	/**
+	 * Hands the connection over to the one that took over after the client
+	 * switched protocols. If the handler is being drained already the new
+	 * connection is asked to end itself right away
+	 * @param connection The connection that took over
+	 */
+	private void setUpgraded(UpgradedConnection connection) {
+		boolean drain;
+		synchronized (this) {
+			upgraded = connection;
+			drain = draining;
+		}
+		if (drain) {
+			connection.drain();
+		}
+	}
+
+	/**
+	 * Marks the connection as waiting for its next request, unless it's
+	 * being drained in which case it should be closed instead
+	 * @return <code>true</code> if the connection can be kept alive
+	 */
+	private synchronized boolean awaitNextRequest() {
+		waiting = !draining;
+		return waiting;
+	}
+
+	/**
+	 * Marks the start of a new request on the connection
+	 * @return <code>true</code> if the connection must be closed after
+	 * the request has been handled
+	 */
+	private synchronized boolean startRequest() {
+		waiting = false;
+		return draining;
+	}
+
 	/**
 	 * In this method the actual steps of parsing a request ang generating
 	 * a response are performed. Depending on Keep-Alive settings this
-	 * method can handle one or many requests
+	 * method can handle one or many requests. When the handler is parkable
+	 * it will return as soon as the connection becomes idle between
+	 * requests, leaving it open, and it will continue where it left off
+	 * the next time it gets called
 	 */
 	public void run() {
-		String socketInfo = socket.toString();
-		logger.info("Starting HTTP protocol handler for " + socketInfo);
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine((idle ? "Resuming" : "Starting") + " HTTP protocol handler for " + socket);
+		}
 
+		idle = false;
 		try {
-			int requestCount = 0;
     		boolean keepAlive = false;
             int maxRequests = keepAliveMaxRequests;
-			do {
-                HttpResponseImpl response = new HttpResponseImpl(socket.getOutputStream());
-                try {
-					socket.setSoTimeout(keepAliveTimeout);
+			// The channel of a secure socket carries encrypted data so
+			// we can only write to it using the socket's own stream
+			boolean secure = socket instanceof SSLSocket;
+			// On a secure connection the client may have asked for HTTP/2
+			// during the handshake, the connection starts out using it
+			if (input == null && http2Settings != null && socket instanceof SSLEngineSocket) {
+				startNegotiatedHttp2((SSLEngineSocket) socket);
+			}
+			if (upgraded == null) {
+				do {
+					if (response == null) {
+						socket.setTcpNoDelay(tcpNoDelay);
+						response = new HttpResponseImpl(socket.getOutputStream(), secure ? null : socket.getChannel());
+						request = new HttpRequestImpl();
+					} else {
+						response.recycle();
+						request.recycle();
+					}
+					request.setSecure(secure);
+					request.setRemoteAddress(socket.getInetAddress());
+					HttpRequestImpl parsedRequest = null;
+					HttpRequestBody body = null;
+					long requestTime = 0;
+					HttpResponseCode limitCode = null;
+	                try {
+						socket.setSoTimeout(keepAliveTimeout);
 
-					LineNumberReader in = new LineNumberReader(new InputStreamReader(socket.getInputStream()));
+						if (input == null) {
+							input = new HttpConnectionInput(socket, requestLimits);
+						}
+						input.startHead();
 
-					HttpRequestImpl request = parseRequest(in);
+						parsedRequest = parseRequest(input, request);
+						requestTime = System.currentTimeMillis();
+						boolean lastRequest = startRequest();
 					
-					boolean useHttp11 = "HTTP/1.1".equalsIgnoreCase(request.getRequestProtocol());
-					if (useHttp11 && "100-continue".equalsIgnoreCase(request.getHeader("Expect"))) {
-						// Generate the CONTINUE response before going on to generate
-						// the actual response
-						generateContinue(request, new HttpResponseImpl(socket.getOutputStream()));
-					}
+						if (http2Settings != null && isHttp2Preface(request)) {
+							startPriorKnowledgeHttp2();
+							requestTime = 0;
+							break;
+						}
 					
-                    parseRequestHeaders(in, request);
+						boolean useHttp11 = "HTTP/1.1".equalsIgnoreCase(request.getRequestProtocol());
 					
-					keepAlive = useHttp11
-							|| "Keep-Alive".equalsIgnoreCase(request.getHeader("Connection"))
-							|| (maxRequests > 0);
-					if (keepAlive) {
-                        if ((maxRequests >= 0) && (requestCount >= maxRequests)) {
-                            logger.info("Connection keep-alive maximum requests reached");
-                            keepAlive = false;
-                        }
-					}
-					if (keepAlive) {
-						response.setHeader("Connection", "Keep-Alive");
-					} else {
-						response.setHeader("Connection", "close");
-					}
+	                    parseRequestHeaders(input, request);
+						input.endHead();
 					
-					// For HTTP/1.1 make sure the Host header is present (as required by the spec)
-					if (useHttp11 && request.getHeader("Host") == null) {
-						generateErrorResponse(HttpResponseCode.CODE_BAD_REQUEST, "No Host: header received", response);
-					}
+						if (http2Settings != null && !secure && isHttp2Upgrade(request)) {
+							upgradeToHttp2(request);
+							requestTime = 0;
+							break;
+						}
+					
+						body = createRequestBody(request, useHttp11);
+						request.setInputStream(body);
+						request.setFormParser(formParser);
 					
-                    generateResponse(request, response);
+						String connection = request.getHeader("Connection");
+						keepAlive = (useHttp11 && !"close".equalsIgnoreCase(connection))
+								|| "Keep-Alive".equalsIgnoreCase(connection)
+								|| (maxRequests > 0);
+						if (keepAlive) {
+	                        if ((maxRequests >= 0) && (requestCount >= maxRequests)) {
+	                            logger.fine("Connection keep-alive maximum requests reached");
+	                            keepAlive = false;
+	                        }
+						}
+						if (keepAlive && lastRequest) {
+							logger.fine("Connection is being drained");
+							keepAlive = false;
+						}
+						if (keepAlive) {
+							response.setHeader("Connection", "Keep-Alive");
+						} else {
+							response.setHeader("Connection", "close");
+						}
+					
+						// For HTTP/1.1 make sure the Host header is present (as required by the spec)
+						if (useHttp11 && request.getHeader("Host") == null) {
+							generateErrorResponse(HttpResponseCode.CODE_BAD_REQUEST, "No Host: header received", response);
+						}
+					
+	                    generateResponse(request, response);
 					
-					requestCount++;
-                } catch (EOFException ex) {
-                    logger.info("End of input was reached");
-                    keepAlive = false;
-                } catch (SocketTimeoutException ex) {
-                    logger.info("Connection keep-alive timeout reached");
-                    keepAlive = false;
-                } catch (PrematureEOFException ex) {
-                    logger.info("Processing of output was forcibly interrupted");
-					requestCount++;
-                } catch (MalformedRequestException ex) {
-                    generateErrorResponse(HttpResponseCode.CODE_BAD_REQUEST, ex.getMessage(), response);
-                    keepAlive = false;
-                } catch (Exception ex) {
-                    generateErrorResponse(HttpResponseCode.CODE_INTERNAL_SERVER_ERROR, ex, response);
-                    logger.log(Level.SEVERE, "500 Internal Server Error", ex);
-                    keepAlive = false;
-                } finally {
-					if (response.isCommitted()) {
-						try {
-							response.getOutputStream().close();
-						} catch (IOException ex) {
-		                    logger.log(Level.WARNING, "Could not properly close response output stream", ex);
+						requestCount++;
+	                } catch (EOFException ex) {
+	                    logger.fine("End of input was reached");
+	                    keepAlive = false;
+	                } catch (SocketTimeoutException ex) {
+	                    logger.fine("Connection keep-alive timeout reached");
+	                    keepAlive = false;
+	                } catch (PrematureEOFException ex) {
+	                    logger.fine("Processing of output was forcibly interrupted");
+						requestCount++;
+	                } catch (RequestLimitException ex) {
+						requestTime = System.currentTimeMillis();
+						logger.fine(ex.getMessage());
+						if (!response.isCommitted()) {
+							limitCode = ex.getResponseCode();
+							sendLimitResponse(limitCode);
+						}
+	                    keepAlive = false;
+	                } catch (MalformedRequestException ex) {
+						requestTime = System.currentTimeMillis();
+	                    sendFailure(HttpResponseCode.CODE_BAD_REQUEST, ex.getMessage(), response);
+	                    keepAlive = false;
+	                } catch (Exception ex) {
+	                    logger.log(Level.SEVERE, "500 Internal Server Error", ex);
+	                    sendFailure(HttpResponseCode.CODE_INTERNAL_SERVER_ERROR, ex.toString(), response);
+	                    keepAlive = false;
+	                } finally {
+						// A response that hands the connection over doesn't end here
+						if (response.isCommitted() && !isHandedOver(response)) {
+							try {
+								response.getOutputStream().close();
+							} catch (IOException ex) {
+			                    logger.log(Level.WARNING, "Could not properly close response output stream", ex);
+							}
+						}
+						request.dispose();
+						if (accessLog != null && requestTime != 0) {
+							if (limitCode != null) {
+								accessLog.log(requestTime, socket.getInetAddress(), parsedRequest, limitCode.getCode(), HttpResponseImpl.createErrorBody(limitCode).length());
+							} else {
+								accessLog.log(requestTime, socket.getInetAddress(), parsedRequest, response.getResponseCode().getCode(), response.getBytesWritten());
+							}
 						}
 					}
-				}
 
-                // Maybe the response handler set the Connection to "close"?
-                keepAlive = keepAlive && response.getHeader("Connection").equalsIgnoreCase("Keep-Alive");
-			} while (keepAlive && !socket.isClosed());
-            logger.info("Handled " + requestCount + " request(s) during this connection");
+					// Did the response handler agree to switch protocols
+					// or does it want to keep streaming the response?
+					if (isHandedOver(response) && !socket.isClosed()) {
+						logger.fine("Handing over connection " + socket);
+						// Make sure the head of the response went out
+						response.getOutputStream().flush();
+						setUpgraded(response.getUpgrade().upgrade(socket, input, resumeTrigger));
+						break;
+					}
+
+	                // Maybe the response handler set the Connection to "close"?
+	                keepAlive = keepAlive && response.getHeader("Connection").equalsIgnoreCase("Keep-Alive");
+
+					// Skip any part of the body that wasn't read so the next request can be parsed
+					keepAlive = keepAlive && drainRequestBody(body);
+
+					// Unless we were asked to close the connection in the mean time
+					keepAlive = keepAlive && awaitNextRequest();
+
+					// Give up our thread if the client hasn't sent anything yet
+					idle = keepAlive && parkable && !socket.isClosed() && !hasPendingInput();
+				} while (keepAlive && !idle && !socket.isClosed());
+			}
+			if (upgraded != null) {
+				idle = upgraded.serve(parkable);
+			} else if (!idle && logger.isLoggable(Level.FINE)) {
+				logger.fine("Handled " + requestCount + " request(s) during this connection");
+			}
+		} catch (SSLException ex) {
+			idle = false;
+			logger.fine("Secure connection failed: " + ex.getMessage());
 		} catch (IOException ex) {
+			idle = false;
 			logger.log(Level.SEVERE, null, ex);
 		} finally {
-			try {
-				socket.close();
-			} catch (IOException ex) {
-				// Ignore
+			// Don't hold on to any request data or buffers while we're not
+			// actively handling a request
+			if (request != null) {
+				request.recycle();
+				response.release();
+			}
+			if (!idle) {
+				try {
+					socket.close();
+				} catch (IOException ex) {
+					// Ignore
+				}
+			}
+		}
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine((idle ? "Parking" : "Exiting") + " HTTP protocol handler for " + socket);
+		}
+	}
+
+	/**
+	 * Determines if the connection will be handed over to the upgrade
+	 * set on the response, which only happens for successful responses
+	 * @param response The response to check
+	 * @return <code>true</code> if the connection will be handed over
+	 */
+	private boolean isHandedOver(HttpResponse response) {
+		return response.getUpgrade() != null && response.getResponseCode().getCode() < 300;
+	}
+
+	/**
+	 * Performs the TLS handshake and switches to HTTP/2 if that's the
+	 * protocol the client and server agreed on during the handshake
+	 * @param sslSocket The secure socket of the connection
+	 * @throws java.io.IOException If the handshake failed or if HTTP/2
+	 * could not be started
+	 */
+	private void startNegotiatedHttp2(SSLEngineSocket sslSocket) throws IOException {
+		sslSocket.setSoTimeout(keepAliveTimeout);
+		sslSocket.startHandshake();
+		if ("h2".equals(sslSocket.getApplicationProtocol())) {
+			input = new HttpConnectionInput(sslSocket, requestLimits);
+			Http2Connection http2 = createHttp2Connection();
+			http2.start(true);
+			setUpgraded(http2);
+		}
+	}
+
+	/**
+	 * Determines if the request is the start of the HTTP/2 connection
+	 * preface, which clients that know the server supports HTTP/2 send
+	 * right away. It looks like a request with "PRI" as its method
+	 * @param request The request to check
+	 * @return <code>true</code> if it's the connection preface
+	 */
+	private boolean isHttp2Preface(HttpRequest request) {
+		return "PRI".equals(request.getRequestMethod())
+				&& "HTTP/2.0".equals(request.getRequestProtocol())
+				&& "*".equals(request.getUrl());
+	}
+
+	/**
+	 * Reads the rest of the HTTP/2 connection preface and switches
+	 * to HTTP/2
+	 * @throws java.io.IOException If the preface is incorrect or if
+	 * HTTP/2 could not be started
+	 */
+	private void startPriorKnowledgeHttp2() throws IOException {
+		if (!"".equals(input.readHeadLine(2, HttpResponseCode.CODE_BAD_REQUEST))
+				|| !"SM".equals(input.readHeadLine(2, HttpResponseCode.CODE_BAD_REQUEST))
+				|| !"".equals(input.readHeadLine(2, HttpResponseCode.CODE_BAD_REQUEST))) {
+			throw new MalformedRequestException("Malformed HTTP/2 connection preface");
+		}
+		input.endHead();
+		Http2Connection http2 = createHttp2Connection();
+		http2.start(false);
+		setUpgraded(http2);
+	}
+
+	/**
+	 * Determines if the client asks to upgrade the connection to HTTP/2.
+	 * Only requests without a body are upgraded, otherwise the body
+	 * would have to be read before the server could switch
+	 * @param request The request to check
+	 * @return <code>true</code> if the connection should be upgraded
+	 */
+	private boolean isHttp2Upgrade(HttpRequest request) {
+		if (!"HTTP/1.1".equalsIgnoreCase(request.getRequestProtocol())) {
+			return false;
+		}
+		String upgrade = request.getHeader("Upgrade");
+		String connection = request.getHeader("Connection");
+		List<String> settings = request.getHeaders("HTTP2-Settings");
+		if (upgrade == null || connection == null || settings == null || settings.size() != 1) {
+			return false;
+		}
+		if (!hasToken(upgrade, "h2c") || !hasToken(connection, "Upgrade") || !hasToken(connection, "HTTP2-Settings")) {
+			return false;
+		}
+		String length = request.getHeader("Content-Length");
+		return request.getHeader("Transfer-Encoding") == null
+				&& (length == null || "0".equals(length.trim()));
+	}
+
+	/**
+	 * Determines if a comma separated header value contains the given token
+	 * @param value The header value
+	 * @param token The token to look for, case is ignored
+	 * @return <code>true</code> if the token was found
+	 */
+	private static boolean hasToken(String value, String token) {
+		for (String part : value.split(",")) {
+			if (part.trim().equalsIgnoreCase(token)) {
+				return true;
 			}
 		}
+		return false;
+	}
+
+	/**
+	 * Accepts the client's request to upgrade to HTTP/2, the request
+	 * itself will be answered using HTTP/2
+	 * @param request The request asking for the upgrade
+	 * @throws java.io.IOException If the response could not be sent or
+	 * if HTTP/2 could not be started
+	 */
+	private void upgradeToHttp2(HttpRequestImpl request) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		out.write(SWITCHING_PROTOCOLS_RESPONSE);
+		out.flush();
+		Http2Connection http2 = createHttp2Connection();
+		http2.startUpgrade(request, request.getHeader("HTTP2-Settings"));
+		setUpgraded(http2);
+	}
+
+	/**
+	 * Creates the HTTP/2 connection that will take over the connection,
+	 * using the same settings and limits as this handler
+	 * @return The HTTP/2 connection
+	 * @throws java.io.IOException If the connection could not be created
+	 */
+	private Http2Connection createHttp2Connection() throws IOException {
+		logger.fine("Switching to HTTP/2 for " + socket);
+		socket.setTcpNoDelay(tcpNoDelay);
+		Http2Connection connection = new Http2Connection(socket, input, responseHandler, executor, http2Settings);
+		connection.setRequestLimits(requestLimits);
+		connection.setFormParser(formParser);
+		connection.setAccessLog(accessLog);
+		connection.setKeepAliveTimeout(keepAliveTimeout);
+		connection.setSecure(socket instanceof SSLSocket);
+		return connection;
+	}
 
-		logger.info("Exiting HTTP protocol handler for " + socketInfo);
+	/**
+	 * Determines if the client already sent more data
+	 * @return <code>true</code> if data can be read without blocking
+	 * @throws java.io.IOException If the socket could not be queried
+	 */
+	private boolean hasPendingInput() throws IOException {
+		return input.hasBuffered() || socket.getInputStream().available() > 0;
+	}
+
+	/**
+	 * Sends the pre-encoded response for a client that exceeded one of
+	 * the request limits. We don't bother with the normal response
+	 * handling because the connection will be closed right after anyway
+	 * @param code The response code to send
+	 */
+	private void sendLimitResponse(HttpResponseCode code) {
+		byte[] data;
+		switch (code) {
+			case CODE_REQUEST_TIMEOUT:
+				data = REQUEST_TIMEOUT_RESPONSE;
+				break;
+			case CODE_REQUEST_ENTITY_TOO_LARGE:
+				data = REQUEST_ENTITY_TOO_LARGE_RESPONSE;
+				break;
+			case CODE_REQUEST_URI_TOO_LARGE:
+				data = REQUEST_URI_TOO_LARGE_RESPONSE;
+				break;
+			case CODE_REQUEST_HEADER_FIELDS_TOO_LARGE:
+				data = HEADER_FIELDS_TOO_LARGE_RESPONSE;
+				break;
+			default:
+				data = HttpResponseImpl.createErrorResponse(code);
+				break;
+		}
+		try {
+			OutputStream out = socket.getOutputStream();
+			out.write(data);
+			out.flush();
+		} catch (IOException ex) {
+			logger.fine("Could not send " + code + " response: " + ex.getMessage());
+		}
 	}
 
 	/**
 	 * Parses the incoming client request constructing an HttpRequest
 	 * object with the information retrieved from the incoming data stream
-	 * @param inStream The incoming data stream containing the client request
+	 * @param in The incoming data stream containing the client request
 	 * @return A newly created HttpRequest object
 	 * @throws java.io.IOException Will be trhown if the incoming data could
-	 * not be read or parsed correctly
+	 * not be read or parsed correctly or if it exceeds the request limits
+	 */
+	HttpRequestImpl parseRequest(HttpConnectionInput in) throws IOException {
+		return parseRequest(in, new HttpRequestImpl());
+	}
+
+	/**
+	 * Parses the incoming client request storing the information retrieved
+	 * from the incoming data stream in the given (empty) request object
+	 * @param in The incoming data stream containing the client request
+	 * @param request The request object to store the information in
+	 * @return The request object that was passed
+	 * @throws java.io.IOException Will be trhown if the incoming data could
+	 * not be read or parsed correctly or if it exceeds the request limits
 	 */
-	private HttpRequestImpl parseRequest(LineNumberReader in) throws IOException {
-		HttpRequestImpl request = new HttpRequestImpl();
+	HttpRequestImpl parseRequest(HttpConnectionInput in, HttpRequestImpl request) throws IOException {
+		int maxLength = in.getLimits().getMaxRequestLineLength();
 
 		// Read a non-empty line
 		// Skipping empty lines is not according to the spec
 		// but it helps compatibilty with certain browsers
 		String requestText;
 		do {
-			requestText = in.readLine();
+			requestText = in.readHeadLine(maxLength, HttpResponseCode.CODE_REQUEST_URI_TOO_LARGE);
 		} while ((requestText != null) && (requestText.length() == 0));
 
 		if (requestText == null) {
 			throw new EOFException("End of input reached");
 		}
-		logger.info("REQUEST: " + requestText);
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("REQUEST: " + requestText);
+		}
 
-		String[] reqParts = requestText.split(" ");
-		if (reqParts.length != 3) {
+		int sp1 = requestText.indexOf(' ');
+		int sp2 = (sp1 > 0) ? requestText.indexOf(' ', sp1 + 1) : -1;
+		if (sp2 <= sp1 + 1 || sp2 == requestText.length() - 1 || requestText.indexOf(' ', sp2 + 1) >= 0) {
 			throw new MalformedRequestException("Malformed request: " + requestText);
 		}
 
-		request.setRequestMethod(reqParts[0]);
-		request.setRequestProtocol(reqParts[2]);
+		String uri = requestText.substring(sp1 + 1, sp2);
+		request.setRequestMethod(requestText.substring(0, sp1));
+		request.setRequestProtocol(requestText.substring(sp2 + 1));
 		try {
-			request.parseUrl(reqParts[1]);
+			request.parseUrl(uri);
 		} catch (URISyntaxException ex) {
-			throw new MalformedRequestException("Malformed request URI: " + reqParts[1]);
+			throw new MalformedRequestException("Malformed request URI: " + uri);
 		}
 
 		return request;
@@ -260,49 +840,111 @@ public class HttpProtocolHandler implements ProtocolHandler {
 
 	/**
 	 * Parses the incoming request headers storing them in the given request object
-	 * @param inStream The incoming data stream containing the client request
+	 * @param in The incoming data stream containing the client request
 	 * @param request The request object to store the headers in
 	 * @return A newly created HttpRequest object
 	 * @throws java.io.IOException Will be trhown if the incoming data could
-	 * not be read or parsed correctly
+	 * not be read or parsed correctly or if it exceeds the request limits
 	 */
-	private HttpRequest parseRequestHeaders(LineNumberReader in, HttpRequestImpl request) throws IOException {
+	HttpRequest parseRequestHeaders(HttpConnectionInput in, HttpRequestImpl request) throws IOException {
+		HttpRequestLimits limits = in.getLimits();
+		int maxSize = limits.getMaxHeaderSize();
+		int maxCount = limits.getMaxHeaderCount();
+		int count = 0;
 		String requestText;
-		while (((requestText = in.readLine()) != null) && (requestText.length() > 0)) {
-			String[] paramParts = requestText.split(":", 2);
-			if (paramParts.length != 2) {
+		while (((requestText = in.readHeadLine(maxSize, HttpResponseCode.CODE_REQUEST_HEADER_FIELDS_TOO_LARGE)) != null) && (requestText.length() > 0)) {
+			if (maxCount > 0 && ++count > maxCount) {
+				throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_HEADER_FIELDS_TOO_LARGE, "Too many request headers");
+			}
+			int colon = requestText.indexOf(':');
+			if (colon < 0) {
 				throw new MalformedRequestException("Malformed request header: " + requestText);
 			}
-			request.setHeader(paramParts[0].trim(), paramParts[1].trim());
+			request.addHeaderLine(requestText, colon);
 		}
 
 		return request;
 	}
 
 	/**
-	 * Generates a response for the client
+	 * Generates a response for the client. When the form submission in
+	 * the request body could not be parsed the error is thrown, even if
+	 * the response handler caught it, so the client gets told about it
 	 * @param request A request object
 	 * @param response A response object
 	 * @throws java.io.IOException Will be thrown when the response could not be generated
 	 */
-	private void generateResponse(HttpRequest request, HttpResponse response) throws IOException {
+	private void generateResponse(HttpRequestImpl request, HttpResponse response) throws IOException {
 		response.setResponseCode(HttpResponseCode.CODE_OK);
-        responseHandler.handleResponse(request, response);
+		try {
+	        responseHandler.handleResponse(request, response);
+		} catch (FormDataException ex) {
+			throw ex.getCause();
+		}
+		request.checkFormData();
 	}
 
 	/**
-	 * Generates a "100 CONTINUE" response for the client
-	 * @param request A request object
-	 * @param response A response object
-	 * @throws java.io.IOException Will be thrown when the response could not be generated
+	 * Creates the stream that gives access to the request body, if any.
+	 * When the client asked for it a "100 Continue" response will be
+	 * sent once the body actually gets read
+	 * @param request The request to create the body for
+	 * @param useHttp11 Indicates if the request uses HTTP/1.1
+	 * @return The request body stream
+	 * @throws java.io.IOException Will be thrown when the headers describing
+	 * the body are malformed or if the body is too large
 	 */
-	private void generateContinue(HttpRequest request, HttpResponse response) throws IOException {
-		response.setResponseCode(HttpResponseCode.CODE_CONTINUE);
-    	response.setContentType("text/plain");
-		response.setCharacterEncoding("UTF-8");
-		PrintWriter out = response.getWriter();
-		out.print(CRLF);
-		out.flush();
+	private HttpRequestBody createRequestBody(HttpRequest request, boolean useHttp11) throws IOException {
+		long maxSize = requestLimits.getMaxRequestBodySize();
+		String transferEncoding = request.getHeader("Transfer-Encoding");
+		String contentLength = request.getHeader("Content-Length");
+		boolean chunked = false;
+		long length = 0;
+		if (transferEncoding != null) {
+			if (!"chunked".equalsIgnoreCase(transferEncoding.trim())) {
+				throw new MalformedRequestException("Unsupported transfer coding: " + transferEncoding);
+			}
+			if (contentLength != null) {
+				throw new MalformedRequestException("Both Transfer-Encoding and Content-Length were specified");
+			}
+			chunked = true;
+		} else if (contentLength != null) {
+			try {
+				length = Long.parseLong(contentLength.trim());
+			} catch (NumberFormatException ex) {
+				length = -1;
+			}
+			if (length < 0) {
+				throw new MalformedRequestException("Malformed Content-Length: " + contentLength);
+			}
+			if (maxSize > 0 && length > maxSize) {
+				throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, "Request body too large");
+			}
+		}
+		
+		HttpRequestBody body = new HttpRequestBody(input, length, chunked, maxSize);
+		if (useHttp11 && !body.isFinished() && "100-continue".equalsIgnoreCase(request.getHeader("Expect"))) {
+			body.setContinueOutput(socket.getOutputStream());
+		}
+		return body;
+	}
+
+	/**
+	 * Reads whatever is left of the request body so the connection can
+	 * be used for the next request
+	 * @param body The body to drain or null
+	 * @return <code>true</code> if the connection can be kept alive
+	 */
+	private boolean drainRequestBody(HttpRequestBody body) {
+		if (body == null) {
+			return true;
+		}
+		try {
+			return body.drain(MAX_DRAIN_SIZE);
+		} catch (IOException ex) {
+			logger.fine("Could not drain request body: " + ex.getMessage());
+			return false;
+		}
 	}
 
 	/**
@@ -317,13 +959,21 @@ public class HttpProtocolHandler implements ProtocolHandler {
 	}
 
 	/**
-	 * Generates a response for the client indicating that an exception has been thrown
+	 * Generates an error response for a request that failed, unless part
+	 * of a response was already sent in which case there's nothing
+	 * left to do but close the connection
 	 * @param responseCode The actual HTTP response code to use
-	 * @param ex The exception that was thrown
+	 * @param message The message describing the error
 	 * @param response A response object
 	 * @throws java.io.IOException Will be thrown when the response could not be generated
 	 */
-	private void generateErrorResponse(HttpResponseCode responseCode, Exception ex, HttpResponse response) throws IOException {
-		generateErrorResponse(responseCode, ex.toString(), response);
+	private void sendFailure(HttpResponseCode responseCode, String message, HttpResponse response) throws IOException {
+		if (!response.isCommitted()) {
+			try {
+				generateErrorResponse(responseCode, message, response);
+			} catch (PrematureEOFException ex) {
+				// This is what sendError() always does
+			}
+		}
 	}
 }
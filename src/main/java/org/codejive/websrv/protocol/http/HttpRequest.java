@@ -112,30 +112,89 @@ public interface HttpRequest {
 
 	/**
 	 * Returns the value of the request header specified by the given name or
-	 * null if the given name was not found
+	 * null if the given name was not found. The case of the name is ignored
+	 * and if the header was sent more than once the first value is returned
 	 * @param key The name of the request header value to retrieve
 	 * @return The value of the requested header or null
 	 */
 	public java.lang.String getHeader(java.lang.String key);
 
 	/**
-	 * Returns a set of all the available request header names
+	 * Returns a set of all the available request header names, written
+	 * the way the client sent them
 	 * @return A set of available header names
 	 */
 	public java.util.Set<java.lang.String> getHeaderNames();
 
+	/**
+	 * Returns all the values of the request header specified by the given
+	 * name in the order they were sent by the client. The case of the name
+	 * is ignored. Values that were combined into a single header line by
+	 * the client are NOT split
+	 * @param key The name of the request header values to retrieve
+	 * @return A read-only list of values, empty if the header wasn't found
+	 */
+	public java.util.List<java.lang.String> getHeaders(java.lang.String key);
+
 	/**
 	 * Returns the value of the request parameter specified by the given
-	 * name or null if the given name was not found
+	 * name or null if the given name was not found. Parameters are taken
+	 * from the query string and, for form submissions, from the request body.
+	 * If the parameter has more than one value the first one is returned
 	 * @param key The name of the request parameter value to retrieve
 	 * @return The value of the requested parameter or null
+	 * @throws org.codejive.websrv.protocol.http.form.FormDataException If
+	 * the form submission in the request body could not be parsed
 	 */
 	public java.lang.String getParameter(java.lang.String key);
 
+	/**
+	 * Returns all the values of the request parameter specified by the
+	 * given name (eg for <code>?id=1&amp;id=2</code>). Values from the
+	 * query string come before those from the request body
+	 * @param key The name of the request parameter values to retrieve
+	 * @return A read-only list of values, empty if the parameter wasn't found
+	 * @throws org.codejive.websrv.protocol.http.form.FormDataException If
+	 * the form submission in the request body could not be parsed
+	 */
+	public java.util.List<java.lang.String> getParameterValues(java.lang.String key);
+
 	/**
 	 * Returns a set of all the available request parameter names
 	 * @return A set of available request parameter names
+	 * @throws org.codejive.websrv.protocol.http.form.FormDataException If
+	 * the form submission in the request body could not be parsed
 	 */
 	public java.util.Set<java.lang.String> getParameterNames();
 
+	/**
+	 * Returns a stream that can be used to read the body of the request.
+	 * The body is read directly from the connection while it is being
+	 * decoded, so even very large bodies can be handled. Reading more
+	 * than the maximum allowed body size results in an exception.
+	 * For requests without a body the stream is empty
+	 * @return A stream containing the request body
+	 */
+	public java.io.InputStream getInputStream();
+
+	/**
+	 * Returns a channel that can be used to read the body of the request.
+	 * It reads from the same data as the stream returned by
+	 * <code>getInputStream()</code> so only one of the two should be used
+	 * @return A channel containing the request body
+	 */
+	public java.nio.channels.ReadableByteChannel getChannel();
+
+	/**
+	 * Indicates if the request was received over a secure connection
+	 * @return <code>true</code> if the connection uses TLS
+	 */
+	public boolean isSecure();
+
+	/**
+	 * Returns the address of the client that sent the request
+	 * @return The client's address or null if it is unknown
+	 */
+	public java.net.InetAddress getRemoteAddress();
+
 }
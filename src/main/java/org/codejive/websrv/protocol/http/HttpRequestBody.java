@@ -0,0 +1,288 @@
+/*
+ * HttpRequestBody.java
+ *
+ * Created on Oct 19, 2026, 3:41:18 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The stream that gives access to the body of a single request. The data
+ * is read directly from the connection's buffer and is decoded as it is
+ * read, so bodies of any size can be handled without keeping them in
+ * memory. Both bodies with a known Content-Length and chunked bodies are
+ * supported. The stream never reads beyond the end of its own body so
+ * the next request on the connection is left untouched
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class HttpRequestBody extends InputStream {
+
+	/**
+	 * The connection input to read from
+	 */
+	private final HttpConnectionInput in;
+	
+	/**
+	 * Indicates if the body uses the chunked transfer coding
+	 */
+	private final boolean chunked;
+	
+	/**
+	 * The maximum number of bytes the body may contain, 0 means no limit
+	 */
+	private final long maxSize;
+	
+	/**
+	 * The number of bytes left in the body or, for chunked bodies,
+	 * in the current chunk
+	 */
+	private long remaining;
+	
+	/**
+	 * The number of bytes of the body read so far
+	 */
+	private long total;
+	
+	/**
+	 * Indicates if we still have to read the first chunk header
+	 */
+	private boolean firstChunk;
+	
+	/**
+	 * Indicates if the end of the body has been reached
+	 */
+	private boolean eof;
+	
+	/**
+	 * The stream to send a "100 Continue" response to once the body
+	 * is first read or null if no such response is needed
+	 */
+	private OutputStream continueOut;
+	
+	/**
+	 * Buffer used for reading single bytes
+	 */
+	private byte[] single;
+	
+	/**
+	 * The maximum length of a chunk header line
+	 */
+	private static final int MAX_CHUNK_LINE_LENGTH = 1024;
+	
+	/**
+	 * The interim response that tells a client to go ahead and send its body
+	 */
+	private static final byte[] CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(Charset.forName("US-ASCII"));
+
+	/**
+	 * Creates a new body stream
+	 * @param in The connection input to read from
+	 * @param contentLength The length of the body, ignored for chunked bodies
+	 * @param chunked Indicates if the body uses the chunked transfer coding
+	 * @param maxSize The maximum number of bytes the body may contain,
+	 * 0 means no limit
+	 */
+	public HttpRequestBody(HttpConnectionInput in, long contentLength, boolean chunked, long maxSize) {
+		this.in = in;
+		this.chunked = chunked;
+		this.maxSize = maxSize;
+		remaining = chunked ? 0 : contentLength;
+		firstChunk = true;
+		eof = !chunked && contentLength == 0;
+	}
+
+	/**
+	 * Sets the stream that a "100 Continue" response will be written to
+	 * as soon as somebody tries to read the body. This way clients that
+	 * asked for it will only send their body when it's actually wanted
+	 * @param continueOut The stream to write the response to
+	 */
+	public void setContinueOutput(OutputStream continueOut) {
+		this.continueOut = continueOut;
+	}
+
+	/**
+	 * Determines if the end of the body has been reached
+	 * @return <code>true</code> if the body has been read completely
+	 */
+	public boolean isFinished() {
+		return eof;
+	}
+
+	/**
+	 * Reads and throws away whatever is left of the body so the
+	 * connection is ready for the next request. Bodies the client hasn't
+	 * been allowed to send yet, and bodies that are larger than we're
+	 * willing to skip, are left alone
+	 * @param maxDrain The maximum number of bytes to skip
+	 * @return <code>true</code> if the body was read completely
+	 * @throws java.io.IOException If the body could not be read
+	 */
+	public boolean drain(long maxDrain) throws IOException {
+		if (eof) {
+			return true;
+		}
+		if (continueOut != null || (!chunked && remaining > maxDrain)) {
+			return false;
+		}
+		byte[] buf = new byte[(int) Math.min(4096, Math.max(1, maxDrain))];
+		long drained = 0;
+		while (drained <= maxDrain) {
+			int n = read(buf, 0, buf.length);
+			if (n < 0) {
+				return true;
+			}
+			drained += n;
+		}
+		return false;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (single == null) {
+			single = new byte[1];
+		}
+		int n = read(single, 0, 1);
+		return (n < 0) ? -1 : single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (eof) {
+			return -1;
+		}
+		if (len == 0) {
+			return 0;
+		}
+		sendContinue();
+		if (remaining == 0) {
+			if (!chunked || !nextChunk()) {
+				eof = true;
+				return -1;
+			}
+		}
+		int n = in.read(b, off, (int) Math.min(len, remaining));
+		if (n < 0) {
+			throw new EOFException("End of input reached in the middle of the request body");
+		}
+		remaining -= n;
+		total += n;
+		if (!chunked && remaining == 0) {
+			eof = true;
+		}
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (eof || continueOut != null) {
+			return 0;
+		}
+		return (int) Math.min(remaining, in.available());
+	}
+
+	/**
+	 * Does nothing, the underlying connection is not ours to close
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Sends the "100 Continue" response if that still needs to be done
+	 * @throws java.io.IOException If the response could not be written
+	 */
+	private void sendContinue() throws IOException {
+		if (continueOut != null) {
+			OutputStream out = continueOut;
+			continueOut = null;
+			out.write(CONTINUE_RESPONSE);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Reads the header of the next chunk. When it turns out to be the
+	 * last chunk the trailers that follow it are read and ignored
+	 * @return <code>true</code> if there is more data, <code>false</code>
+	 * if the end of the body was reached
+	 * @throws java.io.IOException If the chunk header could not be read
+	 * or was malformed
+	 */
+	private boolean nextChunk() throws IOException {
+		if (!firstChunk) {
+			String line = readLine(MAX_CHUNK_LINE_LENGTH, HttpResponseCode.CODE_BAD_REQUEST);
+			if (line.length() != 0) {
+				throw new MalformedRequestException("Malformed chunk terminator");
+			}
+		}
+		firstChunk = false;
+		
+		String line = readLine(MAX_CHUNK_LINE_LENGTH, HttpResponseCode.CODE_BAD_REQUEST);
+		int semi = line.indexOf(';');
+		String hex = ((semi >= 0) ? line.substring(0, semi) : line).trim();
+		long size;
+		try {
+			size = (hex.length() > 0 && hex.length() <= 15) ? Long.parseLong(hex, 16) : -1;
+		} catch (NumberFormatException ex) {
+			size = -1;
+		}
+		if (size < 0) {
+			throw new MalformedRequestException("Malformed chunk size: " + line);
+		}
+		if (maxSize > 0 && total + size > maxSize) {
+			throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, "Request body too large");
+		}
+		
+		if (size == 0) {
+			HttpRequestLimits limits = in.getLimits();
+			int maxCount = limits.getMaxHeaderCount();
+			int count = 0;
+			while (readLine(limits.getMaxHeaderSize(), HttpResponseCode.CODE_REQUEST_HEADER_FIELDS_TOO_LARGE).length() > 0) {
+				if (maxCount > 0 && ++count > maxCount) {
+					throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_HEADER_FIELDS_TOO_LARGE, "Too many trailers");
+				}
+			}
+			return false;
+		}
+		remaining = size;
+		return true;
+	}
+
+	/**
+	 * Reads a line that is part of the chunked coding
+	 * @param maxLength The maximum allowed length of the line
+	 * @param codeIfTooLong The response code to use if the line is too long
+	 * @return The line
+	 * @throws java.io.IOException If the line could not be read
+	 */
+	private String readLine(int maxLength, HttpResponseCode codeIfTooLong) throws IOException {
+		String line = in.readHeadLine(maxLength, codeIfTooLong);
+		if (line == null) {
+			throw new EOFException("End of input reached in the middle of the request body");
+		}
+		return line;
+	}
+}
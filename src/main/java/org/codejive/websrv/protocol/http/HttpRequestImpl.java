@@ -22,10 +22,22 @@
 
 package org.codejive.websrv.protocol.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import org.codejive.websrv.protocol.http.form.FormData;
+import org.codejive.websrv.protocol.http.form.FormDataException;
+import org.codejive.websrv.protocol.http.form.FormParser;
+import org.codejive.websrv.util.MultiValueMap;
 import org.codejive.websrv.util.UriEncoder;
 
 /**
@@ -56,6 +68,14 @@ public class HttpRequestImpl implements HttpRequest {
 	 * The scheme-part of the request URL
 	 */
 	private String scheme;
+	/**
+	 * Indicates that the request was received over a secure connection
+	 */
+	private boolean secure;
+	/**
+	 * The address of the client that sent the request
+	 */
+	private InetAddress remoteAddress;
 	/**
 	 * The user-part of the request URL
 	 */
@@ -77,44 +97,122 @@ public class HttpRequestImpl implements HttpRequest {
 	 */
 	private String query;
 	/**
-	 * A map of all the available request parameters
+	 * All the available request parameters taken from the query
+	 */
+	private MultiValueMap parameters;
+	/**
+	 * Indicates if the parameters have already been taken from the query
+	 */
+	private boolean parametersParsed;
+	/**
+	 * Indicates if the query must be rebuilt because the parameters changed
+	 */
+	private boolean queryChanged;
+	/**
+	 * Indicates if the url must be rebuilt because one of its parts changed
+	 */
+	private boolean urlChanged;
+	/**
+	 * All the available request headers
+	 */
+	private HttpHeaders headers;
+	/**
+	 * The stream containing the request body
+	 */
+	private InputStream inputStream;
+	/**
+	 * The channel wrapping the request body stream, created when needed
+	 */
+	private ReadableByteChannel channel;
+	/**
+	 * The parser used for form submissions or null
+	 */
+	private FormParser formParser;
+	/**
+	 * Indicates if we already tried to parse the form submission
+	 */
+	private boolean formParsed;
+	/**
+	 * The fields and files of the form submission or null
+	 */
+	private FormData formData;
+	/**
+	 * The error that occurred while parsing the form submission or null
+	 */
+	private IOException formError;
+	
+	/**
+	 * An empty body for requests that don't have one
 	 */
-	private HashMap<String, String> parameters;
+	private static final byte[] NO_BODY = new byte[0];
+	
 	/**
-	 * A map of all the available request headers
+	 * The ASCII characters that are not allowed in a URI (besides
+	 * whitespace and control characters)
 	 */
-	private HashMap<String, String> headers;
+	private static final String ILLEGAL_CHARS = "\"<>\\^`{|}";
 
 	/**
 	 * Creates a new HttpRequestImpl
 	 */
 	public HttpRequestImpl() {
-		parameters = new HashMap<String, String>();
-		headers = new HashMap<String, String>();
+		parameters = new MultiValueMap();
+		headers = new HttpHeaders();
+		inputStream = new ByteArrayInputStream(NO_BODY);
 	}
 
 	/**
-	 * Creates a new HttpRequestImpl
+	 * Creates a new HttpRequestImpl. The copy gets its own copy of the
+	 * fields of a form submission but not of the uploaded files: those are
+	 * deleted when the original request ends, so they're only available
+	 * from the original while its response is being generated
 	 * @param copy a HttpRequest to copy
 	 */
 	public HttpRequestImpl(HttpRequest copy) {
-		parameters = new HashMap<String, String>();
-		headers = new HashMap<String, String>();
+		parameters = new MultiValueMap();
 		requestMethod = copy.getRequestMethod();
 		requestProtocol = copy.getRequestProtocol();
 		url = copy.getUrl();
 		scheme = copy.getScheme();
+		secure = copy.isSecure();
+		remoteAddress = copy.getRemoteAddress();
 		userInfo = copy.getUserInfo();
 		host = copy.getHost();
 		port = copy.getPort();
 		path = copy.getPath();
 		query = copy.getQuery();
-		for (String name : copy.getParameterNames()) {
-			parameters.put(name, copy.getParameter(name));
+		if (copy instanceof HttpRequestImpl) {
+			// Copy the form fields instead of turning them into query
+			// parameters, the copy may outlive the original's files
+			HttpRequestImpl impl = (HttpRequestImpl) copy;
+			impl.parseParameters();
+			parameters.putAll(impl.parameters);
+			try {
+				FormData form = impl.getFormData();
+				if (form != null) {
+					formData = form.copyFields();
+				}
+			} catch (IOException ex) {
+				formError = ex;
+			}
+		} else {
+			for (String name : copy.getParameterNames()) {
+				for (String value : copy.getParameterValues(name)) {
+					parameters.add(name, value);
+				}
+			}
 		}
-		for (String name : copy.getHeaderNames()) {
-			headers.put(name, copy.getHeader(name));
+		parametersParsed = true;
+		formParsed = true;
+		if (copy instanceof HttpRequestImpl) {
+			headers = new HttpHeaders(((HttpRequestImpl) copy).headers);
+		} else {
+			headers = new HttpHeaders();
+			for (String name : copy.getHeaderNames()) {
+				headers.add(name, copy.getHeader(name));
+			}
 		}
+		inputStream = copy.getInputStream();
 	}
 
 	public String getRequestMethod() {
@@ -152,7 +250,31 @@ public class HttpRequestImpl implements HttpRequest {
 	 */
 	public void setScheme(String scheme) {
 		this.scheme = scheme;
-		updateUrl();
+		urlChanged = true;
+	}
+
+	public boolean isSecure() {
+		return secure;
+	}
+
+	/**
+	 * Sets if the request was received over a secure connection
+	 * @param secure <code>true</code> if the connection uses TLS
+	 */
+	public void setSecure(boolean secure) {
+		this.secure = secure;
+	}
+
+	public InetAddress getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	/**
+	 * Sets the address of the client that sent the request
+	 * @param remoteAddress The client's address
+	 */
+	public void setRemoteAddress(InetAddress remoteAddress) {
+		this.remoteAddress = remoteAddress;
 	}
 
 	public String getUserInfo() {
@@ -166,7 +288,7 @@ public class HttpRequestImpl implements HttpRequest {
 	 */
 	public void setUserInfo(String userInfo) {
 		this.userInfo = userInfo;
-		updateUrl();
+		urlChanged = true;
 	}
 
 	public String getHost() {
@@ -180,7 +302,7 @@ public class HttpRequestImpl implements HttpRequest {
 	 */
 	public void setHost(String host) {
 		this.host = host;
-		updateUrl();
+		urlChanged = true;
 	}
 
 	public int getPort() {
@@ -194,7 +316,7 @@ public class HttpRequestImpl implements HttpRequest {
 	 */
 	public void setPort(int port) {
 		this.port = port;
-		updateUrl();
+		urlChanged = true;
 	}
 
 	public String getPath() {
@@ -208,24 +330,34 @@ public class HttpRequestImpl implements HttpRequest {
 	 */
 	public void setPath(String path) {
 		this.path = path;
-		updateUrl();
+		urlChanged = true;
 	}
 
 	public String getQuery() {
+		if (queryChanged) {
+			updateQuery();
+		}
 		return query;
 	}
 
 	/**
 	 * Sets the query-part of the request URL. Set to null if this
-	 * information is not available
+	 * information is not available. The request parameters will be
+	 * taken from the new query
 	 * @param query The query-part of the request URL
 	 */
 	public void setQuery(String query) {
 		this.query = query;
-		updateUrl();
+		parameters.clear();
+		parametersParsed = false;
+		queryChanged = false;
+		urlChanged = true;
 	}
 
 	public String getUrl() {
+		if (urlChanged) {
+			updateUrl();
+		}
 		return url;
 	}
 
@@ -239,6 +371,7 @@ public class HttpRequestImpl implements HttpRequest {
 	 */
 	public void setUrl(String url) {
 		this.url = url;
+		urlChanged = false;
 	}
 
 	/**
@@ -251,50 +384,170 @@ public class HttpRequestImpl implements HttpRequest {
 	 * as the one passed to this method. On the other hand calling <code>setUrl()</code>
 	 * will <b>not</b> call this method, in that case it's the responsibility of
 	 * the calling code to make sure that the other properties are correctly filled)
+	 * The parameters themselves are only split and decoded the first time
+	 * they're asked for.
 	 * @param url The request URL
 	 * @throws java.net.URISyntaxException Is thrown when the URL could
 	 * not be correctly parsed
 	 */
 	public void parseUrl(String url) throws URISyntaxException {
 		this.url = url;
-		// Now we parse the url
-		URI uri = new URI(url);
-		scheme = uri.getScheme();
-		userInfo = uri.getUserInfo();
-		host = uri.getHost();
-		port = (uri.getPort() > 0) ? uri.getPort() : 0;
-		path = uri.getPath();
-		query = uri.getRawQuery();
-		// Unfortunately the URI class doesn't allow access to individual parameters
-		// so now we parse them ourselves. For this we need the undecoded version
-		// of the query string
+		urlChanged = false;
+		queryChanged = false;
 		parameters.clear();
-		if ((query != null) && (query.length() > 0)) {
-            String[] queryParts = query.split("&");
-            for (String item : queryParts) {
-                String[] itemParts = item.split("=", 2);
-                if (itemParts.length == 1) {
-                    setParameter(UriEncoder.decode(itemParts[0]), null);
-                } else {
-                    setParameter(UriEncoder.decode(itemParts[0]), UriEncoder.decode(itemParts[1]));
+		parametersParsed = false;
+		if (url.startsWith("/")) {
+			// This is the "origin-form" used by nearly all requests, it only
+			// has a path and a query so we don't need the full URI parser
+			int end = checkOriginForm(url);
+			int qmark = url.indexOf('?');
+			if (qmark < 0 || qmark > end) {
+				qmark = end;
+			}
+			scheme = null;
+			userInfo = null;
+			host = null;
+			port = 0;
+			path = UriEncoder.decode(url.substring(0, qmark));
+			query = (qmark < end) ? url.substring(qmark + 1, end) : null;
+		} else {
+			URI uri = new URI(url);
+			scheme = uri.getScheme();
+			userInfo = uri.getUserInfo();
+			host = uri.getHost();
+			port = (uri.getPort() > 0) ? uri.getPort() : 0;
+			path = uri.getPath();
+			query = uri.getRawQuery();
+		}
+		// The parameters will be taken from the query when they're first needed
+	}
+
+	/**
+	 * Checks if the given origin-form request target only contains
+	 * characters that are allowed in a URI and that all escapes are
+	 * well-formed
+	 * @param url The request target to check
+	 * @return The position where the path and query end, which is the
+	 * position of the fragment (if any) or the end of the string
+	 * @throws java.net.URISyntaxException Is thrown when an illegal
+	 * character or escape is found
+	 */
+	private static int checkOriginForm(String url) throws URISyntaxException {
+		int len = url.length();
+		for (int i = 0; i < len; i++) {
+			char c = url.charAt(i);
+			if (c == '%') {
+				if (i + 2 >= len || !isHexDigit(url.charAt(i + 1)) || !isHexDigit(url.charAt(i + 2))) {
+					throw new URISyntaxException(url, "Malformed escape pair", i);
 				}
-            }
+				i += 2;
+			} else if (c == '#') {
+				return i;
+			} else if (c <= ' ' || c == 0x7f || ILLEGAL_CHARS.indexOf(c) >= 0) {
+				throw new URISyntaxException(url, "Illegal character", i);
+			}
+		}
+		return len;
+	}
+
+	/**
+	 * Determines if the given character is a hexadecimal digit
+	 * @param c The character to check
+	 * @return True if the character is a hexadecimal digit
+	 */
+	private static boolean isHexDigit(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+	}
+
+	/**
+	 * Takes the request parameters from the query if that hasn't
+	 * happened yet. Parameters without a value get an empty value
+	 */
+	private void parseParameters() {
+		if (!parametersParsed) {
+			parametersParsed = true;
+			if (query != null) {
+				int len = query.length();
+				int start = 0;
+				while (start < len) {
+					int end = query.indexOf('&', start);
+					if (end < 0) {
+						end = len;
+					}
+					if (end > start) {
+						int eq = query.indexOf('=', start);
+						String name, value;
+						if (eq < 0 || eq > end) {
+							name = UriEncoder.decode(query.substring(start, end), true);
+							value = "";
+						} else {
+							name = UriEncoder.decode(query.substring(start, eq), true);
+							value = UriEncoder.decode(query.substring(eq + 1, end), true);
+						}
+						parameters.add(name.toLowerCase(), value);
+					}
+					start = end + 1;
+				}
+			}
 		}
 	}
 
 	public String getParameter(String key) {
-		return parameters.get(key.toLowerCase());
+		parseParameters();
+		String value = parameters.getFirst(key.toLowerCase());
+		if (value == null) {
+			FormData form = getFormParameters();
+			if (form != null) {
+				value = form.getParameter(key);
+			}
+		}
+		return value;
+	}
+
+	public List<String> getParameterValues(String key) {
+		parseParameters();
+		List<String> values = parameters.get(key.toLowerCase());
+		FormData form = getFormParameters();
+		if (form != null) {
+			List<String> formValues = form.getParameterValues(key);
+			if (values.isEmpty()) {
+				values = formValues;
+			} else if (!formValues.isEmpty()) {
+				List<String> all = new ArrayList<String>(values.size() + formValues.size());
+				all.addAll(values);
+				all.addAll(formValues);
+				values = all;
+			}
+		}
+		return values;
 	}
 
 	/**
-	 * Sets the value of the request parameter specified by the given name.
+	 * Sets the value of the request parameter specified by the given name,
+	 * replacing any values it already had.
 	 * The value null is not allowed, use removeParameter() instead.
 	 * @param key The name of the request parameter
 	 * @param value The value of the request parameter
 	 */
 	public void setParameter(String key, String value) {
-		parameters.put(key.toLowerCase(), value);
-		updateQuery();
+		parseParameters();
+		parameters.set(key.toLowerCase(), value);
+		queryChanged = true;
+		urlChanged = true;
+	}
+
+	/**
+	 * Adds a value to the request parameter specified by the given name,
+	 * keeping any values it already had.
+	 * The value null is not allowed.
+	 * @param key The name of the request parameter
+	 * @param value The value to add to the request parameter
+	 */
+	public void addParameter(String key, String value) {
+		parseParameters();
+		parameters.add(key.toLowerCase(), value);
+		queryChanged = true;
+		urlChanged = true;
 	}
 
 	/**
@@ -302,25 +555,165 @@ public class HttpRequestImpl implements HttpRequest {
 	 * @param key The name of the request parameter
 	 */
 	public void removeParameter(String key) {
+		parseParameters();
 		parameters.remove(key.toLowerCase());
-		updateQuery();
+		queryChanged = true;
+		urlChanged = true;
 	}
 
 	public Set<String> getParameterNames() {
-		return parameters.keySet();
+		parseParameters();
+		FormData form = getFormParameters();
+		if (form == null || form.getParameterNames().isEmpty()) {
+			return parameters.keySet();
+		}
+		Set<String> names = new LinkedHashSet<String>(parameters.keySet());
+		names.addAll(form.getParameterNames());
+		return names;
+	}
+
+	/**
+	 * Sets the parser that will be used to parse the request body when
+	 * it contains a form submission. Without a parser only the parameters
+	 * found in the query string will be available
+	 * @param formParser The parser to use or null
+	 */
+	public void setFormParser(FormParser formParser) {
+		this.formParser = formParser;
+	}
+
+	/**
+	 * Returns the fields and files of the form submission contained in
+	 * the request body. The body is parsed the first time this method,
+	 * <code>getParameter()</code> or <code>getParameterNames()</code> is
+	 * called so it should not be read in any other way. Handlers that
+	 * want to process large uploads without storing them should use a
+	 * FormParser directly instead. When parsing fails nothing of the form
+	 * is kept and every following call throws the same error again
+	 * @return The form data or null if the request doesn't contain a form
+	 * submission or if no form parser was set
+	 * @throws java.io.IOException If the form submission exceeds the
+	 * limits, is malformed or could not be read
+	 */
+	public synchronized FormData getFormData() throws IOException {
+		if (!formParsed) {
+			formParsed = true;
+			if (formParser != null && FormParser.isFormRequest(this)) {
+				FormData form = new FormData(formParser.getLimits());
+				try {
+					formParser.parse(this, form);
+					formData = form;
+				} catch (IOException ex) {
+					form.dispose();
+					formError = ex;
+				}
+			}
+		}
+		checkFormData();
+		return formData;
+	}
+
+	/**
+	 * Throws the error that occurred while parsing the form submission, if
+	 * any. The protocol handlers use this to make sure the client gets an
+	 * error response even when the response handler ignored the error
+	 * @throws java.io.IOException The error that occurred while parsing
+	 */
+	public synchronized void checkFormData() throws IOException {
+		if (formError != null) {
+			throw formError;
+		}
+	}
+
+	/**
+	 * Returns the form data for the parameter methods, which can't throw
+	 * an IOException, wrapping any parse error in a FormDataException
+	 * @return The form data or null
+	 */
+	private FormData getFormParameters() {
+		try {
+			return getFormData();
+		} catch (IOException ex) {
+			throw new FormDataException(ex);
+		}
+	}
+
+	/**
+	 * Releases any resources held by the request, like the temporary
+	 * files of uploaded form data
+	 */
+	public synchronized void dispose() {
+		if (formData != null) {
+			formData.dispose();
+		}
+	}
+
+	/**
+	 * Returns this object to the state it had right after construction so
+	 * it can be used for the next request on the same connection without
+	 * having to allocate a new one. Any resources are released first
+	 */
+	public synchronized void recycle() {
+		dispose();
+		requestMethod = null;
+		requestProtocol = null;
+		url = null;
+		scheme = null;
+		secure = false;
+		remoteAddress = null;
+		userInfo = null;
+		host = null;
+		port = 0;
+		path = null;
+		query = null;
+		parameters.clear();
+		parametersParsed = false;
+		queryChanged = false;
+		urlChanged = false;
+		headers.clear();
+		inputStream = new ByteArrayInputStream(NO_BODY);
+		channel = null;
+		formParser = null;
+		formParsed = false;
+		formData = null;
+		formError = null;
 	}
 
 	public String getHeader(String key) {
-		return headers.get(key.toLowerCase());
+		return headers.get(key);
+	}
+
+	public List<String> getHeaders(String key) {
+		return headers.getAll(key);
 	}
 
 	/**
-	 * Sets the value associated with a specific HTTP header
+	 * Sets the value associated with a specific HTTP header, replacing
+	 * any values the header already had
 	 * @param key The name of the HTTP header to set
 	 * @param value the new value for the HTTP header with the given name
 	 */
 	public void setHeader(String key, String value) {
-		headers.put(key.toLowerCase(), value);
+		headers.set(key, value);
+	}
+
+	/**
+	 * Adds a value for a specific HTTP header, keeping any values the
+	 * header already had
+	 * @param key The name of the HTTP header
+	 * @param value the value to add to the HTTP header with the given name
+	 */
+	public void addHeader(String key, String value) {
+		headers.add(key, value);
+	}
+
+	/**
+	 * Adds a header by parsing a raw request header line
+	 * @param line The header line as read from the client
+	 * @param colon The position of the colon separating name and value
+	 */
+	void addHeaderLine(String line, int colon) {
+		headers.addLine(line, colon);
 	}
 
 	/**
@@ -328,47 +721,80 @@ public class HttpRequestImpl implements HttpRequest {
 	 * @param key The name of the request header
 	 */
 	public void removeHeader(String key) {
-		headers.remove(key.toLowerCase());
+		headers.remove(key);
 	}
 
 	public Set<String> getHeaderNames() {
-		return headers.keySet();
+		return headers.getNames();
+	}
+
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * Sets the stream containing the request body
+	 * @param inputStream The request body stream
+	 */
+	public void setInputStream(InputStream inputStream) {
+		this.inputStream = inputStream;
+		channel = null;
+	}
+
+	public synchronized ReadableByteChannel getChannel() {
+		if (channel == null) {
+			channel = Channels.newChannel(inputStream);
+		}
+		return channel;
 	}
 
+	/**
+	 * Rebuilds the full request URL from its parts
+	 */
 	private void updateUrl() {
-		url = "";
+		StringBuilder buf = new StringBuilder();
 		if (scheme != null) {
-			url += scheme + "://";
+			buf.append(scheme).append("://");
 		}
 		if (userInfo != null) {
-			url += userInfo + "@";
+			buf.append(userInfo).append('@');
 		}
 		if (host != null) {
-			url += host;
+			buf.append(host);
 		}
 		if ((port != 0) && (port != 80)) {
-			url += ":" + port;
+			buf.append(':').append(port);
 		}
 		if (path != null) {
-			url += path;
+			buf.append(path);
 		}
-		if (query != null) {
-			url += "?" + query;
+		String q = getQuery();
+		if (q != null) {
+			buf.append('?').append(q);
 		}
+		url = buf.toString();
+		urlChanged = false;
 	}
 
+	/**
+	 * Rebuilds the query from the request parameters
+	 */
 	private void updateQuery() {
-		if (getParameterNames().size() > 0) {
-			query = "";
-			for (String name : getParameterNames()) {
-				if (query.length() > 0) {
-					query += "&";
+		if (parameters.size() > 0) {
+			StringBuilder buf = new StringBuilder();
+			for (String name : parameters.keySet()) {
+				String encodedName = UriEncoder.encodeComponent(name);
+				for (String value : parameters.get(name)) {
+					if (buf.length() > 0) {
+						buf.append('&');
+					}
+					buf.append(encodedName).append('=').append(UriEncoder.encodeComponent(value));
 				}
-				query += UriEncoder.encode(name) + "=" + UriEncoder.encode(getParameter(name));
 			}
+			query = buf.toString();
 		} else {
 			query = null;
 		}
-		updateUrl();
+		queryChanged = false;
 	}
 }
@@ -0,0 +1,212 @@
+/*
+ * HttpRequestLimits.java
+ *
+ * Created on Oct 19, 2026, 2:51:37 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http;
+
+/**
+ * Holds the limits that incoming requests must stay within. They protect
+ * the server against clients that send enormous requests or that send
+ * them so slowly that they keep a thread busy for a very long time.
+ * Requests that exceed one of the limits get a "408 Request Time-out",
+ * "413 Request Entity Too Large", "414 Request-URI Too Large" or
+ * "431 Request Header Fields Too Large" response after which the
+ * connection is closed. Setting any of the limits to 0 disables it
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class HttpRequestLimits {
+
+	/**
+	 * The maximum time in milliseconds a client can take to send the
+	 * complete request head, counting from its first byte.
+	 * 0 means no limit (default = 20 seconds)
+	 */
+	private int requestHeadTimeout;
+	
+	/**
+	 * The minimum average number of bytes per second a client must send
+	 * while sending the request head. 0 means no limit (default = 128)
+	 */
+	private int minDataRate;
+	
+	/**
+	 * The maximum length of the request line (default = 8192)
+	 */
+	private int maxRequestLineLength;
+	
+	/**
+	 * The maximum number of header lines (default = 100)
+	 */
+	private int maxHeaderCount;
+	
+	/**
+	 * The maximum length of a single header line (default = 8192)
+	 */
+	private int maxHeaderSize;
+	
+	/**
+	 * The maximum size of the entire request head, meaning the request
+	 * line plus all headers (default = 65536)
+	 */
+	private int maxRequestHeadSize;
+	
+	/**
+	 * The maximum size of a request body (default = 10MB)
+	 */
+	private long maxRequestBodySize;
+
+	/**
+	 * The time in milliseconds a client is given before its data rate
+	 * is checked
+	 */
+	public static final int DATA_RATE_GRACE_PERIOD = 2000;
+
+	/**
+	 * Creates a new instance using the default limits
+	 */
+	public HttpRequestLimits() {
+		requestHeadTimeout = 20000;
+		minDataRate = 128;
+		maxRequestLineLength = 8192;
+		maxHeaderCount = 100;
+		maxHeaderSize = 8192;
+		maxRequestHeadSize = 65536;
+		maxRequestBodySize = 10 * 1024 * 1024;
+	}
+
+	/**
+	 * Returns the maximum time in milliseconds a client can take to send
+	 * the complete request head, counting from its first byte. 0 means no limit
+	 * @return The time-out in milliseconds
+	 */
+	public int getRequestHeadTimeout() {
+		return requestHeadTimeout;
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds a client can take to send
+	 * the complete request head, counting from its first byte. 0 means no limit
+	 * @param requestHeadTimeout The time-out in milliseconds
+	 */
+	public void setRequestHeadTimeout(int requestHeadTimeout) {
+		this.requestHeadTimeout = requestHeadTimeout;
+	}
+
+	/**
+	 * Returns the minimum average number of bytes per second a client must
+	 * send while sending the request head. 0 means no limit
+	 * @return The minimum data rate in bytes per second
+	 */
+	public int getMinDataRate() {
+		return minDataRate;
+	}
+
+	/**
+	 * Sets the minimum average number of bytes per second a client must
+	 * send while sending the request head. It only gets checked after
+	 * the first two seconds. 0 means no limit
+	 * @param minDataRate The minimum data rate in bytes per second
+	 */
+	public void setMinDataRate(int minDataRate) {
+		this.minDataRate = minDataRate;
+	}
+
+	/**
+	 * Returns the maximum length of the request line
+	 * @return The maximum length in bytes
+	 */
+	public int getMaxRequestLineLength() {
+		return maxRequestLineLength;
+	}
+
+	/**
+	 * Sets the maximum length of the request line
+	 * @param maxRequestLineLength The maximum length in bytes
+	 */
+	public void setMaxRequestLineLength(int maxRequestLineLength) {
+		this.maxRequestLineLength = maxRequestLineLength;
+	}
+
+	/**
+	 * Returns the maximum number of header lines
+	 * @return The maximum number of headers
+	 */
+	public int getMaxHeaderCount() {
+		return maxHeaderCount;
+	}
+
+	/**
+	 * Sets the maximum number of header lines
+	 * @param maxHeaderCount The maximum number of headers
+	 */
+	public void setMaxHeaderCount(int maxHeaderCount) {
+		this.maxHeaderCount = maxHeaderCount;
+	}
+
+	/**
+	 * Returns the maximum length of a single header line
+	 * @return The maximum length in bytes
+	 */
+	public int getMaxHeaderSize() {
+		return maxHeaderSize;
+	}
+
+	/**
+	 * Sets the maximum length of a single header line
+	 * @param maxHeaderSize The maximum length in bytes
+	 */
+	public void setMaxHeaderSize(int maxHeaderSize) {
+		this.maxHeaderSize = maxHeaderSize;
+	}
+
+	/**
+	 * Returns the maximum size of the entire request head
+	 * @return The maximum size in bytes
+	 */
+	public int getMaxRequestHeadSize() {
+		return maxRequestHeadSize;
+	}
+
+	/**
+	 * Sets the maximum size of the entire request head, meaning the
+	 * request line plus all headers
+	 * @param maxRequestHeadSize The maximum size in bytes
+	 */
+	public void setMaxRequestHeadSize(int maxRequestHeadSize) {
+		this.maxRequestHeadSize = maxRequestHeadSize;
+	}
+
+	/**
+	 * Returns the maximum size of a request body
+	 * @return The maximum size in bytes
+	 */
+	public long getMaxRequestBodySize() {
+		return maxRequestBodySize;
+	}
+
+	/**
+	 * Sets the maximum size of a request body
+	 * @param maxRequestBodySize The maximum size in bytes
+	 */
+	public void setMaxRequestBodySize(long maxRequestBodySize) {
+		this.maxRequestBodySize = maxRequestBodySize;
+	}
+}
@@ -132,20 +132,32 @@ public interface HttpResponse {
 
 	/**
 	 * Returns the value of the response header specified by the given name or
-	 * null if the given name was not found
+	 * null if the given name was not found. The case of the name is ignored
+	 * and if the header has more than one value the first is returned
 	 * @param key The name of the response header value to retrieve
 	 * @return The value of the response header or null
 	 */
 	public String getHeader(String key);
 
 	/**
-	 * Sets the value of the response header specified by the given name.
+	 * Sets the value of the response header specified by the given name,
+	 * replacing any values it already had.
 	 * The value null is not allowed, use removeHeader() instead.
 	 * @param key The name of the response header
 	 * @param value The value of the response header
 	 */
 	public void setHeader(String key, String value);
 
+	/**
+	 * Adds a value to the response header specified by the given name,
+	 * keeping any values it already had. The header will be sent once
+	 * for each value (eg for Set-Cookie)
+	 * The value null is not allowed.
+	 * @param key The name of the response header
+	 * @param value The value to add to the response header
+	 */
+	public void addHeader(String key, String value);
+
 	/**
 	 * Returns a set of all the available response header names
 	 * @return A set of available header names
@@ -192,4 +204,24 @@ public interface HttpResponse {
 	 * if something went wrong
 	 */
 	public void sendRedirect(String url) throws IOException;
+
+	/**
+	 * Returns the upgrade that will take over the connection once this
+	 * response has been sent
+	 * @return The upgrade or null if the connection won't switch protocols
+	 */
+	public ConnectionUpgrade getUpgrade();
+
+	/**
+	 * Makes the connection switch to another protocol once this response
+	 * has been sent. Usually the response code will be "101 Switching
+	 * Protocols", but a successful response can also be used to hand
+	 * the connection over to something that will keep streaming its
+	 * body. The upgrade has no effect for any other response code
+	 * @param upgrade The upgrade that will take over the connection
+	 * or null to stay with HTTP
+	 * @throws IllegalStateException Is thrown when the connection can't
+	 * switch protocols, which is the case for HTTP/2 connections
+	 */
+	public void setUpgrade(ConnectionUpgrade upgrade);
 }
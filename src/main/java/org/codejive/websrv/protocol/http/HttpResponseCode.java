@@ -61,6 +61,9 @@ public enum HttpResponseCode {
 	CODE_UNSUPPORTED_MEDIA_TYPE(415, "Unsupported Media Type"),
 	CODE_REQUESTED_RANGE_NOT_SATISFIABLE(416, "Requested range not satisfiable"),
 	CODE_EXPECTATION_FAILED(417, "Expectation Failed"),
+	CODE_UPGRADE_REQUIRED(426, "Upgrade Required"),
+	CODE_TOO_MANY_REQUESTS(429, "Too Many Requests"),
+	CODE_REQUEST_HEADER_FIELDS_TOO_LARGE(431, "Request Header Fields Too Large"),
 	CODE_INTERNAL_SERVER_ERROR(500, "Internal Server Error"),
 	CODE_NOT_IMPLEMENTED(501, "Not Implemented"),
 	CODE_BAD_GATEWAY(502, "Bad Gateway"),
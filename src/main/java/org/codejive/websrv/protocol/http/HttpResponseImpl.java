@@ -28,13 +28,13 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.util.Set;
-import java.util.TimeZone;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.codejive.websrv.VersionInfo;
+import org.codejive.websrv.util.BufferPool;
 
 /**
  * This is the default implementation of HttpResponse
@@ -46,6 +46,12 @@ public class HttpResponseImpl implements HttpResponse {
 	 * The original stream that this class will use to write data to the client
 	 */
 	private OutputStream outputStream;
+	/**
+	 * The channel underlying <code>outputStream</code> (optional). When
+	 * available the response head, chunk framing and content are
+	 * handed to it in a single gathering write
+	 */
+	private GatheringByteChannel channel;
 	/**
 	 * The stream wrapper that users of this object can use to write data to
 	 */
@@ -59,18 +65,60 @@ public class HttpResponseImpl implements HttpResponse {
 	 */
 	private HttpResponseCode responseCode;
 	/**
-	 * A map of all the available response headers
+	 * All the available response headers
+	 */
+	private HttpHeaders headers;
+	/**
+	 * The Content-Type header value that <code>contentType</code> was parsed from
 	 */
-	private HashMap<String, String> headers;
+	private String contentTypeHeader;
+	/**
+	 * The parsed version of the Content-Type header
+	 */
+	private ContentType contentType;
 	/**
 	 * The size in bytes of the internal buffer
 	 */
 	private int bufferSize;
+	/**
+	 * The upgrade that takes over the connection after this response
+	 */
+	private ConnectionUpgrade upgrade;
+	/**
+	 * Indicates that the connection will be closed after this response
+	 * no matter what the response handler decided
+	 */
+	private volatile boolean closing;
+	
+	/**
+	 * The default size in bytes of the internal buffer
+	 */
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	/**
+	 * The content type used when none was set explicitly
+	 */
+	private static final String DEFAULT_CONTENT_TYPE = "text/plain; charset=UTF-8";
+	
+	/**
+	 * The pool that buffers of the default size are taken from
+	 */
+	private static final BufferPool bufferPool = new BufferPool(DEFAULT_BUFFER_SIZE, 1024);
 	
 	/**
 	 * Carriage return & line feed
 	 */
 	private static final String CRLF = "\r\n";
+
+	/**
+	 * The day names used in dates, starting with Sunday
+	 */
+	private static final String[] DAY_NAMES = { "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" };
+
+	/**
+	 * The month names used in dates
+	 */
+	private static final String[] MONTH_NAMES = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
 	
 	/**
 	 * The name and version of this application
@@ -78,6 +126,28 @@ public class HttpResponseImpl implements HttpResponse {
 	private static final String SERVER_NAME = "websrv/" + VersionInfo.VERSION;
 	// TODO: ^^^ this is not something that should be here ^^^
 	
+	/**
+	 * The complete, pre-encoded Server header line
+	 */
+	private static final byte[] SERVER_LINE = asciiBytes("Server: " + SERVER_NAME + CRLF);
+	
+	/**
+	 * The bytes that end a chunk and, starting at offset 2, the bytes of
+	 * the final empty chunk that terminates a chunked body
+	 */
+	private static final byte[] CHUNK_END = asciiBytes(CRLF + "0" + CRLF + CRLF);
+	
+	/**
+	 * The maximum number of bytes that will be copied together into a
+	 * single write when no gathering channel is available
+	 */
+	private static final int MAX_COALESCE_SIZE = 16384;
+	
+	/**
+	 * The Date header line for the current second, shared by all responses
+	 */
+	private static volatile DateLine currentDateLine;
+	
 	/**
 	 * Class private logger
 	 */
@@ -89,11 +159,60 @@ public class HttpResponseImpl implements HttpResponse {
 	 * @param outputStream The output stream for writing data to the client
 	 */
 	public HttpResponseImpl(OutputStream outputStream) {
+		this(outputStream, null);
+	}
+
+	/**
+	 * Creates a new instance using the given output stream to write
+	 * data to the client. When a channel is passed all data will be
+	 * written using the channel instead, combining the response head and
+	 * content into as few system calls as possible
+	 * @param outputStream The output stream for writing data to the client
+	 * @param channel The channel underlying the output stream or null
+	 */
+	public HttpResponseImpl(OutputStream outputStream, GatheringByteChannel channel) {
 		this.outputStream = outputStream;
+		this.channel = channel;
 		responseCode = HttpResponseCode.CODE_OK;
-		bufferSize = 8192;
-		headers = new HashMap<String, String>();
-		setHeader("Content-Type", "text/plain; charset=UTF-8");
+		bufferSize = DEFAULT_BUFFER_SIZE;
+		headers = new HttpHeaders();
+		setHeader("Content-Type", DEFAULT_CONTENT_TYPE);
+	}
+
+	/**
+	 * Returns this object to the state it had right after construction so
+	 * it can be used for the next response on the same connection. The
+	 * output buffer is kept for that next response if it still has the
+	 * right size. Any output that wasn't flushed yet is discarded
+	 */
+	public synchronized void recycle() {
+		responseCode = HttpResponseCode.CODE_OK;
+		headers.clear();
+		contentTypeHeader = null;
+		contentType = null;
+		setHeader("Content-Type", DEFAULT_CONTENT_TYPE);
+		writer = null;
+		upgrade = null;
+		closing = false;
+		if (bufferedOutput != null && bufferSize == DEFAULT_BUFFER_SIZE) {
+			bufferedOutput.recycle();
+		} else {
+			release();
+		}
+		bufferSize = DEFAULT_BUFFER_SIZE;
+	}
+
+	/**
+	 * Gives the output buffer back to the shared pool, for example when
+	 * the connection is about to become idle. A new buffer will be taken
+	 * from the pool when more output gets written
+	 */
+	public synchronized void release() {
+		if (bufferedOutput != null) {
+			bufferedOutput.release();
+			bufferedOutput = null;
+		}
+		writer = null;
 	}
 
 	@Override
@@ -117,8 +236,7 @@ public class HttpResponseImpl implements HttpResponse {
 	public synchronized void setContentType(String contentType) {
 		checkCommitted("Can't change content type");
 		ContentType result = getContentTypeAndEncoding();
-		result.contentType = contentType;
-		updateContentType(result);
+		updateContentType(new ContentType(contentType, result.characterEncoding));
 	}
 
 	@Override
@@ -131,28 +249,32 @@ public class HttpResponseImpl implements HttpResponse {
 	public synchronized void setCharacterEncoding(String characterEncoding) {
 		checkCommitted("Can't change character encoding");
 		ContentType result = getContentTypeAndEncoding();
-		result.characterEncoding = characterEncoding;
-		updateContentType(result);
+		updateContentType(new ContentType(result.contentType, characterEncoding));
 	}
 
 	@Override
 	public String getHeader(String key) {
-		return headers.get(key.toLowerCase());
+		return headers.get(key);
 	}
 
 	@Override
 	public void setHeader(String key, String value) {
-		headers.put(key.toLowerCase(), value);
+		headers.set(key, value);
+	}
+
+	@Override
+	public void addHeader(String key, String value) {
+		headers.add(key, value);
 	}
 
 	@Override
 	public void removeHeader(String key) {
-		headers.remove(key.toLowerCase());
+		headers.remove(key);
 	}
 
 	@Override
 	public Set<String> getHeaderNames() {
-		return headers.keySet();
+		return headers.getNames();
 	}
 
 	@Override
@@ -177,6 +299,13 @@ public class HttpResponseImpl implements HttpResponse {
 	@Override
 	public synchronized PrintWriter getWriter() {
 		initOuput();
+		if (writer == null) {
+			try {
+                writer = new PrintWriter(new OutputStreamWriter(bufferedOutput, getCharacterEncoding()));
+			} catch (UnsupportedEncodingException ex) {
+                writer = new PrintWriter(new OutputStreamWriter(bufferedOutput));
+			}
+		}
 		return writer;
 	}
 
@@ -185,6 +314,15 @@ public class HttpResponseImpl implements HttpResponse {
 		return (bufferedOutput != null) && (bufferedOutput.countBytesWritten() > 0);
 	}
 
+	/**
+	 * Returns the number of content bytes (so not counting the response
+	 * code and headers) that have been written to the client so far
+	 * @return The number of content bytes written
+	 */
+	public synchronized long getBytesWritten() {
+		return (bufferedOutput != null) ? bufferedOutput.countBytesWritten() : 0;
+	}
+
 	@Override
 	public synchronized void reset() {
 		if  (bufferedOutput != null) {
@@ -193,17 +331,12 @@ public class HttpResponseImpl implements HttpResponse {
 	}
 
 	/**
-	 * Initialize the output stream and stream writer and the underlying
-	 * buffered output stream
+	 * Initialize the underlying buffered output stream, the writer
+	 * is only created when it's actually asked for
 	 */
 	private synchronized void initOuput() {
         if (bufferedOutput == null) {
-            bufferedOutput = new BufferedOutputStream(outputStream, bufferSize);
-			try {
-                writer = new PrintWriter(new OutputStreamWriter(bufferedOutput, getCharacterEncoding()));
-			} catch (UnsupportedEncodingException ex) {
-                writer = new PrintWriter(new OutputStreamWriter(bufferedOutput));
-			}
+            bufferedOutput = new BufferedOutputStream(outputStream, channel, bufferSize);
 		}
 	}
 
@@ -220,9 +353,10 @@ public class HttpResponseImpl implements HttpResponse {
 	
 	/**
 	 * This class holds the two most important bits of information about an
-	 * ouput stream: the mime type and character encoding of its content
+	 * ouput stream: the mime type and character encoding of its content.
+	 * Instances are cached so they should never be modified
 	 */
-	private class ContentType {
+	private static class ContentType {
 		/**
 		 * Mime type of the content
 		 */
@@ -245,28 +379,35 @@ public class HttpResponseImpl implements HttpResponse {
 	
 	/**
 	 * Determine the content type and character encoding using the information
-	 * encountered in the response header "Content-Type"
+	 * encountered in the response header "Content-Type". The result is cached
+	 * for as long as the header doesn't change
 	 * @return A ContentType object
 	 */
-	private ContentType getContentTypeAndEncoding() {
-		String[] result = new String[2];
-        result[0] = "";
-        result[1] = "";
-		
+	private synchronized ContentType getContentTypeAndEncoding() {
 		String typeAndEncodingText = getHeader("Content-Type");
-		if (typeAndEncodingText.length() > 0) {
-            String[] typeAndEncoding = typeAndEncodingText.split(";", 2);
-            result[0] = typeAndEncoding[0].trim();
-            if (typeAndEncoding.length > 1) {
-                String charset = result[1];
-                String[] charsetParts = charset.split("=");
-				if (charsetParts.length > 1 && charsetParts[0].trim().equalsIgnoreCase("charset")) {
-                    result[1] = charsetParts[1].trim();
+		if (contentType != null && typeAndEncodingText == contentTypeHeader) {
+			return contentType;
+		}
+
+		String type = "";
+		String encoding = "";
+		if (typeAndEncodingText != null && typeAndEncodingText.length() > 0) {
+			int semi = typeAndEncodingText.indexOf(';');
+			if (semi < 0) {
+				type = typeAndEncodingText.trim();
+			} else {
+				type = typeAndEncodingText.substring(0, semi).trim();
+				String charset = typeAndEncodingText.substring(semi + 1);
+				int eq = charset.indexOf('=');
+				if (eq > 0 && charset.substring(0, eq).trim().equalsIgnoreCase("charset")) {
+					encoding = charset.substring(eq + 1).trim();
 				}
-            }
+			}
 		}
 		
-		return new ContentType(result[0], result[1]);
+		contentTypeHeader = typeAndEncodingText;
+		contentType = new ContentType(type, encoding);
+		return contentType;
 	}
 
 	/**
@@ -280,24 +421,124 @@ public class HttpResponseImpl implements HttpResponse {
 			typeAndEncoding += "; charset=" + contentType.characterEncoding;
 		}
 		setHeader("Content-Type", typeAndEncoding);
+		this.contentTypeHeader = typeAndEncoding;
+		this.contentType = contentType;
+	}
+	
+	/**
+	 * Returns the given time as a string using the official format defined
+	 * by the HTTP specification, for example "Sun, 06 Nov 1994 08:49:37 GMT".
+	 * The date is worked out by hand because setting up a SimpleDateFormat
+	 * loads the locale data, which noticeably delays the very first response
+	 * @param time The time in milliseconds since the epoch
+	 * @return A date string using the official HTTP format
+	 */
+	public static String formatDate(long time) {
+		long seconds = time / 1000;
+		if (time % 1000 < 0) {
+			seconds--;
+		}
+		long days = seconds / 86400;
+		if (seconds % 86400 < 0) {
+			days--;
+		}
+		int secondOfDay = (int) (seconds - days * 86400);
+		// Converts days since 1970-01-01 into a year, month and day
+		long z = days + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		int dayOfEra = (int) (z - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int month = (mp < 10) ? mp + 3 : mp - 9;
+		long year = yearOfEra + era * 400 + ((month <= 2) ? 1 : 0);
+		int weekDay = (int) (((days % 7) + 11) % 7);
+
+		StringBuilder buf = new StringBuilder(29);
+		buf.append(DAY_NAMES[weekDay]).append(", ");
+		appendTwoDigits(buf, day);
+		buf.append(' ').append(MONTH_NAMES[month - 1]).append(' ').append(year).append(' ');
+		appendTwoDigits(buf, secondOfDay / 3600);
+		buf.append(':');
+		appendTwoDigits(buf, (secondOfDay / 60) % 60);
+		buf.append(':');
+		appendTwoDigits(buf, secondOfDay % 60);
+		buf.append(" GMT");
+		return buf.toString();
+	}
+
+	/**
+	 * Appends a number using at least two digits
+	 * @param buf The buffer to append to
+	 * @param value The number
+	 */
+	private static void appendTwoDigits(StringBuilder buf, int value) {
+		if (value < 10) {
+			buf.append('0');
+		}
+		buf.append(value);
+	}
+	
+	/**
+	 * Returns the complete Date header line for the current time. The
+	 * line is only formatted once per second, all responses sent within
+	 * that second share the same bytes
+	 * @return The encoded Date header line
+	 */
+	private static byte[] dateLine() {
+		long second = System.currentTimeMillis() / 1000;
+		DateLine line = currentDateLine;
+		if (line == null || line.second != second) {
+			line = new DateLine(second, asciiBytes("Date: " + formatDate(second * 1000) + CRLF));
+			currentDateLine = line;
+		}
+		return line.bytes;
 	}
 	
 	/**
-	 * Returns the given date as a string using the official format defined
-	 * by the HTTP specification
-	 * @param date A date object
-	 * @return A date string using the oficial HTTP format
+	 * Returns the given text as bytes, every character is assumed to
+	 * fit in a single byte
+	 * @param text The text to convert
+	 * @return The bytes of the text
 	 */
-	private String dateString(Date date) {
-		SimpleDateFormat fmt = (SimpleDateFormat) SimpleDateFormat.getDateTimeInstance();
-		fmt.setTimeZone(TimeZone.getTimeZone("GMT"));
-		fmt.applyPattern("EEE, d MMM yyyy HH:mm:ss z");
-		return fmt.format(date);
+	private static byte[] asciiBytes(String text) {
+		try {
+			return text.getBytes("ISO-8859-1");
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	/**
+	 * An encoded Date header line together with the second it was made for
+	 */
+	private static class DateLine {
+		/**
+		 * The time in seconds since the epoch
+		 */
+		final long second;
+		/**
+		 * The complete encoded header line
+		 */
+		final byte[] bytes;
+
+		/**
+		 * Creates a new instance
+		 * @param second The time in seconds since the epoch
+		 * @param bytes The complete encoded header line
+		 */
+		DateLine(long second, byte[] bytes) {
+			this.second = second;
+			this.bytes = bytes;
+		}
 	}
 
 	@Override
 	public void sendError(HttpResponseCode resultCode, String message) throws IOException {
-		logger.info("SENDING ERROR #" + resultCode + " : " + message);
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("SENDING ERROR #" + resultCode + " : " + message);
+		}
 		try {
     		reset();
 			setResponseCode(resultCode);
@@ -331,7 +572,9 @@ public class HttpResponseImpl implements HttpResponse {
 	@Override
 	public void sendRedirect(String url) throws IOException {
 		HttpResponseCode resultCode = HttpResponseCode.CODE_TEMPORARY_REDIRECT;
-		logger.info("SENDING REDIRECT #" + resultCode + " : " + url);
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("SENDING REDIRECT #" + resultCode + " : " + url);
+		}
 		try {
     		reset();
 			setResponseCode(resultCode);
@@ -349,35 +592,105 @@ public class HttpResponseImpl implements HttpResponse {
 		// Ugly way to interrupt to normal program flow but it works
 		throw new PrematureEOFException();
 	}
+
+	public synchronized ConnectionUpgrade getUpgrade() {
+		return upgrade;
+	}
+
+	public synchronized void setUpgrade(ConnectionUpgrade upgrade) {
+		this.upgrade = upgrade;
+	}
 	
 	/**
-	 * Write all the necessary response codes and headers to the given output
-	 * stream. This method is used by our BufferedOutputStream to insert this
-	 * information into the stream just ahead of the actual data.
+	 * Creates a complete response, including status line and headers, for
+	 * the given error code. The response closes the connection and has
+	 * a short plain text body. Because the result can be prepared
+	 * beforehand it can be used to send errors at moments where we don't
+	 * want to spend any effort on a client
+	 * @param code The response code to use
+	 * @param extraHeaders Any additional headers, each one in the form
+	 * "Name: value"
+	 * @return The bytes of the complete response
 	 */
-	private synchronized void writeResultAndHeaders(OutputStream out) {
-		PrintWriter w;
+	public static byte[] createErrorResponse(HttpResponseCode code, String... extraHeaders) {
+		String body = createErrorBody(code);
+		StringBuilder response = new StringBuilder();
+		response.append("HTTP/1.1 ").append(code.getCode()).append(' ').append(code.getMessage()).append(CRLF);
+		response.append("Server: ").append(SERVER_NAME).append(CRLF);
+		for (String header : extraHeaders) {
+			response.append(header).append(CRLF);
+		}
+		response.append("Content-Type: text/plain").append(CRLF);
+		response.append("Content-Length: ").append(body.length()).append(CRLF);
+		response.append("Connection: close").append(CRLF);
+		response.append(CRLF);
+		response.append(body);
 		try {
-			w = new PrintWriter(new OutputStreamWriter(out, getCharacterEncoding()));
+			return response.toString().getBytes("US-ASCII");
 		} catch (UnsupportedEncodingException ex) {
-			w = new PrintWriter(new OutputStreamWriter(out));
-		}
-		w.print("HTTP/1.1 " + responseCode.getCode() + " " + responseCode.getMessage() + CRLF);
-		w.print("Date: " + dateString(new Date()) + CRLF);
-		w.print("Server: " + SERVER_NAME + CRLF);
-		for (String name : getHeaderNames()) {
-			w.print(name + ": " + getHeader(name) + CRLF);
+			throw new IllegalStateException(ex);
 		}
-		w.print(CRLF);
-		w.flush();
+	}
+
+	/**
+	 * Returns the body used by the responses created by
+	 * <code>createErrorResponse()</code>
+	 * @param code The response code
+	 * @return The text of the body
+	 */
+	public static String createErrorBody(HttpResponseCode code) {
+		return code.getCode() + " " + code.getMessage() + "\n";
 	}
 	
+	/**
+	 * Encodes all the necessary response codes and headers into the head
+	 * buffer of the given stream. This method is used by our
+	 * BufferedOutputStream to insert this information into the stream just
+	 * ahead of the actual data.
+	 * @param out The stream to prepare the response head for
+	 */
+	private synchronized void writeResultAndHeaders(BufferedOutputStream out) {
+		out.appendHead("HTTP/1.1 ");
+		out.appendHead(Integer.toString(responseCode.getCode()));
+		out.appendHead(" ");
+		out.appendHead(responseCode.getMessage());
+		out.appendHead(CRLF);
+		out.appendHead(dateLine(), 0, -1);
+		out.appendHead(SERVER_LINE, 0, -1);
+		boolean close = closing;
+		for (int i = 0; i < headers.size(); i++) {
+			if (close && headers.getName(i).equalsIgnoreCase("Connection")) {
+				continue;
+			}
+			out.appendHead(headers.getName(i));
+			out.appendHead(": ");
+			out.appendHead(headers.getValue(i));
+			out.appendHead(CRLF);
+		}
+		if (close) {
+			out.appendHead("Connection: close");
+			out.appendHead(CRLF);
+		}
+		out.appendHead(CRLF);
+	}
+
+	/**
+	 * Makes the response tell the client that the connection will be
+	 * closed after it, if its head wasn't sent yet. Unlike the rest of
+	 * the methods this one is meant to be called from other threads
+	 */
+	public void closeConnection() {
+		closing = true;
+	}
+
 	/**
 	 * This class is very much like the official Java BufferedOutputStream
 	 * except for the fact that we allow the internal buffer to be reset
 	 * which in effect clears its contents and allows us to start over.
 	 * This is only allowed when no output has been written yet to the
-	 * wrapped output stream.
+	 * wrapped output stream. Every time the buffer gets flushed the
+	 * response head (the first time only), the chunk framing and the
+	 * content are passed to the client in a single write
 	 */
 	private class BufferedOutputStream extends FilterOutputStream {
 
@@ -393,21 +706,47 @@ public class HttpResponseImpl implements HttpResponse {
 		 * The number of bytes of data actually written to the client
 		 */
 		protected long countWritten;
-		
+		/**
+		 * The channel used for gathering writes (optional)
+		 */
+		private GatheringByteChannel channel;
+		/**
+		 * The buffer holding the encoded response head and/or chunk size
+		 * that will precede the content in the next write. It is kept
+		 * when the stream gets recycled
+		 */
+		private byte[] head;
+		/**
+		 * The number of bytes currently in the head buffer
+		 */
+		private int headCount;
+		/**
+		 * The buffers of a single gathering write
+		 */
+		private final ByteBuffer[] gather;
+
         private boolean headersWritten;
 		private boolean chunked;
-		
+		/**
+		 * Indicates that the final empty chunk has been written
+		 */
+		private boolean finished;
+
 		/**
 		 * Creates a new instance using the given output stream and buffer size
 		 * @param out The buffer stream to be wrapped
+		 * @param channel The channel underlying the stream or null
 		 * @param size The size in bytes of our internal buffer
 		 */
-		public BufferedOutputStream(OutputStream out, int size) {
+		public BufferedOutputStream(OutputStream out, GatheringByteChannel channel, int size) {
 			super(out);
 			if (size <= 0) {
 				throw new IllegalArgumentException("Buffer size <= 0");
 			}
-			buf = new byte[size];
+			this.channel = channel;
+			buf = (size == bufferPool.getBufferSize()) ? bufferPool.acquire() : new byte[size];
+			head = new byte[512];
+			gather = new ByteBuffer[4];
 			chunked = false;
 		}
 
@@ -419,47 +758,154 @@ public class HttpResponseImpl implements HttpResponse {
 		 * @throws java.io.IOException Is thrown when the data could not be written
 		 */
 		private void flushBuffer() throws IOException {
-			if (count > 0) {
-				writeBytes(buf, 0, count);
-				count = 0;
-			} else {
-	            if (!headersWritten) {
-	                writeResultAndHeaders(out);
-	                headersWritten = true;
-	            }
-			}
+			writeBytes(null, 0, 0, false);
 		}
 
 		/**
-		 * Writing the data in the buffer to the output stream that we wrap.
-		 * If this is the first time that anything gets written to the output
-		 * we first write the proper result and response headers. If chunked
-		 * transfers are enabled the proper information will be inserted
-		 * into the output stream
+		 * Writes the data in the buffer followed by the given data to the
+		 * client. If this is the first time that anything gets written to
+		 * the output we first write the proper result and response headers.
+		 * If chunked transfers are enabled all the data is sent as a single
+		 * chunk. Everything is passed on in one go, as a gathering write
+		 * when a channel is available or by copying it together when that
+		 * doesn't take too much effort
+		 * @param b The extra data to write after the buffer's contents or null
+		 * @param off The offset of the extra data
+		 * @param len The number of bytes of extra data
+		 * @param last When true this is the final write of the response
+		 * and the chunked body, if any, will be terminated
 		 * @throws java.io.IOException Is thrown when the data could not be written
 		 */
-		private void writeBytes(byte[] b, int off, int len) throws IOException {
+		private void writeBytes(byte[] b, int off, int len, boolean last) throws IOException {
+			int size = count + len;
+			boolean terminate = last && chunked && !finished;
+			if (headersWritten && size == 0 && !terminate) {
+				return;
+			}
+			headCount = 0;
 			if (!headersWritten) {
 				// The very first time
-				writeResultAndHeaders(out);
+				writeResultAndHeaders(this);
 				headersWritten = true;
-			}
-			if (countWritten == 0) {
                 // Shall we use chunks?
                 chunked = "chunked".equalsIgnoreCase(getHeader("Transfer-Encoding"));
+				terminate = last && chunked;
 			}
+			int endOff = 0;
+			int endLen = 0;
 			if (chunked) {
-				writeChunkSize(len);
-				out.write(b, off, len);
-				writeCRLF();
+				if (size > 0) {
+					appendHead(Integer.toHexString(size));
+					appendHead(CRLF);
+					endLen = 2;
+				} else {
+					endOff = 2;
+				}
+				if (terminate) {
+					endLen = CHUNK_END.length - endOff;
+					finished = true;
+				}
+			}
+
+			if (channel != null) {
+				int n = 0;
+				if (headCount > 0) {
+					gather[n++] = ByteBuffer.wrap(head, 0, headCount);
+				}
+				if (count > 0) {
+					gather[n++] = ByteBuffer.wrap(buf, 0, count);
+				}
+				if (len > 0) {
+					gather[n++] = ByteBuffer.wrap(b, off, len);
+				}
+				if (endLen > 0) {
+					gather[n++] = ByteBuffer.wrap(CHUNK_END, endOff, endLen);
+				}
+				try {
+					int first = 0;
+					while (first < n) {
+						channel.write(gather, first, n - first);
+						while (first < n && !gather[first].hasRemaining()) {
+							first++;
+						}
+					}
+				} finally {
+					for (int i = 0; i < n; i++) {
+						gather[i] = null;
+					}
+				}
+			} else if (headCount + size + endLen <= MAX_COALESCE_SIZE) {
+				appendHead(buf, 0, count);
+				appendHead(b, off, len);
+				appendHead(CHUNK_END, endOff, endLen);
+				out.write(head, 0, headCount);
 			} else {
-				out.write(b, off, len);
+				if (headCount > 0) {
+					out.write(head, 0, headCount);
+				}
+				if (count > 0) {
+					out.write(buf, 0, count);
+				}
+				if (len > 0) {
+					out.write(b, off, len);
+				}
+				if (endLen > 0) {
+					out.write(CHUNK_END, endOff, endLen);
+				}
 			}
-			countWritten += len;
+			headCount = 0;
+			count = 0;
+			countWritten += size;
 		}
-		
+
+		/**
+		 * Appends the given text to the head buffer. Each character is
+		 * written as a single byte, as is customary for HTTP headers
+		 * @param text The text to append
+		 */
+		void appendHead(String text) {
+			int len = text.length();
+			ensureHeadCapacity(len);
+			for (int i = 0; i < len; i++) {
+				char c = text.charAt(i);
+				head[headCount++] = (byte) ((c < 256) ? c : '?');
+			}
+		}
+
+		/**
+		 * Appends the given bytes to the head buffer
+		 * @param b The bytes to append or null
+		 * @param off The offset of the first byte
+		 * @param len The number of bytes to append or -1 for all
+		 * bytes starting at the given offset
+		 */
+		void appendHead(byte[] b, int off, int len) {
+			if (len < 0) {
+				len = b.length - off;
+			}
+			if (len > 0) {
+				ensureHeadCapacity(len);
+				System.arraycopy(b, off, head, headCount, len);
+				headCount += len;
+			}
+		}
+
+		/**
+		 * Makes sure the head buffer can hold the given number of extra bytes
+		 * @param extra The number of bytes that will be appended
+		 */
+		private void ensureHeadCapacity(int extra) {
+			int needed = headCount + extra;
+			if (needed > head.length) {
+				byte[] newHead = new byte[Math.max(needed, head.length * 2)];
+				System.arraycopy(head, 0, newHead, 0, headCount);
+				head = newHead;
+			}
+		}
+
 		@Override
 		public synchronized void write(int b) throws IOException {
+			ensureOpen();
 			if (count >= buf.length) {
 				flushBuffer();
 			}
@@ -468,40 +914,31 @@ public class HttpResponseImpl implements HttpResponse {
 
 		@Override
 		public synchronized void write(byte[] b, int off, int len) throws IOException {
-			if (len >= buf.length) {
-				/* If the request length exceeds the size of the output buffer,
-				flush the output buffer and then write the data directly.
-				In this way buffered streams will cascade harmlessly. */
-				flushBuffer();
-				writeBytes(b, off, len);
+			ensureOpen();
+			if (len >= buf.length || len > buf.length - count) {
+				/* If the data doesn't fit in what's left of the output buffer,
+				write the buffer and the data together directly. In this
+				way buffered streams will cascade harmlessly. */
+				writeBytes(b, off, len, false);
 				return;
 			}
-			if (len > buf.length - count) {
-				flushBuffer();
-			}
 			System.arraycopy(b, off, buf, count, len);
 			count += len;
 		}
-		
+
 		@Override
 		public synchronized void flush() throws IOException {
+			ensureOpen();
 			flushBuffer();
 			out.flush();
 		}
 
 		@Override
-		public void close() throws IOException {
-            if (!headersWritten) {
-                writeResultAndHeaders(out);
-                headersWritten = true;
-            }
-			if (chunked) {
-				// Write final empty chunk
-				writeChunkSize(0);
-				// Write the final CRLF to terminate the chunked body
-				writeCRLF();
-			}
-			flush();
+		public synchronized void close() throws IOException {
+			ensureOpen();
+			// Writes any remaining data and the final empty chunk at once
+			writeBytes(null, 0, 0, true);
+			out.flush();
 			// We don't call super.close() here because that would close the socket!!!
 		}
 
@@ -512,7 +949,7 @@ public class HttpResponseImpl implements HttpResponse {
 		public synchronized long countBytesWritten() {
 			return countWritten;
 		}
-		
+
 		/**
 		 * Resets the internal counter that holds the number of bytes in the
 		 * buffer to 0. This only works of no bytes were written yet to the client
@@ -523,16 +960,41 @@ public class HttpResponseImpl implements HttpResponse {
 			}
             count = 0;
 		}
-		
-		private void writeChunkSize(int size) throws IOException {
-			String hexSize = Integer.toHexString(size) + CRLF;
-			byte[] hexBuf = hexSize.getBytes("UTF-8");
-			out.write(hexBuf, 0, hexBuf.length);
+
+		/**
+		 * Empties the buffer and forgets everything that was written so
+		 * the stream can be used for a new response
+		 */
+		public synchronized void recycle() {
+			count = 0;
+			countWritten = 0;
+			headCount = 0;
+			headersWritten = false;
+			chunked = false;
+			finished = false;
 		}
-		
-		private void writeCRLF() throws IOException {
-			byte[] b = CRLF.getBytes("UTF-8");
-			out.write(b, 0, b.length);
+
+		/**
+		 * Gives the buffer back to the pool, the stream can't be used
+		 * anymore afterwards
+		 */
+		public synchronized void release() {
+			if (buf != null) {
+				bufferPool.release(buf);
+				buf = null;
+				count = 0;
+			}
+		}
+
+		/**
+		 * Makes sure the stream can still be used
+		 * @throws java.io.IOException If the buffer was already given
+		 * back to the pool
+		 */
+		private void ensureOpen() throws IOException {
+			if (buf == null) {
+				throw new IOException("Stream closed");
+			}
 		}
 	}
 }
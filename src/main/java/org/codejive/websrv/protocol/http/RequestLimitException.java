@@ -0,0 +1,56 @@
+/*
+ * RequestLimitException.java
+ *
+ * Created on Oct 19, 2026, 2:48:09 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http;
+
+/**
+ * This exception will be thrown when an incoming client request exceeds
+ * one of the configured request limits, for example because it is too
+ * large or because the client takes too long sending it
+ * @see org.codejive.websrv.protocol.http.HttpRequestLimits
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class RequestLimitException extends MalformedRequestException {
+
+	/**
+	 * The response code that should be sent to the client
+	 */
+	private final HttpResponseCode responseCode;
+
+	/**
+	 * Creates a new instance using the given response code and message
+	 * @param responseCode The response code to send to the client
+	 * @param message The exception message
+	 */
+	public RequestLimitException(HttpResponseCode responseCode, String message) {
+		super(message);
+		this.responseCode = responseCode;
+	}
+
+	/**
+	 * Returns the response code that should be sent to the client
+	 * @return The response code
+	 */
+	public HttpResponseCode getResponseCode() {
+		return responseCode;
+	}
+}
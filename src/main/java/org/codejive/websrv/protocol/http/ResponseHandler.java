@@ -31,7 +31,10 @@ import java.io.IOException;
  */
 public interface ResponseHandler {
 	/**
-	 * Generates output in response to a client request
+	 * Generates output in response to a client request. The request and
+	 * response objects are reused for the next request on the same
+	 * connection, so they must not be used anymore once this method returns
+	 * (make a copy of the request if its information is needed later on)
 	 * @param request The client request
 	 * @param response The response object to which the output will be written
 	 * @throws java.io.IOException Will be thrown when the response cannot be written
@@ -0,0 +1,69 @@
+/*
+ * UpgradedConnection.java
+ *
+ * Created on Oct 19, 2026, 5:21:37 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http;
+
+/**
+ * A connection that switched from HTTP/1.1 to another protocol. Once
+ * the switch has been made the HTTP protocol handler hands all further
+ * communication over to the connection, which can be parked between
+ * calls to <code>serve()</code> just like a HTTP connection between
+ * requests
+ * @see org.codejive.websrv.protocol.http.ConnectionUpgrade
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public interface UpgradedConnection {
+
+	/**
+	 * Handles the communication with the client until the connection
+	 * either gets closed or becomes idle
+	 * @param parkable Indicates if the connection can be parked, if not
+	 * this method must only return once the connection has been closed
+	 * @return <code>true</code> if the connection was left open because
+	 * it's idle, <code>false</code> if it should be closed
+	 */
+	public boolean serve(boolean parkable);
+
+	/**
+	 * Returns the time the connection can remain idle while parked
+	 * @return The time-out in milliseconds, 0 meaning forever
+	 */
+	public int getIdleTimeout();
+
+	/**
+	 * Called when the connection has been parked for longer than its
+	 * idle time-out. This method is called by the thread watching the
+	 * parked connections so it should return as quickly as possible
+	 * @return <code>true</code> if <code>serve()</code> should be called
+	 * again, <code>false</code> if the connection should be closed
+	 */
+	public boolean idleTimeoutReached();
+
+	/**
+	 * Asks the connection to end gracefully, telling the client so in
+	 * the way its protocol prescribes. What's in progress may still be
+	 * finished. This method can be called from any thread and must not
+	 * block for long, a parked connection gets served again afterwards
+	 * so it can end itself
+	 */
+	public void drain();
+}
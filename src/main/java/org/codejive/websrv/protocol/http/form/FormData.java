@@ -0,0 +1,146 @@
+/*
+ * FormData.java
+ *
+ * Created on Oct 19, 2026, 5:06:39 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http.form;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.codejive.websrv.util.MultiValueMap;
+
+/**
+ * A FormHandler that simply collects all the fields and files of a form
+ * submission. The values of the fields are kept in memory while uploaded
+ * files are written to temporary files when they become too large. Call
+ * <code>dispose()</code> when done to get rid of those temporary files.
+ * Just like the names of query parameters the field names are not
+ * case-sensitive, they are stored in lowercase
+ * @see org.codejive.websrv.protocol.http.form.FormFile
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class FormData implements FormHandler {
+
+	/**
+	 * The limits used for deciding where to keep uploaded files
+	 */
+	private final FormLimits limits;
+	
+	/**
+	 * The values of the simple fields
+	 */
+	private final MultiValueMap parameters;
+	
+	/**
+	 * The uploaded files
+	 */
+	private final List<FormFile> files;
+
+	/**
+	 * Creates a new instance using the given limits
+	 * @param limits The limits used for deciding where to keep uploaded files
+	 */
+	public FormData(FormLimits limits) {
+		this.limits = limits;
+		parameters = new MultiValueMap();
+		files = new ArrayList<FormFile>();
+	}
+
+	public void field(String name, String value) {
+		parameters.add(name.toLowerCase(), value);
+	}
+
+	public void file(FormPart part, InputStream content) throws IOException {
+		files.add(new FormFile(part, content, limits.getFileSizeThreshold(), limits.getTempDirectory()));
+	}
+
+	/**
+	 * Returns a new instance holding the same fields as this one but none
+	 * of its files, so it stays usable after this one was disposed
+	 * @return A copy of the fields
+	 */
+	public FormData copyFields() {
+		FormData copy = new FormData(limits);
+		copy.parameters.putAll(parameters);
+		return copy;
+	}
+
+	/**
+	 * Returns the value of the given field, if the field occurs more than
+	 * once the first value is returned
+	 * @param name The name of the field
+	 * @return The value of the field or null
+	 */
+	public String getParameter(String name) {
+		return parameters.getFirst(name.toLowerCase());
+	}
+
+	/**
+	 * Returns all the values of the given field in the order they were sent
+	 * @param name The name of the field
+	 * @return A read-only list of values, empty if the field doesn't exist
+	 */
+	public List<String> getParameterValues(String name) {
+		return parameters.get(name.toLowerCase());
+	}
+
+	/**
+	 * Returns a set of all the available field names, in lowercase
+	 * @return A set of field names
+	 */
+	public Set<String> getParameterNames() {
+		return parameters.keySet();
+	}
+
+	/**
+	 * Returns the first file that was uploaded with the given field name
+	 * @param name The name of the field
+	 * @return The uploaded file or null
+	 */
+	public FormFile getFile(String name) {
+		for (FormFile file : files) {
+			if (file.getName().equalsIgnoreCase(name)) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns all the uploaded files
+	 * @return A list of uploaded files
+	 */
+	public List<FormFile> getFiles() {
+		return Collections.unmodifiableList(files);
+	}
+
+	/**
+	 * Deletes all temporary files holding uploaded files
+	 */
+	public void dispose() {
+		for (FormFile file : files) {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * FormDataException.java
+ *
+ * Created on Oct 19, 2026, 2:14:37 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.http.form;
+
+import java.io.IOException;
+
+/**
+ * Carries the error that occurred while parsing a form submission out of
+ * methods like <code>HttpRequest.getParameter()</code> that can't throw
+ * an IOException themselves. The protocol handlers unwrap it so the
+ * client gets the same response as for any other request that was too
+ * large or malformed
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class FormDataException extends RuntimeException {
+
+	/**
+	 * Creates a new instance for the given parse error
+	 * @param cause The error that occurred while parsing the form
+	 */
+	public FormDataException(IOException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	/**
+	 * Returns the error that occurred while parsing the form
+	 * @return The parse error
+	 */
+	@Override
+	public synchronized IOException getCause() {
+		return (IOException) super.getCause();
+	}
+}
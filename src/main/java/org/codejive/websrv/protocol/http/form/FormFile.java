@@ -0,0 +1,205 @@
+/*
+ * FormFile.java
+ *
+ * Created on Oct 19, 2026, 4:58:12 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http.form;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+
+/**
+ * An uploaded file that was collected by FormData. Small files are kept
+ * in memory while larger ones are written to a temporary file as soon as
+ * they grow past the configured threshold
+ * @see org.codejive.websrv.protocol.http.form.FormData
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class FormFile {
+
+	/**
+	 * The information about the uploaded file
+	 */
+	private final FormPart part;
+	
+	/**
+	 * The contents of the file if it is kept in memory
+	 */
+	private byte[] data;
+	
+	/**
+	 * The temporary file holding the contents or null
+	 */
+	private File file;
+	
+	/**
+	 * The size of the contents
+	 */
+	private long size;
+
+	/**
+	 * Creates a new instance by reading the contents from the given stream
+	 * @param part The information about the uploaded file
+	 * @param content The stream to read the contents from
+	 * @param threshold The size above which the contents will be written
+	 * to a temporary file
+	 * @param tempDirectory The directory for the temporary file or null
+	 * @throws java.io.IOException If the contents could not be read or written
+	 */
+	FormFile(FormPart part, InputStream content, int threshold, File tempDirectory) throws IOException {
+		this.part = part;
+		ByteArrayOutputStream mem = new ByteArrayOutputStream();
+		OutputStream out = mem;
+		byte[] buf = new byte[8192];
+		try {
+			int n;
+			while ((n = content.read(buf)) >= 0) {
+				if (file == null && size + n > threshold) {
+					file = File.createTempFile("websrv-upload-", ".tmp", tempDirectory);
+					out = new FileOutputStream(file);
+					mem.writeTo(out);
+					mem = null;
+				}
+				out.write(buf, 0, n);
+				size += n;
+			}
+		} catch (IOException ex) {
+			closeQuietly(out);
+			delete();
+			throw ex;
+		}
+		out.close();
+		if (mem != null) {
+			data = mem.toByteArray();
+		}
+	}
+
+	/**
+	 * Returns the name of the form field the file was uploaded with
+	 * @return The name of the field
+	 */
+	public String getName() {
+		return part.getName();
+	}
+
+	/**
+	 * Returns the name of the file as it was sent by the client
+	 * @return The file name
+	 */
+	public String getFileName() {
+		return part.getFileName();
+	}
+
+	/**
+	 * Returns the content type of the file
+	 * @return The content type or null if it wasn't specified
+	 */
+	public String getContentType() {
+		return part.getContentType();
+	}
+
+	/**
+	 * Returns the value of the given part header
+	 * @param key The name of the header
+	 * @return The value of the header or null
+	 */
+	public String getHeader(String key) {
+		return part.getHeader(key);
+	}
+
+	/**
+	 * Returns a set of all the available part header names
+	 * @return A set of header names
+	 */
+	public Set<String> getHeaderNames() {
+		return part.getHeaderNames();
+	}
+
+	/**
+	 * Returns the size of the file
+	 * @return The size in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Determines if the contents of the file are kept in memory
+	 * @return <code>true</code> if the file is kept in memory
+	 */
+	public boolean isInMemory() {
+		return data != null;
+	}
+
+	/**
+	 * Returns the temporary file holding the contents. The file will be
+	 * deleted at the end of the request, so anybody wanting to keep it
+	 * should move it somewhere else
+	 * @return The temporary file or null if the contents are kept in memory
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns a stream for reading the contents of the file
+	 * @return A stream with the contents of the file
+	 * @throws java.io.IOException If the temporary file could not be opened
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (data != null) {
+			return new ByteArrayInputStream(data);
+		}
+		if (file == null) {
+			throw new IOException("Uploaded file has been deleted");
+		}
+		return new FileInputStream(file);
+	}
+
+	/**
+	 * Frees the memory or deletes the temporary file holding the contents
+	 */
+	public void delete() {
+		data = null;
+		if (file != null) {
+			file.delete();
+			file = null;
+		}
+	}
+
+	/**
+	 * Closes the given stream ignoring any errors
+	 * @param out The stream to close
+	 */
+	private static void closeQuietly(OutputStream out) {
+		try {
+			out.close();
+		} catch (IOException ex) {
+			// Ignore
+		}
+	}
+}
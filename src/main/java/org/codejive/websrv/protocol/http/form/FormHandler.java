@@ -0,0 +1,56 @@
+/*
+ * FormHandler.java
+ *
+ * Created on Oct 19, 2026, 4:21:47 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http.form;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Classes implementing this interface receive the contents of a form
+ * submission while it is being parsed. Simple fields are passed as
+ * strings while the contents of files are passed as streams that read
+ * directly from the request body, which means a handler can process
+ * uploads of any size without keeping them in memory
+ * @see org.codejive.websrv.protocol.http.form.FormParser
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public interface FormHandler {
+
+	/**
+	 * Is called for each simple form field
+	 * @param name The name of the field
+	 * @param value The value of the field, never null
+	 * @throws java.io.IOException If the handler wants to abort parsing
+	 */
+	void field(String name, String value) throws IOException;
+
+	/**
+	 * Is called for each uploaded file. The content stream is only valid
+	 * during this call, whatever the handler doesn't read will be skipped
+	 * @param part The information about the uploaded file
+	 * @param content The contents of the file
+	 * @throws java.io.IOException If the contents could not be read or if
+	 * the handler wants to abort parsing
+	 */
+	void file(FormPart part, InputStream content) throws IOException;
+}
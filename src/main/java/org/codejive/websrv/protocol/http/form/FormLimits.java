@@ -0,0 +1,157 @@
+/*
+ * FormLimits.java
+ *
+ * Created on Oct 19, 2026, 4:24:10 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http.form;
+
+import java.io.File;
+
+/**
+ * Holds the limits and settings used while parsing form submissions.
+ * Submissions that exceed one of the limits are aborted with a
+ * "413 Request Entity Too Large" error. Setting any of the limits
+ * to 0 disables it
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class FormLimits {
+
+	/**
+	 * The maximum number of fields and files in a single
+	 * submission (default = 1000)
+	 */
+	private int maxParts;
+	
+	/**
+	 * The maximum size of the value of a simple field (default = 64KB)
+	 */
+	private int maxFieldSize;
+	
+	/**
+	 * The maximum size of a single uploaded file (default = 0, meaning
+	 * that only the maximum request body size applies)
+	 */
+	private long maxPartSize;
+	
+	/**
+	 * The size above which collected uploads are written to a temporary
+	 * file instead of being kept in memory (default = 16KB)
+	 */
+	private int fileSizeThreshold;
+	
+	/**
+	 * The directory for temporary files or null to use the
+	 * system's default (default = null)
+	 */
+	private File tempDirectory;
+
+	/**
+	 * Creates a new instance using the default limits
+	 */
+	public FormLimits() {
+		maxParts = 1000;
+		maxFieldSize = 65536;
+		maxPartSize = 0;
+		fileSizeThreshold = 16384;
+		tempDirectory = null;
+	}
+
+	/**
+	 * Returns the maximum number of fields and files in a single submission
+	 * @return The maximum number of parts
+	 */
+	public int getMaxParts() {
+		return maxParts;
+	}
+
+	/**
+	 * Sets the maximum number of fields and files in a single submission
+	 * @param maxParts The maximum number of parts
+	 */
+	public void setMaxParts(int maxParts) {
+		this.maxParts = maxParts;
+	}
+
+	/**
+	 * Returns the maximum size of the value of a simple field
+	 * @return The maximum size in bytes
+	 */
+	public int getMaxFieldSize() {
+		return maxFieldSize;
+	}
+
+	/**
+	 * Sets the maximum size of the value of a simple field
+	 * @param maxFieldSize The maximum size in bytes
+	 */
+	public void setMaxFieldSize(int maxFieldSize) {
+		this.maxFieldSize = maxFieldSize;
+	}
+
+	/**
+	 * Returns the maximum size of a single uploaded file
+	 * @return The maximum size in bytes
+	 */
+	public long getMaxPartSize() {
+		return maxPartSize;
+	}
+
+	/**
+	 * Sets the maximum size of a single uploaded file
+	 * @param maxPartSize The maximum size in bytes
+	 */
+	public void setMaxPartSize(long maxPartSize) {
+		this.maxPartSize = maxPartSize;
+	}
+
+	/**
+	 * Returns the size above which collected uploads are written to
+	 * a temporary file instead of being kept in memory
+	 * @return The threshold in bytes
+	 */
+	public int getFileSizeThreshold() {
+		return fileSizeThreshold;
+	}
+
+	/**
+	 * Sets the size above which collected uploads are written to
+	 * a temporary file instead of being kept in memory
+	 * @param fileSizeThreshold The threshold in bytes
+	 */
+	public void setFileSizeThreshold(int fileSizeThreshold) {
+		this.fileSizeThreshold = fileSizeThreshold;
+	}
+
+	/**
+	 * Returns the directory for temporary files
+	 * @return The directory or null if the system's default is used
+	 */
+	public File getTempDirectory() {
+		return tempDirectory;
+	}
+
+	/**
+	 * Sets the directory for temporary files
+	 * @param tempDirectory The directory or null to use the system's default
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+}
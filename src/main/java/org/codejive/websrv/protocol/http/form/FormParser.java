@@ -0,0 +1,366 @@
+/*
+ * FormParser.java
+ *
+ * Created on Oct 19, 2026, 4:46:20 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http.form;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.MalformedRequestException;
+import org.codejive.websrv.protocol.http.RequestLimitException;
+
+/**
+ * Parses form submissions of the type "application/x-www-form-urlencoded"
+ * and "multipart/form-data". The parser reads the streaming request body
+ * and passes the fields and files it encounters to a FormHandler as soon
+ * as they are found. Instances hold no state of their own so they can be
+ * shared between threads
+ * @see org.codejive.websrv.protocol.http.form.FormHandler
+ * @see org.codejive.websrv.protocol.http.form.FormData
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class FormParser {
+
+	/**
+	 * The limits to enforce while parsing
+	 */
+	private final FormLimits limits;
+
+	/**
+	 * The media type of url encoded forms
+	 */
+	public static final String URLENCODED = "application/x-www-form-urlencoded";
+	
+	/**
+	 * The media type of multipart forms
+	 */
+	public static final String MULTIPART = "multipart/form-data";
+	
+	/**
+	 * The character set used when a request doesn't specify one
+	 */
+	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * Creates a new parser using the default limits
+	 */
+	public FormParser() {
+		this(new FormLimits());
+	}
+
+	/**
+	 * Creates a new parser using the given limits
+	 * @param limits The limits to enforce while parsing
+	 */
+	public FormParser(FormLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Returns the limits that are enforced while parsing
+	 * @return The form limits
+	 */
+	public FormLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * Determines if the given request contains a form submission this
+	 * parser can handle
+	 * @param request The request to check
+	 * @return <code>true</code> if the request body contains form data
+	 */
+	public static boolean isFormRequest(HttpRequest request) {
+		String mediaType = getMediaType(request.getHeader("Content-Type"));
+		return URLENCODED.equalsIgnoreCase(mediaType) || MULTIPART.equalsIgnoreCase(mediaType);
+	}
+
+	/**
+	 * Parses the body of the given request passing any fields and files
+	 * to the given handler. Requests that don't contain a form submission
+	 * are left untouched
+	 * @param request The request to parse
+	 * @param handler The handler that will receive the form data
+	 * @return <code>true</code> if the request contained a form submission
+	 * @throws java.io.IOException If the body could not be read, if it was
+	 * malformed or if it exceeded one of the limits
+	 */
+	public boolean parse(HttpRequest request, FormHandler handler) throws IOException {
+		String contentType = request.getHeader("Content-Type");
+		String mediaType = getMediaType(contentType);
+		Charset charset = getCharset(contentType);
+		if (URLENCODED.equalsIgnoreCase(mediaType)) {
+			parseUrlEncoded(request.getInputStream(), charset, handler);
+			return true;
+		} else if (MULTIPART.equalsIgnoreCase(mediaType)) {
+			String boundary = getParameter(contentType, "boundary");
+			if (boundary == null || boundary.length() == 0 || boundary.length() > 70) {
+				throw new MalformedRequestException("Missing or invalid multipart boundary");
+			}
+			parseMultipart(request.getInputStream(), boundary, charset, handler);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Parses a url encoded body, decoding the fields while they are read
+	 * @param in The stream to read the body from
+	 * @param charset The character set to decode the fields with
+	 * @param handler The handler that will receive the fields
+	 * @throws java.io.IOException If the body could not be read or
+	 * exceeded one of the limits
+	 */
+	private void parseUrlEncoded(InputStream in, Charset charset, FormHandler handler) throws IOException {
+		int maxParts = limits.getMaxParts();
+		int maxFieldSize = limits.getMaxFieldSize();
+		ByteArrayOutputStream current = new ByteArrayOutputStream();
+		String name = null;
+		int parts = 0;
+		int escape = -1;
+		int escapeValue = 0;
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = in.read(buf)) >= 0) {
+			for (int i = 0; i < n; i++) {
+				int b = buf[i] & 0xff;
+				if (escape >= 0) {
+					int digit = Character.digit(b, 16);
+					if (digit < 0) {
+						// Not a valid escape, keep it as it was
+						current.write('%');
+						if (escape == 1) {
+							current.write(escapeValue < 10 ? '0' + escapeValue : 'A' + escapeValue - 10);
+						}
+						escape = -1;
+					} else {
+						escapeValue = (escapeValue << 4) | digit;
+						if (++escape == 2) {
+							current.write(escapeValue);
+							escape = -1;
+						}
+						continue;
+					}
+				}
+				if (b == '&') {
+					if (name != null || current.size() > 0) {
+						if (maxParts > 0 && ++parts > maxParts) {
+							throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, "Too many form fields");
+						}
+						handler.field(decodeName(name, current, charset), decodeValue(name, current, charset));
+					}
+					name = null;
+					current.reset();
+				} else if (b == '=' && name == null) {
+					name = new String(current.toByteArray(), charset);
+					current.reset();
+				} else if (b == '+') {
+					current.write(' ');
+				} else if (b == '%') {
+					escape = 0;
+					escapeValue = 0;
+				} else {
+					current.write(b);
+				}
+				if (maxFieldSize > 0 && current.size() > maxFieldSize) {
+					throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, "Form field too large");
+				}
+			}
+		}
+		if (escape >= 0) {
+			current.write('%');
+			if (escape == 1) {
+				current.write(escapeValue < 10 ? '0' + escapeValue : 'A' + escapeValue - 10);
+			}
+		}
+		if (name != null || current.size() > 0) {
+			if (maxParts > 0 && ++parts > maxParts) {
+				throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, "Too many form fields");
+			}
+			handler.field(decodeName(name, current, charset), decodeValue(name, current, charset));
+		}
+	}
+
+	/**
+	 * Returns the name of a url encoded field
+	 * @param name The name if it was already found or null
+	 * @param current The bytes read since the last separator
+	 * @param charset The character set to decode with
+	 * @return The name of the field
+	 */
+	private static String decodeName(String name, ByteArrayOutputStream current, Charset charset) {
+		return (name != null) ? name : new String(current.toByteArray(), charset);
+	}
+
+	/**
+	 * Returns the value of a url encoded field
+	 * @param name The name if it was already found or null
+	 * @param current The bytes read since the last separator
+	 * @param charset The character set to decode with
+	 * @return The value of the field, an empty string if it had none
+	 */
+	private static String decodeValue(String name, ByteArrayOutputStream current, Charset charset) {
+		return (name != null) ? new String(current.toByteArray(), charset) : "";
+	}
+
+	/**
+	 * Parses a multipart body passing each part to the handler as
+	 * soon as it is found
+	 * @param in The stream to read the body from
+	 * @param boundary The boundary that separates the parts
+	 * @param charset The character set to decode simple fields with
+	 * @param handler The handler that will receive the fields and files
+	 * @throws java.io.IOException If the body could not be read, if it was
+	 * malformed or if it exceeded one of the limits
+	 */
+	private void parseMultipart(InputStream in, String boundary, Charset charset, FormHandler handler) throws IOException {
+		int maxParts = limits.getMaxParts();
+		MultipartStream parts = new MultipartStream(in, boundary);
+		int count = 0;
+		while (parts.nextPart()) {
+			if (maxParts > 0 && ++count > maxParts) {
+				throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, "Too many form parts");
+			}
+			HttpHeaders headers = parts.readHeaders();
+			String disposition = headers.get("Content-Disposition");
+			String name = getParameter(disposition, "name");
+			if (name == null) {
+				// Not a form field, just skip it
+				continue;
+			}
+			String fileName = getParameter(disposition, "filename");
+			FormPart part = new FormPart(headers, name, fileName);
+			if (part.isFile()) {
+				handler.file(part, parts.getPartStream(limits.getMaxPartSize()));
+			} else {
+				InputStream content = parts.getPartStream(limits.getMaxFieldSize());
+				Charset partCharset = charset;
+				if (getParameter(part.getContentType(), "charset") != null) {
+					partCharset = getCharset(part.getContentType());
+				}
+				handler.field(name, readString(content, partCharset));
+			}
+		}
+	}
+
+	/**
+	 * Reads the entire stream into a string
+	 * @param in The stream to read
+	 * @param charset The character set to decode with
+	 * @return The string
+	 * @throws java.io.IOException If the stream could not be read
+	 */
+	private static String readString(InputStream in, Charset charset) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int n;
+		while ((n = in.read(buf)) >= 0) {
+			out.write(buf, 0, n);
+		}
+		return new String(out.toByteArray(), charset);
+	}
+
+	/**
+	 * Returns the media type part of a Content-Type header
+	 * @param contentType The value of the header or null
+	 * @return The media type or null
+	 */
+	private static String getMediaType(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		int semi = contentType.indexOf(';');
+		return ((semi >= 0) ? contentType.substring(0, semi) : contentType).trim();
+	}
+
+	/**
+	 * Returns the character set specified in a Content-Type header
+	 * @param contentType The value of the header or null
+	 * @return The character set, UTF-8 if none or an unknown one was specified
+	 */
+	private static Charset getCharset(String contentType) {
+		String name = getParameter(contentType, "charset");
+		if (name != null) {
+			try {
+				return Charset.forName(name);
+			} catch (IllegalArgumentException ex) {
+				// Unknown or illegal character set, use the default
+			}
+		}
+		return DEFAULT_CHARSET;
+	}
+
+	/**
+	 * Returns the value of a parameter in a header like Content-Type or
+	 * Content-Disposition. Quoted values are unquoted
+	 * @param header The value of the header or null
+	 * @param key The name of the parameter
+	 * @return The value of the parameter or null if it wasn't found
+	 */
+	static String getParameter(String header, String key) {
+		if (header == null) {
+			return null;
+		}
+		int len = header.length();
+		int i = header.indexOf(';');
+		while (i >= 0 && i < len) {
+			i++;
+			while (i < len && Character.isWhitespace(header.charAt(i))) {
+				i++;
+			}
+			int eq = header.indexOf('=', i);
+			int semi = header.indexOf(';', i);
+			if (eq < 0 || (semi >= 0 && semi < eq)) {
+				i = semi;
+				continue;
+			}
+			String name = header.substring(i, eq).trim();
+			StringBuilder value = new StringBuilder();
+			i = eq + 1;
+			while (i < len && Character.isWhitespace(header.charAt(i))) {
+				i++;
+			}
+			if (i < len && header.charAt(i) == '"') {
+				for (i++; i < len && header.charAt(i) != '"'; i++) {
+					char c = header.charAt(i);
+					if (c == '\\' && i + 1 < len) {
+						c = header.charAt(++i);
+					}
+					value.append(c);
+				}
+				i = header.indexOf(';', i);
+			} else {
+				int end = header.indexOf(';', i);
+				value.append(header.substring(i, (end >= 0) ? end : len).trim());
+				i = end;
+			}
+			if (name.equalsIgnoreCase(key)) {
+				return value.toString();
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * FormPart.java
+ *
+ * Created on Oct 19, 2026, 4:27:35 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http.form;
+
+import java.util.Set;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+
+/**
+ * Holds the information found in the headers of a single part of a
+ * "multipart/form-data" submission
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class FormPart {
+
+	/**
+	 * The headers of the part
+	 */
+	private final HttpHeaders headers;
+	
+	/**
+	 * The name of the form field
+	 */
+	private final String name;
+	
+	/**
+	 * The name of the uploaded file or null
+	 */
+	private final String fileName;
+
+	/**
+	 * Creates a new instance using the given headers
+	 * @param headers The headers of the part
+	 * @param name The name of the form field
+	 * @param fileName The name of the uploaded file or null
+	 */
+	FormPart(HttpHeaders headers, String name, String fileName) {
+		this.headers = headers;
+		this.name = name;
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Returns the name of the form field this part belongs to
+	 * @return The name of the field
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the name of the uploaded file as it was sent by the client.
+	 * Be aware that some clients include a path
+	 * @return The file name or null if this part isn't a file
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * Determines if this part contains an uploaded file
+	 * @return <code>true</code> if the part contains a file
+	 */
+	public boolean isFile() {
+		return fileName != null;
+	}
+
+	/**
+	 * Returns the content type of the part
+	 * @return The content type or null if it wasn't specified
+	 */
+	public String getContentType() {
+		return getHeader("Content-Type");
+	}
+
+	/**
+	 * Returns the value of the given header
+	 * @param key The name of the header, case is ignored
+	 * @return The value of the header or null
+	 */
+	public String getHeader(String key) {
+		return headers.get(key);
+	}
+
+	/**
+	 * Returns a set of all the available header names
+	 * @return A set of header names
+	 */
+	public Set<String> getHeaderNames() {
+		return headers.getNames();
+	}
+}
@@ -0,0 +1,407 @@
+/*
+ * MultipartStream.java
+ *
+ * Created on Oct 19, 2026, 4:33:52 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http.form;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.MalformedRequestException;
+import org.codejive.websrv.protocol.http.RequestLimitException;
+
+/**
+ * Splits a "multipart/form-data" body into its separate parts while it
+ * is being read. Only a small buffer is used that is just large enough
+ * to be able to recognize the boundaries between the parts
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class MultipartStream {
+
+	/**
+	 * The stream to read the body from
+	 */
+	private final InputStream in;
+	
+	/**
+	 * The byte sequence that separates the parts: CRLF, two dashes
+	 * and the boundary
+	 */
+	private final byte[] delimiter;
+	
+	/**
+	 * The internal buffer
+	 */
+	private byte[] buf;
+	
+	/**
+	 * The position of the next byte to read from the buffer
+	 */
+	private int pos;
+	
+	/**
+	 * The position just after the last valid byte in the buffer
+	 */
+	private int limit;
+	
+	/**
+	 * The position up to which we know the buffer contains part data
+	 */
+	private int dataEnd;
+	
+	/**
+	 * The position of the delimiter found in the buffer or -1
+	 */
+	private int delimiterPos;
+	
+	/**
+	 * Indicates if the end of the underlying stream was reached
+	 */
+	private boolean eof;
+	
+	/**
+	 * Indicates if the final boundary was found
+	 */
+	private boolean finished;
+	
+	/**
+	 * The stream for the contents of the current part
+	 */
+	private PartInputStream current;
+
+	/**
+	 * The minimum size of the internal buffer
+	 */
+	private static final int BUFFER_SIZE = 8192;
+	
+	/**
+	 * The maximum length of a part header line
+	 */
+	private static final int MAX_HEADER_SIZE = 8192;
+	
+	/**
+	 * The maximum number of headers for a single part
+	 */
+	private static final int MAX_HEADER_COUNT = 32;
+	
+	/**
+	 * The character set used for decoding the boundary
+	 */
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	
+	/**
+	 * The character set used for decoding part headers, browsers
+	 * use it for sending non-ASCII file names
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Creates a new instance that reads from the given stream
+	 * @param in The stream to read the body from
+	 * @param boundary The boundary as found in the Content-Type header
+	 */
+	public MultipartStream(InputStream in, String boundary) {
+		this.in = in;
+		delimiter = ("\r\n--" + boundary).getBytes(ASCII);
+		buf = new byte[Math.max(BUFFER_SIZE, delimiter.length * 4)];
+		// The first boundary doesn't have to be preceded by a line
+		// break so we just pretend there is one
+		buf[0] = '\r';
+		buf[1] = '\n';
+		limit = 2;
+		delimiterPos = -1;
+	}
+
+	/**
+	 * Moves to the next part skipping whatever was left of the current
+	 * one (or skipping the preamble if this is the first call)
+	 * @return <code>true</code> if there is a next part, <code>false</code>
+	 * if the final boundary was reached
+	 * @throws java.io.IOException If the body could not be read or
+	 * is malformed
+	 */
+	public boolean nextPart() throws IOException {
+		if (finished) {
+			return false;
+		}
+		if (current != null) {
+			current.done = true;
+			current = null;
+		}
+		int n;
+		while ((n = scan()) >= 0) {
+			pos += n;
+		}
+		pos += delimiter.length;
+		if (!ensure(2)) {
+			throw new MalformedRequestException("Unexpected end of multipart body");
+		}
+		if (buf[pos] == '-' && buf[pos + 1] == '-') {
+			pos += 2;
+			finished = true;
+			return false;
+		}
+		// Whatever follows the boundary on the same line is ignored
+		readLine();
+		return true;
+	}
+
+	/**
+	 * Reads the headers of the current part. Must be called right after
+	 * <code>nextPart()</code>
+	 * @return The headers of the part
+	 * @throws java.io.IOException If the headers could not be read or
+	 * are malformed
+	 */
+	public HttpHeaders readHeaders() throws IOException {
+		HttpHeaders headers = new HttpHeaders(4);
+		String line;
+		while ((line = readLine()).length() > 0) {
+			if (headers.size() >= MAX_HEADER_COUNT) {
+				throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, "Too many part headers");
+			}
+			int colon = line.indexOf(':');
+			if (colon < 0) {
+				throw new MalformedRequestException("Malformed part header: " + line);
+			}
+			headers.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+		}
+		return headers;
+	}
+
+	/**
+	 * Returns a stream for the contents of the current part. The stream
+	 * becomes invalid once <code>nextPart()</code> is called
+	 * @param maxSize The maximum size of the contents, 0 means no limit
+	 * @return A stream for the contents of the current part
+	 */
+	public InputStream getPartStream(long maxSize) {
+		current = new PartInputStream(maxSize);
+		return current;
+	}
+
+	/**
+	 * Determines how many bytes of part data can be read from the buffer
+	 * without running into the delimiter, reading more data if necessary
+	 * @return The number of bytes of data or -1 if the delimiter has been reached
+	 * @throws java.io.IOException If the body could not be read or ended
+	 * without a final boundary
+	 */
+	private int scan() throws IOException {
+		for (;;) {
+			if (pos < dataEnd) {
+				return dataEnd - pos;
+			}
+			if (pos == delimiterPos) {
+				return -1;
+			}
+			int idx = indexOfDelimiter();
+			if (idx >= 0) {
+				delimiterPos = idx;
+				dataEnd = idx;
+				if (idx == pos) {
+					return -1;
+				}
+				return idx - pos;
+			}
+			// The end of the buffer could hold the start of a delimiter
+			int safe = limit - (delimiter.length - 1);
+			if (safe > pos) {
+				dataEnd = safe;
+				return safe - pos;
+			}
+			if (eof) {
+				throw new MalformedRequestException("Unexpected end of multipart body");
+			}
+			fill();
+		}
+	}
+
+	/**
+	 * Searches the unread part of the buffer for the delimiter
+	 * @return The position of the delimiter or -1 if it wasn't found
+	 */
+	private int indexOfDelimiter() {
+		byte first = delimiter[0];
+		int last = limit - delimiter.length;
+		outer:
+		for (int i = pos; i <= last; i++) {
+			if (buf[i] != first) {
+				continue;
+			}
+			for (int j = 1; j < delimiter.length; j++) {
+				if (buf[i + j] != delimiter[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Makes sure the buffer contains at least the given number of unread bytes
+	 * @param count The number of bytes needed
+	 * @return <code>false</code> if the end of the body was reached first
+	 * @throws java.io.IOException If the body could not be read
+	 */
+	private boolean ensure(int count) throws IOException {
+		while (limit - pos < count) {
+			if (eof) {
+				return false;
+			}
+			fill();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a line of text, used for the part headers
+	 * @return The line without its terminator
+	 * @throws java.io.IOException If the line could not be read or is too long
+	 */
+	private String readLine() throws IOException {
+		int scanned = 0;
+		for (;;) {
+			for (int i = pos + scanned; i < limit; i++) {
+				if (buf[i] == '\n') {
+					int end = (i > pos && buf[i - 1] == '\r') ? i - 1 : i;
+					String line = new String(buf, pos, end - pos, UTF8);
+					pos = i + 1;
+					return line;
+				}
+			}
+			scanned = limit - pos;
+			if (scanned > MAX_HEADER_SIZE) {
+				throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, "Part header too long");
+			}
+			if (eof) {
+				throw new MalformedRequestException("Unexpected end of multipart body");
+			}
+			fill();
+		}
+	}
+
+	/**
+	 * Reads more data into the buffer, first moving the unread data to
+	 * the start of the buffer
+	 * @throws java.io.IOException If the body could not be read
+	 */
+	private void fill() throws IOException {
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		if (limit == buf.length) {
+			byte[] newbuf = new byte[buf.length * 2];
+			System.arraycopy(buf, 0, newbuf, 0, limit);
+			buf = newbuf;
+		}
+		dataEnd = 0;
+		delimiterPos = -1;
+		int n = in.read(buf, limit, buf.length - limit);
+		if (n < 0) {
+			eof = true;
+		} else {
+			limit += n;
+		}
+	}
+
+	/**
+	 * The stream that returns the contents of a single part
+	 */
+	private class PartInputStream extends InputStream {
+
+		/**
+		 * The maximum number of bytes in the part, 0 means no limit
+		 */
+		private final long maxSize;
+		
+		/**
+		 * The number of bytes read so far
+		 */
+		private long total;
+		
+		/**
+		 * Indicates if the end of the part was reached
+		 */
+		private boolean done;
+
+		public PartInputStream(long maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (done) {
+				return -1;
+			}
+			int n = scan();
+			if (n < 0) {
+				done = true;
+				return -1;
+			}
+			count(1);
+			return buf[pos++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (done) {
+				return -1;
+			}
+			if (len == 0) {
+				return 0;
+			}
+			int n = scan();
+			if (n < 0) {
+				done = true;
+				return -1;
+			}
+			n = Math.min(n, len);
+			count(n);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (done || pos >= dataEnd) ? 0 : dataEnd - pos;
+		}
+
+		/**
+		 * Counts the bytes read, checking that the part doesn't get too large
+		 * @param n The number of bytes read
+		 * @throws org.codejive.websrv.protocol.http.RequestLimitException If
+		 * the part is too large
+		 */
+		private void count(int n) throws RequestLimitException {
+			total += n;
+			if (maxSize > 0 && total > maxSize) {
+				throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, "Form part too large");
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/*
+ * package-info.java
+ *
+ * Created on Oct 19, 2026, 4:20:03 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * This package holds the parsers for HTML form submissions, both
+ * "application/x-www-form-urlencoded" and "multipart/form-data". They
+ * work directly on the streaming request body so even very large
+ * uploads can be handled using a constant amount of memory
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+package org.codejive.websrv.protocol.http.form;
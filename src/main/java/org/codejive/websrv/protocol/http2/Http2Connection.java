@@ -0,0 +1,2062 @@
+/*
+ * Http2Connection.java
+ *
+ * Created on Oct 19, 2026, 4:58:31 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.VersionInfo;
+import org.codejive.websrv.accesslog.AccessLog;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpRequestImpl;
+import org.codejive.websrv.protocol.http.HttpRequestLimits;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.HttpResponseImpl;
+import org.codejive.websrv.protocol.http.ResponseHandler;
+import org.codejive.websrv.protocol.http.UpgradedConnection;
+import org.codejive.websrv.protocol.http.form.FormParser;
+import org.codejive.websrv.protocol.http2.hpack.HpackDecoder;
+import org.codejive.websrv.protocol.http2.hpack.HpackEncoder;
+
+/**
+ * This class implements the HTTP/2 protocol (RFC 7540) for a single
+ * connection. The thread that calls <code>serve()</code> reads and handles
+ * all incoming frames while each request is handled by its own stream
+ * which gets run by the executor. Outgoing frames are collected in a
+ * queue (control frames) and in the streams themselves (response data),
+ * whichever thread finds the connection not busy writing writes out
+ * everything that is ready, combining as many frames as possible into
+ * a single write. Response data is sent in the order decided by the
+ * client's stream priorities and within the limits of its flow control
+ * windows.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class Http2Connection implements UpgradedConnection {
+
+	/**
+	 * The socket used for client-server communication
+	 */
+	private final Socket socket;
+	/**
+	 * The input of the connection, it might already hold data that was
+	 * read before switching to HTTP/2
+	 */
+	private final InputStream in;
+	/**
+	 * The output of the connection
+	 */
+	private final OutputStream out;
+	/**
+	 * The response handler used to generate output
+	 */
+	private final ResponseHandler responseHandler;
+	/**
+	 * The executor that runs the streams
+	 */
+	private final Executor executor;
+	/**
+	 * The settings we announce to the client
+	 */
+	private final Http2Settings settings;
+	/**
+	 * The limits that incoming requests must stay within
+	 */
+	private HttpRequestLimits requestLimits;
+	/**
+	 * The parser used for form submissions or null
+	 */
+	private FormParser formParser;
+	/**
+	 * The access log to record the handled requests in or null
+	 */
+	private AccessLog accessLog;
+	/**
+	 * The time-out in milliseconds after which an idle connection
+	 * will be closed, 0 means never
+	 */
+	private int keepAliveTimeout;
+	/**
+	 * Indicates if the connection uses TLS
+	 */
+	private boolean secure;
+
+	/**
+	 * Indicates that the client's connection preface still has to be read
+	 */
+	private boolean expectMagic;
+	/**
+	 * Indicates that the client's first SETTINGS frame was received
+	 */
+	private boolean settingsReceived;
+	/**
+	 * Indicates that the client acknowledged our settings
+	 */
+	private boolean settingsAcknowledged;
+	/**
+	 * Indicates that the client won't be opening any more streams
+	 */
+	private boolean remoteGoingAway;
+	/**
+	 * The last stream we still handle after telling the client we're
+	 * going away or -1 if we didn't. Guarded by <code>this</code>
+	 */
+	private int goAwayStreamId;
+	/**
+	 * Indicates that the connection is parked, its socket can't be
+	 * written to until it gets served again. Guarded by <code>this</code>
+	 */
+	private boolean parked;
+	/**
+	 * The header of the frame being read
+	 */
+	private final byte[] frameHeader;
+	/**
+	 * The payload of the frame being read
+	 */
+	private byte[] frameBuffer;
+	/**
+	 * The decoder for request header blocks
+	 */
+	private final HpackDecoder decoder;
+	/**
+	 * The header block being collected from HEADERS and CONTINUATION frames
+	 */
+	private final ByteArrayOutputStream headerBlock;
+	/**
+	 * The stream the header block being collected belongs to or 0
+	 */
+	private int headerStreamId;
+	/**
+	 * Indicates that the header block being collected ends its stream
+	 */
+	private boolean headerEndStream;
+	/**
+	 * The priority sent along with the header block being collected,
+	 * the stream it depends on or -1 for the default priority
+	 */
+	private int headerDependency;
+	/**
+	 * The weight sent along with the header block being collected
+	 */
+	private int headerWeight;
+	/**
+	 * Indicates that the priority of the header block being collected
+	 * is exclusive
+	 */
+	private boolean headerExclusive;
+	/**
+	 * The highest stream identifier the client has used so far
+	 */
+	private int lastStreamId;
+	/**
+	 * The number of bytes the client is still allowed to send on the
+	 * connection as a whole
+	 */
+	private int receiveWindow;
+	/**
+	 * The number of bytes received that haven't been given back to the
+	 * client in a WINDOW_UPDATE yet
+	 */
+	private int receiveConsumed;
+	/**
+	 * The start of the period in which RST_STREAM frames are being counted
+	 */
+	private long resetPeriodStart;
+	/**
+	 * The number of RST_STREAM frames received in the current period
+	 */
+	private int resetCount;
+
+	/**
+	 * The active streams, by identifier
+	 */
+	private final Map<Integer, Http2Stream> streams;
+	/**
+	 * Decides which stream gets to send the next DATA frame
+	 */
+	private final PriorityScheduler scheduler;
+	/**
+	 * The complete frames, other than response data, waiting to be sent
+	 */
+	private final LinkedList<byte[]> controlFrames;
+	/**
+	 * The encoder for response header blocks
+	 */
+	private final HpackEncoder encoder;
+	/**
+	 * The buffer that header blocks get encoded into
+	 */
+	private final ByteArrayOutputStream encodeBuffer;
+	/**
+	 * The buffer in which frames are combined before being written,
+	 * it's only used by the thread that is writing
+	 */
+	private byte[] writeBuffer;
+	/**
+	 * Indicates that some thread is busy writing
+	 */
+	private boolean writing;
+	/**
+	 * The number of bytes we're still allowed to send on the connection
+	 * as a whole, can become negative like the windows of the streams
+	 */
+	private int sendWindow;
+	/**
+	 * The window size that new streams start out with, as set by the client
+	 */
+	private int peerInitialWindowSize;
+	/**
+	 * The maximum size of the frames we send, as set by the client
+	 */
+	private int peerMaxFrameSize;
+	/**
+	 * Indicates that the connection was closed, no frames can be sent anymore
+	 */
+	private boolean closed;
+	/**
+	 * The time of the last activity on the connection
+	 */
+	private long lastActivity;
+	/**
+	 * The value of the Date header for the current second
+	 */
+	private String dateValue;
+	/**
+	 * The second the Date header value was created for
+	 */
+	private long dateSecond;
+
+	/**
+	 * The bytes every client must start the connection with
+	 */
+	private static final byte[] CONNECTION_PREFACE = asciiBytes("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n");
+
+	/**
+	 * Frame types
+	 */
+	private static final int DATA = 0x0;
+	private static final int HEADERS = 0x1;
+	private static final int PRIORITY = 0x2;
+	private static final int RST_STREAM = 0x3;
+	private static final int SETTINGS = 0x4;
+	private static final int PUSH_PROMISE = 0x5;
+	private static final int PING = 0x6;
+	private static final int GOAWAY = 0x7;
+	private static final int WINDOW_UPDATE = 0x8;
+	private static final int CONTINUATION = 0x9;
+
+	/**
+	 * Frame flags
+	 */
+	private static final int FLAG_END_STREAM = 0x1;
+	private static final int FLAG_ACK = 0x1;
+	private static final int FLAG_END_HEADERS = 0x4;
+	private static final int FLAG_PADDED = 0x8;
+	private static final int FLAG_PRIORITY = 0x20;
+
+	/**
+	 * Setting identifiers
+	 */
+	private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+	private static final int SETTINGS_ENABLE_PUSH = 0x2;
+	private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+	private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+	/**
+	 * The size of the header compression tables that both sides start
+	 * out with, it's also the most we'll use for compressing responses
+	 */
+	private static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+	/**
+	 * The size of a frame header
+	 */
+	private static final int FRAME_HEADER_SIZE = 9;
+	/**
+	 * The maximum payload of the DATA frames we send, whatever the client
+	 * allows. Larger frames would only delay the other streams
+	 */
+	private static final int MAX_DATA_FRAME_SIZE = 16384;
+	/**
+	 * The smallest DATA frame we'll squeeze into what's left of the
+	 * write buffer, anything larger waits for the next write
+	 */
+	private static final int MIN_SPLIT_SIZE = 1024;
+	/**
+	 * The maximum time in milliseconds we'll block in a single read
+	 * before checking the connection's time-outs again
+	 */
+	private static final int CHECK_INTERVAL = 1000;
+	/**
+	 * The maximum time in milliseconds the client can take to send
+	 * the rest of a frame once it has started sending it
+	 */
+	private static final int FRAME_TIMEOUT = 20000;
+	/**
+	 * The maximum time in milliseconds a stream will wait for the client
+	 * to open up its window before giving up
+	 */
+	private static final int SEND_TIMEOUT = 30000;
+	/**
+	 * The maximum number of RST_STREAM frames we accept per second before
+	 * deciding the client is just trying to keep us busy
+	 */
+	private static final int MAX_RESETS_PER_SECOND = 200;
+	/**
+	 * The maximum number of control frames waiting to be sent, a client
+	 * that causes more (by sending lots of PINGs or SETTINGS for example)
+	 * without reading them is disconnected
+	 */
+	private static final int MAX_QUEUED_CONTROL_FRAMES = 1000;
+	/**
+	 * The maximum size of a compressed header block when the request
+	 * limits don't impose one
+	 */
+	private static final int MAX_HEADER_BLOCK_SIZE = 1024 * 1024;
+	/**
+	 * The name and version of this application
+	 */
+	private static final String SERVER_NAME = "websrv/" + VersionInfo.VERSION;
+
+	/**
+	 * Class private logger
+	 */
+	private static final Logger logger = Logger.getLogger(Http2Connection.class.getName());
+
+	/**
+	 * Creates a new connection
+	 * @param socket The socket used for client-server communication
+	 * @param in The input of the connection, it will be read from
+	 * instead of the socket's own stream
+	 * @param responseHandler The response handler to use for generating output
+	 * @param executor The executor that will run the streams
+	 * @param settings The settings to announce to the client
+	 * @throws java.io.IOException If the socket's output stream could
+	 * not be obtained
+	 */
+	public Http2Connection(Socket socket, InputStream in, ResponseHandler responseHandler, Executor executor, Http2Settings settings) throws IOException {
+		this.socket = socket;
+		this.in = in;
+		this.responseHandler = responseHandler;
+		this.executor = executor;
+		this.settings = settings;
+		out = socket.getOutputStream();
+		requestLimits = new HttpRequestLimits();
+		keepAliveTimeout = 10000;
+		frameHeader = new byte[FRAME_HEADER_SIZE];
+		frameBuffer = new byte[Http2Settings.MIN_FRAME_SIZE];
+		// Until the client has seen our settings it will assume the
+		// default table size so we must accept that as well
+		decoder = new HpackDecoder(Math.max(settings.getHeaderTableSize(), DEFAULT_HEADER_TABLE_SIZE), 0);
+		headerBlock = new ByteArrayOutputStream();
+		receiveWindow = Http2Settings.DEFAULT_WINDOW_SIZE;
+		streams = new HashMap<Integer, Http2Stream>();
+		scheduler = new PriorityScheduler();
+		controlFrames = new LinkedList<byte[]>();
+		encoder = new HpackEncoder(DEFAULT_HEADER_TABLE_SIZE);
+		encodeBuffer = new ByteArrayOutputStream(512);
+		writeBuffer = new byte[2 * (MAX_DATA_FRAME_SIZE + FRAME_HEADER_SIZE)];
+		sendWindow = Http2Settings.DEFAULT_WINDOW_SIZE;
+		peerInitialWindowSize = Http2Settings.DEFAULT_WINDOW_SIZE;
+		peerMaxFrameSize = Http2Settings.MIN_FRAME_SIZE;
+		lastActivity = System.currentTimeMillis();
+		goAwayStreamId = -1;
+	}
+
+	/**
+	 * Sets the limits that incoming requests must stay within
+	 * @param requestLimits The request limits
+	 */
+	public void setRequestLimits(HttpRequestLimits requestLimits) {
+		this.requestLimits = requestLimits;
+	}
+
+	/**
+	 * Sets the parser that will be used for form submissions
+	 * @param formParser The form parser or null
+	 */
+	public void setFormParser(FormParser formParser) {
+		this.formParser = formParser;
+	}
+
+	/**
+	 * Sets the access log that handled requests will be recorded in
+	 * @param accessLog The access log or null to disable logging
+	 */
+	public void setAccessLog(AccessLog accessLog) {
+		this.accessLog = accessLog;
+	}
+
+	/**
+	 * Sets the time-out in milliseconds after which an idle connection
+	 * will be closed. It's also the time a stream will wait for the
+	 * next part of a request body. 0 means never
+	 * @param keepAliveTimeout The time-out in milliseconds
+	 */
+	public void setKeepAliveTimeout(int keepAliveTimeout) {
+		this.keepAliveTimeout = keepAliveTimeout;
+	}
+
+	/**
+	 * Sets if the connection uses TLS
+	 * @param secure <code>true</code> if the connection uses TLS
+	 */
+	public void setSecure(boolean secure) {
+		this.secure = secure;
+	}
+
+	/**
+	 * Returns the response handler used to generate output
+	 * @return The response handler
+	 */
+	ResponseHandler getResponseHandler() {
+		return responseHandler;
+	}
+
+	/**
+	 * Returns the time in milliseconds a stream will wait for the next
+	 * part of a request body
+	 * @return The time-out in milliseconds, 0 meaning forever
+	 */
+	int getReadTimeout() {
+		return keepAliveTimeout;
+	}
+
+	public int getIdleTimeout() {
+		return keepAliveTimeout;
+	}
+
+	public boolean idleTimeoutReached() {
+		// An idle HTTP/2 connection simply gets closed
+		return false;
+	}
+
+	/**
+	 * Tells the client that the connection is going away by sending a
+	 * GOAWAY frame. The streams it already opened are still completed,
+	 * new ones are refused. The connection is closed as soon as there
+	 * are no active streams left
+	 */
+	public void drain() {
+		boolean write;
+		synchronized (this) {
+			if (closed || goAwayStreamId >= 0) {
+				return;
+			}
+			goAwayStreamId = lastStreamId;
+			controlFrames.add(createGoAwayFrame(goAwayStreamId, Http2ErrorCode.NO_ERROR, "Shutting down"));
+			// A parked connection sends it once it gets served again
+			write = !parked;
+		}
+		if (write) {
+			try {
+				flushFrames();
+			} catch (IOException ex) {
+				logger.fine("Could not send GOAWAY: " + ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Starts the connection by sending our settings to the client
+	 * @param expectMagic Indicates if the client's connection preface
+	 * still has to be read. When the connection was started with a
+	 * "PRI" request it has already been taken care of
+	 * @throws java.io.IOException If the settings could not be sent
+	 */
+	public void start(boolean expectMagic) throws IOException {
+		this.expectMagic = expectMagic;
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(36);
+		writeSetting(payload, SETTINGS_MAX_CONCURRENT_STREAMS, settings.getMaxConcurrentStreams());
+		if (settings.getHeaderTableSize() != DEFAULT_HEADER_TABLE_SIZE) {
+			writeSetting(payload, SETTINGS_HEADER_TABLE_SIZE, settings.getHeaderTableSize());
+		}
+		if (settings.getInitialWindowSize() != Http2Settings.DEFAULT_WINDOW_SIZE) {
+			writeSetting(payload, SETTINGS_INITIAL_WINDOW_SIZE, settings.getInitialWindowSize());
+		}
+		if (settings.getMaxFrameSize() != Http2Settings.MIN_FRAME_SIZE) {
+			writeSetting(payload, SETTINGS_MAX_FRAME_SIZE, settings.getMaxFrameSize());
+		}
+		if (requestLimits.getMaxRequestHeadSize() > 0) {
+			writeSetting(payload, SETTINGS_MAX_HEADER_LIST_SIZE, requestLimits.getMaxRequestHeadSize());
+		}
+		byte[] data = payload.toByteArray();
+		queueFrame(createFrame(SETTINGS, 0, 0, data, 0, data.length));
+		flushFrames();
+	}
+
+	/**
+	 * Starts the connection for a client that asked to upgrade from
+	 * HTTP/1.1. The request that contained the upgrade will be handled
+	 * as stream 1 which the client can't send anything on anymore
+	 * @param request The request that asked for the upgrade, it will be
+	 * copied so the original can be reused
+	 * @param http2Settings The value of the HTTP2-Settings header
+	 * @throws java.io.IOException If the settings could not be decoded
+	 * or sent
+	 */
+	public void startUpgrade(HttpRequest request, String http2Settings) throws IOException {
+		byte[] data = decodeBase64Url(http2Settings);
+		if (data == null || data.length % 6 != 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Malformed HTTP2-Settings header");
+		}
+		applySettings(data, 0, data.length);
+		start(true);
+
+		HttpRequestImpl copy = new HttpRequestImpl(request);
+		copy.setRequestProtocol("HTTP/2.0");
+		// These only concerned the HTTP/1.1 connection
+		copy.removeHeader("Connection");
+		copy.removeHeader("Upgrade");
+		copy.removeHeader("HTTP2-Settings");
+		copy.setSecure(secure);
+		copy.setRemoteAddress(socket.getInetAddress());
+		copy.setFormParser(formParser);
+		lastStreamId = 1;
+		Http2Stream stream = createStream(1, copy);
+		stream.endRequest();
+		dispatch(stream, -1, 0, false);
+	}
+
+	/**
+	 * Reads and handles incoming frames until the connection gets closed.
+	 * When the connection is parkable this method will return as soon
+	 * as there are no active streams and the client hasn't sent anything
+	 * else yet, leaving the connection open, it can be called again to
+	 * continue where it left off
+	 * @param parkable Indicates if the connection can be parked
+	 * @return <code>true</code> if the connection was left open
+	 */
+	public boolean serve(boolean parkable) {
+		try {
+			synchronized (this) {
+				parked = false;
+			}
+			// Send what was queued while we were parked
+			flushFrames();
+			socket.setSoTimeout(CHECK_INTERVAL);
+			if (expectMagic) {
+				readPreface();
+				expectMagic = false;
+			}
+			// The connection is only parked after reading at least one
+			// frame, when we get resumed there's something to read even
+			// if it's only the end of the input
+			boolean mayPark = false;
+			for (;;) {
+				if (isIdle()) {
+					if (isGoingAway()) {
+						break;
+					}
+					if (parkable && mayPark && in.available() == 0 && park()) {
+						return true;
+					}
+				}
+				if (!readFrame()) {
+					break;
+				}
+				mayPark = true;
+			}
+		} catch (Http2Exception ex) {
+			logger.fine("HTTP/2 connection error: " + ex.getMessage());
+			goAway(ex.getErrorCode(), ex.getMessage());
+		} catch (EOFException ex) {
+			logger.fine("End of input was reached");
+		} catch (IOException ex) {
+			logger.fine("HTTP/2 connection failed: " + ex.getMessage());
+		}
+		close();
+		return false;
+	}
+
+	/**
+	 * Determines if there's nothing going on on the connection
+	 * @return <code>true</code> if there are no active streams and
+	 * nothing is waiting to be sent
+	 */
+	private synchronized boolean isIdle() {
+		return streams.isEmpty() && controlFrames.isEmpty() && !writing && headerStreamId == 0;
+	}
+
+	/**
+	 * Parks the connection unless something was queued to be sent in
+	 * the mean time
+	 * @return <code>true</code> if the connection can be parked
+	 */
+	private synchronized boolean park() {
+		parked = isIdle() && goAwayStreamId < 0;
+		return parked;
+	}
+
+	/**
+	 * Determines if either side said the connection is going away
+	 * @return <code>true</code> if no new streams will be opened
+	 */
+	private synchronized boolean isGoingAway() {
+		return remoteGoingAway || goAwayStreamId >= 0;
+	}
+
+	/**
+	 * Reads the connection preface, the magic bytes that every client
+	 * starts the connection with
+	 * @throws java.io.IOException If the preface is incorrect or could not be read
+	 */
+	private void readPreface() throws IOException {
+		byte[] preface = new byte[CONNECTION_PREFACE.length];
+		if (!readFully(preface, 0, preface.length, true)) {
+			throw new EOFException("End of input reached");
+		}
+		for (int i = 0; i < preface.length; i++) {
+			if (preface[i] != CONNECTION_PREFACE[i]) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid connection preface");
+			}
+		}
+	}
+
+	/**
+	 * Reads and handles a single frame
+	 * @return <code>false</code> if the connection should be closed
+	 * because the client closed it or because it's been idle too long
+	 * @throws java.io.IOException If reading failed or the client
+	 * committed a connection error
+	 */
+	private boolean readFrame() throws IOException {
+		if (!readFully(frameHeader, 0, FRAME_HEADER_SIZE, true)) {
+			return false;
+		}
+		int length = ((frameHeader[0] & 0xff) << 16) | ((frameHeader[1] & 0xff) << 8) | (frameHeader[2] & 0xff);
+		int type = frameHeader[3] & 0xff;
+		int flags = frameHeader[4] & 0xff;
+		int streamId = readInt(frameHeader, 5) & 0x7fffffff;
+		if (length > settings.getMaxFrameSize()) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Frame too large");
+		}
+		if (frameBuffer.length < length) {
+			frameBuffer = new byte[length];
+		}
+		if (!readFully(frameBuffer, 0, length, false)) {
+			throw new EOFException("End of input reached in the middle of a frame");
+		}
+		synchronized (this) {
+			lastActivity = System.currentTimeMillis();
+		}
+		if (logger.isLoggable(Level.FINEST)) {
+			logger.finest("FRAME: type=" + type + " flags=" + flags + " stream=" + streamId + " length=" + length);
+		}
+
+		if (headerStreamId != 0 && type != CONTINUATION) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Expected CONTINUATION frame");
+		}
+		if (!settingsReceived && type != SETTINGS) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Expected SETTINGS frame");
+		}
+		try {
+			switch (type) {
+				case DATA:
+					readData(streamId, flags, length);
+					break;
+				case HEADERS:
+					readHeaders(streamId, flags, length);
+					break;
+				case PRIORITY:
+					readPriority(streamId, length);
+					break;
+				case RST_STREAM:
+					readResetStream(streamId, length);
+					break;
+				case SETTINGS:
+					readSettings(streamId, flags, length);
+					break;
+				case PUSH_PROMISE:
+					throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Clients can't push");
+				case PING:
+					readPing(streamId, flags, length);
+					break;
+				case GOAWAY:
+					readGoAway(streamId, length);
+					break;
+				case WINDOW_UPDATE:
+					readWindowUpdate(streamId, length);
+					break;
+				case CONTINUATION:
+					readContinuation(streamId, flags, length);
+					break;
+				default:
+					// Unknown frame types must be ignored
+					break;
+			}
+		} catch (Http2Exception ex) {
+			if (ex.isConnectionError()) {
+				throw ex;
+			}
+			logger.fine("HTTP/2 stream error: " + ex.getMessage());
+			resetStream(ex.getStreamId(), ex.getErrorCode());
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the given number of bytes from the connection. The socket's
+	 * time-out is only used to check regularly if the connection has been
+	 * idle for too long or if the client is taking too long to send a frame
+	 * @param b The buffer to read into
+	 * @param off The offset to start storing bytes
+	 * @param len The number of bytes to read
+	 * @param frameStart Indicates that this is the start of a new frame
+	 * so the connection might still be idle
+	 * @return <code>false</code> if the connection should be closed because
+	 * the end of the input was reached or the connection was idle too
+	 * long before the first byte was received
+	 * @throws java.io.IOException If reading failed or if the client
+	 * took too long to send the data
+	 */
+	private boolean readFully(byte[] b, int off, int len, boolean frameStart) throws IOException {
+		int pos = 0;
+		long deadline = 0;
+		while (pos < len) {
+			try {
+				int n = in.read(b, off + pos, len - pos);
+				if (n < 0) {
+					if (pos > 0 || !frameStart) {
+						throw new EOFException("End of input reached in the middle of a frame");
+					}
+					return false;
+				}
+				pos += n;
+			} catch (SocketTimeoutException ex) {
+				long now = System.currentTimeMillis();
+				if (pos == 0 && frameStart) {
+					if (isIdle() && isGoingAway()) {
+						logger.fine("Connection has been drained");
+						return false;
+					}
+					if (keepAliveTimeout > 0 && isIdle() && now - getLastActivity() >= keepAliveTimeout) {
+						logger.fine("Connection keep-alive timeout reached");
+						goAway(Http2ErrorCode.NO_ERROR, "Idle timeout");
+						return false;
+					}
+				} else if (deadline == 0) {
+					deadline = now + FRAME_TIMEOUT;
+				} else if (now >= deadline) {
+					throw new SocketTimeoutException("Frame not received in time");
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the time of the last activity on the connection
+	 * @return The time in milliseconds
+	 */
+	private synchronized long getLastActivity() {
+		return lastActivity;
+	}
+
+	/**
+	 * Handles a DATA frame
+	 * @param streamId The stream the frame belongs to
+	 * @param flags The frame's flags
+	 * @param length The length of the frame's payload
+	 * @throws java.io.IOException If the frame is not acceptable
+	 */
+	private void readData(int streamId, int flags, int length) throws IOException {
+		if (streamId == 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "DATA frame without a stream");
+		}
+		int off = 0;
+		int end = length;
+		if ((flags & FLAG_PADDED) != 0) {
+			if (length < 1) {
+				throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Missing padding length");
+			}
+			int padding = frameBuffer[0] & 0xff;
+			off = 1;
+			end -= padding;
+			if (end < off) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Padding exceeds frame");
+			}
+		}
+		// The connection's window is opened up again right away, the
+		// streams' windows are what really limits the client
+		int credit = 0;
+		synchronized (this) {
+			if (length > receiveWindow) {
+				throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, "Connection window exceeded");
+			}
+			receiveWindow -= length;
+			receiveConsumed += length;
+			if (receiveConsumed >= Http2Settings.DEFAULT_WINDOW_SIZE / 2) {
+				credit = receiveConsumed;
+				receiveWindow += credit;
+				receiveConsumed = 0;
+				queueFrame(createWindowUpdate(0, credit));
+			}
+		}
+		if (credit > 0) {
+			flushFrames();
+		}
+		Http2Stream stream = getStream(streamId);
+		if (stream == null) {
+			if (streamId > lastStreamId) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "DATA frame for idle stream");
+			}
+			// Data still underway for a stream we've closed
+			return;
+		}
+		if (stream.isRemoteClosed()) {
+			throw new Http2Exception(Http2ErrorCode.STREAM_CLOSED, streamId, "DATA frame after end of stream");
+		}
+		stream.receiveData(frameBuffer, off, end - off, length, (flags & FLAG_END_STREAM) != 0);
+	}
+
+	/**
+	 * Handles a HEADERS frame
+	 * @param streamId The stream the frame belongs to
+	 * @param flags The frame's flags
+	 * @param length The length of the frame's payload
+	 * @throws java.io.IOException If the frame is not acceptable
+	 */
+	private void readHeaders(int streamId, int flags, int length) throws IOException {
+		if (streamId == 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "HEADERS frame without a stream");
+		}
+		int off = 0;
+		int end = length;
+		if ((flags & FLAG_PADDED) != 0) {
+			if (length < 1) {
+				throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Missing padding length");
+			}
+			off = 1;
+			end -= frameBuffer[0] & 0xff;
+		}
+		headerDependency = -1;
+		if ((flags & FLAG_PRIORITY) != 0) {
+			if (end - off < 5) {
+				throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Missing priority");
+			}
+			int dependency = readInt(frameBuffer, off);
+			headerExclusive = dependency < 0;
+			headerDependency = dependency & 0x7fffffff;
+			headerWeight = (frameBuffer[off + 4] & 0xff) + 1;
+			off += 5;
+		}
+		if (end < off) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Padding exceeds frame");
+		}
+		headerBlock.reset();
+		headerStreamId = streamId;
+		headerEndStream = (flags & FLAG_END_STREAM) != 0;
+		appendHeaderBlock(off, end - off);
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			handleHeaderBlock();
+		}
+	}
+
+	/**
+	 * Handles a CONTINUATION frame
+	 * @param streamId The stream the frame belongs to
+	 * @param flags The frame's flags
+	 * @param length The length of the frame's payload
+	 * @throws java.io.IOException If the frame is not acceptable
+	 */
+	private void readContinuation(int streamId, int flags, int length) throws IOException {
+		if (headerStreamId == 0 || streamId != headerStreamId) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Unexpected CONTINUATION frame");
+		}
+		appendHeaderBlock(0, length);
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			handleHeaderBlock();
+		}
+	}
+
+	/**
+	 * Adds part of the current frame to the header block being collected.
+	 * Header blocks can't be processed in pieces so their size must be
+	 * limited, there is no way to refuse them without breaking the header
+	 * compression so a client that exceeds the limit is disconnected
+	 * @param off The offset of the fragment in the frame buffer
+	 * @param len The length of the fragment
+	 * @throws java.io.IOException If the block becomes too large
+	 */
+	private void appendHeaderBlock(int off, int len) throws IOException {
+		int max = requestLimits.getMaxRequestHeadSize();
+		if (max <= 0) {
+			max = MAX_HEADER_BLOCK_SIZE;
+		}
+		if (headerBlock.size() + len > Math.max(max, Http2Settings.MIN_FRAME_SIZE)) {
+			throw new Http2Exception(Http2ErrorCode.ENHANCE_YOUR_CALM, "Header block too large");
+		}
+		headerBlock.write(frameBuffer, off, len);
+	}
+
+	/**
+	 * Handles a complete header block, which either opens a new stream or
+	 * contains the trailers of an existing one
+	 * @throws java.io.IOException If the block is not acceptable
+	 */
+	private void handleHeaderBlock() throws IOException {
+		int streamId = headerStreamId;
+		headerStreamId = 0;
+		byte[] block = headerBlock.toByteArray();
+		headerBlock.reset();
+		if ((streamId & 1) == 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Client used an even stream identifier");
+		}
+
+		if (streamId <= lastStreamId) {
+			// The block must always be decoded to keep the table in sync
+			decoder.decode(block, 0, block.length, new HpackDecoder.HeaderListener() {
+				public void addHeader(String name, String value) {
+					// Trailers are not passed on
+				}
+			});
+			Http2Stream stream = getStream(streamId);
+			if (stream == null) {
+				throw new Http2Exception(Http2ErrorCode.STREAM_CLOSED, streamId, "HEADERS frame for closed stream");
+			}
+			if (!headerEndStream || stream.isRemoteClosed()) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, "Unexpected HEADERS frame");
+			}
+			stream.endRequest();
+			return;
+		}
+
+		lastStreamId = streamId;
+		RequestHeaders headers = new RequestHeaders();
+		boolean complete = decoder.decode(block, 0, block.length, headers);
+		if (headerDependency == streamId) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, "Stream depends on itself");
+		}
+		synchronized (this) {
+			if (goAwayStreamId >= 0 && streamId > goAwayStreamId) {
+				throw new Http2Exception(Http2ErrorCode.REFUSED_STREAM, streamId, "Connection is going away");
+			}
+			if (remoteGoingAway || streams.size() >= settings.getMaxConcurrentStreams()) {
+				throw new Http2Exception(Http2ErrorCode.REFUSED_STREAM, streamId, "Too many concurrent streams");
+			}
+		}
+		HttpRequestImpl request = headers.request;
+		HttpResponseCode rejectCode = headers.validate(complete);
+		request.setSecure(secure);
+		request.setRemoteAddress(socket.getInetAddress());
+		request.setFormParser(formParser);
+		Http2Stream stream = createStream(streamId, request);
+		stream.setRejectCode(rejectCode);
+		if (headerEndStream) {
+			stream.endRequest();
+		}
+		dispatch(stream, headerDependency, headerWeight, headerExclusive);
+	}
+
+	/**
+	 * Creates a new stream
+	 * @param streamId The stream identifier
+	 * @param request The request received on the stream
+	 * @return The new stream
+	 */
+	private synchronized Http2Stream createStream(int streamId, HttpRequestImpl request) {
+		int window = settings.getInitialWindowSize();
+		if (!settingsAcknowledged) {
+			// The client might not have seen a smaller window yet
+			window = Math.max(window, Http2Settings.DEFAULT_WINDOW_SIZE);
+		}
+		return new Http2Stream(this, streamId, request, peerInitialWindowSize, window, requestLimits.getMaxRequestBodySize());
+	}
+
+	/**
+	 * Registers a new stream and passes it to the executor
+	 * @param stream The stream
+	 * @param dependency The stream it depends on or -1 for the default priority
+	 * @param weight The weight of the stream
+	 * @param exclusive Indicates if the dependency is exclusive
+	 * @throws java.io.IOException If the stream could not be refused
+	 */
+	private void dispatch(Http2Stream stream, int dependency, int weight, boolean exclusive) throws IOException {
+		synchronized (this) {
+			streams.put(stream.getId(), stream);
+			if (dependency < 0) {
+				scheduler.add(stream, 0, PriorityScheduler.DEFAULT_WEIGHT, false);
+			} else {
+				scheduler.add(stream, dependency, weight, exclusive);
+			}
+		}
+		try {
+			executor.execute(stream);
+		} catch (RejectedExecutionException ex) {
+			logger.fine("Overloaded, refusing stream " + stream.getId());
+			synchronized (this) {
+				streams.remove(stream.getId());
+				scheduler.remove(stream);
+			}
+			resetStream(stream, Http2ErrorCode.REFUSED_STREAM);
+		}
+	}
+
+	/**
+	 * Handles a PRIORITY frame
+	 * @param streamId The stream the frame belongs to
+	 * @param length The length of the frame's payload
+	 * @throws java.io.IOException If the frame is not acceptable
+	 */
+	private void readPriority(int streamId, int length) throws IOException {
+		if (streamId == 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "PRIORITY frame without a stream");
+		}
+		if (length != 5) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, streamId, "Invalid PRIORITY frame");
+		}
+		int dependency = readInt(frameBuffer, 0);
+		boolean exclusive = dependency < 0;
+		dependency &= 0x7fffffff;
+		if (dependency == streamId) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, "Stream depends on itself");
+		}
+		synchronized (this) {
+			scheduler.setPriority(streamId, dependency, (frameBuffer[4] & 0xff) + 1, exclusive);
+		}
+	}
+
+	/**
+	 * Handles a RST_STREAM frame
+	 * @param streamId The stream the frame belongs to
+	 * @param length The length of the frame's payload
+	 * @throws java.io.IOException If the frame is not acceptable
+	 */
+	private void readResetStream(int streamId, int length) throws IOException {
+		if (streamId == 0 || streamId > lastStreamId) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "RST_STREAM frame for idle stream");
+		}
+		if (length != 4) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid RST_STREAM frame");
+		}
+		long now = System.currentTimeMillis();
+		if (now - resetPeriodStart >= 1000) {
+			resetPeriodStart = now;
+			resetCount = 0;
+		}
+		if (++resetCount > MAX_RESETS_PER_SECOND) {
+			throw new Http2Exception(Http2ErrorCode.ENHANCE_YOUR_CALM, "Too many streams reset");
+		}
+		Http2Stream stream;
+		synchronized (this) {
+			stream = streams.get(streamId);
+			if (stream != null) {
+				stream.aborted = true;
+				notifyAll();
+			}
+		}
+		if (stream != null) {
+			Http2ErrorCode code = Http2ErrorCode.getByCode(readInt(frameBuffer, 0));
+			stream.abort("Stream reset by client" + ((code != null) ? " (" + code + ")" : ""));
+		}
+	}
+
+	/**
+	 * Handles a SETTINGS frame
+	 * @param streamId The stream the frame belongs to
+	 * @param flags The frame's flags
+	 * @param length The length of the frame's payload
+	 * @throws java.io.IOException If the frame is not acceptable
+	 */
+	private void readSettings(int streamId, int flags, int length) throws IOException {
+		if (streamId != 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "SETTINGS frame for a stream");
+		}
+		if ((flags & FLAG_ACK) != 0) {
+			if (length != 0) {
+				throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "SETTINGS acknowledgement with payload");
+			}
+			synchronized (this) {
+				settingsAcknowledged = true;
+			}
+			return;
+		}
+		if (length % 6 != 0) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid SETTINGS frame");
+		}
+		applySettings(frameBuffer, 0, length);
+		settingsReceived = true;
+		queueFrame(createFrame(SETTINGS, FLAG_ACK, 0, null, 0, 0));
+		flushFrames();
+	}
+
+	/**
+	 * Applies the settings sent by the client
+	 * @param b The buffer holding the settings
+	 * @param off The offset of the first setting
+	 * @param len The length of the settings, a multiple of 6
+	 * @throws java.io.IOException If one of the settings has an invalid value
+	 */
+	private synchronized void applySettings(byte[] b, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i += 6) {
+			int id = ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+			int value = readInt(b, i + 2);
+			switch (id) {
+				case SETTINGS_HEADER_TABLE_SIZE:
+					encoder.setMaxTableSize((value < 0) ? Integer.MAX_VALUE : value);
+					break;
+				case SETTINGS_ENABLE_PUSH:
+					if (value != 0 && value != 1) {
+						throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid ENABLE_PUSH setting");
+					}
+					break;
+				case SETTINGS_INITIAL_WINDOW_SIZE:
+					if (value < 0) {
+						throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, "Invalid INITIAL_WINDOW_SIZE setting");
+					}
+					int delta = value - peerInitialWindowSize;
+					for (Http2Stream stream : streams.values()) {
+						if ((long) stream.sendWindow + delta > Http2Settings.MAX_WINDOW_SIZE) {
+							throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, "Window too large");
+						}
+						stream.sendWindow += delta;
+					}
+					peerInitialWindowSize = value;
+					break;
+				case SETTINGS_MAX_FRAME_SIZE:
+					if (value < Http2Settings.MIN_FRAME_SIZE || value > Http2Settings.MAX_FRAME_SIZE) {
+						throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "Invalid MAX_FRAME_SIZE setting");
+					}
+					peerMaxFrameSize = value;
+					break;
+				default:
+					// We don't push and don't care how many headers the
+					// client accepts, unknown settings must be ignored
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Handles a PING frame
+	 * @param streamId The stream the frame belongs to
+	 * @param flags The frame's flags
+	 * @param length The length of the frame's payload
+	 * @throws java.io.IOException If the frame is not acceptable
+	 */
+	private void readPing(int streamId, int flags, int length) throws IOException {
+		if (streamId != 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "PING frame for a stream");
+		}
+		if (length != 8) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid PING frame");
+		}
+		if ((flags & FLAG_ACK) == 0) {
+			queueFrame(createFrame(PING, FLAG_ACK, 0, frameBuffer, 0, 8));
+			flushFrames();
+		}
+	}
+
+	/**
+	 * Handles a GOAWAY frame, the streams that are still active will be
+	 * completed but the connection will be closed afterwards
+	 * @param streamId The stream the frame belongs to
+	 * @param length The length of the frame's payload
+	 * @throws java.io.IOException If the frame is not acceptable
+	 */
+	private void readGoAway(int streamId, int length) throws IOException {
+		if (streamId != 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "GOAWAY frame for a stream");
+		}
+		if (length < 8) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid GOAWAY frame");
+		}
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Client is going away: " + Http2ErrorCode.getByCode(readInt(frameBuffer, 4)));
+		}
+		synchronized (this) {
+			remoteGoingAway = true;
+		}
+	}
+
+	/**
+	 * Handles a WINDOW_UPDATE frame
+	 * @param streamId The stream the frame belongs to
+	 * @param length The length of the frame's payload
+	 * @throws java.io.IOException If the frame is not acceptable
+	 */
+	private void readWindowUpdate(int streamId, int length) throws IOException {
+		if (length != 4) {
+			throw new Http2Exception(Http2ErrorCode.FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame");
+		}
+		int increment = readInt(frameBuffer, 0) & 0x7fffffff;
+		if (increment == 0) {
+			throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, "Window increment of 0");
+		}
+		synchronized (this) {
+			if (streamId == 0) {
+				if ((long) sendWindow + increment > Http2Settings.MAX_WINDOW_SIZE) {
+					throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, "Connection window too large");
+				}
+				sendWindow += increment;
+			} else {
+				Http2Stream stream = streams.get(streamId);
+				if (stream == null) {
+					if (streamId > lastStreamId) {
+						throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, "WINDOW_UPDATE frame for idle stream");
+					}
+					return;
+				}
+				if ((long) stream.sendWindow + increment > Http2Settings.MAX_WINDOW_SIZE) {
+					throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, streamId, "Stream window too large");
+				}
+				stream.sendWindow += increment;
+			}
+		}
+		flushFrames();
+	}
+
+	/**
+	 * Returns the active stream with the given identifier
+	 * @param streamId The stream identifier
+	 * @return The stream or null if it's not active
+	 */
+	private synchronized Http2Stream getStream(int streamId) {
+		return streams.get(streamId);
+	}
+
+	/**
+	 * Sends the response head of a stream
+	 * @param stream The stream
+	 * @param status The response code
+	 * @param headers The response headers
+	 * @param last Indicates that there is no content
+	 * @throws java.io.IOException If the stream was terminated or the
+	 * connection failed
+	 */
+	void sendHeaders(Http2Stream stream, int status, HttpHeaders headers, boolean last) throws IOException {
+		synchronized (this) {
+			checkOpen(stream);
+			encodeBuffer.reset();
+			encoder.startBlock(encodeBuffer);
+			encoder.encodeHeader(encodeBuffer, ":status", Integer.toString(status), false);
+			boolean hasServer = false;
+			boolean hasDate = false;
+			for (int i = 0; i < headers.size(); i++) {
+				String name = headers.getName(i).toLowerCase(Locale.ENGLISH);
+				if (isConnectionHeader(name)) {
+					continue;
+				}
+				hasServer |= name.equals("server");
+				hasDate |= name.equals("date");
+				encoder.encodeHeader(encodeBuffer, name, headers.getValue(i), isIndexable(name));
+			}
+			if (!hasServer) {
+				encoder.encodeHeader(encodeBuffer, "server", SERVER_NAME, true);
+			}
+			if (!hasDate) {
+				encoder.encodeHeader(encodeBuffer, "date", getDateValue(), true);
+			}
+			queueHeaderBlock(stream, last);
+		}
+		flushFrames();
+	}
+
+	/**
+	 * Sends a "100 Continue" informational response to tell the client
+	 * to go ahead and send the request body
+	 * @param stream The stream
+	 * @throws java.io.IOException If the stream was terminated or the
+	 * connection failed
+	 */
+	void sendContinue(Http2Stream stream) throws IOException {
+		synchronized (this) {
+			checkOpen(stream);
+			encodeBuffer.reset();
+			encoder.startBlock(encodeBuffer);
+			encoder.encodeHeader(encodeBuffer, ":status", "100", false);
+			queueHeaderBlock(stream, false);
+		}
+		flushFrames();
+	}
+
+	/**
+	 * Queues the header block in the encode buffer as a HEADERS frame
+	 * followed by as many CONTINUATION frames as necessary. They are
+	 * queued as a single entry so no other frames can get in between
+	 * @param stream The stream the block belongs to
+	 * @param last Indicates that the block ends the stream
+	 */
+	private void queueHeaderBlock(Http2Stream stream, boolean last) {
+		byte[] block = encodeBuffer.toByteArray();
+		int frames = Math.max(1, (block.length + peerMaxFrameSize - 1) / peerMaxFrameSize);
+		byte[] data = new byte[block.length + frames * FRAME_HEADER_SIZE];
+		int pos = 0;
+		int off = 0;
+		for (int i = 0; i < frames; i++) {
+			int len = Math.min(peerMaxFrameSize, block.length - off);
+			int type = (i == 0) ? HEADERS : CONTINUATION;
+			int flags = (i == frames - 1) ? FLAG_END_HEADERS : 0;
+			if (i == 0 && last) {
+				flags |= FLAG_END_STREAM;
+			}
+			writeFrameHeader(data, pos, len, type, flags, stream.getId());
+			System.arraycopy(block, off, data, pos + FRAME_HEADER_SIZE, len);
+			pos += FRAME_HEADER_SIZE + len;
+			off += len;
+		}
+		controlFrames.add(data);
+		if (last) {
+			stream.localClosed = true;
+		}
+	}
+
+	/**
+	 * Sends response content of a stream. The data is sent as soon as
+	 * the flow control windows allow it, this method waits until all of
+	 * it has been handed over to the connection so the buffer can be reused
+	 * @param stream The stream
+	 * @param b The buffer holding the data
+	 * @param off The offset of the data
+	 * @param len The number of bytes of data
+	 * @param last Indicates that this ends the response
+	 * @throws java.io.IOException If the stream was terminated, the
+	 * connection failed or if the client didn't open up its window in time
+	 */
+	void sendData(Http2Stream stream, byte[] b, int off, int len, boolean last) throws IOException {
+		synchronized (this) {
+			checkOpen(stream);
+			stream.pendingData = b;
+			stream.pendingOffset = off;
+			stream.pendingLength = len;
+			stream.pendingEnd = last;
+		}
+		flushFrames();
+		synchronized (this) {
+			try {
+				int remaining = stream.pendingLength;
+				long deadline = System.currentTimeMillis() + SEND_TIMEOUT;
+				while (!closed && !stream.aborted && (stream.pendingLength > 0 || stream.pendingEnd)) {
+					if (stream.pendingLength != remaining) {
+						remaining = stream.pendingLength;
+						deadline = System.currentTimeMillis() + SEND_TIMEOUT;
+					}
+					long wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						stream.aborted = true;
+						controlFrames.add(createResetStream(stream.getId(), Http2ErrorCode.CANCEL));
+						throw new SocketTimeoutException("Client didn't accept response data in time");
+					}
+					try {
+						wait(wait);
+					} catch (InterruptedException ex) {
+						throw new InterruptedIOException();
+					}
+				}
+				if (stream.pendingLength > 0 || stream.pendingEnd) {
+					// Not everything could be sent
+					checkOpen(stream);
+				}
+			} finally {
+				stream.pendingData = null;
+				stream.pendingLength = 0;
+				stream.pendingEnd = false;
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that frames can still be sent on the given stream
+	 * @param stream The stream
+	 * @throws java.io.IOException If the stream was terminated or the
+	 * connection was closed
+	 */
+	private void checkOpen(Http2Stream stream) throws IOException {
+		if (closed) {
+			throw new IOException("Connection closed");
+		}
+		if (stream.aborted) {
+			throw new IOException("Stream was reset");
+		}
+		if (stream.localClosed) {
+			throw new IOException("Stream already ended");
+		}
+	}
+
+	/**
+	 * Sends a WINDOW_UPDATE for a stream whose request body was read
+	 * @param stream The stream
+	 * @param increment The number of bytes the client may send extra
+	 */
+	void sendWindowUpdate(Http2Stream stream, int increment) {
+		synchronized (this) {
+			if (closed || stream.aborted) {
+				return;
+			}
+			controlFrames.add(createWindowUpdate(stream.getId(), increment));
+		}
+		try {
+			flushFrames();
+		} catch (IOException ex) {
+			// The connection's thread will notice as well
+		}
+	}
+
+	/**
+	 * Terminates a stream, letting the client know with a RST_STREAM frame
+	 * @param stream The stream
+	 * @param errorCode The reason the stream was terminated
+	 */
+	void resetStream(Http2Stream stream, Http2ErrorCode errorCode) {
+		synchronized (this) {
+			if (stream.aborted) {
+				return;
+			}
+			stream.aborted = true;
+			if (!closed) {
+				controlFrames.add(createResetStream(stream.getId(), errorCode));
+			}
+			notifyAll();
+		}
+		stream.abort("Stream was reset (" + errorCode + ")");
+		try {
+			flushFrames();
+		} catch (IOException ex) {
+			// The connection's thread will notice as well
+		}
+	}
+
+	/**
+	 * Terminates a stream because of a stream error, which might also
+	 * concern a stream that isn't active (anymore)
+	 * @param streamId The stream identifier
+	 * @param errorCode The reason the stream was terminated
+	 * @throws java.io.IOException If the RST_STREAM frame could not be sent
+	 */
+	private void resetStream(int streamId, Http2ErrorCode errorCode) throws IOException {
+		Http2Stream stream = getStream(streamId);
+		if (stream != null) {
+			resetStream(stream, errorCode);
+		} else {
+			queueFrame(createResetStream(streamId, errorCode));
+			flushFrames();
+		}
+	}
+
+	/**
+	 * Is called by a stream when it's done. If the client is still sending
+	 * the request body it is told to stop, the response doesn't depend on
+	 * it anymore
+	 * @param stream The stream
+	 * @param requestTime The time the request was received
+	 * @param status The response code that was sent
+	 * @param bytes The number of content bytes that were sent
+	 */
+	void streamFinished(Http2Stream stream, long requestTime, int status, long bytes) {
+		if (accessLog != null) {
+			accessLog.log(requestTime, socket.getInetAddress(), stream.getRequest(), status, bytes);
+		}
+		synchronized (this) {
+			streams.remove(stream.getId());
+			scheduler.remove(stream);
+			lastActivity = System.currentTimeMillis();
+			if (!stream.aborted && !closed) {
+				if (!stream.localClosed) {
+					controlFrames.add(createResetStream(stream.getId(), Http2ErrorCode.INTERNAL_ERROR));
+				} else if (!stream.isRemoteClosed()) {
+					controlFrames.add(createResetStream(stream.getId(), Http2ErrorCode.NO_ERROR));
+				}
+			}
+			stream.aborted = true;
+		}
+		stream.abort("Stream ended");
+		try {
+			flushFrames();
+		} catch (IOException ex) {
+			// The connection's thread will notice as well
+		}
+	}
+
+	/**
+	 * Queues a control frame
+	 * @param frame The complete frame
+	 * @throws java.io.IOException If the client is causing too many
+	 * frames without reading them
+	 */
+	private synchronized void queueFrame(byte[] frame) throws IOException {
+		if (controlFrames.size() >= MAX_QUEUED_CONTROL_FRAMES) {
+			throw new Http2Exception(Http2ErrorCode.ENHANCE_YOUR_CALM, "Too many frames waiting to be sent");
+		}
+		controlFrames.add(frame);
+	}
+
+	/**
+	 * Writes all frames that are ready to be sent, unless another thread
+	 * is already busy doing so in which case that thread will pick them
+	 * up. Frames are combined into as few writes as possible
+	 * @throws java.io.IOException If writing failed, the connection
+	 * will be closed
+	 */
+	private void flushFrames() throws IOException {
+		synchronized (this) {
+			if (writing || closed) {
+				return;
+			}
+			writing = true;
+		}
+		boolean done = false;
+		try {
+			for (;;) {
+				int count;
+				synchronized (this) {
+					count = fillWriteBuffer();
+					if (count == 0) {
+						writing = false;
+						notifyAll();
+						done = true;
+						return;
+					}
+				}
+				out.write(writeBuffer, 0, count);
+				out.flush();
+			}
+		} finally {
+			if (!done) {
+				synchronized (this) {
+					writing = false;
+				}
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Fills the write buffer with the frames that are ready to be sent,
+	 * control frames first and then DATA frames as chosen by the
+	 * priority scheduler. Streams that have all their data taken are
+	 * woken up
+	 * @return The number of bytes in the write buffer
+	 */
+	private int fillWriteBuffer() {
+		int count = 0;
+		while (!controlFrames.isEmpty()) {
+			byte[] frame = controlFrames.getFirst();
+			if (frame.length > writeBuffer.length - count) {
+				if (count > 0) {
+					return count;
+				}
+				// Only very large header blocks can get here
+				writeBuffer = new byte[frame.length];
+			}
+			controlFrames.removeFirst();
+			System.arraycopy(frame, 0, writeBuffer, count, frame.length);
+			count += frame.length;
+		}
+		boolean consumed = false;
+		Http2Stream stream;
+		while ((stream = scheduler.next(sendWindow > 0)) != null) {
+			int room = writeBuffer.length - count - FRAME_HEADER_SIZE;
+			int len = 0;
+			if (stream.pendingLength > 0) {
+				len = Math.min(stream.pendingLength, Math.min(stream.sendWindow, sendWindow));
+				len = Math.min(len, Math.min(peerMaxFrameSize, MAX_DATA_FRAME_SIZE));
+				if (len > room) {
+					if (room < MIN_SPLIT_SIZE) {
+						break;
+					}
+					len = room;
+				}
+			} else if (room < 0) {
+				break;
+			}
+			boolean last = stream.pendingEnd && len == stream.pendingLength;
+			writeFrameHeader(writeBuffer, count, len, DATA, last ? FLAG_END_STREAM : 0, stream.getId());
+			System.arraycopy(stream.pendingData, stream.pendingOffset, writeBuffer, count + FRAME_HEADER_SIZE, len);
+			count += FRAME_HEADER_SIZE + len;
+			stream.pendingOffset += len;
+			stream.pendingLength -= len;
+			stream.sendWindow -= len;
+			sendWindow -= len;
+			if (last) {
+				stream.pendingEnd = false;
+				stream.localClosed = true;
+			}
+			if (stream.pendingLength == 0 && !stream.pendingEnd) {
+				consumed = true;
+			}
+			scheduler.sent(stream, len);
+		}
+		if (consumed) {
+			notifyAll();
+		}
+		return count;
+	}
+
+	/**
+	 * Sends a GOAWAY frame, giving it a moment to actually get written
+	 * @param errorCode The reason the connection is being closed
+	 * @param message A message for debugging purposes
+	 */
+	private void goAway(Http2ErrorCode errorCode, String message) {
+		try {
+			synchronized (this) {
+				controlFrames.add(createGoAwayFrame(lastStreamId, errorCode, message));
+			}
+			flushFrames();
+			synchronized (this) {
+				long deadline = System.currentTimeMillis() + CHECK_INTERVAL;
+				while (writing && !closed && !controlFrames.isEmpty()) {
+					long wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						break;
+					}
+					wait(wait);
+				}
+			}
+		} catch (IOException ex) {
+			logger.fine("Could not send GOAWAY: " + ex.getMessage());
+		} catch (InterruptedException ex) {
+			// Just close the connection
+		}
+	}
+
+	/**
+	 * Creates a GOAWAY frame
+	 * @param lastId The last stream that will be handled
+	 * @param errorCode The reason the connection is being closed
+	 * @param message A message for debugging purposes
+	 * @return The frame
+	 */
+	private static byte[] createGoAwayFrame(int lastId, Http2ErrorCode errorCode, String message) {
+		byte[] debug = asciiBytes((message != null) ? message : "");
+		byte[] payload = new byte[8 + debug.length];
+		writeInt(payload, 0, lastId);
+		writeInt(payload, 4, errorCode.getCode());
+		System.arraycopy(debug, 0, payload, 8, debug.length);
+		return createFrame(GOAWAY, 0, 0, payload, 0, payload.length);
+	}
+
+	/**
+	 * Closes the connection, all streams that are still active are
+	 * terminated
+	 */
+	public void close() {
+		List<Http2Stream> active;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			active = new ArrayList<Http2Stream>(streams.values());
+			for (Http2Stream stream : active) {
+				stream.aborted = true;
+			}
+			controlFrames.clear();
+			notifyAll();
+		}
+		for (Http2Stream stream : active) {
+			stream.abort("Connection closed");
+		}
+		try {
+			socket.close();
+		} catch (IOException ex) {
+			// Ignore
+		}
+	}
+
+	/**
+	 * Returns the value for the Date header, it is only formatted once
+	 * per second
+	 * @return The current date in the format defined by the HTTP specification
+	 */
+	private String getDateValue() {
+		long second = System.currentTimeMillis() / 1000;
+		if (dateValue == null || second != dateSecond) {
+			dateValue = HttpResponseImpl.formatDate(second * 1000);
+			dateSecond = second;
+		}
+		return dateValue;
+	}
+
+	/**
+	 * Determines if the given header is specific to an HTTP/1 connection,
+	 * those are not allowed in HTTP/2
+	 * @param name The name of the header, in lower case
+	 * @return <code>true</code> for connection-specific headers
+	 */
+	private static boolean isConnectionHeader(String name) {
+		return name.equals("connection") || name.equals("keep-alive")
+				|| name.equals("proxy-connection") || name.equals("transfer-encoding")
+				|| name.equals("upgrade");
+	}
+
+	/**
+	 * Determines if a response header is worth adding to the header
+	 * compression table, which is not the case for headers whose value
+	 * is different for (nearly) every response
+	 * @param name The name of the header, in lower case
+	 * @return <code>true</code> if the header should be indexed
+	 */
+	private static boolean isIndexable(String name) {
+		return !(name.equals("content-length") || name.equals("content-range")
+				|| name.equals("etag") || name.equals("last-modified")
+				|| name.equals("set-cookie") || name.equals("location")
+				|| name.equals("age"));
+	}
+
+	/**
+	 * Creates a complete frame
+	 * @param type The frame type
+	 * @param flags The frame flags
+	 * @param streamId The stream the frame belongs to
+	 * @param payload The buffer holding the payload or null
+	 * @param off The offset of the payload
+	 * @param len The length of the payload
+	 * @return The bytes of the frame
+	 */
+	private static byte[] createFrame(int type, int flags, int streamId, byte[] payload, int off, int len) {
+		byte[] frame = new byte[FRAME_HEADER_SIZE + len];
+		writeFrameHeader(frame, 0, len, type, flags, streamId);
+		if (len > 0) {
+			System.arraycopy(payload, off, frame, FRAME_HEADER_SIZE, len);
+		}
+		return frame;
+	}
+
+	/**
+	 * Creates a WINDOW_UPDATE frame
+	 * @param streamId The stream or 0 for the connection
+	 * @param increment The window size increment
+	 * @return The bytes of the frame
+	 */
+	private static byte[] createWindowUpdate(int streamId, int increment) {
+		byte[] frame = new byte[FRAME_HEADER_SIZE + 4];
+		writeFrameHeader(frame, 0, 4, WINDOW_UPDATE, 0, streamId);
+		writeInt(frame, FRAME_HEADER_SIZE, increment);
+		return frame;
+	}
+
+	/**
+	 * Creates a RST_STREAM frame
+	 * @param streamId The stream to reset
+	 * @param errorCode The reason the stream is being reset
+	 * @return The bytes of the frame
+	 */
+	private static byte[] createResetStream(int streamId, Http2ErrorCode errorCode) {
+		byte[] frame = new byte[FRAME_HEADER_SIZE + 4];
+		writeFrameHeader(frame, 0, 4, RST_STREAM, 0, streamId);
+		writeInt(frame, FRAME_HEADER_SIZE, errorCode.getCode());
+		return frame;
+	}
+
+	/**
+	 * Writes a frame header
+	 * @param b The buffer to write to
+	 * @param off The offset to write at
+	 * @param length The length of the frame's payload
+	 * @param type The frame type
+	 * @param flags The frame flags
+	 * @param streamId The stream the frame belongs to
+	 */
+	private static void writeFrameHeader(byte[] b, int off, int length, int type, int flags, int streamId) {
+		b[off] = (byte) (length >>> 16);
+		b[off + 1] = (byte) (length >>> 8);
+		b[off + 2] = (byte) length;
+		b[off + 3] = (byte) type;
+		b[off + 4] = (byte) flags;
+		writeInt(b, off + 5, streamId);
+	}
+
+	/**
+	 * Writes a single setting
+	 * @param out The buffer to write to
+	 * @param id The setting identifier
+	 * @param value The setting's value
+	 */
+	private static void writeSetting(ByteArrayOutputStream out, int id, int value) {
+		out.write(id >>> 8);
+		out.write(id);
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	/**
+	 * Reads a 32 bit big-endian integer
+	 * @param b The buffer to read from
+	 * @param off The offset of the integer
+	 * @return The integer
+	 */
+	private static int readInt(byte[] b, int off) {
+		return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+	}
+
+	/**
+	 * Writes a 32 bit big-endian integer
+	 * @param b The buffer to write to
+	 * @param off The offset to write at
+	 * @param value The integer
+	 */
+	private static void writeInt(byte[] b, int off, int value) {
+		b[off] = (byte) (value >>> 24);
+		b[off + 1] = (byte) (value >>> 16);
+		b[off + 2] = (byte) (value >>> 8);
+		b[off + 3] = (byte) value;
+	}
+
+	/**
+	 * Decodes the unpadded base64url encoding used by the HTTP2-Settings header
+	 * @param text The text to decode
+	 * @return The decoded bytes or null if the text is not valid
+	 */
+	private static byte[] decodeBase64Url(String text) {
+		text = text.trim();
+		int len = text.length();
+		while (len > 0 && text.charAt(len - 1) == '=') {
+			len--;
+		}
+		if (len % 4 == 1) {
+			return null;
+		}
+		byte[] result = new byte[len * 3 / 4];
+		int bits = 0;
+		int count = 0;
+		int pos = 0;
+		for (int i = 0; i < len; i++) {
+			char c = text.charAt(i);
+			int value;
+			if (c >= 'A' && c <= 'Z') {
+				value = c - 'A';
+			} else if (c >= 'a' && c <= 'z') {
+				value = c - 'a' + 26;
+			} else if (c >= '0' && c <= '9') {
+				value = c - '0' + 52;
+			} else if (c == '-' || c == '+') {
+				value = 62;
+			} else if (c == '_' || c == '/') {
+				value = 63;
+			} else {
+				return null;
+			}
+			bits = (bits << 6) | value;
+			count += 6;
+			if (count >= 8) {
+				count -= 8;
+				result[pos++] = (byte) (bits >>> count);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the given text as bytes, every character is assumed to
+	 * fit in a single byte
+	 * @param text The text to convert
+	 * @return The bytes of the text
+	 */
+	private static byte[] asciiBytes(String text) {
+		byte[] b = new byte[text.length()];
+		for (int i = 0; i < b.length; i++) {
+			char c = text.charAt(i);
+			b[i] = (byte) ((c < 256) ? c : '?');
+		}
+		return b;
+	}
+
+	/**
+	 * Collects the headers of a new request while they're being decoded,
+	 * turning the pseudo-headers into the request line information
+	 */
+	private class RequestHeaders implements HpackDecoder.HeaderListener {
+
+		/**
+		 * The request being built
+		 */
+		final HttpRequestImpl request;
+		/**
+		 * The values of the pseudo-headers
+		 */
+		private String method;
+		private String scheme;
+		private String authority;
+		private String path;
+		/**
+		 * The cookies, which are sent as separate headers in HTTP/2
+		 * but must be combined again for HTTP/1 style processing
+		 */
+		private StringBuilder cookies;
+		/**
+		 * Indicates that a regular header was found, pseudo-headers
+		 * are not allowed anymore after that
+		 */
+		private boolean regularSeen;
+		/**
+		 * The number of regular headers found
+		 */
+		private int count;
+		/**
+		 * The reason the request is malformed or null
+		 */
+		private String malformed;
+		/**
+		 * Indicates that one of the header limits was exceeded
+		 */
+		private boolean tooLarge;
+
+		/**
+		 * Creates a new, empty, instance
+		 */
+		RequestHeaders() {
+			request = new HttpRequestImpl();
+		}
+
+		public void addHeader(String name, String value) {
+			if (malformed != null) {
+				return;
+			}
+			if (name.startsWith(":")) {
+				if (regularSeen) {
+					malformed = "Pseudo-header after regular header";
+				} else if (name.equals(":method") && method == null) {
+					method = value;
+				} else if (name.equals(":scheme") && scheme == null) {
+					scheme = value;
+				} else if (name.equals(":authority") && authority == null) {
+					authority = value;
+				} else if (name.equals(":path") && path == null) {
+					path = value;
+				} else {
+					malformed = "Invalid or repeated pseudo-header " + name;
+				}
+				return;
+			}
+			regularSeen = true;
+			for (int i = 0; i < name.length(); i++) {
+				char c = name.charAt(i);
+				if (c >= 'A' && c <= 'Z') {
+					malformed = "Upper case header name " + name;
+					return;
+				}
+			}
+			if (isConnectionHeader(name)) {
+				malformed = "Connection-specific header " + name;
+				return;
+			}
+			if (name.equals("te") && !value.equals("trailers")) {
+				malformed = "Invalid TE header";
+				return;
+			}
+			int maxCount = requestLimits.getMaxHeaderCount();
+			int maxSize = requestLimits.getMaxHeaderSize();
+			if ((maxCount > 0 && ++count > maxCount) || (maxSize > 0 && name.length() + value.length() + 2 > maxSize)) {
+				tooLarge = true;
+				return;
+			}
+			if (name.equals("cookie")) {
+				if (cookies == null) {
+					cookies = new StringBuilder(value);
+				} else {
+					cookies.append("; ").append(value);
+				}
+			} else {
+				request.addHeader(name, value);
+			}
+		}
+
+		/**
+		 * Fills in the request line information and checks if the request
+		 * is acceptable
+		 * @param complete Indicates if all headers were passed on by the decoder
+		 * @return The response code to send instead of handling the
+		 * request or null if the request is acceptable
+		 * @throws org.codejive.websrv.protocol.http2.Http2Exception If the
+		 * request is malformed
+		 */
+		HttpResponseCode validate(boolean complete) throws Http2Exception {
+			int streamId = lastStreamId;
+			if (malformed == null && method == null) {
+				malformed = "Missing :method";
+			}
+			boolean connect = "CONNECT".equals(method);
+			if (malformed == null && !connect && (scheme == null || path == null || path.length() == 0)) {
+				malformed = "Missing :scheme or :path";
+			}
+			if (malformed != null) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, "Malformed request: " + malformed);
+			}
+			if (cookies != null) {
+				request.addHeader("cookie", cookies.toString());
+			}
+			if (authority != null && request.getHeader("host") == null) {
+				request.setHeader("host", authority);
+			}
+			request.setRequestMethod(method);
+			request.setRequestProtocol("HTTP/2.0");
+			if (connect) {
+				return HttpResponseCode.CODE_NOT_IMPLEMENTED;
+			}
+			try {
+				request.parseUrl(path);
+			} catch (URISyntaxException ex) {
+				return HttpResponseCode.CODE_BAD_REQUEST;
+			}
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("REQUEST: " + method + " " + path + " HTTP/2.0 (stream " + streamId + ")");
+			}
+			int maxLength = requestLimits.getMaxRequestLineLength();
+			if (maxLength > 0 && path.length() > maxLength) {
+				return HttpResponseCode.CODE_REQUEST_URI_TOO_LARGE;
+			}
+			if (tooLarge || !complete) {
+				return HttpResponseCode.CODE_REQUEST_HEADER_FIELDS_TOO_LARGE;
+			}
+			String length = request.getHeader("content-length");
+			if (length != null) {
+				long size;
+				try {
+					size = Long.parseLong(length.trim());
+				} catch (NumberFormatException ex) {
+					size = -1;
+				}
+				if (size < 0) {
+					throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, streamId, "Malformed Content-Length");
+				}
+				long maxSize = requestLimits.getMaxRequestBodySize();
+				if (maxSize > 0 && size > maxSize) {
+					return HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE;
+				}
+			}
+			return null;
+		}
+	}
+}
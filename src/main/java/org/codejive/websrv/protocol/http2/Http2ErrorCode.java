@@ -0,0 +1,74 @@
+/*
+ * Http2ErrorCode.java
+ *
+ * Created on Oct 19, 2026, 4:24:31 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2;
+
+/**
+ * The error codes used in RST_STREAM and GOAWAY frames to indicate
+ * why a stream or connection is being terminated (RFC 7540, section 7)
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public enum Http2ErrorCode {
+	NO_ERROR(0x0),
+	PROTOCOL_ERROR(0x1),
+	INTERNAL_ERROR(0x2),
+	FLOW_CONTROL_ERROR(0x3),
+	SETTINGS_TIMEOUT(0x4),
+	STREAM_CLOSED(0x5),
+	FRAME_SIZE_ERROR(0x6),
+	REFUSED_STREAM(0x7),
+	CANCEL(0x8),
+	COMPRESSION_ERROR(0x9),
+	CONNECT_ERROR(0xa),
+	ENHANCE_YOUR_CALM(0xb),
+	INADEQUATE_SECURITY(0xc),
+	HTTP_1_1_REQUIRED(0xd);
+
+	private final int code;
+	
+	private Http2ErrorCode(int code) {
+		this.code = code;
+	}
+
+	/**
+	 * Returns the numeric value of the error code as it's sent on the wire
+	 * @return The numeric error code
+	 */
+	public int getCode() {
+		return code;
+	}
+	
+	/**
+	 * Returns the <code>Http2ErrorCode</code> object with the specified
+	 * numeric code or <code>null</code> if the code is unknown
+	 * @param errorCode A numeric error code
+	 * @return the associated <code>Http2ErrorCode</code> object or <code>null</code>
+	 */
+	public static Http2ErrorCode getByCode(int errorCode) {
+		for (Http2ErrorCode code : values()) {
+			if (code.getCode() == errorCode) {
+				return code;
+			}
+		}
+		return null;
+	}
+}
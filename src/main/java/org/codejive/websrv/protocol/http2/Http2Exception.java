@@ -0,0 +1,90 @@
+/*
+ * Http2Exception.java
+ *
+ * Created on Oct 19, 2026, 4:25:58 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2;
+
+import java.io.IOException;
+
+/**
+ * This exception will be thrown when a client violates the HTTP/2
+ * protocol. Depending on the stream it belongs to it is either a stream
+ * error, which only terminates that one stream, or a connection error
+ * (stream 0), which terminates the connection as a whole
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class Http2Exception extends IOException {
+
+	/**
+	 * The error code that will be sent to the client
+	 */
+	private final Http2ErrorCode errorCode;
+
+	/**
+	 * The stream the error applies to or 0 for the connection
+	 */
+	private final int streamId;
+
+	/**
+	 * Creates a new connection error
+	 * @param errorCode The error code to send to the client
+	 * @param message The exception message
+	 */
+	public Http2Exception(Http2ErrorCode errorCode, String message) {
+		this(errorCode, 0, message);
+	}
+
+	/**
+	 * Creates a new stream error, or a connection error if the stream is 0
+	 * @param errorCode The error code to send to the client
+	 * @param streamId The stream the error applies to
+	 * @param message The exception message
+	 */
+	public Http2Exception(Http2ErrorCode errorCode, int streamId, String message) {
+		super(message);
+		this.errorCode = errorCode;
+		this.streamId = streamId;
+	}
+
+	/**
+	 * Returns the error code that will be sent to the client
+	 * @return The error code
+	 */
+	public Http2ErrorCode getErrorCode() {
+		return errorCode;
+	}
+
+	/**
+	 * Returns the stream the error applies to
+	 * @return The stream identifier or 0 for a connection error
+	 */
+	public int getStreamId() {
+		return streamId;
+	}
+
+	/**
+	 * Indicates if this error terminates the entire connection
+	 * @return <code>true</code> for a connection error
+	 */
+	public boolean isConnectionError() {
+		return streamId == 0;
+	}
+}
@@ -0,0 +1,481 @@
+/*
+ * Http2Response.java
+ *
+ * Created on Oct 19, 2026, 4:36:20 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.protocol.http.ConnectionUpgrade;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.PrematureEOFException;
+import org.codejive.websrv.util.BufferPool;
+
+/**
+ * The response to a request received on an HTTP/2 stream. It behaves
+ * just like the HTTP/1 version except that the response head is sent
+ * as a HEADERS frame and the content as DATA frames, so there is no need
+ * for chunked transfers: the end of the content is marked by the last
+ * frame of the stream
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class Http2Response implements HttpResponse {
+
+	/**
+	 * The stream this is the response for
+	 */
+	private final Http2Stream stream;
+	/**
+	 * The stream wrapper that users of this object can use to write data to
+	 */
+	private ResponseOutputStream output;
+	/**
+	 * The print writer (wrapper) that users of this object can use to write data to
+	 */
+	private PrintWriter writer;
+	/**
+	 * The response code that will be sent to the client
+	 */
+	private HttpResponseCode responseCode;
+	/**
+	 * All the available response headers
+	 */
+	private final HttpHeaders headers;
+	/**
+	 * The size in bytes of the internal buffer
+	 */
+	private int bufferSize;
+
+	/**
+	 * The default size in bytes of the internal buffer
+	 */
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	/**
+	 * The content type used when none was set explicitly
+	 */
+	private static final String DEFAULT_CONTENT_TYPE = "text/plain; charset=UTF-8";
+
+	/**
+	 * The pool that buffers of the default size are taken from
+	 */
+	private static final BufferPool bufferPool = new BufferPool(DEFAULT_BUFFER_SIZE, 1024);
+
+	/**
+	 * Class private logger
+	 */
+	private static final Logger logger = Logger.getLogger(Http2Response.class.getName());
+
+	/**
+	 * Creates a new response for the given stream
+	 * @param stream The stream to send the response on
+	 */
+	Http2Response(Http2Stream stream) {
+		this.stream = stream;
+		responseCode = HttpResponseCode.CODE_OK;
+		bufferSize = DEFAULT_BUFFER_SIZE;
+		headers = new HttpHeaders();
+		setHeader("Content-Type", DEFAULT_CONTENT_TYPE);
+	}
+
+	public HttpResponseCode getResponseCode() {
+		return responseCode;
+	}
+
+	public void setResponseCode(HttpResponseCode responseCode) {
+		checkCommitted("Can't change response code");
+		this.responseCode = responseCode;
+	}
+
+	public String getContentType() {
+		return getContentTypePart(false);
+	}
+
+	public synchronized void setContentType(String contentType) {
+		checkCommitted("Can't change content type");
+		updateContentType(contentType, getCharacterEncoding());
+	}
+
+	public String getCharacterEncoding() {
+		return getContentTypePart(true);
+	}
+
+	public synchronized void setCharacterEncoding(String characterEncoding) {
+		checkCommitted("Can't change character encoding");
+		updateContentType(getContentType(), characterEncoding);
+	}
+
+	public String getHeader(String key) {
+		return headers.get(key);
+	}
+
+	public void setHeader(String key, String value) {
+		headers.set(key, value);
+	}
+
+	public void addHeader(String key, String value) {
+		headers.add(key, value);
+	}
+
+	public void removeHeader(String key) {
+		headers.remove(key);
+	}
+
+	public Set<String> getHeaderNames() {
+		return headers.getNames();
+	}
+
+	/**
+	 * Returns the response headers, they are sent in this order
+	 * @return The response headers
+	 */
+	HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public synchronized void setBufferSize(int bufferSize) {
+		if (output != null) {
+			throw new IllegalStateException("Output buffer already exists");
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	public synchronized OutputStream getOutputStream() {
+		initOutput();
+		return output;
+	}
+
+	public synchronized PrintWriter getWriter() {
+		initOutput();
+		if (writer == null) {
+			try {
+				writer = new PrintWriter(new OutputStreamWriter(output, getCharacterEncoding()));
+			} catch (UnsupportedEncodingException ex) {
+				writer = new PrintWriter(new OutputStreamWriter(output));
+			}
+		}
+		return writer;
+	}
+
+	public synchronized boolean isCommitted() {
+		return (output != null) && output.headersSent;
+	}
+
+	/**
+	 * Returns the number of content bytes that have been passed on to
+	 * the client so far
+	 * @return The number of content bytes written
+	 */
+	synchronized long getBytesWritten() {
+		return (output != null) ? output.countWritten : 0;
+	}
+
+	public synchronized void reset() {
+		if (output != null) {
+			output.reset();
+		}
+	}
+
+	/**
+	 * Sends whatever is left of the response and ends the stream. When
+	 * nothing was written at all only the response head is sent
+	 * @throws java.io.IOException If the response could not be sent
+	 */
+	synchronized void finish() throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+		initOutput();
+		try {
+			output.close();
+		} finally {
+			output.release();
+		}
+	}
+
+	/**
+	 * Initialize the underlying output stream, the writer is only created
+	 * when it's actually asked for
+	 */
+	private synchronized void initOutput() {
+		if (output == null) {
+			output = new ResponseOutputStream(bufferSize);
+		}
+	}
+
+	/**
+	 * Check if data has already been written to the client, if not just
+	 * return without doing anything but throw an exception otherwise
+	 * @param message The message to use for the exception if necessary
+	 */
+	private void checkCommitted(String message) {
+		if (isCommitted()) {
+			throw new IllegalStateException(message + ": output has already been written");
+		}
+	}
+
+	/**
+	 * Returns the mime type or the character encoding from the
+	 * "Content-Type" header
+	 * @param encoding <code>true</code> to return the character encoding
+	 * @return The requested part of the header or an empty string
+	 */
+	private String getContentTypePart(boolean encoding) {
+		String typeAndEncodingText = getHeader("Content-Type");
+		if (typeAndEncodingText == null || typeAndEncodingText.length() == 0) {
+			return "";
+		}
+		int semi = typeAndEncodingText.indexOf(';');
+		if (!encoding) {
+			return ((semi < 0) ? typeAndEncodingText : typeAndEncodingText.substring(0, semi)).trim();
+		}
+		if (semi >= 0) {
+			String charset = typeAndEncodingText.substring(semi + 1);
+			int eq = charset.indexOf('=');
+			if (eq > 0 && charset.substring(0, eq).trim().equalsIgnoreCase("charset")) {
+				return charset.substring(eq + 1).trim();
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Update the value of the response header "Content-Type"
+	 * @param contentType The mime type
+	 * @param characterEncoding The character encoding or an empty string
+	 */
+	private void updateContentType(String contentType, String characterEncoding) {
+		String typeAndEncoding = contentType;
+		if (characterEncoding.length() > 0) {
+			typeAndEncoding += "; charset=" + characterEncoding;
+		}
+		setHeader("Content-Type", typeAndEncoding);
+	}
+
+	public void sendError(HttpResponseCode resultCode, String message) throws IOException {
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("SENDING ERROR #" + resultCode + " : " + message);
+		}
+		try {
+			reset();
+			setResponseCode(resultCode);
+			setContentType("text/plain");
+			setCharacterEncoding("UTF-8");
+		} catch (IllegalStateException ex) {
+			// If we can't empty the buffer we'll just append it
+		}
+
+		message = resultCode.getCode() + " " + resultCode.getMessage() + "\n\n" + message;
+
+		int len;
+		try {
+			len = message.getBytes(getCharacterEncoding()).length;
+		} catch (UnsupportedEncodingException ex) {
+			len = -1;
+		}
+		if (len >= 0 && !isCommitted()) {
+			setHeader("Content-Length", String.valueOf(len));
+		}
+
+		PrintWriter out = getWriter();
+		out.print(message);
+		out.flush();
+
+		// Ugly way to interrupt to normal program flow but it works
+		throw new PrematureEOFException();
+	}
+
+	public void sendRedirect(String url) throws IOException {
+		HttpResponseCode resultCode = HttpResponseCode.CODE_TEMPORARY_REDIRECT;
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("SENDING REDIRECT #" + resultCode + " : " + url);
+		}
+		try {
+			reset();
+			setResponseCode(resultCode);
+			setCharacterEncoding("UTF-8");
+		} catch (IllegalStateException ex) {
+			// If we can't empty the buffer we'll just append it
+		}
+
+		setHeader("Location", url);
+
+		PrintWriter out = getWriter();
+		out.print("\r\n");
+		out.flush();
+
+		// Ugly way to interrupt to normal program flow but it works
+		throw new PrematureEOFException();
+	}
+
+	public ConnectionUpgrade getUpgrade() {
+		return null;
+	}
+
+	public void setUpgrade(ConnectionUpgrade upgrade) {
+		throw new IllegalStateException("HTTP/2 connections can't switch protocols");
+	}
+
+	/**
+	 * Buffers the content of the response. The first time the buffer gets
+	 * flushed the response head is sent, after that each flush results
+	 * in one or more DATA frames. Closing the stream ends the response
+	 */
+	private class ResponseOutputStream extends OutputStream {
+
+		/**
+		 * Our internal buffer
+		 */
+		private byte[] buf;
+		/**
+		 * The number of bytes of data currently in the buffer
+		 */
+		private int count;
+		/**
+		 * The number of bytes of data actually passed on to the client
+		 */
+		private long countWritten;
+		/**
+		 * Indicates that the response head has been sent
+		 */
+		private boolean headersSent;
+		/**
+		 * Indicates that the end of the stream has been sent
+		 */
+		private boolean finished;
+
+		/**
+		 * Creates a new instance using the given buffer size
+		 * @param size The size in bytes of our internal buffer
+		 */
+		public ResponseOutputStream(int size) {
+			if (size <= 0) {
+				throw new IllegalArgumentException("Buffer size <= 0");
+			}
+			buf = (size == bufferPool.getBufferSize()) ? bufferPool.acquire() : new byte[size];
+		}
+
+		/**
+		 * Passes the contents of the buffer on to the client, sending
+		 * the response head first if that wasn't done yet
+		 * @param last <code>true</code> if this ends the response
+		 * @throws java.io.IOException If the data could not be sent
+		 */
+		private void flushBuffer(boolean last) throws IOException {
+			if (!headersSent) {
+				headersSent = true;
+				stream.sendHeaders(responseCode, headers, last && count == 0);
+				if (last && count == 0) {
+					return;
+				}
+			}
+			if (count > 0 || last) {
+				stream.sendData(buf, 0, count, last);
+				countWritten += count;
+				count = 0;
+			}
+		}
+
+		/**
+		 * Makes sure the response hasn't been ended yet
+		 * @throws java.io.IOException If the response was ended
+		 */
+		private void ensureOpen() throws IOException {
+			if (finished) {
+				throw new IOException("Response already complete");
+			}
+		}
+
+		@Override
+		public synchronized void write(int b) throws IOException {
+			ensureOpen();
+			if (count >= buf.length) {
+				flushBuffer(false);
+			}
+			buf[count++] = (byte) b;
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException {
+			ensureOpen();
+			if (len > buf.length - count) {
+				flushBuffer(false);
+				if (len >= buf.length) {
+					// No need to copy large writes through our buffer
+					stream.sendData(b, off, len, false);
+					countWritten += len;
+					return;
+				}
+			}
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		}
+
+		@Override
+		public synchronized void flush() throws IOException {
+			if (!finished) {
+				flushBuffer(false);
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (!finished) {
+				finished = true;
+				flushBuffer(true);
+			}
+		}
+
+		/**
+		 * Empties the buffer. This only works if nothing was sent yet
+		 */
+		public synchronized void reset() {
+			if (headersSent) {
+				throw new IllegalStateException("Output has already been written");
+			}
+			count = 0;
+		}
+
+		/**
+		 * Gives the buffer back to the pool, the stream can't be used
+		 * anymore afterwards
+		 */
+		public synchronized void release() {
+			if (buf != null) {
+				bufferPool.release(buf);
+				buf = null;
+				count = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Http2Settings.java
+ *
+ * Created on Oct 19, 2026, 4:28:14 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2;
+
+/**
+ * Holds the settings that the server announces to HTTP/2 clients at the
+ * start of each connection. They determine how much memory a single
+ * connection can take up on the server: the number of streams a client
+ * can open at the same time, the amount of request body data it can send
+ * ahead for each of them and the size of the header compression table
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class Http2Settings {
+
+	/**
+	 * The maximum size of the header compression table the client is
+	 * allowed to use (default = 4096)
+	 */
+	private int headerTableSize;
+
+	/**
+	 * The maximum number of streams the client is allowed to have open
+	 * at the same time (default = 100)
+	 */
+	private int maxConcurrentStreams;
+
+	/**
+	 * The number of bytes of request body data the client can send on
+	 * each stream before it has to wait for the server (default = 65535)
+	 */
+	private int initialWindowSize;
+
+	/**
+	 * The maximum size of the payload of a single frame the client is
+	 * allowed to send (default = 16384)
+	 */
+	private int maxFrameSize;
+
+	/**
+	 * The smallest allowed maximum frame size
+	 */
+	public static final int MIN_FRAME_SIZE = 16384;
+
+	/**
+	 * The largest allowed maximum frame size
+	 */
+	public static final int MAX_FRAME_SIZE = 16777215;
+
+	/**
+	 * The largest allowed flow control window
+	 */
+	public static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	/**
+	 * The flow control window that both sides start out with
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 65535;
+
+	/**
+	 * Creates a new instance using the default settings
+	 */
+	public Http2Settings() {
+		headerTableSize = 4096;
+		maxConcurrentStreams = 100;
+		initialWindowSize = DEFAULT_WINDOW_SIZE;
+		maxFrameSize = MIN_FRAME_SIZE;
+	}
+
+	/**
+	 * Returns the maximum size of the header compression table the
+	 * client is allowed to use
+	 * @return The table size in bytes
+	 */
+	public int getHeaderTableSize() {
+		return headerTableSize;
+	}
+
+	/**
+	 * Sets the maximum size of the header compression table the
+	 * client is allowed to use
+	 * @param headerTableSize The table size in bytes
+	 */
+	public void setHeaderTableSize(int headerTableSize) {
+		if (headerTableSize < 0) {
+			throw new IllegalArgumentException("headerTableSize must not be negative");
+		}
+		this.headerTableSize = headerTableSize;
+	}
+
+	/**
+	 * Returns the maximum number of streams the client is allowed to
+	 * have open at the same time
+	 * @return The maximum number of streams
+	 */
+	public int getMaxConcurrentStreams() {
+		return maxConcurrentStreams;
+	}
+
+	/**
+	 * Sets the maximum number of streams the client is allowed to
+	 * have open at the same time. Each of them will be handled by its
+	 * own thread
+	 * @param maxConcurrentStreams The maximum number of streams
+	 */
+	public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+		if (maxConcurrentStreams <= 0) {
+			throw new IllegalArgumentException("maxConcurrentStreams must be larger than 0");
+		}
+		this.maxConcurrentStreams = maxConcurrentStreams;
+	}
+
+	/**
+	 * Returns the number of bytes of request body data the client can
+	 * send on each stream before it has to wait for the server
+	 * @return The window size in bytes
+	 */
+	public int getInitialWindowSize() {
+		return initialWindowSize;
+	}
+
+	/**
+	 * Sets the number of bytes of request body data the client can send
+	 * on each stream before it has to wait for the server. This is also
+	 * the amount of memory each stream might need for buffering
+	 * @param initialWindowSize The window size in bytes
+	 */
+	public void setInitialWindowSize(int initialWindowSize) {
+		if (initialWindowSize <= 0) {
+			throw new IllegalArgumentException("initialWindowSize must be larger than 0");
+		}
+		this.initialWindowSize = initialWindowSize;
+	}
+
+	/**
+	 * Returns the maximum size of the payload of a single frame the
+	 * client is allowed to send
+	 * @return The frame size in bytes
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	/**
+	 * Sets the maximum size of the payload of a single frame the client
+	 * is allowed to send
+	 * @param maxFrameSize The frame size in bytes, between 16384 and
+	 * 16777215 inclusive
+	 */
+	public void setMaxFrameSize(int maxFrameSize) {
+		if (maxFrameSize < MIN_FRAME_SIZE || maxFrameSize > MAX_FRAME_SIZE) {
+			throw new IllegalArgumentException("maxFrameSize must be between " + MIN_FRAME_SIZE + " and " + MAX_FRAME_SIZE);
+		}
+		this.maxFrameSize = maxFrameSize;
+	}
+}
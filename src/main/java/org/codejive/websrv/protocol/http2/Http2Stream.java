@@ -0,0 +1,557 @@
+/*
+ * Http2Stream.java
+ *
+ * Created on Oct 19, 2026, 4:41:07 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+import org.codejive.websrv.protocol.http.HttpRequestImpl;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.MalformedRequestException;
+import org.codejive.websrv.protocol.http.PrematureEOFException;
+import org.codejive.websrv.protocol.http.RequestLimitException;
+import org.codejive.websrv.protocol.http.form.FormDataException;
+
+/**
+ * A single request/response exchange on an HTTP/2 connection. Each
+ * stream is handled by its own thread, which runs the response handler
+ * while the connection's thread keeps reading frames and passing request
+ * body data to the stream. The fields that describe the output waiting
+ * to be sent are guarded by the connection's lock
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class Http2Stream implements Runnable {
+
+	/**
+	 * The stream identifier
+	 */
+	private final int id;
+	/**
+	 * The connection this stream belongs to
+	 */
+	private final Http2Connection connection;
+	/**
+	 * The request received on this stream
+	 */
+	private final HttpRequestImpl request;
+	/**
+	 * The response that will be sent on this stream
+	 */
+	private final Http2Response response;
+	/**
+	 * The body of the request
+	 */
+	private final RequestBody body;
+	/**
+	 * The time the request was received
+	 */
+	private final long requestTime;
+	/**
+	 * The response code to send instead of calling the response handler
+	 * because the request was found to be unacceptable, or null
+	 */
+	private HttpResponseCode rejectCode;
+
+	/**
+	 * The number of bytes we're still allowed to send on this stream,
+	 * this can become negative when the client lowers its window size
+	 */
+	int sendWindow;
+	/**
+	 * The data waiting to be sent or null
+	 */
+	byte[] pendingData;
+	/**
+	 * The offset of the data waiting to be sent
+	 */
+	int pendingOffset;
+	/**
+	 * The number of bytes waiting to be sent
+	 */
+	int pendingLength;
+	/**
+	 * Indicates that the data waiting to be sent ends the stream
+	 */
+	boolean pendingEnd;
+	/**
+	 * Indicates that we've ended our side of the stream
+	 */
+	boolean localClosed;
+	/**
+	 * Indicates that the stream was reset by either side or that the
+	 * connection was closed, no more frames can be sent
+	 */
+	boolean aborted;
+
+	/**
+	 * Class private logger
+	 */
+	private static final Logger logger = Logger.getLogger(Http2Stream.class.getName());
+
+	/**
+	 * Creates a new stream
+	 * @param connection The connection the stream belongs to
+	 * @param id The stream identifier
+	 * @param request The request received on the stream, its body will
+	 * be set by this constructor
+	 * @param sendWindow The initial size of the window for sending data
+	 * @param receiveWindow The initial size of the window for receiving data
+	 * @param maxBodySize The maximum size of the request body or 0 for no limit
+	 */
+	Http2Stream(Http2Connection connection, int id, HttpRequestImpl request, int sendWindow, int receiveWindow, long maxBodySize) {
+		this.connection = connection;
+		this.id = id;
+		this.request = request;
+		this.sendWindow = sendWindow;
+		requestTime = System.currentTimeMillis();
+		body = new RequestBody(receiveWindow, maxBodySize);
+		body.expectContinue = "100-continue".equalsIgnoreCase(request.getHeader("Expect"));
+		request.setInputStream(body);
+		response = new Http2Response(this);
+	}
+
+	/**
+	 * Returns the stream identifier
+	 * @return The stream identifier
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the request received on this stream
+	 * @return The request
+	 */
+	HttpRequestImpl getRequest() {
+		return request;
+	}
+
+	/**
+	 * Makes the stream respond with the given code instead of passing
+	 * the request to the response handler
+	 * @param rejectCode The response code to send
+	 */
+	void setRejectCode(HttpResponseCode rejectCode) {
+		this.rejectCode = rejectCode;
+	}
+
+	/**
+	 * Indicates if the client has ended its side of the stream
+	 * @return <code>true</code> if the complete request was received
+	 */
+	boolean isRemoteClosed() {
+		return body.isComplete();
+	}
+
+	/**
+	 * Indicates if data is waiting to be sent that can be sent right now
+	 * @param dataAllowed Indicates if the connection's window allows
+	 * sending data
+	 * @return <code>true</code> if a DATA frame can be sent
+	 */
+	boolean isReady(boolean dataAllowed) {
+		if (aborted) {
+			return false;
+		}
+		if (pendingLength > 0) {
+			return dataAllowed && sendWindow > 0;
+		}
+		return pendingEnd;
+	}
+
+	/**
+	 * Passes request body data received from the client to the stream
+	 * @param b The buffer holding the data
+	 * @param off The offset of the data
+	 * @param len The number of bytes of data
+	 * @param frameLength The length of the frame, including padding,
+	 * which is what counts for flow control
+	 * @param last Indicates that this frame ends the request
+	 * @throws org.codejive.websrv.protocol.http2.Http2Exception If the client
+	 * sent more than the window allowed or if the amount of data doesn't
+	 * match the Content-Length header
+	 */
+	void receiveData(byte[] b, int off, int len, int frameLength, boolean last) throws Http2Exception {
+		body.receive(b, off, len, frameLength, last);
+	}
+
+	/**
+	 * Marks the end of the request, for example because trailers were received
+	 * @throws org.codejive.websrv.protocol.http2.Http2Exception If the amount
+	 * of data doesn't match the Content-Length header
+	 */
+	void endRequest() throws Http2Exception {
+		body.receive(null, 0, 0, 0, true);
+	}
+
+	/**
+	 * Terminates the stream, any thread waiting to read or write data
+	 * will be woken up and get an exception
+	 * @param reason The reason the stream was terminated
+	 */
+	void abort(String reason) {
+		body.abort(reason);
+	}
+
+	/**
+	 * Sends the response head
+	 * @param code The response code
+	 * @param headers The response headers
+	 * @param last Indicates that there is no content
+	 * @throws java.io.IOException If the stream was terminated or the
+	 * connection failed
+	 */
+	void sendHeaders(HttpResponseCode code, HttpHeaders headers, boolean last) throws IOException {
+		connection.sendHeaders(this, code.getCode(), headers, last);
+	}
+
+	/**
+	 * Sends response content, this method only returns after all the
+	 * data has been handed to the connection so the buffer can be reused
+	 * @param b The buffer holding the data
+	 * @param off The offset of the data
+	 * @param len The number of bytes of data
+	 * @param last Indicates that this ends the response
+	 * @throws java.io.IOException If the stream was terminated or the
+	 * connection failed
+	 */
+	void sendData(byte[] b, int off, int len, boolean last) throws IOException {
+		connection.sendData(this, b, off, len, last);
+	}
+
+	/**
+	 * Runs the response handler for the request and sends the response
+	 */
+	public void run() {
+		HttpResponseCode failureCode = null;
+		String failureMessage = null;
+		try {
+			if (rejectCode != null) {
+				response.sendError(rejectCode, "The request was rejected");
+			}
+			response.setResponseCode(HttpResponseCode.CODE_OK);
+			try {
+				connection.getResponseHandler().handleResponse(request, response);
+			} catch (FormDataException ex) {
+				throw ex.getCause();
+			}
+			request.checkFormData();
+		} catch (PrematureEOFException ex) {
+			logger.fine("Processing of output was forcibly interrupted");
+		} catch (SocketTimeoutException ex) {
+			logger.fine("Request body not received in time");
+			connection.resetStream(this, Http2ErrorCode.CANCEL);
+		} catch (RequestLimitException ex) {
+			logger.fine(ex.getMessage());
+			failureCode = ex.getResponseCode();
+			failureMessage = ex.getMessage();
+		} catch (MalformedRequestException ex) {
+			failureCode = HttpResponseCode.CODE_BAD_REQUEST;
+			failureMessage = ex.getMessage();
+		} catch (Exception ex) {
+			if (body.isAborted()) {
+				logger.fine("Stream " + id + " was terminated: " + ex.getMessage());
+			} else {
+				logger.log(Level.SEVERE, "500 Internal Server Error", ex);
+				failureCode = HttpResponseCode.CODE_INTERNAL_SERVER_ERROR;
+				failureMessage = ex.toString();
+			}
+		} finally {
+			if (failureCode != null && !response.isCommitted()) {
+				try {
+					response.sendError(failureCode, failureMessage);
+				} catch (IOException ex) {
+					// This is what sendError() always does
+				}
+			}
+			try {
+				response.finish();
+			} catch (IOException ex) {
+				logger.fine("Could not complete response on stream " + id + ": " + ex.getMessage());
+			}
+			request.dispose();
+			connection.streamFinished(this, requestTime, response.getResponseCode().getCode(), response.getBytesWritten());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Http2Stream[" + id + "]";
+	}
+
+	/**
+	 * The body of the request. The data received from the client is
+	 * buffered, the client can never send more than the size of the
+	 * window so that is the maximum size of the buffer as well. As the
+	 * handler reads the data the window is opened up again
+	 */
+	private class RequestBody extends InputStream {
+
+		/**
+		 * The buffered data
+		 */
+		private byte[] buf;
+		/**
+		 * The position of the next byte to read
+		 */
+		private int pos;
+		/**
+		 * The position just after the last buffered byte
+		 */
+		private int limit;
+		/**
+		 * The initial size of the window
+		 */
+		private final int windowSize;
+		/**
+		 * The number of bytes the client is still allowed to send
+		 */
+		private int window;
+		/**
+		 * The number of bytes that were consumed but that haven't been
+		 * given back to the client in a WINDOW_UPDATE yet
+		 */
+		private int consumed;
+		/**
+		 * The total number of bytes of data received
+		 */
+		private long received;
+		/**
+		 * The maximum size of the request body or 0 for no limit
+		 */
+		private final long maxSize;
+		/**
+		 * The value of the Content-Length header or -1
+		 */
+		private long contentLength;
+		/**
+		 * Indicates that the client has ended the request
+		 */
+		private boolean complete;
+		/**
+		 * The reason the stream was terminated or null
+		 */
+		private String abortReason;
+		/**
+		 * Indicates that the client waits for a "100 Continue"
+		 * before sending the body
+		 */
+		boolean expectContinue;
+
+		/**
+		 * Creates a new body
+		 * @param windowSize The initial size of the window
+		 * @param maxSize The maximum size of the body or 0 for no limit
+		 */
+		public RequestBody(int windowSize, long maxSize) {
+			this.windowSize = windowSize;
+			this.maxSize = maxSize;
+			window = windowSize;
+			buf = new byte[Math.min(windowSize, 16384)];
+			contentLength = -1;
+			String length = request.getHeader("Content-Length");
+			if (length != null) {
+				try {
+					contentLength = Long.parseLong(length.trim());
+				} catch (NumberFormatException ex) {
+					// Ignore
+				}
+			}
+		}
+
+		/**
+		 * Adds data received from the client
+		 * @see Http2Stream#receiveData(byte[], int, int, int, boolean)
+		 */
+		synchronized void receive(byte[] b, int off, int len, int frameLength, boolean last) throws Http2Exception {
+			if (frameLength > window) {
+				throw new Http2Exception(Http2ErrorCode.FLOW_CONTROL_ERROR, id, "Stream window exceeded");
+			}
+			window -= frameLength;
+			// Padding will never be read so it's consumed right away
+			consumed += frameLength - len;
+			received += len;
+			if (len > 0) {
+				if (abortReason != null || (maxSize > 0 && received > maxSize)) {
+					// Nobody will ever read this
+					consumed += len;
+				} else {
+					append(b, off, len);
+				}
+			}
+			if (last) {
+				complete = true;
+				if (contentLength >= 0 && contentLength != received) {
+					throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, id, "Request body doesn't match Content-Length");
+				}
+			} else if (contentLength >= 0 && received > contentLength) {
+				throw new Http2Exception(Http2ErrorCode.PROTOCOL_ERROR, id, "Request body larger than Content-Length");
+			}
+			notifyAll();
+		}
+
+		/**
+		 * Appends data to the buffer, making room for it if necessary
+		 * @param b The buffer holding the data
+		 * @param off The offset of the data
+		 * @param len The number of bytes of data
+		 */
+		private void append(byte[] b, int off, int len) {
+			if (buf.length - limit < len) {
+				int size = limit - pos;
+				byte[] target = buf;
+				if (buf.length - size < len) {
+					target = new byte[Math.max(size + len, Math.min(buf.length * 2, windowSize))];
+				}
+				System.arraycopy(buf, pos, target, 0, size);
+				buf = target;
+				pos = 0;
+				limit = size;
+			}
+			System.arraycopy(b, off, buf, limit, len);
+			limit += len;
+		}
+
+		/**
+		 * Indicates if the client has ended the request
+		 * @return <code>true</code> if the complete request was received
+		 */
+		synchronized boolean isComplete() {
+			return complete;
+		}
+
+		/**
+		 * Indicates if the stream was terminated
+		 * @return <code>true</code> if the stream was terminated
+		 */
+		synchronized boolean isAborted() {
+			return abortReason != null;
+		}
+
+		/**
+		 * Terminates the stream, any data still waiting to be read is dropped
+		 * @param reason The reason the stream was terminated
+		 */
+		synchronized void abort(String reason) {
+			if (abortReason == null) {
+				abortReason = reason;
+				pos = limit = 0;
+				notifyAll();
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = read(b, 0, 1);
+			return (n < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int n;
+			int credit = 0;
+			boolean sendContinue = false;
+			synchronized (this) {
+				if (expectContinue) {
+					expectContinue = false;
+					sendContinue = !complete && received == 0;
+				}
+			}
+			if (sendContinue) {
+				connection.sendContinue(Http2Stream.this);
+			}
+			synchronized (this) {
+				waitForData();
+				if (pos == limit) {
+					return -1;
+				}
+				n = Math.min(len, limit - pos);
+				System.arraycopy(buf, pos, b, off, n);
+				pos += n;
+				consumed += n;
+				// Give the client room to send more once half of the
+				// window has been used up, unless it has already finished
+				if (!complete && consumed >= windowSize / 2) {
+					credit = consumed;
+					window += consumed;
+					consumed = 0;
+				}
+			}
+			if (credit > 0) {
+				connection.sendWindowUpdate(Http2Stream.this, credit);
+			}
+			return n;
+		}
+
+		/**
+		 * Waits until there is data to read or until the end of the body
+		 * @throws java.io.IOException If the stream was terminated, if
+		 * the body is too large or if the client took too long
+		 */
+		private void waitForData() throws IOException {
+			int timeout = connection.getReadTimeout();
+			long deadline = (timeout > 0) ? System.currentTimeMillis() + timeout : 0;
+			while (pos == limit && !complete && abortReason == null && !isTooLarge()) {
+				long wait = 0;
+				if (deadline != 0) {
+					wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						throw new SocketTimeoutException("Request body not received in time");
+					}
+				}
+				try {
+					wait(wait);
+				} catch (InterruptedException ex) {
+					throw new InterruptedIOException();
+				}
+			}
+			if (abortReason != null) {
+				throw new IOException(abortReason);
+			}
+			if (isTooLarge()) {
+				throw new RequestLimitException(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, "Request body too large");
+			}
+		}
+
+		/**
+		 * Indicates if the client has sent more data than allowed
+		 * @return <code>true</code> if the body is too large
+		 */
+		private boolean isTooLarge() {
+			return maxSize > 0 && received > maxSize;
+		}
+
+		@Override
+		public synchronized int available() {
+			return limit - pos;
+		}
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * PriorityScheduler.java
+ *
+ * Created on Oct 19, 2026, 4:47:52 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which stream gets to send the next DATA frame, following the
+ * dependency tree and weights that the client can assign to streams
+ * (RFC 7540 section 5.3). A stream that has data to send blocks the
+ * streams that depend on it, siblings share the available bandwidth in
+ * proportion to their weights. The latter is done by giving each node a
+ * virtual finishing time that advances with the amount of data sent
+ * divided by the weight, the ready sibling with the smallest time goes
+ * first. This class is not thread safe, it is guarded by the connection's
+ * lock
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class PriorityScheduler {
+
+	/**
+	 * The root of the dependency tree, it represents the connection
+	 */
+	private final Node root;
+	/**
+	 * All the nodes in the tree, by stream identifier
+	 */
+	private final Map<Integer, Node> nodes;
+	/**
+	 * The identifiers of the nodes that were created for streams that
+	 * the client referred to but that haven't been opened (yet), oldest
+	 * first. Only a limited number of them is kept
+	 */
+	private final LinkedList<Integer> placeholders;
+
+	/**
+	 * The weight of streams that have no priority assigned
+	 */
+	static final int DEFAULT_WEIGHT = 16;
+	/**
+	 * The maximum number of placeholder nodes we're willing to keep
+	 */
+	private static final int MAX_PLACEHOLDERS = 64;
+	/**
+	 * The scale factor for virtual times, to keep the rounding errors
+	 * of the divisions by the weight small
+	 */
+	private static final long SCALE = 256;
+
+	/**
+	 * Creates a new, empty, scheduler
+	 */
+	PriorityScheduler() {
+		root = new Node(0);
+		nodes = new HashMap<Integer, Node>();
+		placeholders = new LinkedList<Integer>();
+	}
+
+	/**
+	 * Adds a new stream to the tree
+	 * @param stream The stream to add
+	 * @param parentId The identifier of the stream it depends on, 0 for none
+	 * @param weight The weight of the stream, between 1 and 256
+	 * @param exclusive Indicates if the stream becomes the only child
+	 * of its parent
+	 */
+	void add(Http2Stream stream, int parentId, int weight, boolean exclusive) {
+		Node node = nodes.get(stream.getId());
+		if (node == null) {
+			node = new Node(stream.getId());
+			nodes.put(stream.getId(), node);
+		} else {
+			// The client already referred to this stream before opening it
+			placeholders.remove(Integer.valueOf(stream.getId()));
+		}
+		node.stream = stream;
+		setPriority(stream.getId(), parentId, weight, exclusive);
+	}
+
+	/**
+	 * Changes the priority of a stream, if the stream doesn't exist a
+	 * placeholder for it is created so streams can depend on it
+	 * @param id The identifier of the stream
+	 * @param parentId The identifier of the stream it depends on, 0 for none
+	 * @param weight The weight of the stream, between 1 and 256
+	 * @param exclusive Indicates if the stream becomes the only child
+	 * of its parent
+	 */
+	void setPriority(int id, int parentId, int weight, boolean exclusive) {
+		Node node = nodes.get(id);
+		if (node == null) {
+			node = createPlaceholder(id);
+		}
+		Node parent = (parentId == 0) ? root : nodes.get(parentId);
+		if (parent == null) {
+			parent = createPlaceholder(parentId);
+		}
+		if (parent == node) {
+			// Not allowed, should have been caught by the caller
+			return;
+		}
+		// When a stream is made to depend on one of its own descendants
+		// that descendant is first moved to take the stream's place
+		if (isDescendant(parent, node)) {
+			parent.detach();
+			node.parent.attach(parent);
+		}
+		if (node.parent != null) {
+			node.detach();
+		}
+		node.weight = weight;
+		if (exclusive) {
+			List<Node> children = new ArrayList<Node>(parent.children);
+			for (Node child : children) {
+				child.detach();
+				node.attach(child);
+			}
+		}
+		parent.attach(node);
+	}
+
+	/**
+	 * Removes a stream from the tree, the streams depending on it will
+	 * depend on its parent instead
+	 * @param stream The stream to remove
+	 */
+	void remove(Http2Stream stream) {
+		Node node = nodes.get(stream.getId());
+		if (node != null && node.stream == stream) {
+			removeNode(node);
+		}
+	}
+
+	/**
+	 * Returns the stream that should send the next DATA frame
+	 * @param dataAllowed Indicates if the connection's window allows
+	 * sending data, if not only streams that have an empty frame to
+	 * send can be picked
+	 * @return The stream or null if none of the streams can send anything
+	 */
+	Http2Stream next(boolean dataAllowed) {
+		Node node = root;
+		for (;;) {
+			Node best = null;
+			for (Node child : node.children) {
+				if ((best == null || child.vtime < best.vtime) && isReady(child, dataAllowed)) {
+					best = child;
+				}
+			}
+			if (best == null) {
+				return null;
+			}
+			if (best.stream != null && best.stream.isReady(dataAllowed)) {
+				return best.stream;
+			}
+			node = best;
+		}
+	}
+
+	/**
+	 * Records that the given stream has sent a frame, which moves it and
+	 * all its ancestors back in line
+	 * @param stream The stream that sent a frame
+	 * @param length The length of the frame's payload
+	 */
+	void sent(Http2Stream stream, int length) {
+		Node node = nodes.get(stream.getId());
+		// The frame header counts as well, otherwise empty
+		// frames would be free
+		long cost = (length + 9) * SCALE;
+		while (node != null && node != root) {
+			node.vtime += cost / node.weight;
+			node = node.parent;
+		}
+	}
+
+	/**
+	 * Determines if the given node or one of its descendants can send
+	 * a frame
+	 * @param node The node to check
+	 * @param dataAllowed Indicates if the connection's window allows
+	 * sending data
+	 * @return <code>true</code> if a frame can be sent
+	 */
+	private boolean isReady(Node node, boolean dataAllowed) {
+		if (node.stream != null && node.stream.isReady(dataAllowed)) {
+			return true;
+		}
+		for (Node child : node.children) {
+			if (isReady(child, dataAllowed)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if a node is a descendant of another node
+	 * @param node The node to check
+	 * @param ancestor The possible ancestor
+	 * @return <code>true</code> if the node is a descendant
+	 */
+	private boolean isDescendant(Node node, Node ancestor) {
+		for (Node n = node.parent; n != null; n = n.parent) {
+			if (n == ancestor) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates a node for a stream that doesn't exist, with the default
+	 * priority. If there are too many placeholders the oldest one is
+	 * removed first
+	 * @param id The identifier of the stream
+	 * @return The new node
+	 */
+	private Node createPlaceholder(int id) {
+		if (placeholders.size() >= MAX_PLACEHOLDERS) {
+			Node oldest = nodes.get(placeholders.removeFirst());
+			if (oldest != null) {
+				removeNode(oldest);
+			}
+		}
+		Node node = new Node(id);
+		node.weight = DEFAULT_WEIGHT;
+		nodes.put(id, node);
+		placeholders.add(id);
+		root.attach(node);
+		return node;
+	}
+
+	/**
+	 * Removes a node from the tree, its children are moved to its parent
+	 * @param node The node to remove
+	 */
+	private void removeNode(Node node) {
+		nodes.remove(node.id);
+		Node parent = node.parent;
+		node.detach();
+		List<Node> children = new ArrayList<Node>(node.children);
+		for (Node child : children) {
+			child.detach();
+			parent.attach(child);
+		}
+	}
+
+	/**
+	 * A node in the dependency tree
+	 */
+	private static class Node {
+
+		/**
+		 * The identifier of the stream
+		 */
+		final int id;
+		/**
+		 * The stream itself or null for placeholders and the root
+		 */
+		Http2Stream stream;
+		/**
+		 * The parent of this node, only null for the root or while
+		 * the node is being moved
+		 */
+		Node parent;
+		/**
+		 * The nodes that depend on this one
+		 */
+		final List<Node> children;
+		/**
+		 * The weight of this node relative to its siblings
+		 */
+		int weight;
+		/**
+		 * The virtual time at which this node's next frame would be
+		 * finished, compared only among siblings
+		 */
+		long vtime;
+
+		/**
+		 * Creates a new node
+		 * @param id The identifier of the stream
+		 */
+		Node(int id) {
+			this.id = id;
+			children = new ArrayList<Node>(4);
+			weight = DEFAULT_WEIGHT;
+		}
+
+		/**
+		 * Makes the given node a child of this one. It starts out at the
+		 * same virtual time as the sibling that is next in line, so it
+		 * can't claim bandwidth for the time it wasn't there
+		 * @param child The node to attach
+		 */
+		void attach(Node child) {
+			long start = Long.MAX_VALUE;
+			for (Node sibling : children) {
+				start = Math.min(start, sibling.vtime);
+			}
+			child.vtime = (start == Long.MAX_VALUE) ? 0 : start;
+			child.parent = this;
+			children.add(child);
+		}
+
+		/**
+		 * Removes this node from its parent
+		 */
+		void detach() {
+			if (parent != null) {
+				parent.children.remove(this);
+				parent = null;
+			}
+		}
+	}
+}
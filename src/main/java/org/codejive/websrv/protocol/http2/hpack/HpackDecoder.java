@@ -0,0 +1,254 @@
+/*
+ * HpackDecoder.java
+ *
+ * Created on Oct 19, 2026, 4:15:03 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2.hpack;
+
+import java.nio.charset.Charset;
+
+/**
+ * Decodes the header blocks received on a single HTTP/2 connection.
+ * Because every block can change the decoder's dynamic table the blocks
+ * must be decoded in the order they were received and always completely,
+ * even when their headers aren't needed anymore. To protect against
+ * blocks that expand into enormous amounts of headers the decoder stops
+ * passing on headers once the maximum header list size is exceeded
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class HpackDecoder {
+
+	/**
+	 * The dynamic table
+	 */
+	private final HpackDynamicTable table;
+
+	/**
+	 * The maximum size the encoder on the other side is allowed to use
+	 * for the dynamic table, as announced in our settings
+	 */
+	private int maxTableSize;
+
+	/**
+	 * The maximum size of the decoded header list of a single block,
+	 * counted the same way as entries in the dynamic table. 0 means
+	 * unlimited
+	 */
+	private int maxHeaderListSize;
+
+	/**
+	 * The position of the next byte to decode
+	 */
+	private int pos;
+
+	/**
+	 * The character set used for header names and values
+	 */
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	/**
+	 * The receiver of decoded headers
+	 */
+	public interface HeaderListener {
+		/**
+		 * Is called for each header found in a block, in the order in
+		 * which they appear
+		 * @param name The name of the header
+		 * @param value The value of the header
+		 */
+		void addHeader(String name, String value);
+	}
+
+	/**
+	 * Creates a new decoder
+	 * @param maxTableSize The maximum size of the dynamic table
+	 * @param maxHeaderListSize The maximum size of the header list of
+	 * a single block or 0 for no limit
+	 */
+	public HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+		this.maxTableSize = maxTableSize;
+		this.maxHeaderListSize = maxHeaderListSize;
+		table = new HpackDynamicTable(maxTableSize);
+	}
+
+	/**
+	 * Decodes a complete header block
+	 * @param buf The buffer holding the block
+	 * @param off The offset of the block
+	 * @param len The length of the block
+	 * @param listener The receiver of the decoded headers
+	 * @return <code>true</code> if all headers were passed on or
+	 * <code>false</code> if the maximum header list size was exceeded
+	 * @throws org.codejive.websrv.protocol.http2.hpack.HpackException If
+	 * the block could not be decoded
+	 */
+	public boolean decode(byte[] buf, int off, int len, HeaderListener listener) throws HpackException {
+		int end = off + len;
+		long listSize = 0;
+		boolean complete = true;
+		boolean first = true;
+		pos = off;
+		while (pos < end) {
+			int b = buf[pos] & 0xff;
+			String name;
+			String value;
+			if ((b & 0x80) != 0) {
+				// Indexed header field
+				int index = decodeInt(buf, end, 7);
+				name = getName(index);
+				value = getValue(index);
+			} else if ((b & 0xe0) == 0x20) {
+				// Dynamic table size update
+				if (!first) {
+					throw new HpackException("Table size update in the middle of a header block");
+				}
+				int size = decodeInt(buf, end, 5);
+				if (size > maxTableSize) {
+					throw new HpackException("Table size update exceeds the maximum");
+				}
+				table.setMaxSize(size);
+				continue;
+			} else {
+				// Literal header field, with (01), without (0000)
+				// or never (0001) indexing
+				boolean indexing = (b & 0xc0) == 0x40;
+				int index = decodeInt(buf, end, indexing ? 6 : 4);
+				name = (index != 0) ? getName(index) : decodeString(buf, end);
+				value = decodeString(buf, end);
+				if (indexing) {
+					table.add(name, value);
+				}
+			}
+			first = false;
+			listSize += HpackDynamicTable.entrySize(name, value);
+			if (maxHeaderListSize > 0 && listSize > maxHeaderListSize) {
+				complete = false;
+			}
+			if (complete) {
+				listener.addHeader(name, value);
+			}
+		}
+		return complete;
+	}
+
+	/**
+	 * Decodes an integer using the given prefix length. The prefix is
+	 * taken from the lowest bits of the current byte
+	 * @param buf The buffer holding the data
+	 * @param end The end of the data
+	 * @param prefix The number of bits in the prefix
+	 * @return The integer
+	 * @throws org.codejive.websrv.protocol.http2.hpack.HpackException If the
+	 * integer is incomplete or too large
+	 */
+	private int decodeInt(byte[] buf, int end, int prefix) throws HpackException {
+		int max = (1 << prefix) - 1;
+		int result = buf[pos++] & max;
+		if (result < max) {
+			return result;
+		}
+		int shift = 0;
+		int b;
+		do {
+			if (pos >= end) {
+				throw new HpackException("Incomplete integer");
+			}
+			if (shift > 28) {
+				throw new HpackException("Integer too large");
+			}
+			b = buf[pos++] & 0xff;
+			result += (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		if (result < 0) {
+			throw new HpackException("Integer too large");
+		}
+		return result;
+	}
+
+	/**
+	 * Decodes a string literal, Huffman encoded or not
+	 * @param buf The buffer holding the data
+	 * @param end The end of the data
+	 * @return The string
+	 * @throws org.codejive.websrv.protocol.http2.hpack.HpackException If the
+	 * string is incomplete or badly encoded
+	 */
+	private String decodeString(byte[] buf, int end) throws HpackException {
+		if (pos >= end) {
+			throw new HpackException("Missing string literal");
+		}
+		boolean huffman = (buf[pos] & 0x80) != 0;
+		int len = decodeInt(buf, end, 7);
+		if (len > end - pos) {
+			throw new HpackException("Incomplete string literal");
+		}
+		String result;
+		if (huffman) {
+			result = Huffman.decode(buf, pos, len);
+		} else {
+			result = new String(buf, pos, len, CHARSET);
+		}
+		pos += len;
+		return result;
+	}
+
+	/**
+	 * Returns the name of the static or dynamic table entry with the given index
+	 * @param index The index of the entry
+	 * @return The name of the entry
+	 * @throws org.codejive.websrv.protocol.http2.hpack.HpackException If
+	 * no entry with that index exists
+	 */
+	private String getName(int index) throws HpackException {
+		checkIndex(index);
+		if (index <= HpackStaticTable.SIZE) {
+			return HpackStaticTable.getName(index);
+		}
+		return table.getName(index - HpackStaticTable.SIZE);
+	}
+
+	/**
+	 * Returns the value of the static or dynamic table entry with the given index
+	 * @param index The index of the entry
+	 * @return The value of the entry
+	 * @throws org.codejive.websrv.protocol.http2.hpack.HpackException If
+	 * no entry with that index exists
+	 */
+	private String getValue(int index) throws HpackException {
+		checkIndex(index);
+		if (index <= HpackStaticTable.SIZE) {
+			return HpackStaticTable.getValue(index);
+		}
+		return table.getValue(index - HpackStaticTable.SIZE);
+	}
+
+	/**
+	 * Checks that an entry with the given index exists
+	 * @param index The index of the entry
+	 * @throws org.codejive.websrv.protocol.http2.hpack.HpackException If
+	 * no entry with that index exists
+	 */
+	private void checkIndex(int index) throws HpackException {
+		if (index <= 0 || index > HpackStaticTable.SIZE + table.length()) {
+			throw new HpackException("Invalid table index " + index);
+		}
+	}
+}
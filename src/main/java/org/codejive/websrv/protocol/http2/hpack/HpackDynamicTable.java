@@ -0,0 +1,234 @@
+/*
+ * HpackDynamicTable.java
+ *
+ * Created on Oct 19, 2026, 4:12:18 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2.hpack;
+
+/**
+ * The dynamic table of an HPACK encoder or decoder. New entries are
+ * added at the front and the oldest entries are evicted whenever the
+ * table would grow larger than its maximum size. The size of an entry
+ * is the length of its name and value plus 32, as defined by RFC 7541
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class HpackDynamicTable {
+
+	/**
+	 * The names of the entries, used as a circular buffer
+	 */
+	private String[] names;
+
+	/**
+	 * The values of the entries, used as a circular buffer
+	 */
+	private String[] values;
+
+	/**
+	 * The position of the oldest entry in the circular buffers
+	 */
+	private int first;
+
+	/**
+	 * The number of entries in the table
+	 */
+	private int count;
+
+	/**
+	 * The current size of the table
+	 */
+	private int size;
+
+	/**
+	 * The maximum size of the table
+	 */
+	private int maxSize;
+
+	/**
+	 * The overhead that is added to the size of each entry
+	 */
+	static final int ENTRY_OVERHEAD = 32;
+
+	/**
+	 * Creates a new empty table
+	 * @param maxSize The maximum size of the table
+	 */
+	HpackDynamicTable(int maxSize) {
+		this.maxSize = maxSize;
+		names = new String[16];
+		values = new String[16];
+	}
+
+	/**
+	 * Returns the number of entries in the table
+	 * @return The number of entries
+	 */
+	int length() {
+		return count;
+	}
+
+	/**
+	 * Returns the current size of the table
+	 * @return The size of all entries together
+	 */
+	int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the maximum size of the table
+	 * @return The maximum size
+	 */
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Sets the maximum size of the table, evicting as many entries as
+	 * necessary to make the table fit
+	 * @param maxSize The new maximum size
+	 */
+	void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		evict(0);
+	}
+
+	/**
+	 * Returns the name of the entry with the given index
+	 * @param index The index, 1 being the most recently added entry
+	 * @return The name of the entry
+	 */
+	String getName(int index) {
+		return names[position(index)];
+	}
+
+	/**
+	 * Returns the value of the entry with the given index
+	 * @param index The index, 1 being the most recently added entry
+	 * @return The value of the entry
+	 */
+	String getValue(int index) {
+		return values[position(index)];
+	}
+
+	/**
+	 * Adds a new entry to the front of the table. An entry that is
+	 * larger than the maximum size of the table empties it
+	 * @param name The name of the entry
+	 * @param value The value of the entry
+	 */
+	void add(String name, String value) {
+		int entrySize = entrySize(name, value);
+		if (entrySize > maxSize) {
+			evict(maxSize + 1);
+			return;
+		}
+		evict(entrySize);
+		if (count == names.length) {
+			grow();
+		}
+		int pos = (first + count) % names.length;
+		names[pos] = name;
+		values[pos] = value;
+		count++;
+		size += entrySize;
+	}
+
+	/**
+	 * Returns the index of the most recently added entry with the given
+	 * name and value
+	 * @param name The name of the entry
+	 * @param value The value of the entry
+	 * @return The index of the entry or 0 if it doesn't exist
+	 */
+	int indexOf(String name, String value) {
+		for (int i = 1; i <= count; i++) {
+			int pos = position(i);
+			if (names[pos].equals(name) && values[pos].equals(value)) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the index of the most recently added entry with the given name
+	 * @param name The name of the entry
+	 * @return The index of the entry or 0 if it doesn't exist
+	 */
+	int indexOfName(String name) {
+		for (int i = 1; i <= count; i++) {
+			if (names[position(i)].equals(name)) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the size of an entry with the given name and value
+	 * @param name The name of the entry
+	 * @param value The value of the entry
+	 * @return The size of the entry
+	 */
+	static int entrySize(String name, String value) {
+		return name.length() + value.length() + ENTRY_OVERHEAD;
+	}
+
+	/**
+	 * Returns the position in the circular buffers of the entry with the
+	 * given index
+	 * @param index The index, 1 being the most recently added entry
+	 * @return The position in the buffers
+	 */
+	private int position(int index) {
+		return (first + count - index) % names.length;
+	}
+
+	/**
+	 * Evicts the oldest entries until there is room for the given extra size
+	 * @param extra The size that must fit in the table besides the entries
+	 */
+	private void evict(int extra) {
+		while (count > 0 && size + extra > maxSize) {
+			size -= entrySize(names[first], values[first]);
+			names[first] = null;
+			values[first] = null;
+			first = (first + 1) % names.length;
+			count--;
+		}
+	}
+
+	/**
+	 * Doubles the capacity of the circular buffers
+	 */
+	private void grow() {
+		String[] newNames = new String[names.length * 2];
+		String[] newValues = new String[values.length * 2];
+		for (int i = 0; i < count; i++) {
+			int pos = (first + i) % names.length;
+			newNames[i] = names[pos];
+			newValues[i] = values[pos];
+		}
+		names = newNames;
+		values = newValues;
+		first = 0;
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * HpackEncoder.java
+ *
+ * Created on Oct 19, 2026, 4:18:46 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2.hpack;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encodes the header blocks sent on a single HTTP/2 connection. Header
+ * fields found in the static or dynamic table are sent as a single index,
+ * other fields are added to the dynamic table so that repeating them in
+ * the next response will be cheap, unless the caller indicates that their
+ * values are likely to be different each time. Strings are Huffman encoded
+ * whenever that makes them shorter. The blocks must be sent in the order
+ * in which they were encoded
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class HpackEncoder {
+
+	/**
+	 * The dynamic table
+	 */
+	private final HpackDynamicTable table;
+
+	/**
+	 * The maximum size we're willing to use for the dynamic table,
+	 * whatever the decoder on the other side allows
+	 */
+	private final int maxTableSize;
+
+	/**
+	 * The smallest table size that was set since the last block was
+	 * encoded or -1 if the size wasn't changed
+	 */
+	private int minPendingSize;
+
+	/**
+	 * The table size that decoders start out with
+	 */
+	private static final int DEFAULT_TABLE_SIZE = 4096;
+
+	/**
+	 * Creates a new encoder
+	 * @param maxTableSize The maximum size we're willing to use for
+	 * the dynamic table
+	 */
+	public HpackEncoder(int maxTableSize) {
+		this.maxTableSize = maxTableSize;
+		table = new HpackDynamicTable(Math.min(maxTableSize, DEFAULT_TABLE_SIZE));
+		minPendingSize = (table.getMaxSize() < DEFAULT_TABLE_SIZE) ? table.getMaxSize() : -1;
+	}
+
+	/**
+	 * Sets the maximum size of the dynamic table that the decoder on the
+	 * other side allows. The change will be signaled at the start of the
+	 * next header block
+	 * @param size The maximum table size allowed by the decoder
+	 */
+	public void setMaxTableSize(int size) {
+		size = Math.min(size, maxTableSize);
+		if (size != table.getMaxSize()) {
+			if (minPendingSize < 0 || size < minPendingSize) {
+				minPendingSize = size;
+			}
+			table.setMaxSize(size);
+		}
+	}
+
+	/**
+	 * Must be called before encoding the first header of a new block
+	 * @param out The buffer to write the encoded block to
+	 */
+	public void startBlock(ByteArrayOutputStream out) {
+		if (minPendingSize >= 0) {
+			// The decoder must see the smallest size first so it
+			// can evict the same entries that we did
+			if (minPendingSize < table.getMaxSize()) {
+				encodeInt(out, 0x20, 5, minPendingSize);
+			}
+			encodeInt(out, 0x20, 5, table.getMaxSize());
+			minPendingSize = -1;
+		}
+	}
+
+	/**
+	 * Encodes a single header field
+	 * @param out The buffer to write the encoded field to
+	 * @param name The name of the header, in lower case
+	 * @param value The value of the header
+	 * @param indexing Indicates if the field should be added to the
+	 * dynamic table, this is only useful if the same value will be sent
+	 * again later on
+	 */
+	public void encodeHeader(ByteArrayOutputStream out, String name, String value, boolean indexing) {
+		int index = HpackStaticTable.indexOf(name, value);
+		if (index == 0) {
+			index = table.indexOf(name, value);
+			if (index != 0) {
+				index += HpackStaticTable.SIZE;
+			}
+		}
+		if (index != 0) {
+			encodeInt(out, 0x80, 7, index);
+			return;
+		}
+		int nameIndex = HpackStaticTable.indexOfName(name);
+		if (nameIndex == 0) {
+			nameIndex = table.indexOfName(name);
+			if (nameIndex != 0) {
+				nameIndex += HpackStaticTable.SIZE;
+			}
+		}
+		// Fields that don't fit in the table would only empty it
+		indexing = indexing && HpackDynamicTable.entrySize(name, value) <= table.getMaxSize() / 2;
+		if (indexing) {
+			encodeInt(out, 0x40, 6, nameIndex);
+		} else {
+			encodeInt(out, 0x00, 4, nameIndex);
+		}
+		if (nameIndex == 0) {
+			encodeString(out, name);
+		}
+		encodeString(out, value);
+		if (indexing) {
+			table.add(name, value);
+		}
+	}
+
+	/**
+	 * Encodes an integer using the given prefix length
+	 * @param out The buffer to write the integer to
+	 * @param bits The bits to set in the first byte besides the prefix
+	 * @param prefix The number of bits in the prefix
+	 * @param value The integer to encode
+	 */
+	private static void encodeInt(ByteArrayOutputStream out, int bits, int prefix, int value) {
+		int max = (1 << prefix) - 1;
+		if (value < max) {
+			out.write(bits | value);
+			return;
+		}
+		out.write(bits | max);
+		value -= max;
+		while (value >= 0x80) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Encodes a string literal, using the Huffman code when that
+	 * results in fewer bytes
+	 * @param out The buffer to write the string to
+	 * @param text The string to encode
+	 */
+	private static void encodeString(ByteArrayOutputStream out, String text) {
+		int len = text.length();
+		int huffmanLen = Huffman.encodedLength(text);
+		if (huffmanLen < len) {
+			encodeInt(out, 0x80, 7, huffmanLen);
+			Huffman.encode(text, out);
+		} else {
+			encodeInt(out, 0x00, 7, len);
+			for (int i = 0; i < len; i++) {
+				char c = text.charAt(i);
+				out.write((c < 256) ? c : '?');
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * HpackException.java
+ *
+ * Created on Oct 19, 2026, 4:03:40 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2.hpack;
+
+import java.io.IOException;
+
+/**
+ * This exception is thrown when a header block can't be decoded, for
+ * example because it refers to table entries that don't exist or because
+ * a string isn't properly Huffman encoded. Because the decoder's state
+ * can't be trusted anymore afterwards the connection must be closed
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class HpackException extends IOException {
+
+	/**
+	 * Creates a new instance with the given message
+	 * @param message The message describing what went wrong
+	 */
+	public HpackException(String message) {
+		super(message);
+	}
+}
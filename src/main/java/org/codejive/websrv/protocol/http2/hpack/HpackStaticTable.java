@@ -0,0 +1,180 @@
+/*
+ * HpackStaticTable.java
+ *
+ * Created on Oct 19, 2026, 4:09:52 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http2.hpack;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The static table of header fields defined by HPACK (RFC 7541,
+ * Appendix A). It never changes so one instance is shared by all the
+ * encoders and decoders, together with the lookup maps the encoders
+ * use to find its entries
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+final class HpackStaticTable {
+
+	/**
+	 * The names and values of the entries, the first entry has index 1
+	 */
+	private static final String[][] ENTRIES = {
+		{ ":authority", "" },
+		{ ":method", "GET" },
+		{ ":method", "POST" },
+		{ ":path", "/" },
+		{ ":path", "/index.html" },
+		{ ":scheme", "http" },
+		{ ":scheme", "https" },
+		{ ":status", "200" },
+		{ ":status", "204" },
+		{ ":status", "206" },
+		{ ":status", "304" },
+		{ ":status", "400" },
+		{ ":status", "404" },
+		{ ":status", "500" },
+		{ "accept-charset", "" },
+		{ "accept-encoding", "gzip, deflate" },
+		{ "accept-language", "" },
+		{ "accept-ranges", "" },
+		{ "accept", "" },
+		{ "access-control-allow-origin", "" },
+		{ "age", "" },
+		{ "allow", "" },
+		{ "authorization", "" },
+		{ "cache-control", "" },
+		{ "content-disposition", "" },
+		{ "content-encoding", "" },
+		{ "content-language", "" },
+		{ "content-length", "" },
+		{ "content-location", "" },
+		{ "content-range", "" },
+		{ "content-type", "" },
+		{ "cookie", "" },
+		{ "date", "" },
+		{ "etag", "" },
+		{ "expect", "" },
+		{ "expires", "" },
+		{ "from", "" },
+		{ "host", "" },
+		{ "if-match", "" },
+		{ "if-modified-since", "" },
+		{ "if-none-match", "" },
+		{ "if-range", "" },
+		{ "if-unmodified-since", "" },
+		{ "last-modified", "" },
+		{ "link", "" },
+		{ "location", "" },
+		{ "max-forwards", "" },
+		{ "proxy-authenticate", "" },
+		{ "proxy-authorization", "" },
+		{ "range", "" },
+		{ "referer", "" },
+		{ "refresh", "" },
+		{ "retry-after", "" },
+		{ "server", "" },
+		{ "set-cookie", "" },
+		{ "strict-transport-security", "" },
+		{ "transfer-encoding", "" },
+		{ "user-agent", "" },
+		{ "vary", "" },
+		{ "via", "" },
+		{ "www-authenticate", "" }
+	};
+
+	/**
+	 * The number of entries in the static table
+	 */
+	static final int SIZE = ENTRIES.length;
+
+	/**
+	 * Maps each name to the index of the first entry having that name
+	 */
+	private static final Map<String, Integer> NAMES = new HashMap<String, Integer>();
+
+	/**
+	 * Maps each combination of name and value to the index of its entry
+	 */
+	private static final Map<String, Integer> FIELDS = new HashMap<String, Integer>();
+
+	static {
+		for (int i = ENTRIES.length; i > 0; i--) {
+			NAMES.put(ENTRIES[i - 1][0], i);
+			FIELDS.put(key(ENTRIES[i - 1][0], ENTRIES[i - 1][1]), i);
+		}
+	}
+
+	/**
+	 * No instances allowed
+	 */
+	private HpackStaticTable() {
+	}
+
+	/**
+	 * Returns the name of the entry with the given index
+	 * @param index The index, between 1 and <code>SIZE</code> inclusive
+	 * @return The name of the entry
+	 */
+	static String getName(int index) {
+		return ENTRIES[index - 1][0];
+	}
+
+	/**
+	 * Returns the value of the entry with the given index
+	 * @param index The index, between 1 and <code>SIZE</code> inclusive
+	 * @return The value of the entry
+	 */
+	static String getValue(int index) {
+		return ENTRIES[index - 1][1];
+	}
+
+	/**
+	 * Returns the index of the entry with the given name and value
+	 * @param name The name of the header field
+	 * @param value The value of the header field
+	 * @return The index of the entry or 0 if it doesn't exist
+	 */
+	static int indexOf(String name, String value) {
+		Integer index = FIELDS.get(key(name, value));
+		return (index != null) ? index.intValue() : 0;
+	}
+
+	/**
+	 * Returns the index of the first entry with the given name
+	 * @param name The name of the header field
+	 * @return The index of the entry or 0 if it doesn't exist
+	 */
+	static int indexOfName(String name) {
+		Integer index = NAMES.get(name);
+		return (index != null) ? index.intValue() : 0;
+	}
+
+	/**
+	 * Returns the key used in the lookup map for the given header field
+	 * @param name The name of the header field
+	 * @param value The value of the header field
+	 * @return The key
+	 */
+	private static String key(String name, String value) {
+		return name + '\n' + value;
+	}
+}
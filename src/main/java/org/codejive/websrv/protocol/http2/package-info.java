@@ -0,0 +1,33 @@
+/*
+ * package-info.java
+ *
+ * Created on Oct 19, 2026, 5:06:40 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Contains the implementation of the HTTP/2 protocol. Connections start
+ * out being handled by the HTTP/1.1 protocol handler, which hands them
+ * over to an Http2Connection when the client switches to HTTP/2, either
+ * by sending the HTTP/2 connection preface right away, by asking for an
+ * upgrade or by selecting it during the TLS handshake. Each stream is
+ * handled by its own thread, responses are sent in the order determined
+ * by the priorities the client assigned to the streams
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+package org.codejive.websrv.protocol.http2;
@@ -0,0 +1,40 @@
+/*
+ * Balancing.java
+ *
+ * Created on Oct 19, 2026, 7:10:52 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.proxy;
+
+/**
+ * The ways a proxy can divide the requests over its upstream servers
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public enum Balancing {
+	/**
+	 * Each request goes to the next server in turn
+	 */
+	ROUND_ROBIN,
+	/**
+	 * Each request goes to the server that is busy with the fewest
+	 * requests at that moment
+	 */
+	LEAST_CONNECTIONS
+}
@@ -0,0 +1,228 @@
+/*
+ * ProxySettings.java
+ *
+ * Created on Oct 19, 2026, 7:16:08 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.proxy;
+
+import org.codejive.websrv.protocol.http.HttpRequestLimits;
+
+/**
+ * Holds the settings for a reverse proxy. They determine how long the
+ * proxy waits for its upstream servers, how many idle connections it keeps
+ * open to each of them and how the requests are divided over them
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class ProxySettings {
+
+	/**
+	 * The time in milliseconds to wait for a connection to an upstream
+	 * server to be established (default = 5000)
+	 */
+	private int connectTimeout;
+
+	/**
+	 * The time in milliseconds to wait for an upstream server to send
+	 * data, 0 means forever (default = 30000)
+	 */
+	private int readTimeout;
+
+	/**
+	 * The maximum number of idle connections kept open to a single
+	 * upstream server (default = 16)
+	 */
+	private int maxIdleConnections;
+
+	/**
+	 * The time in milliseconds an idle connection is kept open, this should
+	 * be shorter than the keep-alive time-out of the upstream servers
+	 * (default = 5000)
+	 */
+	private int idleTimeout;
+
+	/**
+	 * The way requests are divided over the upstream servers
+	 * (default = ROUND_ROBIN)
+	 */
+	private Balancing balancing;
+
+	/**
+	 * Indicates if PUT and DELETE requests may be sent again when an
+	 * upstream server closed a reused connection (default = false)
+	 */
+	private boolean retryPutDelete;
+
+	/**
+	 * The limits the heads of the upstream responses must stay within
+	 */
+	private HttpRequestLimits responseLimits;
+
+	/**
+	 * Creates a new instance using the default settings
+	 */
+	public ProxySettings() {
+		connectTimeout = 5000;
+		readTimeout = 30000;
+		maxIdleConnections = 16;
+		idleTimeout = 5000;
+		balancing = Balancing.ROUND_ROBIN;
+		responseLimits = new HttpRequestLimits();
+		responseLimits.setRequestHeadTimeout(readTimeout);
+		responseLimits.setMinDataRate(0);
+	}
+
+	/**
+	 * Returns the time to wait for a connection to an upstream server
+	 * to be established
+	 * @return The time-out in milliseconds
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Sets the time to wait for a connection to an upstream server to be
+	 * established. When it runs out the next upstream server is tried
+	 * @param connectTimeout The time-out in milliseconds
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		if (connectTimeout <= 0) {
+			throw new IllegalArgumentException("connectTimeout must be larger than 0");
+		}
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Returns the time to wait for an upstream server to send data
+	 * @return The time-out in milliseconds, 0 meaning forever
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Sets the time to wait for an upstream server to send data. This
+	 * applies to each read separately so long responses that keep
+	 * coming in are never cut off
+	 * @param readTimeout The time-out in milliseconds, 0 meaning forever
+	 */
+	public void setReadTimeout(int readTimeout) {
+		if (readTimeout < 0) {
+			throw new IllegalArgumentException("readTimeout must not be negative");
+		}
+		this.readTimeout = readTimeout;
+		responseLimits.setRequestHeadTimeout(readTimeout);
+	}
+
+	/**
+	 * Returns the maximum number of idle connections kept open to a
+	 * single upstream server
+	 * @return The number of connections
+	 */
+	public int getMaxIdleConnections() {
+		return maxIdleConnections;
+	}
+
+	/**
+	 * Sets the maximum number of idle connections kept open to a single
+	 * upstream server. Connections that become idle while the maximum has
+	 * been reached are closed, 0 turns off the reuse of connections
+	 * @param maxIdleConnections The number of connections
+	 */
+	public void setMaxIdleConnections(int maxIdleConnections) {
+		if (maxIdleConnections < 0) {
+			throw new IllegalArgumentException("maxIdleConnections must not be negative");
+		}
+		this.maxIdleConnections = maxIdleConnections;
+	}
+
+	/**
+	 * Returns the time an idle connection is kept open
+	 * @return The time-out in milliseconds
+	 */
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets the time an idle connection is kept open. This should be
+	 * shorter than the keep-alive time-out of the upstream servers,
+	 * otherwise requests might be sent over connections that are
+	 * just being closed by the server
+	 * @param idleTimeout The time-out in milliseconds
+	 */
+	public void setIdleTimeout(int idleTimeout) {
+		if (idleTimeout <= 0) {
+			throw new IllegalArgumentException("idleTimeout must be larger than 0");
+		}
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Returns the way requests are divided over the upstream servers
+	 * @return The balancing method
+	 */
+	public Balancing getBalancing() {
+		return balancing;
+	}
+
+	/**
+	 * Sets the way requests are divided over the upstream servers
+	 * @param balancing The balancing method
+	 */
+	public void setBalancing(Balancing balancing) {
+		if (balancing == null) {
+			throw new IllegalArgumentException("balancing must not be null");
+		}
+		this.balancing = balancing;
+	}
+
+	/**
+	 * Indicates if PUT and DELETE requests may be sent again when an
+	 * upstream server closed a reused connection
+	 * @return True if they may be sent again
+	 */
+	public boolean isRetryPutDelete() {
+		return retryPutDelete;
+	}
+
+	/**
+	 * Sets if PUT and DELETE requests may be sent again when an upstream
+	 * server closed a reused connection before it sent any part of its
+	 * response. They are idempotent by definition but not every
+	 * application treats them that way, so this is off by default.
+	 * GET, HEAD, OPTIONS and TRACE requests are always sent again,
+	 * all other requests never are
+	 * @param retryPutDelete True if they may be sent again
+	 */
+	public void setRetryPutDelete(boolean retryPutDelete) {
+		this.retryPutDelete = retryPutDelete;
+	}
+
+	/**
+	 * Returns the limits the heads of the upstream responses must stay
+	 * within. Their head time-out follows the read time-out
+	 * @return The response limits
+	 */
+	public HttpRequestLimits getResponseLimits() {
+		return responseLimits;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Upstream.java
+ *
+ * Created on Oct 19, 2026, 7:27:35 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.protocol.http.HttpClientConnection;
+
+/**
+ * An upstream server that a proxy forwards requests to. It keeps a pool
+ * of idle keep-alive connections to the server, the connection that was
+ * used last is handed out first because it's the one least likely to have
+ * been closed by the server in the mean time
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class Upstream {
+
+	/**
+	 * The host name of the server
+	 */
+	private final String host;
+
+	/**
+	 * The port of the server
+	 */
+	private final int port;
+
+	/**
+	 * The idle connections, the most recently used one at the front
+	 */
+	private final ArrayDeque<HttpClientConnection> idle;
+
+	/**
+	 * The number of connections busy with a request
+	 */
+	private final AtomicInteger busyCount;
+
+	/**
+	 * The number of connections opened so far
+	 */
+	private final AtomicLong openedCount;
+
+	private static final Logger logger = Logger.getLogger(Upstream.class.getName());
+
+	/**
+	 * Creates a new upstream server
+	 * @param host The host name of the server
+	 * @param port The port of the server
+	 */
+	public Upstream(String host, int port) {
+		this.host = host;
+		this.port = port;
+		idle = new ArrayDeque<HttpClientConnection>();
+		busyCount = new AtomicInteger();
+		openedCount = new AtomicLong();
+	}
+
+	/**
+	 * Returns the host name of the server
+	 * @return The host name
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * Returns the port of the server
+	 * @return The port
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the number of connections that are busy with a request
+	 * @return The number of connections
+	 */
+	public int getBusyCount() {
+		return busyCount.get();
+	}
+
+	/**
+	 * Returns the number of idle connections in the pool
+	 * @return The number of connections
+	 */
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * Returns the number of connections that were opened to the server
+	 * so far. Compared to the number of requests this shows how well the
+	 * connections are being reused
+	 * @return The number of connections
+	 */
+	public long getOpenedCount() {
+		return openedCount.get();
+	}
+
+	/**
+	 * Returns a connection to the server, either an idle one from the pool
+	 * or a newly opened one. The connection must be given back by calling
+	 * either <code>release()</code> or <code>discard()</code>
+	 * @param settings The settings of the proxy
+	 * @return A connection to the server
+	 * @throws java.io.IOException If no connection could be opened
+	 */
+	public HttpClientConnection acquire(ProxySettings settings) throws IOException {
+		long now = System.currentTimeMillis();
+		HttpClientConnection conn;
+		for (;;) {
+			synchronized (this) {
+				conn = idle.pollFirst();
+			}
+			if (conn == null) {
+				break;
+			}
+			if (now - conn.getLastUsed() < settings.getIdleTimeout() && !conn.getSocket().isClosed()) {
+				busyCount.incrementAndGet();
+				return conn;
+			}
+			conn.close();
+		}
+
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(host, port), settings.getConnectTimeout());
+			socket.setSoTimeout(settings.getReadTimeout());
+			conn = new HttpClientConnection(socket, settings.getResponseLimits());
+		} catch (IOException ex) {
+			try {
+				socket.close();
+			} catch (IOException ex2) {
+				// Ignore
+			}
+			throw ex;
+		}
+		openedCount.incrementAndGet();
+		busyCount.incrementAndGet();
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Opened connection to upstream " + this);
+		}
+		return conn;
+	}
+
+	/**
+	 * Gives back a connection that was obtained with <code>acquire()</code>.
+	 * If it can be reused and the pool isn't full it's kept for a next
+	 * request, otherwise it's closed
+	 * @param conn The connection to give back
+	 * @param settings The settings of the proxy
+	 */
+	public void release(HttpClientConnection conn, ProxySettings settings) {
+		busyCount.decrementAndGet();
+		HttpClientConnection expired = null;
+		boolean kept = false;
+		if (conn.isReusable()) {
+			synchronized (this) {
+				// The connections at the back have been idle the longest,
+				// we get rid of them here because acquire() never sees them
+				HttpClientConnection last = idle.peekLast();
+				if (last != null && conn.getLastUsed() - last.getLastUsed() >= settings.getIdleTimeout()) {
+					expired = idle.pollLast();
+				}
+				if (idle.size() < settings.getMaxIdleConnections()) {
+					idle.addFirst(conn);
+					kept = true;
+				}
+			}
+		}
+		if (expired != null) {
+			expired.close();
+		}
+		if (!kept) {
+			conn.close();
+		}
+	}
+
+	/**
+	 * Gives back a connection that was obtained with <code>acquire()</code>
+	 * and that can't be used anymore. The connection gets closed
+	 * @param conn The connection to give back
+	 */
+	public void discard(HttpClientConnection conn) {
+		busyCount.decrementAndGet();
+		conn.close();
+	}
+
+	/**
+	 * Closes all idle connections
+	 */
+	public void close() {
+		HttpClientConnection conn;
+		for (;;) {
+			synchronized (this) {
+				conn = idle.pollFirst();
+			}
+			if (conn == null) {
+				break;
+			}
+			conn.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return host + ":" + port;
+	}
+}
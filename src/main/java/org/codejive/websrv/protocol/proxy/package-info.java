@@ -0,0 +1,32 @@
+/*
+ * package-info.java
+ *
+ * Created on Oct 19, 2026, 7:09:41 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * Contains the parts of the reverse proxy. A ProxyServlet forwards the
+ * requests it gets to one of its Upstream servers, which each keep a pool
+ * of open keep-alive connections so requests don't pay for setting up a
+ * new connection. Request and response bodies are streamed through as
+ * they arrive, they're never kept in memory as a whole
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+package org.codejive.websrv.protocol.proxy;
@@ -0,0 +1,407 @@
+/*
+ * PerMessageDeflate.java
+ *
+ * Created on Oct 19, 2026, 5:36:52 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.websocket;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Implements the "permessage-deflate" extension (RFC 7692), which lets
+ * both endpoints compress the data of each message. The compressed data
+ * of a message is a raw deflate stream that gets flushed at the end of
+ * the message, after which the last four bytes (00 00 ff ff) are left
+ * out. Flushing a Deflater that way was only added in Java 7 so it's
+ * called using reflection, on older JVMs incoming messages are still
+ * decompressed but outgoing messages are sent uncompressed
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class PerMessageDeflate {
+
+	/**
+	 * The name of the extension
+	 */
+	static final String NAME = "permessage-deflate";
+
+	/**
+	 * The method <code>Deflater.deflate(byte[], int, int, int)</code> or null
+	 */
+	private static final Method DEFLATE;
+
+	/**
+	 * The value of <code>Deflater.SYNC_FLUSH</code>
+	 */
+	private static final int SYNC_FLUSH = 2;
+
+	/**
+	 * The bytes that end every flushed block, they're not sent
+	 */
+	private static final byte[] TAIL = { 0, 0, (byte) 0xff, (byte) 0xff };
+
+	/**
+	 * The size of the output buffers when they're first needed
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	/**
+	 * Indicates if the compression context gets reset after each message
+	 */
+	private final boolean noContextTakeover;
+
+	/**
+	 * The extension as it will be mentioned in the handshake response
+	 */
+	private final String responseHeader;
+
+	/**
+	 * The maximum size of a decompressed message
+	 */
+	private int maxMessageSize;
+
+	/**
+	 * Used to decompress incoming messages
+	 */
+	private Inflater inflater;
+
+	/**
+	 * Used to compress outgoing messages
+	 */
+	private Deflater deflater;
+
+	/**
+	 * The buffer holding the last decompressed message
+	 */
+	private byte[] inflated;
+
+	/**
+	 * The buffer holding the last compressed message. It's separate from
+	 * the other one because messages can be sent while one is being handled
+	 */
+	private byte[] deflated;
+
+	/**
+	 * Class private logger
+	 */
+	private static final Logger logger = Logger.getLogger(PerMessageDeflate.class.getName());
+
+	static {
+		Method deflate;
+		try {
+			deflate = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+		} catch (NoSuchMethodException ex) {
+			logger.fine("Outgoing WebSocket messages can't be compressed by this JVM");
+			deflate = null;
+		}
+		DEFLATE = deflate;
+	}
+
+	/**
+	 * Creates a new instance for a connection
+	 * @param noContextTakeover Indicates if the compression context gets
+	 * reset after each message
+	 * @param responseHeader The extension as it will be mentioned in the
+	 * handshake response
+	 */
+	private PerMessageDeflate(boolean noContextTakeover, String responseHeader) {
+		this.noContextTakeover = noContextTakeover;
+		this.responseHeader = responseHeader;
+	}
+
+	/**
+	 * Looks for an offer of this extension that we can accept in the
+	 * client's "Sec-WebSocket-Extensions" headers. We only support
+	 * the default window size for the messages we send, the client can
+	 * use any size it likes
+	 * @param headers The values of the headers or null
+	 * @return An instance for the accepted offer or null if there was none
+	 */
+	static PerMessageDeflate negotiate(List<String> headers) {
+		if (headers == null) {
+			return null;
+		}
+		for (String header : headers) {
+			for (String offer : header.split(",")) {
+				PerMessageDeflate result = accept(offer);
+				if (result != null) {
+					return result;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Determines if we can accept a single extension offer
+	 * @param offer The offer, its name followed by its parameters
+	 * @return An instance for the offer or null if it can't be accepted
+	 */
+	private static PerMessageDeflate accept(String offer) {
+		String[] parts = offer.split(";");
+		if (!NAME.equalsIgnoreCase(parts[0].trim())) {
+			return null;
+		}
+		StringBuilder response = new StringBuilder(NAME);
+		boolean noContextTakeover = false;
+		HashSet<String> seen = new HashSet<String>();
+		for (int i = 1; i < parts.length; i++) {
+			String param = parts[i].trim();
+			String value = null;
+			int p = param.indexOf('=');
+			if (p >= 0) {
+				value = param.substring(p + 1).trim();
+				param = param.substring(0, p).trim();
+				if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+					value = value.substring(1, value.length() - 1);
+				}
+			}
+			param = param.toLowerCase();
+			if (!seen.add(param)) {
+				return null;
+			}
+			if ("server_no_context_takeover".equals(param) && value == null) {
+				noContextTakeover = true;
+				response.append("; server_no_context_takeover");
+			} else if ("client_no_context_takeover".equals(param) && value == null) {
+				// Fine by us, it makes no difference for decompression
+			} else if ("server_max_window_bits".equals(param) && "15".equals(value)) {
+				// Deflater always uses the largest window
+				response.append("; server_max_window_bits=15");
+			} else if ("client_max_window_bits".equals(param) && (value == null || isWindowBits(value))) {
+				// Inflater can handle any window size
+			} else {
+				return null;
+			}
+		}
+		return new PerMessageDeflate(noContextTakeover, response.toString());
+	}
+
+	/**
+	 * Determines if the value is a valid window size
+	 * @param value The value to check
+	 * @return <code>true</code> if it's a number from 8 to 15
+	 */
+	private static boolean isWindowBits(String value) {
+		try {
+			int bits = Integer.parseInt(value);
+			return bits >= 8 && bits <= 15;
+		} catch (NumberFormatException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the extension as it should be mentioned in the handshake
+	 * response
+	 * @return The value for the "Sec-WebSocket-Extensions" header
+	 */
+	String getResponseHeader() {
+		return responseHeader;
+	}
+
+	/**
+	 * Sets the maximum size of a decompressed message
+	 * @param maxMessageSize The size in bytes
+	 */
+	void setMaxMessageSize(int maxMessageSize) {
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	/**
+	 * Indicates if outgoing messages can be compressed
+	 * @return <code>true</code> if the JVM supports it
+	 */
+	boolean canDeflate() {
+		return DEFLATE != null;
+	}
+
+	/**
+	 * Returns the buffer holding the result of the last call to
+	 * <code>inflate()</code>
+	 * @return The buffer
+	 */
+	byte[] getInflated() {
+		return inflated;
+	}
+
+	/**
+	 * Returns the buffer holding the result of the last call to
+	 * <code>deflate()</code>
+	 * @return The buffer
+	 */
+	byte[] getDeflated() {
+		return deflated;
+	}
+
+	/**
+	 * Decompresses the data of an incoming message
+	 * @param data The buffer holding the compressed data
+	 * @param off The offset of the data
+	 * @param len The length of the data
+	 * @return The length of the decompressed data, which can be found at
+	 * the start of the buffer returned by <code>getInflated()</code>
+	 * @throws org.codejive.websrv.protocol.websocket.WebSocketException
+	 * If the data is corrupt or if the message would be too large
+	 */
+	int inflate(byte[] data, int off, int len) throws WebSocketException {
+		if (inflater == null) {
+			inflater = new Inflater(true);
+		}
+		try {
+			inflater.setInput(data, off, len);
+			int count = inflateInput(0);
+			inflater.setInput(TAIL);
+			count = inflateInput(count);
+			if (inflater.finished()) {
+				// The client ended the deflate stream, the next message
+				// will start a new one
+				inflater.reset();
+			}
+			return count;
+		} catch (DataFormatException ex) {
+			throw new WebSocketException(WebSocket.CLOSE_INVALID_DATA, "Invalid compressed data");
+		}
+	}
+
+	/**
+	 * Decompresses all the input the inflater currently has
+	 * @param count The number of bytes already in the output buffer
+	 * @return The number of bytes in the output buffer afterwards
+	 * @throws java.util.zip.DataFormatException If the data is corrupt
+	 * @throws org.codejive.websrv.protocol.websocket.WebSocketException
+	 * If the message would be too large
+	 */
+	private int inflateInput(int count) throws DataFormatException, WebSocketException {
+		while (true) {
+			if (inflated == null || count == inflated.length) {
+				if (count > maxMessageSize) {
+					throw new WebSocketException(WebSocket.CLOSE_TOO_LARGE, "Message too large");
+				}
+				inflated = grow(inflated, count, maxMessageSize + 1);
+			}
+			int n = inflater.inflate(inflated, count, inflated.length - count);
+			count += n;
+			if (n == 0 && (inflater.needsInput() || inflater.finished() || inflater.needsDictionary())) {
+				break;
+			}
+		}
+		if (count > maxMessageSize) {
+			throw new WebSocketException(WebSocket.CLOSE_TOO_LARGE, "Message too large");
+		}
+		return count;
+	}
+
+	/**
+	 * Compresses the data of an outgoing message. Must only be called
+	 * when <code>canDeflate()</code> returns <code>true</code>
+	 * @param data The buffer holding the data
+	 * @param off The offset of the data
+	 * @param len The length of the data
+	 * @return The length of the compressed data, which can be found at
+	 * the start of the buffer returned by <code>getDeflated()</code>
+	 */
+	int deflate(byte[] data, int off, int len) {
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+		deflater.setInput(data, off, len);
+		int count = 0;
+		while (true) {
+			if (deflated == null || count == deflated.length) {
+				deflated = grow(deflated, count, Integer.MAX_VALUE);
+			}
+			int room = deflated.length - count;
+			int n;
+			try {
+				n = (Integer) DEFLATE.invoke(deflater, deflated, count, room, SYNC_FLUSH);
+			} catch (Exception ex) {
+				// Can't happen, the method exists and its arguments are valid
+				throw new IllegalStateException(ex);
+			}
+			count += n;
+			if (n < room) {
+				break;
+			}
+		}
+		if (count >= TAIL.length && deflated[count - 4] == 0 && deflated[count - 3] == 0
+				&& deflated[count - 2] == (byte) 0xff && deflated[count - 1] == (byte) 0xff) {
+			count -= TAIL.length;
+		}
+		if (noContextTakeover) {
+			deflater.reset();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a larger copy of a buffer
+	 * @param buffer The buffer or null
+	 * @param count The number of bytes in use
+	 * @param max The largest size needed
+	 * @return The new buffer
+	 */
+	private static byte[] grow(byte[] buffer, int count, int max) {
+		int size = (buffer == null) ? INITIAL_BUFFER_SIZE : (int) Math.min((long) buffer.length * 2, max);
+		byte[] bigger = new byte[Math.max(size, count + 1)];
+		if (count > 0) {
+			System.arraycopy(buffer, 0, bigger, 0, count);
+		}
+		return bigger;
+	}
+
+	/**
+	 * Lets go of the buffer for decompressed messages while the connection
+	 * is idle, the compression contexts have to be kept
+	 */
+	void releaseInflated() {
+		inflated = null;
+	}
+
+	/**
+	 * Lets go of the buffer for compressed messages while the connection
+	 * is idle, the compression contexts have to be kept
+	 */
+	void releaseDeflated() {
+		deflated = null;
+	}
+
+	/**
+	 * Frees all resources, the instance can't be used anymore afterwards
+	 */
+	void end() {
+		if (inflater != null) {
+			inflater.end();
+			inflater = null;
+		}
+		if (deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+		inflated = null;
+		deflated = null;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * WebSocket.java
+ *
+ * Created on Oct 19, 2026, 5:29:48 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.websocket;
+
+import java.io.IOException;
+import org.codejive.websrv.protocol.http.HttpRequest;
+
+/**
+ * The server side of a WebSocket connection as seen by a WebSocketHandler.
+ * Messages can be sent at any time and from any thread, even while the
+ * connection is idle and not being served by any thread at all
+ * @see org.codejive.websrv.protocol.websocket.WebSocketHandler
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public interface WebSocket {
+
+	/**
+	 * Normal closure
+	 */
+	public static final int CLOSE_NORMAL = 1000;
+
+	/**
+	 * The endpoint is going away, because the server is shutting down or
+	 * because the client didn't respond anymore
+	 */
+	public static final int CLOSE_GOING_AWAY = 1001;
+
+	/**
+	 * The other endpoint violated the protocol
+	 */
+	public static final int CLOSE_PROTOCOL_ERROR = 1002;
+
+	/**
+	 * A type of message was received that can't be handled
+	 */
+	public static final int CLOSE_UNSUPPORTED_DATA = 1003;
+
+	/**
+	 * The close frame didn't contain a status code, never sent
+	 */
+	public static final int CLOSE_NO_STATUS = 1005;
+
+	/**
+	 * The connection was closed without a close frame, never sent
+	 */
+	public static final int CLOSE_ABNORMAL = 1006;
+
+	/**
+	 * A message contained data that doesn't match its type, for example
+	 * a text message that isn't valid UTF-8
+	 */
+	public static final int CLOSE_INVALID_DATA = 1007;
+
+	/**
+	 * A message was received that violates the endpoint's policy
+	 */
+	public static final int CLOSE_POLICY_VIOLATION = 1008;
+
+	/**
+	 * A message was received that is too large
+	 */
+	public static final int CLOSE_TOO_LARGE = 1009;
+
+	/**
+	 * The server encountered an unexpected condition
+	 */
+	public static final int CLOSE_INTERNAL_ERROR = 1011;
+
+	/**
+	 * Returns the request that opened the connection
+	 * @return The request
+	 */
+	public HttpRequest getRequest();
+
+	/**
+	 * Determines if messages can still be sent
+	 * @return <code>true</code> if the connection hasn't been closed yet
+	 */
+	public boolean isOpen();
+
+	/**
+	 * Sends a text message to the client
+	 * @param text The text to send
+	 * @throws java.io.IOException If the connection is closed or if
+	 * the message could not be sent
+	 */
+	public void sendText(String text) throws IOException;
+
+	/**
+	 * Sends a binary message to the client
+	 * @param data The buffer holding the data to send
+	 * @param off The offset of the data in the buffer
+	 * @param len The number of bytes to send
+	 * @throws java.io.IOException If the connection is closed or if
+	 * the message could not be sent
+	 */
+	public void sendBinary(byte[] data, int off, int len) throws IOException;
+
+	/**
+	 * Sends a ping to the client, which will answer with a pong
+	 * @param data The application data to send along, at most 125 bytes
+	 * @throws java.io.IOException If the connection is closed or if
+	 * the ping could not be sent
+	 */
+	public void sendPing(byte[] data) throws IOException;
+
+	/**
+	 * Starts closing the connection. No more messages can be sent after
+	 * this, the connection gets closed once the client confirms it
+	 * @param code The status code, one of the <code>CLOSE_</code> codes
+	 * except for the ones that must never be sent, or an application
+	 * defined code between 3000 and 4999
+	 * @param reason The reason for closing the connection or null, at
+	 * most 123 bytes when encoded as UTF-8
+	 * @throws java.io.IOException If the close frame could not be sent
+	 */
+	public void close(int code, String reason) throws IOException;
+}
@@ -0,0 +1,937 @@
+/*
+ * WebSocketConnection.java
+ *
+ * Created on Oct 19, 2026, 5:52:34 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.UpgradedConnection;
+
+/**
+ * This class implements the WebSocket protocol (RFC 6455) for a single
+ * connection. The thread that calls <code>serve()</code> reads incoming
+ * frames, puts fragmented messages back together and passes complete
+ * messages on to the handler. When the connection is parkable it returns
+ * as soon as the client has nothing more to say, so an open but quiet
+ * connection doesn't hold on to a thread. Messages sent while it's parked
+ * are queued and the connection asks to be served again, which sends
+ * them out. The client gets pinged when the connection has been idle for
+ * too long and the connection gets closed if it doesn't answer in time
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class WebSocketConnection implements WebSocket, UpgradedConnection {
+
+	/**
+	 * The opcodes of the different frame types
+	 */
+	private static final int OP_CONTINUATION = 0x0;
+	private static final int OP_TEXT = 0x1;
+	private static final int OP_BINARY = 0x2;
+	private static final int OP_CLOSE = 0x8;
+	private static final int OP_PING = 0x9;
+	private static final int OP_PONG = 0xa;
+
+	/**
+	 * The flags in the first byte of a frame
+	 */
+	private static final int FLAG_FIN = 0x80;
+	private static final int FLAG_RSV1 = 0x40;
+	private static final int FLAG_RSV23 = 0x30;
+
+	/**
+	 * The flag in the second byte of a frame indicating the payload is masked
+	 */
+	private static final int FLAG_MASK = 0x80;
+
+	/**
+	 * The largest payload a control frame can have
+	 */
+	private static final int MAX_CONTROL_PAYLOAD = 125;
+
+	/**
+	 * The size of the message buffer when it's first needed, larger
+	 * buffers are let go of while the connection is parked
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+
+	/**
+	 * Frames smaller than this are written to the socket in one go
+	 * together with their head
+	 */
+	private static final int SMALL_FRAME_SIZE = 1024;
+
+	/**
+	 * The maximum number of bytes that can be queued while the
+	 * connection is parked
+	 */
+	private static final int MAX_QUEUED = 1024 * 1024;
+
+	/**
+	 * The time in milliseconds we wait for data when we get served
+	 * because the client seemed to have sent something
+	 */
+	private static final int PROBE_TIMEOUT = 100;
+
+	/**
+	 * The charset used for text messages and close reasons
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * An empty payload
+	 */
+	private static final byte[] NO_DATA = new byte[0];
+
+	/**
+	 * The socket used for client-server communication
+	 */
+	private final Socket socket;
+
+	/**
+	 * The stream to read incoming frames from
+	 */
+	private final InputStream input;
+
+	/**
+	 * The stream to write outgoing frames to
+	 */
+	private final OutputStream output;
+
+	/**
+	 * Makes the connection get served again when it's parked or null
+	 */
+	private final Runnable resumeTrigger;
+
+	/**
+	 * The request that opened the connection
+	 */
+	private final HttpRequest request;
+
+	/**
+	 * The handler receiving the messages
+	 */
+	private final WebSocketHandler handler;
+
+	/**
+	 * The settings for the connection
+	 */
+	private final WebSocketSettings settings;
+
+	/**
+	 * The compression extension or null if it isn't used
+	 */
+	private final PerMessageDeflate deflate;
+
+	/**
+	 * Holds the parts of a frame head that follow the first byte
+	 */
+	private final byte[] head;
+
+	/**
+	 * Holds the payload of the last control frame
+	 */
+	private final byte[] control;
+
+	/**
+	 * A view on the control frame buffer used for unmasking
+	 */
+	private final ByteBuffer controlView;
+
+	/**
+	 * Holds the data of the message being received
+	 */
+	private byte[] data;
+
+	/**
+	 * A view on the message buffer used for unmasking
+	 */
+	private ByteBuffer dataView;
+
+	/**
+	 * The number of bytes of the current message received so far
+	 */
+	private int messageLength;
+
+	/**
+	 * The opcode of the message being received or 0 if we're between
+	 * messages
+	 */
+	private int messageOpcode;
+
+	/**
+	 * Indicates if the message being received is compressed
+	 */
+	private boolean messageCompressed;
+
+	/**
+	 * Used to decode text messages, it reports invalid UTF-8
+	 */
+	private final CharsetDecoder decoder;
+
+	/**
+	 * Indicates if the handler has been told about the connection
+	 */
+	private boolean opened;
+
+	/**
+	 * Indicates if the client was pinged because the connection was idle
+	 * and hasn't sent anything since
+	 */
+	private boolean pingSent;
+
+	/**
+	 * The time the client last sent something or was last pinged, the
+	 * next ping is due one ping interval later
+	 */
+	private volatile long idleSince;
+
+	/**
+	 * Holds the head of the frame being sent
+	 */
+	private final byte[] sendHead;
+
+	/**
+	 * Used to write small frames together with their head
+	 */
+	private byte[] sendBuffer;
+
+	/**
+	 * The frames sent while the connection was parked
+	 */
+	private ByteArrayOutputStream queue;
+
+	/**
+	 * Indicates if the connection is parked
+	 */
+	private boolean parked;
+
+	/**
+	 * Indicates if we asked to be served again because frames got queued
+	 */
+	private boolean resumeRequested;
+
+	/**
+	 * Indicates if we're being served again because the connection was
+	 * idle for too long
+	 */
+	private boolean timedOut;
+
+	/**
+	 * Indicates if we sent a close frame, nothing else can be sent after it
+	 */
+	private boolean closeSent;
+
+	/**
+	 * Indicates if the connection is done and the handler has been told
+	 */
+	private boolean closed;
+
+	/**
+	 * Class private logger
+	 */
+	private static final Logger logger = Logger.getLogger(WebSocketConnection.class.getName());
+
+	/**
+	 * Creates a new connection
+	 * @param socket The socket used for client-server communication
+	 * @param input The stream to read from, it might already hold data
+	 * the client sent right after the handshake
+	 * @param resumeTrigger Makes the connection get served again when
+	 * it's parked or null if it's never parked
+	 * @param request The request that opened the connection
+	 * @param handler The handler that will receive the messages
+	 * @param settings The settings for the connection
+	 * @param deflate The compression extension or null if it isn't used
+	 * @throws java.io.IOException If the socket's output stream could
+	 * not be obtained
+	 */
+	WebSocketConnection(Socket socket, InputStream input, Runnable resumeTrigger, HttpRequest request, WebSocketHandler handler, WebSocketSettings settings, PerMessageDeflate deflate) throws IOException {
+		this.socket = socket;
+		this.input = input;
+		this.output = socket.getOutputStream();
+		this.resumeTrigger = resumeTrigger;
+		this.request = request;
+		this.handler = handler;
+		this.settings = settings;
+		this.deflate = deflate;
+		if (deflate != null) {
+			deflate.setMaxMessageSize(settings.getMaxMessageSize());
+		}
+		head = new byte[8];
+		control = new byte[MAX_CONTROL_PAYLOAD];
+		controlView = ByteBuffer.wrap(control);
+		decoder = UTF8.newDecoder();
+		sendHead = new byte[10];
+	}
+
+	public HttpRequest getRequest() {
+		return request;
+	}
+
+	public synchronized boolean isOpen() {
+		return !closeSent && !closed;
+	}
+
+	public void sendText(String text) throws IOException {
+		byte[] bytes = text.getBytes(UTF8);
+		sendMessage(OP_TEXT, bytes, 0, bytes.length);
+	}
+
+	public void sendBinary(byte[] data, int off, int len) throws IOException {
+		sendMessage(OP_BINARY, data, off, len);
+	}
+
+	public void sendPing(byte[] data) throws IOException {
+		if (data == null) {
+			data = NO_DATA;
+		}
+		if (data.length > MAX_CONTROL_PAYLOAD) {
+			throw new IllegalArgumentException("Ping data can't be larger than " + MAX_CONTROL_PAYLOAD + " bytes");
+		}
+		synchronized (this) {
+			checkOpen();
+			writeFrame(FLAG_FIN | OP_PING, data, 0, data.length);
+		}
+	}
+
+	public void close(int code, String reason) throws IOException {
+		if (!isValidCloseCode(code)) {
+			throw new IllegalArgumentException("Invalid close code: " + code);
+		}
+		byte[] bytes = (reason != null) ? reason.getBytes(UTF8) : NO_DATA;
+		if (bytes.length > MAX_CONTROL_PAYLOAD - 2) {
+			throw new IllegalArgumentException("Close reason can't be larger than " + (MAX_CONTROL_PAYLOAD - 2) + " bytes");
+		}
+		synchronized (this) {
+			if (!closeSent && !closed) {
+				sendClose(code, bytes);
+			}
+		}
+	}
+
+	public int getIdleTimeout() {
+		int interval = settings.getPingInterval();
+		if (interval == 0) {
+			return 0;
+		}
+		// Messages we send make us get parked over and over again,
+		// that shouldn't postpone the next ping
+		long remaining = idleSince + interval - System.currentTimeMillis();
+		return (int) Math.max(1, Math.min(remaining, interval));
+	}
+
+	public synchronized boolean idleTimeoutReached() {
+		// We get served again to ping the client or to give up on it
+		timedOut = true;
+		return true;
+	}
+
+	/**
+	 * Starts the closing handshake with status 1001 (going away), the
+	 * connection ends once the client confirms it
+	 */
+	public void drain() {
+		try {
+			close(CLOSE_GOING_AWAY, "Server shutting down");
+		} catch (IOException ex) {
+			logger.fine("Could not send close frame: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Reads and handles incoming frames until the connection gets closed.
+	 * When the connection is parkable this method will return as soon
+	 * as the client hasn't sent anything more, leaving the connection
+	 * open, it can be called again to continue where it left off
+	 * @param parkable Indicates if the connection can be parked
+	 * @return <code>true</code> if the connection was left open
+	 */
+	public boolean serve(boolean parkable) {
+		try {
+			// Find out why we're being served
+			boolean selected;
+			boolean timeout;
+			synchronized (this) {
+				selected = opened && !resumeRequested && !timedOut;
+				timeout = timedOut;
+				parked = false;
+				resumeRequested = false;
+				timedOut = false;
+				flushQueue();
+			}
+
+			if (!opened) {
+				opened = true;
+				idleSince = System.currentTimeMillis();
+				try {
+					handler.onOpen(this);
+				} catch (Exception ex) {
+					throw handlerFailed(ex);
+				}
+			}
+
+			if (timeout && !handleIdleTimeout()) {
+				return false;
+			}
+
+			while (!closed) {
+				int b;
+				if (parkable && input.available() == 0) {
+					if (!selected) {
+						park();
+						return true;
+					}
+					// The client seemed to have sent something, but with
+					// TLS it could be just part of a record so we don't
+					// wait for long
+					selected = false;
+					socket.setSoTimeout(PROBE_TIMEOUT);
+					try {
+						b = input.read();
+					} catch (SocketTimeoutException ex) {
+						continue;
+					}
+				} else {
+					socket.setSoTimeout(settings.getPingInterval());
+					try {
+						b = input.read();
+					} catch (SocketTimeoutException ex) {
+						if (!handleIdleTimeout()) {
+							return false;
+						}
+						continue;
+					}
+				}
+				if (b < 0) {
+					throw new EOFException();
+				}
+				pingSent = false;
+				idleSince = System.currentTimeMillis();
+				socket.setSoTimeout(settings.getPingInterval());
+				readFrame(b);
+			}
+		} catch (WebSocketException ex) {
+			logger.fine("WebSocket connection error: " + ex.getMessage());
+			fail(ex.getCloseCode(), ex.getMessage());
+		} catch (EOFException ex) {
+			logger.fine("End of input was reached");
+			finish(CLOSE_ABNORMAL, "");
+		} catch (IOException ex) {
+			logger.fine("WebSocket connection failed: " + ex.getMessage());
+			finish(CLOSE_ABNORMAL, "");
+		}
+		return false;
+	}
+
+	/**
+	 * Parks the connection, from now on any frames that get sent will
+	 * be queued. Large buffers are let go of while we wait
+	 */
+	private synchronized void park() {
+		parked = true;
+		if (messageOpcode == 0) {
+			if (data != null && data.length > INITIAL_BUFFER_SIZE) {
+				data = null;
+				dataView = null;
+			}
+			if (deflate != null) {
+				deflate.releaseInflated();
+			}
+		}
+		if (deflate != null) {
+			deflate.releaseDeflated();
+		}
+		sendBuffer = null;
+	}
+
+	/**
+	 * Handles a connection that has been idle for too long. The first
+	 * time the client gets pinged, if it still hasn't sent anything the
+	 * next time the connection gets closed
+	 * @return <code>true</code> if the connection is still open
+	 * @throws java.io.IOException If the ping could not be sent
+	 */
+	private boolean handleIdleTimeout() throws IOException {
+		synchronized (this) {
+			if (!pingSent && !closeSent) {
+				logger.fine("Pinging idle WebSocket client");
+				writeFrame(FLAG_FIN | OP_PING, NO_DATA, 0, 0);
+				pingSent = true;
+				idleSince = System.currentTimeMillis();
+				return true;
+			}
+		}
+		logger.fine("WebSocket client didn't respond in time");
+		fail(CLOSE_GOING_AWAY, "Idle timeout");
+		return false;
+	}
+
+	/**
+	 * Reads a single frame and handles it
+	 * @param b0 The first byte of the frame, which was already read
+	 * @throws java.io.IOException If the frame could not be read or if
+	 * it violates the protocol
+	 */
+	private void readFrame(int b0) throws IOException {
+		readFully(head, 0, 1);
+		int b1 = head[0] & 0xff;
+		int opcode = b0 & 0x0f;
+		boolean fin = (b0 & FLAG_FIN) != 0;
+		boolean rsv1 = (b0 & FLAG_RSV1) != 0;
+		if ((b0 & FLAG_RSV23) != 0) {
+			throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Reserved bits set");
+		}
+		if ((b1 & FLAG_MASK) == 0) {
+			throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Frame not masked");
+		}
+		long length = b1 & 0x7f;
+		if (length == 126) {
+			readFully(head, 0, 2);
+			length = ((head[0] & 0xff) << 8) | (head[1] & 0xff);
+		} else if (length == 127) {
+			readFully(head, 0, 8);
+			length = 0;
+			for (int i = 0; i < 8; i++) {
+				length = (length << 8) | (head[i] & 0xff);
+			}
+			if (length < 0) {
+				throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Invalid frame length");
+			}
+		}
+		readFully(head, 0, 4);
+		int mask = ((head[0] & 0xff) << 24) | ((head[1] & 0xff) << 16) | ((head[2] & 0xff) << 8) | (head[3] & 0xff);
+
+		if ((opcode & 0x08) != 0) {
+			// Control frames can be sent in between the frames of a message
+			if (!fin || rsv1 || length > MAX_CONTROL_PAYLOAD) {
+				throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Invalid control frame");
+			}
+			int len = (int) length;
+			readFully(control, 0, len);
+			unmask(control, controlView, 0, len, mask);
+			handleControlFrame(opcode, len);
+			return;
+		}
+
+		if (opcode == OP_CONTINUATION) {
+			if (messageOpcode == 0) {
+				throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Unexpected continuation frame");
+			}
+			if (rsv1) {
+				throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Reserved bits set");
+			}
+		} else if (opcode == OP_TEXT || opcode == OP_BINARY) {
+			if (messageOpcode != 0) {
+				throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Expected continuation frame");
+			}
+			if (rsv1 && deflate == null) {
+				throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Reserved bits set");
+			}
+			messageOpcode = opcode;
+			messageCompressed = rsv1;
+			messageLength = 0;
+		} else {
+			throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Unknown opcode " + opcode);
+		}
+		if (messageLength + length > settings.getMaxMessageSize()) {
+			throw new WebSocketException(CLOSE_TOO_LARGE, "Message too large");
+		}
+		int len = (int) length;
+		ensureCapacity(messageLength + len);
+		readFully(data, messageLength, len);
+		unmask(data, dataView, messageLength, len, mask);
+		messageLength += len;
+		if (fin) {
+			int type = messageOpcode;
+			messageOpcode = 0;
+			handleMessage(type);
+		}
+	}
+
+	/**
+	 * Passes a complete message on to the handler
+	 * @param type The opcode of the message
+	 * @throws java.io.IOException If the message is invalid or if the
+	 * handler failed
+	 */
+	private void handleMessage(int type) throws IOException {
+		byte[] buf = data;
+		int len = messageLength;
+		messageLength = 0;
+		if (!isOpen()) {
+			// We're waiting for the client to confirm the close
+			return;
+		}
+		if (messageCompressed) {
+			len = deflate.inflate(buf, 0, len);
+			buf = deflate.getInflated();
+		}
+		if (type == OP_TEXT) {
+			String text = decode(buf, 0, len);
+			try {
+				handler.onText(this, text);
+			} catch (Exception ex) {
+				throw handlerFailed(ex);
+			}
+		} else {
+			try {
+				handler.onBinary(this, buf, 0, len);
+			} catch (Exception ex) {
+				throw handlerFailed(ex);
+			}
+		}
+	}
+
+	/**
+	 * Handles a control frame
+	 * @param opcode The opcode of the frame
+	 * @param len The length of its payload, which can be found in the
+	 * control frame buffer
+	 * @throws java.io.IOException If the frame is invalid or if the
+	 * answer could not be sent
+	 */
+	private void handleControlFrame(int opcode, int len) throws IOException {
+		switch (opcode) {
+			case OP_PING:
+				synchronized (this) {
+					if (!closeSent) {
+						writeFrame(FLAG_FIN | OP_PONG, control, 0, len);
+					}
+				}
+				break;
+			case OP_PONG:
+				// Receiving anything already tells us the client is alive
+				break;
+			case OP_CLOSE:
+				int code = CLOSE_NO_STATUS;
+				String reason = "";
+				if (len == 1) {
+					throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Invalid close frame");
+				} else if (len >= 2) {
+					code = ((control[0] & 0xff) << 8) | (control[1] & 0xff);
+					if (!isValidCloseCode(code)) {
+						throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Invalid close code " + code);
+					}
+					reason = decode(control, 2, len - 2);
+				}
+				synchronized (this) {
+					if (!closeSent) {
+						// Confirm by sending the same code back
+						sendClose(code, NO_DATA);
+					}
+				}
+				finish(code, reason);
+				break;
+			default:
+				throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "Unknown opcode " + opcode);
+		}
+	}
+
+	/**
+	 * Ends the connection because of an error, if possible the client
+	 * is told why
+	 * @param code The status code
+	 * @param reason The reason for closing the connection
+	 */
+	private void fail(int code, String reason) {
+		synchronized (this) {
+			if (!closeSent && !closed) {
+				try {
+					byte[] bytes = reason.getBytes(UTF8);
+					if (bytes.length > MAX_CONTROL_PAYLOAD - 2) {
+						bytes = NO_DATA;
+					}
+					sendClose(code, bytes);
+				} catch (IOException ex) {
+					// Ignore, we're closing anyway
+				}
+			}
+		}
+		finish(code, reason);
+	}
+
+	/**
+	 * Marks the connection as done and tells the handler, this only
+	 * happens once
+	 * @param code The status code
+	 * @param reason The reason for closing the connection
+	 */
+	private void finish(int code, String reason) {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			closeSent = true;
+			queue = null;
+			if (deflate != null) {
+				deflate.end();
+			}
+		}
+		data = null;
+		dataView = null;
+		if (opened) {
+			try {
+				handler.onClose(this, code, reason);
+			} catch (Exception ex) {
+				logger.log(Level.WARNING, "WebSocket handler failed", ex);
+			}
+		}
+	}
+
+	/**
+	 * Logs an exception thrown by the handler and turns it into the
+	 * error that will close the connection
+	 * @param ex The exception
+	 * @return The error
+	 */
+	private WebSocketException handlerFailed(Exception ex) {
+		logger.log(Level.WARNING, "WebSocket handler failed", ex);
+		return new WebSocketException(CLOSE_INTERNAL_ERROR, "Internal error");
+	}
+
+	/**
+	 * Decodes UTF-8 encoded text, invalid input is not accepted
+	 * @param buf The buffer holding the text
+	 * @param off The offset of the text
+	 * @param len The length of the text in bytes
+	 * @return The text
+	 * @throws org.codejive.websrv.protocol.websocket.WebSocketException
+	 * If the text is not valid UTF-8
+	 */
+	private String decode(byte[] buf, int off, int len) throws WebSocketException {
+		if (len == 0) {
+			return "";
+		}
+		try {
+			return decoder.decode(ByteBuffer.wrap(buf, off, len)).toString();
+		} catch (CharacterCodingException ex) {
+			throw new WebSocketException(CLOSE_INVALID_DATA, "Invalid UTF-8 text");
+		}
+	}
+
+	/**
+	 * Makes sure the message buffer can hold the given number of bytes,
+	 * keeping the part of the message received so far
+	 * @param size The number of bytes needed
+	 */
+	private void ensureCapacity(int size) {
+		if (data == null || data.length < size) {
+			int newSize = INITIAL_BUFFER_SIZE;
+			if (data != null) {
+				newSize = (int) Math.min((long) data.length * 2, settings.getMaxMessageSize());
+			}
+			byte[] bigger = new byte[Math.max(newSize, size)];
+			if (data != null && messageLength > 0) {
+				System.arraycopy(data, 0, bigger, 0, messageLength);
+			}
+			data = bigger;
+			dataView = ByteBuffer.wrap(data);
+		}
+	}
+
+	/**
+	 * Reads exactly the given number of bytes
+	 * @param b The buffer to read into
+	 * @param off The offset in the buffer
+	 * @param len The number of bytes to read
+	 * @throws java.io.IOException If the bytes could not be read
+	 */
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = input.read(b, off, len);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Unmasks the payload of a frame in place. Most of it is done eight
+	 * bytes at a time using the buffer's view
+	 * @param buf The buffer holding the payload
+	 * @param view A view on the buffer
+	 * @param off The offset of the payload
+	 * @param len The length of the payload
+	 * @param mask The masking key
+	 */
+	private static void unmask(byte[] buf, ByteBuffer view, int off, int len, int mask) {
+		long longMask = ((long) mask << 32) | (mask & 0xffffffffL);
+		int i = off;
+		int end = off + len;
+		for (; i + 8 <= end; i += 8) {
+			view.putLong(i, view.getLong(i) ^ longMask);
+		}
+		for (; i < end; i++) {
+			buf[i] ^= (byte) (mask >>> (24 - ((i - off) & 3) * 8));
+		}
+	}
+
+	/**
+	 * Sends a complete message as a single frame, compressing it if
+	 * possible
+	 * @param opcode The type of message
+	 * @param data The buffer holding the data to send
+	 * @param off The offset of the data
+	 * @param len The length of the data
+	 * @throws java.io.IOException If the connection is closed or if the
+	 * message could not be sent
+	 */
+	private synchronized void sendMessage(int opcode, byte[] data, int off, int len) throws IOException {
+		checkOpen();
+		if (deflate != null && deflate.canDeflate()) {
+			int n = deflate.deflate(data, off, len);
+			writeFrame(FLAG_FIN | FLAG_RSV1 | opcode, deflate.getDeflated(), 0, n);
+		} else {
+			writeFrame(FLAG_FIN | opcode, data, off, len);
+		}
+	}
+
+	/**
+	 * Sends a close frame, nothing can be sent after this.
+	 * Must be called while holding the lock
+	 * @param code The status code or 1005 to send no code at all
+	 * @param reason The reason encoded as UTF-8, at most 123 bytes
+	 * @throws java.io.IOException If the frame could not be sent
+	 */
+	private void sendClose(int code, byte[] reason) throws IOException {
+		closeSent = true;
+		byte[] payload;
+		if (code == CLOSE_NO_STATUS) {
+			payload = NO_DATA;
+		} else {
+			payload = new byte[2 + reason.length];
+			payload[0] = (byte) (code >>> 8);
+			payload[1] = (byte) code;
+			System.arraycopy(reason, 0, payload, 2, reason.length);
+		}
+		writeFrame(FLAG_FIN | OP_CLOSE, payload, 0, payload.length);
+	}
+
+	/**
+	 * Writes a frame to the client or queues it when the connection is
+	 * parked, in which case we ask to be served again.
+	 * Must be called while holding the lock
+	 * @param b0 The first byte of the frame head
+	 * @param payload The buffer holding the payload
+	 * @param off The offset of the payload
+	 * @param len The length of the payload
+	 * @throws java.io.IOException If the frame could not be written or if
+	 * too much has been queued already
+	 */
+	private void writeFrame(int b0, byte[] payload, int off, int len) throws IOException {
+		int headLen = 2;
+		sendHead[0] = (byte) b0;
+		if (len < 126) {
+			sendHead[1] = (byte) len;
+		} else if (len < 65536) {
+			sendHead[1] = 126;
+			sendHead[2] = (byte) (len >>> 8);
+			sendHead[3] = (byte) len;
+			headLen = 4;
+		} else {
+			sendHead[1] = 127;
+			for (int i = 0; i < 8; i++) {
+				sendHead[2 + i] = (byte) ((i < 4) ? 0 : (len >>> ((7 - i) * 8)));
+			}
+			headLen = 10;
+		}
+
+		if (parked) {
+			if (queue == null) {
+				queue = new ByteArrayOutputStream();
+			}
+			if (queue.size() + headLen + len > MAX_QUEUED) {
+				throw new IOException("Too much data queued for WebSocket connection");
+			}
+			queue.write(sendHead, 0, headLen);
+			queue.write(payload, off, len);
+			if (!resumeRequested && resumeTrigger != null) {
+				resumeRequested = true;
+				resumeTrigger.run();
+			}
+		} else if (len <= SMALL_FRAME_SIZE) {
+			if (sendBuffer == null) {
+				sendBuffer = new byte[sendHead.length + SMALL_FRAME_SIZE];
+			}
+			System.arraycopy(sendHead, 0, sendBuffer, 0, headLen);
+			System.arraycopy(payload, off, sendBuffer, headLen, len);
+			output.write(sendBuffer, 0, headLen + len);
+			output.flush();
+		} else {
+			output.write(sendHead, 0, headLen);
+			output.write(payload, off, len);
+			output.flush();
+		}
+	}
+
+	/**
+	 * Writes out the frames that were queued while the connection was
+	 * parked. Must be called while holding the lock
+	 * @throws java.io.IOException If the frames could not be written
+	 */
+	private void flushQueue() throws IOException {
+		if (queue != null) {
+			ByteArrayOutputStream frames = queue;
+			queue = null;
+			frames.writeTo(output);
+			output.flush();
+		}
+	}
+
+	/**
+	 * Throws an exception if nothing can be sent anymore.
+	 * Must be called while holding the lock
+	 * @throws java.io.IOException If the connection is closed
+	 */
+	private void checkOpen() throws IOException {
+		if (closeSent || closed) {
+			throw new IOException("WebSocket connection is closed");
+		}
+	}
+
+	/**
+	 * Determines if a status code may appear in a close frame
+	 * @param code The status code
+	 * @return <code>true</code> if the code is allowed
+	 */
+	private static boolean isValidCloseCode(int code) {
+		return (code >= 1000 && code <= 1003)
+				|| (code >= 1007 && code <= 1014)
+				|| (code >= 3000 && code <= 4999);
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * WebSocketException.java
+ *
+ * Created on Oct 19, 2026, 5:27:03 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.websocket;
+
+import java.io.IOException;
+
+/**
+ * This exception will be thrown when a WebSocket connection has to be
+ * closed because of an error, for example because the client violated
+ * the protocol or sent a message that was too large
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class WebSocketException extends IOException {
+
+	/**
+	 * The status code that will be sent to the client
+	 */
+	private final int closeCode;
+
+	/**
+	 * Creates a new exception
+	 * @param closeCode The status code to send to the client
+	 * @param message The exception message, it will be sent to the client
+	 * as the reason for closing the connection
+	 */
+	public WebSocketException(int closeCode, String message) {
+		super(message);
+		this.closeCode = closeCode;
+	}
+
+	/**
+	 * Returns the status code that will be sent to the client
+	 * @return The close status code
+	 */
+	public int getCloseCode() {
+		return closeCode;
+	}
+}
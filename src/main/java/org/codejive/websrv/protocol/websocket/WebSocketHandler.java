@@ -0,0 +1,78 @@
+/*
+ * WebSocketHandler.java
+ *
+ * Created on Oct 19, 2026, 5:31:20 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.websocket;
+
+import java.io.IOException;
+
+/**
+ * Handles the messages received on WebSocket connections. Each method is
+ * called by the thread serving the connection at that moment, for any
+ * single connection the calls are never made at the same time. They
+ * should return as quickly as possible, a connection can't receive
+ * anything else while one of them is running. Throwing an exception
+ * closes the connection with status code 1011
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public interface WebSocketHandler {
+
+	/**
+	 * Called when the connection has been opened, before any messages
+	 * are received
+	 * @param socket The connection
+	 * @throws java.io.IOException If the handler failed
+	 */
+	public void onOpen(WebSocket socket) throws IOException;
+
+	/**
+	 * Called when a text message has been received
+	 * @param socket The connection
+	 * @param text The text of the message
+	 * @throws java.io.IOException If the handler failed
+	 */
+	public void onText(WebSocket socket, String text) throws IOException;
+
+	/**
+	 * Called when a binary message has been received. The buffer gets
+	 * reused for the next message so the data is only valid during the
+	 * call, it must be copied if it's needed afterwards
+	 * @param socket The connection
+	 * @param data The buffer holding the message
+	 * @param off The offset of the message in the buffer
+	 * @param len The length of the message
+	 * @throws java.io.IOException If the handler failed
+	 */
+	public void onBinary(WebSocket socket, byte[] data, int off, int len) throws IOException;
+
+	/**
+	 * Called once when the connection has been closed, either because
+	 * one of the endpoints asked for it or because of an error. No more
+	 * messages can be sent at this point
+	 * @param socket The connection
+	 * @param code The status code, 1005 if the client didn't send one
+	 * and 1006 if the connection was closed without a close frame
+	 * @param reason The reason for closing the connection, possibly empty
+	 * @throws java.io.IOException If the handler failed
+	 */
+	public void onClose(WebSocket socket, int code, String reason) throws IOException;
+}
@@ -0,0 +1,123 @@
+/*
+ * WebSocketSettings.java
+ *
+ * Created on Oct 19, 2026, 5:26:15 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.websocket;
+
+/**
+ * Holds the settings for WebSocket connections. They determine how much
+ * memory a single connection can take up on the server, how often idle
+ * connections are checked to be still alive and if messages may be
+ * compressed
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class WebSocketSettings {
+
+	/**
+	 * The maximum size of a single incoming message, after decompression
+	 * (default = 1048576)
+	 */
+	private int maxMessageSize;
+
+	/**
+	 * The time in milliseconds a connection can be idle before the
+	 * client gets pinged, 0 means never (default = 30000)
+	 */
+	private int pingInterval;
+
+	/**
+	 * Indicates if the "permessage-deflate" extension will be used when
+	 * the client offers it (default = true)
+	 */
+	private boolean compression;
+
+	/**
+	 * Creates a new instance using the default settings
+	 */
+	public WebSocketSettings() {
+		maxMessageSize = 1024 * 1024;
+		pingInterval = 30000;
+		compression = true;
+	}
+
+	/**
+	 * Returns the maximum size of a single incoming message
+	 * @return The message size in bytes
+	 */
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	/**
+	 * Sets the maximum size of a single incoming message. For compressed
+	 * messages this applies to their decompressed size. Connections that
+	 * receive larger messages will be closed
+	 * @param maxMessageSize The message size in bytes
+	 */
+	public void setMaxMessageSize(int maxMessageSize) {
+		if (maxMessageSize <= 0) {
+			throw new IllegalArgumentException("maxMessageSize must be larger than 0");
+		}
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	/**
+	 * Returns the time a connection can be idle before the client gets
+	 * pinged
+	 * @return The interval in milliseconds, 0 meaning never
+	 */
+	public int getPingInterval() {
+		return pingInterval;
+	}
+
+	/**
+	 * Sets the time a connection can be idle before the client gets
+	 * pinged. When the client doesn't answer within the same time the
+	 * connection will be closed
+	 * @param pingInterval The interval in milliseconds, 0 meaning never
+	 */
+	public void setPingInterval(int pingInterval) {
+		if (pingInterval < 0) {
+			throw new IllegalArgumentException("pingInterval must not be negative");
+		}
+		this.pingInterval = pingInterval;
+	}
+
+	/**
+	 * Returns if the "permessage-deflate" extension will be used when
+	 * the client offers it
+	 * @return <code>true</code> if messages may be compressed
+	 */
+	public boolean isCompression() {
+		return compression;
+	}
+
+	/**
+	 * Sets if the "permessage-deflate" extension will be used when the
+	 * client offers it. Compression saves bandwidth at the cost of some
+	 * processing time and memory for each connection
+	 * @param compression <code>true</code> if messages may be compressed
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * WebSocketUpgrade.java
+ *
+ * Created on Oct 19, 2026, 5:41:09 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.websocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.codejive.websrv.protocol.http.ConnectionUpgrade;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpRequestImpl;
+import org.codejive.websrv.protocol.http.UpgradedConnection;
+
+/**
+ * Switches a HTTP/1.1 connection to the WebSocket protocol. An instance
+ * is created for each accepted handshake, it holds on to a copy of the
+ * request and to the outcome of the extension negotiation until the
+ * "101 Switching Protocols" response has been sent and the connection
+ * can be taken over
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class WebSocketUpgrade implements ConnectionUpgrade {
+
+	/**
+	 * The only version of the protocol we support
+	 */
+	public static final String VERSION = "13";
+
+	/**
+	 * The value that gets appended to the client's key to calculate the
+	 * accept key, as defined by the specification
+	 */
+	private static final String KEY_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+	/**
+	 * The characters used by base64 encoding
+	 */
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	/**
+	 * The request that opened the connection
+	 */
+	private final HttpRequest request;
+
+	/**
+	 * The handler that will receive the messages
+	 */
+	private final WebSocketHandler handler;
+
+	/**
+	 * The settings for the connection
+	 */
+	private final WebSocketSettings settings;
+
+	/**
+	 * The compression extension or null if it won't be used
+	 */
+	private final PerMessageDeflate deflate;
+
+	/**
+	 * Creates a new upgrade for a handshake request. Any extensions
+	 * offered by the client are negotiated right away
+	 * @param request The request asking for the upgrade, it will be copied
+	 * so the original can be reused
+	 * @param handler The handler that will receive the messages
+	 * @param settings The settings for the connection
+	 */
+	public WebSocketUpgrade(HttpRequest request, WebSocketHandler handler, WebSocketSettings settings) {
+		this.request = new HttpRequestImpl(request);
+		this.handler = handler;
+		this.settings = settings;
+		if (settings.isCompression()) {
+			deflate = PerMessageDeflate.negotiate(request.getHeaders("Sec-WebSocket-Extensions"));
+		} else {
+			deflate = null;
+		}
+	}
+
+	/**
+	 * Returns the value for the "Sec-WebSocket-Extensions" header of the
+	 * handshake response
+	 * @return The accepted extensions or null if there are none
+	 */
+	public String getExtensionsHeader() {
+		return (deflate != null) ? deflate.getResponseHeader() : null;
+	}
+
+	public UpgradedConnection upgrade(Socket socket, InputStream input, Runnable resumeTrigger) throws IOException {
+		return new WebSocketConnection(socket, input, resumeTrigger, request, handler, settings, deflate);
+	}
+
+	/**
+	 * Determines if the client asks to switch to the WebSocket protocol.
+	 * The request still has to be checked for a supported version and a
+	 * valid key before it can be accepted
+	 * @param request The request to check
+	 * @return <code>true</code> if it's a WebSocket handshake
+	 */
+	public static boolean isUpgradeRequest(HttpRequest request) {
+		String upgrade = request.getHeader("Upgrade");
+		String connection = request.getHeader("Connection");
+		return "GET".equals(request.getRequestMethod())
+				&& "HTTP/1.1".equalsIgnoreCase(request.getRequestProtocol())
+				&& upgrade != null && hasToken(upgrade, "websocket")
+				&& connection != null && hasToken(connection, "Upgrade");
+	}
+
+	/**
+	 * Determines if the client uses the version of the protocol we support
+	 * @param request The handshake request
+	 * @return <code>true</code> if the version is supported
+	 */
+	public static boolean isSupportedVersion(HttpRequest request) {
+		String version = request.getHeader("Sec-WebSocket-Version");
+		return version != null && VERSION.equals(version.trim());
+	}
+
+	/**
+	 * Determines if the key sent by the client is valid. It must be
+	 * 16 bytes encoded using base64
+	 * @param key The value of the "Sec-WebSocket-Key" header or null
+	 * @return <code>true</code> if the key is valid
+	 */
+	public static boolean isValidKey(String key) {
+		if (key == null) {
+			return false;
+		}
+		key = key.trim();
+		if (key.length() != 24 || !key.endsWith("==")) {
+			return false;
+		}
+		for (int i = 0; i < 22; i++) {
+			if (base64Value(key.charAt(i)) < 0) {
+				return false;
+			}
+		}
+		// The last character only holds 2 bits
+		return (base64Value(key.charAt(21)) & 0x0f) == 0;
+	}
+
+	/**
+	 * Calculates the value for the "Sec-WebSocket-Accept" header of the
+	 * handshake response, which proves to the client that the server
+	 * understood its request
+	 * @param key The value of the "Sec-WebSocket-Key" header
+	 * @return The accept key
+	 */
+	public static String getAcceptKey(String key) {
+		try {
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			byte[] digest = sha1.digest((key.trim() + KEY_GUID).getBytes("US-ASCII"));
+			return encodeBase64(digest);
+		} catch (NoSuchAlgorithmException ex) {
+			// Can't happen, every JVM must support SHA-1
+			throw new IllegalStateException(ex);
+		} catch (UnsupportedEncodingException ex) {
+			// Can't happen, every JVM must support US-ASCII
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Returns the value of a base64 character
+	 * @param c The character
+	 * @return The value or -1 if it's not a base64 character
+	 */
+	private static int base64Value(char c) {
+		if (c >= 'A' && c <= 'Z') {
+			return c - 'A';
+		} else if (c >= 'a' && c <= 'z') {
+			return c - 'a' + 26;
+		} else if (c >= '0' && c <= '9') {
+			return c - '0' + 52;
+		} else if (c == '+') {
+			return 62;
+		} else if (c == '/') {
+			return 63;
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Encodes the given data using base64
+	 * @param data The data to encode
+	 * @return The encoded data
+	 */
+	private static String encodeBase64(byte[] data) {
+		StringBuilder result = new StringBuilder((data.length + 2) / 3 * 4);
+		for (int i = 0; i < data.length; i += 3) {
+			int n = Math.min(3, data.length - i);
+			int bits = (data[i] & 0xff) << 16;
+			if (n > 1) {
+				bits |= (data[i + 1] & 0xff) << 8;
+			}
+			if (n > 2) {
+				bits |= data[i + 2] & 0xff;
+			}
+			result.append(BASE64[(bits >>> 18) & 0x3f]);
+			result.append(BASE64[(bits >>> 12) & 0x3f]);
+			result.append((n > 1) ? BASE64[(bits >>> 6) & 0x3f] : '=');
+			result.append((n > 2) ? BASE64[bits & 0x3f] : '=');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Determines if a comma separated header value contains the given token
+	 * @param value The header value
+	 * @param token The token to look for, case is ignored
+	 * @return <code>true</code> if the token was found
+	 */
+	private static boolean hasToken(String value, String token) {
+		for (String part : value.split(",")) {
+			if (part.trim().equalsIgnoreCase(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
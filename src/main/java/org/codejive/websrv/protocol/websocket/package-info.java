@@ -0,0 +1,34 @@
+/*
+ * package-info.java
+ *
+ * Created on Oct 19, 2026, 5:24:40 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * Contains the implementation of the WebSocket protocol (RFC 6455).
+ * A WebSocketServlet accepts the client's request to upgrade, after
+ * which the HTTP protocol handler hands the connection over to a
+ * WebSocketConnection. Incoming messages are passed on to a
+ * WebSocketHandler as they arrive, messages can be sent to the client
+ * at any time from any thread. Idle connections are parked just like
+ * idle HTTP connections so they don't hold on to a thread
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+package org.codejive.websrv.protocol.websocket;
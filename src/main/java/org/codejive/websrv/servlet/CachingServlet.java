@@ -0,0 +1,500 @@
+/*
+ * CachingServlet.java
+ *
+ * Created on Oct 19, 2026, 8:30:52 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.protocol.cache.CacheSettings;
+import org.codejive.websrv.protocol.cache.CachedResponse;
+import org.codejive.websrv.protocol.cache.CapturingResponse;
+import org.codejive.websrv.protocol.cache.ResponseCache;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpRequestImpl;
+import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.PrematureEOFException;
+import org.codejive.websrv.util.UriEncoder;
+
+/**
+ * This servlet caches the responses of another servlet. Only GET requests
+ * without credentials are cached, they are looked up by host, path, query
+ * and the values of the request headers the cache was configured to vary
+ * on. Responses stay fresh for as long as their "Cache-Control" header
+ * says, or for the default time of the cache if it doesn't say. After that
+ * they can still be used for a while: the first request that finds a stale
+ * response gets it like everybody else and then generates the new one,
+ * the others keep getting the stale one in the mean time. The new one is
+ * generated by a thread of the servlet's own, so the request can go on as
+ * soon as it has its response. When a response
+ * isn't in the cache at all only the first request generates it, requests
+ * for the same response that come in while that is happening wait for it.
+ * Responses that set cookies, that are private or that are too large are
+ * never cached
+ * @see org.codejive.websrv.protocol.cache.ResponseCache
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class CachingServlet implements Servlet {
+
+	/**
+	 * The servlet whose responses get cached
+	 */
+	private final Servlet servlet;
+
+	/**
+	 * The cache the responses are kept in
+	 */
+	private final ResponseCache cache;
+
+	/**
+	 * The responses that are being generated right now by their keys
+	 */
+	private final ConcurrentHashMap<String, Render> renders;
+
+	/**
+	 * The threads that generate new versions of stale responses
+	 */
+	private final ThreadPoolExecutor revalidator;
+
+	/**
+	 * The response codes of the responses that can be cached
+	 */
+	private static final Set<Integer> CACHEABLE_CODES = new HashSet<Integer>(Arrays.asList(200, 203, 204, 300, 301, 404, 410));
+
+	/**
+	 * The headers that are never stored with a cached response
+	 */
+	private static final Set<String> SKIPPED_HEADERS = new HashSet<String>(Arrays.asList("connection", "keep-alive", "transfer-encoding", "content-length"));
+
+	private static final Logger logger = Logger.getLogger(CachingServlet.class.getName());
+
+	/**
+	 * Creates a new CachingServlet with its own cache using default settings
+	 * @param servlet The servlet whose responses get cached
+	 */
+	public CachingServlet(Servlet servlet) {
+		this(servlet, new ResponseCache());
+	}
+
+	/**
+	 * Creates a new CachingServlet
+	 * @param servlet The servlet whose responses get cached
+	 * @param cache The cache the responses are kept in
+	 */
+	public CachingServlet(Servlet servlet, ResponseCache cache) {
+		this.servlet = servlet;
+		this.cache = cache;
+		renders = new ConcurrentHashMap<String, Render>();
+		int threads = cache.getSettings().getMaxRevalidations();
+		revalidator = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "websrv-cache-revalidator");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		revalidator.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Returns the servlet whose responses get cached
+	 * @return The wrapped servlet
+	 */
+	public Servlet getServlet() {
+		return servlet;
+	}
+
+	/**
+	 * Returns the cache the responses are kept in
+	 * @return The response cache
+	 */
+	public ResponseCache getCache() {
+		return cache;
+	}
+
+	public void process(String requestPath, HttpRequest request, HttpResponse response) throws IOException {
+		if (!"GET".equals(request.getRequestMethod()) || request.getHeader("Authorization") != null) {
+			servlet.process(requestPath, request, response);
+			return;
+		}
+
+		String key = cacheKey(request);
+		long now = System.currentTimeMillis();
+		CachedResponse entry = cache.get(key, now);
+		if (entry != null) {
+			if (!entry.isFresh(now) && entry.startRevalidation()) {
+				startRevalidation(key, entry, requestPath, request);
+			}
+			send(entry, response, true, now);
+			return;
+		}
+
+		Render render = new Render();
+		Render leader = renders.putIfAbsent(key, render);
+		if (leader != null) {
+			entry = leader.await(cache.getSettings().getCoalesceTimeout());
+			if (entry != null) {
+				send(entry, response, true, System.currentTimeMillis());
+			} else {
+				// The response couldn't be cached, we'll make our own
+				render(key, requestPath, request, response);
+			}
+			return;
+		}
+		entry = null;
+		try {
+			entry = render(key, requestPath, request, response);
+		} finally {
+			renders.remove(key, render);
+			render.complete(entry);
+		}
+	}
+
+	/**
+	 * Lets the wrapped servlet generate the response, sends it to the
+	 * client and stores it in the cache if possible
+	 * @param key The key to cache the response under
+	 * @param requestPath The path part of the originating request
+	 * @param request The originating HTTP request
+	 * @param response The HTTP response to send the result to
+	 * @return The response if it was cached or null
+	 * @throws java.io.IOException If the response could not be generated
+	 */
+	private CachedResponse render(String key, String requestPath, HttpRequest request, HttpResponse response) throws IOException {
+		CapturingResponse capture = new CapturingResponse(response, cache.getSettings().getMaxEntrySize());
+		try {
+			servlet.process(requestPath, request, capture);
+		} catch (PrematureEOFException ex) {
+			// The servlet sent an error or a redirect
+		}
+		capture.finish();
+		if (capture.isSpilled()) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		CachedResponse entry = createEntry(capture, now);
+		send(entry, response, false, now);
+		if (entry.isFresh(now)) {
+			cache.put(key, entry);
+			return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Hands the generation of a new version of a stale response to one of
+	 * the revalidator threads. When they're all busy the revalidation is
+	 * cancelled so a later request can try again
+	 * @param key The key the response is cached under
+	 * @param stale The stale response
+	 * @param requestPath The path part of the originating request
+	 * @param request The originating HTTP request, it will be copied so
+	 * the original can be reused
+	 */
+	private void startRevalidation(final String key, final CachedResponse stale, final String requestPath, HttpRequest request) {
+		final HttpRequestImpl copy = new HttpRequestImpl(request);
+		try {
+			revalidator.execute(new Runnable() {
+				public void run() {
+					revalidate(key, stale, requestPath, copy);
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			stale.cancelRevalidation();
+		}
+	}
+
+	/**
+	 * Lets the wrapped servlet generate a new version of a stale response
+	 * and replaces the stale one with it. Failures are only logged, the
+	 * client that triggered this already got its response
+	 * @param key The key the response is cached under
+	 * @param stale The stale response
+	 * @param requestPath The path part of the originating request
+	 * @param request The originating HTTP request
+	 */
+	private void revalidate(String key, CachedResponse stale, String requestPath, HttpRequest request) {
+		CachedResponse entry = null;
+		try {
+			CapturingResponse capture = new CapturingResponse(null, cache.getSettings().getMaxEntrySize());
+			try {
+				servlet.process(requestPath, request, capture);
+			} catch (PrematureEOFException ex) {
+				// The servlet sent an error or a redirect
+			}
+			capture.finish();
+			if (capture.isComplete()) {
+				entry = createEntry(capture, System.currentTimeMillis());
+			}
+		} catch (IOException ex) {
+			logger.log(Level.WARNING, "Could not revalidate cached response " + key, ex);
+		} catch (RuntimeException ex) {
+			logger.log(Level.WARNING, "Could not revalidate cached response " + key, ex);
+		}
+		if (entry == null) {
+			stale.cancelRevalidation();
+		} else if (entry.isFresh(System.currentTimeMillis())) {
+			cache.put(key, entry);
+		} else {
+			// The response isn't cacheable anymore
+			cache.remove(key);
+		}
+	}
+
+	/**
+	 * Sends a complete response to the client
+	 * @param entry The response to send
+	 * @param response The HTTP response to send the result to
+	 * @param cached Indicates if the response was taken from the cache
+	 * @param now The current time
+	 * @throws java.io.IOException If the response could not be sent
+	 */
+	private void send(CachedResponse entry, HttpResponse response, boolean cached, long now) throws IOException {
+		response.setResponseCode(entry.getResponseCode());
+		HttpHeaders headers = entry.getHeaders();
+		Set<String> done = new HashSet<String>();
+		for (int i = 0; i < headers.size(); i++) {
+			String name = headers.getName(i);
+			if (done.add(name.toLowerCase())) {
+				response.setHeader(name, headers.getValue(i));
+			} else {
+				response.addHeader(name, headers.getValue(i));
+			}
+		}
+		if (cached) {
+			response.setHeader("Age", String.valueOf(Math.max(0, now - entry.getCreated()) / 1000));
+		}
+		byte[] body = entry.getBody();
+		if (entry.getResponseCode() != HttpResponseCode.CODE_NO_CONTENT) {
+			response.setHeader("Content-Length", String.valueOf(body.length));
+		}
+		OutputStream out = response.getOutputStream();
+		out.write(body);
+		out.flush();
+	}
+
+	/**
+	 * Turns a captured response into one that can be cached. If the
+	 * response may not be cached the result won't be fresh
+	 * @param capture The captured response
+	 * @param now The current time
+	 * @return The response
+	 */
+	private CachedResponse createEntry(CapturingResponse capture, long now) {
+		CacheSettings settings = cache.getSettings();
+		HttpHeaders captured = capture.getHeaders();
+		HttpHeaders headers = new HttpHeaders(captured.size());
+		for (int i = 0; i < captured.size(); i++) {
+			if (!SKIPPED_HEADERS.contains(captured.getName(i).toLowerCase())) {
+				headers.add(captured.getName(i), captured.getValue(i));
+			}
+		}
+
+		long ttl = settings.getDefaultTtl();
+		long staleTime = settings.getStaleTime();
+		if (!isCacheable(capture)) {
+			ttl = 0;
+		} else {
+			long maxAge = -1;
+			long sharedMaxAge = -1;
+			for (String value : captured.getAll("Cache-Control")) {
+				for (String directive : value.split(",")) {
+					directive = directive.trim().toLowerCase();
+					int eq = directive.indexOf('=');
+					String name = (eq < 0) ? directive : directive.substring(0, eq).trim();
+					long seconds = (eq < 0) ? -1 : parseSeconds(directive.substring(eq + 1));
+					if (name.equals("no-store") || name.equals("no-cache") || name.equals("private")) {
+						ttl = 0;
+					} else if (name.equals("max-age")) {
+						maxAge = seconds;
+					} else if (name.equals("s-maxage")) {
+						sharedMaxAge = seconds;
+					} else if (name.equals("stale-while-revalidate") && seconds >= 0) {
+						staleTime = seconds * 1000;
+					}
+				}
+			}
+			if (ttl > 0) {
+				if (sharedMaxAge >= 0) {
+					ttl = sharedMaxAge * 1000;
+				} else if (maxAge >= 0) {
+					ttl = maxAge * 1000;
+				}
+			}
+		}
+		if (ttl <= 0) {
+			ttl = 0;
+			staleTime = 0;
+		}
+		return new CachedResponse(capture.getResponseCode(), headers, capture.getBody(), now, ttl, staleTime);
+	}
+
+	/**
+	 * Determines if a captured response may be cached at all, not
+	 * considering its "Cache-Control" header
+	 * @param capture The captured response
+	 * @return <code>true</code> if the response may be cached
+	 */
+	private boolean isCacheable(CapturingResponse capture) {
+		if (!CACHEABLE_CODES.contains(capture.getResponseCode().getCode())) {
+			return false;
+		}
+		HttpHeaders headers = capture.getHeaders();
+		if (headers.contains("Set-Cookie")) {
+			return false;
+		}
+		for (String value : headers.getAll("Vary")) {
+			for (String name : value.split(",")) {
+				name = name.trim();
+				if (name.length() > 0 && !isVaryHeader(name)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if the cache was configured to vary on the given header
+	 * @param name The name of the header
+	 * @return <code>true</code> if the header is part of the cache key
+	 */
+	private boolean isVaryHeader(String name) {
+		for (String header : cache.getSettings().getVaryHeaders()) {
+			if (HttpHeaders.equalsName(name, header)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parses the number of seconds of a "Cache-Control" directive
+	 * @param value The value of the directive
+	 * @return The number of seconds or -1 if the value is malformed
+	 */
+	private static long parseSeconds(String value) {
+		value = value.trim();
+		if (value.startsWith("\"") && value.endsWith("\"") && value.length() >= 2) {
+			value = value.substring(1, value.length() - 1);
+		}
+		try {
+			return Math.max(-1, Long.parseLong(value));
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns the key a request's response is cached under
+	 * @param request The request
+	 * @return The cache key
+	 */
+	private String cacheKey(HttpRequest request) {
+		StringBuilder key = new StringBuilder(128);
+		String host = request.getHeader("Host");
+		if (host == null) {
+			host = request.getHost();
+		}
+		if (host != null) {
+			key.append(host.toLowerCase());
+		}
+		key.append(' ');
+		String url = request.getUrl();
+		if (url != null && url.startsWith("/")) {
+			key.append(url);
+		} else {
+			key.append(UriEncoder.encode(request.getPath()));
+			if (request.getQuery() != null) {
+				key.append('?').append(request.getQuery());
+			}
+		}
+		for (String name : cache.getSettings().getVaryHeaders()) {
+			String value = request.getHeader(name);
+			key.append('\n').append((value != null) ? value.trim() : "");
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Lets requests wait for a response that is being generated by
+	 * another request
+	 */
+	private static class Render {
+
+		/**
+		 * Indicates that the response has been generated
+		 */
+		private boolean done;
+
+		/**
+		 * The response or null if it couldn't be cached
+		 */
+		private CachedResponse entry;
+
+		/**
+		 * Hands the response to everybody who's waiting for it
+		 * @param entry The response or null if it couldn't be cached
+		 */
+		public synchronized void complete(CachedResponse entry) {
+			this.entry = entry;
+			done = true;
+			notifyAll();
+		}
+
+		/**
+		 * Waits for the response to be generated
+		 * @param timeout The maximum time to wait in milliseconds
+		 * @return The response or null if it couldn't be cached or
+		 * if it took too long
+		 */
+		public synchronized CachedResponse await(long timeout) {
+			long end = System.currentTimeMillis() + timeout;
+			while (!done) {
+				long left = end - System.currentTimeMillis();
+				if (left <= 0) {
+					break;
+				}
+				try {
+					wait(left);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			return entry;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * EventStreamServlet.java
+ *
+ * Created on Oct 19, 2026, 6:35:38 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.servlet;
+
+import java.io.IOException;
+import org.codejive.websrv.protocol.eventstream.EventBroadcaster;
+import org.codejive.websrv.protocol.eventstream.EventStreamConnection;
+import org.codejive.websrv.protocol.eventstream.EventSubscriber;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+
+/**
+ * This servlet subscribes clients to an event stream. The response is
+ * a "text/event-stream" that never ends by itself, on HTTP/1.1 it uses
+ * chunked transfers. Once its head has been sent the connection is taken
+ * over by the subscriber so it doesn't hold on to a thread, except for
+ * HTTP/2 streams where the thread handling the stream writes the events
+ * @see org.codejive.websrv.protocol.eventstream.EventBroadcaster
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class EventStreamServlet implements Servlet {
+
+	/**
+	 * The broadcaster the clients get subscribed to
+	 */
+	private EventBroadcaster broadcaster;
+
+	/**
+	 * Creates a new EventStreamServlet
+	 * @param broadcaster The broadcaster the clients get subscribed to
+	 */
+	public EventStreamServlet(EventBroadcaster broadcaster) {
+		this.broadcaster = broadcaster;
+	}
+
+	/**
+	 * Returns the broadcaster the clients get subscribed to
+	 * @return The broadcaster
+	 */
+	public EventBroadcaster getBroadcaster() {
+		return broadcaster;
+	}
+
+	public void process(String requestPath, HttpRequest request, HttpResponse response) throws IOException {
+		if (!"GET".equals(request.getRequestMethod())) {
+			response.setHeader("Allow", "GET");
+			response.sendError(HttpResponseCode.CODE_METHOD_NOT_ALLOWED, request.getRequestMethod());
+		}
+		response.setContentType("text/event-stream");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+
+		String protocol = request.getRequestProtocol();
+		if ("HTTP/2.0".equalsIgnoreCase(protocol)) {
+			// The connection is shared with other streams so we can't
+			// take it over, we'll just keep writing to the response
+			EventStreamConnection subscriber = broadcaster.subscribe(request, false);
+			response.getOutputStream().flush();
+			subscribed(subscriber);
+			subscriber.stream(response.getOutputStream());
+		} else {
+			boolean chunked = "HTTP/1.1".equalsIgnoreCase(protocol);
+			if (chunked) {
+				response.setHeader("Transfer-Encoding", "chunked");
+			} else {
+				response.setHeader("Connection", "close");
+			}
+			EventStreamConnection subscriber = broadcaster.subscribe(request, chunked);
+			response.setUpgrade(subscriber);
+			response.getOutputStream().flush();
+			subscribed(subscriber);
+		}
+	}
+
+	/**
+	 * Called for each new subscriber right after it subscribed. It can
+	 * be overridden to send the subscriber events of its own, for example
+	 * to catch up on events it missed as indicated by its "Last-Event-ID"
+	 * request header. Does nothing by default
+	 * @param subscriber The new subscriber
+	 * @throws java.io.IOException If the events could not be sent
+	 */
+	protected void subscribed(EventSubscriber subscriber) throws IOException {
+	}
+
+}
@@ -26,6 +26,7 @@ import org.codejive.websrv.mimetype.MimeTypes;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.codejive.websrv.config.WelcomeFiles;
 import org.codejive.websrv.mimetype.MimeType;
@@ -123,7 +124,9 @@ public class FileServlet implements Servlet {
 		
 		// If the path does not point to a file we try the class-path resources
         if (!file.exists() || !file.isFile() || file.isHidden()) {
-    		logger.info("Trying resource /" + file.getPath().replace('\\', '/'));
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Trying resource /" + file.getPath().replace('\\', '/'));
+			}
 			url = this.getClass().getResource("/" + file.getPath().replace('\\', '/'));
 			if ((url == null) || (url.openConnection().getContentLength() == 0)) {
 				if ((url != null) && !file.getPath().replace('\\', '/').endsWith("/")) {
@@ -135,7 +138,9 @@ public class FileServlet implements Servlet {
 						path += "/";
 					}
 					path += welcomeName;
-		    		logger.info("Trying resource " + path);
+					if (logger.isLoggable(Level.FINE)) {
+						logger.fine("Trying resource " + path);
+					}
 					url = this.getClass().getResource(path);
 					if ((url != null) && (url.openConnection().getContentLength() > 0)) {
 						break;
@@ -143,15 +148,19 @@ public class FileServlet implements Servlet {
 				}
 				// If we didn't find a resource either we send a NOT FOUND error
 				if ((url == null) || (url.openConnection().getContentLength() == 0)) {
-					logger.info("Resource does not exist");
+					logger.fine("Resource does not exist");
 					response.sendError(HttpResponseCode.CODE_NOT_FOUND, request.getPath());
 				}
 			}
 			file = null;
-			logger.info("Serving resource " + url);
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Serving resource " + url);
+			}
         } else {
 			url = file.toURI().toURL();
-			logger.info("Serving file " + file.getAbsolutePath());
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Serving file " + file.getAbsolutePath());
+			}
 		}
 		
 		// Try to obtain the content mime type depending on the file's name
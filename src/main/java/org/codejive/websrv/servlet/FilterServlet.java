@@ -0,0 +1,87 @@
+/*
+ * FilterServlet.java
+ *
+ * Created on Oct 19, 2026, 9:08:51 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.servlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import org.codejive.websrv.filter.Filter;
+import org.codejive.websrv.filter.FilterChain;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpResponse;
+
+/**
+ * This servlet passes requests through a list of filters before handing
+ * them to another servlet. It can be used to apply filters to only some
+ * of the requests, for example by using it as the servlet of a
+ * RequestMatch, while the filters of a listener apply to all of them
+ * @see org.codejive.websrv.filter.Filter
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class FilterServlet implements Servlet {
+
+	/**
+	 * The filters the requests must pass
+	 */
+	private final ArrayList<Filter> filters;
+
+	/**
+	 * The servlet that handles the requests after the filters
+	 */
+	private final Servlet servlet;
+
+	/**
+	 * Creates a new FilterServlet
+	 * @param servlet The servlet that handles the requests after the filters
+	 * @param filters The filters the requests must pass
+	 */
+	public FilterServlet(Servlet servlet, Filter... filters) {
+		this.servlet = servlet;
+		this.filters = new ArrayList<Filter>();
+		for (Filter filter : filters) {
+			this.filters.add(filter);
+		}
+	}
+
+	/**
+	 * Returns the list of filters the requests must pass, in the order
+	 * they are called. The list must not be changed while requests are
+	 * being handled
+	 * @return A list of filters
+	 */
+	public ArrayList<Filter> getFilters() {
+		return filters;
+	}
+
+	/**
+	 * Returns the servlet that handles the requests after the filters
+	 * @return The wrapped servlet
+	 */
+	public Servlet getServlet() {
+		return servlet;
+	}
+
+	public void process(String requestPath, HttpRequest request, HttpResponse response) throws IOException {
+		new FilterChain(filters, servlet).proceed(requestPath, request, response);
+	}
+}
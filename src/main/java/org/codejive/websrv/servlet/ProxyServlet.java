@@ -0,0 +1,522 @@
+/*
+ * ProxyServlet.java
+ *
+ * Created on Oct 19, 2026, 7:41:26 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.servlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.protocol.http.HttpClientConnection;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.MalformedRequestException;
+import org.codejive.websrv.protocol.http.RequestLimitException;
+import org.codejive.websrv.protocol.proxy.Balancing;
+import org.codejive.websrv.protocol.proxy.ProxySettings;
+import org.codejive.websrv.protocol.proxy.Upstream;
+import org.codejive.websrv.util.UriEncoder;
+
+/**
+ * This servlet forwards requests to one or more upstream HTTP/1.1 servers
+ * and sends their responses back to the client, acting as a reverse proxy.
+ * The request target is passed on unchanged, as are all headers except the
+ * hop-by-hop ones, and the client's address is added to X-Forwarded-For.
+ * Bodies are streamed in both directions. When an upstream server can't be
+ * reached the next one is tried, when none can be reached the client gets
+ * a 502 BAD GATEWAY, or a 504 GATEWAY TIMEOUT if the server took too long
+ * to answer. Requests that can safely be repeated are sent again when the
+ * server closed a reused connection without answering. Response codes this server doesn't know are
+ * passed on as the generic code of their class (so 418 becomes 400)
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class ProxyServlet implements Servlet {
+
+	/**
+	 * The servers requests get forwarded to
+	 */
+	private final List<Upstream> upstreams;
+
+	/**
+	 * The settings of the proxy
+	 */
+	private final ProxySettings settings;
+
+	/**
+	 * Counter used to pick the next upstream server
+	 */
+	private final AtomicInteger next;
+
+	/**
+	 * The size of the buffer used to copy bodies
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The headers that only apply to a single connection and that are
+	 * therefore never passed on. Content-Length and Expect are handled
+	 * by the proxy itself
+	 */
+	private static final String[] HOP_BY_HOP_HEADERS = {
+		"Connection", "Keep-Alive", "Proxy-Connection", "Proxy-Authenticate",
+		"Proxy-Authorization", "TE", "Trailer", "Transfer-Encoding", "Upgrade",
+		"Content-Length", "Expect"
+	};
+
+	/**
+	 * The response headers that the server always writes itself
+	 */
+	private static final String[] SERVER_HEADERS = { "Date", "Server" };
+
+	private static final Logger logger = Logger.getLogger(ProxyServlet.class.getName());
+
+	/**
+	 * Creates a new ProxyServlet with default settings
+	 * @param upstreams The servers requests get forwarded to
+	 */
+	public ProxyServlet(Upstream... upstreams) {
+		this(new ProxySettings(), upstreams);
+	}
+
+	/**
+	 * Creates a new ProxyServlet
+	 * @param settings The settings of the proxy
+	 * @param upstreams The servers requests get forwarded to
+	 */
+	public ProxyServlet(ProxySettings settings, Upstream... upstreams) {
+		this.settings = settings;
+		this.upstreams = new CopyOnWriteArrayList<Upstream>(Arrays.asList(upstreams));
+		next = new AtomicInteger();
+	}
+
+	/**
+	 * Returns the servers requests get forwarded to. Servers can be added
+	 * and removed while the proxy is in use
+	 * @return The list of upstream servers
+	 */
+	public List<Upstream> getUpstreams() {
+		return upstreams;
+	}
+
+	/**
+	 * Returns the settings of the proxy
+	 * @return The proxy settings
+	 */
+	public ProxySettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Closes all idle connections to the upstream servers
+	 */
+	public void close() {
+		for (Upstream upstream : upstreams) {
+			upstream.close();
+		}
+	}
+
+	public void process(String requestPath, HttpRequest request, HttpResponse response) throws IOException {
+		Upstream[] candidates = upstreams.toArray(new Upstream[0]);
+		if (candidates.length == 0) {
+			response.sendError(HttpResponseCode.CODE_SERVICE_UNAVAILABLE, "No upstream servers");
+		}
+
+		String method = request.getRequestMethod();
+		boolean headRequest = "HEAD".equals(method);
+		long length = requestLength(request);
+		HttpHeaders headers = requestHeaders(request, length);
+		String target = requestTarget(request);
+
+		int first = select(candidates);
+		int failures = 0;
+		Upstream upstream = null;
+		HttpClientConnection conn = null;
+		while (conn == null) {
+			upstream = candidates[(first + failures) % candidates.length];
+			HttpClientConnection c;
+			try {
+				c = upstream.acquire(settings);
+			} catch (IOException ex) {
+				if (logger.isLoggable(Level.FINE)) {
+					logger.fine("Could not connect to upstream " + upstream + ": " + ex);
+				}
+				if (++failures >= candidates.length) {
+					response.sendError(HttpResponseCode.CODE_BAD_GATEWAY, "No upstream server could be reached");
+				}
+				continue;
+			}
+			boolean reused = c.getRequestCount() > 0;
+			try {
+				c.writeRequestHead(method, target, headers);
+				if (length != 0) {
+					sendRequestBody(request.getInputStream(), c.getRequestBody(length < 0));
+				}
+				c.readResponseHead(headRequest);
+				conn = c;
+			} catch (ClientException ex) {
+				upstream.discard(c);
+				throw (IOException) ex.getCause();
+			} catch (IOException ex) {
+				upstream.discard(c);
+				if (reused && length == 0 && !c.hasResponseStarted() && !isTimeout(ex) && isRetryable(method)) {
+					// The server probably closed the idle connection just
+					// before we used it, nothing was lost so we try again
+					logger.fine("Retrying request on a new connection to upstream " + upstream);
+					continue;
+				}
+				if (logger.isLoggable(Level.FINE)) {
+					logger.fine("Request to upstream " + upstream + " failed: " + ex);
+				}
+				if (isTimeout(ex)) {
+					response.sendError(HttpResponseCode.CODE_GATEWAY_TIMEOUT, "Upstream server did not respond in time");
+				} else {
+					response.sendError(HttpResponseCode.CODE_BAD_GATEWAY, "Invalid response from upstream server");
+				}
+			}
+		}
+
+		try {
+			sendResponse(request, response, conn);
+		} catch (IOException ex) {
+			upstream.discard(conn);
+			if (response.isCommitted()) {
+				// Too late to tell the client, closing the connection
+				// is the only way to let it know something went wrong
+				throw ex;
+			}
+			if (logger.isLoggable(Level.FINE)) {
+				logger.fine("Response from upstream " + upstream + " failed: " + ex);
+			}
+			response.sendError(isTimeout(ex) ? HttpResponseCode.CODE_GATEWAY_TIMEOUT : HttpResponseCode.CODE_BAD_GATEWAY, "Invalid response from upstream server");
+		}
+		upstream.release(conn, settings);
+	}
+
+	/**
+	 * Returns the index of the upstream server that should handle the
+	 * next request according to the balancing method
+	 * @param candidates The available upstream servers
+	 * @return The index of the selected upstream server
+	 */
+	private int select(Upstream[] candidates) {
+		int start = (next.getAndIncrement() & Integer.MAX_VALUE) % candidates.length;
+		if (settings.getBalancing() == Balancing.LEAST_CONNECTIONS) {
+			// Starting at the round-robin position spreads the load
+			// evenly among servers that are equally busy
+			int best = start;
+			int bestCount = candidates[start].getBusyCount();
+			for (int i = 1; i < candidates.length && bestCount > 0; i++) {
+				int idx = (start + i) % candidates.length;
+				int count = candidates[idx].getBusyCount();
+				if (count < bestCount) {
+					best = idx;
+					bestCount = count;
+				}
+			}
+			return best;
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the length of the request body
+	 * @param request The request
+	 * @return The length in bytes, 0 if there is no body
+	 * and -1 if the length isn't known up front
+	 * @throws java.io.IOException If the Content-Length header is malformed
+	 */
+	private long requestLength(HttpRequest request) throws IOException {
+		String contentLength = request.getHeader("Content-Length");
+		if (request.getHeader("Transfer-Encoding") != null) {
+			return -1;
+		} else if (contentLength != null) {
+			try {
+				return Long.parseLong(contentLength.trim());
+			} catch (NumberFormatException ex) {
+				throw new MalformedRequestException("Malformed Content-Length: " + contentLength);
+			}
+		} else if ("HTTP/2.0".equalsIgnoreCase(request.getRequestProtocol())) {
+			// HTTP/2 doesn't need to announce its bodies
+			String method = request.getRequestMethod();
+			return ("GET".equals(method) || "HEAD".equals(method)) ? 0 : -1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the request target to send to the upstream server
+	 * @param request The request
+	 * @return The path and query of the request
+	 */
+	private String requestTarget(HttpRequest request) {
+		String url = request.getUrl();
+		if (url != null && url.startsWith("/")) {
+			return url;
+		}
+		String target = UriEncoder.encode(request.getPath());
+		if (request.getQuery() != null) {
+			target += "?" + request.getQuery();
+		}
+		return target;
+	}
+
+	/**
+	 * Returns the headers to send to the upstream server. These are the
+	 * headers of the client's request without the hop-by-hop headers,
+	 * with the ones that tell the server how the client reached us added
+	 * @param request The request
+	 * @param length The length of the request body
+	 * @return The request headers for the upstream server
+	 */
+	private HttpHeaders requestHeaders(HttpRequest request, long length) {
+		HttpHeaders headers = new HttpHeaders();
+		String connection = request.getHeader("Connection");
+		for (String name : request.getHeaderNames()) {
+			if (!isHopByHop(name, connection)) {
+				for (String value : request.getHeaders(name)) {
+					headers.add(name, value);
+				}
+			}
+		}
+		String host = request.getHeader("Host");
+		if (host == null && request.getHost() != null) {
+			host = (request.getPort() > 0) ? request.getHost() + ":" + request.getPort() : request.getHost();
+			headers.set("Host", host);
+		}
+		if (host != null) {
+			headers.set("X-Forwarded-Host", host);
+		}
+		headers.set("X-Forwarded-Proto", request.isSecure() ? "https" : "http");
+		InetAddress remote = request.getRemoteAddress();
+		if (remote != null) {
+			String forwarded = joined(request.getHeaders("X-Forwarded-For"));
+			String client = remote.getHostAddress();
+			headers.set("X-Forwarded-For", (forwarded != null) ? forwarded + ", " + client : client);
+		}
+		if (length > 0) {
+			headers.set("Content-Length", String.valueOf(length));
+		} else if (length < 0) {
+			headers.set("Transfer-Encoding", "chunked");
+		}
+		return headers;
+	}
+
+	/**
+	 * Returns the given header values as a single comma-separated value
+	 * @param values The header values
+	 * @return The combined value or null if there are no values
+	 */
+	private static String joined(List<String> values) {
+		String result = null;
+		for (String value : values) {
+			result = (result != null) ? result + ", " + value : value;
+		}
+		return result;
+	}
+
+	/**
+	 * Determines if a request with the given method may be sent again
+	 * after the connection it was sent over failed. Only requests that
+	 * can be repeated without any further effect qualify
+	 * @param method The request method
+	 * @return True if the request may be sent again
+	 */
+	private boolean isRetryable(String method) {
+		if ("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method) || "TRACE".equals(method)) {
+			return true;
+		}
+		return settings.isRetryPutDelete() && ("PUT".equals(method) || "DELETE".equals(method));
+	}
+
+	/**
+	 * Copies the request body to the upstream server
+	 * @param in The request body
+	 * @param out The stream to the upstream server
+	 * @throws java.io.IOException If the body could not be written
+	 * @throws ClientException If the body could not be read
+	 */
+	private void sendRequestBody(InputStream in, OutputStream out) throws IOException {
+		byte[] buf = new byte[BUFFER_SIZE];
+		for (;;) {
+			int n;
+			try {
+				n = in.read(buf);
+			} catch (IOException ex) {
+				throw new ClientException(ex);
+			}
+			if (n < 0) {
+				break;
+			}
+			out.write(buf, 0, n);
+		}
+		out.close();
+	}
+
+	/**
+	 * Sends the upstream server's response to the client. The body is
+	 * flushed to the client whenever no more data is immediately available
+	 * so responses that are streamed by the upstream server stay streaming
+	 * @param request The request
+	 * @param response The response to the client
+	 * @param conn The connection the upstream response can be read from
+	 * @throws java.io.IOException If the response could not be copied
+	 */
+	private void sendResponse(HttpRequest request, HttpResponse response, HttpClientConnection conn) throws IOException {
+		int code = conn.getResponseCode();
+		HttpResponseCode responseCode = HttpResponseCode.getByCode(code);
+		if (responseCode == null) {
+			responseCode = HttpResponseCode.getByCode(code / 100 * 100);
+			if (responseCode == null) {
+				responseCode = HttpResponseCode.CODE_BAD_GATEWAY;
+			}
+		}
+		response.setResponseCode(responseCode);
+
+		HttpHeaders headers = conn.getResponseHeaders();
+		String connection = headers.get("Connection");
+		for (int i = 0; i < headers.size(); i++) {
+			String name = headers.getName(i);
+			if (!isHopByHop(name, connection) && !isServerHeader(name)) {
+				// The first one replaces any default the response might
+				// have, like its Content-Type, the others are added to it
+				if (isFirst(headers, i)) {
+					response.setHeader(name, headers.getValue(i));
+				} else {
+					response.addHeader(name, headers.getValue(i));
+				}
+			}
+		}
+		if (conn.hasKnownLength()) {
+			String contentLength = headers.get("Content-Length");
+			if (contentLength != null) {
+				response.setHeader("Content-Length", contentLength);
+			}
+		} else if ("HTTP/1.1".equalsIgnoreCase(request.getRequestProtocol())) {
+			response.setHeader("Transfer-Encoding", "chunked");
+		} else if (!"HTTP/2.0".equalsIgnoreCase(request.getRequestProtocol())) {
+			response.setHeader("Connection", "close");
+		}
+
+		InputStream in = conn.getResponseBody();
+		OutputStream out = response.getOutputStream();
+		byte[] buf = new byte[BUFFER_SIZE];
+		int n;
+		while ((n = in.read(buf)) >= 0) {
+			out.write(buf, 0, n);
+			if (in.available() == 0) {
+				out.flush();
+			}
+		}
+		// Also sends the head for responses without a body
+		out.close();
+	}
+
+	/**
+	 * Determines if a header only applies to a single connection
+	 * @param name The name of the header
+	 * @param connection The value of the Connection header, which can
+	 * list extra hop-by-hop headers, can be null
+	 * @return <code>true</code> if the header must not be passed on
+	 */
+	private static boolean isHopByHop(String name, String connection) {
+		for (String hop : HOP_BY_HOP_HEADERS) {
+			if (HttpHeaders.equalsName(name, hop)) {
+				return true;
+			}
+		}
+		if (connection != null) {
+			for (String token : connection.split(",")) {
+				if (HttpHeaders.equalsName(name, token.trim())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if a header is the first one with its name
+	 * @param headers The headers
+	 * @param index The index of the header to check
+	 * @return <code>true</code> if no earlier header has the same name
+	 */
+	private static boolean isFirst(HttpHeaders headers, int index) {
+		String name = headers.getName(index);
+		for (int i = 0; i < index; i++) {
+			if (HttpHeaders.equalsName(name, headers.getName(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if a header is one that the server always writes itself
+	 * @param name The name of the header
+	 * @return <code>true</code> if the upstream value must be dropped
+	 */
+	private static boolean isServerHeader(String name) {
+		for (String header : SERVER_HEADERS) {
+			if (HttpHeaders.equalsName(name, header)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if a failure was caused by the upstream server taking
+	 * too long to answer
+	 * @param ex The failure
+	 * @return <code>true</code> if it was a time-out
+	 */
+	private static boolean isTimeout(IOException ex) {
+		return ex instanceof SocketTimeoutException
+				|| (ex instanceof RequestLimitException && ((RequestLimitException) ex).getResponseCode() == HttpResponseCode.CODE_REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * Wraps a failure to read the client's request body so it can be told
+	 * apart from a failure to talk to the upstream server
+	 */
+	private static class ClientException extends IOException {
+
+		/**
+		 * Creates a new instance
+		 * @param cause The failure reading the request body
+		 */
+		public ClientException(IOException cause) {
+			super(cause.getMessage());
+			initCause(cause);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * SwappableServlet.java
+ *
+ * Created on Oct 19, 2026, 10:52:14 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.servlet;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpResponse;
+
+/**
+ * This servlet hands all requests to another servlet that can be replaced
+ * at any time while the server is running. The servlet is read only once
+ * per request, so a request that already started finishes with the servlet
+ * it started with while the requests after it go to the new one. Used as
+ * the default servlet of a listener it makes it possible to change its
+ * routes without restarting it and without dropping any connections
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class SwappableServlet implements Servlet {
+
+	/**
+	 * The servlet that currently handles the requests
+	 */
+	private final AtomicReference<Servlet> servlet;
+
+	/**
+	 * Creates a new SwappableServlet
+	 * @param servlet The servlet that handles the requests
+	 */
+	public SwappableServlet(Servlet servlet) {
+		this.servlet = new AtomicReference<Servlet>(servlet);
+	}
+
+	/**
+	 * Returns the servlet that currently handles the requests
+	 * @return The wrapped servlet
+	 */
+	public Servlet getServlet() {
+		return servlet.get();
+	}
+
+	/**
+	 * Replaces the servlet that handles the requests
+	 * @param servlet The new servlet
+	 * @return The servlet that was replaced
+	 */
+	public Servlet setServlet(Servlet servlet) {
+		return this.servlet.getAndSet(servlet);
+	}
+
+	public void process(String requestPath, HttpRequest request, HttpResponse response) throws IOException {
+		servlet.get().process(requestPath, request, response);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * WebSocketServlet.java
+ *
+ * Created on Oct 19, 2026, 5:55:11 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.servlet;
+
+import java.io.IOException;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.websocket.WebSocketHandler;
+import org.codejive.websrv.protocol.websocket.WebSocketSettings;
+import org.codejive.websrv.protocol.websocket.WebSocketUpgrade;
+
+/**
+ * This servlet accepts WebSocket handshakes and hands the resulting
+ * connections over to a WebSocketHandler. Requests that are not a valid
+ * handshake get an error response. WebSockets can only be opened on
+ * HTTP/1.1 connections
+ * @see org.codejive.websrv.protocol.websocket.WebSocketHandler
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class WebSocketServlet implements Servlet {
+
+	/**
+	 * The handler that will receive the messages
+	 */
+	private WebSocketHandler handler;
+
+	/**
+	 * The settings for the connections
+	 */
+	private WebSocketSettings settings;
+
+	/**
+	 * Creates a new WebSocketServlet using the default settings
+	 * @param handler The handler that will receive the messages of all
+	 * connections opened through this servlet
+	 */
+	public WebSocketServlet(WebSocketHandler handler) {
+		this.handler = handler;
+		settings = new WebSocketSettings();
+	}
+
+	/**
+	 * Returns the handler that receives the messages
+	 * @return The handler
+	 */
+	public WebSocketHandler getHandler() {
+		return handler;
+	}
+
+	/**
+	 * Returns the settings for new connections
+	 * @return The settings
+	 */
+	public WebSocketSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Sets the settings for new connections
+	 * @param settings The settings
+	 */
+	public void setSettings(WebSocketSettings settings) {
+		this.settings = settings;
+	}
+
+	public void process(String requestPath, HttpRequest request, HttpResponse response) throws IOException {
+		if (!WebSocketUpgrade.isUpgradeRequest(request)) {
+			response.setHeader("Upgrade", "websocket");
+			response.sendError(HttpResponseCode.CODE_UPGRADE_REQUIRED, "This resource requires a WebSocket connection");
+		}
+		if (!WebSocketUpgrade.isSupportedVersion(request)) {
+			response.setHeader("Sec-WebSocket-Version", WebSocketUpgrade.VERSION);
+			response.sendError(HttpResponseCode.CODE_UPGRADE_REQUIRED, "Unsupported WebSocket version");
+		}
+		String key = request.getHeader("Sec-WebSocket-Key");
+		if (!WebSocketUpgrade.isValidKey(key)) {
+			response.sendError(HttpResponseCode.CODE_BAD_REQUEST, "Invalid WebSocket key");
+		}
+
+		WebSocketUpgrade upgrade = new WebSocketUpgrade(request, handler, settings);
+		response.setResponseCode(HttpResponseCode.CODE_SWITCHING_PROTOCOLS);
+		response.removeHeader("Content-Type");
+		response.setHeader("Upgrade", "websocket");
+		response.setHeader("Connection", "Upgrade");
+		response.setHeader("Sec-WebSocket-Accept", WebSocketUpgrade.getAcceptKey(key));
+		String extensions = upgrade.getExtensionsHeader();
+		if (extensions != null) {
+			response.setHeader("Sec-WebSocket-Extensions", extensions);
+		}
+		response.setUpgrade(upgrade);
+		// Send the response right away, the connection gets taken
+		// over as soon as we return
+		response.getOutputStream().flush();
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * ApplicationProtocols.java
+ *
+ * Created on Oct 19, 2026, 5:03:12 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.tls;
+
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * Gives access to the Application-Layer Protocol Negotiation (ALPN)
+ * extension of TLS, which clients use to announce the protocols they
+ * support (like "h2" for HTTP/2) during the handshake. The necessary API
+ * was only added in Java 9 so it is called using reflection, on older
+ * JVMs no protocol is ever negotiated
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public final class ApplicationProtocols {
+
+	/**
+	 * The method <code>SSLParameters.setApplicationProtocols()</code> or null
+	 */
+	private static final Method SET_PROTOCOLS;
+	/**
+	 * The method <code>SSLEngine.getApplicationProtocol()</code> or null
+	 */
+	private static final Method GET_PROTOCOL;
+
+	/**
+	 * Class private logger
+	 */
+	private static final Logger logger = Logger.getLogger(ApplicationProtocols.class.getName());
+
+	static {
+		Method set = null;
+		Method get = null;
+		try {
+			set = SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+			get = SSLEngine.class.getMethod("getApplicationProtocol");
+		} catch (NoSuchMethodException ex) {
+			logger.fine("ALPN is not supported by this JVM");
+			set = null;
+			get = null;
+		}
+		SET_PROTOCOLS = set;
+		GET_PROTOCOL = get;
+	}
+
+	/**
+	 * No instances allowed
+	 */
+	private ApplicationProtocols() {
+	}
+
+	/**
+	 * Indicates if the JVM supports ALPN
+	 * @return <code>true</code> if protocols can be negotiated
+	 */
+	public static boolean isSupported() {
+		return SET_PROTOCOLS != null;
+	}
+
+	/**
+	 * Sets the protocols the engine will accept, in order of preference.
+	 * This must be done before the handshake starts
+	 * @param engine The engine
+	 * @param protocols The names of the protocols
+	 * @return <code>true</code> if the protocols were set, <code>false</code>
+	 * if ALPN is not supported
+	 */
+	public static boolean set(SSLEngine engine, String[] protocols) {
+		if (SET_PROTOCOLS == null) {
+			return false;
+		}
+		try {
+			SSLParameters params = engine.getSSLParameters();
+			SET_PROTOCOLS.invoke(params, (Object) protocols.clone());
+			engine.setSSLParameters(params);
+			return true;
+		} catch (Exception ex) {
+			logger.log(Level.FINE, "Could not set application protocols", ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the protocol that was negotiated during the handshake
+	 * @param engine The engine
+	 * @return The name of the protocol or null if none was negotiated
+	 */
+	public static String get(SSLEngine engine) {
+		if (GET_PROTOCOL == null) {
+			return null;
+		}
+		try {
+			String protocol = (String) GET_PROTOCOL.invoke(engine);
+			return (protocol != null && protocol.length() > 0) ? protocol : null;
+		} catch (Exception ex) {
+			logger.log(Level.FINE, "Could not get application protocol", ex);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,472 @@
+/*
+ * SSLContextManager.java
+ *
+ * Created on Oct 19, 2026, 1:48:05 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.tls;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import org.codejive.websrv.util.BufferPool;
+
+/**
+ * Creates and maintains the server side <code>SSLContext</code> for a
+ * listener, using the key and certificate(s) found in a key store file.
+ * The file is checked for changes every now and then and when it was
+ * changed the context is reloaded, so certificates can be renewed
+ * without restarting the server. Connections that are already open keep
+ * on using the context they started with.
+ * The context's session cache is tuned so clients can resume their
+ * sessions, which makes reconnecting a lot cheaper than doing a full
+ * handshake every time
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class SSLContextManager {
+
+	/**
+	 * The file containing the server's key and certificate(s)
+	 */
+	private File keyStoreFile;
+	/**
+	 * The type of the key store (default = the JVM's default type)
+	 */
+	private String keyStoreType;
+	/**
+	 * The password for the key store
+	 */
+	private char[] keyStorePassword;
+	/**
+	 * The password for the key, if null the key store password is used
+	 */
+	private char[] keyPassword;
+	/**
+	 * The name of the protocol passed to <code>SSLContext.getInstance()</code>
+	 * (default = "TLS")
+	 */
+	private String protocol;
+	/**
+	 * The protocol versions to enable or null for the JVM's defaults
+	 */
+	private String[] enabledProtocols;
+	/**
+	 * The cipher suites to enable or null for the JVM's defaults
+	 */
+	private String[] enabledCipherSuites;
+	/**
+	 * The maximum number of sessions kept in the server's session cache,
+	 * 0 meaning unlimited (default = 20000)
+	 */
+	private int sessionCacheSize;
+	/**
+	 * The time in seconds that a session can be resumed after it was
+	 * created, 0 meaning forever (default = 3600)
+	 */
+	private int sessionTimeout;
+	/**
+	 * Let clients resume their sessions using session tickets (default = true)
+	 */
+	private boolean sessionTickets;
+	/**
+	 * The time in milliseconds between checks for changes of the key
+	 * store file, 0 meaning never (default = 5000)
+	 */
+	private long reloadInterval;
+	/**
+	 * The context currently in use
+	 */
+	private volatile SSLContext context;
+	/**
+	 * The pool the buffers of the connections are taken from
+	 */
+	private volatile BufferPool bufferPool;
+	/**
+	 * The time the key store file was last modified when it was loaded
+	 */
+	private long lastModified;
+	/**
+	 * The earliest time at which the key store file will be checked again
+	 */
+	private volatile long nextCheck;
+
+	/**
+	 * The JVM wide system property that enables session tickets
+	 */
+	private static final String SESSION_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
+	/**
+	 * The maximum number of buffers kept in the pool
+	 */
+	private static final int MAX_POOLED_BUFFERS = 1024;
+
+	/**
+	 * Class private logger
+	 */
+	private static final Logger logger = Logger.getLogger(SSLContextManager.class.getName());
+
+	/**
+	 * Creates a new manager without a key store
+	 */
+	public SSLContextManager() {
+		this(null, null);
+	}
+
+	/**
+	 * Creates a new manager using the given key store
+	 * @param keyStoreFile The file containing the server's key and certificate(s)
+	 * @param keyStorePassword The password for the key store
+	 */
+	public SSLContextManager(File keyStoreFile, String keyStorePassword) {
+		this.keyStoreFile = keyStoreFile;
+		setKeyStorePassword(keyStorePassword);
+		keyStoreType = KeyStore.getDefaultType();
+		protocol = "TLS";
+		sessionCacheSize = 20000;
+		sessionTimeout = 3600;
+		sessionTickets = true;
+		reloadInterval = 5000;
+	}
+
+	/**
+	 * Returns the file containing the server's key and certificate(s)
+	 * @return The key store file
+	 */
+	public File getKeyStoreFile() {
+		return keyStoreFile;
+	}
+
+	/**
+	 * Sets the file containing the server's key and certificate(s)
+	 * @param keyStoreFile The key store file
+	 */
+	public void setKeyStoreFile(File keyStoreFile) {
+		this.keyStoreFile = keyStoreFile;
+	}
+
+	/**
+	 * Returns the type of the key store (eg "JKS" or "PKCS12")
+	 * @return The key store type
+	 */
+	public String getKeyStoreType() {
+		return keyStoreType;
+	}
+
+	/**
+	 * Sets the type of the key store (eg "JKS" or "PKCS12")
+	 * @param keyStoreType The key store type
+	 */
+	public void setKeyStoreType(String keyStoreType) {
+		this.keyStoreType = keyStoreType;
+	}
+
+	/**
+	 * Sets the password for the key store
+	 * @param keyStorePassword The password or null
+	 */
+	public void setKeyStorePassword(String keyStorePassword) {
+		this.keyStorePassword = (keyStorePassword != null) ? keyStorePassword.toCharArray() : null;
+	}
+
+	/**
+	 * Sets the password for the key, by default the password for the
+	 * key store is used
+	 * @param keyPassword The password or null
+	 */
+	public void setKeyPassword(String keyPassword) {
+		this.keyPassword = (keyPassword != null) ? keyPassword.toCharArray() : null;
+	}
+
+	/**
+	 * Returns the name of the protocol used to obtain the SSLContext
+	 * @return The protocol name
+	 */
+	public String getProtocol() {
+		return protocol;
+	}
+
+	/**
+	 * Sets the name of the protocol used to obtain the SSLContext
+	 * @param protocol The protocol name (eg "TLS" or "TLSv1.2")
+	 */
+	public void setProtocol(String protocol) {
+		this.protocol = protocol;
+	}
+
+	/**
+	 * Returns the protocol versions that will be enabled
+	 * @return The protocol versions or null for the JVM's defaults
+	 */
+	public String[] getEnabledProtocols() {
+		return enabledProtocols;
+	}
+
+	/**
+	 * Sets the protocol versions that will be enabled
+	 * @param enabledProtocols The protocol versions or null for the JVM's defaults
+	 */
+	public void setEnabledProtocols(String[] enabledProtocols) {
+		this.enabledProtocols = enabledProtocols;
+	}
+
+	/**
+	 * Returns the cipher suites that will be enabled
+	 * @return The cipher suites or null for the JVM's defaults
+	 */
+	public String[] getEnabledCipherSuites() {
+		return enabledCipherSuites;
+	}
+
+	/**
+	 * Sets the cipher suites that will be enabled
+	 * @param enabledCipherSuites The cipher suites or null for the JVM's defaults
+	 */
+	public void setEnabledCipherSuites(String[] enabledCipherSuites) {
+		this.enabledCipherSuites = enabledCipherSuites;
+	}
+
+	/**
+	 * Returns the maximum number of sessions kept in the session cache
+	 * @return The maximum number of sessions, 0 meaning unlimited
+	 */
+	public int getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of sessions kept in the session cache
+	 * @param sessionCacheSize The maximum number of sessions, 0 meaning unlimited
+	 */
+	public void setSessionCacheSize(int sessionCacheSize) {
+		if (sessionCacheSize < 0) {
+			throw new IllegalArgumentException("sessionCacheSize must not be negative");
+		}
+		this.sessionCacheSize = sessionCacheSize;
+		applySessionSettings(context);
+	}
+
+	/**
+	 * Returns the time in seconds that a session can be resumed after it was created
+	 * @return The time in seconds, 0 meaning forever
+	 */
+	public int getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	/**
+	 * Sets the time in seconds that a session can be resumed after it was created
+	 * @param sessionTimeout The time in seconds, 0 meaning forever
+	 */
+	public void setSessionTimeout(int sessionTimeout) {
+		if (sessionTimeout < 0) {
+			throw new IllegalArgumentException("sessionTimeout must not be negative");
+		}
+		this.sessionTimeout = sessionTimeout;
+		applySessionSettings(context);
+	}
+
+	/**
+	 * Indicates if clients can resume their sessions using session tickets
+	 * @return <code>true</code> if session tickets are enabled
+	 */
+	public boolean isSessionTickets() {
+		return sessionTickets;
+	}
+
+	/**
+	 * Determines if clients can resume their sessions using session tickets,
+	 * which don't take up any room in the server's session cache. The JVM
+	 * only supports turning this on or off for the entire process, using
+	 * the system property "jdk.tls.server.enableSessionTicketExtension".
+	 * If that property wasn't set explicitly it will be set when the first
+	 * context gets loaded, which only has effect if no other part of the
+	 * application has used TLS yet. JVMs before version 13 don't support
+	 * session tickets on the server side at all, they will only use the
+	 * session cache
+	 * @param sessionTickets <code>true</code> if session tickets should be enabled
+	 */
+	public void setSessionTickets(boolean sessionTickets) {
+		this.sessionTickets = sessionTickets;
+	}
+
+	/**
+	 * Returns the time in milliseconds between checks for changes of
+	 * the key store file
+	 * @return The time in milliseconds, 0 meaning never
+	 */
+	public long getReloadInterval() {
+		return reloadInterval;
+	}
+
+	/**
+	 * Sets the time in milliseconds between checks for changes of
+	 * the key store file
+	 * @param reloadInterval The time in milliseconds, 0 meaning never
+	 */
+	public void setReloadInterval(long reloadInterval) {
+		if (reloadInterval < 0) {
+			throw new IllegalArgumentException("reloadInterval must not be negative");
+		}
+		this.reloadInterval = reloadInterval;
+	}
+
+	/**
+	 * Loads the key store and creates a new context, replacing the one
+	 * that was used so far
+	 * @throws java.io.IOException If the key store could not be read
+	 * @throws java.security.GeneralSecurityException If no valid context
+	 * could be created from the key store
+	 */
+	public synchronized void load() throws IOException, GeneralSecurityException {
+		if (keyStoreFile == null) {
+			throw new IllegalStateException("No key store file was specified");
+		}
+		if (System.getProperty(SESSION_TICKETS_PROPERTY) == null) {
+			System.setProperty(SESSION_TICKETS_PROPERTY, String.valueOf(sessionTickets));
+		}
+
+		long modified = keyStoreFile.lastModified();
+		KeyStore keyStore = KeyStore.getInstance(keyStoreType);
+		InputStream in = new FileInputStream(keyStoreFile);
+		try {
+			keyStore.load(in, keyStorePassword);
+		} finally {
+			in.close();
+		}
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(keyStore, (keyPassword != null) ? keyPassword : keyStorePassword);
+		SSLContext ctx = SSLContext.getInstance(protocol);
+		ctx.init(kmf.getKeyManagers(), null, null);
+		applySessionSettings(ctx);
+
+		// Make sure the pooled buffers are large enough for this context
+		SSLSession session = ctx.createSSLEngine().getSession();
+		int size = Math.max(session.getPacketBufferSize(), session.getApplicationBufferSize());
+		if (bufferPool == null || bufferPool.getBufferSize() < size) {
+			bufferPool = new BufferPool(size, MAX_POOLED_BUFFERS);
+		}
+
+		context = ctx;
+		lastModified = modified;
+		nextCheck = System.currentTimeMillis() + reloadInterval;
+		if (logger.isLoggable(Level.INFO)) {
+			logger.info("Loaded key store " + keyStoreFile);
+		}
+	}
+
+	/**
+	 * Indicates if a context has been loaded
+	 * @return <code>true</code> if a context is available
+	 */
+	public boolean isLoaded() {
+		return context != null;
+	}
+
+	/**
+	 * Returns the context to use for new connections, first reloading it
+	 * if the key store file changed since it was last loaded. If the new
+	 * key store can't be used the previous context remains in use
+	 * @return The current context
+	 */
+	public SSLContext getContext() {
+		if (context == null) {
+			throw new IllegalStateException("No context was loaded");
+		}
+		if (reloadInterval > 0 && System.currentTimeMillis() >= nextCheck) {
+			checkReload();
+		}
+		return context;
+	}
+
+	/**
+	 * Reloads the context if the key store file was modified
+	 */
+	private synchronized void checkReload() {
+		long now = System.currentTimeMillis();
+		if (now < nextCheck) {
+			// Some other thread just did the check
+			return;
+		}
+		nextCheck = now + reloadInterval;
+		long modified = keyStoreFile.lastModified();
+		if (modified != lastModified && modified != 0) {
+			try {
+				load();
+			} catch (Exception ex) {
+				// Don't keep trying until the file changes again
+				lastModified = modified;
+				logger.log(Level.WARNING, "Could not reload key store " + keyStoreFile + ", keeping the previous one", ex);
+			}
+		}
+	}
+
+	/**
+	 * Applies the session cache settings to the given context
+	 * @param ctx The context to update or null
+	 */
+	private void applySessionSettings(SSLContext ctx) {
+		if (ctx != null) {
+			SSLSessionContext sessions = ctx.getServerSessionContext();
+			sessions.setSessionCacheSize(sessionCacheSize);
+			sessions.setSessionTimeout(sessionTimeout);
+		}
+	}
+
+	/**
+	 * Creates a new server side engine using the current context
+	 * @param peerHost The address of the client or null
+	 * @param peerPort The port of the client
+	 * @return A new engine
+	 */
+	public SSLEngine createEngine(String peerHost, int peerPort) {
+		SSLEngine engine = getContext().createSSLEngine(peerHost, peerPort);
+		engine.setUseClientMode(false);
+		if (enabledProtocols != null) {
+			engine.setEnabledProtocols(enabledProtocols);
+		}
+		if (enabledCipherSuites != null) {
+			engine.setEnabledCipherSuites(enabledCipherSuites);
+		}
+		return engine;
+	}
+
+	/**
+	 * Wraps the given, newly accepted, connection in an SSL socket. No
+	 * data is read or written yet, the handshake will be done as soon
+	 * as the socket gets used
+	 * @param socket The plain socket to wrap
+	 * @return The SSL socket
+	 * @throws java.io.IOException If the socket could not be wrapped
+	 */
+	public SSLEngineSocket createSocket(Socket socket) throws IOException {
+		SSLEngine engine = createEngine(socket.getInetAddress().getHostAddress(), socket.getPort());
+		return new SSLEngineSocket(socket, engine, bufferPool);
+	}
+}
@@ -0,0 +1,1036 @@
+/*
+ * SSLEngineSocket.java
+ *
+ * Created on Oct 19, 2026, 1:12:40 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.tls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import org.codejive.websrv.util.BufferPool;
+
+/**
+ * An SSLSocket that wraps an already connected plain socket and that uses
+ * an <code>SSLEngine</code> to encrypt and decrypt all data passing
+ * through it. Because the result is an ordinary blocking socket it can be
+ * handed to any protocol handler without that handler having to know about
+ * TLS at all. Unlike the JDK's own SSL sockets this one still exposes the
+ * channel of the wrapped socket, which means connections can be parked on
+ * a selector while they're idle just like plain ones. That channel carries
+ * the encrypted data though, so it must only be used to wait for
+ * readiness, never to read or write directly.
+ * The handshake is performed on first use of either of the streams. The
+ * network buffers are borrowed from a pool and given back whenever they
+ * are empty, so idle connections hold on to as little memory as possible
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class SSLEngineSocket extends SSLSocket {
+
+	/**
+	 * The plain socket carrying the encrypted data
+	 */
+	private final Socket socket;
+	/**
+	 * The engine doing the actual encryption and decryption
+	 */
+	private final SSLEngine engine;
+	/**
+	 * The pool that the network and application buffers are taken from
+	 */
+	private final BufferPool bufferPool;
+	/**
+	 * The stream encrypted data is read from
+	 */
+	private final InputStream netInput;
+	/**
+	 * The stream encrypted data is written to
+	 */
+	private final OutputStream netOutput;
+	/**
+	 * Encrypted data read from the network that hasn't been decrypted yet
+	 */
+	private ByteBuffer netIn;
+	/**
+	 * Decrypted data that hasn't been read by the application yet
+	 */
+	private ByteBuffer appIn;
+	/**
+	 * Encrypted data waiting to be written to the network
+	 */
+	private ByteBuffer netOut;
+	/**
+	 * Held while reading and decrypting, must always be taken before
+	 * <code>writeLock</code> when both are needed
+	 */
+	private final ReentrantLock readLock;
+	/**
+	 * Held while encrypting and writing
+	 */
+	private final ReentrantLock writeLock;
+	/**
+	 * The stream the application reads decrypted data from
+	 */
+	private final InputStream input;
+	/**
+	 * The stream the application writes data to that must be encrypted
+	 */
+	private final OutputStream output;
+	/**
+	 * The objects interested in the completion of the handshake
+	 */
+	private final ArrayList<HandshakeCompletedListener> listeners;
+	/**
+	 * Indicates that the initial handshake has begun
+	 */
+	private boolean handshakeStarted;
+	/**
+	 * Indicates that the initial handshake has completed
+	 */
+	private volatile boolean handshakeComplete;
+	/**
+	 * Indicates that no more data will arrive from the client
+	 */
+	private boolean inboundDone;
+	/**
+	 * Indicates that the socket has been closed
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * An empty buffer used as the source for wraps that only produce
+	 * handshake data
+	 */
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	/**
+	 * Class private logger
+	 */
+	private static final Logger logger = Logger.getLogger(SSLEngineSocket.class.getName());
+
+	/**
+	 * Creates a new socket that uses the given engine to secure all
+	 * communication over the given, already connected, socket
+	 * @param socket The connected plain socket
+	 * @param engine The engine to use, it must not have been used yet
+	 * @param bufferPool The pool to take the network buffers from. Its
+	 * buffers should be at least as large as the engine's packet size
+	 * @throws java.io.IOException If the streams of the socket could
+	 * not be obtained
+	 */
+	public SSLEngineSocket(Socket socket, SSLEngine engine, BufferPool bufferPool) throws IOException {
+		this.socket = socket;
+		this.engine = engine;
+		this.bufferPool = bufferPool;
+		netInput = socket.getInputStream();
+		netOutput = socket.getOutputStream();
+		readLock = new ReentrantLock();
+		writeLock = new ReentrantLock();
+		input = new EngineInputStream();
+		output = new EngineOutputStream();
+		listeners = new ArrayList<HandshakeCompletedListener>();
+	}
+
+	/**
+	 * Returns the engine used by this socket
+	 * @return The SSL engine
+	 */
+	public SSLEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Returns the application protocol that was negotiated with the
+	 * client during the handshake using ALPN
+	 * @return The name of the protocol or null if none was negotiated
+	 * @see org.codejive.websrv.tls.ApplicationProtocols
+	 */
+	public String getApplicationProtocol() {
+		return ApplicationProtocols.get(engine);
+	}
+
+	/**
+	 * Performs the initial handshake if that wasn't done already. Unlike
+	 * the JDK's implementation this method will not start a new handshake
+	 * once the initial one has completed
+	 * @throws java.io.IOException If the handshake failed
+	 */
+	@Override
+	public void startHandshake() throws IOException {
+		readLock.lock();
+		try {
+			writeLock.lock();
+			try {
+				if (handshakeComplete) {
+					return;
+				}
+				checkOpen();
+				if (!handshakeStarted) {
+					engine.beginHandshake();
+					handshakeStarted = true;
+				}
+				HandshakeStatus status = engine.getHandshakeStatus();
+				while (status != HandshakeStatus.NOT_HANDSHAKING && status != HandshakeStatus.FINISHED) {
+					switch (status) {
+						case NEED_TASK:
+							runTasks();
+							break;
+						case NEED_WRAP:
+							wrapHandshake();
+							break;
+						case NEED_UNWRAP:
+							if (!unwrap()) {
+								throw new SSLHandshakeException("Connection closed during handshake");
+							}
+							break;
+						default:
+							break;
+					}
+					status = engine.getHandshakeStatus();
+				}
+				handshakeFinished();
+			} finally {
+				releaseOutputBuffer();
+				writeLock.unlock();
+			}
+		} finally {
+			releaseInputBuffers();
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Makes sure the initial handshake has been performed
+	 * @throws java.io.IOException If the handshake failed
+	 */
+	private void ensureHandshake() throws IOException {
+		if (!handshakeComplete) {
+			startHandshake();
+		}
+	}
+
+	/**
+	 * Marks the initial handshake as completed and notifies the listeners
+	 */
+	private void handshakeFinished() {
+		if (handshakeComplete) {
+			return;
+		}
+		handshakeComplete = true;
+		HandshakeCompletedListener[] ls;
+		synchronized (listeners) {
+			ls = listeners.toArray(new HandshakeCompletedListener[listeners.size()]);
+		}
+		if (ls.length > 0) {
+			HandshakeCompletedEvent event = new HandshakeCompletedEvent(this, engine.getSession());
+			for (HandshakeCompletedListener l : ls) {
+				l.handshakeCompleted(event);
+			}
+		}
+	}
+
+	/**
+	 * Reads and decrypts data for the application. Blocks until at least
+	 * one byte is available
+	 * @param b The buffer to read into
+	 * @param off The offset in the buffer
+	 * @param len The maximum number of bytes to read
+	 * @return The number of bytes read or -1 at the end of the stream
+	 * @throws java.io.IOException If reading or decrypting failed
+	 */
+	private int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		ensureHandshake();
+		readLock.lock();
+		try {
+			for (;;) {
+				if (appIn != null && appIn.position() > 0) {
+					appIn.flip();
+					int n = Math.min(len, appIn.remaining());
+					appIn.get(b, off, n);
+					appIn.compact();
+					return n;
+				}
+				if (inboundDone || !unwrap()) {
+					return -1;
+				}
+			}
+		} finally {
+			releaseInputBuffers();
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Decrypts the next record, reading more data from the network when
+	 * necessary. Any handshake messages that need to be sent in return
+	 * are sent right away. The caller must hold <code>readLock</code>
+	 * @return <code>false</code> if no more data will arrive
+	 * @throws java.io.IOException If reading or decrypting failed
+	 */
+	private boolean unwrap() throws IOException {
+		if (netIn == null) {
+			netIn = acquireBuffer();
+		}
+		if (appIn == null) {
+			appIn = acquireBuffer();
+		}
+		if (netIn.position() == 0 && !fill()) {
+			return closeInbound();
+		}
+		for (;;) {
+			netIn.flip();
+			SSLEngineResult result;
+			try {
+				result = engine.unwrap(netIn, appIn);
+			} finally {
+				netIn.compact();
+			}
+			switch (result.getStatus()) {
+				case OK:
+					handleStatus(result.getHandshakeStatus());
+					return true;
+				case BUFFER_UNDERFLOW:
+					if (!netIn.hasRemaining()) {
+						netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+					}
+					if (!fill()) {
+						return closeInbound();
+					}
+					break;
+				case BUFFER_OVERFLOW:
+					if (appIn.position() > 0) {
+						// Let the application empty the buffer first
+						return true;
+					}
+					appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+					break;
+				case CLOSED:
+					inboundDone = true;
+					handleStatus(result.getHandshakeStatus());
+					return false;
+			}
+		}
+	}
+
+	/**
+	 * Reads as much encrypted data from the network as will fit in the
+	 * network input buffer. Blocks until at least one byte was read
+	 * @return <code>false</code> if the end of the stream was reached
+	 * @throws java.io.IOException If reading failed
+	 */
+	private boolean fill() throws IOException {
+		int n = netInput.read(netIn.array(), netIn.arrayOffset() + netIn.position(), netIn.remaining());
+		if (n < 0) {
+			return false;
+		}
+		netIn.position(netIn.position() + n);
+		return true;
+	}
+
+	/**
+	 * Tells the engine that no more data will arrive from the client.
+	 * Clients that just close the connection without properly ending
+	 * the session are so common that we don't consider that an error
+	 * @return Always <code>false</code>
+	 */
+	private boolean closeInbound() {
+		inboundDone = true;
+		try {
+			engine.closeInbound();
+		} catch (SSLException ex) {
+			// The client didn't send a close_notify, we don't care
+		}
+		return false;
+	}
+
+	/**
+	 * Takes care of whatever the engine needs to continue a handshake,
+	 * except for reading more data
+	 * @param status The handshake status as returned by the engine
+	 * @throws java.io.IOException If handshake data could not be sent
+	 */
+	private void handleStatus(HandshakeStatus status) throws IOException {
+		for (;;) {
+			switch (status) {
+				case NEED_TASK:
+					runTasks();
+					status = engine.getHandshakeStatus();
+					break;
+				case NEED_WRAP:
+					status = wrapHandshake();
+					break;
+				case FINISHED:
+					handshakeFinished();
+					return;
+				default:
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Runs the engine's delegated tasks on the current thread
+	 */
+	private void runTasks() {
+		Runnable task;
+		while ((task = engine.getDelegatedTask()) != null) {
+			task.run();
+		}
+	}
+
+	/**
+	 * Lets the engine produce handshake data and sends it to the client.
+	 * As long as the engine has more messages to send they are collected
+	 * so a complete flight of handshake messages goes out in one write
+	 * @return The handshake status after the wrap
+	 * @throws java.io.IOException If the data could not be sent
+	 */
+	private HandshakeStatus wrapHandshake() throws IOException {
+		writeLock.lock();
+		try {
+			if (netOut == null) {
+				netOut = acquireBuffer();
+			}
+			for (;;) {
+				SSLEngineResult result = engine.wrap(EMPTY, netOut);
+				switch (result.getStatus()) {
+					case BUFFER_OVERFLOW:
+						if (netOut.position() > 0) {
+							flushOutput();
+						} else {
+							netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+						}
+						break;
+					case CLOSED:
+						flushOutput();
+						return HandshakeStatus.NOT_HANDSHAKING;
+					default:
+						HandshakeStatus status = result.getHandshakeStatus();
+						if (status == HandshakeStatus.NEED_WRAP && result.bytesProduced() > 0) {
+							// More to come, send it all together
+							break;
+						}
+						flushOutput();
+						return status;
+				}
+			}
+		} finally {
+			releaseOutputBuffer();
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Encrypts the given data and writes it to the network
+	 * @param b The data to write
+	 * @param off The offset of the data
+	 * @param len The number of bytes to write
+	 * @throws java.io.IOException If encrypting or writing failed
+	 */
+	private void write(byte[] b, int off, int len) throws IOException {
+		ensureHandshake();
+		writeLock.lock();
+		try {
+			checkOpen();
+			if (netOut == null) {
+				netOut = acquireBuffer();
+			}
+			ByteBuffer src = ByteBuffer.wrap(b, off, len);
+			while (src.hasRemaining()) {
+				netOut.clear();
+				SSLEngineResult result = engine.wrap(src, netOut);
+				switch (result.getStatus()) {
+					case OK:
+						flushOutput();
+						if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+							runTasks();
+						} else if (result.getHandshakeStatus() == HandshakeStatus.NEED_UNWRAP
+								&& result.bytesConsumed() == 0) {
+							awaitUnwrap();
+						}
+						break;
+					case BUFFER_OVERFLOW:
+						netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+						break;
+					case CLOSED:
+						throw new SocketException("Socket is closed");
+					default:
+						throw new SSLException("Unexpected engine state " + result.getStatus());
+				}
+			}
+		} finally {
+			releaseOutputBuffer();
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for a reading thread to process the data the engine is
+	 * waiting for before it can continue to encrypt. This only happens
+	 * when a client starts a new handshake while we're writing. The
+	 * caller must hold <code>writeLock</code> once
+	 * @throws java.io.IOException If we waited longer than the socket's
+	 * time-out or if the socket got closed
+	 */
+	private void awaitUnwrap() throws IOException {
+		int timeout = socket.getSoTimeout();
+		long end = System.currentTimeMillis() + timeout;
+		writeLock.unlock();
+		try {
+			while (engine.getHandshakeStatus() == HandshakeStatus.NEED_UNWRAP) {
+				checkOpen();
+				if (timeout > 0 && System.currentTimeMillis() >= end) {
+					throw new SocketTimeoutException("Timed out waiting for handshake");
+				}
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new SocketException("Interrupted waiting for handshake");
+				}
+			}
+		} finally {
+			writeLock.lock();
+		}
+	}
+
+	/**
+	 * Writes the contents of the network output buffer to the network.
+	 * The caller must hold <code>writeLock</code>
+	 * @throws java.io.IOException If writing failed
+	 */
+	private void flushOutput() throws IOException {
+		if (netOut.position() > 0) {
+			netOutput.write(netOut.array(), netOut.arrayOffset(), netOut.position());
+			netOut.clear();
+		}
+	}
+
+	/**
+	 * Sends a close_notify to the client if that's possible without
+	 * blocking on a lock and without waiting for other threads
+	 */
+	private void closeOutbound() {
+		engine.closeOutbound();
+		SocketChannel channel = socket.getChannel();
+		if (!handshakeStarted || (channel != null && !channel.isBlocking()) || !writeLock.tryLock()) {
+			return;
+		}
+		try {
+			if (netOut == null) {
+				netOut = acquireBuffer();
+			}
+			while (!engine.isOutboundDone()) {
+				netOut.clear();
+				SSLEngineResult result = engine.wrap(EMPTY, netOut);
+				if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+					netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+					continue;
+				}
+				flushOutput();
+				if (result.bytesProduced() == 0) {
+					break;
+				}
+			}
+		} catch (IOException ex) {
+			// Not being able to say goodbye isn't a problem
+			logger.log(Level.FINEST, "Could not send close_notify", ex);
+		} finally {
+			releaseOutputBuffer();
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns a buffer from the pool, ready to be filled
+	 * @return An empty buffer
+	 */
+	private ByteBuffer acquireBuffer() {
+		return ByteBuffer.wrap(bufferPool.acquire());
+	}
+
+	/**
+	 * Returns a buffer with at least the given capacity that holds the
+	 * same data as the given buffer, which is given back to the pool
+	 * @param buf The buffer to enlarge, ready to be filled
+	 * @param size The minimum size of the new buffer
+	 * @return The new buffer, ready to be filled
+	 */
+	private ByteBuffer enlarge(ByteBuffer buf, int size) {
+		ByteBuffer result = ByteBuffer.allocate(Math.max(size, buf.capacity() * 2));
+		buf.flip();
+		result.put(buf);
+		bufferPool.release(buf.array());
+		return result;
+	}
+
+	/**
+	 * Gives the input buffers back to the pool if they are empty.
+	 * The caller must hold <code>readLock</code>
+	 */
+	private void releaseInputBuffers() {
+		if (netIn != null && netIn.position() == 0) {
+			bufferPool.release(netIn.array());
+			netIn = null;
+		}
+		if (appIn != null && appIn.position() == 0) {
+			bufferPool.release(appIn.array());
+			appIn = null;
+		}
+	}
+
+	/**
+	 * Gives the output buffer back to the pool, it is always empty
+	 * once a write has finished. The caller must hold <code>writeLock</code>
+	 */
+	private void releaseOutputBuffer() {
+		if (netOut != null && writeLock.getHoldCount() == 1) {
+			bufferPool.release(netOut.array());
+			netOut = null;
+		}
+	}
+
+	/**
+	 * Throws an exception if the socket has been closed
+	 * @throws java.net.SocketException If the socket has been closed
+	 */
+	private void checkOpen() throws SocketException {
+		if (closed) {
+			throw new SocketException("Socket is closed");
+		}
+	}
+
+	/**
+	 * Returns the number of decrypted bytes that can be read without
+	 * blocking. When no decrypted data is available but there is still
+	 * encrypted data waiting to be processed 1 is returned, because
+	 * that data must not be forgotten when waiting for new data from
+	 * the network
+	 * @return The number of bytes available
+	 */
+	private int available() {
+		if (!readLock.tryLock()) {
+			return 0;
+		}
+		try {
+			if (appIn != null && appIn.position() > 0) {
+				return appIn.position();
+			}
+			return (netIn != null && netIn.position() > 0) ? 1 : 0;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		checkOpen();
+		return input;
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		checkOpen();
+		return output;
+	}
+
+	/**
+	 * Returns the channel of the wrapped socket, if any. This channel
+	 * carries the encrypted data and may only be used to wait for
+	 * data to arrive
+	 * @return The channel of the wrapped socket or null
+	 */
+	@Override
+	public SocketChannel getChannel() {
+		return socket.getChannel();
+	}
+
+	/**
+	 * Sends a close_notify, if possible, and closes the wrapped socket
+	 * @throws java.io.IOException If the socket could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			closeOutbound();
+		} finally {
+			socket.close();
+			if (readLock.tryLock()) {
+				try {
+					if (netIn != null) {
+						netIn.clear();
+					}
+					if (appIn != null) {
+						appIn.clear();
+					}
+					releaseInputBuffers();
+				} finally {
+					readLock.unlock();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void shutdownOutput() throws IOException {
+		closeOutbound();
+		socket.shutdownOutput();
+	}
+
+	@Override
+	public void shutdownInput() throws IOException {
+		socket.shutdownInput();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed || socket.isClosed();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return socket.isConnected();
+	}
+
+	@Override
+	public boolean isBound() {
+		return socket.isBound();
+	}
+
+	@Override
+	public boolean isInputShutdown() {
+		return socket.isInputShutdown();
+	}
+
+	@Override
+	public boolean isOutputShutdown() {
+		return socket.isOutputShutdown();
+	}
+
+	@Override
+	public void connect(SocketAddress endpoint, int timeout) throws IOException {
+		throw new SocketException("Already connected");
+	}
+
+	@Override
+	public void bind(SocketAddress bindpoint) throws IOException {
+		throw new SocketException("Already bound");
+	}
+
+	@Override
+	public InetAddress getInetAddress() {
+		return socket.getInetAddress();
+	}
+
+	@Override
+	public InetAddress getLocalAddress() {
+		return socket.getLocalAddress();
+	}
+
+	@Override
+	public int getPort() {
+		return socket.getPort();
+	}
+
+	@Override
+	public int getLocalPort() {
+		return socket.getLocalPort();
+	}
+
+	@Override
+	public SocketAddress getRemoteSocketAddress() {
+		return socket.getRemoteSocketAddress();
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		return socket.getLocalSocketAddress();
+	}
+
+	@Override
+	public void setTcpNoDelay(boolean on) throws SocketException {
+		socket.setTcpNoDelay(on);
+	}
+
+	@Override
+	public boolean getTcpNoDelay() throws SocketException {
+		return socket.getTcpNoDelay();
+	}
+
+	@Override
+	public void setSoLinger(boolean on, int linger) throws SocketException {
+		socket.setSoLinger(on, linger);
+	}
+
+	@Override
+	public int getSoLinger() throws SocketException {
+		return socket.getSoLinger();
+	}
+
+	@Override
+	public void setSoTimeout(int timeout) throws SocketException {
+		socket.setSoTimeout(timeout);
+	}
+
+	@Override
+	public int getSoTimeout() throws SocketException {
+		return socket.getSoTimeout();
+	}
+
+	@Override
+	public void setSendBufferSize(int size) throws SocketException {
+		socket.setSendBufferSize(size);
+	}
+
+	@Override
+	public int getSendBufferSize() throws SocketException {
+		return socket.getSendBufferSize();
+	}
+
+	@Override
+	public void setReceiveBufferSize(int size) throws SocketException {
+		socket.setReceiveBufferSize(size);
+	}
+
+	@Override
+	public int getReceiveBufferSize() throws SocketException {
+		return socket.getReceiveBufferSize();
+	}
+
+	@Override
+	public void setKeepAlive(boolean on) throws SocketException {
+		socket.setKeepAlive(on);
+	}
+
+	@Override
+	public boolean getKeepAlive() throws SocketException {
+		return socket.getKeepAlive();
+	}
+
+	@Override
+	public void setTrafficClass(int tc) throws SocketException {
+		socket.setTrafficClass(tc);
+	}
+
+	@Override
+	public int getTrafficClass() throws SocketException {
+		return socket.getTrafficClass();
+	}
+
+	@Override
+	public void setReuseAddress(boolean on) throws SocketException {
+		socket.setReuseAddress(on);
+	}
+
+	@Override
+	public boolean getReuseAddress() throws SocketException {
+		return socket.getReuseAddress();
+	}
+
+	@Override
+	public void sendUrgentData(int data) throws IOException {
+		throw new SocketException("Urgent data not supported");
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return engine.getSupportedCipherSuites();
+	}
+
+	@Override
+	public String[] getEnabledCipherSuites() {
+		return engine.getEnabledCipherSuites();
+	}
+
+	@Override
+	public void setEnabledCipherSuites(String[] suites) {
+		engine.setEnabledCipherSuites(suites);
+	}
+
+	@Override
+	public String[] getSupportedProtocols() {
+		return engine.getSupportedProtocols();
+	}
+
+	@Override
+	public String[] getEnabledProtocols() {
+		return engine.getEnabledProtocols();
+	}
+
+	@Override
+	public void setEnabledProtocols(String[] protocols) {
+		engine.setEnabledProtocols(protocols);
+	}
+
+	/**
+	 * Returns the session of this connection, performing the handshake
+	 * first if that wasn't done yet
+	 * @return The session, which will be invalid if the handshake failed
+	 */
+	@Override
+	public SSLSession getSession() {
+		try {
+			ensureHandshake();
+		} catch (IOException ex) {
+			logger.log(Level.FINE, "Handshake failed", ex);
+		}
+		return engine.getSession();
+	}
+
+	@Override
+	public void addHandshakeCompletedListener(HandshakeCompletedListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener must not be null");
+		}
+		synchronized (listeners) {
+			listeners.add(listener);
+		}
+	}
+
+	@Override
+	public void removeHandshakeCompletedListener(HandshakeCompletedListener listener) {
+		synchronized (listeners) {
+			if (!listeners.remove(listener)) {
+				throw new IllegalArgumentException("listener not registered");
+			}
+		}
+	}
+
+	@Override
+	public void setUseClientMode(boolean mode) {
+		engine.setUseClientMode(mode);
+	}
+
+	@Override
+	public boolean getUseClientMode() {
+		return engine.getUseClientMode();
+	}
+
+	@Override
+	public void setNeedClientAuth(boolean need) {
+		engine.setNeedClientAuth(need);
+	}
+
+	@Override
+	public boolean getNeedClientAuth() {
+		return engine.getNeedClientAuth();
+	}
+
+	@Override
+	public void setWantClientAuth(boolean want) {
+		engine.setWantClientAuth(want);
+	}
+
+	@Override
+	public boolean getWantClientAuth() {
+		return engine.getWantClientAuth();
+	}
+
+	@Override
+	public void setEnableSessionCreation(boolean flag) {
+		engine.setEnableSessionCreation(flag);
+	}
+
+	@Override
+	public boolean getEnableSessionCreation() {
+		return engine.getEnableSessionCreation();
+	}
+
+	@Override
+	public String toString() {
+		return "SSLEngineSocket[" + socket + "]";
+	}
+
+	/**
+	 * The stream the application reads decrypted data from
+	 */
+	private class EngineInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = SSLEngineSocket.this.read(b, 0, 1);
+			return (n > 0) ? (b[0] & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return SSLEngineSocket.this.read(b, off, len);
+		}
+
+		@Override
+		public int available() throws IOException {
+			return SSLEngineSocket.this.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			SSLEngineSocket.this.close();
+		}
+	}
+
+	/**
+	 * The stream the application writes data to that must be encrypted
+	 */
+	private class EngineOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+			SSLEngineSocket.this.write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			SSLEngineSocket.this.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			SSLEngineSocket.this.close();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * BufferPool.java
+ *
+ * Created on Oct 19, 2026, 3:34:02 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A simple thread-safe pool of byte arrays that all have the same size.
+ * Arrays that are no longer needed can be given back to the pool so they
+ * can be handed out again later instead of having to allocate new ones.
+ * The pool only keeps a limited number of arrays, any array given back
+ * when it's full is simply left for the garbage collector. Taking arrays
+ * from the pool and giving them back doesn't create any garbage itself.
+ * The pool doesn't check if an array is given back more than once, it's
+ * up to the owner of an array to forget it as soon as it was given back
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class BufferPool {
+
+	/**
+	 * The size of the arrays in this pool
+	 */
+	private final int bufferSize;
+	/**
+	 * The arrays currently available
+	 */
+	private final ArrayBlockingQueue<byte[]> buffers;
+
+	/**
+	 * Creates a new empty pool
+	 * @param bufferSize The size of the arrays in this pool
+	 * @param maxBuffers The maximum number of arrays kept in the pool
+	 */
+	public BufferPool(int bufferSize, int maxBuffers) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size <= 0");
+		}
+		if (maxBuffers <= 0) {
+			throw new IllegalArgumentException("Maximum number of buffers <= 0");
+		}
+		this.bufferSize = bufferSize;
+		buffers = new ArrayBlockingQueue<byte[]>(maxBuffers);
+	}
+
+	/**
+	 * Returns the size of the arrays in this pool
+	 * @return The size of the arrays
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Returns the number of arrays currently available in the pool
+	 * @return The number of available arrays
+	 */
+	public int getAvailable() {
+		return buffers.size();
+	}
+
+	/**
+	 * Returns an array from the pool or a newly allocated one if the
+	 * pool is empty. The contents of the array are undefined
+	 * @return An array of <code>getBufferSize()</code> bytes
+	 */
+	public byte[] acquire() {
+		byte[] buf = buffers.poll();
+		return (buf != null) ? buf : new byte[bufferSize];
+	}
+
+	/**
+	 * Gives an array back to the pool. Arrays of the wrong size are ignored.
+	 * The array must not be used anymore after calling this method and it
+	 * must not be given back a second time
+	 * @param buf The array to give back
+	 */
+	public void release(byte[] buf) {
+		if (buf != null && buf.length == bufferSize) {
+			buffers.offer(buf);
+		}
+	}
+}
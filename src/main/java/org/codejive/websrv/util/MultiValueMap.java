@@ -0,0 +1,238 @@
+/*
+ * MultiValueMap.java
+ *
+ * Created on Oct 19, 2026, 2:48:31 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A map that can hold more than one value for each key while keeping
+ * the keys in the order they were first added. Because nearly all keys
+ * only ever get a single value those values are stored directly in the
+ * underlying map, only when a second value gets added an array is
+ * created to hold them all.
+ * This class is NOT thread-safe
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class MultiValueMap {
+
+	/**
+	 * Maps each key to either a single String or a Values object
+	 */
+	private final LinkedHashMap<String, Object> map;
+
+	/**
+	 * Creates a new empty map
+	 */
+	public MultiValueMap() {
+		map = new LinkedHashMap<String, Object>();
+	}
+
+	/**
+	 * Creates a new map holding the same keys and values as the given one
+	 * @param copy The map to copy
+	 */
+	public MultiValueMap(MultiValueMap copy) {
+		this();
+		putAll(copy);
+	}
+
+	/**
+	 * Returns the number of keys in the map
+	 * @return The number of keys
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * Determines if the map is empty
+	 * @return True if the map doesn't contain any keys
+	 */
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	/**
+	 * Determines if the map contains the given key
+	 * @param key The key to look for
+	 * @return True if the key has at least one value
+	 */
+	public boolean containsKey(String key) {
+		return map.containsKey(key);
+	}
+
+	/**
+	 * Returns the first value for the given key
+	 * @param key The key to look up
+	 * @return The first value or null if the key doesn't exist
+	 */
+	public String getFirst(String key) {
+		Object value = map.get(key);
+		if (value instanceof Values) {
+			return ((Values) value).values[0];
+		}
+		return (String) value;
+	}
+
+	/**
+	 * Returns all the values for the given key in the order they were added
+	 * @param key The key to look up
+	 * @return A read-only list of values, empty if the key doesn't exist
+	 */
+	public List<String> get(String key) {
+		Object value = map.get(key);
+		if (value == null) {
+			return Collections.emptyList();
+		}
+		if (value instanceof Values) {
+			Values vals = (Values) value;
+			return Collections.unmodifiableList(Arrays.asList(vals.values).subList(0, vals.count));
+		}
+		return Collections.singletonList((String) value);
+	}
+
+	/**
+	 * Sets the value for the given key replacing any existing values
+	 * @param key The key
+	 * @param value The new value, null is not allowed
+	 */
+	public void set(String key, String value) {
+		checkValue(value);
+		map.put(key, value);
+	}
+
+	/**
+	 * Adds a value for the given key keeping any existing values
+	 * @param key The key
+	 * @param value The value to add, null is not allowed
+	 */
+	public void add(String key, String value) {
+		checkValue(value);
+		Object current = map.get(key);
+		if (current == null) {
+			map.put(key, value);
+		} else if (current instanceof Values) {
+			((Values) current).add(value);
+		} else {
+			Values vals = new Values((String) current);
+			vals.add(value);
+			map.put(key, vals);
+		}
+	}
+
+	/**
+	 * Adds all the values of the given map to this one
+	 * @param other The map whose values should be added
+	 */
+	public void putAll(MultiValueMap other) {
+		for (String key : other.keySet()) {
+			for (String value : other.get(key)) {
+				add(key, value);
+			}
+		}
+	}
+
+	/**
+	 * Removes all values for the given key
+	 * @param key The key to remove
+	 */
+	public void remove(String key) {
+		map.remove(key);
+	}
+
+	/**
+	 * Removes all keys and values
+	 */
+	public void clear() {
+		map.clear();
+	}
+
+	/**
+	 * Returns a set of all the keys in the order they were first added
+	 * @return A read-only set of keys
+	 */
+	public Set<String> keySet() {
+		return Collections.unmodifiableSet(map.keySet());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("{");
+		for (String key : map.keySet()) {
+			if (result.length() > 1) {
+				result.append(", ");
+			}
+			result.append(key).append('=').append(get(key));
+		}
+		return result.append('}').toString();
+	}
+
+	/**
+	 * Throws an exception if the given value is null
+	 * @param value The value to check
+	 */
+	private static void checkValue(String value) {
+		if (value == null) {
+			throw new NullPointerException("Values can't be null");
+		}
+	}
+
+	/**
+	 * Holds the values of a key that has more than one
+	 */
+	private static class Values {
+		/**
+		 * The values, only the first <code>count</code> are used
+		 */
+		String[] values;
+		/**
+		 * The number of values
+		 */
+		int count;
+
+		/**
+		 * Creates a new instance holding the given first value
+		 * @param first The first value
+		 */
+		Values(String first) {
+			values = new String[4];
+			values[0] = first;
+			count = 1;
+		}
+
+		/**
+		 * Adds a value, growing the array when necessary
+		 * @param value The value to add
+		 */
+		void add(String value) {
+			if (count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+			}
+			values[count++] = value;
+		}
+	}
+}
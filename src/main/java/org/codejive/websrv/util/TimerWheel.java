@@ -0,0 +1,228 @@
+/*
+ * TimerWheel.java
+ *
+ * Created on Oct 19, 2026, 1:22:48 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.util;
+
+import java.util.Collection;
+
+/**
+ * A hashed timer wheel that can keep track of a large number of time-outs
+ * while scheduling, cancelling and expiring each of them costs only a
+ * constant amount of time. Time is divided into ticks of a fixed duration
+ * and each time-out is put in the slot of the wheel that corresponds to
+ * the tick in which it expires. Time-outs that lie further in the future
+ * than one full turn of the wheel simply stay in their slot until the
+ * wheel has come round often enough. The precision of the time-outs is
+ * therefore never better than a single tick.
+ * This class is NOT thread-safe, it's meant to be used by a single thread
+ * @param <T> The type of the items that can time out
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class TimerWheel<T> {
+
+	/**
+	 * The duration of a single tick in milliseconds
+	 */
+	private final long tickDuration;
+	
+	/**
+	 * The slots of the wheel, each is the sentinel of a circular list
+	 */
+	private final Timeout<T>[] wheel;
+	
+	/**
+	 * The mask used to turn a tick into a slot index
+	 */
+	private final int mask;
+	
+	/**
+	 * The time the wheel was created, tick 0
+	 */
+	private final long startTime;
+	
+	/**
+	 * The tick that is currently in progress, all ticks before it
+	 * have been processed by <code>expire()</code>
+	 */
+	private long currentTick;
+	
+	/**
+	 * The number of scheduled time-outs
+	 */
+	private int size;
+
+	/**
+	 * Creates a new timer wheel
+	 * @param tickDuration The duration of a single tick in milliseconds
+	 * @param wheelSize The number of slots, will be rounded up to the
+	 * next power of two
+	 * @param now The current time in milliseconds
+	 */
+	@SuppressWarnings("unchecked")
+	public TimerWheel(long tickDuration, int wheelSize, long now) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be larger than 0");
+		}
+		if (wheelSize <= 0) {
+			throw new IllegalArgumentException("wheelSize must be larger than 0");
+		}
+		int slots = Integer.highestOneBit(wheelSize);
+		if (slots < wheelSize) {
+			slots <<= 1;
+		}
+		this.tickDuration = tickDuration;
+		this.wheel = (Timeout<T>[]) new Timeout<?>[slots];
+		for (int i = 0; i < slots; i++) {
+			Timeout<T> sentinel = new Timeout<T>(null, 0);
+			sentinel.next = sentinel;
+			sentinel.prev = sentinel;
+			wheel[i] = sentinel;
+		}
+		this.mask = slots - 1;
+		this.startTime = now;
+		this.currentTick = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the duration of a single tick in milliseconds
+	 * @return The duration of a tick
+	 */
+	public long getTickDuration() {
+		return tickDuration;
+	}
+
+	/**
+	 * Returns the number of time-outs that are currently scheduled
+	 * @return The number of time-outs
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns <code>true</code> if no time-outs are scheduled
+	 * @return <code>true</code> if the wheel is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Schedules a time-out for the given item
+	 * @param item The item that will time out
+	 * @param deadline The time in milliseconds at which the item times out
+	 * @return A handle that can be used to cancel the time-out
+	 */
+	public Timeout<T> schedule(T item, long deadline) {
+		Timeout<T> timeout = new Timeout<T>(item, deadline);
+		long tick = Math.max((deadline - startTime) / tickDuration, currentTick);
+		Timeout<T> sentinel = wheel[(int) (tick & mask)];
+		timeout.prev = sentinel.prev;
+		timeout.next = sentinel;
+		sentinel.prev.next = timeout;
+		sentinel.prev = timeout;
+		timeout.wheel = this;
+		size++;
+		return timeout;
+	}
+
+	/**
+	 * Advances the wheel up to the given time, removing all the time-outs
+	 * that have expired and adding their items to the given collection
+	 * @param now The current time in milliseconds
+	 * @param expired The collection to add the expired items to
+	 * @return The number of expired items
+	 */
+	public int expire(long now, Collection<? super T> expired) {
+		int count = 0;
+		// Only ticks that have completely passed are processed
+		long lastTick = (now - startTime) / tickDuration;
+		// No need to go round more than once
+		long ticks = Math.min(lastTick - currentTick, wheel.length);
+		for (long i = 0; i < ticks; i++) {
+			Timeout<T> sentinel = wheel[(int) ((currentTick + i) & mask)];
+			Timeout<T> timeout = sentinel.next;
+			while (timeout != sentinel) {
+				Timeout<T> next = timeout.next;
+				if (timeout.deadline <= now) {
+					timeout.cancel();
+					expired.add(timeout.item);
+					count++;
+				}
+				timeout = next;
+			}
+		}
+		if (lastTick > currentTick) {
+			currentTick = lastTick;
+		}
+		return count;
+	}
+
+	/**
+	 * A scheduled time-out
+	 * @param <T> The type of the item that can time out
+	 */
+	public static class Timeout<T> {
+		private final T item;
+		private final long deadline;
+		private Timeout<T> prev;
+		private Timeout<T> next;
+		private TimerWheel<T> wheel;
+
+		private Timeout(T item, long deadline) {
+			this.item = item;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Returns the item that will time out
+		 * @return The item
+		 */
+		public T getItem() {
+			return item;
+		}
+
+		/**
+		 * Returns the time at which the item times out
+		 * @return The time in milliseconds
+		 */
+		public long getDeadline() {
+			return deadline;
+		}
+
+		/**
+		 * Removes the time-out from the wheel. Does nothing if it already
+		 * expired or was cancelled before
+		 */
+		public void cancel() {
+			if (wheel != null) {
+				prev.next = next;
+				next.prev = prev;
+				prev = null;
+				next = null;
+				wheel.size--;
+				wheel = null;
+			}
+		}
+	}
+}
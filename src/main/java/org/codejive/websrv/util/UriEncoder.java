@@ -1,74 +1,75 @@
 /*
- * UriDecoder.java
+ * UriEncoder.java
  *
  * Created on Aug 12, 2007, 7:35:54 PM
- * Copyright 2000-2006 Sun Microsystems, Inc.  All Rights Reserved.
- * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * Copyright Tako Schotanus
  *
- * This code is free software; you can redistribute it and/or modify it
- * under the terms of the GNU General Public License version 2 only, as
- * published by the Free Software Foundation.  Sun designates this
- * particular file as subject to the "Classpath" exception as provided
- * by Sun in the LICENSE file that accompanied this code.
+ * This file is part of websrv.
  *
- * This code is distributed in the hope that it will be useful, but WITHOUT
- * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
- * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
- * version 2 for more details (a copy is included in the LICENSE file that
- * accompanied this code).
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
  *
- * You should have received a copy of the GNU General Public License version
- * 2 along with this work; if not, write to the Free Software Foundation,
- * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
  *
- * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa Clara,
- * CA 95054 USA or visit www.sun.com if you need additional information or
- * have any questions.
- *
- * This code is a direct copy&past from java.net.URI with the exception of
- * making encode(String) and decode(String) public. -Tako
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
 package org.codejive.websrv.util;
 
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.CharacterCodingException;
-import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CoderResult;
-import java.nio.charset.CodingErrorAction;
-import sun.nio.cs.ThreadLocalCoders;
+import java.nio.charset.Charset;
 
 /**
- *
+ * Utility methods for encoding and decoding the escaped (%XX) octets
+ * used in URLs. All the work is done on a scratch byte array that is
+ * kept per thread, so apart from the resulting String nothing gets
+ * allocated, and strings that don't need any work at all are returned
+ * as they are. UTF-8 is always used for the escaped octets. Sequences of
+ * octets that are not valid UTF-8 are replaced with the Unicode
+ * replacement character (U+FFFD).
  * @author Tako Schotanus &lt;tako AT codejive.org&gt;
  */
 public class UriEncoder {
 
-	// -- Escaping and encoding --
-	private static final char[] hexDigits = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+	/**
+	 * The hexadecimal digits used for escaping
+	 */
+	private static final byte[] HEX_DIGITS = {
+		'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+	};
 
-	private static void appendEscape(StringBuffer sb, byte b) {
-		sb.append('%');
-		sb.append(hexDigits[(b >> 4) & 0x0f]);
-		sb.append(hexDigits[(b >> 0) & 0x0f]);
-	}
+	/**
+	 * The character set used for the escaped octets
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 
-	private static void appendEncoded(StringBuffer sb, char c) {
-		ByteBuffer bb = null;
-		try {
-			bb = ThreadLocalCoders.encoderFor("UTF-8").encode(CharBuffer.wrap("" + c));
-		} catch (CharacterCodingException x) {
-			assert false;
-		}
-		while (bb.hasRemaining()) {
-			int b = bb.get() & 0xff;
-			if (b >= 0x80) {
-				appendEscape(sb, (byte) b);
-			} else {
-				sb.append((char) b);
-			}
+	/**
+	 * The character set used to turn the (pure ASCII) encoded results
+	 * into strings
+	 */
+	private static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+	/**
+	 * The largest scratch array that will be kept around for reuse
+	 */
+	private static final int MAX_SCRATCH_SIZE = 16 * 1024;
+
+	/**
+	 * The per-thread scratch arrays
+	 */
+	private static final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[256];
 		}
+	};
+
+	private UriEncoder() {
 	}
 
 	/**
@@ -79,126 +80,290 @@ public class UriEncoder {
 	 */
 	public static String encode(String s) {
 		int n = s.length();
-		if (n == 0) {
-			return s;
+		int i = 0;
+		while (i < n && s.charAt(i) < '\u0080') {
+			i++;
 		}
-		// First check whether we actually need to encode
-		for (int i = 0;;) {
-			if (s.charAt(i) >= '\u0080') {
-				break;
-			}
-			if (++i >= n) {
-				return s;
-			}
+		if (i == n) {
+			return s;
 		}
+		return encode(s, i, false);
+	}
 
-		String ns = s;
-		ByteBuffer bb = null;
-		try {
-			bb = ThreadLocalCoders.encoderFor("UTF-8").encode(CharBuffer.wrap(ns));
-		} catch (CharacterCodingException x) {
-			assert false;
+	/**
+	 * Encodes a string so it can be safely used as a single component of
+	 * a URL, like the name or value of a query parameter. Only the
+	 * unreserved characters (letters, digits and "-._~") are left alone,
+	 * everything else is turned into escaped, normalized UTF-8 octets
+	 * @param s String to encode
+	 * @return Encoded string
+	 */
+	public static String encodeComponent(String s) {
+		int n = s.length();
+		int i = 0;
+		while (i < n && isUnreserved(s.charAt(i))) {
+			i++;
 		}
-
-		StringBuffer sb = new StringBuffer();
-		while (bb.hasRemaining()) {
-			int b = bb.get() & 0xff;
-			if (b >= 0x80) {
-				appendEscape(sb, (byte) b);
-			} else {
-				sb.append((char) b);
-			}
+		if (i == n) {
+			return s;
 		}
-		return sb.toString();
+		return encode(s, i, true);
 	}
 
-	private static int decode(char c) {
-		if ((c >= '0') && (c <= '9')) {
-			return c - '0';
-		}
-		if ((c >= 'a') && (c <= 'f')) {
-			return c - 'a' + 10;
+	/**
+	 * Encodes a string that is known to need encoding from the given
+	 * position onwards
+	 * @param s String to encode
+	 * @param start The first position that might need encoding
+	 * @param all If true all reserved ASCII characters will be escaped
+	 * as well, otherwise only non-ASCII characters will be
+	 * @return Encoded string
+	 */
+	private static String encode(String s, int start, boolean all) {
+		int n = s.length();
+		// Each char can become at most 3 escaped octets of 3 bytes each
+		byte[] buf = scratch(start + (n - start) * 9);
+		int len = 0;
+		for (int i = 0; i < start; i++) {
+			buf[len++] = (byte) s.charAt(i);
 		}
-		if ((c >= 'A') && (c <= 'F')) {
-			return c - 'A' + 10;
+		for (int i = start; i < n; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				if (!all || isUnreserved(c)) {
+					buf[len++] = (byte) c;
+				} else {
+					len = appendEscape(buf, len, c);
+				}
+			} else if (c < 0x800) {
+				len = appendEscape(buf, len, 0xc0 | (c >> 6));
+				len = appendEscape(buf, len, 0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				len = appendEscape(buf, len, 0xf0 | (cp >> 18));
+				len = appendEscape(buf, len, 0x80 | ((cp >> 12) & 0x3f));
+				len = appendEscape(buf, len, 0x80 | ((cp >> 6) & 0x3f));
+				len = appendEscape(buf, len, 0x80 | (cp & 0x3f));
+			} else if (isSurrogate(c)) {
+				// A lone surrogate can't be encoded, the "?" that takes
+				// its place must not end up as a query separator
+				if (all) {
+					len = appendEscape(buf, len, '?');
+				} else {
+					buf[len++] = '?';
+				}
+			} else {
+				len = appendEscape(buf, len, 0xe0 | (c >> 12));
+				len = appendEscape(buf, len, 0x80 | ((c >> 6) & 0x3f));
+				len = appendEscape(buf, len, 0x80 | (c & 0x3f));
+			}
 		}
-		assert false;
-		return -1;
+		return new String(buf, 0, len, ASCII);
 	}
 
-	private static byte decode(char c1, char c2) {
-		return (byte) (  ((decode(c1) & 0xf) << 4)
-		      | ((decode(c2) & 0xf) << 0));
+	/**
+	 * Evaluates all escapes in s, applying UTF-8 decoding if needed.
+	 * Any "%" that isn't followed by two hexadecimal digits is left alone.
+	 * @param s Encoded string
+	 * @return Decoded string
+	 */
+	public static String decode(String s) {
+		return decode(s, false);
 	}
 
 	/**
-	 * Evaluates all escapes in s, applying UTF-8 decoding if needed.  Assumes
-	 * that escapes are well-formed syntactically, i.e., of the form %XX.  If a
-	 * sequence of escaped octets is not valid UTF-8 then the erroneous octets
-	 * are replaced with '\uFFFD'.
-	 * Exception: any "%" found between "[]" is left alone. It is an IPv6 literal
-	 *            with a scope_id
+	 * Evaluates all escapes in s, applying UTF-8 decoding if needed.
+	 * Any "%" that isn't followed by two hexadecimal digits is left alone.
 	 * @param s Encoded string
+	 * @param plusAsSpace If true any "+" will be turned into a space, like
+	 * is done for query parameters and url encoded forms
 	 * @return Decoded string
 	 */
-	public static String decode(String s) {
+	public static String decode(String s, boolean plusAsSpace) {
 		if (s == null) {
 			return s;
 		}
 		int n = s.length();
-		if (n == 0) {
-			return s;
+		int i = 0;
+		while (i < n) {
+			char c = s.charAt(i);
+			if (c == '%' || (plusAsSpace && c == '+')) {
+				break;
+			}
+			i++;
 		}
-		if (s.indexOf('%') < 0) {
+		if (i == n) {
 			return s;
 		}
-		StringBuffer sb = new StringBuffer(n);
-		ByteBuffer bb = ByteBuffer.allocate(n);
-		CharBuffer cb = CharBuffer.allocate(n);
-		CharsetDecoder dec = ThreadLocalCoders.decoderFor("UTF-8").onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
-
-		// This is not horribly efficient, but it will do for now
-		char c = s.charAt(0);
-		boolean betweenBrackets = false;
-
-		for (int i = 0; i < n;) {
-			assert c == s.charAt(i); // Loop invariant
-			if (c == '[') {
-				betweenBrackets = true;
-			} else if (betweenBrackets && c == ']') {
-				betweenBrackets = false;
-			}
-			if (c != '%' || betweenBrackets) {
-				sb.append(c);
-				if (++i >= n) {
-					break;
+		// Non-ASCII characters are copied as UTF-8 and can take 3 bytes
+		byte[] buf = scratch(n * 3);
+		int len = 0;
+		for (i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			if (c == '%' && i + 2 < n && isHexDigit(s.charAt(i + 1)) && isHexDigit(s.charAt(i + 2))) {
+				buf[len++] = (byte) ((hexValue(s.charAt(i + 1)) << 4) | hexValue(s.charAt(i + 2)));
+				i += 2;
+			} else if (c == '+' && plusAsSpace) {
+				buf[len++] = ' ';
+			} else if (c < 0x80) {
+				buf[len++] = (byte) c;
+			} else {
+				len = appendChar(buf, len, s, i);
+				if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+					i++;
 				}
-				c = s.charAt(i);
-				continue;
 			}
-			bb.clear();
-			int ui = i;
-			for (;;) {
-				assert (n - i >= 2);
-				bb.put(decode(s.charAt(++i), s.charAt(++i)));
-				if (++i >= n) {
-					break;
-				}
-				c = s.charAt(i);
-				if (c != '%') {
-					break;
-				}
+		}
+		return new String(buf, 0, len, UTF8);
+	}
+
+	/**
+	 * Evaluates all escapes in the given range of bytes, applying UTF-8
+	 * decoding. This can be used to decode the raw bytes of a request
+	 * without first turning them into a String.
+	 * Any "%" that isn't followed by two hexadecimal digits is left alone.
+	 * @param b The array holding the encoded bytes
+	 * @param off The position of the first encoded byte
+	 * @param len The number of encoded bytes
+	 * @param plusAsSpace If true any "+" will be turned into a space, like
+	 * is done for query parameters and url encoded forms
+	 * @return Decoded string
+	 */
+	public static String decode(byte[] b, int off, int len, boolean plusAsSpace) {
+		int end = off + len;
+		int i = off;
+		while (i < end) {
+			byte c = b[i];
+			if (c == '%' || (plusAsSpace && c == '+')) {
+				break;
 			}
-			bb.flip();
-			cb.clear();
-			dec.reset();
-			CoderResult cr = dec.decode(bb, cb, true);
-			assert cr.isUnderflow();
-			cr = dec.flush(cb);
-			assert cr.isUnderflow();
-			sb.append(cb.flip().toString());
+			i++;
 		}
+		if (i == end) {
+			return new String(b, off, len, UTF8);
+		}
+		byte[] buf = scratch(len);
+		int pos = i - off;
+		System.arraycopy(b, off, buf, 0, pos);
+		for (; i < end; i++) {
+			byte c = b[i];
+			if (c == '%' && i + 2 < end && isHexDigit((char) b[i + 1]) && isHexDigit((char) b[i + 2])) {
+				buf[pos++] = (byte) ((hexValue((char) b[i + 1]) << 4) | hexValue((char) b[i + 2]));
+				i += 2;
+			} else if (c == '+' && plusAsSpace) {
+				buf[pos++] = ' ';
+			} else {
+				buf[pos++] = c;
+			}
+		}
+		return new String(buf, 0, pos, UTF8);
+	}
 
-		return sb.toString();
+	/**
+	 * Returns this thread's scratch array making sure it has at least
+	 * the given size
+	 * @param size The minimal size of the array
+	 * @return The scratch array
+	 */
+	private static byte[] scratch(int size) {
+		byte[] buf = scratch.get();
+		if (buf.length < size) {
+			buf = new byte[Math.max(size, buf.length * 2)];
+			if (buf.length <= MAX_SCRATCH_SIZE) {
+				scratch.set(buf);
+			}
+		}
+		return buf;
+	}
+
+	/**
+	 * Appends the given octet as an escape (%XX)
+	 * @param buf The array to append to
+	 * @param len The current length of the data in the array
+	 * @param b The octet to escape
+	 * @return The new length of the data in the array
+	 */
+	private static int appendEscape(byte[] buf, int len, int b) {
+		buf[len++] = '%';
+		buf[len++] = HEX_DIGITS[(b >> 4) & 0x0f];
+		buf[len++] = HEX_DIGITS[b & 0x0f];
+		return len;
+	}
+
+	/**
+	 * Appends the character at the given position as UTF-8, the
+	 * character and the one after it are treated as a single code
+	 * point when they form a surrogate pair
+	 * @param buf The array to append to
+	 * @param len The current length of the data in the array
+	 * @param s The string holding the character
+	 * @param i The position of the character
+	 * @return The new length of the data in the array
+	 */
+	private static int appendChar(byte[] buf, int len, String s, int i) {
+		char c = s.charAt(i);
+		if (c < 0x80) {
+			buf[len++] = (byte) c;
+		} else if (c < 0x800) {
+			buf[len++] = (byte) (0xc0 | (c >> 6));
+			buf[len++] = (byte) (0x80 | (c & 0x3f));
+		} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+			int cp = Character.toCodePoint(c, s.charAt(i + 1));
+			buf[len++] = (byte) (0xf0 | (cp >> 18));
+			buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+			buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+			buf[len++] = (byte) (0x80 | (cp & 0x3f));
+		} else if (isSurrogate(c)) {
+			buf[len++] = '?';
+		} else {
+			buf[len++] = (byte) (0xe0 | (c >> 12));
+			buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+			buf[len++] = (byte) (0x80 | (c & 0x3f));
+		}
+		return len;
+	}
+
+	/**
+	 * Determines if the given character is one of the unreserved
+	 * characters that never need to be escaped
+	 * @param c The character to check
+	 * @return True if the character is unreserved
+	 */
+	private static boolean isUnreserved(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+				|| c == '-' || c == '.' || c == '_' || c == '~';
+	}
+
+	/**
+	 * Determines if the given character is (half of) a surrogate pair
+	 * @param c The character to check
+	 * @return True if the character is a surrogate
+	 */
+	private static boolean isSurrogate(char c) {
+		return c >= '\uD800' && c <= '\uDFFF';
+	}
+
+	/**
+	 * Determines if the given character is a hexadecimal digit
+	 * @param c The character to check
+	 * @return True if the character is a hexadecimal digit
+	 */
+	private static boolean isHexDigit(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+	}
+
+	/**
+	 * Returns the value of the given hexadecimal digit
+	 * @param c The hexadecimal digit
+	 * @return The value of the digit
+	 */
+	private static int hexValue(char c) {
+		if (c <= '9') {
+			return c - '0';
+		}
+		if (c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return c - 'a' + 10;
 	}
 }
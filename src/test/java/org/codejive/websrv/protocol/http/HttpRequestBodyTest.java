@@ -0,0 +1,293 @@
+/*
+ * HttpRequestBodyTest.java
+ *
+ * Created on Oct 19, 2026, 7:24:11 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import junit.framework.TestCase;
+
+/**
+ * Tests the decoding of request bodies, both with a Content-Length and
+ * chunked, when the data arrives in pieces of all sizes
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class HttpRequestBodyTest extends TestCase {
+
+	/**
+	 * The character set used for the test data
+	 */
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	/**
+	 * The chunked body used by most tests followed by the next request
+	 */
+	private static final String CHUNKED = "5\r\nHello\r\n"
+			+ "7;name=value\r\n, world\r\n"
+			+ "1\r\n!\r\n"
+			+ "0\r\n"
+			+ "Expires: never\r\n"
+			+ "X-Checksum: 1234\r\n"
+			+ "\r\n"
+			+ "GET /next HTTP/1.1\r\n";
+
+	/**
+	 * A body with a Content-Length stops at its end
+	 */
+	public void testContentLength() throws IOException {
+		for (int slice = 1; slice <= 16; slice++) {
+			HttpConnectionInput input = input("Hello, world!GET /next HTTP/1.1\r\n", slice);
+			HttpRequestBody body = new HttpRequestBody(input, 13, false, 0);
+			assertEquals("Hello, world!", readAll(body));
+			assertTrue(body.isFinished());
+			assertEquals(-1, body.read());
+			assertEquals("GET /next HTTP/1.1", input.readHeadLine(0, HttpResponseCode.CODE_BAD_REQUEST));
+		}
+	}
+
+	/**
+	 * Chunk headers, chunk data and trailers may all be split at
+	 * any point, the request that follows must be left untouched
+	 */
+	public void testSplitChunks() throws IOException {
+		for (int slice = 1; slice <= CHUNKED.length(); slice++) {
+			HttpConnectionInput input = input(CHUNKED, slice);
+			HttpRequestBody body = new HttpRequestBody(input, 0, true, 0);
+			assertEquals("slice " + slice, "Hello, world!", readAll(body));
+			assertTrue(body.isFinished());
+			assertEquals("GET /next HTTP/1.1", input.readHeadLine(0, HttpResponseCode.CODE_BAD_REQUEST));
+		}
+	}
+
+	/**
+	 * Single byte reads return the same data as bulk reads
+	 */
+	public void testSingleByteReads() throws IOException {
+		HttpRequestBody body = new HttpRequestBody(input(CHUNKED, 3), 0, true, 0);
+		StringBuilder result = new StringBuilder();
+		int c;
+		while ((c = body.read()) >= 0) {
+			result.append((char) c);
+		}
+		assertEquals("Hello, world!", result.toString());
+	}
+
+	/**
+	 * A body can be skipped with <code>drain()</code> to get to the next request
+	 */
+	public void testDrain() throws IOException {
+		HttpConnectionInput input = input(CHUNKED, 4);
+		HttpRequestBody body = new HttpRequestBody(input, 0, true, 0);
+		assertEquals('H', body.read());
+		assertTrue(body.drain(1000));
+		assertEquals("GET /next HTTP/1.1", input.readHeadLine(0, HttpResponseCode.CODE_BAD_REQUEST));
+
+		body = new HttpRequestBody(input("Hello, world!", 5), 13, false, 0);
+		assertFalse(body.drain(12));
+	}
+
+	/**
+	 * Too many trailers get a 431 response
+	 */
+	public void testTooManyTrailers() throws IOException {
+		HttpRequestLimits limits = new HttpRequestLimits();
+		limits.setMaxHeaderCount(1);
+		HttpConnectionInput input = new HttpConnectionInput(null, new SlicedInputStream(CHUNKED, 7), limits);
+		HttpRequestBody body = new HttpRequestBody(input, 0, true, 0);
+		try {
+			readAll(body);
+			fail("Trailers should have been rejected");
+		} catch (RequestLimitException ex) {
+			assertEquals(HttpResponseCode.CODE_REQUEST_HEADER_FIELDS_TOO_LARGE, ex.getResponseCode());
+		}
+	}
+
+	/**
+	 * A chunked body can be exactly as large as the limit but no larger
+	 */
+	public void testSizeLimit() throws IOException {
+		HttpRequestBody body = new HttpRequestBody(input(CHUNKED, 5), 0, true, 13);
+		assertEquals("Hello, world!", readAll(body));
+
+		body = new HttpRequestBody(input(CHUNKED, 5), 0, true, 12);
+		StringBuilder result = new StringBuilder();
+		try {
+			int c;
+			while ((c = body.read()) >= 0) {
+				result.append((char) c);
+			}
+			fail("Body should have been too large");
+		} catch (RequestLimitException ex) {
+			assertEquals(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, ex.getResponseCode());
+		}
+		// Everything up to the chunk that went over the limit was returned
+		assertEquals("Hello, world", result.toString());
+	}
+
+	/**
+	 * A chunk size that is announced to be larger than the limit is
+	 * rejected before any of its data is read
+	 */
+	public void testHugeChunk() throws IOException {
+		HttpRequestBody body = new HttpRequestBody(input("7fffffffffff\r\nHello", 64), 0, true, 1024);
+		try {
+			body.read();
+			fail("Chunk should have been too large");
+		} catch (RequestLimitException ex) {
+			assertEquals(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, ex.getResponseCode());
+		}
+	}
+
+	/**
+	 * Malformed chunk sizes and terminators are rejected
+	 */
+	public void testMalformedChunks() throws IOException {
+		String[] bodies = {
+			"x\r\nHello\r\n0\r\n\r\n",
+			"-5\r\nHello\r\n0\r\n\r\n",
+			"\r\nHello\r\n0\r\n\r\n",
+			"1234567890abcdef\r\nHello\r\n0\r\n\r\n",
+			"5\r\nHelloX\r\n0\r\n\r\n"
+		};
+		for (String data : bodies) {
+			HttpRequestBody body = new HttpRequestBody(input(data, 3), 0, true, 0);
+			try {
+				readAll(body);
+				fail("Body should have been rejected: " + data);
+			} catch (RequestLimitException ex) {
+				fail("Wrong exception for " + data + ": " + ex);
+			} catch (MalformedRequestException ex) {
+				// Expected
+			}
+		}
+	}
+
+	/**
+	 * Bodies that end too soon are reported as such
+	 */
+	public void testTruncated() throws IOException {
+		String[] bodies = { "5\r\nHel", "5\r\nHello\r\n", "5\r\nHello\r\n0\r\nExpires: never\r\n" };
+		for (String data : bodies) {
+			HttpRequestBody body = new HttpRequestBody(input(data, 2), 0, true, 0);
+			try {
+				readAll(body);
+				fail("Body should have been incomplete: " + data);
+			} catch (EOFException ex) {
+				// Expected
+			}
+		}
+		try {
+			readAll(new HttpRequestBody(input("Hello", 2), 13, false, 0));
+			fail("Body should have been incomplete");
+		} catch (EOFException ex) {
+			// Expected
+		}
+	}
+
+	/**
+	 * The "100 Continue" response is sent once, when the body is first read
+	 */
+	public void testContinue() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		HttpRequestBody body = new HttpRequestBody(input("Hello", 5), 5, false, 0);
+		body.setContinueOutput(out);
+		assertFalse(body.drain(1000));
+		assertEquals(0, out.size());
+		assertEquals('H', body.read());
+		assertEquals("HTTP/1.1 100 Continue\r\n\r\n", new String(out.toByteArray(), ASCII));
+		assertEquals("ello", readAll(body));
+		assertEquals("HTTP/1.1 100 Continue\r\n\r\n", new String(out.toByteArray(), ASCII));
+	}
+
+	/**
+	 * Returns a connection input for the given data that returns at
+	 * most <code>slice</code> bytes for each read
+	 */
+	private static HttpConnectionInput input(String data, int slice) {
+		return new HttpConnectionInput(null, new SlicedInputStream(data, slice), new HttpRequestLimits());
+	}
+
+	/**
+	 * Reads the rest of the given stream
+	 */
+	private static String readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[7];
+		int n;
+		while ((n = in.read(buf, 0, buf.length)) >= 0) {
+			out.write(buf, 0, n);
+		}
+		return new String(out.toByteArray(), ASCII);
+	}
+
+	/**
+	 * A stream that returns its data in small pieces, like a network
+	 * connection would
+	 */
+	static class SlicedInputStream extends InputStream {
+
+		/**
+		 * The data to return
+		 */
+		private final byte[] data;
+
+		/**
+		 * The maximum number of bytes returned by a single read
+		 */
+		private final int slice;
+
+		/**
+		 * The position of the next byte to return
+		 */
+		private int pos;
+
+		/**
+		 * Creates a new instance
+		 * @param data The data to return
+		 * @param slice The maximum number of bytes returned by a single read
+		 */
+		public SlicedInputStream(String data, int slice) {
+			this.data = data.getBytes(ASCII);
+			this.slice = slice;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return (pos < data.length) ? data[pos++] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (pos >= data.length) {
+				return -1;
+			}
+			int n = Math.min(Math.min(len, slice), data.length - pos);
+			System.arraycopy(data, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * MultipartStreamTest.java
+ *
+ * Created on Oct 19, 2026, 7:33:52 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.http.form;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import org.codejive.websrv.protocol.http.HttpHeaders;
+import org.codejive.websrv.protocol.http.HttpResponseCode;
+import org.codejive.websrv.protocol.http.MalformedRequestException;
+import org.codejive.websrv.protocol.http.RequestLimitException;
+import junit.framework.TestCase;
+
+/**
+ * Tests the splitting of multipart bodies when the data arrives in
+ * pieces of all sizes, so the boundaries end up split across reads
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class MultipartStreamTest extends TestCase {
+
+	/**
+	 * The character set used for the test data
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The boundary used by the tests
+	 */
+	private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+	/**
+	 * Data that looks like the start of a delimiter without being one
+	 */
+	private static final String ALMOST = "line\r\n--" + BOUNDARY.substring(0, 20) + "\r\n-\r\n--"
+			+ BOUNDARY.substring(0, BOUNDARY.length() - 1) + "X\r";
+
+	/**
+	 * A body with a preamble, two parts and an epilogue
+	 */
+	private static final String BODY = "This is the preamble\r\n"
+			+ "--" + BOUNDARY + "\r\n"
+			+ "Content-Disposition: form-data; name=\"field\"\r\n"
+			+ "\r\n"
+			+ "value\r\n"
+			+ "--" + BOUNDARY + "   \r\n"
+			+ "Content-Disposition: form-data; name=\"file\"; filename=\"r\u00e9sum\u00e9.txt\"\r\n"
+			+ "Content-Type: text/plain\r\n"
+			+ "\r\n"
+			+ ALMOST + "\r\n"
+			+ "--" + BOUNDARY + "--\r\n"
+			+ "This is the epilogue";
+
+	/**
+	 * The parts and their headers are found however the body is split up
+	 */
+	public void testSplitBoundaries() throws IOException {
+		for (int slice = 1; slice <= BODY.length(); slice++) {
+			MultipartStream parts = new MultipartStream(new SlicedInputStream(BODY, slice), BOUNDARY);
+			assertTrue(parts.nextPart());
+			HttpHeaders headers = parts.readHeaders();
+			assertEquals("form-data; name=\"field\"", headers.get("content-disposition"));
+			assertEquals("slice " + slice, "value", readAll(parts.getPartStream(0)));
+
+			assertTrue(parts.nextPart());
+			headers = parts.readHeaders();
+			assertEquals("form-data; name=\"file\"; filename=\"r\u00e9sum\u00e9.txt\"", headers.get("Content-Disposition"));
+			assertEquals("text/plain", headers.get("Content-Type"));
+			assertEquals("slice " + slice, ALMOST, readAll(parts.getPartStream(0)));
+
+			assertFalse(parts.nextPart());
+			assertFalse(parts.nextPart());
+		}
+	}
+
+	/**
+	 * Parts that aren't read are skipped
+	 */
+	public void testSkipParts() throws IOException {
+		MultipartStream parts = new MultipartStream(new SlicedInputStream(BODY, 11), BOUNDARY);
+		assertTrue(parts.nextPart());
+		assertTrue(parts.nextPart());
+		parts.readHeaders();
+		InputStream in = parts.getPartStream(0);
+		assertEquals('l', in.read());
+		assertFalse(parts.nextPart());
+		assertEquals(-1, in.read());
+	}
+
+	/**
+	 * Parts that are much larger than the internal buffer are passed on intact
+	 */
+	public void testLargePart() throws IOException {
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; data.length() < 50000; i++) {
+			data.append(i).append(i % 10 == 0 ? "\r\n--" : " ");
+		}
+		String body = "--" + BOUNDARY + "\r\n\r\n" + data + "\r\n--" + BOUNDARY + "--";
+		for (int slice = 997; slice <= 65536; slice *= 4) {
+			MultipartStream parts = new MultipartStream(new SlicedInputStream(body, slice), BOUNDARY);
+			assertTrue(parts.nextPart());
+			assertEquals(0, parts.readHeaders().size());
+			assertEquals(data.toString(), readAll(parts.getPartStream(0)));
+			assertFalse(parts.nextPart());
+		}
+	}
+
+	/**
+	 * A part can be exactly as large as the limit but no larger
+	 */
+	public void testPartSizeLimit() throws IOException {
+		MultipartStream parts = new MultipartStream(new SlicedInputStream(BODY, 7), BOUNDARY);
+		assertTrue(parts.nextPart());
+		parts.readHeaders();
+		assertEquals("value", readAll(parts.getPartStream(5)));
+
+		assertTrue(parts.nextPart());
+		parts.readHeaders();
+		InputStream in = parts.getPartStream(ALMOST.length() - 1);
+		try {
+			readAll(in);
+			fail("Part should have been too large");
+		} catch (RequestLimitException ex) {
+			assertEquals(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, ex.getResponseCode());
+		}
+	}
+
+	/**
+	 * The limit is also enforced when reading single bytes
+	 */
+	public void testPartSizeLimitSingleBytes() throws IOException {
+		MultipartStream parts = new MultipartStream(new SlicedInputStream(BODY, 3), BOUNDARY);
+		assertTrue(parts.nextPart());
+		parts.readHeaders();
+		InputStream in = parts.getPartStream(4);
+		for (int i = 0; i < 4; i++) {
+			assertEquals("value".charAt(i), in.read());
+		}
+		try {
+			in.read();
+			fail("Part should have been too large");
+		} catch (RequestLimitException ex) {
+			assertEquals(HttpResponseCode.CODE_REQUEST_ENTITY_TOO_LARGE, ex.getResponseCode());
+		}
+	}
+
+	/**
+	 * Bodies without a final boundary are rejected
+	 */
+	public void testMissingFinalBoundary() throws IOException {
+		String[] bodies = {
+			"",
+			"no boundary at all",
+			"--" + BOUNDARY + "\r\n\r\nvalue",
+			"--" + BOUNDARY + "\r\n\r\nvalue\r\n--" + BOUNDARY,
+			"--" + BOUNDARY + "\r\nContent-Type: text/plain"
+		};
+		for (String body : bodies) {
+			MultipartStream parts = new MultipartStream(new SlicedInputStream(body, 5), BOUNDARY);
+			try {
+				while (parts.nextPart()) {
+					parts.readHeaders();
+					readAll(parts.getPartStream(0));
+				}
+				fail("Body should have been rejected: " + body);
+			} catch (MalformedRequestException ex) {
+				// Expected
+			}
+		}
+	}
+
+	/**
+	 * Malformed part headers are rejected
+	 */
+	public void testMalformedHeaders() throws IOException {
+		String body = "--" + BOUNDARY + "\r\nNo colon here\r\n\r\nvalue\r\n--" + BOUNDARY + "--";
+		MultipartStream parts = new MultipartStream(new SlicedInputStream(body, 5), BOUNDARY);
+		assertTrue(parts.nextPart());
+		try {
+			parts.readHeaders();
+			fail("Header should have been rejected");
+		} catch (RequestLimitException ex) {
+			fail("Wrong exception: " + ex);
+		} catch (MalformedRequestException ex) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Reads the rest of the given stream
+	 */
+	private static String readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[13];
+		int n;
+		while ((n = in.read(buf, 0, buf.length)) >= 0) {
+			out.write(buf, 0, n);
+		}
+		return new String(out.toByteArray(), UTF8);
+	}
+
+	/**
+	 * A stream that returns its data in small pieces, like a network
+	 * connection would
+	 */
+	static class SlicedInputStream extends InputStream {
+
+		/**
+		 * The data to return
+		 */
+		private final byte[] data;
+
+		/**
+		 * The maximum number of bytes returned by a single read
+		 */
+		private final int slice;
+
+		/**
+		 * The position of the next byte to return
+		 */
+		private int pos;
+
+		/**
+		 * Creates a new instance
+		 * @param data The data to return
+		 * @param slice The maximum number of bytes returned by a single read
+		 */
+		public SlicedInputStream(String data, int slice) {
+			this.data = data.getBytes(UTF8);
+			this.slice = slice;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return (pos < data.length) ? data[pos++] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (pos >= data.length) {
+				return -1;
+			}
+			int n = Math.min(Math.min(len, slice), data.length - pos);
+			System.arraycopy(data, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * HpackDecoderTest.java
+ *
+ * Created on Oct 19, 2026, 7:12:40 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.protocol.http2.hpack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Tests the HPACK decoder against the examples of RFC 7541, Appendix C,
+ * and checks that malformed header blocks are rejected
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class HpackDecoderTest extends TestCase {
+
+	/**
+	 * The date headers and the cookie of the example responses
+	 */
+	private static final String DATE1 = "date: Mon, 21 Oct 2013 20:13:21 GMT";
+	private static final String DATE2 = "date: Mon, 21 Oct 2013 20:13:22 GMT";
+	private static final String COOKIE = "set-cookie: foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1";
+
+	/**
+	 * C.3, requests without Huffman coding
+	 */
+	public void testRequestsWithoutHuffman() throws Exception {
+		HpackDecoder decoder = new HpackDecoder(4096, 0);
+		assertHeaders(decoder, "8286 8441 0f77 7777 2e65 7861 6d70 6c65 2e63 6f6d",
+				":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com");
+		assertHeaders(decoder, "8286 84be 5808 6e6f 2d63 6163 6865",
+				":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com",
+				"cache-control: no-cache");
+		assertHeaders(decoder, "8287 85bf 400a 6375 7374 6f6d 2d6b 6579 0c63 7573 746f 6d2d 7661 6c75 65",
+				":method: GET", ":scheme: https", ":path: /index.html", ":authority: www.example.com",
+				"custom-key: custom-value");
+	}
+
+	/**
+	 * C.4, the same requests with Huffman coding
+	 */
+	public void testRequestsWithHuffman() throws Exception {
+		HpackDecoder decoder = new HpackDecoder(4096, 0);
+		assertHeaders(decoder, "8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff",
+				":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com");
+		assertHeaders(decoder, "8286 84be 5886 a8eb 1064 9cbf",
+				":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com",
+				"cache-control: no-cache");
+		assertHeaders(decoder, "8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf",
+				":method: GET", ":scheme: https", ":path: /index.html", ":authority: www.example.com",
+				"custom-key: custom-value");
+	}
+
+	/**
+	 * C.5, responses without Huffman coding, with a table small enough
+	 * for entries to get evicted
+	 */
+	public void testResponsesWithoutHuffman() throws Exception {
+		HpackDecoder decoder = new HpackDecoder(256, 0);
+		assertHeaders(decoder, "4803 3330 3258 0770 7269 7661 7465 611d 4d6f 6e2c 2032 3120 4f63 7420 3230 3133"
+				+ "2032 303a 3133 3a32 3120 474d 546e 1768 7474 7073 3a2f 2f77 7777 2e65 7861 6d70 6c65 2e63 6f6d",
+				":status: 302", "cache-control: private", DATE1, "location: https://www.example.com");
+		assertHeaders(decoder, "4803 3330 37c1 c0bf",
+				":status: 307", "cache-control: private", DATE1, "location: https://www.example.com");
+		assertHeaders(decoder, "88c1 611d 4d6f 6e2c 2032 3120 4f63 7420 3230 3133 2032 303a 3133 3a32 3220 474d"
+				+ "54c0 5a04 677a 6970 7738 666f 6f3d 4153 444a 4b48 514b 425a 584f 5157 454f 5049"
+				+ "5541 5851 5745 4f49 553b 206d 6178 2d61 6765 3d33 3630 303b 2076 6572 7369 6f6e 3d31",
+				":status: 200", "cache-control: private", DATE2, "location: https://www.example.com",
+				"content-encoding: gzip", COOKIE);
+	}
+
+	/**
+	 * C.6, the same responses with Huffman coding
+	 */
+	public void testResponsesWithHuffman() throws Exception {
+		HpackDecoder decoder = new HpackDecoder(256, 0);
+		assertHeaders(decoder, "4882 6402 5885 aec3 771a 4b61 96d0 7abe 9410 54d4 44a8 2005 9504 0b81 66e0 82a6"
+				+ "2d1b ff6e 919d 29ad 1718 63c7 8f0b 97c8 e9ae 82ae 43d3",
+				":status: 302", "cache-control: private", DATE1, "location: https://www.example.com");
+		assertHeaders(decoder, "4883 640e ffc1 c0bf",
+				":status: 307", "cache-control: private", DATE1, "location: https://www.example.com");
+		assertHeaders(decoder, "88c1 6196 d07a be94 1054 d444 a820 0595 040b 8166 e084 a62d 1bff c05a 839b d9ab"
+				+ "77ad 94e7 821d d7f2 e6c7 b335 dfdf cd5b 3960 d5af 2708 7f36 72c1 ab27 0fb5 291f"
+				+ "9587 3160 65c0 03ed 4ee5 b106 3d50 07",
+				":status: 200", "cache-control: private", DATE2, "location: https://www.example.com",
+				"content-encoding: gzip", COOKIE);
+	}
+
+	/**
+	 * C.2, literal fields with and without indexing
+	 */
+	public void testLiteralFields() throws Exception {
+		HpackDecoder decoder = new HpackDecoder(4096, 0);
+		assertHeaders(decoder, "040c 2f73 616d 706c 652f 7061 7468", ":path: /sample/path");
+		assertHeaders(decoder, "1008 7061 7373 776f 7264 0673 6563 7265 74", "password: secret");
+		// Neither of them may have been added to the dynamic table
+		assertInvalid(decoder, "be");
+	}
+
+	/**
+	 * Headers beyond the maximum header list size are dropped
+	 */
+	public void testHeaderListSizeLimit() throws Exception {
+		HpackDecoder decoder = new HpackDecoder(4096, 100);
+		List<String> headers = new ArrayList<String>();
+		// Each entry counts for 32 bytes plus the length of its name and value
+		byte[] block = bytes("8286 8441 0f77 7777 2e65 7861 6d70 6c65 2e63 6f6d");
+		assertFalse(decoder.decode(block, 0, block.length, collector(headers)));
+		assertEquals(Arrays.asList(":method: GET", ":scheme: http"), headers);
+		// The headers that were dropped must still have been added to the table
+		headers.clear();
+		block = bytes("be");
+		assertTrue(decoder.decode(block, 0, block.length, collector(headers)));
+		assertEquals(Arrays.asList(":authority: www.example.com"), headers);
+	}
+
+	/**
+	 * Table size updates evict entries and may not exceed the maximum
+	 * or appear after the first header
+	 */
+	public void testTableSizeUpdate() throws Exception {
+		HpackDecoder decoder = new HpackDecoder(4096, 0);
+		assertHeaders(decoder, "418c f1e3 c2e5 f23a 6ba0 ab90 f4ff", ":authority: www.example.com");
+		// Shrinking the table to 0 evicts the entry that was just added
+		assertHeaders(decoder, "2082", ":method: GET");
+		assertInvalid(decoder, "be");
+		assertInvalid(new HpackDecoder(4096, 0), "3fe2 1f");
+		assertInvalid(new HpackDecoder(4096, 0), "8220");
+	}
+
+	/**
+	 * Indexes that don't refer to an existing entry are rejected
+	 */
+	public void testInvalidIndex() throws Exception {
+		assertInvalid(new HpackDecoder(4096, 0), "80");
+		assertInvalid(new HpackDecoder(4096, 0), "be");
+		assertInvalid(new HpackDecoder(4096, 0), "ff80 01");
+		assertInvalid(new HpackDecoder(4096, 0), "7e03 6162 63");
+	}
+
+	/**
+	 * Integers that don't fit in 31 bits or are incomplete are rejected
+	 */
+	public void testIntegerOverflow() throws Exception {
+		// Continuation bytes that add up to more than 2^31 - 1
+		assertInvalid(new HpackDecoder(4096, 0), "ffff ffff ff7f");
+		// Too many continuation bytes, even though they're all zero
+		assertInvalid(new HpackDecoder(4096, 0), "ff80 8080 8080 8000");
+		// Missing continuation byte
+		assertInvalid(new HpackDecoder(4096, 0), "ff80");
+	}
+
+	/**
+	 * String literals that are longer than the rest of the block are rejected
+	 */
+	public void testIncompleteString() throws Exception {
+		assertInvalid(new HpackDecoder(4096, 0), "400a 6375 7374 6f6d");
+		assertInvalid(new HpackDecoder(4096, 0), "400a 6375 7374 6f6d 2d6b 6579");
+		assertInvalid(new HpackDecoder(4096, 0), "407f ffff ff07 61");
+	}
+
+	/**
+	 * Decodes the given block and checks that the given headers come out
+	 */
+	private static void assertHeaders(HpackDecoder decoder, String hex, String... expected) throws HpackException {
+		List<String> headers = new ArrayList<String>();
+		byte[] block = bytes(hex);
+		assertTrue(decoder.decode(block, 0, block.length, collector(headers)));
+		assertEquals(Arrays.asList(expected), headers);
+	}
+
+	/**
+	 * Checks that decoding the given block fails
+	 */
+	private static void assertInvalid(HpackDecoder decoder, String hex) {
+		byte[] block = bytes(hex);
+		try {
+			decoder.decode(block, 0, block.length, collector(new ArrayList<String>()));
+			fail("Block should have been rejected: " + hex);
+		} catch (HpackException ex) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Returns a listener that adds "name: value" to the given list for each header
+	 */
+	private static HpackDecoder.HeaderListener collector(final List<String> headers) {
+		return new HpackDecoder.HeaderListener() {
+			public void addHeader(String name, String value) {
+				headers.add(name + ": " + value);
+			}
+		};
+	}
+
+	/**
+	 * Turns a string of hexadecimal digits, spaces are ignored, into bytes
+	 */
+	private static byte[] bytes(String hex) {
+		hex = hex.replace(" ", "");
+		byte[] result = new byte[hex.length() / 2];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,422 @@
+/*
+ * ProxyServletTest.java
+ *
+ * Created on Oct 19, 2026, 7:52:37 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.codejive.websrv.Server;
+import org.codejive.websrv.config.HttpListenerConfig;
+import org.codejive.websrv.config.ServerConfig;
+import org.codejive.websrv.listener.Listener;
+import org.codejive.websrv.protocol.proxy.ProxySettings;
+import org.codejive.websrv.protocol.proxy.Upstream;
+import junit.framework.TestCase;
+
+/**
+ * Tests the proxy servlet on the loopback interface, with a server that
+ * forwards to a fake upstream server which can be told to misbehave
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class ProxyServletTest extends TestCase {
+
+	/**
+	 * The character set used for the requests and responses
+	 */
+	private static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+	/**
+	 * The fake upstream server
+	 */
+	private FakeUpstream fake;
+
+	/**
+	 * The upstream server as seen by the proxy
+	 */
+	private Upstream upstream;
+
+	/**
+	 * The server running the proxy
+	 */
+	private Server server;
+
+	/**
+	 * The port the proxy is listening on
+	 */
+	private int port;
+
+	@Override
+	protected void setUp() throws Exception {
+		fake = new FakeUpstream();
+		upstream = new Upstream("127.0.0.1", fake.getPort());
+		ProxySettings settings = new ProxySettings();
+		settings.setReadTimeout(500);
+		startProxy(new ProxyServlet(settings, upstream));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.shutdown();
+		fake.close();
+	}
+
+	/**
+	 * Requests are forwarded with the client's address added and
+	 * the upstream connection is reused for the next request
+	 */
+	public void testKeepAlive() throws IOException {
+		Response r = request("GET /hello?a=b HTTP/1.1\r\nHost: example.com\r\nX-Forwarded-For: 10.0.0.1\r\n");
+		assertEquals(200, r.status);
+		assertEquals("GET /hello?a=b connection 1 host=example.com xff=10.0.0.1, 127.0.0.1", r.body);
+		for (int i = 0; i < 5; i++) {
+			r = request("GET /hello HTTP/1.1\r\nHost: example.com\r\n");
+			assertEquals(200, r.status);
+			assertEquals("GET /hello connection 1 host=example.com xff=127.0.0.1", r.body);
+		}
+		assertEquals(1, upstream.getOpenedCount());
+		assertEquals(1, upstream.getIdleCount());
+	}
+
+	/**
+	 * Request bodies are forwarded and the connection is still reused
+	 */
+	public void testPost() throws IOException {
+		Response r = request("POST /form HTTP/1.1\r\nHost: example.com\r\n", "a=1&b=2");
+		assertEquals(200, r.status);
+		assertEquals("POST /form connection 1 host=example.com xff=127.0.0.1 body=a=1&b=2", r.body);
+		r = request("GET /hello HTTP/1.1\r\nHost: example.com\r\n");
+		assertEquals("GET /hello connection 1 host=example.com xff=127.0.0.1", r.body);
+		assertEquals(1, upstream.getOpenedCount());
+	}
+
+	/**
+	 * A GET on a pooled connection that the upstream server closed in
+	 * the meantime is retried on a new connection, a POST isn't
+	 */
+	public void testStaleConnection() throws Exception {
+		assertEquals(200, request("GET /close HTTP/1.1\r\nHost: example.com\r\n").status);
+		fake.awaitClosed(1);
+		Response r = request("GET /hello HTTP/1.1\r\nHost: example.com\r\n");
+		assertEquals(200, r.status);
+		assertEquals("GET /hello connection 2 host=example.com xff=127.0.0.1", r.body);
+
+		assertEquals(200, request("GET /close HTTP/1.1\r\nHost: example.com\r\n").status);
+		fake.awaitClosed(2);
+		r = request("POST /form HTTP/1.1\r\nHost: example.com\r\n", "a=1&b=2");
+		assertEquals(502, r.status);
+	}
+
+	/**
+	 * Responses that aren't HTTP result in a 502
+	 */
+	public void testBadGateway() throws IOException {
+		assertEquals(502, request("GET /garbage HTTP/1.1\r\nHost: example.com\r\n").status);
+		assertEquals(0, upstream.getIdleCount());
+		assertEquals(200, request("GET /hello HTTP/1.1\r\nHost: example.com\r\n").status);
+	}
+
+	/**
+	 * An upstream server that can't be reached results in a 502
+	 */
+	public void testUnreachable() throws Exception {
+		server.shutdown();
+		ServerSocket closed = new ServerSocket(0);
+		int closedPort = closed.getLocalPort();
+		closed.close();
+		startProxy(new ProxyServlet(new Upstream("127.0.0.1", closedPort)));
+		assertEquals(502, request("GET /hello HTTP/1.1\r\nHost: example.com\r\n").status);
+	}
+
+	/**
+	 * An upstream server that doesn't respond in time results in a 504
+	 * and the connection isn't used again
+	 */
+	public void testGatewayTimeout() throws IOException {
+		long start = System.currentTimeMillis();
+		assertEquals(504, request("GET /slow HTTP/1.1\r\nHost: example.com\r\n").status);
+		assertTrue(System.currentTimeMillis() - start >= 500);
+		assertEquals(0, upstream.getIdleCount());
+		Response r = request("GET /hello HTTP/1.1\r\nHost: example.com\r\n");
+		assertEquals("GET /hello connection 2 host=example.com xff=127.0.0.1", r.body);
+	}
+
+	/**
+	 * Starts a server on the loopback interface that passes all requests
+	 * to the given proxy
+	 */
+	private void startProxy(ProxyServlet proxy) throws Exception {
+		ServerConfig config = new ServerConfig();
+		HttpListenerConfig listener = new HttpListenerConfig("127.0.0.1", 0);
+		listener.setDefaultServlet(proxy);
+		config.getListeners().add(listener);
+		server = config.buildServer();
+		server.startAll();
+		Listener l = server.getListeners().get(0);
+		for (int i = 0; i < 500 && !l.isRunning(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(l.isRunning());
+		port = l.getPort();
+	}
+
+	/**
+	 * Sends a request without a body to the proxy
+	 */
+	private Response request(String head) throws IOException {
+		return request(head, null);
+	}
+
+	/**
+	 * Sends a request to the proxy, on a connection of its own, and
+	 * returns the response
+	 */
+	private Response request(String head, String body) throws IOException {
+		StringBuilder request = new StringBuilder(head);
+		request.append("Connection: close\r\n");
+		if (body != null) {
+			request.append("Content-Length: ").append(body.length()).append("\r\n\r\n").append(body);
+		} else {
+			request.append("\r\n");
+		}
+		Socket socket = new Socket("127.0.0.1", port);
+		try {
+			socket.setSoTimeout(10000);
+			socket.getOutputStream().write(request.toString().getBytes(ASCII));
+			String response = readAll(socket.getInputStream());
+			Response r = new Response();
+			r.status = Integer.parseInt(response.substring(9, 12));
+			r.body = response.substring(response.indexOf("\r\n\r\n") + 4);
+			return r;
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Reads the given stream until it ends
+	 */
+	private static String readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = in.read(buf)) >= 0) {
+			out.write(buf, 0, n);
+		}
+		return new String(out.toByteArray(), ASCII);
+	}
+
+	/**
+	 * The status and body of a response
+	 */
+	private static class Response {
+		/**
+		 * The status code
+		 */
+		int status;
+
+		/**
+		 * The body
+		 */
+		String body;
+	}
+
+	/**
+	 * A minimal upstream server that handles each connection on a thread
+	 * of its own. What it does depends on the path of the request:
+	 * "/close" closes the connection after the response without saying
+	 * so, "/garbage" sends something that isn't HTTP, "/slow" never
+	 * responds and anything else gets a response that describes the
+	 * request and the connection it was received on
+	 */
+	private static class FakeUpstream implements Runnable {
+
+		/**
+		 * The socket accepting the connections
+		 */
+		private final ServerSocket serverSocket;
+
+		/**
+		 * The number of connections accepted so far
+		 */
+		private final AtomicInteger accepted = new AtomicInteger();
+
+		/**
+		 * The number of connections we closed ourselves
+		 */
+		private int closed;
+
+		/**
+		 * Creates a new instance listening on any free port
+		 */
+		public FakeUpstream() throws IOException {
+			serverSocket = new ServerSocket(0);
+			Thread t = new Thread(this, "FakeUpstream");
+			t.setDaemon(true);
+			t.start();
+		}
+
+		/**
+		 * Returns the port we're listening on
+		 */
+		public int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		/**
+		 * Stops accepting connections
+		 */
+		public void close() throws IOException {
+			serverSocket.close();
+		}
+
+		/**
+		 * Waits until we closed the given number of connections ourselves
+		 */
+		public synchronized void awaitClosed(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (closed < count && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+			assertEquals(count, closed);
+		}
+
+		/**
+		 * Counts a connection that we closed ourselves
+		 */
+		private synchronized void countClosed() {
+			closed++;
+			notifyAll();
+		}
+
+		/**
+		 * Accepts connections until the server socket is closed
+		 */
+		public void run() {
+			try {
+				for (;;) {
+					final Socket socket = serverSocket.accept();
+					final int id = accepted.incrementAndGet();
+					Thread t = new Thread("FakeUpstream-" + id) {
+						@Override
+						public void run() {
+							serve(socket, id);
+						}
+					};
+					t.setDaemon(true);
+					t.start();
+				}
+			} catch (IOException ex) {
+				// The server socket was closed
+			}
+		}
+
+		/**
+		 * Handles the requests on a single connection
+		 */
+		private void serve(Socket socket, int id) {
+			try {
+				InputStream in = socket.getInputStream();
+				OutputStream out = socket.getOutputStream();
+				String line;
+				while ((line = readLine(in)) != null) {
+					String[] parts = line.split(" ");
+					String host = null;
+					String xff = null;
+					int length = 0;
+					while ((line = readLine(in)).length() > 0) {
+						int colon = line.indexOf(':');
+						String name = line.substring(0, colon).trim();
+						String value = line.substring(colon + 1).trim();
+						if (name.equalsIgnoreCase("Host")) {
+							host = value;
+						} else if (name.equalsIgnoreCase("X-Forwarded-For")) {
+							xff = value;
+						} else if (name.equalsIgnoreCase("Content-Length")) {
+							length = Integer.parseInt(value);
+						}
+					}
+					byte[] body = new byte[length];
+					for (int n = 0; n < length; ) {
+						n += in.read(body, n, length - n);
+					}
+					String path = parts[1];
+					if (path.equals("/slow")) {
+						// Wait until the proxy gives up
+						readLine(in);
+						break;
+					} else if (path.equals("/garbage")) {
+						out.write("This is not HTTP\r\n\r\n".getBytes(ASCII));
+						break;
+					}
+					String text = parts[0] + " " + path + " connection " + id + " host=" + host + " xff=" + xff;
+					if (length > 0) {
+						text += " body=" + new String(body, ASCII);
+					}
+					byte[] data = text.getBytes(ASCII);
+					out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + data.length + "\r\n\r\n").getBytes(ASCII));
+					out.write(data);
+					out.flush();
+					if (path.equals("/close")) {
+						socket.close();
+						countClosed();
+						return;
+					}
+				}
+			} catch (SocketException ex) {
+				// The proxy closed the connection
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException ex) {
+					// Ignore
+				}
+			}
+		}
+
+		/**
+		 * Reads a line of the request head or returns null at the end
+		 */
+		private static String readLine(InputStream in) throws IOException {
+			StringBuilder line = new StringBuilder();
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c < 0) {
+					return null;
+				}
+				if (c != '\r') {
+					line.append((char) c);
+				}
+			}
+			return line.toString();
+		}
+	}
+}
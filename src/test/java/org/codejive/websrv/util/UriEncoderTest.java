@@ -0,0 +1,190 @@
+/*
+ * UriEncoderTest.java
+ *
+ * Created on Oct 19, 2026, 7:41:05 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.util;
+
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import junit.framework.TestCase;
+
+/**
+ * Tests the encoding and decoding of escaped URL octets, including
+ * non-ASCII text and escapes that are malformed or not valid UTF-8
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class UriEncoderTest extends TestCase {
+
+	/**
+	 * The character set used for the escaped octets
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Text in a couple of scripts, with characters of 1, 2, 3 and 4 UTF-8 bytes
+	 */
+	private static final String[] TEXTS = {
+		"",
+		"plain",
+		"caf\u00e9 cr\u00e8me br\u00fbl\u00e9e",
+		"\u041f\u0440\u0438\u0432\u0435\u0442, \u043c\u0438\u0440",
+		"\u65e5\u672c\u8a9e/\u30c6\u30b9\u30c8",
+		"\u20ac 100 & 50% off?",
+		"smile \ud83d\ude00 and \ud834\udd1e",
+		"a+b=c;d/e?f#g h~i_j.k-l"
+	};
+
+	/**
+	 * Non-ASCII characters are escaped, everything else is left alone
+	 */
+	public void testEncode() {
+		assertEquals("/caf%C3%A9", UriEncoder.encode("/caf\u00e9"));
+		assertEquals("/%E2%82%AC?a=b c", UriEncoder.encode("/\u20ac?a=b c"));
+		assertEquals("%F0%9F%98%80", UriEncoder.encode("\ud83d\ude00"));
+		assertEquals("\u007f%C2%80%DF%BF%E0%A0%80%EF%BF%BF", UriEncoder.encode("\u007f\u0080\u07ff\u0800\uffff"));
+		String ascii = "/some/path?with=query&and#fragment";
+		assertSame(ascii, UriEncoder.encode(ascii));
+	}
+
+	/**
+	 * Only unreserved characters are left alone when encoding a component
+	 */
+	public void testEncodeComponent() {
+		assertEquals("a%20b%26c%3Dd%2Fe%3Ff%23g%25h%2Bi", UriEncoder.encodeComponent("a b&c=d/e?f#g%h+i"));
+		assertEquals("r%C3%A9sum%C3%A9.txt", UriEncoder.encodeComponent("r\u00e9sum\u00e9.txt"));
+		String unreserved = "AZaz09-._~";
+		assertSame(unreserved, UriEncoder.encodeComponent(unreserved));
+	}
+
+	/**
+	 * Surrogates without their other half can't be encoded
+	 */
+	public void testLoneSurrogates() {
+		assertEquals("a?b", UriEncoder.encode("a\ud83db"));
+		assertEquals("a?", UriEncoder.encode("a\ude00"));
+		assertEquals("%3F%3F", UriEncoder.encodeComponent("\ude00\ud83d"));
+	}
+
+	/**
+	 * Encoding and then decoding returns the original text
+	 */
+	public void testRoundTrip() throws Exception {
+		for (String text : TEXTS) {
+			assertEquals(text, UriEncoder.decode(UriEncoder.encodeComponent(text)));
+			assertEquals(text, UriEncoder.decode(UriEncoder.encodeComponent(text), true));
+			byte[] encoded = UriEncoder.encodeComponent(text).getBytes(UTF8);
+			assertEquals(text, UriEncoder.decode(encoded, 0, encoded.length, false));
+			// Only non-ASCII characters are escaped, the "%" in one of the
+			// texts stays because it isn't followed by two hex digits
+			assertEquals(text, UriEncoder.decode(UriEncoder.encode(text)));
+			// And we understand what others produce
+			assertEquals(text, UriEncoder.decode(URLEncoder.encode(text, "UTF-8"), true));
+		}
+	}
+
+	/**
+	 * Strings that are too large for the per-thread scratch array still work
+	 */
+	public void testLargeStrings() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			text.append("\u00e9\u20ac/");
+		}
+		String encoded = UriEncoder.encodeComponent(text.toString());
+		assertEquals(10000 * 18, encoded.length());
+		assertEquals(text.toString(), UriEncoder.decode(encoded));
+		assertEquals("%C3%A9", UriEncoder.encode("\u00e9"));
+	}
+
+	/**
+	 * Non-ASCII characters in the input of decode are passed on as they are
+	 */
+	public void testDecodeUnescaped() {
+		assertEquals("caf\u00e9 100%", UriEncoder.decode("caf\u00e9 %31%30%30%"));
+		assertEquals("\ud83d\ude00\u00e9", UriEncoder.decode("\ud83d\ude00%C3%A9"));
+	}
+
+	/**
+	 * Escapes are only recognized when followed by two hexadecimal digits
+	 */
+	public void testMalformedEscapes() {
+		String[][] cases = {
+			{ "%", "%" },
+			{ "100%", "100%" },
+			{ "%4", "%4" },
+			{ "a%4", "a%4" },
+			{ "%zz", "%zz" },
+			{ "%4G", "%4G" },
+			{ "%G4", "%G4" },
+			{ "%%41", "%A" },
+			{ "%41%", "A%" },
+			{ "%4a%4A", "JJ" },
+			{ "%+1", "%+1" }
+		};
+		for (String[] c : cases) {
+			assertEquals(c[0], c[1], UriEncoder.decode(c[0]));
+			byte[] b = c[0].getBytes(UTF8);
+			assertEquals(c[0], c[1], UriEncoder.decode(b, 0, b.length, false));
+		}
+		assertEquals("% 1", UriEncoder.decode("%+1", true));
+	}
+
+	/**
+	 * Escaped octets that aren't valid UTF-8 are replaced and can't be
+	 * used to sneak in characters that were checked for
+	 */
+	public void testInvalidUtf8() {
+		assertEquals("\ufffd", UriEncoder.decode("%C3"));
+		assertEquals("\ufffd(", UriEncoder.decode("%C3%28"));
+		assertEquals("a\ufffdb", UriEncoder.decode("a%FFb"));
+		assertEquals("\ufffd", UriEncoder.decode("%80").substring(0, 1));
+		String[] tricks = { "%C0%AF", "%E0%80%AF", "%F0%80%80%AF", "%C0%AE%C0%AE%C0%AF", "%ED%A0%80" };
+		for (String trick : tricks) {
+			assertOnlyReplacements(trick, UriEncoder.decode(trick));
+			byte[] b = trick.getBytes(UTF8);
+			assertOnlyReplacements(trick, UriEncoder.decode(b, 0, b.length, false));
+		}
+	}
+
+	/**
+	 * A "+" is only a space when asked for
+	 */
+	public void testPlusAsSpace() {
+		assertEquals("a+b", UriEncoder.decode("a+b"));
+		assertEquals("a b", UriEncoder.decode("a+b", true));
+		assertEquals("a b+c", UriEncoder.decode("a+b%2Bc", true));
+		byte[] b = "a+b%2Bc".getBytes(UTF8);
+		assertEquals("a b+c", UriEncoder.decode(b, 0, b.length, true));
+		assertEquals("+b", UriEncoder.decode(b, 1, 2, false));
+		assertNull(UriEncoder.decode(null));
+	}
+
+	/**
+	 * Checks that the result consists of nothing but replacement characters
+	 */
+	private static void assertOnlyReplacements(String input, String result) {
+		assertTrue(input, result.length() > 0);
+		for (int i = 0; i < result.length(); i++) {
+			assertEquals(input, '\ufffd', result.charAt(i));
+		}
+	}
+}
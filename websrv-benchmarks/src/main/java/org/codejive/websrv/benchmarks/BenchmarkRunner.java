@@ -0,0 +1,76 @@
+/*
+ * BenchmarkRunner.java
+ *
+ * Created on Oct 19, 2026, 10:02:17 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main entry point of the benchmarks jar. It accepts the same command line
+ * options as JMH itself but it always enables the GC profiler (so allocation
+ * rates are recorded next to the timings) and unless told otherwise it writes
+ * the results to <code>jmh-result.json</code> so they can be kept as the
+ * baseline to compare future runs against.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * The file the results are written to by default
+	 */
+	private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	/**
+	 * Main entry point for the benchmarks
+	 * @param args JMH command line options
+	 * @throws java.lang.Exception If the benchmarks could not be run
+	 */
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		if (cmdOptions.shouldHelp()) {
+			cmdOptions.showHelp();
+			return;
+		}
+
+		ChainedOptionsBuilder builder = new OptionsBuilder()
+				.parent(cmdOptions)
+				.addProfiler(GCProfiler.class);
+		if (!cmdOptions.getResult().hasValue()) {
+			builder.result(DEFAULT_RESULT_FILE);
+		}
+		if (!cmdOptions.getResultFormat().hasValue()) {
+			builder.resultFormat(ResultFormatType.JSON);
+		}
+
+		Runner runner = new Runner(builder.build());
+		if (cmdOptions.shouldList()) {
+			runner.list();
+		} else {
+			runner.run();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * HttpResponseWriterBenchmark.java
+ *
+ * Created on Oct 19, 2026, 10:14:55 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.codejive.websrv.protocol.http.HttpResponseImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing a complete response (response code, headers and body)
+ * into a stream that discards everything, both with and without chunked
+ * transfer encoding
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpResponseWriterBenchmark {
+
+	/**
+	 * The size of the response body in bytes
+	 */
+	@Param({"0", "512", "16384", "262144"})
+	public int bodySize;
+
+	/**
+	 * Use chunked transfer encoding or a fixed content length
+	 */
+	@Param({"false", "true"})
+	public boolean chunked;
+
+	/**
+	 * The size of the blocks the body is written in
+	 */
+	private static final int BLOCK_SIZE = 4096;
+
+	private byte[] block;
+	private NullOutputStream sink;
+	private HttpResponseImpl recycled;
+
+	@Setup
+	public void setup() {
+		block = new byte[BLOCK_SIZE];
+		Arrays.fill(block, (byte) 'x');
+		sink = new NullOutputStream();
+		recycled = new HttpResponseImpl(sink);
+	}
+
+	@Benchmark
+	public long writeResponse() throws IOException {
+		return writeResponse(new HttpResponseImpl(sink));
+	}
+
+	@Benchmark
+	public long writeRecycledResponse() throws IOException {
+		recycled.recycle();
+		return writeResponse(recycled);
+	}
+
+	private long writeResponse(HttpResponseImpl response) throws IOException {
+		response.setContentType("text/html");
+		response.setHeader("Connection", "Keep-Alive");
+		response.setHeader("Cache-Control", "max-age=3600");
+		if (chunked) {
+			response.setHeader("Transfer-Encoding", "chunked");
+		} else {
+			response.setHeader("Content-Length", String.valueOf(bodySize));
+		}
+		OutputStream out = response.getOutputStream();
+		int remaining = bodySize;
+		while (remaining > 0) {
+			int len = Math.min(remaining, BLOCK_SIZE);
+			out.write(block, 0, len);
+			remaining -= len;
+		}
+		out.close();
+		return sink.getCount();
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * MimeTypesBenchmark.java
+ *
+ * Created on Oct 19, 2026, 10:26:48 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.codejive.websrv.mimetype.DefaultMimeTypeHandler;
+import org.codejive.websrv.mimetype.MimeType;
+import org.codejive.websrv.mimetype.MimeTypeHandler;
+import org.codejive.websrv.mimetype.MimeTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures looking up the mime-type for a path using the same set of
+ * mime-types as the demonstration server
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MimeTypesBenchmark {
+
+	/**
+	 * The path to look up
+	 */
+	@Param({"/index.html", "/images/tako.png", "/index.page", "/unknown.bin"})
+	public String path;
+
+	private MimeTypes mimeTypes;
+
+	@Setup
+	public void setup() {
+		MimeTypeHandler handler = new DefaultMimeTypeHandler();
+		mimeTypes = new MimeTypes();
+		mimeTypes.getMimeTypes().add(new MimeType("text/plain", handler, "txt"));
+		mimeTypes.getMimeTypes().add(new MimeType("text/html", handler, "html", "htm"));
+		mimeTypes.getMimeTypes().add(new MimeType("text/xml", handler, "xml"));
+		mimeTypes.getMimeTypes().add(new MimeType("text/css", handler, "css"));
+		mimeTypes.getMimeTypes().add(new MimeType("image/gif", handler, "gif"));
+		mimeTypes.getMimeTypes().add(new MimeType("image/jpg", handler, "jpg"));
+		mimeTypes.getMimeTypes().add(new MimeType("image/png", handler, "png"));
+		mimeTypes.getMimeTypes().add(new MimeType("image/x-icon", handler, "ico"));
+		mimeTypes.getMimeTypes().add(new MimeType("x-application/x-websrv-page", handler, "page"));
+	}
+
+	@Benchmark
+	public MimeType findByPath() {
+		return mimeTypes.findByPath(path);
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * NullOutputStream.java
+ *
+ * Created on Oct 19, 2026, 10:05:40 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.benchmarks;
+
+import java.io.OutputStream;
+
+/**
+ * An output stream that simply discards everything written to it, used
+ * to measure the cost of generating output without measuring any I/O
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class NullOutputStream extends OutputStream {
+
+	/**
+	 * The number of bytes written to the stream so far
+	 */
+	private long count;
+
+	@Override
+	public void write(int b) {
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		count += len;
+	}
+
+	/**
+	 * Returns the number of bytes written to the stream so far
+	 * @return The number of bytes written
+	 */
+	public long getCount() {
+		return count;
+	}
+}
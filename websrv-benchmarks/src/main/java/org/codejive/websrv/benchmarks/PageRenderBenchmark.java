@@ -0,0 +1,125 @@
+/*
+ * PageRenderBenchmark.java
+ *
+ * Created on Oct 19, 2026, 10:35:22 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.codejive.websrv.mimetype.PageMimeTypeHandler;
+import org.codejive.websrv.protocol.http.HttpRequestImpl;
+import org.codejive.websrv.protocol.http.HttpResponseImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a .page template with variable substitutions and a
+ * loop into a stream that discards everything
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageRenderBenchmark {
+
+	/**
+	 * The number of items the template loops over
+	 */
+	@Param({"1", "20"})
+	public int itemCount;
+
+	/**
+	 * A simple bean used as a template variable
+	 */
+	public static class Item {
+		private final String name;
+		private final int size;
+
+		public Item(String name, int size) {
+			this.name = name;
+			this.size = size;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getSize() {
+			return size;
+		}
+	}
+
+	private PageMimeTypeHandler handler;
+	private HttpRequestImpl request;
+	private byte[] page;
+	private NullOutputStream sink;
+
+	@Setup
+	public void setup() throws Exception {
+		handler = new PageMimeTypeHandler();
+		handler.getVariables().put("title", "Benchmark");
+		List<Item> items = new ArrayList<Item>();
+		for (int i = 0; i < itemCount; i++) {
+			items.add(new Item("item" + i, i * 100));
+		}
+		handler.getVariables().put("items", items);
+
+		request = new HttpRequestImpl();
+		request.setRequestMethod("GET");
+		request.setRequestProtocol("HTTP/1.1");
+		request.parseUrl("/index.page");
+
+		String text = "200\n"
+				+ "Content-Type: text/html\n"
+				+ "\n"
+				+ "<html><head><title>${title}</title></head><body>\n"
+				+ "<h1>${title}</h1>\n"
+				+ "<ul>\n"
+				+ "%{item=items}<li>${item.name} (${item.size} bytes)</li>\n%{item}"
+				+ "</ul>\n"
+				+ "</body></html>\n";
+		page = text.getBytes("UTF-8");
+		sink = new NullOutputStream();
+	}
+
+	@Benchmark
+	public long render() throws IOException {
+		HttpResponseImpl response = new HttpResponseImpl(sink);
+		handler.process(new ByteArrayInputStream(page), request, response);
+		response.getOutputStream().close();
+		return sink.getCount();
+	}
+}
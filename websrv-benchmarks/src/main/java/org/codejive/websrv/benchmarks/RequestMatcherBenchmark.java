@@ -0,0 +1,121 @@
+/*
+ * RequestMatcherBenchmark.java
+ *
+ * Created on Oct 19, 2026, 10:21:30 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpRequestImpl;
+import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.servlet.RequestMatch;
+import org.codejive.websrv.servlet.RequestMatcherServlet;
+import org.codejive.websrv.servlet.Servlet;
+import org.codejive.websrv.util.SimplePathMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures finding the servlet for a request in a RequestMatcherServlet
+ * configured with a varying number of rules. The request paths used will
+ * match the first, the middle and the last of the configured rules.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestMatcherBenchmark {
+
+	/**
+	 * The number of rules configured in the servlet
+	 */
+	@Param({"10", "100", "1000"})
+	public int ruleCount;
+
+	private RequestMatcherServlet servlet;
+	private HttpRequestImpl firstRequest;
+	private HttpRequestImpl middleRequest;
+	private HttpRequestImpl lastRequest;
+
+	/**
+	 * A servlet that does nothing but hand the matched path to a black hole
+	 */
+	private static class SinkServlet implements Servlet {
+		private Blackhole blackhole;
+
+		public void process(String requestPath, HttpRequest request, HttpResponse response) throws IOException {
+			blackhole.consume(requestPath);
+		}
+	}
+
+	private SinkServlet sinkServlet;
+
+	@Setup
+	public void setup(Blackhole blackhole) throws Exception {
+		sinkServlet = new SinkServlet();
+		sinkServlet.blackhole = blackhole;
+		servlet = new RequestMatcherServlet();
+		for (int i = 0; i < ruleCount; i++) {
+			RequestMatch match = new RequestMatch("head,get,post", "*", new SimplePathMatcher("/app" + i + "(/**)?"), sinkServlet);
+			servlet.getRequestMatchers().add(match);
+		}
+		firstRequest = createRequest("/app0/index.html");
+		middleRequest = createRequest("/app" + (ruleCount / 2) + "/images/logo.png");
+		lastRequest = createRequest("/app" + (ruleCount - 1) + "/css/site/styles.css");
+	}
+
+	private HttpRequestImpl createRequest(String url) throws Exception {
+		HttpRequestImpl request = new HttpRequestImpl();
+		request.setRequestMethod("GET");
+		request.setRequestProtocol("HTTP/1.1");
+		request.parseUrl(url);
+		return request;
+	}
+
+	@Benchmark
+	public void matchFirst() throws IOException {
+		servlet.process(firstRequest.getPath(), firstRequest, null);
+	}
+
+	@Benchmark
+	public void matchMiddle() throws IOException {
+		servlet.process(middleRequest.getPath(), middleRequest, null);
+	}
+
+	@Benchmark
+	public void matchLast() throws IOException {
+		servlet.process(lastRequest.getPath(), lastRequest, null);
+	}
+}
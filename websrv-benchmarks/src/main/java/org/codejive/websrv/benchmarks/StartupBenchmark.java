@@ -0,0 +1,138 @@
+/*
+ * StartupBenchmark.java
+ *
+ * Created on Oct 19, 2026, 9:41:05 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.codejive.websrv.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.Server;
+import org.codejive.websrv.config.ConfigLoader;
+import org.codejive.websrv.listener.Listener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time it takes a freshly started JVM to go from a
+ * configuration file to the first answered request: reading the file,
+ * building the server, starting the listener and accepting a connection.
+ * Every measurement runs in its own JVM so nothing is loaded or compiled
+ * beforehand, the target is to stay below 200 milliseconds
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+	private static final byte[] REQUEST = "GET /index.html HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes();
+
+	private File root;
+	private File config;
+	private Server server;
+
+	@Setup
+	public void setup() throws IOException {
+		Logger.getLogger("org.codejive.websrv").setLevel(Level.WARNING);
+		root = File.createTempFile("websrv-startup", "");
+		root.delete();
+		root.mkdir();
+		write(new File(root, "index.html"), "<html><body>ok</body></html>\n");
+		config = new File(root, "websrv.conf");
+		write(config, "welcome = index.html\n"
+				+ "cache.pages.ttl = 1000\n"
+				+ "listener.main.address = 127.0.0.1\n"
+				+ "listener.main.port = 0\n"
+				+ "listener.main.maxThreads = 16\n"
+				+ "listener.main.rateLimit = 1000\n"
+				+ "listener.main.route.api.path = /api/**\n"
+				+ "listener.main.route.api.proxy = 127.0.0.1:9\n"
+				+ "listener.main.route.site.path = **\n"
+				+ "listener.main.route.site.files = " + root.getPath() + "\n"
+				+ "listener.main.route.site.cache = pages\n");
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (server != null) {
+			server.shutdown();
+		}
+		new File(root, "index.html").delete();
+		config.delete();
+		root.delete();
+	}
+
+	@Benchmark
+	public int firstRequest() throws Exception {
+		server = new ConfigLoader(config).load().buildServer();
+		server.startAll();
+		Listener listener = server.getListeners().get(0);
+		while (!listener.isRunning()) {
+			Thread.sleep(1);
+		}
+		Socket socket = new Socket(listener.getAddress(), listener.getPort());
+		try {
+			socket.setTcpNoDelay(true);
+			OutputStream out = socket.getOutputStream();
+			out.write(REQUEST);
+			out.flush();
+			InputStream in = socket.getInputStream();
+			byte[] buf = new byte[4096];
+			int total = 0;
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				total += n;
+			}
+			return total;
+		} finally {
+			socket.close();
+		}
+	}
+
+	private static void write(File file, String text) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+}
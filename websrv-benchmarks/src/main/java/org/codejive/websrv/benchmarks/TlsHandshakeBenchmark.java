@@ -0,0 +1,190 @@
+/*
+ * TlsHandshakeBenchmark.java
+ *
+ * Created on Oct 19, 2026, 2:47:33 PM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import org.codejive.websrv.listener.HttpsListener;
+import org.codejive.websrv.protocol.http.HttpRequest;
+import org.codejive.websrv.protocol.http.HttpResponse;
+import org.codejive.websrv.servlet.Servlet;
+import org.codejive.websrv.tls.SSLContextManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures setting up an HTTPS connection to an HttpsListener on the
+ * loopback interface and doing a single request over it, both with a
+ * full handshake and with a handshake that resumes an earlier session.
+ * The key store is generated with the JDK's keytool when the benchmark
+ * starts
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TlsHandshakeBenchmark {
+
+	/**
+	 * The protocol version the client will use
+	 */
+	@Param({"TLSv1.2", "TLSv1.3"})
+	public String protocol;
+
+	private static final byte[] REQUEST = "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes();
+
+	private File keyStore;
+	private HttpsListener listener;
+	private Thread listenerThread;
+	private SSLContext clientContext;
+	private byte[] buf;
+
+	@Setup
+	public void setup() throws Exception {
+		Logger.getLogger("org.codejive.websrv").setLevel(Level.WARNING);
+		keyStore = createKeyStore();
+
+		listener = new HttpsListener(InetAddress.getLoopbackAddress(), 0);
+		listener.setSSLContextManager(new SSLContextManager(keyStore, "benchmark"));
+		listener.setDefaultServlet(new Servlet() {
+			public void process(String path, HttpRequest request, HttpResponse response) throws IOException {
+				response.setHeader("Content-Length", "3");
+				response.getOutputStream().write(new byte[] { 'o', 'k', '\n' });
+			}
+		});
+		listenerThread = new Thread(listener, "benchmark-listener");
+		listenerThread.start();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!listener.isRunning()) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IllegalStateException("Listener did not start");
+			}
+			Thread.sleep(10);
+		}
+
+		clientContext = SSLContext.getInstance("TLS");
+		clientContext.init(null, new TrustManager[] { new TrustAll() }, new SecureRandom());
+		buf = new byte[4096];
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		listener.shutdown();
+		listenerThread.join(5000);
+		keyStore.delete();
+	}
+
+	@Benchmark
+	public int fullHandshake() throws IOException {
+		return request(false);
+	}
+
+	@Benchmark
+	public int resumedHandshake() throws IOException {
+		return request(true);
+	}
+
+	private int request(boolean resume) throws IOException {
+		SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(listener.getAddress(), listener.getPort());
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setEnabledProtocols(new String[] { protocol });
+			OutputStream out = socket.getOutputStream();
+			out.write(REQUEST);
+			out.flush();
+			InputStream in = socket.getInputStream();
+			int total = 0;
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				total += n;
+			}
+			if (!resume) {
+				// Make sure the next connection can't resume this session
+				socket.getSession().invalidate();
+			}
+			return total;
+		} finally {
+			socket.close();
+		}
+	}
+
+	private static File createKeyStore() throws IOException, InterruptedException {
+		File file = File.createTempFile("websrv-benchmark", ".p12");
+		file.delete();
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process p = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "EC",
+				"-groupname", "secp256r1", "-dname", "CN=localhost", "-validity", "2",
+				"-storetype", "PKCS12", "-keystore", file.getPath(),
+				"-storepass", "benchmark", "-keypass", "benchmark")
+				.redirectErrorStream(true)
+				.start();
+		InputStream in = p.getInputStream();
+		while (in.read() >= 0) {
+			// Just drain the output
+		}
+		if (p.waitFor() != 0 || !file.exists()) {
+			throw new IOException("Could not create key store using " + keytool);
+		}
+		return file;
+	}
+
+	/**
+	 * Accepts any server certificate, we're only measuring
+	 */
+	private static class TrustAll implements X509TrustManager {
+		public void checkClientTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		public void checkServerTrusted(X509Certificate[] chain, String authType) {
+		}
+
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * UriEncoderBenchmark.java
+ *
+ * Created on Oct 19, 2026, 10:30:03 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.benchmarks;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.codejive.websrv.util.UriEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures encoding and decoding of typical URL parts, both for plain
+ * ASCII text and for text that needs (percent-)escaping
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UriEncoderBenchmark {
+
+	/**
+	 * The kind of text to encode and decode
+	 */
+	@Param({"ascii", "escaped", "unicode"})
+	public String kind;
+
+	private String decoded;
+	private String encoded;
+	private byte[] encodedBytes;
+
+	@Setup
+	public void setup() {
+		if ("ascii".equals(kind)) {
+			decoded = "/images/site/logo-large.png";
+		} else if ("escaped".equals(kind)) {
+			decoded = "/docs/some file with spaces & stuff.html";
+		} else {
+			decoded = "/döcs/über/日本語.html";
+		}
+		encoded = UriEncoder.encode(decoded);
+		if (encoded.indexOf('%') < 0) {
+			encoded = encoded.replace(" ", "%20").replace("&", "%26");
+		}
+		encodedBytes = encoded.getBytes(Charset.forName("ISO-8859-1"));
+	}
+
+	@Benchmark
+	public String encode() {
+		return UriEncoder.encode(decoded);
+	}
+
+	@Benchmark
+	public String encodeComponent() {
+		return UriEncoder.encodeComponent(decoded);
+	}
+
+	@Benchmark
+	public String decode() {
+		return UriEncoder.decode(encoded);
+	}
+
+	@Benchmark
+	public String decodeBytes() {
+		return UriEncoder.decode(encodedBytes, 0, encodedBytes.length, false);
+	}
+}
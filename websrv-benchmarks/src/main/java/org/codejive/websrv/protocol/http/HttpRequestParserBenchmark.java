@@ -0,0 +1,109 @@
+/*
+ * HttpRequestParserBenchmark.java
+ *
+ * Created on Oct 19, 2026, 10:09:12 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.protocol.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the parsing of a request line and its headers from an in-memory
+ * stream. This benchmark lives in the same package as the protocol handler
+ * so it can call the parsing methods directly without needing a socket.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpRequestParserBenchmark {
+
+	/**
+	 * The kind of request to parse
+	 */
+	@Param({"minimal", "browser", "query"})
+	public String kind;
+
+	private HttpProtocolHandler handler;
+	private HttpRequestLimits limits;
+	private byte[] data;
+
+	@Setup
+	public void setup() {
+		handler = new HttpProtocolHandler(null);
+		limits = new HttpRequestLimits();
+		String head;
+		if ("minimal".equals(kind)) {
+			head = "GET / HTTP/1.1\r\n"
+					+ "Host: localhost\r\n"
+					+ "\r\n";
+		} else if ("browser".equals(kind)) {
+			head = "GET /images/tako.png HTTP/1.1\r\n"
+					+ "Host: www.example.com:8090\r\n"
+					+ "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n"
+					+ "Accept: image/avif,image/webp,image/png,image/svg+xml,image/*;q=0.8,*/*;q=0.5\r\n"
+					+ "Accept-Language: en-US,en;q=0.5\r\n"
+					+ "Accept-Encoding: gzip, deflate, br, zstd\r\n"
+					+ "Connection: keep-alive\r\n"
+					+ "Referer: http://www.example.com:8090/index.html\r\n"
+					+ "Cookie: session=7f3a2b1c9d8e; theme=dark; lang=en\r\n"
+					+ "Sec-Fetch-Dest: image\r\n"
+					+ "Sec-Fetch-Mode: no-cors\r\n"
+					+ "Sec-Fetch-Site: same-origin\r\n"
+					+ "Priority: u=5, i\r\n"
+					+ "\r\n";
+		} else {
+			head = "GET /search/results.page?q=web%20server&lang=en&page=2&size=50&sort=date&order=desc&filter=a%2Cb HTTP/1.1\r\n"
+					+ "Host: www.example.com\r\n"
+					+ "Accept: text/html\r\n"
+					+ "\r\n";
+		}
+		try {
+			data = head.getBytes("ISO-8859-1");
+		} catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	@Benchmark
+	public HttpRequest parseRequestHead() throws IOException {
+		HttpConnectionInput in = new HttpConnectionInput(null, new ByteArrayInputStream(data), limits);
+		in.startHead();
+		HttpRequestImpl request = handler.parseRequest(in);
+		handler.parseRequestHeaders(in, request);
+		return request;
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * LatencyHistogram.java
+ *
+ * Created on Oct 19, 2026, 11:02:40 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.loadtest;
+
+import java.io.PrintStream;
+
+/**
+ * A simple log-linear histogram of latencies in microseconds. Values below
+ * 64 are counted exactly, larger values are counted in buckets that keep the
+ * six most significant bits after the leading one, so the relative error of
+ * any reported value is less than 1.6%. The histogram has a fixed size and
+ * recording a value never allocates.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class LatencyHistogram {
+
+	/**
+	 * The number of linear sub-buckets per power of two
+	 */
+	private static final int SUB_BUCKETS = 64;
+	/**
+	 * The number of sub-bucket bits
+	 */
+	private static final int SUB_BUCKET_BITS = 6;
+
+	private final long[] counts;
+	private long totalCount;
+	private long min;
+	private long max;
+	private double sum;
+
+	/**
+	 * Creates a new empty histogram
+	 */
+	public LatencyHistogram() {
+		counts = new long[SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+		reset();
+	}
+
+	/**
+	 * Removes all recorded values
+	 */
+	public void reset() {
+		java.util.Arrays.fill(counts, 0);
+		totalCount = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+		sum = 0;
+	}
+
+	/**
+	 * Records a single value
+	 * @param value The value in microseconds
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[bucketIndex(value)]++;
+		totalCount++;
+		sum += value;
+		if (value < min) {
+			min = value;
+		}
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	/**
+	 * Adds all the values recorded in the given histogram to this one
+	 * @param other The histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Returns the number of recorded values
+	 * @return The number of values
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Returns the smallest recorded value
+	 * @return The minimum value or 0 if nothing was recorded
+	 */
+	public long getMin() {
+		return (totalCount > 0) ? min : 0;
+	}
+
+	/**
+	 * Returns the largest recorded value
+	 * @return The maximum value
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the average of the recorded values
+	 * @return The mean value
+	 */
+	public double getMean() {
+		return (totalCount > 0) ? sum / totalCount : 0;
+	}
+
+	/**
+	 * Returns the value below which the given percentage of values fall
+	 * @param percentile A percentage between 0 and 100
+	 * @return The value at the given percentile (the upper bound of its bucket)
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(totalCount * percentile / 100.0);
+		if (target < 1) {
+			target = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.min(highestValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Prints the distribution of the values using one line per power of two
+	 * @param out The stream to print to
+	 */
+	public void printDistribution(PrintStream out) {
+		if (totalCount == 0) {
+			return;
+		}
+		long[] groups = new long[64];
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				long low = lowestValue(i);
+				int group = (low == 0) ? 0 : 64 - Long.numberOfLeadingZeros(low);
+				groups[group] += counts[i];
+			}
+		}
+		long largest = 0;
+		for (long count : groups) {
+			largest = Math.max(largest, count);
+		}
+		for (int group = 0; group < groups.length; group++) {
+			if (groups[group] == 0) {
+				continue;
+			}
+			long low = (group == 0) ? 0 : (1L << (group - 1));
+			long high = (1L << group) - 1;
+			int bar = (int) Math.max(1, groups[group] * 50 / largest);
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < bar; i++) {
+				sb.append('#');
+			}
+			out.printf("  %10d - %-10d us %10d  %6.2f%%  %s%n", low, high, groups[group], groups[group] * 100.0 / totalCount, sb);
+		}
+	}
+
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int shift = msb - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+	}
+
+	private static long lowestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long sub = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		return sub << shift;
+	}
+
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long sub = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,414 @@
+/*
+ * LoadGenerator.java
+ *
+ * Created on Oct 19, 2026, 11:41:57 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a fixed number of client connections from a single thread using
+ * non-blocking I/O. It can work in two modes:
+ * <li><b>closed-loop</b> (rate = 0): every connection sends its next request
+ * as soon as the response to the previous one was received, which measures
+ * the maximum throughput the server can sustain</li>
+ * <li><b>open-loop</b> (rate &gt; 0): requests are scheduled at a constant
+ * rate independent of how fast the server responds. The latency of each
+ * request is measured from the moment it <i>should</i> have been sent, so a
+ * server that stalls can't hide the delay it causes for the requests queued
+ * behind it (no "coordinated omission")</li>
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class LoadGenerator implements Runnable {
+
+	private final InetSocketAddress address;
+	private final int requestLength;
+	private final byte[] requests;
+	private final int connectionCount;
+	private final boolean keepAlive;
+	private final int pipelineDepth;
+	private final double rate;
+	private final long warmupNanos;
+	private final long durationNanos;
+	private final long timeoutNanos;
+	private final LoadStatistics stats;
+
+	private Selector selector;
+	private Slot[] slots;
+	private Slot[] idle;
+	private int idleCount;
+
+	private long[] pending;
+	private int pendingHead;
+	private int pendingCount;
+
+	private long backlog;
+	private long unfinished;
+
+	/**
+	 * Creates a new generator
+	 * @param address The address of the server
+	 * @param request The bytes of a single request
+	 * @param connectionCount The number of connections to use
+	 * @param keepAlive Keep connections open between requests or not
+	 * @param pipelineDepth The number of requests to send on a connection
+	 * before waiting for their responses
+	 * @param rate The number of requests per second or 0 for closed-loop mode
+	 * @param warmupSeconds The number of seconds before measuring starts
+	 * @param durationSeconds The number of seconds to measure
+	 * @param timeoutSeconds The number of seconds after which a request
+	 * without a response is considered to have failed
+	 */
+	public LoadGenerator(InetSocketAddress address, byte[] request, int connectionCount, boolean keepAlive,
+			int pipelineDepth, double rate, int warmupSeconds, int durationSeconds, int timeoutSeconds) {
+		this.address = address;
+		this.requestLength = request.length;
+		this.requests = new byte[request.length * pipelineDepth];
+		for (int i = 0; i < pipelineDepth; i++) {
+			System.arraycopy(request, 0, requests, i * request.length, request.length);
+		}
+		this.connectionCount = connectionCount;
+		this.keepAlive = keepAlive;
+		this.pipelineDepth = pipelineDepth;
+		this.rate = rate;
+		this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+		this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+		this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+		this.stats = new LoadStatistics();
+	}
+
+	/**
+	 * Returns the statistics gathered during the measurement period
+	 * @return The statistics
+	 */
+	public LoadStatistics getStatistics() {
+		return stats;
+	}
+
+	/**
+	 * Returns the number of requests that were scheduled (in open-loop mode)
+	 * but that were never sent because no connection was available
+	 * @return The number of requests that were never sent
+	 */
+	public long getBacklog() {
+		return backlog;
+	}
+
+	/**
+	 * Returns the number of requests that were still waiting for a
+	 * response when the test ended
+	 * @return The number of unfinished requests
+	 */
+	public long getUnfinished() {
+		return unfinished;
+	}
+
+	public void run() {
+		try {
+			selector = Selector.open();
+			slots = new Slot[connectionCount];
+			idle = new Slot[connectionCount];
+			for (int i = 0; i < connectionCount; i++) {
+				slots[i] = new Slot();
+				idle[idleCount++] = slots[i];
+			}
+			pending = new long[1024];
+			loop();
+		} catch (IOException ex) {
+			throw new IllegalStateException("Load generator failed", ex);
+		} finally {
+			for (Slot slot : slots) {
+				if (slot != null) {
+					unfinished += slot.outstanding;
+					slot.close();
+				}
+			}
+			backlog = pendingCount;
+			try {
+				selector.close();
+			} catch (IOException ex) {
+				// Ignore
+			}
+		}
+	}
+
+	private void loop() throws IOException {
+		long start = System.nanoTime();
+		long measureStart = start + warmupNanos;
+		long end = measureStart + durationNanos;
+		boolean measuring = (warmupNanos == 0);
+		long interval = (rate > 0) ? (long) (1000000000L / rate) : 0;
+		long nextIntended = start;
+		long nextTimeoutCheck = start;
+
+		for (;;) {
+			long now = System.nanoTime();
+			if (!measuring && now >= measureStart) {
+				stats.reset();
+				measuring = true;
+			}
+			if (now >= end) {
+				break;
+			}
+			if (interval > 0) {
+				while (nextIntended <= now) {
+					addPending(nextIntended);
+					nextIntended += interval;
+				}
+			}
+			dispatch(now);
+			if (now >= nextTimeoutCheck) {
+				checkTimeouts(now);
+				nextTimeoutCheck = now + TimeUnit.MILLISECONDS.toNanos(10);
+			}
+
+			long wait = (interval > 0) ? nextIntended - now : TimeUnit.MILLISECONDS.toNanos(100);
+			wait = Math.min(wait, end - now);
+			long waitMillis = TimeUnit.NANOSECONDS.toMillis(wait);
+			int n = (waitMillis > 0) ? selector.select(waitMillis) : selector.selectNow();
+			if (n > 0) {
+				Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+				while (i.hasNext()) {
+					SelectionKey key = i.next();
+					i.remove();
+					handle((Slot) key.attachment(), key);
+				}
+			}
+		}
+	}
+
+	private void addPending(long time) {
+		if (pendingCount == pending.length) {
+			long[] tmp = new long[pending.length * 2];
+			for (int i = 0; i < pendingCount; i++) {
+				tmp[i] = pending[(pendingHead + i) % pending.length];
+			}
+			pending = tmp;
+			pendingHead = 0;
+		}
+		pending[(pendingHead + pendingCount) % pending.length] = time;
+		pendingCount++;
+	}
+
+	private long pollPending() {
+		long time = pending[pendingHead];
+		pendingHead = (pendingHead + 1) % pending.length;
+		pendingCount--;
+		return time;
+	}
+
+	private void dispatch(long now) {
+		while (idleCount > 0) {
+			int n;
+			if (rate > 0) {
+				n = Math.min(pendingCount, pipelineDepth);
+				if (n == 0) {
+					return;
+				}
+			} else {
+				n = pipelineDepth;
+			}
+			Slot slot = idle[--idleCount];
+			slot.idle = false;
+			for (int i = 0; i < n; i++) {
+				slot.starts[(slot.startsHead + i) % pipelineDepth] = (rate > 0) ? pollPending() : now;
+			}
+			slot.outstanding = n;
+			slot.out = ByteBuffer.wrap(requests, 0, n * requestLength);
+			try {
+				if (slot.channel == null) {
+					slot.open();
+				} else {
+					slot.write();
+				}
+			} catch (IOException ex) {
+				if (slot.connected) {
+					stats.ioErrors += slot.outstanding;
+				} else {
+					stats.connectErrors++;
+				}
+				slot.close();
+				release(slot);
+			}
+		}
+	}
+
+	private void checkTimeouts(long now) {
+		for (Slot slot : slots) {
+			if (slot.outstanding > 0 && now - slot.starts[slot.startsHead] > timeoutNanos) {
+				stats.timeouts += slot.outstanding;
+				slot.close();
+				release(slot);
+			}
+		}
+	}
+
+	private void handle(Slot slot, SelectionKey key) {
+		try {
+			if (!key.isValid()) {
+				return;
+			}
+			if (key.isConnectable()) {
+				try {
+					if (!slot.channel.finishConnect()) {
+						return;
+					}
+				} catch (IOException ex) {
+					stats.connectErrors++;
+					slot.close();
+					release(slot);
+					return;
+				}
+				slot.connected = true;
+				stats.connections++;
+				slot.write();
+			} else if (key.isWritable()) {
+				slot.write();
+			} else if (key.isReadable()) {
+				slot.read();
+			}
+		} catch (IOException ex) {
+			stats.ioErrors += Math.max(1, slot.outstanding);
+			slot.close();
+			release(slot);
+		}
+	}
+
+	private void release(Slot slot) {
+		if (slot.idle) {
+			return;
+		}
+		slot.idle = true;
+		slot.outstanding = 0;
+		slot.out = null;
+		idle[idleCount++] = slot;
+	}
+
+	/**
+	 * Holds the state of one of the generator's connections
+	 */
+	private class Slot {
+		SocketChannel channel;
+		SelectionKey key;
+		boolean idle = true;
+		boolean connected;
+		boolean closeWhenDone;
+		ByteBuffer out;
+		final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+		final long[] starts = new long[pipelineDepth];
+		int startsHead;
+		int outstanding;
+		final ResponseParser parser = new ResponseParser();
+
+		void open() throws IOException {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			connected = false;
+			closeWhenDone = false;
+			in.clear();
+			parser.reset();
+			if (channel.connect(address)) {
+				connected = true;
+				stats.connections++;
+				key = channel.register(selector, 0, this);
+				write();
+			} else {
+				key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+			}
+		}
+
+		void write() throws IOException {
+			channel.write(out);
+			if (out.hasRemaining()) {
+				key.interestOps(SelectionKey.OP_WRITE);
+			} else {
+				out = null;
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		void read() throws IOException {
+			int n = channel.read(in);
+			if (n < 0) {
+				if (parser.endOfInput()) {
+					completed();
+				}
+				if (outstanding > 0) {
+					// The server closed the connection before answering everything
+					stats.ioErrors += outstanding;
+				}
+				close();
+				release(this);
+				return;
+			}
+			in.flip();
+			while (in.hasRemaining() && parser.parse(in)) {
+				completed();
+				if (channel == null) {
+					return;
+				}
+			}
+			in.compact();
+		}
+
+		private void completed() {
+			if (outstanding == 0) {
+				stats.ioErrors++;
+				return;
+			}
+			long start = starts[startsHead];
+			startsHead = (startsHead + 1) % pipelineDepth;
+			outstanding--;
+			stats.recordResponse(parser.getStatus(), parser.getBodyBytes(), System.nanoTime() - start);
+			if (parser.isClose()) {
+				closeWhenDone = true;
+			}
+			if (outstanding == 0) {
+				if (!keepAlive || closeWhenDone) {
+					close();
+				}
+				release(this);
+			}
+		}
+
+		void close() {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException ex) {
+					// Ignore
+				}
+				channel = null;
+				key = null;
+			}
+			connected = false;
+			startsHead = 0;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * LoadStatistics.java
+ *
+ * Created on Oct 19, 2026, 11:26:14 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.loadtest;
+
+/**
+ * Holds the counters and the latency histogram gathered by a load generator.
+ * Each generator thread has its own instance, they are added together after
+ * the test has finished.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class LoadStatistics {
+
+	/**
+	 * The number of completed requests
+	 */
+	long completed;
+	/**
+	 * The number of response bytes received (body only)
+	 */
+	long bytes;
+	/**
+	 * The number of responses per status class (1xx to 5xx)
+	 */
+	final long[] statusClasses = new long[6];
+	/**
+	 * The number of connections that could not be established
+	 */
+	long connectErrors;
+	/**
+	 * The number of requests that failed because of I/O errors or
+	 * because the server closed the connection prematurely
+	 */
+	long ioErrors;
+	/**
+	 * The number of requests that didn't get a response in time
+	 */
+	long timeouts;
+	/**
+	 * The number of connections opened
+	 */
+	long connections;
+	/**
+	 * The latencies of the completed requests in microseconds
+	 */
+	final LatencyHistogram latencies = new LatencyHistogram();
+
+	/**
+	 * Clears all counters
+	 */
+	public void reset() {
+		completed = 0;
+		bytes = 0;
+		java.util.Arrays.fill(statusClasses, 0);
+		connectErrors = 0;
+		ioErrors = 0;
+		timeouts = 0;
+		connections = 0;
+		latencies.reset();
+	}
+
+	/**
+	 * Adds the counters of the given statistics to this one
+	 * @param other The statistics to add
+	 */
+	public void add(LoadStatistics other) {
+		completed += other.completed;
+		bytes += other.bytes;
+		for (int i = 0; i < statusClasses.length; i++) {
+			statusClasses[i] += other.statusClasses[i];
+		}
+		connectErrors += other.connectErrors;
+		ioErrors += other.ioErrors;
+		timeouts += other.timeouts;
+		connections += other.connections;
+		latencies.add(other.latencies);
+	}
+
+	/**
+	 * Records a completed request
+	 * @param status The HTTP response code
+	 * @param bodyBytes The size of the response body
+	 * @param latencyNanos The latency of the request in nanoseconds
+	 */
+	void recordResponse(int status, long bodyBytes, long latencyNanos) {
+		completed++;
+		bytes += bodyBytes;
+		int cls = status / 100;
+		if (cls >= 1 && cls <= 5) {
+			statusClasses[cls]++;
+		}
+		latencies.record(latencyNanos / 1000);
+	}
+
+	/**
+	 * Returns the total number of errors, meaning failed connections,
+	 * failed requests, time-outs and 5xx responses
+	 * @return The number of errors
+	 */
+	public long getErrorCount() {
+		return connectErrors + ioErrors + timeouts + statusClasses[5];
+	}
+}
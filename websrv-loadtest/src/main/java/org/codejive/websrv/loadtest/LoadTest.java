@@ -0,0 +1,304 @@
+/*
+ * LoadTest.java
+ *
+ * Created on Oct 19, 2026, 11:58:20 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.codejive.websrv.Server;
+import org.codejive.websrv.config.HttpListenerConfig;
+import org.codejive.websrv.config.ServerConfig;
+import org.codejive.websrv.config.WelcomeFiles;
+import org.codejive.websrv.listener.Listener;
+import org.codejive.websrv.mimetype.DefaultMimeTypeHandler;
+import org.codejive.websrv.mimetype.MimeType;
+import org.codejive.websrv.mimetype.MimeTypes;
+import org.codejive.websrv.mimetype.PageMimeTypeHandler;
+import org.codejive.websrv.servlet.FileServlet;
+
+/**
+ * Starts a websrv instance on the loopback interface and hammers it with
+ * requests from a configurable number of connections, afterwards reporting
+ * the throughput, the errors and the latency distribution. Run it without
+ * arguments or with <code>--help</code> to see the available options.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public class LoadTest {
+
+	private Scenario scenario = Scenario.SMALL;
+	private int connections = 16;
+	private boolean keepAlive = true;
+	private double rate = 0;
+	private int duration = 10;
+	private int warmup = 2;
+	private int pipelineDepth = -1;
+	private int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+	private int timeout = 10;
+	private int port = 0;
+
+	public static void main(String[] args) throws Exception {
+		LoadTest test = new LoadTest();
+		try {
+			test.parseArguments(args);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			usage(System.err);
+			System.exit(1);
+		}
+		test.run();
+	}
+
+	private static void usage(PrintStream out) {
+		out.println("Usage: java -jar loadtest.jar [options]");
+		out.println("  --scenario <name>       small, large, notfound, page or pipelined (default: small)");
+		out.println("  --connections <n>       number of client connections (default: 16)");
+		out.println("  --keep-alive <bool>     reuse connections between requests (default: true)");
+		out.println("  --rate <n>              requests per second, 0 means as fast as possible (default: 0)");
+		out.println("  --duration <s>          measurement time in seconds (default: 10)");
+		out.println("  --warmup <s>            warm-up time in seconds (default: 2)");
+		out.println("  --pipeline-depth <n>    requests sent before waiting for responses (default: per scenario)");
+		out.println("  --threads <n>           number of client threads (default: min(4, cpus))");
+		out.println("  --timeout <s>           time after which a request is considered failed (default: 10)");
+		out.println("  --port <n>              port for the server, 0 picks a free one (default: 0)");
+	}
+
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if ("--help".equals(arg) || "-h".equals(arg)) {
+				usage(System.out);
+				System.exit(0);
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for option " + arg);
+			}
+			String value = args[++i];
+			try {
+				if ("--scenario".equals(arg)) {
+					scenario = Scenario.byName(value);
+				} else if ("--connections".equals(arg)) {
+					connections = positive(arg, Integer.parseInt(value));
+				} else if ("--keep-alive".equals(arg)) {
+					keepAlive = Boolean.parseBoolean(value);
+				} else if ("--rate".equals(arg)) {
+					rate = Double.parseDouble(value);
+					if (rate < 0) {
+						throw new IllegalArgumentException("Option " + arg + " must not be negative");
+					}
+				} else if ("--duration".equals(arg)) {
+					duration = positive(arg, Integer.parseInt(value));
+				} else if ("--warmup".equals(arg)) {
+					warmup = Integer.parseInt(value);
+				} else if ("--pipeline-depth".equals(arg)) {
+					pipelineDepth = positive(arg, Integer.parseInt(value));
+				} else if ("--threads".equals(arg)) {
+					threads = positive(arg, Integer.parseInt(value));
+				} else if ("--timeout".equals(arg)) {
+					timeout = positive(arg, Integer.parseInt(value));
+				} else if ("--port".equals(arg)) {
+					port = Integer.parseInt(value);
+				} else {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			} catch (NumberFormatException ex) {
+				throw new IllegalArgumentException("Invalid value for option " + arg + ": " + value);
+			}
+		}
+		if (pipelineDepth < 0) {
+			pipelineDepth = scenario.getDefaultPipelineDepth();
+		}
+		threads = Math.min(threads, connections);
+	}
+
+	private static int positive(String option, int value) {
+		if (value <= 0) {
+			throw new IllegalArgumentException("Option " + option + " must be larger than 0");
+		}
+		return value;
+	}
+
+	private void run() throws Exception {
+		// Keep the server quiet, we're only interested in the numbers
+		Logger.getLogger("org.codejive.websrv").setLevel(Level.WARNING);
+
+		File root = createWebRoot();
+		Server server = createServer(root);
+		server.startAll();
+		try {
+			Listener listener = server.getListeners().get(0);
+			waitForListener(listener);
+			InetSocketAddress address = new InetSocketAddress(listener.getAddress(), listener.getPort());
+
+			System.out.println("Scenario:     " + scenario.name().toLowerCase() + " (GET " + scenario.getPath() + ")");
+			System.out.println("Server:       " + address.getAddress().getHostAddress() + ":" + address.getPort());
+			System.out.println("Connections:  " + connections + " on " + threads + " thread(s), keep-alive " + keepAlive
+					+ ", pipeline depth " + pipelineDepth);
+			System.out.println("Mode:         " + ((rate > 0) ? "open-loop at " + rate + " req/s" : "closed-loop"));
+			System.out.println("Duration:     " + warmup + "s warm-up + " + duration + "s measurement");
+			System.out.println();
+
+			byte[] request = createRequest(address);
+			List<LoadGenerator> generators = new ArrayList<LoadGenerator>();
+			List<Thread> workers = new ArrayList<Thread>();
+			for (int i = 0; i < threads; i++) {
+				int count = connections / threads + ((i < connections % threads) ? 1 : 0);
+				double threadRate = rate * count / connections;
+				LoadGenerator generator = new LoadGenerator(address, request, count, keepAlive, pipelineDepth,
+						threadRate, warmup, duration, timeout);
+				Thread worker = new Thread(generator, "loadtest-" + i);
+				generators.add(generator);
+				workers.add(worker);
+				worker.start();
+			}
+
+			LoadStatistics total = new LoadStatistics();
+			long backlog = 0;
+			long unfinished = 0;
+			for (int i = 0; i < threads; i++) {
+				workers.get(i).join();
+				LoadGenerator generator = generators.get(i);
+				total.add(generator.getStatistics());
+				backlog += generator.getBacklog();
+				unfinished += generator.getUnfinished();
+			}
+			report(System.out, total, backlog, unfinished);
+		} finally {
+			server.shutdown();
+			delete(root);
+		}
+	}
+
+	private File createWebRoot() throws IOException {
+		File root = File.createTempFile("websrv-loadtest", "");
+		if (!root.delete() || !root.mkdir()) {
+			throw new IOException("Could not create web root " + root);
+		}
+		Scenario.createFiles(root);
+		return root;
+	}
+
+	private Server createServer(File root) throws Exception {
+		DefaultMimeTypeHandler defaultHandler = new DefaultMimeTypeHandler();
+		PageMimeTypeHandler pageHandler = new PageMimeTypeHandler();
+		pageHandler.getVariables().put("title", "Load test");
+		List<String> items = new ArrayList<String>();
+		for (int i = 0; i < 20; i++) {
+			items.add("Item " + i);
+		}
+		pageHandler.getVariables().put("items", items);
+
+		MimeTypes mimeTypes = new MimeTypes();
+		mimeTypes.getMimeTypes().add(new MimeType("text/plain", defaultHandler, "txt"));
+		mimeTypes.getMimeTypes().add(new MimeType("text/html", defaultHandler, "html"));
+		mimeTypes.getMimeTypes().add(new MimeType("application/octet-stream", defaultHandler, "bin"));
+		mimeTypes.getMimeTypes().add(new MimeType("x-application/x-websrv-page", pageHandler, "page"));
+
+		ServerConfig config = new ServerConfig();
+		config.setMimeTypes(mimeTypes);
+		WelcomeFiles welcomeFiles = new WelcomeFiles();
+		config.setWelcomeFiles(welcomeFiles);
+
+		HttpListenerConfig listenerConfig = new HttpListenerConfig("127.0.0.1", port);
+		listenerConfig.setDefaultServlet(new FileServlet(root.getPath(), mimeTypes, welcomeFiles));
+		config.getListeners().add(listenerConfig);
+		return config.buildServer();
+	}
+
+	private void waitForListener(Listener listener) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!listener.isRunning()) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IllegalStateException("Server did not start");
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private byte[] createRequest(InetSocketAddress address) throws IOException {
+		StringBuilder req = new StringBuilder();
+		req.append("GET ").append(scenario.getPath()).append(" HTTP/1.1\r\n");
+		req.append("Host: ").append(address.getAddress().getHostAddress()).append(':').append(address.getPort()).append("\r\n");
+		req.append("User-Agent: websrv-loadtest\r\n");
+		req.append("Accept: */*\r\n");
+		if (!keepAlive) {
+			req.append("Connection: close\r\n");
+		}
+		req.append("\r\n");
+		return req.toString().getBytes("US-ASCII");
+	}
+
+	private void report(PrintStream out, LoadStatistics stats, long backlog, long unfinished) {
+		LatencyHistogram latencies = stats.latencies;
+		out.println("Requests:     " + stats.completed + " completed");
+		out.printf("Throughput:   %.1f req/s, %.2f MB/s%n", (double) stats.completed / duration,
+				(double) stats.bytes / duration / (1024 * 1024));
+		out.println("Connections:  " + stats.connections + " opened during measurement");
+		out.print("Status:      ");
+		for (int i = 1; i < stats.statusClasses.length; i++) {
+			if (stats.statusClasses[i] > 0) {
+				out.print(" " + i + "xx=" + stats.statusClasses[i]);
+			}
+		}
+		out.println();
+		out.println("Errors:       " + stats.getErrorCount() + " (connect " + stats.connectErrors + ", i/o "
+				+ stats.ioErrors + ", timeout " + stats.timeouts + ", 5xx " + stats.statusClasses[5] + ")");
+		if (rate > 0) {
+			out.println("Not sent:     " + backlog + " (requests that found no free connection)");
+		}
+		out.println("Unfinished:   " + unfinished);
+		out.println();
+		if (latencies.getTotalCount() > 0) {
+			out.println("Latency (us):");
+			out.printf("  min %d  mean %.0f  max %d%n", latencies.getMin(), latencies.getMean(), latencies.getMax());
+			double[] percentiles = { 50, 90, 99, 99.9, 99.99 };
+			for (double p : percentiles) {
+				out.printf("  p%-6s %d%n", format(p), latencies.getValueAtPercentile(p));
+			}
+			out.println();
+			out.println("Latency distribution (us):");
+			latencies.printDistribution(out);
+		}
+	}
+
+	private static String format(double percentile) {
+		if (percentile == Math.floor(percentile)) {
+			return Long.toString((long) percentile);
+		}
+		return Double.toString(percentile);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * ResponseParser.java
+ *
+ * Created on Oct 19, 2026, 11:18:31 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.loadtest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An incremental parser for HTTP/1.x responses. Data can be fed to it in
+ * blocks of any size as it arrives from the network, the parser will tell
+ * when it has seen the end of a complete response. Bodies are skipped, only
+ * their size is counted. Responses with a Content-Length, chunked responses
+ * and responses terminated by closing the connection are all supported.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+class ResponseParser {
+
+	private static final int STATUS = 0;
+	private static final int HEADER = 1;
+	private static final int BODY = 2;
+	private static final int CHUNK_SIZE = 3;
+	private static final int CHUNK_DATA = 4;
+	private static final int CHUNK_END = 5;
+	private static final int TRAILER = 6;
+	private static final int UNTIL_CLOSE = 7;
+
+	/**
+	 * The maximum length of a status or header line
+	 */
+	private static final int MAX_LINE = 16 * 1024;
+
+	private int state;
+	private final byte[] line;
+	private int lineLength;
+
+	private int status;
+	private long contentLength;
+	private boolean chunked;
+	private boolean close;
+	private long remaining;
+	private long bodyBytes;
+
+	/**
+	 * Creates a new parser
+	 */
+	public ResponseParser() {
+		line = new byte[MAX_LINE];
+		reset();
+	}
+
+	/**
+	 * Prepares the parser for a new connection
+	 */
+	public void reset() {
+		state = STATUS;
+		lineLength = 0;
+		startResponse();
+	}
+
+	private void startResponse() {
+		status = 0;
+		contentLength = -1;
+		chunked = false;
+		close = false;
+		remaining = 0;
+		bodyBytes = 0;
+	}
+
+	/**
+	 * Returns the response code of the last completed response
+	 * @return The HTTP response code
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the number of body bytes of the last completed response
+	 * @return The size of the response body
+	 */
+	public long getBodyBytes() {
+		return bodyBytes;
+	}
+
+	/**
+	 * Indicates if the server wants to close the connection after the
+	 * last completed response
+	 * @return True if the connection will be closed
+	 */
+	public boolean isClose() {
+		return close;
+	}
+
+	/**
+	 * Indicates if the parser is somewhere in the middle of a response
+	 * @return True if part of a response has been parsed
+	 */
+	public boolean isBusy() {
+		return state != STATUS || lineLength > 0;
+	}
+
+	/**
+	 * Parses data from the given buffer until either the buffer is empty or
+	 * a response was completed. In the latter case the buffer's position will
+	 * point to the first byte after the response
+	 * @param buf The data to parse
+	 * @return True if a complete response was parsed
+	 * @throws java.io.IOException If the data is not a valid HTTP response
+	 */
+	public boolean parse(ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			switch (state) {
+			case BODY:
+			case CHUNK_DATA: {
+				int n = (int) Math.min(remaining, buf.remaining());
+				buf.position(buf.position() + n);
+				remaining -= n;
+				bodyBytes += n;
+				if (remaining == 0) {
+					if (state == BODY) {
+						return complete();
+					}
+					state = CHUNK_END;
+				}
+				break;
+			}
+			case UNTIL_CLOSE: {
+				bodyBytes += buf.remaining();
+				buf.position(buf.limit());
+				break;
+			}
+			default:
+				if (readLine(buf) && handleLine()) {
+					return complete();
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tells the parser that the connection was closed by the server
+	 * @return True if this completed a response that was being read
+	 * until the end of the connection
+	 */
+	public boolean endOfInput() {
+		if (state == UNTIL_CLOSE) {
+			close = true;
+			complete();
+			return true;
+		}
+		return false;
+	}
+
+	private boolean complete() {
+		state = STATUS;
+		return true;
+	}
+
+	private boolean readLine(ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			byte b = buf.get();
+			if (b == '\n') {
+				if (lineLength > 0 && line[lineLength - 1] == '\r') {
+					lineLength--;
+				}
+				return true;
+			}
+			if (lineLength == line.length) {
+				throw new IOException("Response line too long");
+			}
+			line[lineLength++] = b;
+		}
+		return false;
+	}
+
+	private boolean handleLine() throws IOException {
+		String text = new String(line, 0, lineLength, "ISO-8859-1");
+		lineLength = 0;
+		switch (state) {
+		case STATUS:
+			if (text.length() == 0) {
+				// Be lenient about empty lines between responses
+				return false;
+			}
+			startResponse();
+			String[] parts = text.split(" ", 3);
+			if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+				throw new IOException("Malformed status line: " + text);
+			}
+			try {
+				status = Integer.parseInt(parts[1]);
+			} catch (NumberFormatException ex) {
+				throw new IOException("Malformed status line: " + text);
+			}
+			close = "HTTP/1.0".equals(parts[0]);
+			state = HEADER;
+			return false;
+		case HEADER:
+			if (text.length() > 0) {
+				int colon = text.indexOf(':');
+				if (colon > 0) {
+					String name = text.substring(0, colon).trim();
+					String value = text.substring(colon + 1).trim();
+					if (name.equalsIgnoreCase("Content-Length")) {
+						contentLength = Long.parseLong(value);
+					} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+						chunked = value.equalsIgnoreCase("chunked");
+					} else if (name.equalsIgnoreCase("Connection")) {
+						close = value.equalsIgnoreCase("close");
+					}
+				}
+				return false;
+			}
+			if (status >= 100 && status < 200) {
+				// Interim response, the real one follows
+				state = STATUS;
+				return false;
+			}
+			if (status == 204 || status == 304) {
+				return true;
+			}
+			if (chunked) {
+				state = CHUNK_SIZE;
+			} else if (contentLength >= 0) {
+				if (contentLength == 0) {
+					return true;
+				}
+				remaining = contentLength;
+				state = BODY;
+			} else {
+				state = UNTIL_CLOSE;
+			}
+			return false;
+		case CHUNK_SIZE: {
+			int semi = text.indexOf(';');
+			String size = (semi >= 0) ? text.substring(0, semi) : text;
+			try {
+				remaining = Long.parseLong(size.trim(), 16);
+			} catch (NumberFormatException ex) {
+				throw new IOException("Malformed chunk size: " + text);
+			}
+			state = (remaining == 0) ? TRAILER : CHUNK_DATA;
+			return false;
+		}
+		case CHUNK_END:
+			state = CHUNK_SIZE;
+			return false;
+		case TRAILER:
+			return text.length() == 0;
+		default:
+			throw new IllegalStateException("Unexpected parser state " + state);
+		}
+	}
+}
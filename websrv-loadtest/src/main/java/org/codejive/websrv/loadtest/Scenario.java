@@ -0,0 +1,138 @@
+/*
+ * Scenario.java
+ *
+ * Created on Oct 19, 2026, 11:10:05 AM
+ * Copyright Tako Schotanus
+ *
+ * This file is part of websrv.
+ *
+ * websrv is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * websrv is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.codejive.websrv.loadtest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * The canned load test scenarios. Each scenario defines the request path
+ * that will be requested over and over again, how many requests will be
+ * sent back-to-back on a connection without waiting for the responses and
+ * it knows how to create the files it needs in the server's web root.
+ * @author Tako Schotanus &lt;tako AT codejive.org&gt;
+ */
+public enum Scenario {
+	/**
+	 * A small static file
+	 */
+	SMALL("/small.html", 1),
+	/**
+	 * A 10 MB static file
+	 */
+	LARGE("/large.bin", 1),
+	/**
+	 * Requests for files that don't exist
+	 */
+	NOTFOUND("/does/not/exist.html", 1),
+	/**
+	 * Rendering of a .page template
+	 */
+	PAGE("/index.page", 1),
+	/**
+	 * Several pipelined requests for a small static file
+	 */
+	PIPELINED("/small.html", 8);
+
+	/**
+	 * The size of the file used by the LARGE scenario
+	 */
+	public static final int LARGE_FILE_SIZE = 10 * 1024 * 1024;
+
+	private final String path;
+	private final int defaultPipelineDepth;
+
+	private Scenario(String path, int defaultPipelineDepth) {
+		this.path = path;
+		this.defaultPipelineDepth = defaultPipelineDepth;
+	}
+
+	/**
+	 * Returns the path that will be requested by this scenario
+	 * @return A request path
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the number of requests that will be sent on a connection
+	 * before waiting for their responses unless told otherwise
+	 * @return The default pipeline depth
+	 */
+	public int getDefaultPipelineDepth() {
+		return defaultPipelineDepth;
+	}
+
+	/**
+	 * Returns the scenario with the given (case insensitive) name
+	 * @param name The name of a scenario
+	 * @return The scenario
+	 * @throws IllegalArgumentException If no scenario exists with that name
+	 */
+	public static Scenario byName(String name) {
+		return valueOf(name.toUpperCase());
+	}
+
+	/**
+	 * Creates all the files needed by the scenarios in the given folder
+	 * @param root The web root folder
+	 * @throws java.io.IOException If the files could not be created
+	 */
+	public static void createFiles(File root) throws IOException {
+		StringBuilder html = new StringBuilder();
+		html.append("<html><head><title>Small</title></head><body>\n");
+		while (html.length() < 900) {
+			html.append("<p>The quick brown fox jumps over the lazy dog.</p>\n");
+		}
+		html.append("</body></html>\n");
+		write(new File(root, "small.html"), html.toString().getBytes("UTF-8"));
+
+		byte[] large = new byte[LARGE_FILE_SIZE];
+		new Random(42).nextBytes(large);
+		write(new File(root, "large.bin"), large);
+
+		String page = "200\n"
+				+ "Content-Type: text/html\n"
+				+ "\n"
+				+ "<html><head><title>${title}</title></head><body>\n"
+				+ "<h1>${title}</h1>\n"
+				+ "<ul>\n"
+				+ "%{item=items}<li>${item}</li>\n%{item}"
+				+ "</ul>\n"
+				+ "</body></html>\n";
+		write(new File(root, "index.page"), page.getBytes("UTF-8"));
+	}
+
+	private static void write(File file, byte[] data) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+}